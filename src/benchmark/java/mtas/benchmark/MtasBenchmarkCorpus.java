@@ -0,0 +1,204 @@
+package mtas.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+
+/**
+ * The Class MtasBenchmarkCorpus. Generates a reproducible synthetic corpus of
+ * FoLiA documents, with words, lemmas and part of speech annotation grouped in
+ * sentences and paragraphs, and indexes it with the Mtas codec using the
+ * FoLiA configuration of the tests.
+ */
+public final class MtasBenchmarkCorpus {
+
+  /** The Constant FIELD_ID. */
+  public static final String FIELD_ID = "id";
+
+  /** The Constant FIELD_CONTENT. */
+  public static final String FIELD_CONTENT = "content";
+
+  /** The Constant DEFAULT_SEED. */
+  public static final long DEFAULT_SEED = 20180601L;
+
+  /** The Constant POS. */
+  private static final String[] POS = { "N", "WW", "LID", "ADJ", "VZ", "VNW",
+      "BW", "VG", "TW", "SPEC" };
+
+  /** The Constant VOCABULARY_SIZE. */
+  private static final int VOCABULARY_SIZE = 5000;
+
+  /** The Constant MIN_SENTENCE_LENGTH. */
+  private static final int MIN_SENTENCE_LENGTH = 4;
+
+  /** The Constant MAX_SENTENCE_LENGTH. */
+  private static final int MAX_SENTENCE_LENGTH = 30;
+
+  /** The Constant SENTENCES_PER_PARAGRAPH. */
+  private static final int SENTENCES_PER_PARAGRAPH = 8;
+
+  /**
+   * Instantiates a new mtas benchmark corpus.
+   */
+  private MtasBenchmarkCorpus() {
+  }
+
+  /**
+   * Creates the analyzer.
+   *
+   * @return the analyzer
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static Analyzer createAnalyzer() throws IOException {
+    Map<String, String> paramsTokenizer = new HashMap<>();
+    paramsTokenizer.put("configFile",
+        Paths.get("src" + File.separator + "test" + File.separator
+            + "resources" + File.separator + "data" + File.separator + "conf"
+            + File.separator + "folia.xml").toAbsolutePath().toString());
+    Analyzer mtasAnalyzer = CustomAnalyzer
+        .builder(Paths.get("docker").toAbsolutePath())
+        .withTokenizer("mtas", paramsTokenizer).build();
+    Map<String, Analyzer> analyzerPerField = new HashMap<>();
+    analyzerPerField.put(FIELD_CONTENT, mtasAnalyzer);
+    return new PerFieldAnalyzerWrapper(new StandardAnalyzer(),
+        analyzerPerField);
+  }
+
+  /**
+   * Creates the index writer config.
+   *
+   * @return the index writer config
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static IndexWriterConfig createConfig() throws IOException {
+    IndexWriterConfig config = new IndexWriterConfig(createAnalyzer());
+    config.setUseCompoundFile(false);
+    config.setCodec(Codec.forName("MtasCodec"));
+    return config;
+  }
+
+  /**
+   * Creates the index.
+   *
+   * @param directory the directory
+   * @param numberOfDocuments the number of documents
+   * @param numberOfWords the number of words per document
+   * @param numberOfSegments the number of segments
+   * @param seed the seed
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static void createIndex(Directory directory, int numberOfDocuments,
+      int numberOfWords, int numberOfSegments, long seed) throws IOException {
+    Random random = new Random(seed);
+    int documentsPerSegment = Math.max(1,
+        (numberOfDocuments + numberOfSegments - 1) / numberOfSegments);
+    try (IndexWriter w = new IndexWriter(directory, createConfig())) {
+      w.deleteAll();
+      for (int i = 0; i < numberOfDocuments; i++) {
+        w.addDocument(createDocument(i, createText(random, numberOfWords)));
+        if ((i + 1) % documentsPerSegment == 0) {
+          w.commit();
+        }
+      }
+      w.commit();
+    }
+  }
+
+  /**
+   * Creates the document.
+   *
+   * @param id the id
+   * @param text the FoLiA text
+   * @return the document
+   */
+  public static Document createDocument(int id, String text) {
+    Document doc = new Document();
+    doc.add(new StringField(FIELD_ID, Integer.toString(id), Field.Store.YES));
+    doc.add(new TextField(FIELD_CONTENT, text, Field.Store.NO));
+    return doc;
+  }
+
+  /**
+   * Creates a FoLiA text. Words are drawn from a skewed distribution over the
+   * vocabulary, so frequencies roughly follow those of natural text.
+   *
+   * @param random the random
+   * @param numberOfWords the number of words
+   * @return the FoLiA text
+   */
+  public static String createText(Random random, int numberOfWords) {
+    StringBuilder text = new StringBuilder();
+    text.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    text.append("<FoLiA xmlns=\"http://ilk.uvt.nl/folia\" xml:id=\"doc\">\n");
+    text.append("<text xml:id=\"doc.text\">\n");
+    int words = 0;
+    int paragraph = 0;
+    while (words < numberOfWords) {
+      paragraph++;
+      String paragraphId = "doc.p." + paragraph;
+      text.append("<p xml:id=\"").append(paragraphId).append("\">\n");
+      for (int sentence = 1; sentence <= SENTENCES_PER_PARAGRAPH
+          && words < numberOfWords; sentence++) {
+        String sentenceId = paragraphId + ".s." + sentence;
+        text.append("<s xml:id=\"").append(sentenceId).append("\">\n");
+        int length = Math.min(numberOfWords - words, MIN_SENTENCE_LENGTH
+            + random.nextInt(MAX_SENTENCE_LENGTH - MIN_SENTENCE_LENGTH + 1));
+        for (int word = 1; word <= length; word++) {
+          int item = random.nextInt(1 + random.nextInt(VOCABULARY_SIZE));
+          String pos = POS[item % POS.length];
+          text.append("<w xml:id=\"").append(sentenceId).append(".w.")
+              .append(word).append("\" class=\"WORD\">");
+          text.append("<t>").append(createWord(item, word == 1))
+              .append("</t>");
+          text.append("<pos class=\"").append(pos).append("()\" head=\"")
+              .append(pos).append("\"/>");
+          text.append("<lemma class=\"").append(createWord(item, false))
+              .append("\"/>");
+          text.append("</w>\n");
+        }
+        text.append("</s>\n");
+        words += length;
+      }
+      text.append("</p>\n");
+    }
+    text.append("</text>\n");
+    text.append("</FoLiA>\n");
+    return text.toString();
+  }
+
+  /**
+   * Creates a word from the vocabulary.
+   *
+   * @param item the item
+   * @param capitalize the capitalize
+   * @return the word
+   */
+  private static String createWord(int item, boolean capitalize) {
+    StringBuilder word = new StringBuilder();
+    int value = item + 1;
+    while (value > 0) {
+      char c = (char) ('a' + (value % 26));
+      word.append(capitalize && word.length() == 0 ? Character.toUpperCase(c)
+          : c);
+      value /= 26;
+    }
+    return word.toString();
+  }
+
+}
@@ -0,0 +1,65 @@
+package mtas.benchmark;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The Class MtasBenchmarkIndex. Benchmark state providing an in-memory index
+ * of the synthetic corpus, created once per trial.
+ */
+@State(Scope.Benchmark)
+public class MtasBenchmarkIndex {
+
+  /** The number of documents. */
+  @Param({ "200" })
+  public int numberOfDocuments;
+
+  /** The number of words per document. */
+  @Param({ "2000" })
+  public int numberOfWords;
+
+  /** The number of segments. */
+  @Param({ "4" })
+  public int numberOfSegments;
+
+  /** The directory. */
+  public Directory directory;
+
+  /** The index reader. */
+  public IndexReader indexReader;
+
+  /**
+   * Creates the index.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    directory = new RAMDirectory();
+    MtasBenchmarkCorpus.createIndex(directory, numberOfDocuments,
+        numberOfWords, numberOfSegments, MtasBenchmarkCorpus.DEFAULT_SEED);
+    indexReader = DirectoryReader.open(directory);
+  }
+
+  /**
+   * Close the index.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    indexReader.close();
+    directory.close();
+  }
+
+}
@@ -0,0 +1,148 @@
+package mtas.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.store.IndexInput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mtas.codec.MtasTerms;
+import mtas.codec.util.CodecInfo;
+import mtas.codec.util.CodecInfo.IndexDoc;
+import mtas.codec.util.CodecSearchTree;
+import mtas.codec.util.CodecSearchTree.MtasTreeHit;
+
+/**
+ * The Class MtasCodecBenchmark. Measures position lookups in the codec, both
+ * directly on the position tree and including decoding of the objects, for
+ * random windows in the documents of the first segment.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MtasCodecBenchmark {
+
+  /** The Constant NUMBER_OF_PROBES. */
+  private static final int NUMBER_OF_PROBES = 4096;
+
+  /** The window size in positions. */
+  @Param({ "1", "10" })
+  public int windowSize;
+
+  /** The codec info. */
+  private CodecInfo codecInfo;
+
+  /** The position tree input. */
+  private IndexInput inIndexObjectPosition;
+
+  /** The docs, by probe. */
+  private IndexDoc[] probeDocs;
+
+  /** The doc ids, by probe. */
+  private int[] probeDocIds;
+
+  /** The start positions, by probe. */
+  private int[] probeStarts;
+
+  /** The current probe. */
+  private int probe;
+
+  /**
+   * Prepare the probes.
+   *
+   * @param index the index
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Setup(Level.Trial)
+  public void setup(MtasBenchmarkIndex index) throws IOException {
+    LeafReader reader = index.indexReader.leaves().get(0).reader();
+    Terms terms = reader.terms(MtasBenchmarkCorpus.FIELD_CONTENT);
+    codecInfo = CodecInfo.getCodecInfoFromTerms(terms);
+    inIndexObjectPosition = ((MtasTerms) terms).getIndexInputList()
+        .get("indexObjectPosition").clone();
+    List<IndexDoc> docs = new ArrayList<>();
+    List<Integer> docIds = new ArrayList<>();
+    for (int docId = 0; docId < reader.maxDoc(); docId++) {
+      IndexDoc doc = codecInfo.getDoc(MtasBenchmarkCorpus.FIELD_CONTENT,
+          docId);
+      if (doc != null) {
+        docs.add(doc);
+        docIds.add(docId);
+      }
+    }
+    if (docs.isEmpty()) {
+      throw new IOException("no documents in first segment");
+    }
+    Random random = new Random(MtasBenchmarkCorpus.DEFAULT_SEED);
+    probeDocs = new IndexDoc[NUMBER_OF_PROBES];
+    probeDocIds = new int[NUMBER_OF_PROBES];
+    probeStarts = new int[NUMBER_OF_PROBES];
+    for (int i = 0; i < NUMBER_OF_PROBES; i++) {
+      int j = random.nextInt(docs.size());
+      IndexDoc doc = docs.get(j);
+      probeDocs[i] = doc;
+      probeDocIds[i] = docIds.get(j);
+      probeStarts[i] = doc.minPosition + random.nextInt(
+          Math.max(1, doc.maxPosition - doc.minPosition - windowSize + 2));
+    }
+    probe = 0;
+  }
+
+  /**
+   * Search the position tree.
+   *
+   * @return the hits
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Benchmark
+  public List<MtasTreeHit<?>> searchMtasTree() throws IOException {
+    int i = nextProbe();
+    IndexDoc doc = probeDocs[i];
+    return CodecSearchTree.searchMtasTree(probeStarts[i],
+        probeStarts[i] + windowSize - 1, inIndexObjectPosition,
+        doc.fpIndexObjectPosition, doc.smallestObjectFilepointer);
+  }
+
+  /**
+   * Get the objects by positions.
+   *
+   * @return the objects
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Benchmark
+  public Object getObjectsByPositions() throws IOException {
+    int i = nextProbe();
+    return codecInfo.getObjectsByPositions(MtasBenchmarkCorpus.FIELD_CONTENT,
+        probeDocIds[i], probeStarts[i], probeStarts[i] + windowSize - 1);
+  }
+
+  /**
+   * Next probe.
+   *
+   * @return the probe
+   */
+  private int nextProbe() {
+    probe = (probe + 1) % NUMBER_OF_PROBES;
+    return probe;
+  }
+
+}
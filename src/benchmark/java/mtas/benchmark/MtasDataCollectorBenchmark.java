@@ -0,0 +1,148 @@
+package mtas.benchmark;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mtas.codec.util.CodecUtil;
+import mtas.codec.util.DataCollector;
+import mtas.codec.util.collector.MtasDataCollector;
+
+/**
+ * The Class MtasDataCollectorBenchmark. Measures filling a list collector with
+ * key/value pairs for a segment, and merging the collectors of several
+ * segments or shards.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MtasDataCollectorBenchmark {
+
+  /** The stats type. */
+  @Param({ CodecUtil.STATS_BASIC, CodecUtil.STATS_ADVANCED })
+  public String statsType;
+
+  /** The number of values added per collector. */
+  @Param({ "100000" })
+  public int numberOfValues;
+
+  /** The number of distinct keys. */
+  @Param({ "20000" })
+  public int numberOfKeys;
+
+  /** The number of collectors to merge. */
+  @Param({ "8" })
+  public int numberOfCollectors;
+
+  /** The keys, by value. */
+  private String[] keys;
+
+  /** The values. */
+  private long[] values;
+
+  /** The collectors to merge. */
+  private MtasDataCollector<?, ?>[] collectors;
+
+  /**
+   * Prepare the keys, values and collectors to merge.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    Random random = new Random(MtasBenchmarkCorpus.DEFAULT_SEED);
+    keys = new String[numberOfValues];
+    values = new long[numberOfValues];
+    for (int i = 0; i < numberOfValues; i++) {
+      keys[i] = "t" + random.nextInt(1 + random.nextInt(numberOfKeys));
+      values[i] = 1 + random.nextInt(100);
+    }
+    collectors = new MtasDataCollector<?, ?>[numberOfCollectors];
+    for (int i = 0; i < numberOfCollectors; i++) {
+      collectors[i] = fill(i, numberOfCollectors);
+    }
+  }
+
+  /**
+   * Fill a new collector.
+   *
+   * @return the collector
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Benchmark
+  public MtasDataCollector<?, ?> add() throws IOException {
+    return fill(0, 1);
+  }
+
+  /**
+   * Merge the collectors into a new collector.
+   *
+   * @return the collector
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Benchmark
+  public MtasDataCollector<?, ?> merge() throws IOException {
+    MtasDataCollector<?, ?> result = createCollector();
+    for (MtasDataCollector<?, ?> collector : collectors) {
+      Map<MtasDataCollector<?, ?>, MtasDataCollector<?, ?>> map = new HashMap<>();
+      result.merge(collector, map, true);
+    }
+    result.close();
+    return result;
+  }
+
+  /**
+   * Fill a new collector with part of the values.
+   *
+   * @param part the part
+   * @param numberOfParts the number of parts
+   * @return the collector
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private MtasDataCollector<?, ?> fill(int part, int numberOfParts)
+      throws IOException {
+    MtasDataCollector<?, ?> collector = createCollector();
+    collector.initNewList(numberOfValues / numberOfParts + 1);
+    for (int i = part; i < numberOfValues; i += numberOfParts) {
+      collector.add(keys[i], values[i], 1);
+    }
+    collector.closeNewList();
+    return collector;
+  }
+
+  /**
+   * Creates the collector.
+   *
+   * @return the collector
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private MtasDataCollector<?, ?> createCollector() throws IOException {
+    SortedSet<String> statsItems = new TreeSet<>();
+    statsItems.add(CodecUtil.STATS_TYPE_N);
+    statsItems.add(CodecUtil.STATS_TYPE_SUM);
+    return DataCollector.getCollector(DataCollector.COLLECTOR_TYPE_LIST,
+        CodecUtil.DATA_TYPE_LONG, statsType, statsItems, CodecUtil.SORT_TERM,
+        CodecUtil.SORT_ASC, 0, 10, null, null);
+  }
+
+}
@@ -0,0 +1,116 @@
+package mtas.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The Class MtasFieldsConsumerBenchmark. Measures indexing and flushing a
+ * segment of the synthetic corpus with the Mtas codec, including analysis,
+ * and force merging several of those segments.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MtasFieldsConsumerBenchmark {
+
+  /** The number of documents per segment. */
+  @Param({ "50" })
+  public int numberOfDocuments;
+
+  /** The number of words per document. */
+  @Param({ "2000" })
+  public int numberOfWords;
+
+  /** The number of segments to merge. */
+  @Param({ "4" })
+  public int numberOfSegments;
+
+  /** The texts. */
+  private String[] texts;
+
+  /**
+   * Generate the texts.
+   */
+  @Setup(Level.Trial)
+  public void setup() {
+    Random random = new Random(MtasBenchmarkCorpus.DEFAULT_SEED);
+    texts = new String[numberOfDocuments];
+    for (int i = 0; i < numberOfDocuments; i++) {
+      texts[i] = MtasBenchmarkCorpus.createText(random, numberOfWords);
+    }
+  }
+
+  /**
+   * Index and flush a single segment.
+   *
+   * @return the number of files
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Benchmark
+  public int flush() throws IOException {
+    try (Directory directory = new RAMDirectory()) {
+      try (IndexWriter w = new IndexWriter(directory,
+          MtasBenchmarkCorpus.createConfig())) {
+        addDocuments(w, 0);
+        w.commit();
+      }
+      return directory.listAll().length;
+    }
+  }
+
+  /**
+   * Index several segments and merge them into one.
+   *
+   * @return the number of files
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Benchmark
+  public int merge() throws IOException {
+    try (Directory directory = new RAMDirectory()) {
+      try (IndexWriter w = new IndexWriter(directory,
+          MtasBenchmarkCorpus.createConfig())) {
+        for (int i = 0; i < numberOfSegments; i++) {
+          addDocuments(w, i * numberOfDocuments);
+          w.commit();
+        }
+        w.forceMerge(1);
+        w.commit();
+      }
+      return directory.listAll().length;
+    }
+  }
+
+  /**
+   * Adds the documents.
+   *
+   * @param w the w
+   * @param offset the offset for the ids
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void addDocuments(IndexWriter w, int offset) throws IOException {
+    for (int i = 0; i < texts.length; i++) {
+      w.addDocument(MtasBenchmarkCorpus.createDocument(offset + i, texts[i]));
+    }
+  }
+
+}
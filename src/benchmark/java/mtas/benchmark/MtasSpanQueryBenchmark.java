@@ -0,0 +1,97 @@
+package mtas.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.spans.SpanWeight;
+import org.apache.lucene.search.spans.Spans;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mtas.parser.cql.MtasCQLParser;
+import mtas.parser.cql.ParseException;
+import mtas.search.spans.util.MtasSpanQuery;
+
+/**
+ * The Class MtasSpanQueryBenchmark. Measures collecting all hits for span
+ * queries exercising sequence, recurrence and within spans.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MtasSpanQueryBenchmark {
+
+  /** The query. */
+  @Param({ "sequence", "recurrence", "within" })
+  public String query;
+
+  /** The span query. */
+  private MtasSpanQuery spanQuery;
+
+  /**
+   * Parses the query.
+   *
+   * @throws ParseException the parse exception
+   */
+  @Setup(Level.Trial)
+  public void setup() throws ParseException {
+    String cql;
+    if (query.equals("sequence")) {
+      cql = "[pos=\"LID\"][pos=\"ADJ\"]?[pos=\"N\"]";
+    } else if (query.equals("recurrence")) {
+      cql = "[pos=\"ADJ\"]{1,3}";
+    } else if (query.equals("within")) {
+      cql = "([pos=\"N\"][pos=\"WW\"]) within <s/>";
+    } else {
+      throw new IllegalArgumentException("unknown query " + query);
+    }
+    MtasCQLParser p = new MtasCQLParser(
+        new BufferedReader(new StringReader(cql)));
+    spanQuery = p.parse(MtasBenchmarkCorpus.FIELD_CONTENT, null, null, null,
+        null);
+  }
+
+  /**
+   * Collect all hits.
+   *
+   * @param index the index
+   * @return the number of hits
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Benchmark
+  public long spans(MtasBenchmarkIndex index) throws IOException {
+    IndexSearcher searcher = new IndexSearcher(index.indexReader);
+    SpanWeight spanWeight = spanQuery.rewrite(index.indexReader)
+        .createWeight(searcher, false, 0);
+    long hits = 0;
+    for (LeafReaderContext lrc : index.indexReader.leaves()) {
+      Spans spans = spanWeight.getSpans(lrc, SpanWeight.Postings.POSITIONS);
+      if (spans != null) {
+        while (spans.nextDoc() != Spans.NO_MORE_DOCS) {
+          while (spans.nextStartPosition() != Spans.NO_MORE_POSITIONS) {
+            hits++;
+          }
+        }
+      }
+    }
+    return hits;
+  }
+
+}
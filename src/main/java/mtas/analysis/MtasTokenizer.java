@@ -5,8 +5,6 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.util.HashMap;
 import java.util.Iterator;
 import mtas.analysis.parser.MtasParser;
@@ -15,6 +13,7 @@ import mtas.analysis.token.MtasTokenCollection;
 import mtas.analysis.util.MtasConfigException;
 import mtas.analysis.util.MtasConfiguration;
 import mtas.analysis.util.MtasParserException;
+import mtas.analysis.util.MtasParserPool;
 import mtas.codec.payload.MtasPayloadEncoder;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -81,6 +80,18 @@ public final class MtasTokenizer extends Tokenizer {
   /** The token collection iterator. */
   private Iterator<MtasToken> tokenCollectionIterator;
 
+  /** The parser providing the tokens, only used when streaming. */
+  private MtasParser tokenStreamParser = null;
+
+  /** The allow streaming. */
+  private boolean allowStreaming = true;
+
+  /** The parser pool. */
+  private MtasParserPool parserPool = null;
+
+  /** The parser, acquired from the pool for the current document. */
+  private MtasParser parser = null;
+
   /**
    * Instantiates a new mtas tokenizer.
    */
@@ -129,6 +140,21 @@ public final class MtasTokenizer extends Tokenizer {
     processConfiguration(config);
   }
 
+  /**
+   * Instantiates a new mtas tokenizer.
+   *
+   * @param factory the factory
+   * @param config the config
+   * @param parserPool the parser pool
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public MtasTokenizer(final AttributeFactory factory,
+      final MtasConfiguration config, final MtasParserPool parserPool)
+      throws IOException {
+    this(factory, config);
+    this.parserPool = parserPool;
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -140,22 +166,35 @@ public final class MtasTokenizer extends Tokenizer {
     MtasToken token;
     Integer positionIncrement;
     MtasPayloadEncoder payloadEncoder;
-    if (tokenCollectionIterator == null) {
-      return false;
-    } else if (tokenCollectionIterator.hasNext()) {
+    if (tokenStreamParser != null) {
+      try {
+        token = tokenStreamParser.nextToken();
+      } catch (MtasConfigException | MtasParserException e) {
+        tokenStreamParser = null;
+        parser = null;
+        throw new IOException(e);
+      }
+      if (token == null) {
+        tokenStreamParser = null;
+        releaseParser();
+        return false;
+      }
+    } else if (tokenCollectionIterator != null
+        && tokenCollectionIterator.hasNext()) {
       token = tokenCollectionIterator.next();
-      // compute info
-      positionIncrement = token.getPositionStart() - currentPosition;
-      currentPosition = token.getPositionStart();
-      payloadEncoder = new MtasPayloadEncoder(token, encodingFlags);
-      // set info
-      termAtt.append(token.getValue());
-      positionIncrementAtt.setPositionIncrement(positionIncrement);
-      offsetAtt.setOffset(token.getOffsetStart(), token.getOffsetEnd());
-      payloadAtt.setPayload(payloadEncoder.getPayload());
-      return true;
+    } else {
+      return false;
     }
-    return false;
+    // compute info
+    positionIncrement = token.getPositionStart() - currentPosition;
+    currentPosition = token.getPositionStart();
+    payloadEncoder = new MtasPayloadEncoder(token, encodingFlags);
+    // set info
+    termAtt.append(token.getValue());
+    positionIncrementAtt.setPositionIncrement(positionIncrement);
+    offsetAtt.setOffset(token.getOffsetStart(), token.getOffsetEnd());
+    payloadAtt.setPayload(payloadEncoder.getPayload());
+    return true;
   }
 
   /*
@@ -169,13 +208,27 @@ public final class MtasTokenizer extends Tokenizer {
     currentPosition = -1;
     try {
       constructTokenCollection(input);
-      tokenCollectionIterator = tokenCollection.iterator();
+      tokenCollectionIterator = tokenCollection == null ? null
+          : tokenCollection.iterator();
     } catch (MtasConfigException | MtasParserException e) {      
       tokenCollectionIterator = null;
+      tokenStreamParser = null;
       throw new IOException(e);
     }
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lucene.analysis.Tokenizer#close()
+   */
+  @Override
+  public void close() throws IOException {
+    super.close();
+    tokenStreamParser = null;
+    releaseParser();
+  }
+
   /**
    * Prints the.
    *
@@ -184,6 +237,7 @@ public final class MtasTokenizer extends Tokenizer {
    */
   public void print(final Reader r) throws MtasParserException {
     try {
+      allowStreaming = false;
       setReader(r);
       reset();
       if (tokenCollection != null) {
@@ -194,6 +248,8 @@ public final class MtasTokenizer extends Tokenizer {
     } catch (IOException e) {
       log.error(e);
       throw new MtasParserException(e.getClass() + " : " + e.getMessage());
+    } finally {
+      allowStreaming = true;
     }
   }
 
@@ -206,6 +262,7 @@ public final class MtasTokenizer extends Tokenizer {
    */
   public String[][] getList(final Reader r) throws IOException {
     try {
+      allowStreaming = false;
       setReader(r);
       reset();
       String[][] result = tokenCollection.getList();
@@ -215,6 +272,8 @@ public final class MtasTokenizer extends Tokenizer {
     } catch (MtasParserException e) {
       log.info(e);
       throw new IOException("can't produce list");
+    } finally {
+      allowStreaming = true;
     }
   }
 
@@ -228,29 +287,40 @@ public final class MtasTokenizer extends Tokenizer {
   private void constructTokenCollection(final Reader reader)
       throws MtasConfigException, MtasParserException {
     tokenCollection = null;
+    tokenStreamParser = null;
+    releaseParser();
+    if (parserPool == null) {
+      parserPool = new MtasParserPool();
+    }
     try {
-      Constructor<?> c = Class.forName(parserName)
-          .getDeclaredConstructor(MtasConfiguration.class);      
-      Object p = c.newInstance(parserConfiguration);
-      if (p instanceof MtasParser) {
-        MtasParser parser = (MtasParser) p;
-        tokenCollection = parser.createTokenCollection(reader);
-        return;
+      parser = parserPool.acquire(parserName, parserConfiguration);
+      if (allowStreaming && parser.isStreaming()) {
+        parser.startTokenStream(reader);
+        tokenStreamParser = parser;
       } else {
-        throw new MtasConfigException("no instance of MtasParser");
+        tokenCollection = parser.createTokenCollection(reader);
+        releaseParser();
       }
     } catch (MtasParserException e) {
       log.debug(e);
+      parser = null;
       tokenCollection = new MtasTokenCollection();
       throw new MtasParserException(e.getMessage());
-    } catch (NoSuchMethodException | InvocationTargetException
-        | IllegalAccessException | ClassNotFoundException
-        | InstantiationException e) {
+    } catch (MtasConfigException e) {
       log.debug(e);
-      throw new MtasConfigException(
-          e.getClass().getName() + " : '" + e.getMessage() + "'");
+      parser = null;
+      throw e;
     }
+  }
 
+  /**
+   * Release the parser to the pool, if not released already.
+   */
+  private void releaseParser() {
+    if (parser != null) {
+      parserPool.release(parserConfiguration, parser);
+      parser = null;
+    }
   }
 
   /**
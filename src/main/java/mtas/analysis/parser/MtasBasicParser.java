@@ -1,15 +1,15 @@
 package mtas.analysis.parser;
 
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -17,6 +17,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import mtas.analysis.token.MtasToken;
+import mtas.analysis.token.MtasTokenCollection;
 import mtas.analysis.token.MtasTokenIdFactory;
 import mtas.analysis.token.MtasTokenString;
 import mtas.analysis.util.MtasConfigException;
@@ -238,11 +239,14 @@ public abstract class MtasBasicParser extends MtasParser {
   /** The Constant MAPPING_VALUE_NOT. */
   protected static final String MAPPING_VALUE_NOT = "not";
 
-  /** The enc. */
-  private Base64.Encoder enc = Base64.getEncoder();
+  /**
+   * The values of tokens containing variables, as prefix and postfix, by token
+   * id. Removed when resolved.
+   */
+  private Map<Integer, MtasParserValue[]> variableValues = new HashMap<>();
 
-  /** The dec. */
-  private Base64.Decoder dec = Base64.getDecoder();
+  /** The token stream, only used when streaming. */
+  protected MtasParserTokenStream tokenStream = null;
 
   /**
    * Instantiates a new mtas basic parser.
@@ -260,6 +264,18 @@ public abstract class MtasBasicParser extends MtasParser {
     super(config);
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see mtas.analysis.parser.MtasParser#resetParser()
+   */
+  @Override
+  public void resetParser() {
+    super.resetParser();
+    tokenStream = null;
+    variableValues.clear();
+  }
+
   /**
    * Creates the current list.
    *
@@ -347,56 +363,34 @@ public abstract class MtasBasicParser extends MtasParser {
               // check conditions
               postcheckMappingConditions(object, mapping.getConditions(),
                   currentList);
-              boolean containsVariables = checkForVariables(
-                  mappingToken.preValues);
-              containsVariables = !containsVariables
-                  ? checkForVariables(mappingToken.postValues)
-                  : containsVariables;
+              boolean containsVariables = mappingToken.containsVariables();
               // construct preValue
-              String[] preValue = computeValueFromMappingValues(object,
-                  mappingToken.preValues, currentList, containsVariables);
+              MtasParserValue[] preValue = computeValueFromMappingValues(
+                  object, mappingToken.getPreValuePlan(), currentList,
+                  containsVariables);
               // at least preValue
-              if (preValue == null || preValue.length == 0) {
+              if (preValue.length == 0) {
                 throw new MtasParserException("no preValues");
               } else {
                 // no delimiter in preValue
                 for (int k = 0; k < preValue.length; k++) {
-                  if ((preValue[k] = preValue[k].replace(MtasToken.DELIMITER,
-                      "")).isEmpty()) {
+                  if ((preValue[k] = preValue[k]
+                      .removeDelimiter()).isEmpty()) {
                     throw new MtasParserException("empty preValue");
                   }
                 }
               }
               // construct postValue
-              String[] postValue = computeValueFromMappingValues(object,
-                  mappingToken.postValues, currentList, containsVariables);
-              // construct value
-              String[] value;
-              if (postValue == null || postValue.length == 0) {
-                value = preValue.clone();
-                for (int k = 0; k < value.length; k++) {
-                  value[k] = value[k] + MtasToken.DELIMITER;
-                }
-              } else if (postValue.length == 1) {
-                value = preValue.clone();
-                for (int k = 0; k < value.length; k++) {
-                  value[k] = value[k] + MtasToken.DELIMITER + postValue[0];
-                }
-              } else if (preValue.length == 1) {
-                value = postValue.clone();
-                for (int k = 0; k < value.length; k++) {
-                  value[k] = preValue[0] + MtasToken.DELIMITER + value[k];
-                }
-              } else {
-                value = new String[preValue.length * postValue.length];
-                int number = 0;
-                for (int k1 = 0; k1 < preValue.length; k1++) {
-                  for (int k2 = 0; k2 < postValue.length; k2++) {
-                    value[number] = preValue[k1] + MtasToken.DELIMITER
-                        + postValue[k2];
-                    number++;
-                  }
-                }
+              MtasParserValue[] postValue = computeValueFromMappingValues(
+                  object, mappingToken.getPostValuePlan(), currentList,
+                  containsVariables);
+              // construct value, for each preValue and postValue
+              int postNumber = Math.max(1, postValue.length);
+              String[] value = new String[preValue.length * postNumber];
+              for (int k = 0; k < value.length; k++) {
+                value[k] = preValue[k / postNumber].toString()
+                    + MtasToken.DELIMITER + (postValue.length == 0 ? ""
+                        : postValue[k % postNumber].toString());
               }
               // construct payload
               BytesRef payload = computePayloadFromMappingPayload(object,
@@ -414,6 +408,10 @@ public abstract class MtasBasicParser extends MtasParser {
                 // register token if it contains variables
                 if (containsVariables) {
                   updateList.get(UPDATE_TYPE_VARIABLE).put(token.getId(), null);
+                  variableValues.put(token.getId(),
+                      new MtasParserValue[] { preValue[k / postNumber],
+                          postValue.length == 0 ? MtasParserValue.EMPTY
+                              : postValue[k % postNumber] });
                 }
                 // register id for update when parent is created
                 if (!currentList.get(checkType).isEmpty()) {
@@ -646,26 +644,6 @@ public abstract class MtasBasicParser extends MtasParser {
     }
   }
 
-  /**
-   * Check for variables.
-   *
-   * @param values the values
-   * @return true, if successful
-   */
-  private boolean checkForVariables(List<Map<String, String>> values) {
-    if (values == null || values.isEmpty()) {
-      return false;
-    } else {
-      for (Map<String, String> list : values) {
-        if (list.containsKey("type") && list.get("type")
-            .equals(MtasParserMapping.PARSER_TYPE_VARIABLE)) {
-          return true;
-        }
-      }
-    }
-    return false;
-  }
-
   /**
    * Update mappings with local references.
    *
@@ -677,6 +655,7 @@ public abstract class MtasBasicParser extends MtasParser {
       Map<String, List<MtasParserObject>> currentList,
       Map<String, Map<Integer, Set<String>>> updateList) {
     if (currentObject.getType().type.equals(MAPPING_TYPE_GROUP)) {
+      List<Integer> resolvedTokenIds = new ArrayList<>();
       for (Integer tokenId : updateList
           .get(UPDATE_TYPE_LOCAL_REF_POSITION_START).keySet()) {
         if (updateList.get(UPDATE_TYPE_LOCAL_REF_POSITION_END)
@@ -736,9 +715,19 @@ public abstract class MtasBasicParser extends MtasParser {
             MtasToken token = tokenCollection.get(tokenId);
             token.addPositionRange(startPosition, endPosition);
             token.setOffset(startOffset, endOffset);
+            resolvedTokenIds.add(tokenId);
           }
         }
       }
+      // when streaming, resolved tokens can be released
+      if (tokenStream != null) {
+        for (Integer tokenId : resolvedTokenIds) {
+          updateList.get(UPDATE_TYPE_LOCAL_REF_POSITION_START).remove(tokenId);
+          updateList.get(UPDATE_TYPE_LOCAL_REF_POSITION_END).remove(tokenId);
+          updateList.get(UPDATE_TYPE_LOCAL_REF_OFFSET_START).remove(tokenId);
+          updateList.get(UPDATE_TYPE_LOCAL_REF_OFFSET_END).remove(tokenId);
+        }
+      }
 
     }
     if (!currentList.get(MAPPING_TYPE_GROUP).isEmpty()) {
@@ -837,121 +826,69 @@ public abstract class MtasBasicParser extends MtasParser {
    * Compute value from mapping values.
    *
    * @param object the object
-   * @param mappingValues the mapping values
+   * @param mappingValues the compiled mapping values
    * @param currentList the current list
    * @param containsVariables the contains variables
-   * @return the string[]
+   * @return the values
    * @throws MtasParserException the mtas parser exception
    * @throws MtasConfigException the mtas config exception
    */
-  private String[] computeValueFromMappingValues(MtasParserObject object,
-      List<Map<String, String>> mappingValues,
+  private MtasParserValue[] computeValueFromMappingValues(
+      MtasParserObject object, MtasParserMappingValue[] mappingValues,
       Map<String, List<MtasParserObject>> currentList,
       boolean containsVariables)
       throws MtasParserException, MtasConfigException {
-    String[] value = { "" };
-    for (Map<String, String> mappingValue : mappingValues) {
+    MtasParserValue[] value = { MtasParserValue.EMPTY };
+    for (MtasParserMappingValue mappingValue : mappingValues) {
       // directly
-      if (mappingValue.get(MAPPING_VALUE_SOURCE)
-          .equals(MtasParserMapping.SOURCE_STRING)) {
-        if (mappingValue.get("type")
-            .equals(MtasParserMapping.PARSER_TYPE_STRING)) {
-          String subvalue = computeFilteredPrefixedValue(
-              mappingValue.get(MAPPING_VALUE_TYPE),
-              mappingValue.get(MAPPING_VALUE_TEXT), null, null);
-          if (subvalue != null) {
-            for (int i = 0; i < value.length; i++) {
-              value[i] = addAndEncodeValue(value[i], subvalue,
-                  containsVariables);
-            }
-          }
+      if (mappingValue.source.equals(MtasParserMapping.SOURCE_STRING)) {
+        if (mappingValue.type.equals(MtasParserMapping.PARSER_TYPE_STRING)) {
+          addToValue(value, mappingValue.text);
         }
         // from objects
       } else {
         MtasParserObject[] checkObjects = computeObjectFromMappingValue(object,
-            mappingValue, currentList);
+            mappingValue.settings, currentList);
         // create value
         if (checkObjects != null && checkObjects.length > 0) {
-          MtasParserType checkType = checkObjects[0].getType();
           // add name to value
-          if (mappingValue.get(MAPPING_VALUE_TYPE)
-              .equals(MtasParserMapping.PARSER_TYPE_NAME)) {
-            String subvalue = computeFilteredPrefixedValue(
-                mappingValue.get(MAPPING_VALUE_TYPE), checkType.getName(),
-                mappingValue.get(MAPPING_VALUE_FILTER),
-                mappingValue.get(MAPPING_VALUE_PREFIX) == null
-                    || mappingValue.get(MAPPING_VALUE_PREFIX).isEmpty() ? null
-                        : mappingValue.get(MAPPING_VALUE_PREFIX));
-            if (subvalue != null) {
-              for (int i = 0; i < value.length; i++) {
-                value[i] = addAndEncodeValue(value[i], subvalue,
-                    containsVariables);
-              }
-            }
+          if (mappingValue.type.equals(MtasParserMapping.PARSER_TYPE_NAME)) {
+            addToValue(value, mappingValue.computeFilteredPrefixedValue(
+                checkObjects[0].getType().getName()));
             // add attribute to value
-          } else if (mappingValue.get(MAPPING_VALUE_TYPE)
+          } else if (mappingValue.type
               .equals(MtasParserMapping.PARSER_TYPE_ATTRIBUTE)) {
-            String tmpValue = null;    
-            if (mappingValue.get(MAPPING_VALUE_NAME).equals("#")) {
+            String tmpValue;
+            if (mappingValue.name.equals("#")) {
               tmpValue = checkObjects[0].getId();
+            } else if (mappingValue.namespace == null) {
+              tmpValue = checkObjects[0].getAttribute(mappingValue.name);
             } else {
-              String namespace = mappingValue.get(MAPPING_VALUE_NAMESPACE); 
-              if(namespace==null) {
-                tmpValue = checkObjects[0]
-                  .getAttribute(mappingValue.get(MAPPING_VALUE_NAME));
-              } else {
-                tmpValue = checkObjects[0]
-                    .getOtherAttribute(namespace, mappingValue.get(MAPPING_VALUE_NAME));
-              }
-            }
-            String subvalue = computeFilteredPrefixedValue(
-                mappingValue.get(MAPPING_VALUE_TYPE), tmpValue,
-                mappingValue.get(MAPPING_VALUE_FILTER),
-                mappingValue.get(MAPPING_VALUE_PREFIX) == null
-                    || mappingValue.get(MAPPING_VALUE_PREFIX).isEmpty() ? null
-                        : mappingValue.get(MAPPING_VALUE_PREFIX));
-            if (subvalue != null) {
-              for (int i = 0; i < value.length; i++) {
-                value[i] = addAndEncodeValue(value[i], subvalue,
-                    containsVariables);
-              }
+              tmpValue = checkObjects[0]
+                  .getOtherAttribute(mappingValue.namespace, mappingValue.name);
             }
+            addToValue(value,
+                mappingValue.computeFilteredPrefixedValue(tmpValue));
             // value from text
-          } else if (mappingValue.get("type")
+          } else if (mappingValue.type
               .equals(MtasParserMapping.PARSER_TYPE_TEXT)) {
-            String subvalue = computeFilteredPrefixedValue(
-                mappingValue.get(MAPPING_VALUE_TYPE), checkObjects[0].getText(),
-                mappingValue.get(MAPPING_VALUE_FILTER),
-                mappingValue.get(MAPPING_VALUE_PREFIX) == null
-                    || mappingValue.get(MAPPING_VALUE_PREFIX).isEmpty() ? null
-                        : mappingValue.get(MAPPING_VALUE_PREFIX));
-            if (subvalue != null) {
-              for (int i = 0; i < value.length; i++) {
-                value[i] = addAndEncodeValue(value[i], subvalue,
-                    containsVariables);
-              }
-            }
-          } else if (mappingValue.get("type")
+            addToValue(value, mappingValue
+                .computeFilteredPrefixedValue(checkObjects[0].getText()));
+          } else if (mappingValue.type
               .equals(MtasParserMapping.PARSER_TYPE_TEXT_SPLIT)) {
-            String[] textValues = checkObjects[0].getText()
-                .split(Pattern.quote(mappingValue.get(MAPPING_VALUE_SPLIT)));
-            textValues = computeFilteredSplitValues(textValues,
-                mappingValue.get(MAPPING_VALUE_FILTER));
-            if (textValues != null && textValues.length > 0) {
-              String[] nextValue = new String[value.length * textValues.length];
+            String[] textValues = mappingValue.computeFilteredSplitValues(
+                mappingValue.split.split(checkObjects[0].getText()));
+            if (textValues.length > 0) {
+              MtasParserValue[] nextValue = new MtasParserValue[value.length
+                  * textValues.length];
               boolean nullValue = false;
               int number = 0;
               for (int k = 0; k < textValues.length; k++) {
-                String subvalue = computeFilteredPrefixedValue(
-                    mappingValue.get(MAPPING_VALUE_TYPE), textValues[k],
-                    mappingValue.get(MAPPING_VALUE_FILTER),
-                    mappingValue.get(MAPPING_VALUE_PREFIX) == null
-                        || mappingValue.get(MAPPING_VALUE_PREFIX).isEmpty()
-                            ? null : mappingValue.get(MAPPING_VALUE_PREFIX));
+                String subvalue = mappingValue
+                    .computeFilteredPrefixedValue(textValues[k]);
                 if (subvalue != null) {
                   for (int i = 0; i < value.length; i++) {
-                    nextValue[number] = addAndEncodeValue(value[i], subvalue,
-                        containsVariables);
+                    nextValue[number] = value[i].add(subvalue);
                     number++;
                   }
                 } else if (!nullValue) {
@@ -962,30 +899,25 @@ public abstract class MtasBasicParser extends MtasParser {
                   nullValue = true;
                 }
               }
-              value = new String[number];
-              System.arraycopy(nextValue, 0, value, 0, number);
+              value = Arrays.copyOf(nextValue, number);
             }
-          } else if (mappingValue.get("type")
+          } else if (mappingValue.type
               .equals(MtasParserMapping.PARSER_TYPE_VARIABLE)) {
             if (containsVariables) {
-              String variableName = mappingValue.get(MAPPING_VALUE_NAME);
-              String variableValue = mappingValue.get(MAPPING_VALUE_VALUE);
-              String prefix = mappingValue.get(MAPPING_VALUE_PREFIX);
-              if (variableName != null && variableValue != null
-                  && mappingValue.get(MAPPING_VALUE_SOURCE)
+              if (mappingValue.name != null && mappingValue.value != null
+                  && mappingValue.source
                       .equals(MtasParserMapping.SOURCE_OWN)) {
-                String subvalue = object.getAttribute(variableValue);
+                String subvalue = object.getAttribute(mappingValue.value);
                 if (subvalue != null && subvalue.startsWith("#")) {
                   subvalue = subvalue.substring(1);
                 }
                 if (subvalue != null) {
                   for (int i = 0; i < value.length; i++) {
-                    if (prefix != null && !prefix.isEmpty()) {
-                      value[i] = addAndEncodeValue(value[i], prefix,
-                          containsVariables);
+                    if (mappingValue.prefix != null) {
+                      value[i] = value[i].add(mappingValue.prefix);
                     }
-                    value[i] = addAndEncodeVariable(value[i], variableName,
-                        subvalue, containsVariables);
+                    value[i] = value[i].addVariable(mappingValue.name,
+                        subvalue);
                   }
                 }
               }
@@ -993,161 +925,56 @@ public abstract class MtasBasicParser extends MtasParser {
               throw new MtasParserException("unexpected variable");
             }
           } else {
-            throw new MtasParserException(
-                "unknown type " + mappingValue.get("type"));
+            throw new MtasParserException("unknown type " + mappingValue.type);
           }
         }
       }
     }
     if (value.length == 1 && value[0].isEmpty()) {
-      return new String[] {};
+      return new MtasParserValue[] {};
     } else {
       return value;
     }
   }
 
   /**
-   * Adds the and encode variable.
-   *
-   * @param originalValue the original value
-   * @param newVariable the new variable
-   * @param newVariableName the new variable name
-   * @param encode the encode
-   * @return the string
-   */
-  private String addAndEncodeVariable(String originalValue, String newVariable,
-      String newVariableName, boolean encode) {
-    return addAndEncode(originalValue, newVariable, newVariableName, encode);
-  }
-
-  /**
-   * Adds the and encode value.
+   * Adds the subvalue to all values, if not null.
    *
-   * @param originalValue the original value
-   * @param newValue the new value
-   * @param encode the encode
-   * @return the string
-   */
-  private String addAndEncodeValue(String originalValue, String newValue,
-      boolean encode) {
-    return addAndEncode(originalValue, null, newValue, encode);
-  }
-
-  /**
-   * Adds the and encode.
-   *
-   * @param originalValue the original value
-   * @param newType the new type
-   * @param newValue the new value
-   * @param encode the encode
-   * @return the string
+   * @param value the value
+   * @param subvalue the subvalue
    */
-  private String addAndEncode(String originalValue, String newType,
-      String newValue, boolean encode) {
-    if (newValue == null) {
-      return originalValue;
-    } else {
-      String finalNewValue;
-      if (encode) {
-        if (newType == null) {
-          finalNewValue = new String(
-              enc.encode(newValue.getBytes(StandardCharsets.UTF_8)),
-              StandardCharsets.UTF_8);
-        } else {
-          finalNewValue = new String(
-              enc.encode(newType.getBytes(StandardCharsets.UTF_8)),
-              StandardCharsets.UTF_8)
-              + ":"
-              + new String(
-                  enc.encode(newValue.getBytes(StandardCharsets.UTF_8)),
-                  StandardCharsets.UTF_8);
-        }
-      } else {
-        finalNewValue = newValue;
-      }
-      if (originalValue == null || originalValue.isEmpty()) {
-        return finalNewValue;
-      } else {
-        return originalValue + (encode ? " " : "") + finalNewValue;
+  private static void addToValue(MtasParserValue[] value, String subvalue) {
+    if (subvalue != null) {
+      for (int i = 0; i < value.length; i++) {
+        value[i] = value[i].add(subvalue);
       }
     }
   }
 
   /**
-   * Decode and update with variables.
+   * Compute the value of a token containing variables. If all variables can be
+   * resolved, or if finished, the stored prefix and postfix are released.
    *
-   * @param encodedPrefix the encoded prefix
-   * @param encodedPostfix the encoded postfix
+   * @param tokenId the token id
    * @param variables the variables
-   * @return the string
-   */
-  protected String decodeAndUpdateWithVariables(String encodedPrefix,
-      String encodedPostfix, Map<String, Map<String, String>> variables) {
-    String[] prefixSplit;
-    String[] postfixSplit;
-    if (encodedPrefix != null && !encodedPrefix.isEmpty()) {
-      prefixSplit = encodedPrefix.split(" ");
-    } else {
-      prefixSplit = new String[0];
-    }
-    if (encodedPostfix != null && !encodedPostfix.isEmpty()) {
-      postfixSplit = encodedPostfix.split(" ");
-    } else {
-      postfixSplit = new String[0];
-    }
-    try {
-      String prefix = decodeAndUpdateWithVariables(prefixSplit, variables);
-      String postfix = decodeAndUpdateWithVariables(postfixSplit, variables);
-      return prefix + MtasToken.DELIMITER + postfix;
-    } catch (MtasParserException e) {
-      log.debug(e);
-      return null;
-    }
-  }
-
-  /**
-   * Decode and update with variables.
-   *
-   * @param splitList the split list
-   * @param variables the variables
-   * @return the string
-   * @throws MtasParserException the mtas parser exception
+   * @param finished if the document is finished
+   * @return the value, or null if not all variables could be resolved
    */
-  private String decodeAndUpdateWithVariables(String[] splitList,
-      Map<String, Map<String, String>> variables) throws MtasParserException {
-    StringBuilder builder = new StringBuilder();
-    for (String split : splitList) {
-      if (split.contains(":")) {
-        String[] subSplit = split.split(":");
-        if (subSplit.length == 2) {
-          String decodedVariableName = new String(dec.decode(subSplit[0]),
-              StandardCharsets.UTF_8);
-          String decodedVariableValue = new String(dec.decode(subSplit[1]),
-              StandardCharsets.UTF_8);
-          if (variables.containsKey(decodedVariableName)) {
-            if (variables.get(decodedVariableName)
-                .containsKey(decodedVariableValue)) {
-              String valueFromVariable = variables.get(decodedVariableName)
-                  .get(decodedVariableValue);
-              builder.append(valueFromVariable);
-            } else {
-              throw new MtasParserException("id " + decodedVariableValue
-                  + " not found in " + decodedVariableName);
-            }
-          } else {
-            throw new MtasParserException(
-                "variable " + decodedVariableName + " unknown");
-          }
-        }
-      } else {
-        try {
-          builder.append(new String(dec.decode(split), StandardCharsets.UTF_8));
-        } catch (IllegalArgumentException e) {
-          log.info(e);
-        }
+  protected String computeValueWithVariables(Integer tokenId,
+      Map<String, Map<String, String>> variables, boolean finished) {
+    MtasParserValue[] tokenValue = variableValues.get(tokenId);
+    String value = null;
+    if (tokenValue != null) {
+      String prefix = tokenValue[0].resolve(variables);
+      String postfix = tokenValue[1].resolve(variables);
+      if (prefix != null && postfix != null) {
+        value = prefix + MtasToken.DELIMITER + postfix;
+      }
+      if (finished || value != null) {
+        variableValues.remove(tokenId);
       }
     }
-    return builder.toString();
+    return value;
   }
 
   /**
@@ -1426,117 +1253,6 @@ public abstract class MtasBasicParser extends MtasParser {
     }
   }
 
-  /**
-   * Compute filtered split values.
-   *
-   * @param values the values
-   * @param filter the filter
-   * @return the string[]
-   * @throws MtasConfigException the mtas config exception
-   */
-  private String[] computeFilteredSplitValues(String[] values, String filter)
-      throws MtasConfigException {
-    if (filter != null) {
-      String[] filters = filter.split(",");
-      boolean[] valuesFilter = new boolean[values.length];
-      boolean doSplitFilter = false;
-      for (String item : filters) {
-        if (item.trim().matches(
-            "^" + Pattern.quote(MAPPING_FILTER_SPLIT) + "\\([0-9\\-]+\\)$")) {
-          doSplitFilter = true;
-          Pattern splitContent = Pattern
-              .compile("^" + Pattern.quote(MAPPING_FILTER_SPLIT)
-                  + "\\(([0-9]+)(-([0-9]+))?\\)$");
-          Matcher splitContentMatcher = splitContent.matcher(item.trim());
-          while (splitContentMatcher.find()) {
-            if (splitContentMatcher.group(3) == null) {
-              int i = Integer.parseInt(splitContentMatcher.group(1));
-              if (i >= 0 && i < values.length) {
-                valuesFilter[i] = true;
-              }
-            } else {
-              int i1 = Integer.parseInt(splitContentMatcher.group(1));
-              int i2 = Integer.parseInt(splitContentMatcher.group(3));
-              for (int i = Math.max(0, i1); i < Math.min(values.length,
-                  i2); i++) {
-                valuesFilter[i] = true;
-              }
-            }
-          }
-        }
-      }
-      if (doSplitFilter) {
-        int number = 0;
-        for (int i = 0; i < valuesFilter.length; i++) {
-          if (valuesFilter[i]) {
-            number++;
-          }
-        }
-        if (number > 0) {
-          String[] newValues = new String[number];
-          number = 0;
-          for (int i = 0; i < valuesFilter.length; i++) {
-            if (valuesFilter[i]) {
-              newValues[number] = values[i];
-              number++;
-            }
-          }
-          return newValues;
-        } else {
-          return new String[] {};
-        }
-      }
-    }
-    return values;
-  }
-
-  /**
-   * Compute filtered prefixed value.
-   *
-   * @param type the type
-   * @param value the value
-   * @param filter the filter
-   * @param prefix the prefix
-   * @return the string
-   * @throws MtasConfigException the mtas config exception
-   */
-  private String computeFilteredPrefixedValue(String type, String value,
-      String filter, String prefix) throws MtasConfigException {
-    String localValue = value;
-    // do magic with filter
-    if (filter != null) {
-      String[] filters = filter.split(",");
-      for (String item : filters) {
-        if (item.trim().equals(MAPPING_FILTER_UPPERCASE)) {
-          localValue = localValue == null ? null : localValue.toUpperCase();
-        } else if (item.trim().equals(MAPPING_FILTER_LOWERCASE)) {
-          localValue = localValue == null ? null : localValue.toLowerCase();
-        } else if (item.trim().equals(MAPPING_FILTER_ASCII)) {
-          if (localValue != null) {
-            char[] old = localValue.toCharArray();
-            char[] ascii = new char[4 * old.length];
-            ASCIIFoldingFilter.foldToASCII(old, 0, ascii, 0,
-                localValue.length());
-            localValue = new String(ascii);
-          }
-        } else if (item.trim()
-            .matches(Pattern.quote(MAPPING_FILTER_SPLIT) + "\\([0-9\\-]+\\)")) {
-          if (!type.equals(MtasParserMapping.PARSER_TYPE_TEXT_SPLIT)) {
-            throw new MtasConfigException(
-                "split filter not allowed for " + type);
-          }
-        } else {
-          throw new MtasConfigException(
-              "unknown filter " + item + " for value " + localValue);
-        }
-      }
-    }
-    if (localValue != null && prefix != null) {
-      localValue = prefix + localValue;
-    }
-    return localValue;
-  }
-
   /**
    * Compute maximum filtered payload.
    *
@@ -1718,6 +1434,12 @@ public abstract class MtasBasicParser extends MtasParser {
     /** The payload. */
     public List<Map<String, String>> payload;
 
+    /** The compiled pre values, created on first use. */
+    private MtasParserMappingValue[] preValuePlan = null;
+
+    /** The compiled post values, created on first use. */
+    private MtasParserMappingValue[] postValuePlan = null;
+
     /**
      * Instantiates a new mtas parser mapping token.
      *
@@ -1760,6 +1482,420 @@ public abstract class MtasBasicParser extends MtasParser {
       parent = tokenParent;
     }
 
+    /**
+     * Gets the compiled pre values.
+     *
+     * @return the pre value plan
+     */
+    private MtasParserMappingValue[] getPreValuePlan() {
+      if (preValuePlan == null) {
+        preValuePlan = MtasParserMappingValue.compile(preValues);
+      }
+      return preValuePlan;
+    }
+
+    /**
+     * Gets the compiled post values.
+     *
+     * @return the post value plan
+     */
+    private MtasParserMappingValue[] getPostValuePlan() {
+      if (postValuePlan == null) {
+        postValuePlan = MtasParserMappingValue.compile(postValues);
+      }
+      return postValuePlan;
+    }
+
+    /**
+     * Contains variables.
+     *
+     * @return true, if the pre or post values contain a variable
+     */
+    private boolean containsVariables() {
+      for (MtasParserMappingValue mappingValue : getPreValuePlan()) {
+        if (mappingValue.type.equals(MtasParserMapping.PARSER_TYPE_VARIABLE)) {
+          return true;
+        }
+      }
+      for (MtasParserMappingValue mappingValue : getPostValuePlan()) {
+        if (mappingValue.type.equals(MtasParserMapping.PARSER_TYPE_VARIABLE)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+  }
+
+  /**
+   * The Class MtasParserMappingValue. Compiled form of a mapping value, with
+   * settings, split pattern and filters parsed once instead of for every
+   * object.
+   */
+  private static final class MtasParserMappingValue {
+
+    /** The Constant FILTER_UPPERCASE. */
+    private static final int FILTER_UPPERCASE = 0;
+
+    /** The Constant FILTER_LOWERCASE. */
+    private static final int FILTER_LOWERCASE = 1;
+
+    /** The Constant FILTER_ASCII. */
+    private static final int FILTER_ASCII = 2;
+
+    /** The Constant FILTER_SPLIT_PATTERN. */
+    private static final Pattern FILTER_SPLIT_PATTERN = Pattern
+        .compile(Pattern.quote(MAPPING_FILTER_SPLIT) + "\\([0-9\\-]+\\)");
+
+    /** The Constant FILTER_SPLIT_CONTENT_PATTERN. */
+    private static final Pattern FILTER_SPLIT_CONTENT_PATTERN = Pattern
+        .compile("^" + Pattern.quote(MAPPING_FILTER_SPLIT)
+            + "\\(([0-9]+)(-([0-9]+))?\\)$");
+
+    /** The original settings. */
+    private final Map<String, String> settings;
+
+    /** The source. */
+    private final String source;
+
+    /** The type. */
+    private final String type;
+
+    /** The name. */
+    private final String name;
+
+    /** The namespace. */
+    private final String namespace;
+
+    /** The value. */
+    private final String value;
+
+    /** The text. */
+    private final String text;
+
+    /** The prefix, null if empty. */
+    private final String prefix;
+
+    /** The split pattern, only for text split. */
+    private final Pattern split;
+
+    /** The filter operations. */
+    private final int[] filterOperations;
+
+    /**
+     * The filter error, thrown after applying the preceding filter operations.
+     */
+    private final String filterError;
+
+    /** If the filter error is an unknown filter. */
+    private final boolean filterErrorUnknown;
+
+    /** The split filter ranges, null if no split filter. */
+    private final List<int[]> splitRanges;
+
+    /**
+     * Instantiates a new mtas parser mapping value.
+     *
+     * @param settings the settings
+     */
+    private MtasParserMappingValue(Map<String, String> settings) {
+      this.settings = settings;
+      source = settings.get(MAPPING_VALUE_SOURCE);
+      type = settings.get(MAPPING_VALUE_TYPE);
+      name = settings.get(MAPPING_VALUE_NAME);
+      namespace = settings.get(MAPPING_VALUE_NAMESPACE);
+      value = settings.get(MAPPING_VALUE_VALUE);
+      text = settings.get(MAPPING_VALUE_TEXT);
+      String settingsPrefix = settings.get(MAPPING_VALUE_PREFIX);
+      prefix = settingsPrefix == null || settingsPrefix.isEmpty() ? null
+          : settingsPrefix;
+      String settingsSplit = settings.get(MAPPING_VALUE_SPLIT);
+      split = MtasParserMapping.PARSER_TYPE_TEXT_SPLIT.equals(type)
+          && settingsSplit != null
+              ? Pattern.compile(Pattern.quote(settingsSplit)) : null;
+      // parse filter
+      String filter = settings.get(MAPPING_VALUE_FILTER);
+      List<Integer> operations = new ArrayList<>();
+      String error = null;
+      boolean errorUnknown = false;
+      List<int[]> ranges = null;
+      if (filter != null) {
+        for (String item : filter.split(",")) {
+          String trimmedItem = item.trim();
+          if (FILTER_SPLIT_PATTERN.matcher(trimmedItem).matches()) {
+            if (ranges == null) {
+              ranges = new ArrayList<>();
+            }
+            Matcher splitContentMatcher = FILTER_SPLIT_CONTENT_PATTERN
+                .matcher(trimmedItem);
+            while (splitContentMatcher.find()) {
+              int i1 = Integer.parseInt(splitContentMatcher.group(1));
+              int i2 = splitContentMatcher.group(3) == null ? i1 + 1
+                  : Integer.parseInt(splitContentMatcher.group(3));
+              ranges.add(new int[] { i1, i2 });
+            }
+          }
+          if (error == null) {
+            if (trimmedItem.equals(MAPPING_FILTER_UPPERCASE)) {
+              operations.add(FILTER_UPPERCASE);
+            } else if (trimmedItem.equals(MAPPING_FILTER_LOWERCASE)) {
+              operations.add(FILTER_LOWERCASE);
+            } else if (trimmedItem.equals(MAPPING_FILTER_ASCII)) {
+              operations.add(FILTER_ASCII);
+            } else if (FILTER_SPLIT_PATTERN.matcher(trimmedItem).matches()) {
+              if (!MtasParserMapping.PARSER_TYPE_TEXT_SPLIT.equals(type)) {
+                error = "split filter not allowed for " + type;
+              }
+            } else {
+              error = item;
+              errorUnknown = true;
+            }
+          }
+        }
+      }
+      filterOperations = new int[operations.size()];
+      for (int i = 0; i < filterOperations.length; i++) {
+        filterOperations[i] = operations.get(i);
+      }
+      filterError = error;
+      filterErrorUnknown = errorUnknown;
+      splitRanges = ranges;
+    }
+
+    /**
+     * Compile.
+     *
+     * @param values the values
+     * @return the compiled values
+     */
+    private static MtasParserMappingValue[] compile(
+        List<Map<String, String>> values) {
+      MtasParserMappingValue[] plan = new MtasParserMappingValue[values
+          .size()];
+      for (int i = 0; i < plan.length; i++) {
+        plan[i] = new MtasParserMappingValue(values.get(i));
+      }
+      return plan;
+    }
+
+    /**
+     * Compute filtered split values.
+     *
+     * @param values the values
+     * @return the string[]
+     */
+    private String[] computeFilteredSplitValues(String[] values) {
+      if (splitRanges == null) {
+        return values;
+      } else {
+        boolean[] valuesFilter = new boolean[values.length];
+        int number = 0;
+        for (int[] range : splitRanges) {
+          for (int i = Math.max(0, range[0]); i < Math.min(values.length,
+              range[1]); i++) {
+            if (!valuesFilter[i]) {
+              valuesFilter[i] = true;
+              number++;
+            }
+          }
+        }
+        String[] newValues = new String[number];
+        number = 0;
+        for (int i = 0; i < valuesFilter.length; i++) {
+          if (valuesFilter[i]) {
+            newValues[number] = values[i];
+            number++;
+          }
+        }
+        return newValues;
+      }
+    }
+
+    /**
+     * Compute filtered prefixed value.
+     *
+     * @param originalValue the original value
+     * @return the string
+     * @throws MtasConfigException the mtas config exception
+     */
+    private String computeFilteredPrefixedValue(String originalValue)
+        throws MtasConfigException {
+      String localValue = originalValue;
+      if (localValue != null) {
+        for (int operation : filterOperations) {
+          if (operation == FILTER_UPPERCASE) {
+            localValue = localValue.toUpperCase();
+          } else if (operation == FILTER_LOWERCASE) {
+            localValue = localValue.toLowerCase();
+          } else {
+            char[] old = localValue.toCharArray();
+            char[] ascii = new char[4 * old.length];
+            ASCIIFoldingFilter.foldToASCII(old, 0, ascii, 0,
+                localValue.length());
+            localValue = new String(ascii);
+          }
+        }
+      }
+      if (filterError != null) {
+        throw new MtasConfigException(filterErrorUnknown
+            ? "unknown filter " + filterError + " for value " + localValue
+            : filterError);
+      }
+      if (localValue != null && prefix != null) {
+        localValue = prefix + localValue;
+      }
+      return localValue;
+    }
+
+  }
+
+  /**
+   * The Class MtasParserValue. Value computed from mapping values, as literal
+   * parts alternated with references to variables, followed by a final literal
+   * part. Values without variables only consist of the final literal part.
+   */
+  private static final class MtasParserValue {
+
+    /** The Constant NONE. */
+    private static final String[] NONE = new String[0];
+
+    /** The Constant EMPTY. */
+    private static final MtasParserValue EMPTY = new MtasParserValue(NONE,
+        NONE, NONE, "");
+
+    /** The literal parts preceding each variable. */
+    private final String[] literals;
+
+    /** The variable names. */
+    private final String[] variableNames;
+
+    /** The variable ids. */
+    private final String[] variableIds;
+
+    /** The final literal part. */
+    private final String text;
+
+    /**
+     * Instantiates a new mtas parser value.
+     *
+     * @param literals the literals
+     * @param variableNames the variable names
+     * @param variableIds the variable ids
+     * @param text the text
+     */
+    private MtasParserValue(String[] literals, String[] variableNames,
+        String[] variableIds, String text) {
+      this.literals = literals;
+      this.variableNames = variableNames;
+      this.variableIds = variableIds;
+      this.text = text;
+    }
+
+    /**
+     * Adds the literal text.
+     *
+     * @param newText the new text
+     * @return the mtas parser value
+     */
+    private MtasParserValue add(String newText) {
+      return new MtasParserValue(literals, variableNames, variableIds,
+          text + newText);
+    }
+
+    /**
+     * Adds a reference to a variable.
+     *
+     * @param variableName the variable name
+     * @param variableId the variable id
+     * @return the mtas parser value
+     */
+    private MtasParserValue addVariable(String variableName,
+        String variableId) {
+      int n = literals.length;
+      String[] newLiterals = Arrays.copyOf(literals, n + 1);
+      String[] newVariableNames = Arrays.copyOf(variableNames, n + 1);
+      String[] newVariableIds = Arrays.copyOf(variableIds, n + 1);
+      newLiterals[n] = text;
+      newVariableNames[n] = variableName;
+      newVariableIds[n] = variableId;
+      return new MtasParserValue(newLiterals, newVariableNames,
+          newVariableIds, "");
+    }
+
+    /**
+     * Checks if is empty.
+     *
+     * @return true, if no variables and no text
+     */
+    private boolean isEmpty() {
+      return literals.length == 0 && text.isEmpty();
+    }
+
+    /**
+     * Removes the delimiter from the literal parts.
+     *
+     * @return the mtas parser value
+     */
+    private MtasParserValue removeDelimiter() {
+      String[] newLiterals = literals;
+      for (int i = 0; i < literals.length; i++) {
+        if (literals[i].contains(MtasToken.DELIMITER)) {
+          if (newLiterals == literals) {
+            newLiterals = literals.clone();
+          }
+          newLiterals[i] = literals[i].replace(MtasToken.DELIMITER, "");
+        }
+      }
+      if (newLiterals == literals && !text.contains(MtasToken.DELIMITER)) {
+        return this;
+      } else {
+        return new MtasParserValue(newLiterals, variableNames, variableIds,
+            text.replace(MtasToken.DELIMITER, ""));
+      }
+    }
+
+    /**
+     * Resolve the variables.
+     *
+     * @param variables the variables
+     * @return the string, or null if a variable could not be resolved
+     */
+    private String resolve(Map<String, Map<String, String>> variables) {
+      if (literals.length == 0) {
+        return text;
+      } else {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < literals.length; i++) {
+          Map<String, String> variable = variables.get(variableNames[i]);
+          String valueFromVariable = variable == null ? null
+              : variable.get(variableIds[i]);
+          if (valueFromVariable == null) {
+            return null;
+          }
+          builder.append(literals[i]).append(valueFromVariable);
+        }
+        return builder.append(text).toString();
+      }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+      if (literals.length == 0) {
+        return text;
+      } else {
+        StringBuilder builder = new StringBuilder();
+        for (String literal : literals) {
+          builder.append(literal);
+        }
+        return builder.append(text).toString();
+      }
+    }
+
   }
 
   /**
@@ -2887,6 +3023,283 @@ public abstract class MtasBasicParser extends MtasParser {
 
   }
 
+  /**
+   * The Class MtasParserTokenStream. Releases tokens from the token collection
+   * as soon as they are final and no token with a lower start position is
+   * expected anymore, in the order of the token collection iterator. Tokens
+   * get new ids in order of release, so the ids stay sequential if tokens are
+   * removed by autorepair.
+   * <p>
+   * Tokens are only released below the first position of every open mapped
+   * object, so the number of buffered tokens is bounded by the largest open
+   * mapped element (e.g. a paragraph or division), together with the tokens
+   * waiting for unresolved references, and not by the depth of the document.
+   * <p>
+   * Released tokens are kept in position order, and only provided below the
+   * watermark of the last release: the lowest start position still expected
+   * from open objects and unresolved references. A token that turns out to
+   * start before other released tokens is therefore still provided in order.
+   * If it starts before a token that was already provided, the document fails
+   * with an exception, as the tokens can't be indexed in order anymore.
+   */
+  protected class MtasParserTokenStream {
+
+    /** The minimum number of buffered tokens before a release is tried. */
+    private static final int MINIMUM_RELEASE_SIZE = 1024;
+
+    /** The released tokens, in order of position. */
+    private PriorityQueue<MtasToken> output = new PriorityQueue<>(
+        MtasTokenCollection::compareTokens);
+
+    /** The new ids plus one, by original id, 0 if not released. */
+    private int[] newIds = new int[MINIMUM_RELEASE_SIZE];
+
+    /** The original ids of removed tokens. */
+    private Set<Integer> removedIds = new HashSet<>();
+
+    /** The lower bound for the start position of pending tokens. */
+    private Map<Integer, Integer> pendingBounds = new HashMap<>();
+
+    /** The next new id. */
+    private int nextId = 0;
+
+    /** The start position of the last polled token. */
+    private int polledPosition = -1;
+
+    /** The watermark of the last release, below which tokens are provided. */
+    private int pollLimit = -1;
+
+    /** The number of buffered tokens before the next release is tried. */
+    private int releaseSize = MINIMUM_RELEASE_SIZE;
+
+    /** The finished. */
+    private boolean finished = false;
+
+    /**
+     * Checks if a release should be tried.
+     *
+     * @return true, if successful
+     */
+    public boolean needsRelease() {
+      return tokenCollection.size() >= releaseSize;
+    }
+
+    /**
+     * Checks if is finished.
+     *
+     * @return true, if all tokens are released
+     */
+    public boolean isFinished() {
+      return finished;
+    }
+
+    /**
+     * Checks if released tokens are available.
+     *
+     * @return true, if successful
+     */
+    public boolean hasToken() {
+      return !output.isEmpty() && output.peek().getPositionStart() < pollLimit;
+    }
+
+    /**
+     * Poll.
+     *
+     * @return the next released token, or null
+     */
+    public MtasToken poll() {
+      if (hasToken()) {
+        MtasToken token = output.poll();
+        polledPosition = token.getPositionStart();
+        return token;
+      } else {
+        return null;
+      }
+    }
+
+    /**
+     * Release tokens.
+     *
+     * @param nextPosition the next position to be assigned
+     * @param currentList the current list
+     * @param updateList the update list
+     * @param refBounds the lower bounds for the start position of tokens
+     *          pending position updates, from references already resolved
+     * @param last if no more tokens will be created
+     * @throws MtasParserException the mtas parser exception
+     */
+    public void release(int nextPosition,
+        Map<String, List<MtasParserObject>> currentList,
+        Map<String, Map<Integer, Set<String>>> updateList,
+        Map<Integer, Integer> refBounds, boolean last)
+        throws MtasParserException {
+      int watermark = Integer.MAX_VALUE;
+      Set<Integer> unfinished = new HashSet<>();
+      if (!last) {
+        // positions of open objects and references from open objects
+        watermark = nextPosition;
+        for (List<MtasParserObject> list : currentList.values()) {
+          for (MtasParserObject object : list) {
+            if (!object.getPositions().isEmpty()) {
+              watermark = Math.min(watermark, object.getPositions().first());
+            }
+            unfinished.addAll(object.getUpdateableMappingsAsParent());
+            unfinished.addAll(object.updateableMappingsWithPosition);
+            unfinished.addAll(object.updateableMappingsWithOffset);
+          }
+        }
+        // pending tokens get positions from objects not closed yet
+        Set<Integer> pending = new HashSet<>();
+        for (Map<Integer, Set<String>> updates : updateList.values()) {
+          pending.addAll(updates.keySet());
+        }
+        pendingBounds.keySet().retainAll(pending);
+        int objectWatermark = watermark;
+        for (Integer tokenId : pending) {
+          Integer bound = pendingBounds.get(tokenId);
+          if (bound == null) {
+            bound = objectWatermark;
+            if (refBounds != null && refBounds.containsKey(tokenId)) {
+              bound = Math.min(bound, refBounds.get(tokenId));
+            }
+            pendingBounds.put(tokenId, bound);
+          }
+          watermark = Math.min(watermark, bound);
+        }
+        unfinished.addAll(pending);
+        for (Integer tokenId : unfinished) {
+          MtasToken token = tokenCollection.get(tokenId);
+          if (token != null && token.getPositionStart() != null) {
+            watermark = Math.min(watermark, token.getPositionStart());
+          }
+        }
+      }
+      // select final tokens
+      List<MtasToken> batch = new ArrayList<>();
+      for (MtasToken token : new ArrayList<>(tokenCollection.getTokens())) {
+        if (!unfinished.contains(token.getId())) {
+          if (!isValid(token)) {
+            tokenCollection.remove(token.getId());
+            removedIds.add(token.getId());
+          } else if (token.getPositionStart() < watermark) {
+            batch.add(token);
+          }
+        }
+      }
+      // tokens with a parent that can't be released yet have to wait
+      boolean changed = true;
+      while (changed) {
+        changed = false;
+        Set<Integer> batchIds = new HashSet<>();
+        for (MtasToken token : batch) {
+          batchIds.add(token.getId());
+        }
+        for (MtasToken token : batch) {
+          Integer parentId = token.getParentId();
+          if (parentId != null && getNewId(parentId) == null
+              && !removedIds.contains(parentId)
+              && !batchIds.contains(parentId)) {
+            if (last) {
+              token.setParentId(null);
+            } else if (token.getPositionStart() < watermark) {
+              watermark = token.getPositionStart();
+              changed = true;
+            }
+          }
+        }
+        if (changed) {
+          final int currentWatermark = watermark;
+          batch.removeIf(t -> t.getPositionStart() >= currentWatermark);
+        }
+      }
+      // tokens before a polled token can't be provided in order anymore
+      for (MtasToken token : batch) {
+        if (token.getPositionStart() < polledPosition) {
+          throw new MtasParserException("can't stream token with id "
+              + token.getId() + " (" + token.getValue()
+              + "), position already passed; disable streaming");
+        }
+      }
+      Collections.sort(batch, MtasTokenCollection::compareTokens);
+      // assign new ids
+      for (MtasToken token : batch) {
+        setNewId(token.getId(), ++nextId);
+      }
+      // release
+      for (MtasToken token : batch) {
+        tokenCollection.remove(token.getId());
+        Integer parentId = token.getParentId();
+        token.setId(getNewId(token.getId()));
+        token.setParentId(parentId == null ? null : getNewId(parentId));
+        output.add(token);
+      }
+      // hold back released tokens while lower positions are still expected
+      pollLimit = watermark;
+      releaseSize = Math.max(MINIMUM_RELEASE_SIZE, 2 * tokenCollection.size());
+      finished = last;
+    }
+
+    /**
+     * Sets the new id.
+     *
+     * @param oldId the original id
+     * @param newIdPlusOne the new id plus one
+     */
+    private void setNewId(int oldId, int newIdPlusOne) {
+      if (oldId >= newIds.length) {
+        newIds = Arrays.copyOf(newIds, Math.max(oldId + 1, 2 * newIds.length));
+      }
+      newIds[oldId] = newIdPlusOne;
+    }
+
+    /**
+     * Gets the new id.
+     *
+     * @param oldId the original id
+     * @return the new id, or null if not released
+     */
+    private Integer getNewId(int oldId) {
+      if (oldId < newIds.length && newIds[oldId] > 0) {
+        return newIds[oldId] - 1;
+      } else {
+        return null;
+      }
+    }
+
+    /**
+     * Checks if a final token is valid. Invalid tokens are removed if
+     * autorepair is enabled, otherwise an exception is thrown.
+     *
+     * @param token the token
+     * @return true, if is valid
+     * @throws MtasParserException the mtas parser exception
+     */
+    private boolean isValid(MtasToken token) throws MtasParserException {
+      if (token.getPositionStart() == null
+          || token.getPositionEnd() == null) {
+        if (autorepair) {
+          return false;
+        }
+        throw new MtasParserException("no position for token with id "
+            + token.getId() + " (" + token.getValue() + ")");
+      } else if (token.getValue() == null || token.getValue().isEmpty()) {
+        if (autorepair) {
+          return false;
+        }
+        throw new MtasParserException(
+            "no value for token with id " + token.getId());
+      } else if (token.getPrefix() == null || token.getPrefix().isEmpty()) {
+        if (autorepair) {
+          return false;
+        }
+        throw new MtasParserException(
+            "no prefix for token with id " + token.getId());
+      }
+      return true;
+    }
+
+  }
+
   /**
    * The Class MtasParserObject.
    */
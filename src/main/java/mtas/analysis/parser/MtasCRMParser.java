@@ -269,6 +269,27 @@ public class MtasCRMParser extends MtasBasicParser {
     }
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see mtas.analysis.parser.MtasParser#isReusable()
+   */
+  @Override
+  public boolean isReusable() {
+    return true;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see mtas.analysis.parser.MtasParser#resetParser()
+   */
+  @Override
+  public void resetParser() {
+    super.resetParser();
+    historyPair.clear();
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -1,6 +1,9 @@
 package mtas.analysis.parser;
 
 import java.io.Reader;
+import java.util.Iterator;
+
+import mtas.analysis.token.MtasToken;
 import mtas.analysis.token.MtasTokenCollection;
 import mtas.analysis.util.MtasConfigException;
 import mtas.analysis.util.MtasConfiguration;
@@ -23,6 +26,12 @@ abstract public class MtasParser {
   /** The makeunique. */
   protected Boolean makeunique = false;
 
+  /** The streaming. */
+  protected Boolean streaming = false;
+
+  /** The token iterator, if tokens are not streamed by the parser. */
+  private Iterator<MtasToken> tokenIterator = null;
+
   /** The Constant TOKEN_OFFSET. */
   protected static final String TOKEN_OFFSET = "offset";
 
@@ -63,6 +72,9 @@ abstract public class MtasParser {
         if (current.name.equals("makeunique")) {
           makeunique = current.attributes.get("value").equals("true");
         }
+        if (current.name.equals("streaming")) {
+          streaming = current.attributes.get("value").equals("true");
+        }
       }
     }
   }
@@ -78,6 +90,64 @@ abstract public class MtasParser {
   public abstract MtasTokenCollection createTokenCollection(Reader reader)
       throws MtasParserException, MtasConfigException;
 
+  /**
+   * Checks if tokens are streamed, i.e. provided by {@link #nextToken()} as
+   * soon as they are final, without creating the full token collection.
+   *
+   * @return true, if is streaming
+   */
+  public boolean isStreaming() {
+    return false;
+  }
+
+  /**
+   * Start providing tokens with {@link #nextToken()}. By default, the full
+   * token collection is created.
+   *
+   * @param reader the reader
+   * @throws MtasParserException the mtas parser exception
+   * @throws MtasConfigException the mtas config exception
+   */
+  public void startTokenStream(Reader reader)
+      throws MtasParserException, MtasConfigException {
+    tokenIterator = createTokenCollection(reader).iterator();
+  }
+
+  /**
+   * Next token, in the same order as provided by the iterator of the token
+   * collection.
+   *
+   * @return the next token, or null if there are no more tokens
+   * @throws MtasParserException the mtas parser exception
+   * @throws MtasConfigException the mtas config exception
+   */
+  public MtasToken nextToken() throws MtasParserException, MtasConfigException {
+    if (tokenIterator != null && tokenIterator.hasNext()) {
+      return tokenIterator.next();
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Checks if the parser can be used for another document after
+   * {@link #resetParser()}, without processing the configuration again.
+   *
+   * @return true, if is reusable
+   */
+  public boolean isReusable() {
+    return false;
+  }
+
+  /**
+   * Reset the parser for a new document. The processed configuration is kept,
+   * all state of the previous document is removed.
+   */
+  public void resetParser() {
+    tokenCollection = null;
+    tokenIterator = null;
+  }
+
   /**
    * Prints the config.
    *
@@ -94,6 +94,16 @@ public class MtasPennTreebankParser extends MtasParser {
     }
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see mtas.analysis.parser.MtasParser#isReusable()
+   */
+  @Override
+  public boolean isReusable() {
+    return true;
+  }
+
   /*
    * (non-Javadoc)
    * 
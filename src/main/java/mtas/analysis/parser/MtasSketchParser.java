@@ -119,6 +119,16 @@ final public class MtasSketchParser extends MtasBasicParser {
     }
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see mtas.analysis.parser.MtasParser#isReusable()
+   */
+  @Override
+  public boolean isReusable() {
+    return true;
+  }
+
   /*
    * (non-Javadoc)
    * 
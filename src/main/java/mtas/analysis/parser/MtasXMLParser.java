@@ -2,8 +2,10 @@ package mtas.analysis.parser;
 
 import java.io.Reader;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -78,6 +80,9 @@ abstract class MtasXMLParser extends MtasBasicParser {
   /** The word annotation types. */
   private Map<QName, MtasParserType<MtasParserMapping<?>>> wordAnnotationTypes = new HashMap<>();
 
+  /** The state, only used when streaming. */
+  private MtasXMLParserState streamState = null;
+
   /** The variable types. */
   private Map<QName, MtasParserType<MtasParserVariable>> variableTypes = new HashMap<>();
 
@@ -349,6 +354,28 @@ abstract class MtasXMLParser extends MtasBasicParser {
     }
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see mtas.analysis.parser.MtasParser#isReusable()
+   */
+  @Override
+  public boolean isReusable() {
+    return true;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see mtas.analysis.parser.MtasParser#resetParser()
+   */
+  @Override
+  public void resetParser() {
+    super.resetParser();
+    streamState = null;
+    relationKeyMap.clear();
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -357,546 +384,106 @@ abstract class MtasXMLParser extends MtasBasicParser {
   @Override
   public MtasTokenCollection createTokenCollection(Reader reader)
       throws MtasParserException, MtasConfigException {
-    Boolean hasRoot = rootTag == null ? true : false;
-    Boolean parsingContent = contentTag == null ? true : false;
-    String textContent = null;
-    Integer unknownAncestors = 0;
-    Integer lastOffset = 0;
-
-    AtomicInteger position = new AtomicInteger(0);
-    Map<String, Set<Integer>> idPositions = new HashMap<>();
-    Map<String, Integer[]> idOffsets = new HashMap<>();
-
-    Map<String, Map<Integer, Set<String>>> updateList = createUpdateList();
-    Map<String, List<MtasParserObject>> currentList = createCurrentList();
-    Map<String, Map<String, String>> variables = createVariables();
-
-    tokenCollection = new MtasTokenCollection();
-    MtasTokenIdFactory mtasTokenIdFactory = new MtasTokenIdFactory();
-    XMLInputFactory factory = XMLInputFactory.newInstance();
-    try {      
-      XMLStreamReader streamReader = factory.createXMLStreamReader(reader);
-      QName qname;
+    tokenStream = null;
+    MtasXMLParserState state = new MtasXMLParserState(reader);
+    try {
       try {
-        int event = streamReader.getEventType();
-        MtasParserType<?> currentType;
-        MtasParserType<?> tmpCurrentType;
-        MtasParserType<?> tmpVariableType;
-        MtasParserObject currentObject = null;
-        MtasParserObject variableObject = null;
-        while (true) {
-          switch (event) {
-          case XMLStreamConstants.START_DOCUMENT:
-            log.debug("start of document");
-            String encodingScheme = streamReader.getCharacterEncodingScheme();
-            if (encodingScheme == null) {
-              //ignore for now
-              log.info("No encodingScheme found, assume utf-8");
-              //throw new MtasParserException("No encodingScheme found");              
-            } else if (!encodingScheme.equalsIgnoreCase("utf-8")) {
-              throw new MtasParserException(
-                  "XML not UTF-8 encoded but '" + encodingScheme + "'");
-            }
-            break;
-          case XMLStreamConstants.END_DOCUMENT:
-            log.debug("end of document");
-            break;
-          case XMLStreamConstants.SPACE:
-            // set offset (end of start-element)
-            lastOffset = streamReader.getLocation().getCharacterOffset();
-            break;
-          case XMLStreamConstants.START_ELEMENT:
-            // get data
-            qname = streamReader.getName();
-            // check for rootTag
-            if (!hasRoot) {
-              if (qname.equals(getQName(rootTag))) {
-                hasRoot = true;
-              } else {
-                throw new MtasParserException("No " + rootTag);
-              }
-              // parse content
-            } else {
-              if ((tmpVariableType = variableTypes.get(qname)) != null) {
-                variableObject = new MtasParserObject(tmpVariableType);
-                collectAttributes(variableObject, streamReader);
-                computeVariablesFromObject(variableObject, currentList,
-                    variables);
-              }
-              if (parsingContent) {
-                // check for relation : not within word, not within
-                // groupAnnotation
-                if ((currentList.get(MAPPING_TYPE_WORD).isEmpty())
-                    && (currentList.get(MAPPING_TYPE_GROUP_ANNOTATION)
-                        .isEmpty())
-                    && (tmpCurrentType = relationTypes.get(qname)) != null) {
-                  currentObject = new MtasParserObject(tmpCurrentType);
-                  collectAttributes(currentObject, streamReader);
-                  currentObject.setUnknownAncestorNumber(unknownAncestors);
-                  currentObject.setRealOffsetStart(lastOffset);
-                  if (!prevalidateObject(currentObject, currentList)) {
-                    unknownAncestors++;
-                  } else {
-                    currentType = tmpCurrentType;
-                    currentList.get(MAPPING_TYPE_RELATION).add(currentObject);
-                    unknownAncestors = 0;
-                  }
-                  // check for relation annotation: not within word, but within
-                  // relation
-                } else if ((currentList.get(MAPPING_TYPE_WORD).isEmpty())
-                    && (!currentList.get(MAPPING_TYPE_RELATION).isEmpty())
-                    && (tmpCurrentType = relationAnnotationTypes
-                        .get(qname)) != null) {
-                  currentObject = new MtasParserObject(tmpCurrentType);
-                  collectAttributes(currentObject, streamReader);
-                  currentObject.setUnknownAncestorNumber(unknownAncestors);
-                  currentObject.setRealOffsetStart(lastOffset);
-                  if (!prevalidateObject(currentObject, currentList)) {
-                    unknownAncestors++;
-                  } else {
-                    currentType = tmpCurrentType;
-                    currentList.get(MAPPING_TYPE_RELATION_ANNOTATION)
-                        .add(currentObject);
-                    unknownAncestors = 0;
-                  }
-                  // check for group: not within word, not within relation, not
-                  // within groupAnnotation
-                } else if ((currentList.get(MAPPING_TYPE_WORD).isEmpty())
-                    && (currentList.get(MAPPING_TYPE_RELATION).isEmpty())
-                    && (currentList.get(MAPPING_TYPE_GROUP_ANNOTATION)
-                        .isEmpty())
-                    && (tmpCurrentType = groupTypes.get(qname)) != null) {
-                  currentObject = new MtasParserObject(tmpCurrentType);
-                  collectAttributes(currentObject, streamReader);
-                  currentObject.setUnknownAncestorNumber(unknownAncestors);
-                  currentObject.setRealOffsetStart(lastOffset);
-                  if (!prevalidateObject(currentObject, currentList)) {
-                    unknownAncestors++;
-                  } else {
-                    currentType = tmpCurrentType;
-                    currentList.get(MAPPING_TYPE_GROUP).add(currentObject);
-                    unknownAncestors = 0;
-                  }
-                  // check for group annotation: not within word, not within
-                  // relation, but within group
-                } else if ((currentList.get(MAPPING_TYPE_WORD).isEmpty())
-                    && (currentList.get(MAPPING_TYPE_RELATION).isEmpty())
-                    && (!currentList.get(MAPPING_TYPE_GROUP).isEmpty())
-                    && (tmpCurrentType = groupAnnotationTypes
-                        .get(qname)) != null) {
-                  currentObject = new MtasParserObject(tmpCurrentType);
-                  collectAttributes(currentObject, streamReader);
-                  currentObject.setUnknownAncestorNumber(unknownAncestors);
-                  currentObject.setRealOffsetStart(lastOffset);
-                  if (!prevalidateObject(currentObject, currentList)) {
-                    unknownAncestors++;
-                  } else {
-                    currentType = tmpCurrentType;
-                    currentList.get(MAPPING_TYPE_GROUP_ANNOTATION)
-                        .add(currentObject);
-                    unknownAncestors = 0;
-                  }
-                  // check for word: not within relation, not within
-                  // groupAnnotation, not within word, not within wordAnnotation
-                } else if ((currentList.get(MAPPING_TYPE_RELATION).isEmpty())
-                    && (currentList.get(MAPPING_TYPE_GROUP_ANNOTATION)
-                        .isEmpty())
-                    && (currentList.get(MAPPING_TYPE_WORD).isEmpty())
-                    && (currentList.get(MAPPING_TYPE_WORD_ANNOTATION).isEmpty())
-                    && (tmpCurrentType = wordTypes.get(qname)) != null) {
-                  currentObject = new MtasParserObject(tmpCurrentType);
-                  collectAttributes(currentObject, streamReader);
-                  currentObject.setUnknownAncestorNumber(unknownAncestors);
-                  currentObject.setOffsetStart(lastOffset);
-                  currentObject.setRealOffsetStart(lastOffset);
-                  if (!prevalidateObject(currentObject, currentList)) {
-                    unknownAncestors++;
-                  } else {
-                    currentType = tmpCurrentType;
-                    currentObject.addPosition(position.getAndIncrement());
-                    currentList.get(MAPPING_TYPE_WORD).add(currentObject);
-                    unknownAncestors = 0;
-                  }
-                  // check for word annotation: not within relation, not within
-                  // groupAnnotation, but within word
-                } else if ((currentList.get(MAPPING_TYPE_RELATION).isEmpty())
-                    && (currentList.get(MAPPING_TYPE_GROUP_ANNOTATION)
-                        .isEmpty())
-                    && (!currentList.get(MAPPING_TYPE_WORD).isEmpty())
-                    && (tmpCurrentType = wordAnnotationTypes
-                        .get(qname)) != null) {
-                  currentObject = new MtasParserObject(tmpCurrentType);
-                  collectAttributes(currentObject, streamReader);
-                  currentObject.addPositions(currentList.get(MAPPING_TYPE_WORD)
-                      .get((currentList.get(MAPPING_TYPE_WORD).size() - 1))
-                      .getPositions());
-                  currentObject.setUnknownAncestorNumber(unknownAncestors);
-                  currentObject.setRealOffsetStart(lastOffset);
-                  if (!prevalidateObject(currentObject, currentList)) {
-                    unknownAncestors++;
-                  } else {
-                    currentType = tmpCurrentType;
-                    currentList.get(MAPPING_TYPE_WORD_ANNOTATION)
-                        .add(currentObject);
-                    unknownAncestors = 0;
-                  }
-                  // check for references: within relation
-                } else if (!currentList.get(MAPPING_TYPE_RELATION).isEmpty()
-                    && (tmpCurrentType = refTypes.get(qname)) != null) {
-                  currentObject = new MtasParserObject(tmpCurrentType);
-                  collectAttributes(currentObject, streamReader);
-                  currentObject.setUnknownAncestorNumber(unknownAncestors);
-                  currentObject.setRealOffsetStart(lastOffset);
-                  if (!prevalidateObject(currentObject, currentList)) {
-                    unknownAncestors++;
-                  } else {
-                    currentType = tmpCurrentType;
-                    currentList.get(MAPPING_TYPE_REF).add(currentObject);
-                    unknownAncestors = 0;
-                    // add reference to ancestor relations
-                    for (MtasParserObject currentRelation : currentList
-                        .get(MAPPING_TYPE_RELATION)) {
-                      currentRelation.addRefId(currentObject
-                          .getAttribute(currentType.getRefAttributeName()));
-                      // register mapping for relation (for recursive relations)
-                      SortedSet<String> keyMapList;
-                      if (currentRelation.getId() != null) {
-                        if (relationKeyMap
-                            .containsKey(currentRelation.getId())) {
-                          keyMapList = relationKeyMap
-                              .get(currentRelation.getId());
-                        } else {
-                          keyMapList = new TreeSet<>();
-                          relationKeyMap.put(currentRelation.getId(),
-                              keyMapList);
-                        }
-                        keyMapList.add(currentObject
-                            .getAttribute(currentType.getRefAttributeName()));
-                      }
-                    }
-                  }
-                } else {
-                  unknownAncestors++;
-                }
-                // check for start content
-              } else if (qname.equals(getQName(contentTag))) {
-                parsingContent = true;
-                // unexpected
-              } else if (!allowNonContent) {
-                throw new MtasParserException(
-                    "Unexpected " + qname.getLocalPart() + " in document");
-              }
-            }
-            // set offset (end of start-element)
-            lastOffset = streamReader.getLocation().getCharacterOffset();
-            break;
-          case XMLStreamConstants.END_ELEMENT:
-            // set offset (end of end-element)
-            lastOffset = streamReader.getLocation().getCharacterOffset();
-            // get data
-            qname = streamReader.getName();
-            // parse content
-            if (parsingContent) {
-              if (unknownAncestors > 0) {
-                unknownAncestors--;
-                // check for reference: because otherwise currentList should
-                // contain no references
-              } else if (!currentList.get(MAPPING_TYPE_REF).isEmpty()) {
-                if ((currentType = refTypes.get(qname)) != null) {
-                  currentObject = currentList.get(MAPPING_TYPE_REF)
-                      .remove(currentList.get(MAPPING_TYPE_REF).size() - 1);
-                  assert currentObject.getType()
-                      .equals(currentType) : "object expected to be "
-                          + currentObject.getType().getName() + ", not "
-                          + currentType.getName();
-                  assert unknownAncestors == 0 : "error in administration "
-                      + currentObject.getType().getName();
-                  // ignore text and realOffset: not relevant
-                  idPositions.put(currentObject.getId(),
-                      currentObject.getPositions());
-                  idOffsets.put(currentObject.getId(),
-                      currentObject.getOffset());
-                  currentObject.updateMappings(idPositions, idOffsets);
-                  unknownAncestors = currentObject.getUnknownAncestorNumber();
-                  computeMappingsFromObject(mtasTokenIdFactory, currentObject,
-                      currentList, updateList);
-                } else {
-                  // this shouldn't happen
-                }
-                // check for wordAnnotation: because otherwise currentList
-                // should contain no wordAnnotations
-              } else if (!currentList.get(MAPPING_TYPE_WORD_ANNOTATION)
-                  .isEmpty()) {
-                if ((currentType = wordAnnotationTypes.get(qname)) != null) {
-                  currentObject = currentList.get(MAPPING_TYPE_WORD_ANNOTATION)
-                      .remove(
-                          currentList.get(MAPPING_TYPE_WORD_ANNOTATION).size()
-                              - 1);
-                  assert currentObject.getType()
-                      .equals(currentType) : "object expected to be "
-                          + currentObject.getType().getName() + ", not "
-                          + currentType.getName();
-                  assert unknownAncestors == 0 : "error in administration "
-                      + currentObject.getType().getName();
-                  currentObject.setRealOffsetEnd(lastOffset);
-                  idPositions.put(currentObject.getId(),
-                      currentObject.getPositions());
-                  idOffsets.put(currentObject.getId(),
-                      currentObject.getOffset());
-                  // offset always null, so update later with word (should be
-                  // possible)
-                  if ((currentObject.getId() != null)
-                      && (!currentList.get(MAPPING_TYPE_WORD).isEmpty())) {
-                    currentList.get(MAPPING_TYPE_WORD)
-                        .get((currentList.get(MAPPING_TYPE_WORD).size() - 1))
-                        .addUpdateableIdWithOffset(currentObject.getId());
-                  }
-                  currentObject.updateMappings(idPositions, idOffsets);
-                  unknownAncestors = currentObject.getUnknownAncestorNumber();
-                  computeMappingsFromObject(mtasTokenIdFactory, currentObject,
-                      currentList, updateList);
-                } else {
-                  // this shouldn't happen
-                }
-                // check for word: because otherwise currentList should contain
-                // no words
-              } else if (!currentList.get(MAPPING_TYPE_WORD).isEmpty()) {
-                if ((currentType = wordTypes.get(qname)) != null) {
-                  currentObject = currentList.get(MAPPING_TYPE_WORD)
-                      .remove(currentList.get(MAPPING_TYPE_WORD).size() - 1);
-                  assert currentObject.getType()
-                      .equals(currentType) : "object expected to be "
-                          + currentObject.getType().getName() + ", not "
-                          + currentType.getName();
-                  assert unknownAncestors == 0 : "error in administration "
-                      + currentObject.getType().getName();
-                  currentObject.setOffsetEnd(lastOffset);
-                  currentObject.setRealOffsetEnd(lastOffset);
-                  // update ancestor groups with position and offset
-                  for (MtasParserObject currentGroup : currentList
-                      .get(MAPPING_TYPE_GROUP)) {
-                    currentGroup.addPositions(currentObject.getPositions());
-                    currentGroup.addOffsetStart(currentObject.getOffsetStart());
-                    currentGroup.addOffsetEnd(currentObject.getOffsetEnd());
-                  }
-                  idPositions.put(currentObject.getId(),
-                      currentObject.getPositions());
-                  idOffsets.put(currentObject.getId(),
-                      currentObject.getOffset());
-                  currentObject.updateMappings(idPositions, idOffsets);
-                  unknownAncestors = currentObject.getUnknownAncestorNumber();
-                  computeMappingsFromObject(mtasTokenIdFactory, currentObject,
-                      currentList, updateList);
-                } else {
-                  // this shouldn't happen
-                }
-                // check for group annotation: because otherwise currentList
-                // should contain no groupAnnotations
-              } else if (!currentList.get(MAPPING_TYPE_GROUP_ANNOTATION)
-                  .isEmpty()) {
-                if ((currentType = groupAnnotationTypes.get(qname)) != null) {
-                  currentObject = currentList.get(MAPPING_TYPE_GROUP_ANNOTATION)
-                      .remove(
-                          currentList.get(MAPPING_TYPE_GROUP_ANNOTATION).size()
-                              - 1);
-                  assert currentObject.getType()
-                      .equals(currentType) : "object expected to be "
-                          + currentObject.getType().getName() + ", not "
-                          + currentType.getName();
-                  assert unknownAncestors == 0 : "error in administration "
-                      + currentObject.getType().getName();
-                  currentObject.setRealOffsetEnd(lastOffset);
-                  idPositions.put(currentObject.getId(),
-                      currentObject.getPositions());
-                  idOffsets.put(currentObject.getId(),
-                      currentObject.getOffset());
-                  currentObject.updateMappings(idPositions, idOffsets);
-                  unknownAncestors = currentObject.getUnknownAncestorNumber();
-                  computeMappingsFromObject(mtasTokenIdFactory, currentObject,
-                      currentList, updateList);
-                } else {
-                  // this shouldn't happen
-                }
-                // check for relation annotation
-              } else if (!currentList.get(MAPPING_TYPE_RELATION_ANNOTATION)
-                  .isEmpty()) {
-                if ((currentType = relationAnnotationTypes
-                    .get(qname)) != null) {
-                  currentObject = currentList
-                      .get(MAPPING_TYPE_RELATION_ANNOTATION).remove(currentList
-                          .get(MAPPING_TYPE_RELATION_ANNOTATION).size() - 1);
-                  assert currentObject.getType()
-                      .equals(currentType) : "object expected to be "
-                          + currentObject.getType().getName() + ", not "
-                          + currentType.getName();
-                  assert unknownAncestors == 0 : "error in administration "
-                      + currentObject.getType().getName();
-                  currentObject.setRealOffsetEnd(lastOffset);
-                  idPositions.put(currentObject.getId(),
-                      currentObject.getPositions());
-                  idOffsets.put(currentObject.getId(),
-                      currentObject.getOffset());
-                  currentObject.updateMappings(idPositions, idOffsets);
-                  unknownAncestors = currentObject.getUnknownAncestorNumber();
-                  computeMappingsFromObject(mtasTokenIdFactory, currentObject,
-                      currentList, updateList);
-                } else {
-                  // this shouldn't happen
-                }
-                // check for relation
-              } else if (!currentList.get(MAPPING_TYPE_RELATION).isEmpty()) {
-                if ((currentType = relationTypes.get(qname)) != null) {
-                  currentObject = currentList.get(MAPPING_TYPE_RELATION).remove(
-                      currentList.get(MAPPING_TYPE_RELATION).size() - 1);
-                  assert currentObject.getType()
-                      .equals(currentType) : "object expected to be "
-                          + currentObject.getType().getName() + ", not "
-                          + currentType.getName();
-                  assert unknownAncestors == 0 : "error in administration "
-                      + currentObject.getType().getName();
-                  // ignore text: should not occur
-                  currentObject.setRealOffsetEnd(lastOffset);
-                  idPositions.put(currentObject.getId(),
-                      currentObject.getPositions());
-                  idOffsets.put(currentObject.getId(),
-                      currentObject.getOffset());
-                  currentObject.updateMappings(idPositions, idOffsets);
-                  unknownAncestors = currentObject.getUnknownAncestorNumber();
-                  computeMappingsFromObject(mtasTokenIdFactory, currentObject,
-                      currentList, updateList);
-                } else {
-                  // this shouldn't happen
-                }
-                // check for group
-              } else if (!currentList.get(MAPPING_TYPE_GROUP).isEmpty()) {
-                if ((currentType = groupTypes.get(qname)) != null) {
-                  currentObject = currentList.get(MAPPING_TYPE_GROUP)
-                      .remove(currentList.get(MAPPING_TYPE_GROUP).size() - 1);
-                  assert currentObject.getType()
-                      .equals(currentType) : "object expected to be "
-                          + currentObject.getType().getName() + ", not "
-                          + currentType.getName();
-                  assert unknownAncestors == 0 : "error in administration "
-                      + currentObject.getType().getName();
-                  // ignore text: should not occur
-                  currentObject.setRealOffsetEnd(lastOffset);
-                  idPositions.put(currentObject.getId(),
-                      currentObject.getPositions());
-                  idOffsets.put(currentObject.getId(),
-                      currentObject.getOffset());
-                  currentObject.updateMappings(idPositions, idOffsets);
-                  unknownAncestors = currentObject.getUnknownAncestorNumber();
-                  computeMappingsFromObject(mtasTokenIdFactory, currentObject,
-                      currentList, updateList);
-                } else {
-                  unknownAncestors--;
-                }
-              } else if (qname.equals(getQName("text"))) {
-                parsingContent = false;
-                assert unknownAncestors == 0 : "error in administration unknownAncestors";
-                assert currentList.get(MAPPING_TYPE_REF)
-                    .isEmpty() : "error in administration references";
-                assert currentList.get(MAPPING_TYPE_GROUP)
-                    .isEmpty() : "error in administration groups";
-                assert currentList.get(MAPPING_TYPE_GROUP_ANNOTATION)
-                    .isEmpty() : "error in administration groupAnnotations";
-                assert currentList.get(MAPPING_TYPE_WORD)
-                    .isEmpty() : "error in administration words";
-                assert currentList.get(MAPPING_TYPE_WORD_ANNOTATION)
-                    .isEmpty() : "error in administration wordAnnotations";
-                assert currentList.get(MAPPING_TYPE_RELATION)
-                    .isEmpty() : "error in administration relations";
-                assert currentList.get(MAPPING_TYPE_RELATION_ANNOTATION)
-                    .isEmpty() : "error in administration relationAnnotations";
-              }
-            }
-            // forget text
-            textContent = null;
-            break;
-          case XMLStreamConstants.CHARACTERS:
-            // set offset (end of start-element)
-            lastOffset = streamReader.getLocation().getCharacterOffset();
-            // check for text
-            if (streamReader.hasText()) {
-              textContent = streamReader.getText();
-            }
-            if (currentObject != null && unknownAncestors.equals(0)) {
-              currentObject.addText(textContent);
-            }
-            break;
-          default:
-            break;
-          }
-          if (!streamReader.hasNext()) {
-            break;
-          }
-          event = streamReader.next();
+        while (!state.finished) {
+          state.processEvent();
         }
       } finally {
-        streamReader.close();
+        state.close();
       }
-      // final checks
-      assert unknownAncestors == 0 : "error in administration unknownAncestors";
-      assert hasRoot : "no " + rootTag;
     } catch (XMLStreamException e) {
-      log.debug(e);      
+      log.debug(e);
       throw new MtasParserException("No valid XML: " + e.getMessage());
     }
+    state.updateTokens(true);
+    // final check
+    tokenCollection.check(autorepair, makeunique);
+    return tokenCollection;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see mtas.analysis.parser.MtasParser#isStreaming()
+   */
+  @Override
+  public boolean isStreaming() {
+    return streaming;
+  }
 
-    // update tokens with variable
-    for (Entry<Integer, Set<String>> updateItem : updateList
-        .get(UPDATE_TYPE_VARIABLE).entrySet()) {
-      MtasToken token = tokenCollection.get(updateItem.getKey());
-      String encodedPrefix = token.getPrefix();
-      String encodedPostfix = token.getPostfix();
-      token.setValue(decodeAndUpdateWithVariables(encodedPrefix, encodedPostfix,
-          variables));
+  /*
+   * (non-Javadoc)
+   * 
+   * @see mtas.analysis.parser.MtasParser#startTokenStream(java.io.Reader)
+   */
+  @Override
+  public void startTokenStream(Reader reader)
+      throws MtasParserException, MtasConfigException {
+    if (streaming) {
+      tokenStream = new MtasParserTokenStream();
+      streamState = new MtasXMLParserState(reader);
+    } else {
+      tokenStream = null;
+      streamState = null;
+      super.startTokenStream(reader);
     }
-    // update tokens with offset
-    for (Entry<Integer, Set<String>> updateItem : updateList
-        .get(UPDATE_TYPE_OFFSET).entrySet()) {
-      Set<String> refIdList = new HashSet<>();
-      for (String refId : updateItem.getValue()) {
-        if (idPositions.containsKey(refId)) {
-          refIdList.add(refId);
-        }
-        if (relationKeyMap.containsKey(refId)) {
-          refIdList.addAll(recursiveCollect(refId, relationKeyMap, 10));
-        }
-      }
-      for (String refId : refIdList) {
-        Integer[] refOffset = idOffsets.get(refId);
-        Integer tokenId = updateItem.getKey();
-        if (tokenId != null && refOffset != null) {
-          MtasToken token = tokenCollection.get(tokenId);
-          token.addOffset(refOffset[0], refOffset[1]);
-        }
-      }
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see mtas.analysis.parser.MtasParser#nextToken()
+   */
+  @Override
+  public MtasToken nextToken() throws MtasParserException, MtasConfigException {
+    if (streamState == null) {
+      return super.nextToken();
     }
-    // update tokens with position
-    for (Entry<Integer, Set<String>> updateItem : updateList
-        .get(UPDATE_TYPE_POSITION).entrySet()) {
-      HashSet<String> refIdList = new HashSet<>();
-      for (String refId : updateItem.getValue()) {
-        if (idPositions.containsKey(refId)) {
-          refIdList.add(refId);
-        }
-        if (relationKeyMap.containsKey(refId)) {
-          refIdList.addAll(recursiveCollect(refId, relationKeyMap, 10));
-        }
-      }
-      for (String refId : refIdList) {
-        Set<Integer> refPositions = idPositions.get(refId);
-        Integer tokenId = updateItem.getKey();
-        if (tokenId != null && refPositions != null) {
-          MtasToken token = tokenCollection.get(tokenId);
-          token.addPositions(refPositions);
+    try {
+      while (!tokenStream.hasToken() && !tokenStream.isFinished()) {
+        if (!streamState.finished) {
+          streamState.processEvent();
+          if (tokenStream.needsRelease()) {
+            Map<Integer, Integer> bounds = streamState.updateTokens(false);
+            tokenStream.release(streamState.position.get(),
+                streamState.currentList, streamState.updateList, bounds,
+                false);
+          }
+        } else {
+          streamState.close();
+          streamState.updateTokens(true);
+          tokenStream.release(streamState.position.get(),
+              streamState.currentList, streamState.updateList, null, true);
         }
       }
+    } catch (XMLStreamException e) {
+      log.debug(e);
+      closeTokenStream();
+      throw new MtasParserException("No valid XML: " + e.getMessage());
+    } catch (MtasParserException | MtasConfigException e) {
+      closeTokenStream();
+      throw e;
     }
-    // final check
-    tokenCollection.check(autorepair, makeunique);
-    return tokenCollection;
+    MtasToken token = tokenStream.poll();
+    if (token == null) {
+      streamState = null;
+    }
+    return token;
+  }
+
+  /**
+   * Close token stream.
+   */
+  private void closeTokenStream() {
+    try {
+      streamState.close();
+    } catch (XMLStreamException e) {
+      log.debug(e);
+    }
+    streamState = null;
   }
 
   /**
@@ -1158,4 +745,669 @@ abstract class MtasXMLParser extends MtasBasicParser {
     }
   }
 
+
+  /**
+   * The Class MtasXMLParserState. The administration while parsing a single
+   * document, allowing the document to be processed event by event.
+   */
+  private class MtasXMLParserState {
+
+    /** The has root. */
+    private Boolean hasRoot = rootTag == null ? true : false;
+
+    /** The parsing content. */
+    private Boolean parsingContent = contentTag == null ? true : false;
+
+    /** The text content. */
+    private String textContent = null;
+
+    /** The unknown ancestors. */
+    private Integer unknownAncestors = 0;
+
+    /** The last offset. */
+    private Integer lastOffset = 0;
+
+    /** The position. */
+    private AtomicInteger position = new AtomicInteger(0);
+
+    /** The id positions. */
+    private Map<String, Set<Integer>> idPositions = new HashMap<>();
+
+    /** The id offsets. */
+    private Map<String, Integer[]> idOffsets = new HashMap<>();
+
+    /** The update list. */
+    private Map<String, Map<Integer, Set<String>>> updateList = createUpdateList();
+
+    /** The current list. */
+    private Map<String, List<MtasParserObject>> currentList = createCurrentList();
+
+    /** The variables. */
+    private Map<String, Map<String, String>> variables = createVariables();
+
+    /** The mtas token id factory. */
+    private MtasTokenIdFactory mtasTokenIdFactory = new MtasTokenIdFactory();
+
+    /** The stream reader. */
+    private XMLStreamReader streamReader;
+
+    /** The current object. */
+    private MtasParserObject currentObject = null;
+
+    /** The event. */
+    private int event;
+
+    /** The finished. */
+    private boolean finished = false;
+
+    /** The closed. */
+    private boolean closed = false;
+
+    /**
+     * Instantiates a new mtas XML parser state.
+     *
+     * @param reader the reader
+     * @throws MtasParserException the mtas parser exception
+     */
+    private MtasXMLParserState(Reader reader) throws MtasParserException {
+      tokenCollection = new MtasTokenCollection();
+      XMLInputFactory factory = XMLInputFactory.newInstance();
+      try {
+        streamReader = factory.createXMLStreamReader(reader);
+        event = streamReader.getEventType();
+      } catch (XMLStreamException e) {
+        log.debug(e);
+        throw new MtasParserException("No valid XML: " + e.getMessage());
+      }
+    }
+
+    /**
+     * Process the current event and move to the next one.
+     *
+     * @throws XMLStreamException the XML stream exception
+     * @throws MtasParserException the mtas parser exception
+     * @throws MtasConfigException the mtas config exception
+     */
+    private void processEvent()
+        throws XMLStreamException, MtasParserException, MtasConfigException {
+      QName qname;
+      MtasParserType<?> currentType;
+      MtasParserType<?> tmpCurrentType;
+      MtasParserType<?> tmpVariableType;
+      MtasParserObject variableObject = null;
+
+      switch (event) {
+      case XMLStreamConstants.START_DOCUMENT:
+        log.debug("start of document");
+        String encodingScheme = streamReader.getCharacterEncodingScheme();
+        if (encodingScheme == null) {
+          //ignore for now
+          log.info("No encodingScheme found, assume utf-8");
+          //throw new MtasParserException("No encodingScheme found");              
+        } else if (!encodingScheme.equalsIgnoreCase("utf-8")) {
+          throw new MtasParserException(
+              "XML not UTF-8 encoded but '" + encodingScheme + "'");
+        }
+        break;
+      case XMLStreamConstants.END_DOCUMENT:
+        log.debug("end of document");
+        break;
+      case XMLStreamConstants.SPACE:
+        // set offset (end of start-element)
+        lastOffset = streamReader.getLocation().getCharacterOffset();
+        break;
+      case XMLStreamConstants.START_ELEMENT:
+        // get data
+        qname = streamReader.getName();
+        // check for rootTag
+        if (!hasRoot) {
+          if (qname.equals(getQName(rootTag))) {
+            hasRoot = true;
+          } else {
+            throw new MtasParserException("No " + rootTag);
+          }
+          // parse content
+        } else {
+          if ((tmpVariableType = variableTypes.get(qname)) != null) {
+            variableObject = new MtasParserObject(tmpVariableType);
+            collectAttributes(variableObject, streamReader);
+            computeVariablesFromObject(variableObject, currentList,
+                variables);
+          }
+          if (parsingContent) {
+            // check for relation : not within word, not within
+            // groupAnnotation
+            if ((currentList.get(MAPPING_TYPE_WORD).isEmpty())
+                && (currentList.get(MAPPING_TYPE_GROUP_ANNOTATION)
+                    .isEmpty())
+                && (tmpCurrentType = relationTypes.get(qname)) != null) {
+              currentObject = new MtasParserObject(tmpCurrentType);
+              collectAttributes(currentObject, streamReader);
+              currentObject.setUnknownAncestorNumber(unknownAncestors);
+              currentObject.setRealOffsetStart(lastOffset);
+              if (!prevalidateObject(currentObject, currentList)) {
+                unknownAncestors++;
+              } else {
+                currentType = tmpCurrentType;
+                currentList.get(MAPPING_TYPE_RELATION).add(currentObject);
+                unknownAncestors = 0;
+              }
+              // check for relation annotation: not within word, but within
+              // relation
+            } else if ((currentList.get(MAPPING_TYPE_WORD).isEmpty())
+                && (!currentList.get(MAPPING_TYPE_RELATION).isEmpty())
+                && (tmpCurrentType = relationAnnotationTypes
+                    .get(qname)) != null) {
+              currentObject = new MtasParserObject(tmpCurrentType);
+              collectAttributes(currentObject, streamReader);
+              currentObject.setUnknownAncestorNumber(unknownAncestors);
+              currentObject.setRealOffsetStart(lastOffset);
+              if (!prevalidateObject(currentObject, currentList)) {
+                unknownAncestors++;
+              } else {
+                currentType = tmpCurrentType;
+                currentList.get(MAPPING_TYPE_RELATION_ANNOTATION)
+                    .add(currentObject);
+                unknownAncestors = 0;
+              }
+              // check for group: not within word, not within relation, not
+              // within groupAnnotation
+            } else if ((currentList.get(MAPPING_TYPE_WORD).isEmpty())
+                && (currentList.get(MAPPING_TYPE_RELATION).isEmpty())
+                && (currentList.get(MAPPING_TYPE_GROUP_ANNOTATION)
+                    .isEmpty())
+                && (tmpCurrentType = groupTypes.get(qname)) != null) {
+              currentObject = new MtasParserObject(tmpCurrentType);
+              collectAttributes(currentObject, streamReader);
+              currentObject.setUnknownAncestorNumber(unknownAncestors);
+              currentObject.setRealOffsetStart(lastOffset);
+              if (!prevalidateObject(currentObject, currentList)) {
+                unknownAncestors++;
+              } else {
+                currentType = tmpCurrentType;
+                currentList.get(MAPPING_TYPE_GROUP).add(currentObject);
+                unknownAncestors = 0;
+              }
+              // check for group annotation: not within word, not within
+              // relation, but within group
+            } else if ((currentList.get(MAPPING_TYPE_WORD).isEmpty())
+                && (currentList.get(MAPPING_TYPE_RELATION).isEmpty())
+                && (!currentList.get(MAPPING_TYPE_GROUP).isEmpty())
+                && (tmpCurrentType = groupAnnotationTypes
+                    .get(qname)) != null) {
+              currentObject = new MtasParserObject(tmpCurrentType);
+              collectAttributes(currentObject, streamReader);
+              currentObject.setUnknownAncestorNumber(unknownAncestors);
+              currentObject.setRealOffsetStart(lastOffset);
+              if (!prevalidateObject(currentObject, currentList)) {
+                unknownAncestors++;
+              } else {
+                currentType = tmpCurrentType;
+                currentList.get(MAPPING_TYPE_GROUP_ANNOTATION)
+                    .add(currentObject);
+                unknownAncestors = 0;
+              }
+              // check for word: not within relation, not within
+              // groupAnnotation, not within word, not within wordAnnotation
+            } else if ((currentList.get(MAPPING_TYPE_RELATION).isEmpty())
+                && (currentList.get(MAPPING_TYPE_GROUP_ANNOTATION)
+                    .isEmpty())
+                && (currentList.get(MAPPING_TYPE_WORD).isEmpty())
+                && (currentList.get(MAPPING_TYPE_WORD_ANNOTATION).isEmpty())
+                && (tmpCurrentType = wordTypes.get(qname)) != null) {
+              currentObject = new MtasParserObject(tmpCurrentType);
+              collectAttributes(currentObject, streamReader);
+              currentObject.setUnknownAncestorNumber(unknownAncestors);
+              currentObject.setOffsetStart(lastOffset);
+              currentObject.setRealOffsetStart(lastOffset);
+              if (!prevalidateObject(currentObject, currentList)) {
+                unknownAncestors++;
+              } else {
+                currentType = tmpCurrentType;
+                currentObject.addPosition(position.getAndIncrement());
+                currentList.get(MAPPING_TYPE_WORD).add(currentObject);
+                unknownAncestors = 0;
+              }
+              // check for word annotation: not within relation, not within
+              // groupAnnotation, but within word
+            } else if ((currentList.get(MAPPING_TYPE_RELATION).isEmpty())
+                && (currentList.get(MAPPING_TYPE_GROUP_ANNOTATION)
+                    .isEmpty())
+                && (!currentList.get(MAPPING_TYPE_WORD).isEmpty())
+                && (tmpCurrentType = wordAnnotationTypes
+                    .get(qname)) != null) {
+              currentObject = new MtasParserObject(tmpCurrentType);
+              collectAttributes(currentObject, streamReader);
+              currentObject.addPositions(currentList.get(MAPPING_TYPE_WORD)
+                  .get((currentList.get(MAPPING_TYPE_WORD).size() - 1))
+                  .getPositions());
+              currentObject.setUnknownAncestorNumber(unknownAncestors);
+              currentObject.setRealOffsetStart(lastOffset);
+              if (!prevalidateObject(currentObject, currentList)) {
+                unknownAncestors++;
+              } else {
+                currentType = tmpCurrentType;
+                currentList.get(MAPPING_TYPE_WORD_ANNOTATION)
+                    .add(currentObject);
+                unknownAncestors = 0;
+              }
+              // check for references: within relation
+            } else if (!currentList.get(MAPPING_TYPE_RELATION).isEmpty()
+                && (tmpCurrentType = refTypes.get(qname)) != null) {
+              currentObject = new MtasParserObject(tmpCurrentType);
+              collectAttributes(currentObject, streamReader);
+              currentObject.setUnknownAncestorNumber(unknownAncestors);
+              currentObject.setRealOffsetStart(lastOffset);
+              if (!prevalidateObject(currentObject, currentList)) {
+                unknownAncestors++;
+              } else {
+                currentType = tmpCurrentType;
+                currentList.get(MAPPING_TYPE_REF).add(currentObject);
+                unknownAncestors = 0;
+                // add reference to ancestor relations
+                for (MtasParserObject currentRelation : currentList
+                    .get(MAPPING_TYPE_RELATION)) {
+                  currentRelation.addRefId(currentObject
+                      .getAttribute(currentType.getRefAttributeName()));
+                  // register mapping for relation (for recursive relations)
+                  SortedSet<String> keyMapList;
+                  if (currentRelation.getId() != null) {
+                    if (relationKeyMap
+                        .containsKey(currentRelation.getId())) {
+                      keyMapList = relationKeyMap
+                          .get(currentRelation.getId());
+                    } else {
+                      keyMapList = new TreeSet<>();
+                      relationKeyMap.put(currentRelation.getId(),
+                          keyMapList);
+                    }
+                    keyMapList.add(currentObject
+                        .getAttribute(currentType.getRefAttributeName()));
+                  }
+                }
+              }
+            } else {
+              unknownAncestors++;
+            }
+            // check for start content
+          } else if (qname.equals(getQName(contentTag))) {
+            parsingContent = true;
+            // unexpected
+          } else if (!allowNonContent) {
+            throw new MtasParserException(
+                "Unexpected " + qname.getLocalPart() + " in document");
+          }
+        }
+        // set offset (end of start-element)
+        lastOffset = streamReader.getLocation().getCharacterOffset();
+        break;
+      case XMLStreamConstants.END_ELEMENT:
+        // set offset (end of end-element)
+        lastOffset = streamReader.getLocation().getCharacterOffset();
+        // get data
+        qname = streamReader.getName();
+        // parse content
+        if (parsingContent) {
+          if (unknownAncestors > 0) {
+            unknownAncestors--;
+            // check for reference: because otherwise currentList should
+            // contain no references
+          } else if (!currentList.get(MAPPING_TYPE_REF).isEmpty()) {
+            if ((currentType = refTypes.get(qname)) != null) {
+              currentObject = currentList.get(MAPPING_TYPE_REF)
+                  .remove(currentList.get(MAPPING_TYPE_REF).size() - 1);
+              assert currentObject.getType()
+                  .equals(currentType) : "object expected to be "
+                      + currentObject.getType().getName() + ", not "
+                      + currentType.getName();
+              assert unknownAncestors == 0 : "error in administration "
+                  + currentObject.getType().getName();
+              // ignore text and realOffset: not relevant
+              idPositions.put(currentObject.getId(),
+                  currentObject.getPositions());
+              idOffsets.put(currentObject.getId(),
+                  currentObject.getOffset());
+              currentObject.updateMappings(idPositions, idOffsets);
+              unknownAncestors = currentObject.getUnknownAncestorNumber();
+              computeMappingsFromObject(mtasTokenIdFactory, currentObject,
+                  currentList, updateList);
+            } else {
+              // this shouldn't happen
+            }
+            // check for wordAnnotation: because otherwise currentList
+            // should contain no wordAnnotations
+          } else if (!currentList.get(MAPPING_TYPE_WORD_ANNOTATION)
+              .isEmpty()) {
+            if ((currentType = wordAnnotationTypes.get(qname)) != null) {
+              currentObject = currentList.get(MAPPING_TYPE_WORD_ANNOTATION)
+                  .remove(
+                      currentList.get(MAPPING_TYPE_WORD_ANNOTATION).size()
+                          - 1);
+              assert currentObject.getType()
+                  .equals(currentType) : "object expected to be "
+                      + currentObject.getType().getName() + ", not "
+                      + currentType.getName();
+              assert unknownAncestors == 0 : "error in administration "
+                  + currentObject.getType().getName();
+              currentObject.setRealOffsetEnd(lastOffset);
+              idPositions.put(currentObject.getId(),
+                  currentObject.getPositions());
+              idOffsets.put(currentObject.getId(),
+                  currentObject.getOffset());
+              // offset always null, so update later with word (should be
+              // possible)
+              if ((currentObject.getId() != null)
+                  && (!currentList.get(MAPPING_TYPE_WORD).isEmpty())) {
+                currentList.get(MAPPING_TYPE_WORD)
+                    .get((currentList.get(MAPPING_TYPE_WORD).size() - 1))
+                    .addUpdateableIdWithOffset(currentObject.getId());
+              }
+              currentObject.updateMappings(idPositions, idOffsets);
+              unknownAncestors = currentObject.getUnknownAncestorNumber();
+              computeMappingsFromObject(mtasTokenIdFactory, currentObject,
+                  currentList, updateList);
+            } else {
+              // this shouldn't happen
+            }
+            // check for word: because otherwise currentList should contain
+            // no words
+          } else if (!currentList.get(MAPPING_TYPE_WORD).isEmpty()) {
+            if ((currentType = wordTypes.get(qname)) != null) {
+              currentObject = currentList.get(MAPPING_TYPE_WORD)
+                  .remove(currentList.get(MAPPING_TYPE_WORD).size() - 1);
+              assert currentObject.getType()
+                  .equals(currentType) : "object expected to be "
+                      + currentObject.getType().getName() + ", not "
+                      + currentType.getName();
+              assert unknownAncestors == 0 : "error in administration "
+                  + currentObject.getType().getName();
+              currentObject.setOffsetEnd(lastOffset);
+              currentObject.setRealOffsetEnd(lastOffset);
+              // update ancestor groups with position and offset
+              for (MtasParserObject currentGroup : currentList
+                  .get(MAPPING_TYPE_GROUP)) {
+                currentGroup.addPositions(currentObject.getPositions());
+                currentGroup.addOffsetStart(currentObject.getOffsetStart());
+                currentGroup.addOffsetEnd(currentObject.getOffsetEnd());
+              }
+              idPositions.put(currentObject.getId(),
+                  currentObject.getPositions());
+              idOffsets.put(currentObject.getId(),
+                  currentObject.getOffset());
+              currentObject.updateMappings(idPositions, idOffsets);
+              unknownAncestors = currentObject.getUnknownAncestorNumber();
+              computeMappingsFromObject(mtasTokenIdFactory, currentObject,
+                  currentList, updateList);
+            } else {
+              // this shouldn't happen
+            }
+            // check for group annotation: because otherwise currentList
+            // should contain no groupAnnotations
+          } else if (!currentList.get(MAPPING_TYPE_GROUP_ANNOTATION)
+              .isEmpty()) {
+            if ((currentType = groupAnnotationTypes.get(qname)) != null) {
+              currentObject = currentList.get(MAPPING_TYPE_GROUP_ANNOTATION)
+                  .remove(
+                      currentList.get(MAPPING_TYPE_GROUP_ANNOTATION).size()
+                          - 1);
+              assert currentObject.getType()
+                  .equals(currentType) : "object expected to be "
+                      + currentObject.getType().getName() + ", not "
+                      + currentType.getName();
+              assert unknownAncestors == 0 : "error in administration "
+                  + currentObject.getType().getName();
+              currentObject.setRealOffsetEnd(lastOffset);
+              idPositions.put(currentObject.getId(),
+                  currentObject.getPositions());
+              idOffsets.put(currentObject.getId(),
+                  currentObject.getOffset());
+              currentObject.updateMappings(idPositions, idOffsets);
+              unknownAncestors = currentObject.getUnknownAncestorNumber();
+              computeMappingsFromObject(mtasTokenIdFactory, currentObject,
+                  currentList, updateList);
+            } else {
+              // this shouldn't happen
+            }
+            // check for relation annotation
+          } else if (!currentList.get(MAPPING_TYPE_RELATION_ANNOTATION)
+              .isEmpty()) {
+            if ((currentType = relationAnnotationTypes
+                .get(qname)) != null) {
+              currentObject = currentList
+                  .get(MAPPING_TYPE_RELATION_ANNOTATION).remove(currentList
+                      .get(MAPPING_TYPE_RELATION_ANNOTATION).size() - 1);
+              assert currentObject.getType()
+                  .equals(currentType) : "object expected to be "
+                      + currentObject.getType().getName() + ", not "
+                      + currentType.getName();
+              assert unknownAncestors == 0 : "error in administration "
+                  + currentObject.getType().getName();
+              currentObject.setRealOffsetEnd(lastOffset);
+              idPositions.put(currentObject.getId(),
+                  currentObject.getPositions());
+              idOffsets.put(currentObject.getId(),
+                  currentObject.getOffset());
+              currentObject.updateMappings(idPositions, idOffsets);
+              unknownAncestors = currentObject.getUnknownAncestorNumber();
+              computeMappingsFromObject(mtasTokenIdFactory, currentObject,
+                  currentList, updateList);
+            } else {
+              // this shouldn't happen
+            }
+            // check for relation
+          } else if (!currentList.get(MAPPING_TYPE_RELATION).isEmpty()) {
+            if ((currentType = relationTypes.get(qname)) != null) {
+              currentObject = currentList.get(MAPPING_TYPE_RELATION).remove(
+                  currentList.get(MAPPING_TYPE_RELATION).size() - 1);
+              assert currentObject.getType()
+                  .equals(currentType) : "object expected to be "
+                      + currentObject.getType().getName() + ", not "
+                      + currentType.getName();
+              assert unknownAncestors == 0 : "error in administration "
+                  + currentObject.getType().getName();
+              // ignore text: should not occur
+              currentObject.setRealOffsetEnd(lastOffset);
+              idPositions.put(currentObject.getId(),
+                  currentObject.getPositions());
+              idOffsets.put(currentObject.getId(),
+                  currentObject.getOffset());
+              currentObject.updateMappings(idPositions, idOffsets);
+              unknownAncestors = currentObject.getUnknownAncestorNumber();
+              computeMappingsFromObject(mtasTokenIdFactory, currentObject,
+                  currentList, updateList);
+            } else {
+              // this shouldn't happen
+            }
+            // check for group
+          } else if (!currentList.get(MAPPING_TYPE_GROUP).isEmpty()) {
+            if ((currentType = groupTypes.get(qname)) != null) {
+              currentObject = currentList.get(MAPPING_TYPE_GROUP)
+                  .remove(currentList.get(MAPPING_TYPE_GROUP).size() - 1);
+              assert currentObject.getType()
+                  .equals(currentType) : "object expected to be "
+                      + currentObject.getType().getName() + ", not "
+                      + currentType.getName();
+              assert unknownAncestors == 0 : "error in administration "
+                  + currentObject.getType().getName();
+              // ignore text: should not occur
+              currentObject.setRealOffsetEnd(lastOffset);
+              idPositions.put(currentObject.getId(),
+                  currentObject.getPositions());
+              idOffsets.put(currentObject.getId(),
+                  currentObject.getOffset());
+              currentObject.updateMappings(idPositions, idOffsets);
+              unknownAncestors = currentObject.getUnknownAncestorNumber();
+              computeMappingsFromObject(mtasTokenIdFactory, currentObject,
+                  currentList, updateList);
+            } else {
+              unknownAncestors--;
+            }
+          } else if (qname.equals(getQName("text"))) {
+            parsingContent = false;
+            assert unknownAncestors == 0 : "error in administration unknownAncestors";
+            assert currentList.get(MAPPING_TYPE_REF)
+                .isEmpty() : "error in administration references";
+            assert currentList.get(MAPPING_TYPE_GROUP)
+                .isEmpty() : "error in administration groups";
+            assert currentList.get(MAPPING_TYPE_GROUP_ANNOTATION)
+                .isEmpty() : "error in administration groupAnnotations";
+            assert currentList.get(MAPPING_TYPE_WORD)
+                .isEmpty() : "error in administration words";
+            assert currentList.get(MAPPING_TYPE_WORD_ANNOTATION)
+                .isEmpty() : "error in administration wordAnnotations";
+            assert currentList.get(MAPPING_TYPE_RELATION)
+                .isEmpty() : "error in administration relations";
+            assert currentList.get(MAPPING_TYPE_RELATION_ANNOTATION)
+                .isEmpty() : "error in administration relationAnnotations";
+          }
+        }
+        // forget text
+        textContent = null;
+        break;
+      case XMLStreamConstants.CHARACTERS:
+        // set offset (end of start-element)
+        lastOffset = streamReader.getLocation().getCharacterOffset();
+        // check for text
+        if (streamReader.hasText()) {
+          textContent = streamReader.getText();
+        }
+        if (currentObject != null && unknownAncestors.equals(0)) {
+          currentObject.addText(textContent);
+        }
+        break;
+      default:
+        break;
+      }
+      if (!streamReader.hasNext()) {
+        finished = true;
+        // final checks
+        assert unknownAncestors == 0 : "error in administration unknownAncestors";
+        assert hasRoot : "no " + rootTag;
+      } else {
+        event = streamReader.next();
+      }
+    }
+
+    /**
+     * Close.
+     *
+     * @throws XMLStreamException the XML stream exception
+     */
+    private void close() throws XMLStreamException {
+      if (!closed) {
+        closed = true;
+        streamReader.close();
+      }
+    }
+
+    /**
+     * Update tokens with variables, offsets and positions from references. If
+     * not finished, only updates that can be fully resolved are applied and
+     * removed from the update list.
+     *
+     * @param finished if the document is finished
+     * @return the lower bounds for the start position of tokens with
+     *         unresolved position updates, by token id
+     */
+    private Map<Integer, Integer> updateTokens(boolean finished) {
+      Map<Integer, Integer> bounds = new HashMap<>();
+      // update tokens with variable
+      Iterator<Entry<Integer, Set<String>>> it = updateList
+          .get(UPDATE_TYPE_VARIABLE).entrySet().iterator();
+      while (it.hasNext()) {
+        Entry<Integer, Set<String>> updateItem = it.next();
+        MtasToken token = tokenCollection.get(updateItem.getKey());
+        String value = computeValueWithVariables(updateItem.getKey(),
+            variables, finished);
+        if (finished || value != null) {
+          token.setValue(value);
+          it.remove();
+        }
+      }
+      // update tokens with offset
+      it = updateList.get(UPDATE_TYPE_OFFSET).entrySet().iterator();
+      while (it.hasNext()) {
+        Entry<Integer, Set<String>> updateItem = it.next();
+        Set<String> refIdList = collectRefIds(updateItem.getValue());
+        if (finished || resolved(updateItem.getValue(), refIdList, true)) {
+          for (String refId : refIdList) {
+            Integer[] refOffset = idOffsets.get(refId);
+            Integer tokenId = updateItem.getKey();
+            if (tokenId != null && refOffset != null) {
+              MtasToken token = tokenCollection.get(tokenId);
+              token.addOffset(refOffset[0], refOffset[1]);
+            }
+          }
+          it.remove();
+        }
+      }
+      // update tokens with position
+      it = updateList.get(UPDATE_TYPE_POSITION).entrySet().iterator();
+      while (it.hasNext()) {
+        Entry<Integer, Set<String>> updateItem = it.next();
+        Set<String> refIdList = collectRefIds(updateItem.getValue());
+        if (finished || resolved(updateItem.getValue(), refIdList, false)) {
+          for (String refId : refIdList) {
+            Set<Integer> refPositions = idPositions.get(refId);
+            Integer tokenId = updateItem.getKey();
+            if (tokenId != null && refPositions != null) {
+              MtasToken token = tokenCollection.get(tokenId);
+              token.addPositions(refPositions);
+            }
+          }
+          it.remove();
+        } else {
+          for (String refId : refIdList) {
+            Set<Integer> refPositions = idPositions.get(refId);
+            if (refPositions != null && !refPositions.isEmpty()) {
+              int min = Collections.min(refPositions);
+              Integer bound = bounds.get(updateItem.getKey());
+              bounds.put(updateItem.getKey(),
+                  bound == null ? min : Math.min(bound, min));
+            }
+          }
+        }
+      }
+      return bounds;
+    }
+
+    /**
+     * Collect ref ids, including those from referenced relations.
+     *
+     * @param refIds the ref ids
+     * @return the set of known ref ids
+     */
+    private Set<String> collectRefIds(Set<String> refIds) {
+      Set<String> refIdList = new HashSet<>();
+      for (String refId : refIds) {
+        if (idPositions.containsKey(refId)) {
+          refIdList.add(refId);
+        }
+        if (relationKeyMap.containsKey(refId)) {
+          refIdList.addAll(recursiveCollect(refId, relationKeyMap, 10));
+        }
+      }
+      return refIdList;
+    }
+
+    /**
+     * Checks if all references are available.
+     *
+     * @param refIds the ref ids
+     * @param refIdList the collected ref ids
+     * @param withOffset if offsets are required
+     * @return true, if resolved
+     */
+    private boolean resolved(Set<String> refIds, Set<String> refIdList,
+        boolean withOffset) {
+      if (!idPositions.keySet().containsAll(refIds)
+          || !idPositions.keySet().containsAll(refIdList)) {
+        return false;
+      } else {
+        return !withOffset || idOffsets.keySet().containsAll(refIdList);
+      }
+    }
+
+  }
+
 }
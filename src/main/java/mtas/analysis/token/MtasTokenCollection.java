@@ -2,6 +2,7 @@ package mtas.analysis.token;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -54,6 +55,34 @@ public class MtasTokenCollection {
     return tokenCollection.get(id);
   }
 
+  /**
+   * Removes the.
+   *
+   * @param id the id
+   * @return the removed mtas token
+   */
+  public MtasToken remove(Integer id) {
+    return tokenCollection.remove(id);
+  }
+
+  /**
+   * Size.
+   *
+   * @return the number of tokens
+   */
+  public int size() {
+    return tokenCollection.size();
+  }
+
+  /**
+   * Gets the tokens, in no particular order.
+   *
+   * @return the tokens
+   */
+  public Collection<MtasToken> getTokens() {
+    return Collections.unmodifiableCollection(tokenCollection.values());
+  }
+
   /**
    * Iterator.
    *
@@ -349,30 +378,40 @@ public class MtasTokenCollection {
     return new Comparator<Integer>() {
       @Override
       public int compare(Integer t1, Integer t2) {
-        Integer p1 = tokenCollection.get(t1).getPositionStart();
-        Integer p2 = tokenCollection.get(t2).getPositionStart();
-        assert p1 != null : "no position for " + tokenCollection.get(t1);
-        assert p2 != null : "no position for " + tokenCollection.get(t2);
-        if (p1.equals(p2)) {
-          Integer o1 = tokenCollection.get(t1).getOffsetStart();
-          Integer o2 = tokenCollection.get(t2).getOffsetStart();
-          if (o1 != null && o2 != null) {
-            if (o1.equals(o2)) {
-              return tokenCollection.get(t1).getValue()
-                  .compareTo(tokenCollection.get(t2).getValue());
-            } else {
-              return o1.compareTo(o2);
-            }
-          } else {
-            return tokenCollection.get(t1).getValue()
-                .compareTo(tokenCollection.get(t2).getValue());
-          }
-        }
-        return p1.compareTo(p2);
+        return compareTokens(tokenCollection.get(t1), tokenCollection.get(t2));
       }
     };
   }
 
+  /**
+   * Compare tokens by start position, start offset and value, the order in
+   * which tokens are provided by the iterator.
+   *
+   * @param t1 the first token
+   * @param t2 the second token
+   * @return the comparison
+   */
+  public static int compareTokens(MtasToken t1, MtasToken t2) {
+    Integer p1 = t1.getPositionStart();
+    Integer p2 = t2.getPositionStart();
+    assert p1 != null : "no position for " + t1;
+    assert p2 != null : "no position for " + t2;
+    if (p1.equals(p2)) {
+      Integer o1 = t1.getOffsetStart();
+      Integer o2 = t2.getOffsetStart();
+      if (o1 != null && o2 != null) {
+        if (o1.equals(o2)) {
+          return t1.getValue().compareTo(t2.getValue());
+        } else {
+          return o1.compareTo(o2);
+        }
+      } else {
+        return t1.getValue().compareTo(t2.getValue());
+      }
+    }
+    return p1.compareTo(p2);
+  }
+
   /**
    * Clear.
    */
@@ -0,0 +1,129 @@
+package mtas.analysis.util;
+
+import java.io.Closeable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import mtas.analysis.parser.MtasParser;
+
+import org.apache.lucene.util.CloseableThreadLocal;
+
+/**
+ * The Class MtasParserPool. Parser instances with processed configuration,
+ * confined to the thread using them. A parser is acquired for a single
+ * document and released afterwards; reusable parsers are reset on release, so
+ * an idle parser holds no data of its previous document, and provided again
+ * for the next document with the same configuration on that thread.
+ */
+public class MtasParserPool implements Closeable {
+
+  /** The constructors, by parser name. */
+  private final Map<String, Constructor<?>> constructors;
+
+  /** The idle parsers of the current thread, by configuration. */
+  private final CloseableThreadLocal<Map<MtasConfiguration, ArrayDeque<MtasParser>>> idleParsers;
+
+  /**
+   * Instantiates a new mtas parser pool.
+   */
+  public MtasParserPool() {
+    constructors = new ConcurrentHashMap<>();
+    idleParsers = new CloseableThreadLocal<>();
+  }
+
+  /**
+   * Acquire a parser.
+   *
+   * @param parserName the parser name
+   * @param parserConfiguration the parser configuration
+   * @return the mtas parser
+   * @throws MtasConfigException the mtas config exception
+   */
+  public MtasParser acquire(String parserName,
+      MtasConfiguration parserConfiguration) throws MtasConfigException {
+    ArrayDeque<MtasParser> idle = getIdleParsers()
+        .get(parserConfiguration);
+    if (idle != null && !idle.isEmpty()) {
+      return idle.pop();
+    } else {
+      return createParser(parserName, parserConfiguration);
+    }
+  }
+
+  /**
+   * Release a parser, after the last token has been provided. The parser is
+   * reset, the token collection it created stays valid for the caller.
+   *
+   * @param parserConfiguration the parser configuration
+   * @param parser the parser
+   */
+  public void release(MtasConfiguration parserConfiguration,
+      MtasParser parser) {
+    if (parser.isReusable()) {
+      parser.resetParser();
+      getIdleParsers()
+          .computeIfAbsent(parserConfiguration, k -> new ArrayDeque<>())
+          .push(parser);
+    }
+  }
+
+  /**
+   * Gets the idle parsers of the current thread.
+   *
+   * @return the idle parsers
+   */
+  private Map<MtasConfiguration, ArrayDeque<MtasParser>> getIdleParsers() {
+    Map<MtasConfiguration, ArrayDeque<MtasParser>> idle = idleParsers.get();
+    if (idle == null) {
+      idle = new IdentityHashMap<>();
+      idleParsers.set(idle);
+    }
+    return idle;
+  }
+
+  /**
+   * Creates the parser.
+   *
+   * @param parserName the parser name
+   * @param parserConfiguration the parser configuration
+   * @return the mtas parser
+   * @throws MtasConfigException the mtas config exception
+   */
+  private MtasParser createParser(String parserName,
+      MtasConfiguration parserConfiguration) throws MtasConfigException {
+    try {
+      Constructor<?> c = constructors.get(parserName);
+      if (c == null) {
+        c = Class.forName(parserName)
+            .getDeclaredConstructor(MtasConfiguration.class);
+        constructors.put(parserName, c);
+      }
+      Object p = c.newInstance(parserConfiguration);
+      if (p instanceof MtasParser) {
+        return (MtasParser) p;
+      } else {
+        throw new MtasConfigException("no instance of MtasParser");
+      }
+    } catch (NoSuchMethodException | InvocationTargetException
+        | IllegalAccessException | ClassNotFoundException
+        | InstantiationException e) {
+      throw new MtasConfigException(
+          e.getClass().getName() + " : '" + e.getMessage() + "'");
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public void close() {
+    idleParsers.close();
+  }
+
+}
@@ -58,6 +58,9 @@ public class MtasTokenizerFactory extends TokenizerFactory
   /** The config. */
   private MtasConfiguration config = null;
 
+  /** The parsers, shared by the created tokenizers. */
+  private final MtasParserPool parserPool = new MtasParserPool();
+
   /**
    * Instantiates a new mtas tokenizer factory.
    *
@@ -156,7 +159,8 @@ public class MtasTokenizerFactory extends TokenizerFactory
         throw new IOException("no (default)configuration");
       } else if (configuration == null) {
         if (configs.get(defaultConfiguration) != null) {
-          return new MtasTokenizer(factory, configs.get(defaultConfiguration));
+          return new MtasTokenizer(factory,
+              configs.get(defaultConfiguration), parserPool);
         } else {
           throw new IOException(
               "default configuration " + defaultConfiguration + " not available");
@@ -166,7 +170,8 @@ public class MtasTokenizerFactory extends TokenizerFactory
         if (config == null) {
           if (defaultConfiguration != null) {
             if (configs.get(defaultConfiguration) != null) {
-              return new MtasTokenizer(factory, configs.get(defaultConfiguration));
+              return new MtasTokenizer(factory,
+              configs.get(defaultConfiguration), parserPool);
             } else {
               throw new IOException("configuration " + configuration
                   + " not found and default configuration " + defaultConfiguration
@@ -177,11 +182,11 @@ public class MtasTokenizerFactory extends TokenizerFactory
                 + " not available and no default configuration");
           }
         } else {
-          return new MtasTokenizer(factory, config);
+          return new MtasTokenizer(factory, config, parserPool);
         }
       }
     } else if (config != null) {
-      return new MtasTokenizer(factory, config);
+      return new MtasTokenizer(factory, config, parserPool);
     } else {
       throw new IOException("no configuration");
     }
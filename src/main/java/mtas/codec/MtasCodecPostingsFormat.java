@@ -3,6 +3,7 @@ package mtas.codec;
 import java.io.IOException;
 
 import mtas.analysis.token.MtasTokenString;
+import mtas.codec.util.CodecTermCache;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -12,6 +13,7 @@ import org.apache.lucene.codecs.FieldsProducer;
 import org.apache.lucene.codecs.PostingsFormat;
 import org.apache.lucene.index.SegmentReadState;
 import org.apache.lucene.index.SegmentWriteState;
+import org.apache.lucene.store.DataInput;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.util.BytesRef;
 
@@ -27,8 +29,11 @@ public class MtasCodecPostingsFormat extends PostingsFormat {
   /** The Constant VERSION_START. */
   public static final int VERSION_START = 3;
 
+  /** The Constant VERSION_FIXED_WIDTH_TREES. */
+  public static final int VERSION_FIXED_WIDTH_TREES = 4;
+
   /** The Constant VERSION_CURRENT. */
-  public static final int VERSION_CURRENT = 3;
+  public static final int VERSION_CURRENT = VERSION_FIXED_WIDTH_TREES;
 
   /** The Constant MTAS_OBJECT_HAS_PARENT. */
   static final int MTAS_OBJECT_HAS_PARENT = 1;
@@ -99,6 +104,9 @@ public class MtasCodecPostingsFormat extends PostingsFormat {
   /** The Constant MTAS_PREFIX_EXTENSION. */
   public static final String MTAS_PREFIX_EXTENSION = "mtas.prefix";
 
+  /** The Constant MTAS_PREFIX_STATS_EXTENSION. */
+  public static final String MTAS_PREFIX_STATS_EXTENSION = "mtas.prefix.stats";
+
   /** The Constant MTAS_DOC_EXTENSION. */
   public static final String MTAS_DOC_EXTENSION = "mtas.doc";
 
@@ -117,6 +125,14 @@ public class MtasCodecPostingsFormat extends PostingsFormat {
   /** The Constant MTAS_INDEX_TERM_PREFIX_POSITION_EXTENSION. */
   public static final String MTAS_INDEX_TERM_PREFIX_POSITION_EXTENSION = "mtas.index.term.prefix.position";
 
+  /** The Constant MERGE_THREADS_PROPERTY. */
+  public static final String MERGE_THREADS_PROPERTY = "mtas.merge.threads";
+
+  /** The maximum number of threads preparing documents while merging. */
+  private static volatile int mergeThreads = Math.max(1,
+      Integer.getInteger(MERGE_THREADS_PROPERTY, Math.min(4,
+          Runtime.getRuntime().availableProcessors())));
+
   /** The delegate codec name. */
   private String delegateCodecName = null;
 
@@ -211,6 +227,31 @@ public class MtasCodecPostingsFormat extends PostingsFormat {
     }
   }
 
+  /**
+   * Gets the maximum number of threads preparing documents while merging
+   * segments, by default the value of the system property
+   * {@value #MERGE_THREADS_PROPERTY} or the number of processors up to 4.
+   *
+   * @return the merge threads
+   */
+  public static int getMergeThreads() {
+    return mergeThreads;
+  }
+
+  /**
+   * Sets the maximum number of threads preparing documents while merging
+   * segments.
+   *
+   * @param number the number of threads, at least 1
+   */
+  public static void setMergeThreads(int number) {
+    if (number < 1) {
+      throw new IllegalArgumentException("number of merge threads " + number
+          + " should be at least 1");
+    }
+    mergeThreads = number;
+  }
+
   /**
    * Gets the token.
    *
@@ -222,65 +263,93 @@ public class MtasCodecPostingsFormat extends PostingsFormat {
    */
   public static MtasTokenString getToken(IndexInput inObject, IndexInput inTerm,
       Long ref) throws IOException {
+    return getToken(inObject, inTerm, ref, null);
+  }
+
+  /**
+   * Gets the token, resolving the term through the term cache if provided.
+   *
+   * @param inObject the in object
+   * @param inTerm the in term
+   * @param ref the ref
+   * @param termCache the term cache, or null
+   * @return the token
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static MtasTokenString getToken(IndexInput inObject, IndexInput inTerm,
+      Long ref, CodecTermCache termCache) throws IOException {
     MtasTokenString token = null;
     try {
       inObject.seek(ref);
-      token = new MtasTokenString(null, "");
-      token.setId(inObject.readVInt());
-      token.setTokenRef(ref);
-      int objectFlags = inObject.readVInt();
-      int[] positions = null;
-      if ((objectFlags & MTAS_OBJECT_HAS_PARENT) == MTAS_OBJECT_HAS_PARENT) {
-        int parentId = inObject.readVInt();
-        token.setParentId(parentId);
-      }
-      if ((objectFlags
-          & MTAS_OBJECT_HAS_POSITION_RANGE) == MTAS_OBJECT_HAS_POSITION_RANGE) {
-        int positionStart = inObject.readVInt();
-        int positionEnd = positionStart + inObject.readVInt();
-        token.addPositionRange(positionStart, positionEnd);
-      } else if ((objectFlags
-          & MTAS_OBJECT_HAS_POSITION_SET) == MTAS_OBJECT_HAS_POSITION_SET) {
-        int size = inObject.readVInt();
-        int tmpPrevious = 0;
-        positions = new int[size];
-        for (int t = 0; t < size; t++) {
-          int position = tmpPrevious + inObject.readVInt();
-          tmpPrevious = position;
-          positions[t] = position;
-        }
-        token.addPositions(positions);
-      } else {
-        int position = inObject.readVInt();
-        token.addPosition(position);
-      }
-      if ((objectFlags & MTAS_OBJECT_HAS_OFFSET) == MTAS_OBJECT_HAS_OFFSET) {
-        int offsetStart = inObject.readVInt();
-        int offsetEnd = offsetStart + inObject.readVInt();
-        token.setOffset(offsetStart, offsetEnd);
-      }
-      if ((objectFlags
-          & MTAS_OBJECT_HAS_REALOFFSET) == MTAS_OBJECT_HAS_REALOFFSET) {
-        int realOffsetStart = inObject.readVInt();
-        int realOffsetEnd = realOffsetStart + inObject.readVInt();
-        token.setRealOffset(realOffsetStart, realOffsetEnd);
-      }
-      if ((objectFlags & MTAS_OBJECT_HAS_PAYLOAD) == MTAS_OBJECT_HAS_PAYLOAD) {
-        int length = inObject.readVInt();
-        byte[] mtasPayload = new byte[length];
-        inObject.readBytes(mtasPayload, 0, length);
-        token.setPayload(new BytesRef(mtasPayload));
-      }
-      Long termRef = inObject.readVLong();
-      inTerm.seek(termRef);
-      token.setTermRef(termRef);
-      token.setValue(inTerm.readString());
+      token = readToken(inObject, ref);
+      token.setValue(getTerm(inTerm, token.getTermRef(), termCache));
     } catch (Exception e) {
       throw new IOException(e);
     }
     return token;
   }
 
+  /**
+   * Read token from the current position of the object input, setting the
+   * term reference but not the value.
+   *
+   * @param inObject the in object, positioned at ref
+   * @param ref the ref
+   * @return the token
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static MtasTokenString readToken(DataInput inObject, long ref)
+      throws IOException {
+    MtasTokenString token = new MtasTokenString(null, "");
+    token.setId(inObject.readVInt());
+    token.setTokenRef(ref);
+    int objectFlags = inObject.readVInt();
+    int[] positions = null;
+    if ((objectFlags & MTAS_OBJECT_HAS_PARENT) == MTAS_OBJECT_HAS_PARENT) {
+      int parentId = inObject.readVInt();
+      token.setParentId(parentId);
+    }
+    if ((objectFlags
+        & MTAS_OBJECT_HAS_POSITION_RANGE) == MTAS_OBJECT_HAS_POSITION_RANGE) {
+      int positionStart = inObject.readVInt();
+      int positionEnd = positionStart + inObject.readVInt();
+      token.addPositionRange(positionStart, positionEnd);
+    } else if ((objectFlags
+        & MTAS_OBJECT_HAS_POSITION_SET) == MTAS_OBJECT_HAS_POSITION_SET) {
+      int size = inObject.readVInt();
+      int tmpPrevious = 0;
+      positions = new int[size];
+      for (int t = 0; t < size; t++) {
+        int position = tmpPrevious + inObject.readVInt();
+        tmpPrevious = position;
+        positions[t] = position;
+      }
+      token.addPositions(positions);
+    } else {
+      int position = inObject.readVInt();
+      token.addPosition(position);
+    }
+    if ((objectFlags & MTAS_OBJECT_HAS_OFFSET) == MTAS_OBJECT_HAS_OFFSET) {
+      int offsetStart = inObject.readVInt();
+      int offsetEnd = offsetStart + inObject.readVInt();
+      token.setOffset(offsetStart, offsetEnd);
+    }
+    if ((objectFlags
+        & MTAS_OBJECT_HAS_REALOFFSET) == MTAS_OBJECT_HAS_REALOFFSET) {
+      int realOffsetStart = inObject.readVInt();
+      int realOffsetEnd = realOffsetStart + inObject.readVInt();
+      token.setRealOffset(realOffsetStart, realOffsetEnd);
+    }
+    if ((objectFlags & MTAS_OBJECT_HAS_PAYLOAD) == MTAS_OBJECT_HAS_PAYLOAD) {
+      int length = inObject.readVInt();
+      byte[] mtasPayload = new byte[length];
+      inObject.readBytes(mtasPayload, 0, length);
+      token.setPayload(new BytesRef(mtasPayload));
+    }
+    token.setTermRef(inObject.readVLong());
+    return token;
+  }
+
   /**
    * Gets the term.
    *
@@ -290,9 +359,30 @@ public class MtasCodecPostingsFormat extends PostingsFormat {
    * @throws IOException Signals that an I/O exception has occurred.
    */
   public static String getTerm(IndexInput inTerm, Long ref) throws IOException {
+    return getTerm(inTerm, ref, null);
+  }
+
+  /**
+   * Gets the term, using the term cache if provided.
+   *
+   * @param inTerm the in term
+   * @param ref the ref
+   * @param termCache the term cache, or null
+   * @return the term
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static String getTerm(IndexInput inTerm, Long ref,
+      CodecTermCache termCache) throws IOException {
     try {
-      inTerm.seek(ref);
-      return inTerm.readString();
+      String term = termCache == null ? null : termCache.get(ref);
+      if (term == null) {
+        inTerm.seek(ref);
+        term = inTerm.readString();
+        if (termCache != null) {
+          termCache.put(ref, term);
+        }
+      }
+      return term;
     } catch (Exception e) {
       throw new IOException(e);
     }
@@ -5,25 +5,31 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.SortedMap;
-import java.util.SortedSet;
 import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
 
 import mtas.analysis.token.MtasOffset;
 import mtas.analysis.token.MtasPosition;
 import mtas.analysis.token.MtasToken;
 import mtas.analysis.token.MtasTokenString;
 import mtas.codec.payload.MtasPayloadDecoder;
+import mtas.codec.tree.MtasFixedWidthTree;
+import mtas.codec.tree.MtasPackedTree;
 import mtas.codec.tree.MtasRBTree;
 import mtas.codec.tree.MtasTree;
-import mtas.codec.tree.MtasTreeNode;
-import mtas.codec.tree.MtasTreeNodeId;
+import mtas.codec.util.CodecInfo;
+import mtas.codec.util.CodecInfo.FieldStats;
+import mtas.codec.util.CodecInfo.PrefixStats;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -45,8 +51,15 @@ import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RAMOutputStream;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.NamedThreadFactory;
+import org.apache.lucene.util.SparseFixedBitSet;
+import org.apache.lucene.util.ThreadInterruptedException;
+import org.apache.lucene.util.packed.PackedInts;
+import org.apache.lucene.util.packed.PackedLongValues;
 
 /**
  * The Class MtasFieldsConsumer.
@@ -163,6 +176,24 @@ import org.apache.lucene.util.IOUtils;
  * <li><b>String</b>: prefix</li>
  * </ul>
  * </li>
+ * <li><b>File {@link #mtasPrefixStatsFileName} with extension
+ * {@value mtas.codec.MtasCodecPostingsFormat#MTAS_PREFIX_STATS_EXTENSION}
+ * </b><br>
+ * Optional, contains for each field statistics to answer requests on all
+ * documents of the segment without reading the documents. Structure of
+ * content:
+ * <ul>
+ * <li><b>String</b>: field</li>
+ * <li><b>VInt</b>: number of documents</li>
+ * <li><b>VLong</b>: number of positions, summed over all documents</li>
+ * <li><b>VLong</b>: number of tokens, summed over all documents</li>
+ * <li><b>VInt</b>: number of prefixes</li>
+ * <li><b>String</b>,<b>VInt</b>,<b>VLong</b>,<b>VInt</b>: prefix, number of
+ * terms, summed term frequency and number of documents for this prefix</li>
+ * <li><b>String</b>,<b>VInt</b>,<b>VLong</b>,<b>VInt</b>,...: for the other
+ * prefixes</li>
+ * </ul>
+ * </li>
  * <li><b>File {@link #mtasObjectFileName} with extension
  * {@value mtas.codec.MtasCodecPostingsFormat#MTAS_OBJECT_EXTENSION}</b><br>
  * Contains all objects for all fields. Structure of content:
@@ -202,7 +233,10 @@ import org.apache.lucene.util.IOUtils;
  * {@value mtas.codec.MtasCodecPostingsFormat#MTAS_INDEX_DOC_ID_EXTENSION}
  * </b><br>
  * Contains for each field a tree structure {@link MtasTree} to search reference
- * to {@link #mtasDocFileName} by id. Structure of content for each node:
+ * to {@link #mtasDocFileName} by id, stored as {@link MtasFixedWidthTree} with
+ * flag {@link mtas.codec.tree.MtasTree#SINGLE_POSITION_TREE} and for each node
+ * the reference to {@link #mtasDocFileName} minus offset. Segments written by
+ * older versions contain trees with variable length nodes, for each node:
  * <ul>
  * <li><b>VLong</b>: offset references to {@link #mtasIndexDocIdFileName}, only
  * available in root node</li>
@@ -263,7 +297,11 @@ import org.apache.lucene.util.IOUtils;
  * {@value mtas.codec.MtasCodecPostingsFormat#MTAS_INDEX_OBJECT_POSITION_EXTENSION}
  * </b><br>
  * Contains for each document a tree structure {@link MtasTree} to search
- * objects by position. Structure of content for each node:
+ * objects by position, stored as {@link MtasFixedWidthTree} with flag
+ * {@link mtas.codec.tree.MtasTree#STORE_ADDITIONAL_ID} and for each object
+ * the reference to {@link #mtasObjectFileName} minus offset, the prefixId and
+ * the reference to {@link #mtasTermFileName}. Segments written by older
+ * versions contain trees with variable length nodes, for each node:
  * <ul>
  * <li><b>VLong</b>: offset references to
  * {@link #mtasIndexObjectPositionFileName}, only available in root node</li>
@@ -292,7 +330,9 @@ import org.apache.lucene.util.IOUtils;
  * {@value mtas.codec.MtasCodecPostingsFormat#MTAS_INDEX_OBJECT_PARENT_EXTENSION}
  * </b><br>
  * Contains for each document a tree structure {@link MtasTree} to search
- * objects by parent. Structure of content for each node:
+ * objects by parent, stored as {@link MtasFixedWidthTree} like the tree in
+ * {@link #mtasIndexObjectPositionFileName}. Segments written by older versions
+ * contain trees with variable length nodes, for each node:
  * <ul>
  * <li><b>VLong</b>: offset references to {@link #mtasIndexObjectParentFileName}
  * , only available in root node</li>
@@ -328,6 +368,9 @@ public class MtasFieldsConsumer extends FieldsConsumer {
   /** The Constant log. */
   private static final Log log = LogFactory.getLog(MtasFieldsConsumer.class);
 
+  /** The maximum number of prepared documents for each segment and field. */
+  private static final int MERGE_QUEUE_SIZE = 64;
+
   /** The delegate fields consumer. */
   private FieldsConsumer delegateFieldsConsumer;
 
@@ -352,6 +395,9 @@ public class MtasFieldsConsumer extends FieldsConsumer {
   /** The prefix id index. */
   private HashMap<String, HashMap<String, Integer>> prefixIdIndex;
 
+  /** The term statistics for each prefix, for each field. */
+  private HashMap<String, TreeMap<String, MtasPrefixTermStats>> prefixTermStats;
+
   /** The token stats min pos. */
   Integer tokenStatsMinPos;
 
@@ -388,6 +434,9 @@ public class MtasFieldsConsumer extends FieldsConsumer {
   /** The mtas prefix file name. */
   private String mtasPrefixFileName;
 
+  /** The mtas prefix stats file name. */
+  private String mtasPrefixStatsFileName;
+
   /** The mtas doc file name. */
   private String mtasDocFileName;
 
@@ -451,6 +500,9 @@ public class MtasFieldsConsumer extends FieldsConsumer {
         MtasCodecPostingsFormat.MTAS_FIELD_EXTENSION);
     mtasPrefixFileName = IndexFileNames.segmentFileName(state.segmentInfo.name,
         state.segmentSuffix, MtasCodecPostingsFormat.MTAS_PREFIX_EXTENSION);
+    mtasPrefixStatsFileName = IndexFileNames.segmentFileName(
+        state.segmentInfo.name, state.segmentSuffix,
+        MtasCodecPostingsFormat.MTAS_PREFIX_STATS_EXTENSION);
     mtasDocFileName = IndexFileNames.segmentFileName(state.segmentInfo.name,
         state.segmentSuffix, MtasCodecPostingsFormat.MTAS_DOC_EXTENSION);
     mtasIndexDocIdFileName = IndexFileNames.segmentFileName(
@@ -690,7 +742,473 @@ public class MtasFieldsConsumer extends FieldsConsumer {
     Fields mergedFields = new MappedMultiFields(mergeState,
         new MultiFields(fields.toArray(Fields.EMPTY_ARRAY),
             slices.toArray(ReaderSlice.EMPTY_ARRAY)));
-    write(mergedFields);
+    if (canMergeDirectly(mergeState, mergedFields)) {
+      delegateFieldsConsumer.write(mergedFields);
+      mergeDirectly(mergeState, mergedFields);
+    } else {
+      write(mergedFields);
+    }
+  }
+
+  /**
+   * Checks if the segments can be merged by copying the encoded objects
+   * directly: all segments should provide mtas terms, and documents should not
+   * be reordered by index sorting.
+   *
+   * @param mergeState the merge state
+   * @param fields the merged fields
+   * @return true, if successful
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private boolean canMergeDirectly(MergeState mergeState, Fields fields)
+      throws IOException {
+    if (mergeState.needsIndexSort) {
+      return false;
+    }
+    for (String field : fields) {
+      for (FieldsProducer fieldsProducer : mergeState.fieldsProducers) {
+        Terms terms = fieldsProducer.terms(field);
+        if (terms != null && !(terms instanceof MtasTerms)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Merge the mtas data of the segments. Terms are merged and written first,
+   * providing for each segment a translation of the term references. The
+   * encoded objects of each remaining document are then copied in order with
+   * translated term references, and the indexes on object id, position and
+   * parent are rebuilt. Documents are prepared concurrently for all segments
+   * and fields, and written sequentially.
+   *
+   * @param mergeState the merge state
+   * @param fields the merged fields
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void mergeDirectly(MergeState mergeState, Fields fields)
+      throws IOException {
+    IndexOutput outField;
+    IndexOutput outDoc;
+    IndexOutput outIndexDocId;
+    IndexOutput outIndexObjectId;
+    IndexOutput outIndexObjectPosition;
+    IndexOutput outIndexObjectParent;
+    IndexOutput outTerm;
+    IndexOutput outObject;
+    IndexOutput outPrefix;
+    IndexOutput outPrefixStats;
+    HashSet<Closeable> closeables = new HashSet<>();
+    ExecutorService executor = null;
+    // prefix stats
+    intersectingPrefixes = new HashMap<>();
+    singlePositionPrefix = new HashMap<>();
+    multiplePositionPrefix = new HashMap<>();
+    setPositionPrefix = new HashMap<>();
+    prefixReferenceIndex = new HashMap<>();
+    prefixIdIndex = new HashMap<>();
+    prefixTermStats = new HashMap<>();
+    try {
+      outField = createIndexOutput(mtasIndexFieldFileName, closeables);
+      outDoc = createIndexOutput(mtasDocFileName, closeables);
+      outIndexDocId = createIndexOutput(mtasIndexDocIdFileName, closeables);
+      outIndexObjectId = createIndexOutput(mtasIndexObjectIdFileName,
+          closeables);
+      outIndexObjectPosition = createIndexOutput(
+          mtasIndexObjectPositionFileName, closeables);
+      outIndexObjectParent = createIndexOutput(mtasIndexObjectParentFileName,
+          closeables);
+      outTerm = createIndexOutput(mtasTermFileName, closeables);
+      outPrefix = createIndexOutput(mtasPrefixFileName, closeables);
+      outPrefixStats = createIndexOutput(mtasPrefixStatsFileName, closeables);
+      outObject = createIndexOutput(mtasObjectFileName, closeables);
+      // collect segments and merge terms and prefixes for each field
+      List<MtasMergeField> mergeFields = new ArrayList<>();
+      for (String field : fields) {
+        Terms terms = fields.terms(field);
+        FieldInfo fieldInfo = state.fieldInfos.fieldInfo(field);
+        if (terms == null || !terms.hasFreqs() || !terms.hasPositions()
+            || !fieldInfo.hasPayloads()) {
+          continue;
+        }
+        MtasMergeField mergeField = new MtasMergeField(field);
+        List<MtasMergeSegment> segments = mergeField.segments;
+        for (int i = 0; i < mergeState.fieldsProducers.length; i++) {
+          Terms segmentTerms = mergeState.fieldsProducers[i].terms(field);
+          if (segmentTerms != null) {
+            MtasMergeSegment segment = MtasMergeSegment.create(field,
+                (MtasTerms) segmentTerms, mergeState.docMaps[i]);
+            if (segment != null) {
+              segments.add(segment);
+            }
+          }
+        }
+        mergeField.fpTerm = outTerm.getFilePointer();
+        mergeField.fpPrefix = outPrefix.getFilePointer();
+        // without deletions, the prefix term stats of the segments add up
+        boolean deletions = hasDeletions(mergeState);
+        List<FieldStats> segmentFieldStats = deletions ? null
+            : getSegmentFieldStats(field, mergeState);
+        mergeField.numberTerms = mergeTerms(field, segments, terms.iterator(),
+            deletions, segmentFieldStats == null, outTerm, outPrefix);
+        if (segmentFieldStats != null) {
+          for (FieldStats fieldStats : segmentFieldStats) {
+            for (Entry<String, PrefixStats> entry : fieldStats.prefixStats
+                .entrySet()) {
+              getPrefixTermStats(field, entry.getKey()).add(entry.getValue());
+            }
+          }
+        }
+        mergePrefixStats(field, mergeState);
+        fieldInfo.putAttribute(
+            MtasCodecPostingsFormat.MTAS_FIELDINFO_ATTRIBUTE_PREFIX_SINGLE_POSITION,
+            getPrefixStatsSinglePositionPrefixAttribute(field));
+        fieldInfo.putAttribute(
+            MtasCodecPostingsFormat.MTAS_FIELDINFO_ATTRIBUTE_PREFIX_MULTIPLE_POSITION,
+            getPrefixStatsMultiplePositionPrefixAttribute(field));
+        fieldInfo.putAttribute(
+            MtasCodecPostingsFormat.MTAS_FIELDINFO_ATTRIBUTE_PREFIX_SET_POSITION,
+            getPrefixStatsSetPositionPrefixAttribute(field));
+        mergeFields.add(mergeField);
+      }
+      // prepare documents concurrently, in the order they will be written
+      int numberOfTasks = 0;
+      for (MtasMergeField mergeField : mergeFields) {
+        numberOfTasks += mergeField.segments.size();
+      }
+      if (numberOfTasks > 0) {
+        executor = Executors.newFixedThreadPool(
+            Math.min(MtasCodecPostingsFormat.getMergeThreads(),
+                numberOfTasks),
+            new NamedThreadFactory("mtas-merge"));
+        for (MtasMergeField mergeField : mergeFields) {
+          for (MtasMergeSegment segment : mergeField.segments) {
+            executor.execute(segment::prepare);
+          }
+        }
+      }
+      // write documents
+      for (MtasMergeField mergeField : mergeFields) {
+        String field = mergeField.field;
+        long fpFirstDoc = outDoc.getFilePointer();
+        int numberDocs = 0;
+        long numberPositions = 0;
+        long numberTokens = 0;
+        MtasRBTree mtasDocIdTree = new MtasRBTree(true, false);
+        for (MtasMergeSegment segment : mergeField.segments) {
+          MtasMergeDoc doc;
+          while ((doc = segment.take()) != null) {
+            long smallestObjectFilepointer = outObject.getFilePointer();
+            doc.objects.writeTo(outObject);
+            long fpIndexObjectId = outIndexObjectId.getFilePointer();
+            long[] refs = new long[doc.refs.length];
+            for (int i = 0; i < refs.length; i++) {
+              refs[i] = smallestObjectFilepointer + doc.refs[i];
+            }
+            MtasObjectRefApproximation approximation = new MtasObjectRefApproximation(
+                refs);
+            approximation.store(refs, outIndexObjectId);
+            // references in trees are relative to the first object
+            long fpIndexObjectPosition = doc.positionTree
+                .store(outIndexObjectPosition, 0);
+            long fpIndexObjectParent = doc.parentTree
+                .store(outIndexObjectParent, 0);
+            long fpDoc = outDoc.getFilePointer();
+            outDoc.writeVInt(doc.docId);
+            outDoc.writeVLong(fpIndexObjectId);
+            outDoc.writeVLong(fpIndexObjectPosition);
+            outDoc.writeVLong(fpIndexObjectParent);
+            outDoc.writeVLong(smallestObjectFilepointer);
+            outDoc.writeVInt(approximation.quotient);
+            outDoc.writeZLong(approximation.offset);
+            outDoc.writeByte(approximation.storageFlags);
+            outDoc.writeVInt(refs.length);
+            outDoc.writeVInt(doc.minPosition);
+            outDoc.writeVInt(doc.maxPosition);
+            mtasDocIdTree.addIdFromDoc(doc.docId, fpDoc);
+            numberDocs++;
+            numberPositions += 1 + doc.maxPosition - doc.minPosition;
+            numberTokens += refs.length;
+          }
+        }
+        if (numberDocs > 0) {
+          long fpIndexDocId = MtasFixedWidthTree.store(mtasDocIdTree,
+              outIndexDocId, fpFirstDoc);
+          outField.writeString(field);
+          outField.writeVLong(fpFirstDoc);
+          outField.writeVLong(fpIndexDocId);
+          outField.writeVInt(numberDocs);
+          outField.writeVLong(mergeField.fpTerm);
+          outField.writeVInt(mergeField.numberTerms);
+          outField.writeVLong(mergeField.fpPrefix);
+          outField.writeVInt(prefixReferenceIndex.containsKey(field)
+              ? prefixReferenceIndex.get(field).size() : 0);
+          state.fieldInfos.fieldInfo(field).putAttribute(
+              MtasCodecPostingsFormat.MTAS_FIELDINFO_ATTRIBUTE_PREFIX_INTERSECTION,
+              getPrefixStatsIntersectionPrefixAttribute(field));
+          writePrefixTermStats(field, numberDocs, numberPositions,
+              numberTokens, outPrefixStats);
+        }
+      }
+      for (IndexOutput out : new IndexOutput[] { outField, outDoc,
+          outIndexDocId, outIndexObjectId, outIndexObjectPosition,
+          outIndexObjectParent, outTerm, outPrefix, outPrefixStats,
+          outObject }) {
+        CodecUtil.writeFooter(out);
+        out.close();
+        closeables.remove(out);
+      }
+    } finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+      IOUtils.closeWhileHandlingException(closeables);
+    }
+  }
+
+  /**
+   * Checks if any of the merged segments has deleted documents.
+   *
+   * @param mergeState the merge state
+   * @return true, if successful
+   */
+  private static boolean hasDeletions(MergeState mergeState) {
+    for (int i = 0; i < mergeState.liveDocs.length; i++) {
+      if (mergeState.liveDocs[i] != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Gets the precomputed statistics of a field for each merged segment
+   * containing the field.
+   *
+   * @param field the field
+   * @param mergeState the merge state
+   * @return the field stats, or null if not available for all segments
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static List<FieldStats> getSegmentFieldStats(String field,
+      MergeState mergeState) throws IOException {
+    List<FieldStats> list = new ArrayList<>();
+    for (FieldsProducer fieldsProducer : mergeState.fieldsProducers) {
+      Terms segmentTerms = fieldsProducer.terms(field);
+      if (segmentTerms != null) {
+        FieldStats fieldStats = CodecInfo.getCodecInfoFromTerms(segmentTerms)
+            .getFieldStats(field);
+        if (fieldStats == null) {
+          return null;
+        }
+        list.add(fieldStats);
+      }
+    }
+    return list;
+  }
+
+  /**
+   * Merge the sorted terms of the segments for a field, writing each unique
+   * term and its prefix once, and register for each segment the translation
+   * of its term references. Terms only occurring in deleted documents are
+   * skipped, like the delegate postings format does: the merged terms enum is
+   * used to check for remaining postings. If requested, the term statistics
+   * for each prefix are collected from the same postings.
+   *
+   * @param field the field
+   * @param segments the segments
+   * @param mergedTermsEnum the merged terms enum
+   * @param deletions if documents have been deleted
+   * @param collectStats collect the term statistics for each prefix
+   * @param outTerm the out term
+   * @param outPrefix the out prefix
+   * @return the number of terms
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private int mergeTerms(String field, List<MtasMergeSegment> segments,
+      TermsEnum mergedTermsEnum, boolean deletions, boolean collectStats,
+      IndexOutput outTerm, IndexOutput outPrefix) throws IOException {
+    PriorityQueue<MtasMergeSegment> queue = new PriorityQueue<>(
+        Math.max(1, segments.size()),
+        (s1, s2) -> s1.getTerm().compareTo(s2.getTerm()));
+    for (MtasMergeSegment segment : segments) {
+      if (segment.nextTerm()) {
+        queue.add(segment);
+      }
+    }
+    int termCounter = 0;
+    BytesRefBuilder previousTerm = new BytesRefBuilder();
+    boolean hasPrevious = false;
+    boolean live = false;
+    long termRef = -1;
+    int prefixId = 0;
+    PostingsEnum postingsEnum = null;
+    while (!queue.isEmpty()) {
+      MtasMergeSegment segment = queue.poll();
+      if (!hasPrevious || !previousTerm.get().equals(segment.getTerm())) {
+        hasPrevious = true;
+        previousTerm.copyBytes(segment.getTerm());
+        if (!deletions && !collectStats) {
+          live = true;
+          postingsEnum = null;
+        } else if (mergedTermsEnum.seekExact(previousTerm.get())) {
+          postingsEnum = mergedTermsEnum.postings(postingsEnum,
+              collectStats ? PostingsEnum.FREQS : PostingsEnum.NONE);
+          live = postingsEnum.nextDoc() != DocIdSetIterator.NO_MORE_DOCS;
+        } else {
+          live = false;
+        }
+        if (live) {
+          String term = previousTerm.get().utf8ToString();
+          String prefix = MtasToken.getPrefixFromValue(term);
+          termRef = outTerm.getFilePointer();
+          outTerm.writeString(term);
+          termCounter++;
+          registerPrefix(field, prefix, outPrefix);
+          prefixId = prefixIdIndex.get(field).get(prefix);
+          MtasPrefixTermStats stats = getPrefixTermStats(field, prefix);
+          stats.numberOfTerms++;
+          if (collectStats) {
+            int docId = postingsEnum.docID();
+            while (docId != DocIdSetIterator.NO_MORE_DOCS) {
+              stats.add(docId, postingsEnum.freq());
+              docId = postingsEnum.nextDoc();
+            }
+          }
+        }
+      }
+      // without translation, references to the term are only expected in
+      // deleted documents
+      if (live) {
+        segment.addTermTranslation(termRef, prefixId);
+      }
+      if (segment.nextTerm()) {
+        queue.add(segment);
+      }
+    }
+    for (MtasMergeSegment segment : segments) {
+      segment.finishTermTranslation();
+    }
+    return termCounter;
+  }
+
+  /**
+   * Merge the prefix stats for a field from the field infos of the segments.
+   * Prefixes occurring with multiple positions or intersecting in any segment
+   * are registered as such for the merged segment.
+   *
+   * @param field the field
+   * @param mergeState the merge state
+   */
+  private void mergePrefixStats(String field, MergeState mergeState) {
+    initPrefixStatsField(field);
+    HashSet<String> singlePositionPrefixField = new HashSet<>();
+    if (!intersectingPrefixes.containsKey(field)) {
+      intersectingPrefixes.put(field, new HashSet<String>());
+    }
+    for (FieldInfos fieldInfos : mergeState.fieldInfos) {
+      FieldInfo fieldInfo = fieldInfos.fieldInfo(field);
+      if (fieldInfo != null) {
+        addPrefixes(fieldInfo.getAttribute(
+            MtasCodecPostingsFormat.MTAS_FIELDINFO_ATTRIBUTE_PREFIX_SINGLE_POSITION),
+            singlePositionPrefixField);
+        addPrefixes(fieldInfo.getAttribute(
+            MtasCodecPostingsFormat.MTAS_FIELDINFO_ATTRIBUTE_PREFIX_MULTIPLE_POSITION),
+            multiplePositionPrefix.get(field));
+        addPrefixes(fieldInfo.getAttribute(
+            MtasCodecPostingsFormat.MTAS_FIELDINFO_ATTRIBUTE_PREFIX_SET_POSITION),
+            setPositionPrefix.get(field));
+        addPrefixes(fieldInfo.getAttribute(
+            MtasCodecPostingsFormat.MTAS_FIELDINFO_ATTRIBUTE_PREFIX_INTERSECTION),
+            intersectingPrefixes.get(field));
+      }
+    }
+    singlePositionPrefixField.removeAll(multiplePositionPrefix.get(field));
+    singlePositionPrefix.get(field).addAll(singlePositionPrefixField);
+  }
+
+  /**
+   * Adds the prefixes from a field info attribute.
+   *
+   * @param attribute the attribute
+   * @param prefixes the prefixes
+   */
+  private static void addPrefixes(String attribute, Set<String> prefixes) {
+    if (attribute != null && !attribute.isEmpty()) {
+      for (String prefix : attribute.split(Pattern.quote(MtasToken.DELIMITER))) {
+        if (!prefix.isEmpty()) {
+          prefixes.add(prefix);
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the term statistics for a prefix of a field, created if necessary.
+   *
+   * @param field the field
+   * @param prefix the prefix
+   * @return the prefix term stats
+   */
+  private MtasPrefixTermStats getPrefixTermStats(String field, String prefix) {
+    TreeMap<String, MtasPrefixTermStats> prefixTermStatsField = prefixTermStats
+        .computeIfAbsent(field, k -> new TreeMap<>());
+    MtasPrefixTermStats stats = prefixTermStatsField.get(prefix);
+    if (stats == null) {
+      stats = new MtasPrefixTermStats(state.segmentInfo.maxDoc());
+      prefixTermStatsField.put(prefix, stats);
+    }
+    return stats;
+  }
+
+  /**
+   * Write the statistics for a field to {@link #mtasPrefixStatsFileName}.
+   *
+   * @param field the field
+   * @param numberDocs the number of docs
+   * @param numberPositions the number of positions
+   * @param numberTokens the number of tokens
+   * @param outPrefixStats the out prefix stats
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void writePrefixTermStats(String field, int numberDocs,
+      long numberPositions, long numberTokens, IndexOutput outPrefixStats)
+      throws IOException {
+    TreeMap<String, MtasPrefixTermStats> prefixTermStatsField = prefixTermStats
+        .containsKey(field) ? prefixTermStats.get(field) : new TreeMap<>();
+    outPrefixStats.writeString(field);
+    outPrefixStats.writeVInt(numberDocs);
+    outPrefixStats.writeVLong(numberPositions);
+    outPrefixStats.writeVLong(numberTokens);
+    outPrefixStats.writeVInt(prefixTermStatsField.size());
+    for (Entry<String, MtasPrefixTermStats> entry : prefixTermStatsField
+        .entrySet()) {
+      outPrefixStats.writeString(entry.getKey());
+      outPrefixStats.writeVInt(entry.getValue().numberOfTerms);
+      outPrefixStats.writeVLong(entry.getValue().totalTermFreq);
+      outPrefixStats.writeVInt(entry.getValue().getDocFreq());
+    }
+  }
+
+  /**
+   * Creates the index output, with header and delegate postings format name.
+   *
+   * @param fileName the file name
+   * @param closeables the closeables
+   * @return the index output
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private IndexOutput createIndexOutput(String fileName,
+      Set<Closeable> closeables) throws IOException {
+    IndexOutput out = state.directory.createOutput(fileName, state.context);
+    closeables.add(out);
+    CodecUtil.writeIndexHeader(out, name,
+        MtasCodecPostingsFormat.VERSION_CURRENT, state.segmentInfo.getId(),
+        state.segmentSuffix);
+    out.writeString(delegatePostingsFormatName);
+    return out;
   }
 
   /*
@@ -723,6 +1241,7 @@ public class MtasFieldsConsumer extends FieldsConsumer {
     IndexOutput outTerm;
     IndexOutput outObject;
     IndexOutput outPrefix;
+    IndexOutput outPrefixStats;
     IndexOutput outTmpDoc;
     IndexOutput outTmpField;
     HashSet<Closeable> closeables = new HashSet<>();
@@ -733,6 +1252,7 @@ public class MtasFieldsConsumer extends FieldsConsumer {
     setPositionPrefix = new HashMap<>();
     prefixReferenceIndex = new HashMap<>();
     prefixIdIndex = new HashMap<>();
+    prefixTermStats = new HashMap<>();
     // temporary temporary index in memory for doc
     SortedMap<Integer, Long> memoryIndexTemporaryObject = new TreeMap<>();
     // create (backwards) chained new temporary index docs
@@ -844,19 +1364,25 @@ public class MtasFieldsConsumer extends FieldsConsumer {
               if (term == null) {
                 break;
               }
+              // get postings, skipping terms only in deleted documents
+              postingsEnum = termsEnum.postings(postingsEnum, flags);
+              int docId = postingsEnum.nextDoc();
+              if (docId == DocIdSetIterator.NO_MORE_DOCS) {
+                continue;
+              }
               // store term and get ref
               Long termRef = outTerm.getFilePointer();
-              outTerm.writeString(term.utf8ToString());
+              String termString = term.utf8ToString();
+              outTerm.writeString(termString);
               termCounter++;
-              // get postings
-              postingsEnum = termsEnum.postings(postingsEnum, flags);
+              // term statistics for prefix
+              MtasPrefixTermStats termStats = getPrefixTermStats(field,
+                  MtasToken.getPrefixFromValue(termString));
+              termStats.numberOfTerms++;
               // for each doc in field+term
-              while (true) {
-                Integer docId = postingsEnum.nextDoc();
-                if (docId.equals(DocIdSetIterator.NO_MORE_DOCS)) {
-                  break;
-                }
+              while (docId != DocIdSetIterator.NO_MORE_DOCS) {
                 int freq = postingsEnum.freq();
+                termStats.add(docId, freq);
                 // temporary storage objects and temporary index in memory for
                 // doc
                 memoryIndexTemporaryObject.clear();
@@ -903,6 +1429,7 @@ public class MtasFieldsConsumer extends FieldsConsumer {
                 }
                 // clean up
                 memoryIndexTemporaryObject.clear();
+                docId = postingsEnum.nextDoc();
               } // end loop docs
             } // end loop terms
             // set fieldInfo
@@ -1029,8 +1556,11 @@ public class MtasFieldsConsumer extends FieldsConsumer {
                 int mtasId = objectEntry.getKey();
                 Long tmpObjectRef = objectEntry.getValue();
                 Long objectRef = outObject.getFilePointer();
-                copyObjectAndUpdateStats(mtasId, inTmpObject, tmpObjectRef,
-                    outObject);
+                MtasTokenString token = new MtasTokenString(null, "");
+                inTmpObject.seek(tmpObjectRef);
+                copyObject(mtasId, inTmpObject, outObject, token);
+                outObject.writeVLong(inTmpObject.readVLong());
+                tokenStatsAdd(token.getPositionStart(), token.getPositionEnd());
                 // update with new ref
                 memoryIndexDocList.put(mtasId, objectRef);
               }
@@ -1048,88 +1578,23 @@ public class MtasFieldsConsumer extends FieldsConsumer {
               outTmpDoc.writeVInt(docId);
               outTmpDoc.writeVLong(outIndexObjectId.getFilePointer());
 
+              long[] refs = new long[memoryIndexDocList.size()];
               int mtasId = 0;
-              // compute linear approximation (least squares method, integer
-              // constants)
-              long tmpN = memoryIndexDocList.size();
-              long tmpSumY = 0;
-              long tmpSumXY = 0;
-              long tmpSumX = 0;
-              long tmpSumXX = 0;
               for (Entry<Integer, Long> objectEntry : memoryIndexDocList
                   .entrySet()) {
                 assert objectEntry.getKey()
                     .equals(mtasId) : "unexpected mtasId";
-                tmpSumY += objectEntry.getValue();
-                tmpSumX += mtasId;
-                tmpSumXY += mtasId * objectEntry.getValue();
-                tmpSumXX += mtasId * mtasId;
+                refs[mtasId] = objectEntry.getValue();
                 mtasId++;
               }
-              int objectRefApproxQuotient;
-              if(tmpN>1) {
-                objectRefApproxQuotient= (int) (((tmpN * tmpSumXY)              
-                  - (tmpSumX * tmpSumY))
-                  / ((tmpN * tmpSumXX) - (tmpSumX * tmpSumX)));
-              } else {
-                objectRefApproxQuotient = 0;
-              }
-              long objectRefApproxOffset = (tmpSumY
-                  - objectRefApproxQuotient * tmpSumX) / tmpN;
-              Long objectRefApproxCorrection;
-              long maxAbsObjectRefApproxCorrection = 0;
-              // compute maximum correction
-              mtasId = 0;
-              for (Entry<Integer, Long> objectEntry : memoryIndexDocList
-                  .entrySet()) {
-                objectRefApproxCorrection = (objectEntry.getValue()
-                    - (objectRefApproxOffset
-                        + (mtasId * objectRefApproxQuotient)));
-                maxAbsObjectRefApproxCorrection = Math.max(
-                    maxAbsObjectRefApproxCorrection,
-                    Math.abs(objectRefApproxCorrection));
-                mtasId++;
-              }
-              byte storageFlags;
-              if (maxAbsObjectRefApproxCorrection <= Long
-                  .valueOf(Byte.MAX_VALUE)) {
-                storageFlags = MtasCodecPostingsFormat.MTAS_STORAGE_BYTE;
-              } else if (maxAbsObjectRefApproxCorrection <= Long
-                  .valueOf(Short.MAX_VALUE)) {
-                storageFlags = MtasCodecPostingsFormat.MTAS_STORAGE_SHORT;
-              } else if (maxAbsObjectRefApproxCorrection <= Long
-                  .valueOf(Integer.MAX_VALUE)) {
-                storageFlags = MtasCodecPostingsFormat.MTAS_STORAGE_INTEGER;
-              } else {
-                storageFlags = MtasCodecPostingsFormat.MTAS_STORAGE_LONG;
-              }
               // update indexObjectId with correction on approximated ref
-              // (assume
-              // can be stored as int)
-              mtasId = 0;
-              for (Entry<Integer, Long> objectEntry : memoryIndexDocList
-                  .entrySet()) {
-                objectRefApproxCorrection = (objectEntry.getValue()
-                    - (objectRefApproxOffset
-                        + (mtasId * objectRefApproxQuotient)));
-                if (storageFlags == MtasCodecPostingsFormat.MTAS_STORAGE_BYTE) {
-                  outIndexObjectId
-                      .writeByte(objectRefApproxCorrection.byteValue());
-                } else if (storageFlags == MtasCodecPostingsFormat.MTAS_STORAGE_SHORT) {
-                  outIndexObjectId
-                      .writeShort(objectRefApproxCorrection.shortValue());
-                } else if (storageFlags == MtasCodecPostingsFormat.MTAS_STORAGE_INTEGER) {
-                  outIndexObjectId
-                      .writeInt(objectRefApproxCorrection.intValue());
-                } else {
-                  outIndexObjectId.writeLong(objectRefApproxCorrection);
-                }
-                mtasId++;
-              }
+              MtasObjectRefApproximation approximation = new MtasObjectRefApproximation(
+                  refs);
+              approximation.store(refs, outIndexObjectId);
               outTmpDoc.writeVLong(smallestObjectFilepointer);
-              outTmpDoc.writeVInt(objectRefApproxQuotient);
-              outTmpDoc.writeZLong(objectRefApproxOffset);
-              outTmpDoc.writeByte(storageFlags);
+              outTmpDoc.writeVInt(approximation.quotient);
+              outTmpDoc.writeZLong(approximation.offset);
+              outTmpDoc.writeByte(approximation.storageFlags);
               outTmpDoc.writeVInt(tokenStatsNumber);
               outTmpDoc.writeVInt(tokenStatsMinPos);
               outTmpDoc.writeVInt(tokenStatsMaxPos);
@@ -1193,6 +1658,7 @@ public class MtasFieldsConsumer extends FieldsConsumer {
           MtasCodecPostingsFormat.VERSION_CURRENT, state.segmentInfo.getId(),
           state.segmentSuffix);
       outField.writeString(delegatePostingsFormatName);
+      outPrefixStats = createIndexOutput(mtasPrefixStatsFileName, closeables);
       boolean doWrite = true;
       do {
         try {
@@ -1211,6 +1677,8 @@ public class MtasFieldsConsumer extends FieldsConsumer {
               .get(field);
           // construct MtasRBTree for indexDocId
           MtasRBTree mtasDocIdTree = new MtasRBTree(true, false);
+          long numberPositions = 0;
+          long numberTokens = 0;
           for (int docCounter = 0; docCounter < numberDocs; docCounter++) {
             // get info from tmpDoc
             int docId = inTmpDoc.readVInt();
@@ -1227,9 +1695,9 @@ public class MtasFieldsConsumer extends FieldsConsumer {
             byte storageFlags = inTmpDoc.readByte();
             // number objects/tokens
             int size = inTmpDoc.readVInt();
-            // construct MtasRBTree
-            MtasRBTree mtasPositionTree = new MtasRBTree(false, true);
-            MtasRBTree mtasParentTree = new MtasRBTree(false, true);
+            // construct trees
+            MtasPackedTree mtasPositionTree = new MtasPackedTree(false, true);
+            MtasPackedTree mtasParentTree = new MtasPackedTree(false, true);
             inObjectId.seek(fpIndexObjectId);
             long refCorrection;
             long ref;
@@ -1261,10 +1729,10 @@ public class MtasFieldsConsumer extends FieldsConsumer {
               mtasParentTree.addParentFromToken(token);
             }
             // store mtasPositionTree and mtasParentTree
-            fpIndexObjectPosition = storeTree(mtasPositionTree,
-                outIndexObjectPosition, smallestObjectFilepointer);
-            fpIndexObjectParent = storeTree(mtasParentTree,
-                outIndexObjectParent, smallestObjectFilepointer);
+            fpIndexObjectPosition = mtasPositionTree
+                .store(outIndexObjectPosition, smallestObjectFilepointer);
+            fpIndexObjectParent = mtasParentTree.store(outIndexObjectParent,
+                smallestObjectFilepointer);
             long fpDoc = outDoc.getFilePointer();
             // create indexDoc with updated fpIndexObjectPosition from tmpDoc
             outDoc.writeVInt(docId); // docId
@@ -1281,15 +1749,20 @@ public class MtasFieldsConsumer extends FieldsConsumer {
             outDoc.writeByte(storageFlags);
             // number of objects
             outDoc.writeVInt(size);
+            int minPosition = inTmpDoc.readVInt();
+            int maxPosition = inTmpDoc.readVInt();
             // minPosition
-            outDoc.writeVInt(inTmpDoc.readVInt());
+            outDoc.writeVInt(minPosition);
             // maxPosition
-            outDoc.writeVInt(inTmpDoc.readVInt());
+            outDoc.writeVInt(maxPosition);
+            // statistics
+            numberPositions += 1 + maxPosition - minPosition;
+            numberTokens += size;
             // add to tree for indexDocId
             mtasDocIdTree.addIdFromDoc(docId, fpDoc);
           }
-          long fpIndexDocId = storeTree(mtasDocIdTree, outIndexDocId,
-              fpFirstDoc);
+          long fpIndexDocId = MtasFixedWidthTree.store(mtasDocIdTree,
+              outIndexDocId, fpFirstDoc);
 
           // store in indexField
           outField.writeString(field);
@@ -1300,6 +1773,9 @@ public class MtasFieldsConsumer extends FieldsConsumer {
           outField.writeVInt(numberTerms);
           outField.writeVLong(fpPrefix);
           outField.writeVInt(numberPrefixes);
+          // store statistics
+          writePrefixTermStats(field, numberDocs, numberPositions,
+              numberTokens, outPrefixStats);
           // register intersection
           fieldInfos.fieldInfo(field).putAttribute(
               MtasCodecPostingsFormat.MTAS_FIELDINFO_ATTRIBUTE_PREFIX_INTERSECTION,
@@ -1340,6 +1816,9 @@ public class MtasFieldsConsumer extends FieldsConsumer {
       CodecUtil.writeFooter(outField);
       outField.close();
       closeables.remove(outField);
+      CodecUtil.writeFooter(outPrefixStats);
+      outPrefixStats.close();
+      closeables.remove(outPrefixStats);
     } catch (IOException e) {
       // ignore, can happen when merging segment already written by
       // delegateFieldsConsumer
@@ -1527,140 +2006,6 @@ public class MtasFieldsConsumer extends FieldsConsumer {
     }
   }
 
-  /**
-   * Store tree.
-   *
-   * @param tree
-   *          the tree
-   * @param out
-   *          the out
-   * @param refApproxOffset
-   *          the ref approx offset
-   * @return the long
-   * @throws IOException
-   *           Signals that an I/O exception has occurred.
-   */
-  private Long storeTree(MtasTree<?> tree, IndexOutput out,
-      long refApproxOffset) throws IOException {
-    return storeTree(tree.close(), tree.isSinglePoint(),
-        tree.isStorePrefixAndTermRef(), out, null, refApproxOffset);
-  }
-
-  /**
-   * Store tree.
-   *
-   * @param node
-   *          the node
-   * @param isSinglePoint
-   *          the is single point
-   * @param storeAdditionalInformation
-   *          the store additional information
-   * @param out
-   *          the out
-   * @param nodeRefApproxOffset
-   *          the node ref approx offset
-   * @param refApproxOffset
-   *          the ref approx offset
-   * @return the long
-   * @throws IOException
-   *           Signals that an I/O exception has occurred.
-   */
-  private Long storeTree(MtasTreeNode<?> node, boolean isSinglePoint,
-      boolean storeAdditionalInformation, IndexOutput out,
-      Long nodeRefApproxOffset, long refApproxOffset) throws IOException {
-    Long localNodeRefApproxOffset = nodeRefApproxOffset;
-    if (node != null) {
-      Boolean isRoot = false;
-      if (localNodeRefApproxOffset == null) {
-        localNodeRefApproxOffset = out.getFilePointer();
-        isRoot = true;
-      }
-      Long fpIndexObjectPositionLeftChild;
-      Long fpIndexObjectPositionRightChild;
-      if (node.leftChild != null) {
-        fpIndexObjectPositionLeftChild = storeTree(node.leftChild,
-            isSinglePoint, storeAdditionalInformation, out,
-            localNodeRefApproxOffset, refApproxOffset);
-      } else {
-        fpIndexObjectPositionLeftChild = (long) 0; // tmp
-      }
-      if (node.rightChild != null) {
-        fpIndexObjectPositionRightChild = storeTree(node.rightChild,
-            isSinglePoint, storeAdditionalInformation, out,
-            localNodeRefApproxOffset, refApproxOffset);
-      } else {
-        fpIndexObjectPositionRightChild = (long) 0; // tmp
-      }
-      Long fpIndexObjectPosition = out.getFilePointer();
-      if (node.leftChild == null) {
-        fpIndexObjectPositionLeftChild = fpIndexObjectPosition;
-      }
-      if (node.rightChild == null) {
-        fpIndexObjectPositionRightChild = fpIndexObjectPosition;
-      }
-      if (isRoot) {
-        assert localNodeRefApproxOffset >= 0 : "nodeRefApproxOffset < 0 : "
-            + localNodeRefApproxOffset;
-        out.writeVLong(localNodeRefApproxOffset);
-        byte flag = 0;
-        if (isSinglePoint) {
-          flag |= MtasTree.SINGLE_POSITION_TREE;
-        }
-        if (storeAdditionalInformation) {
-          flag |= MtasTree.STORE_ADDITIONAL_ID;
-        }
-        out.writeByte(flag);
-      }
-      assert node.left >= 0 : "node.left < 0 : " + node.left;
-      out.writeVInt(node.left);
-      assert node.right >= 0 : "node.right < 0 : " + node.right;
-      out.writeVInt(node.right);
-      assert node.max >= 0 : "node.max < 0 : " + node.max;
-      out.writeVInt(node.max);
-      assert fpIndexObjectPositionLeftChild >= localNodeRefApproxOffset : "fpIndexObjectPositionLeftChild<nodeRefApproxOffset : "
-          + fpIndexObjectPositionLeftChild + " and " + localNodeRefApproxOffset;
-      out.writeVLong(
-          (fpIndexObjectPositionLeftChild - localNodeRefApproxOffset));
-      assert fpIndexObjectPositionRightChild >= localNodeRefApproxOffset : "fpIndexObjectPositionRightChild<nodeRefApproxOffset"
-          + fpIndexObjectPositionRightChild + " and "
-          + localNodeRefApproxOffset;
-      out.writeVLong(
-          (fpIndexObjectPositionRightChild - localNodeRefApproxOffset));
-      if (!isSinglePoint) {
-        out.writeVInt(node.ids.size());
-      }
-      HashMap<Integer, MtasTreeNodeId> ids = node.ids;
-      Long objectRefCorrected;
-      long objectRefCorrectedPrevious = 0;
-      // sort refs
-      List<MtasTreeNodeId> nodeIds = new ArrayList<>(ids.values());
-      Collections.sort(nodeIds);
-      if (isSinglePoint && (nodeIds.size() != 1)) {
-        throw new IOException("singlePoint tree, but missing single point...");
-      }
-      int counter = 0;
-      for (MtasTreeNodeId nodeId : nodeIds) {
-        counter++;
-        objectRefCorrected = (nodeId.ref - refApproxOffset);
-        assert objectRefCorrected >= objectRefCorrectedPrevious : "objectRefCorrected<objectRefCorrectedPrevious : "
-            + objectRefCorrected + " and " + objectRefCorrectedPrevious;
-        out.writeVLong((objectRefCorrected - objectRefCorrectedPrevious));
-        objectRefCorrectedPrevious = objectRefCorrected;
-        if (storeAdditionalInformation) {
-          assert nodeId.additionalId >= 0 : "nodeId.additionalId < 0 for item "
-              + counter + " : " + nodeId.additionalId;
-          out.writeVInt(nodeId.additionalId);
-          assert nodeId.additionalRef >= 0 : "nodeId.additionalRef < 0 for item "
-              + counter + " : " + nodeId.additionalRef;
-          out.writeVLong(nodeId.additionalRef);
-        }
-      }
-      return fpIndexObjectPosition;
-    } else {
-      return null;
-    }
-  }
-
   /**
    * Token stats add.
    *
@@ -1684,59 +2029,55 @@ public class MtasFieldsConsumer extends FieldsConsumer {
   }
 
   /**
-   * Copy object and update stats.
+   * Copy an encoded object up to the reference to the term, collecting id,
+   * parent and positions in the token.
    *
-   * @param id
-   *          the id
-   * @param in
-   *          the in
-   * @param inRef
-   *          the in ref
-   * @param out
-   *          the out
-   * @throws IOException
-   *           Signals that an I/O exception has occurred.
+   * @param id the expected mtasId
+   * @param in the in, positioned at the object
+   * @param out the out
+   * @param token the token
+   * @throws IOException Signals that an I/O exception has occurred.
    */
-  private void copyObjectAndUpdateStats(int id, IndexInput in, Long inRef,
-      IndexOutput out) throws IOException {
-    int mtasId;
-    int objectFlags;
-    // read
-    in.seek(inRef);
-    mtasId = in.readVInt();
-    assert id == mtasId : "wrong id detected while copying object";
-    objectFlags = in.readVInt();
+  private static void copyObject(int id, IndexInput in, IndexOutput out,
+      MtasTokenString token) throws IOException {
+    int mtasId = in.readVInt();
+    if (mtasId != id) {
+      throw new IOException("wrong id detected while copying object");
+    }
+    int objectFlags = in.readVInt();
     out.writeVInt(mtasId);
     out.writeVInt(objectFlags);
+    token.setId(mtasId);
     if ((objectFlags
         & MtasCodecPostingsFormat.MTAS_OBJECT_HAS_PARENT) == MtasCodecPostingsFormat.MTAS_OBJECT_HAS_PARENT) {
-      out.writeVInt(in.readVInt());
+      int parentId = in.readVInt();
+      out.writeVInt(parentId);
+      token.setParentId(parentId);
     }
     if ((objectFlags
         & MtasCodecPostingsFormat.MTAS_OBJECT_HAS_POSITION_RANGE) == MtasCodecPostingsFormat.MTAS_OBJECT_HAS_POSITION_RANGE) {
-      int minPos = in.readVInt();
-      int maxPos = in.readVInt();
-      out.writeVInt(minPos);
-      out.writeVInt(maxPos);
-      tokenStatsAdd(minPos, maxPos);
+      int positionStart = in.readVInt();
+      int positionLength = in.readVInt();
+      out.writeVInt(positionStart);
+      out.writeVInt(positionLength);
+      token.addPositionRange(positionStart, positionStart + positionLength);
     } else if ((objectFlags
         & MtasCodecPostingsFormat.MTAS_OBJECT_HAS_POSITION_SET) == MtasCodecPostingsFormat.MTAS_OBJECT_HAS_POSITION_SET) {
       int size = in.readVInt();
       out.writeVInt(size);
-      SortedSet<Integer> list = new TreeSet<>();
+      int[] positions = new int[size];
       int previousPosition = 0;
       for (int t = 0; t < size; t++) {
         int pos = in.readVInt();
         out.writeVInt(pos);
         previousPosition = (pos + previousPosition);
-        list.add(previousPosition);
+        positions[t] = previousPosition;
       }
-      assert list.size() == size : "duplicate positions in set are not allowed";
-      tokenStatsAdd(list.first(), list.last());
+      token.addPositions(positions);
     } else {
       int pos = in.readVInt();
       out.writeVInt(pos);
-      tokenStatsAdd(pos, pos);
+      token.addPosition(pos);
     }
     if ((objectFlags
         & MtasCodecPostingsFormat.MTAS_OBJECT_HAS_OFFSET) == MtasCodecPostingsFormat.MTAS_OBJECT_HAS_OFFSET) {
@@ -1752,11 +2093,8 @@ public class MtasFieldsConsumer extends FieldsConsumer {
         & MtasCodecPostingsFormat.MTAS_OBJECT_HAS_PAYLOAD) == MtasCodecPostingsFormat.MTAS_OBJECT_HAS_PAYLOAD) {
       int length = in.readVInt();
       out.writeVInt(length);
-      byte[] payload = new byte[length];
-      in.readBytes(payload, 0, length);
-      out.writeBytes(payload, payload.length);
+      out.copyBytes(in, length);
     }
-    out.writeVLong(in.readVLong());
   }
 
   /*
@@ -1769,4 +2107,516 @@ public class MtasFieldsConsumer extends FieldsConsumer {
     delegateFieldsConsumer.close();
   }
 
+  /**
+   * The Class MtasObjectRefApproximation. Linear approximation (least squares
+   * method, integer constants) of the references to the objects of a document
+   * by mtasId, used to store only corrections in the index on object id.
+   */
+  private static class MtasObjectRefApproximation {
+
+    /** The quotient. */
+    private final int quotient;
+
+    /** The offset. */
+    private final long offset;
+
+    /** The storage flags. */
+    private final byte storageFlags;
+
+    /**
+     * Instantiates a new mtas object ref approximation.
+     *
+     * @param refs the references, by mtasId
+     */
+    private MtasObjectRefApproximation(long[] refs) {
+      long tmpN = refs.length;
+      long tmpSumY = 0;
+      long tmpSumXY = 0;
+      long tmpSumX = 0;
+      long tmpSumXX = 0;
+      for (int mtasId = 0; mtasId < refs.length; mtasId++) {
+        tmpSumY += refs[mtasId];
+        tmpSumX += mtasId;
+        tmpSumXY += mtasId * refs[mtasId];
+        tmpSumXX += mtasId * mtasId;
+      }
+      if (tmpN > 1) {
+        quotient = (int) (((tmpN * tmpSumXY) - (tmpSumX * tmpSumY))
+            / ((tmpN * tmpSumXX) - (tmpSumX * tmpSumX)));
+      } else {
+        quotient = 0;
+      }
+      offset = (tmpSumY - quotient * tmpSumX) / tmpN;
+      // compute maximum correction
+      long maxAbsCorrection = 0;
+      for (int mtasId = 0; mtasId < refs.length; mtasId++) {
+        maxAbsCorrection = Math.max(maxAbsCorrection,
+            Math.abs(refs[mtasId] - (offset + (mtasId * quotient))));
+      }
+      if (maxAbsCorrection <= Long.valueOf(Byte.MAX_VALUE)) {
+        storageFlags = MtasCodecPostingsFormat.MTAS_STORAGE_BYTE;
+      } else if (maxAbsCorrection <= Long.valueOf(Short.MAX_VALUE)) {
+        storageFlags = MtasCodecPostingsFormat.MTAS_STORAGE_SHORT;
+      } else if (maxAbsCorrection <= Long.valueOf(Integer.MAX_VALUE)) {
+        storageFlags = MtasCodecPostingsFormat.MTAS_STORAGE_INTEGER;
+      } else {
+        storageFlags = MtasCodecPostingsFormat.MTAS_STORAGE_LONG;
+      }
+    }
+
+    /**
+     * Store the corrections on the approximated references.
+     *
+     * @param refs the references, by mtasId
+     * @param out the out
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void store(long[] refs, IndexOutput out) throws IOException {
+      for (int mtasId = 0; mtasId < refs.length; mtasId++) {
+        long correction = refs[mtasId] - (offset + (mtasId * quotient));
+        if (storageFlags == MtasCodecPostingsFormat.MTAS_STORAGE_BYTE) {
+          out.writeByte((byte) correction);
+        } else if (storageFlags == MtasCodecPostingsFormat.MTAS_STORAGE_SHORT) {
+          out.writeShort((short) correction);
+        } else if (storageFlags == MtasCodecPostingsFormat.MTAS_STORAGE_INTEGER) {
+          out.writeInt((int) correction);
+        } else {
+          out.writeLong(correction);
+        }
+      }
+    }
+
+  }
+
+  /**
+   * The Class MtasPrefixTermStats. The term statistics for a single prefix.
+   */
+  private static class MtasPrefixTermStats {
+
+    /** The number of terms. */
+    private int numberOfTerms;
+
+    /** The summed term frequency. */
+    private long totalTermFreq;
+
+    /** The number of docs from merged segments without deletions. */
+    private int docFreq;
+
+    /** The docs containing a term with this prefix, allocated on use. */
+    private final SparseFixedBitSet docs;
+
+    /**
+     * Instantiates a new mtas prefix term stats.
+     *
+     * @param maxDoc the max doc
+     */
+    private MtasPrefixTermStats(int maxDoc) {
+      numberOfTerms = 0;
+      totalTermFreq = 0;
+      docFreq = 0;
+      docs = new SparseFixedBitSet(maxDoc);
+    }
+
+    /**
+     * Adds the frequency of a term in a doc.
+     *
+     * @param docId the doc id
+     * @param freq the freq
+     */
+    private void add(int docId, int freq) {
+      totalTermFreq += freq;
+      docs.set(docId);
+    }
+
+    /**
+     * Adds the statistics of a merged segment, with documents not shared
+     * with other segments.
+     *
+     * @param stats the stats
+     */
+    private void add(PrefixStats stats) {
+      totalTermFreq += stats.totalTermFreq;
+      docFreq += stats.docFreq;
+    }
+
+    /**
+     * Gets the number of docs.
+     *
+     * @return the number of docs
+     */
+    private int getDocFreq() {
+      return docFreq + docs.cardinality();
+    }
+
+  }
+
+  /**
+   * The Class MtasMergeField.
+   */
+  private static class MtasMergeField {
+
+    /** The field. */
+    private final String field;
+
+    /** The segments with mtas data for this field. */
+    private final List<MtasMergeSegment> segments;
+
+    /** The reference to the first term. */
+    private long fpTerm;
+
+    /** The number of terms. */
+    private int numberTerms;
+
+    /** The reference to the first prefix. */
+    private long fpPrefix;
+
+    /**
+     * Instantiates a new mtas merge field.
+     *
+     * @param field the field
+     */
+    private MtasMergeField(String field) {
+      this.field = field;
+      segments = new ArrayList<>();
+    }
+
+  }
+
+  /**
+   * The Class MtasMergeDoc. A document prepared for merging, with the copied
+   * objects and the trees, both with references relative to the first object.
+   */
+  private static class MtasMergeDoc {
+
+    /** Marker for the end of the documents of a segment. */
+    private static final MtasMergeDoc END = new MtasMergeDoc(-1, 0, 0, 0);
+
+    /** The new docId. */
+    private final int docId;
+
+    /** The min position. */
+    private final int minPosition;
+
+    /** The max position. */
+    private final int maxPosition;
+
+    /** The objects. */
+    private final RAMOutputStream objects;
+
+    /** The references to the objects, by mtasId. */
+    private final long[] refs;
+
+    /** The position tree. */
+    private final MtasPackedTree positionTree;
+
+    /** The parent tree. */
+    private final MtasPackedTree parentTree;
+
+    /**
+     * Instantiates a new mtas merge doc.
+     *
+     * @param docId the new doc id
+     * @param minPosition the min position
+     * @param maxPosition the max position
+     * @param size the number of objects
+     */
+    private MtasMergeDoc(int docId, int minPosition, int maxPosition,
+        int size) {
+      this.docId = docId;
+      this.minPosition = minPosition;
+      this.maxPosition = maxPosition;
+      objects = new RAMOutputStream();
+      refs = new long[size];
+      positionTree = new MtasPackedTree(false, true);
+      parentTree = new MtasPackedTree(false, true);
+    }
+
+  }
+
+  /**
+   * The Class MtasMergeSegment. Provides the documents of a single segment for
+   * a field while merging, with references to terms translated to the merged
+   * segment.
+   */
+  private static class MtasMergeSegment {
+
+    /** The field. */
+    private final String field;
+
+    /** The doc map. */
+    private final MergeState.DocMap docMap;
+
+    /** The in object. */
+    private final IndexInput inObject;
+
+    /** The in doc. */
+    private final IndexInput inDoc;
+
+    /** The in term. */
+    private final IndexInput inTerm;
+
+    /** The reference to the first doc. */
+    private final long refIndexDoc;
+
+    /** The number of docs. */
+    private final int numberOfDocs;
+
+    /** The number of terms. */
+    private final int numberOfTerms;
+
+    /** The number of terms read. */
+    private int termNumber;
+
+    /** The current term. */
+    private BytesRefBuilder term;
+
+    /** The reference to the current term. */
+    private long termRef;
+
+    /** The term refs builder. */
+    private PackedLongValues.Builder termRefsBuilder;
+
+    /** The new term refs builder. */
+    private PackedLongValues.Builder newTermRefsBuilder;
+
+    /** The prefix ids builder. */
+    private PackedLongValues.Builder prefixIdsBuilder;
+
+    /** The sorted references to terms in this segment. */
+    private PackedLongValues termRefs;
+
+    /** The references to terms in the merged segment. */
+    private PackedLongValues newTermRefs;
+
+    /** The prefix ids in the merged segment. */
+    private PackedLongValues prefixIds;
+
+    /** The prepared documents. */
+    private final ArrayBlockingQueue<MtasMergeDoc> queue;
+
+    /** The error while preparing documents. */
+    private volatile Exception error;
+
+    /**
+     * Instantiates a new mtas merge segment.
+     *
+     * @param field the field
+     * @param docMap the doc map
+     * @param indexInputList the index input list
+     * @param refIndexDoc the ref index doc
+     * @param numberOfDocs the number of docs
+     * @param refTerm the ref term
+     * @param numberOfTerms the number of terms
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private MtasMergeSegment(String field, MergeState.DocMap docMap,
+        HashMap<String, IndexInput> indexInputList, long refIndexDoc,
+        int numberOfDocs, long refTerm, int numberOfTerms) throws IOException {
+      this.field = field;
+      this.docMap = docMap;
+      inObject = indexInputList.get("object");
+      inDoc = indexInputList.get("doc");
+      inTerm = indexInputList.get("term");
+      inTerm.seek(refTerm);
+      this.refIndexDoc = refIndexDoc;
+      this.numberOfDocs = numberOfDocs;
+      this.numberOfTerms = numberOfTerms;
+      termNumber = 0;
+      term = new BytesRefBuilder();
+      termRefsBuilder = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+      newTermRefsBuilder = PackedLongValues
+          .monotonicBuilder(PackedInts.COMPACT);
+      prefixIdsBuilder = PackedLongValues.packedBuilder(PackedInts.COMPACT);
+      queue = new ArrayBlockingQueue<>(MERGE_QUEUE_SIZE);
+      error = null;
+    }
+
+    /**
+     * Creates the merge segment for a field.
+     *
+     * @param field the field
+     * @param terms the terms
+     * @param docMap the doc map
+     * @return the mtas merge segment, or null if there is no mtas data for the
+     *         field in this segment
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static MtasMergeSegment create(String field, MtasTerms terms,
+        MergeState.DocMap docMap) throws IOException {
+      HashMap<String, IndexInput> indexInputList = terms.getIndexInputList();
+      IndexInput inField = indexInputList.get("field");
+      inField.seek(terms.getIndexInputOffsetList().get("field"));
+      long end = inField.length() - CodecUtil.footerLength();
+      while (inField.getFilePointer() < end) {
+        String fieldName = inField.readString();
+        long refIndexDoc = inField.readVLong();
+        inField.readVLong(); // refIndexDocId
+        int numberOfDocs = inField.readVInt();
+        long refTerm = inField.readVLong();
+        int numberOfTerms = inField.readVInt();
+        inField.readVLong(); // refPrefix
+        inField.readVInt(); // numberOfPrefixes
+        if (fieldName.equals(field)) {
+          return new MtasMergeSegment(field, docMap, indexInputList,
+              refIndexDoc, numberOfDocs, refTerm, numberOfTerms);
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Move to the next term of this segment.
+     *
+     * @return true, if successful
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private boolean nextTerm() throws IOException {
+      if (termNumber < numberOfTerms) {
+        termRef = inTerm.getFilePointer();
+        term.copyChars(inTerm.readString());
+        termNumber++;
+        return true;
+      } else {
+        return false;
+      }
+    }
+
+    /**
+     * Gets the current term.
+     *
+     * @return the term
+     */
+    private BytesRef getTerm() {
+      return term.get();
+    }
+
+    /**
+     * Adds the translation for the current term.
+     *
+     * @param newTermRef the reference to the term in the merged segment
+     * @param prefixId the prefix id in the merged segment
+     */
+    private void addTermTranslation(long newTermRef, int prefixId) {
+      termRefsBuilder.add(termRef);
+      newTermRefsBuilder.add(newTermRef);
+      prefixIdsBuilder.add(prefixId);
+    }
+
+    /**
+     * Finish the translation of terms.
+     */
+    private void finishTermTranslation() {
+      termRefs = termRefsBuilder.build();
+      newTermRefs = newTermRefsBuilder.build();
+      prefixIds = prefixIdsBuilder.build();
+      termRefsBuilder = null;
+      newTermRefsBuilder = null;
+      prefixIdsBuilder = null;
+      term = null;
+    }
+
+    /**
+     * Find the index of a term reference in this segment.
+     *
+     * @param ref the reference to the term
+     * @return the index
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private long findTerm(long ref) throws IOException {
+      long low = 0;
+      long high = termRefs.size() - 1;
+      while (low <= high) {
+        long mid = (low + high) >>> 1;
+        long midRef = termRefs.get(mid);
+        if (midRef < ref) {
+          low = mid + 1;
+        } else if (midRef > ref) {
+          high = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      throw new IOException("unknown term reference " + ref + " for " + field);
+    }
+
+    /**
+     * Prepare the remaining documents of this segment, to be called once.
+     */
+    private void prepare() {
+      try {
+        inDoc.seek(refIndexDoc);
+        for (int i = 0; i < numberOfDocs; i++) {
+          int docId = inDoc.readVInt();
+          inDoc.readVLong(); // ref indexObjectId
+          inDoc.readVLong(); // ref indexObjectPosition
+          inDoc.readVLong(); // ref indexObjectParent
+          long smallestObjectFilepointer = inDoc.readVLong();
+          inDoc.readVInt(); // slope
+          inDoc.readZLong(); // offset
+          inDoc.readByte(); // flag
+          int size = inDoc.readVInt();
+          int minPosition = inDoc.readVInt();
+          int maxPosition = inDoc.readVInt();
+          int newDocId = docMap.get(docId);
+          // skip deleted documents
+          if (newDocId >= 0) {
+            MtasMergeDoc doc = new MtasMergeDoc(newDocId, minPosition,
+                maxPosition, size);
+            // objects of a document are stored sequentially by mtasId
+            inObject.seek(smallestObjectFilepointer);
+            for (int mtasId = 0; mtasId < size; mtasId++) {
+              MtasTokenString token = new MtasTokenString(null, "");
+              doc.refs[mtasId] = doc.objects.getFilePointer();
+              token.setTokenRef(doc.refs[mtasId]);
+              copyObject(mtasId, inObject, doc.objects, token);
+              long index = findTerm(inObject.readVLong());
+              long newTermRef = newTermRefs.get(index);
+              doc.objects.writeVLong(newTermRef);
+              token.setTermRef(newTermRef);
+              token.setPrefixId((int) prefixIds.get(index));
+              doc.positionTree.addPositionAndObjectFromToken(token);
+              doc.parentTree.addParentFromToken(token);
+            }
+            queue.put(doc);
+          }
+        }
+        queue.put(MtasMergeDoc.END);
+      } catch (InterruptedException e) {
+        log.debug(e);
+        Thread.currentThread().interrupt();
+      } catch (IOException | RuntimeException e) {
+        error = e;
+        try {
+          queue.put(MtasMergeDoc.END);
+        } catch (InterruptedException ie) {
+          log.debug(ie);
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    /**
+     * Take the next prepared document.
+     *
+     * @return the document, or null if there are no more documents
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private MtasMergeDoc take() throws IOException {
+      MtasMergeDoc doc;
+      try {
+        doc = queue.take();
+      } catch (InterruptedException e) {
+        throw new ThreadInterruptedException(e);
+      }
+      if (doc != MtasMergeDoc.END) {
+        return doc;
+      } else if (error != null) {
+        throw new IOException("couldn't merge " + field, error);
+      } else {
+        return null;
+      }
+    }
+
+  }
+
 }
@@ -25,6 +25,8 @@ import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.Accountables;
 
+import mtas.codec.util.CodecTermCache;
+
 /**
  * The Class MtasFieldsProducer.
  */
@@ -45,6 +47,12 @@ public class MtasFieldsProducer extends FieldsProducer {
   /** The version. */
   private int version;
 
+  /** The term cache, shared by all fields of the segment. */
+  private CodecTermCache termCache;
+
+  /** The segment name. */
+  private String segmentName;
+
   /**
    * Instantiates a new mtas fields producer.
    *
@@ -58,6 +66,8 @@ public class MtasFieldsProducer extends FieldsProducer {
     indexInputList = new HashMap<>();
     indexInputOffsetList = new HashMap<>();
     version = MtasCodecPostingsFormat.VERSION_CURRENT;    
+    termCache = new CodecTermCache();
+    segmentName = state.segmentInfo.name;
     postingsFormatName = addIndexInputToList("object", openMtasFile(state, name,
         MtasCodecPostingsFormat.MTAS_OBJECT_EXTENSION), postingsFormatName);
     addIndexInputToList("term",
@@ -68,6 +78,10 @@ public class MtasFieldsProducer extends FieldsProducer {
     addIndexInputToList("field",
         openMtasFile(state, name, MtasCodecPostingsFormat.MTAS_FIELD_EXTENSION),
         postingsFormatName);
+    // optional, not available for segments written by older versions
+    addIndexInputToList("prefixStats", openMtasFile(state, name,
+        MtasCodecPostingsFormat.MTAS_PREFIX_STATS_EXTENSION),
+        postingsFormatName);
     addIndexInputToList("indexDocId",
         openMtasFile(state, name,
             MtasCodecPostingsFormat.MTAS_INDEX_DOC_ID_EXTENSION),
@@ -76,20 +90,22 @@ public class MtasFieldsProducer extends FieldsProducer {
         openMtasFile(state, name,
             MtasCodecPostingsFormat.MTAS_INDEX_OBJECT_ID_EXTENSION),
         postingsFormatName);
+    // trees in older versions are recognized by their flag
+    int minVersion = MtasCodecPostingsFormat.VERSION_START;
     try {
       addIndexInputToList(
           "doc", openMtasFile(state, name,
-              MtasCodecPostingsFormat.MTAS_DOC_EXTENSION, version, version),
+              MtasCodecPostingsFormat.MTAS_DOC_EXTENSION, minVersion, version),
           postingsFormatName);
       addIndexInputToList("indexObjectPosition",
           openMtasFile(state, name,
               MtasCodecPostingsFormat.MTAS_INDEX_OBJECT_POSITION_EXTENSION,
-              version, version),
+              minVersion, version),
           postingsFormatName);
       addIndexInputToList("indexObjectParent",
           openMtasFile(state, name,
               MtasCodecPostingsFormat.MTAS_INDEX_OBJECT_PARENT_EXTENSION,
-              version, version),
+              minVersion, version),
           postingsFormatName);
     } catch (IndexFormatTooOldException e) {
       log.debug(e);
@@ -153,6 +169,10 @@ public class MtasFieldsProducer extends FieldsProducer {
     for (Entry<String, IndexInput> entry : indexInputList.entrySet()) {
       entry.getValue().close();
     }
+    if (log.isDebugEnabled()) {
+      log.debug("close " + segmentName + ": " + termCache);
+    }
+    termCache.clear();
   }
 
   /*
@@ -163,7 +183,7 @@ public class MtasFieldsProducer extends FieldsProducer {
   @Override
   public Terms terms(String field) throws IOException {
     return new MtasTerms(delegateFieldsProducer.terms(field), indexInputList,
-        indexInputOffsetList, version);
+        indexInputOffsetList, version, termCache);
   }
 
   /*
@@ -184,7 +204,8 @@ public class MtasFieldsProducer extends FieldsProducer {
   @Override
   public long ramBytesUsed() {
     // return BASE_RAM_BYTES_USED + delegateFieldsProducer.ramBytesUsed();
-    return 3 * delegateFieldsProducer.ramBytesUsed();
+    return 3 * delegateFieldsProducer.ramBytesUsed()
+        + termCache.ramBytesUsed();
   }
 
   /*
@@ -199,9 +220,20 @@ public class MtasFieldsProducer extends FieldsProducer {
       resources.add(
           Accountables.namedAccountable("delegate", delegateFieldsProducer));
     }
+    // includes the hits and misses of the term cache
+    resources.add(Accountables.namedAccountable("term cache", termCache));
     return Collections.unmodifiableList(resources);
   }
 
+  /**
+   * Gets the term cache, shared by all fields of the segment.
+   *
+   * @return the term cache
+   */
+  public CodecTermCache getTermCache() {
+    return termCache;
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -220,7 +252,7 @@ public class MtasFieldsProducer extends FieldsProducer {
   @Override
   public String toString() {
     return getClass().getSimpleName() + "(delegate=" + delegateFieldsProducer
-        + ")";
+        + ", termCache=" + termCache + ")";
   }
 
   /**
@@ -8,6 +8,8 @@ import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.store.IndexInput;
 
+import mtas.codec.util.CodecTermCache;
+
 /**
  * The Class MtasTerms.
  */
@@ -22,6 +24,9 @@ public class MtasTerms extends Terms {
   /** The version. */
   int version;
 
+  /** The term cache. */
+  CodecTermCache termCache;
+
   /** The delegate terms. */
   Terms delegateTerms;
 
@@ -35,10 +40,26 @@ public class MtasTerms extends Terms {
    */
   public MtasTerms(Terms terms, HashMap<String, IndexInput> indexInputList,
       HashMap<String, Long> indexInputOffsetList, int version) {
+    this(terms, indexInputList, indexInputOffsetList, version, null);
+  }
+
+  /**
+   * Instantiates a new mtas terms.
+   *
+   * @param terms the terms
+   * @param indexInputList the index input list
+   * @param indexInputOffsetList the index input offset list
+   * @param version the version
+   * @param termCache the term cache of the segment
+   */
+  public MtasTerms(Terms terms, HashMap<String, IndexInput> indexInputList,
+      HashMap<String, Long> indexInputOffsetList, int version,
+      CodecTermCache termCache) {
     delegateTerms = terms;
     this.indexInputList = indexInputList;
     this.indexInputOffsetList = indexInputOffsetList;
     this.version = version;
+    this.termCache = termCache;
   }
 
   /*
@@ -198,4 +219,13 @@ public class MtasTerms extends Terms {
     return indexInputOffsetList;
   }
 
+  /**
+   * Gets the term cache.
+   *
+   * @return the term cache
+   */
+  public CodecTermCache getTermCache() {
+    return termCache;
+  }
+
 }
@@ -23,6 +23,33 @@ public class MtasBitInputStream extends ByteArrayInputStream {
     super(buf);
   }
 
+  /**
+   * Instantiates a new mtas bit input stream.
+   *
+   * @param buf the buf
+   * @param offset the offset
+   * @param length the length
+   */
+  public MtasBitInputStream(byte[] buf, int offset, int length) {
+    super(buf, offset, length);
+  }
+
+  /**
+   * Reuse this stream for another part of a buffer, without copying.
+   *
+   * @param buf the buf
+   * @param offset the offset
+   * @param length the length
+   */
+  public void init(byte[] buf, int offset, int length) {
+    this.buf = buf;
+    this.pos = offset;
+    this.count = Math.min(offset + length, buf.length);
+    this.mark = offset;
+    bitBuffer = 0;
+    bitCount = 0;
+  }
+
   /**
    * Read bit.
    *
@@ -0,0 +1,146 @@
+package mtas.codec.payload;
+
+import java.io.IOException;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * The Class MtasPayloadPositionDecoder. Reusable decoder for only the position
+ * information in a payload, as written by {@link MtasPayloadEncoder}. The
+ * payload is read directly from the provided {@link BytesRef}, and start, end
+ * and the optional set of positions are kept in primitive fields that are
+ * reused for every call to {@link #init(int, BytesRef)}. Id, offsets, parent
+ * and payload value are not decoded, use {@link MtasPayloadDecoder} for those.
+ */
+public class MtasPayloadPositionDecoder {
+
+  /** The byte stream. */
+  private final MtasBitInputStream byteStream;
+
+  /** The start. */
+  private int start;
+
+  /** The end. */
+  private int end;
+
+  /** The positions, only used for a set of positions. */
+  private int[] positions;
+
+  /** The number of positions, or 0 if not a set of positions. */
+  private int numberOfPositions;
+
+  /**
+   * Instantiates a new mtas payload position decoder.
+   */
+  public MtasPayloadPositionDecoder() {
+    byteStream = new MtasBitInputStream(new byte[0]);
+    positions = new int[8];
+    numberOfPositions = 0;
+  }
+
+  /**
+   * Inits the.
+   *
+   * @param startPosition the start position
+   * @param payload the payload
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void init(int startPosition, BytesRef payload) throws IOException {
+    if (payload == null || payload.length == 0) {
+      throw new IOException("no payload");
+    }
+    byteStream.init(payload.bytes, payload.offset, payload.length);
+    start = startPosition;
+    end = startPosition;
+    numberOfPositions = 0;
+    // analyse initial bits - position
+    int positionType;
+    if (byteStream.readBit() == 1) {
+      positionType = byteStream.readBit() == 1 ? -1 : 1;
+    } else {
+      positionType = byteStream.readBit() == 1 ? 2 : 0;
+    }
+    // skip remaining initial bits: offset, realOffset, parent, payload, type
+    for (int i = 0; i < 5; i++) {
+      byteStream.readBit();
+    }
+    // skip id
+    byteStream.readEliasGammaCodingNonNegativeInteger();
+    // get position info
+    if (positionType == 1) {
+      end = startPosition + byteStream.readEliasGammaCodingPositiveInteger()
+          - 1;
+    } else if (positionType == 2) {
+      int number = byteStream.readEliasGammaCodingPositiveInteger();
+      positions = ArrayUtil.grow(positions, number);
+      positions[0] = startPosition;
+      for (int i = 1; i < number; i++) {
+        positions[i] = positions[i - 1]
+            + byteStream.readEliasGammaCodingPositiveInteger();
+      }
+      end = positions[number - 1];
+      if ((end - start + 1) > number) {
+        numberOfPositions = number;
+      }
+    }
+  }
+
+  /**
+   * Gets the start.
+   *
+   * @return the start
+   */
+  public int getStart() {
+    return start;
+  }
+
+  /**
+   * Gets the end, inclusive.
+   *
+   * @return the end
+   */
+  public int getEnd() {
+    return end;
+  }
+
+  /**
+   * Checks if the positions are a set with gaps.
+   *
+   * @return true, if is set
+   */
+  public boolean isSet() {
+    return numberOfPositions > 0;
+  }
+
+  /**
+   * Gets the number of positions covered.
+   *
+   * @return the number of positions
+   */
+  public int getNumberOfPositions() {
+    return numberOfPositions > 0 ? numberOfPositions : (end - start + 1);
+  }
+
+  /**
+   * Fill the buffer with the positions covered, in ascending order. If the
+   * buffer is too small, only the first positions are written; the returned
+   * number can be used to retry with a larger buffer.
+   *
+   * @param buffer the buffer
+   * @return the number of positions
+   */
+  public int getPositions(int[] buffer) {
+    int number = getNumberOfPositions();
+    int max = Math.min(number, buffer.length);
+    if (numberOfPositions > 0) {
+      System.arraycopy(positions, 0, buffer, 0, max);
+    } else {
+      for (int i = 0; i < max; i++) {
+        buffer[i] = start + i;
+      }
+    }
+    return number;
+  }
+
+}
@@ -0,0 +1,296 @@
+package mtas.codec.tree;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RandomAccessInput;
+
+/**
+ * The Class MtasFixedWidthTree. Stores an interval tree with fixed width nodes
+ * in Eytzinger layout: the nodes of a balanced tree are written in breadth
+ * first order, so node <code>k</code> has children <code>2k+1</code> and
+ * <code>2k+2</code> and the top levels of the tree are stored contiguously.
+ * Nodes are followed by the objects of all nodes, in the same order. The width
+ * of each value is chosen for each tree, so any node or object can be read at
+ * a computed position without seeking through preceding data.
+ * <p>
+ * Structure of content:
+ * <ul>
+ * <li><b>VLong</b>: zero, for compatibility with the header of older trees</li>
+ * <li><b>Byte</b>: flag, including {@link MtasTree#FIXED_WIDTH_NODES}</li>
+ * <li><b>VInt</b>: number of nodes</li>
+ * <li><b>VInt</b>: number of objects</li>
+ * <li><b>Byte</b>,<b>Byte</b>,<b>Byte</b>,<b>Byte</b>,<b>Byte</b>: width of
+ * positions, object index, reference, additional id and additional reference,
+ * with zero for values that are not stored</li>
+ * <li>for each node: left, right and max position, and the index of the first
+ * object if not a single point tree</li>
+ * <li>for each object: reference minus offset, and additional id and
+ * additional reference if stored</li>
+ * </ul>
+ */
+public final class MtasFixedWidthTree {
+
+  /**
+   * Instantiates a new mtas fixed width tree.
+   */
+  private MtasFixedWidthTree() {
+    // do nothing
+  }
+
+  /**
+   * Close and store a tree, with the objects of each node sorted by
+   * {@link MtasTreeNodeId}.
+   *
+   * @param tree the tree
+   * @param out the out
+   * @param refApproxOffset the ref approx offset
+   * @return the file pointer of the tree
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static long store(MtasTree<?> tree, IndexOutput out,
+      long refApproxOffset) throws IOException {
+    MtasTreeNode<?> root = tree.close();
+    // collect nodes in order
+    List<MtasTreeNode<?>> nodes = new ArrayList<>();
+    ArrayDeque<MtasTreeNode<?>> stack = new ArrayDeque<>();
+    MtasTreeNode<?> node = root;
+    int numberOfObjects = 0;
+    while (node != null || !stack.isEmpty()) {
+      while (node != null) {
+        stack.push(node);
+        node = node.leftChild;
+      }
+      node = stack.pop();
+      nodes.add(node);
+      numberOfObjects += node.ids.size();
+      node = node.rightChild;
+    }
+    int numberOfNodes = nodes.size();
+    int[] lefts = new int[numberOfNodes];
+    int[] rights = new int[numberOfNodes];
+    int[] objectStarts = new int[numberOfNodes + 1];
+    long[] refs = new long[numberOfObjects];
+    int[] additionalIds = new int[numberOfObjects];
+    long[] additionalRefs = new long[numberOfObjects];
+    int number = 0;
+    for (int i = 0; i < numberOfNodes; i++) {
+      node = nodes.get(i);
+      lefts[i] = node.left;
+      rights[i] = node.right;
+      objectStarts[i] = number;
+      // sort refs
+      List<MtasTreeNodeId> nodeIds = new ArrayList<>(node.ids.values());
+      Collections.sort(nodeIds);
+      for (MtasTreeNodeId nodeId : nodeIds) {
+        refs[number] = nodeId.ref;
+        additionalIds[number] = nodeId.additionalId;
+        additionalRefs[number] = nodeId.additionalRef;
+        number++;
+      }
+    }
+    objectStarts[numberOfNodes] = number;
+    return store(out, tree.isSinglePoint(), tree.isStorePrefixAndTermRef(),
+        numberOfNodes, lefts, rights, objectStarts, refs, additionalIds,
+        additionalRefs, refApproxOffset);
+  }
+
+  /**
+   * Store a tree for nodes sorted by left and right position. The objects of
+   * node <code>i</code> are found at <code>objectStarts[i]</code> up to
+   * <code>objectStarts[i+1]</code>.
+   *
+   * @param out the out
+   * @param singlePoint the single point
+   * @param storeAdditional the store additional
+   * @param numberOfNodes the number of nodes
+   * @param lefts the lefts
+   * @param rights the rights
+   * @param objectStarts the object starts
+   * @param refs the refs
+   * @param additionalIds the additional ids
+   * @param additionalRefs the additional refs
+   * @param refApproxOffset the ref approx offset
+   * @return the file pointer of the tree
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static long store(IndexOutput out, boolean singlePoint,
+      boolean storeAdditional, int numberOfNodes, int[] lefts, int[] rights,
+      int[] objectStarts, long[] refs, int[] additionalIds,
+      long[] additionalRefs, long refApproxOffset) throws IOException {
+    // position in Eytzinger layout to sorted node
+    int[] nodes = new int[numberOfNodes];
+    fill(nodes, 0, 0);
+    int[] max = new int[numberOfNodes];
+    long maxValue = 0;
+    for (int k = numberOfNodes - 1; k >= 0; k--) {
+      assert lefts[nodes[k]] >= 0 : "node.left < 0 : " + lefts[nodes[k]];
+      assert rights[nodes[k]] >= 0 : "node.right < 0 : " + rights[nodes[k]];
+      max[k] = rights[nodes[k]];
+      if (2 * k + 1 < numberOfNodes) {
+        max[k] = Math.max(max[k], max[2 * k + 1]);
+      }
+      if (2 * k + 2 < numberOfNodes) {
+        max[k] = Math.max(max[k], max[2 * k + 2]);
+      }
+      maxValue = Math.max(maxValue, max[k]);
+    }
+    int numberOfObjects = objectStarts[numberOfNodes];
+    if (singlePoint) {
+      for (int i = 0; i < numberOfNodes; i++) {
+        if (objectStarts[i + 1] - objectStarts[i] != 1) {
+          throw new IOException(
+              "singlePoint tree, but missing single point...");
+        }
+      }
+    }
+    long maxRef = 0;
+    long maxAdditionalId = 0;
+    long maxAdditionalRef = 0;
+    for (int i = 0; i < numberOfObjects; i++) {
+      long objectRefCorrected = refs[i] - refApproxOffset;
+      assert objectRefCorrected >= 0 : "objectRefCorrected < 0 : "
+          + objectRefCorrected;
+      maxRef = Math.max(maxRef, objectRefCorrected);
+      if (storeAdditional) {
+        assert additionalIds[i] >= 0 : "additionalId < 0 : "
+            + additionalIds[i];
+        maxAdditionalId = Math.max(maxAdditionalId, additionalIds[i]);
+        assert additionalRefs[i] >= 0 : "additionalRef < 0 : "
+            + additionalRefs[i];
+        maxAdditionalRef = Math.max(maxAdditionalRef, additionalRefs[i]);
+      }
+    }
+    int positionBytes = width(maxValue);
+    int objectIndexBytes = singlePoint ? 0 : width(numberOfObjects);
+    int refBytes = width(maxRef);
+    int additionalIdBytes = storeAdditional ? width(maxAdditionalId) : 0;
+    int additionalRefBytes = storeAdditional ? width(maxAdditionalRef) : 0;
+    // header
+    long fp = out.getFilePointer();
+    out.writeVLong(0);
+    byte flag = MtasTree.FIXED_WIDTH_NODES;
+    if (singlePoint) {
+      flag |= MtasTree.SINGLE_POSITION_TREE;
+    }
+    if (storeAdditional) {
+      flag |= MtasTree.STORE_ADDITIONAL_ID;
+    }
+    out.writeByte(flag);
+    out.writeVInt(numberOfNodes);
+    out.writeVInt(numberOfObjects);
+    out.writeByte((byte) positionBytes);
+    out.writeByte((byte) objectIndexBytes);
+    out.writeByte((byte) refBytes);
+    out.writeByte((byte) additionalIdBytes);
+    out.writeByte((byte) additionalRefBytes);
+    // nodes
+    int objectIndex = 0;
+    for (int k = 0; k < numberOfNodes; k++) {
+      int node = nodes[k];
+      write(out, lefts[node], positionBytes);
+      write(out, rights[node], positionBytes);
+      write(out, max[k], positionBytes);
+      write(out, objectIndex, objectIndexBytes);
+      objectIndex += objectStarts[node + 1] - objectStarts[node];
+    }
+    // objects
+    for (int k = 0; k < numberOfNodes; k++) {
+      int node = nodes[k];
+      for (int i = objectStarts[node]; i < objectStarts[node + 1]; i++) {
+        write(out, refs[i] - refApproxOffset, refBytes);
+        if (storeAdditional) {
+          write(out, additionalIds[i], additionalIdBytes);
+          write(out, additionalRefs[i], additionalRefBytes);
+        }
+      }
+    }
+    return fp;
+  }
+
+  /**
+   * Fill the Eytzinger layout with sorted nodes by an in-order traversal.
+   *
+   * @param nodes the nodes
+   * @param k the position in the layout
+   * @param next the next sorted node
+   * @return the next sorted node after the subtree
+   */
+  private static int fill(int[] nodes, int k, int next) {
+    int localNext = next;
+    if (k < nodes.length) {
+      localNext = fill(nodes, 2 * k + 1, localNext);
+      nodes[k] = localNext++;
+      localNext = fill(nodes, 2 * k + 2, localNext);
+    }
+    return localNext;
+  }
+
+  /**
+   * Width in bytes needed for a non-negative value.
+   *
+   * @param value the value
+   * @return the width
+   */
+  private static int width(long value) {
+    if (value <= 0xFFL) {
+      return 1;
+    } else if (value <= 0xFFFFL) {
+      return 2;
+    } else if (value <= 0xFFFFFFFFL) {
+      return 4;
+    } else {
+      return 8;
+    }
+  }
+
+  /**
+   * Write a value with a fixed width.
+   *
+   * @param out the out
+   * @param value the value
+   * @param width the width
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void write(IndexOutput out, long value, int width)
+      throws IOException {
+    if (width == 1) {
+      out.writeByte((byte) value);
+    } else if (width == 2) {
+      out.writeShort((short) value);
+    } else if (width == 4) {
+      out.writeInt((int) value);
+    } else if (width == 8) {
+      out.writeLong(value);
+    }
+  }
+
+  /**
+   * Read a value with a fixed width.
+   *
+   * @param in the in
+   * @param position the position
+   * @param width the width
+   * @return the value
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static long read(RandomAccessInput in, long position, int width)
+      throws IOException {
+    if (width == 1) {
+      return in.readByte(position) & 0xFFL;
+    } else if (width == 2) {
+      return in.readShort(position) & 0xFFFFL;
+    } else if (width == 4) {
+      return in.readInt(position) & 0xFFFFFFFFL;
+    } else if (width == 8) {
+      return in.readLong(position);
+    } else {
+      return 0;
+    }
+  }
+
+}
@@ -0,0 +1,308 @@
+package mtas.codec.tree;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.InPlaceMergeSorter;
+
+import mtas.analysis.token.MtasPosition;
+import mtas.analysis.token.MtasToken;
+
+/**
+ * The Class MtasPackedTree. Alternative to {@link MtasRBTree} collecting the
+ * intervals as primitive records in parallel arrays, with start and end
+ * position packed into a single long. On store, the records are sorted and
+ * grouped into nodes, and written as {@link MtasFixedWidthTree}, so no node
+ * objects are created while indexing.
+ */
+public class MtasPackedTree {
+
+  /** The Constant NO_ID, used for a record only defining an empty node. */
+  private static final int NO_ID = Integer.MIN_VALUE;
+
+  /** The Constant INITIAL_SIZE. */
+  private static final int INITIAL_SIZE = 16;
+
+  /** The single point. */
+  private final boolean singlePoint;
+
+  /** The store prefix and term ref. */
+  private final boolean storePrefixAndTermRef;
+
+  /** The closed. */
+  private boolean closed;
+
+  /** The number of records. */
+  private int number;
+
+  /** The start and end positions, by record. */
+  private long[] keys;
+
+  /** The ids, by record. */
+  private int[] ids;
+
+  /** The refs, by record. */
+  private long[] refs;
+
+  /** The additional ids, by record. */
+  private int[] additionalIds;
+
+  /** The additional refs, by record. */
+  private long[] additionalRefs;
+
+  /**
+   * Instantiates a new mtas packed tree.
+   *
+   * @param singlePoint the single point
+   * @param storePrefixAndTermRef the store prefix and term ref
+   */
+  public MtasPackedTree(boolean singlePoint, boolean storePrefixAndTermRef) {
+    this.singlePoint = singlePoint;
+    this.storePrefixAndTermRef = storePrefixAndTermRef;
+    closed = false;
+    number = 0;
+    keys = new long[INITIAL_SIZE];
+    ids = new int[INITIAL_SIZE];
+    refs = new long[INITIAL_SIZE];
+    additionalIds = new int[INITIAL_SIZE];
+    additionalRefs = new long[INITIAL_SIZE];
+  }
+
+  /**
+   * Adds the id from doc.
+   *
+   * @param docId the doc id
+   * @param reference the reference
+   */
+  public void addIdFromDoc(Integer docId, Long reference) {
+    if (!closed && (docId != null)) {
+      add(docId, docId, 0, 0, docId, reference);
+    }
+  }
+
+  /**
+   * Adds the parent from token.
+   *
+   * @param token the token
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void addParentFromToken(MtasToken token) throws IOException {
+    if (!closed && (token != null)) {
+      if (token.checkParentId()) {
+        add(token.getParentId(), token.getParentId(), token.getPrefixId(),
+            token.getTermRef(), token.getId(), token.getTokenRef());
+      }
+    }
+  }
+
+  /**
+   * Adds the position and object from token.
+   *
+   * @param token the token
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void addPositionAndObjectFromToken(MtasToken token)
+      throws IOException {
+    if (!closed && (token != null)) {
+      int prefixId = storePrefixAndTermRef ? token.getPrefixId() : 0;
+      Long ref = token.getTokenRef();
+      if (token.checkPositionType(MtasPosition.POSITION_SINGLE)) {
+        add(token.getPositionStart(), token.getPositionStart(), prefixId,
+            token.getTermRef(), token.getId(), ref);
+      } else if (token.checkPositionType(MtasPosition.POSITION_RANGE)) {
+        add(token.getPositionStart(), token.getPositionEnd(), prefixId,
+            token.getTermRef(), token.getId(), ref);
+      } else if (token.checkPositionType(MtasPosition.POSITION_SET)) {
+        SortedMap<Integer, Integer> list = MtasTree
+            .splitPositions(token.getPositions());
+        for (Entry<Integer, Integer> entry : list.entrySet()) {
+          add(entry.getKey(), entry.getValue(), prefixId, token.getTermRef(),
+              token.getId(), ref);
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds a record.
+   *
+   * @param left the left
+   * @param right the right
+   * @param additionalId the additional id
+   * @param additionalRef the additional ref
+   * @param id the id, or null for an empty node
+   * @param ref the ref
+   */
+  private void add(int left, int right, int additionalId, long additionalRef,
+      Integer id, Long ref) {
+    if (number == keys.length) {
+      int size = ArrayUtil.oversize(number + 1, Long.BYTES);
+      keys = Arrays.copyOf(keys, size);
+      ids = Arrays.copyOf(ids, size);
+      refs = Arrays.copyOf(refs, size);
+      additionalIds = Arrays.copyOf(additionalIds, size);
+      additionalRefs = Arrays.copyOf(additionalRefs, size);
+    }
+    keys[number] = (((long) left) << 32) | (right & 0xFFFFFFFFL);
+    if (id == null) {
+      ids[number] = NO_ID;
+      refs[number] = 0;
+    } else {
+      ids[number] = id;
+      refs[number] = ref;
+    }
+    additionalIds[number] = additionalId;
+    additionalRefs[number] = additionalRef;
+    number++;
+  }
+
+  /**
+   * Gets the number of records.
+   *
+   * @return the number
+   */
+  public int size() {
+    return number;
+  }
+
+  /**
+   * Checks if is single point.
+   *
+   * @return true, if is single point
+   */
+  public boolean isSinglePoint() {
+    return singlePoint;
+  }
+
+  /**
+   * Checks if is store prefix and term ref.
+   *
+   * @return true, if is store prefix and term ref
+   */
+  public boolean isStorePrefixAndTermRef() {
+    return storePrefixAndTermRef;
+  }
+
+  /**
+   * Close and store the tree as {@link MtasFixedWidthTree}.
+   *
+   * @param out the out
+   * @param refApproxOffset the ref approx offset
+   * @return the file pointer of the tree
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public long store(IndexOutput out, long refApproxOffset) throws IOException {
+    if (number == 0) {
+      add(0, 0, 0, 0, null, null);
+    }
+    closed = true;
+    // sort records by position and id, keeping insertion order
+    new RecordSorter(false).sort(0, number);
+    // group records into nodes, the last record for an id within a node wins
+    RecordSorter refSorter = new RecordSorter(true);
+    int[] nodeLefts = new int[number];
+    int[] nodeRights = new int[number];
+    int[] nodeStarts = new int[number + 1];
+    int numberOfNodes = 0;
+    int size = 0;
+    int i = 0;
+    while (i < number) {
+      long key = keys[i];
+      nodeLefts[numberOfNodes] = (int) (key >>> 32);
+      nodeRights[numberOfNodes] = (int) key;
+      nodeStarts[numberOfNodes] = size;
+      for (; i < number && keys[i] == key; i++) {
+        if (ids[i] != NO_ID && (i + 1 == number || keys[i + 1] != key
+            || ids[i + 1] != ids[i])) {
+          move(i, size++);
+        }
+      }
+      refSorter.sort(nodeStarts[numberOfNodes], size);
+      numberOfNodes++;
+    }
+    nodeStarts[numberOfNodes] = size;
+    return MtasFixedWidthTree.store(out, singlePoint, storePrefixAndTermRef,
+        numberOfNodes, nodeLefts, nodeRights, nodeStarts, refs, additionalIds,
+        additionalRefs, refApproxOffset);
+  }
+
+  /**
+   * Move a record.
+   *
+   * @param from the from
+   * @param to the to
+   */
+  private void move(int from, int to) {
+    if (from != to) {
+      keys[to] = keys[from];
+      ids[to] = ids[from];
+      refs[to] = refs[from];
+      additionalIds[to] = additionalIds[from];
+      additionalRefs[to] = additionalRefs[from];
+    }
+  }
+
+  /**
+   * The Class RecordSorter. Stable sort of the records, either by position
+   * and id or by ref.
+   */
+  private class RecordSorter extends InPlaceMergeSorter {
+
+    /** The by ref. */
+    private final boolean byRef;
+
+    /**
+     * Instantiates a new record sorter.
+     *
+     * @param byRef the by ref
+     */
+    private RecordSorter(boolean byRef) {
+      this.byRef = byRef;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.lucene.util.Sorter#compare(int, int)
+     */
+    @Override
+    protected int compare(int i, int j) {
+      if (byRef) {
+        return Long.compare(refs[i], refs[j]);
+      } else {
+        int c = Long.compare(keys[i], keys[j]);
+        return c != 0 ? c : Integer.compare(ids[i], ids[j]);
+      }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.lucene.util.Sorter#swap(int, int)
+     */
+    @Override
+    protected void swap(int i, int j) {
+      long key = keys[i];
+      keys[i] = keys[j];
+      keys[j] = key;
+      int id = ids[i];
+      ids[i] = ids[j];
+      ids[j] = id;
+      long ref = refs[i];
+      refs[i] = refs[j];
+      refs[j] = ref;
+      int additionalId = additionalIds[i];
+      additionalIds[i] = additionalIds[j];
+      additionalIds[j] = additionalId;
+      long additionalRef = additionalRefs[i];
+      additionalRefs[i] = additionalRefs[j];
+      additionalRefs[j] = additionalRef;
+    }
+
+  }
+
+}
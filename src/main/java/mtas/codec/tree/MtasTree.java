@@ -21,6 +21,9 @@ abstract public class MtasTree<N extends MtasTreeNode<N>> {
   /** The Constant STORE_ADDITIONAL_ID. */
   final public static byte STORE_ADDITIONAL_ID = 2;
 
+  /** The Constant FIXED_WIDTH_NODES, see {@link MtasFixedWidthTree}. */
+  final public static byte FIXED_WIDTH_NODES = 4;
+
   /** The root. */
   protected N root;
 
@@ -106,24 +109,8 @@ abstract public class MtasTree<N extends MtasTreeNode<N>> {
         addRange(token.getPositionStart(), token.getPositionEnd(), prefixId,
             token.getTermRef(), token.getId(), ref);
       } else if (token.checkPositionType(MtasPosition.POSITION_SET)) {
-        // split set into minimum number of single points and ranges
-        SortedMap<Integer, Integer> list = new TreeMap<>();
-        int[] positions = token.getPositions();
-        Integer lastPoint = null;
-        Integer startPoint = null;
-        for (int position : positions) {
-          if (lastPoint == null) {
-            startPoint = position;
-            lastPoint = position;
-          } else if ((position - lastPoint) != 1) {
-            list.put(startPoint, lastPoint);
-            startPoint = position;
-          }
-          lastPoint = position;
-        }
-        if (lastPoint != null) {
-          list.put(startPoint, lastPoint);
-        }
+        SortedMap<Integer, Integer> list = splitPositions(
+            token.getPositions());
         for (Entry<Integer, Integer> entry : list.entrySet()) {
           if (entry.getKey().equals(entry.getValue())) {
             addSinglePoint(entry.getKey(), prefixId, token.getTermRef(),
@@ -137,6 +124,33 @@ abstract public class MtasTree<N extends MtasTreeNode<N>> {
     }
   }
 
+  /**
+   * Split a set of positions into the minimum number of single points and
+   * ranges.
+   *
+   * @param positions the sorted positions
+   * @return the ranges, by start position
+   */
+  static SortedMap<Integer, Integer> splitPositions(int[] positions) {
+    SortedMap<Integer, Integer> list = new TreeMap<>();
+    Integer lastPoint = null;
+    Integer startPoint = null;
+    for (int position : positions) {
+      if (lastPoint == null) {
+        startPoint = position;
+        lastPoint = position;
+      } else if ((position - lastPoint) != 1) {
+        list.put(startPoint, lastPoint);
+        startPoint = position;
+      }
+      lastPoint = position;
+    }
+    if (lastPoint != null) {
+      list.put(startPoint, lastPoint);
+    }
+    return list;
+  }
+
   /**
    * Close.
    *
@@ -15,11 +15,15 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TimeZone;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 import mtas.analysis.token.MtasToken;
 import mtas.analysis.token.MtasTokenString;
@@ -44,11 +48,13 @@ import mtas.codec.util.CodecComponent.ListToken;
 import mtas.codec.util.CodecComponent.Match;
 import mtas.codec.util.CodecComponent.SubComponentDistance;
 import mtas.codec.util.CodecComponent.SubComponentFunction;
+import mtas.codec.util.CodecInfo.FieldStats;
 import mtas.codec.util.CodecInfo.IndexDoc;
 import mtas.codec.util.CodecSearchTree.MtasTreeHit;
 import mtas.codec.util.collector.MtasDataCollector;
 import mtas.parser.function.ParseException;
 import mtas.parser.function.util.MtasFunctionParserFunction;
+import mtas.parser.function.util.MtasFunctionParserFunctionDefault;
 import mtas.search.spans.MtasSpanAndQuery;
 import mtas.search.spans.MtasSpanFollowedByQuery;
 import mtas.search.spans.MtasSpanMatchAllQuery;
@@ -74,14 +80,17 @@ import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.SortedNumericDocValues;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermState;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.spans.SpanWeight;
 import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.lucene.util.automaton.Automaton;
 import org.apache.lucene.util.automaton.ByteRunAutomaton;
 import org.apache.lucene.util.automaton.CompiledAutomaton;
@@ -97,6 +106,24 @@ public class CodecCollector {
   /** The Constant log. */
   private static final Log log = LogFactory.getLog(CodecCollector.class);
 
+  /** The maximum number of terms for pruning a termvector with upper bounds. */
+  private static final int TERMVECTOR_PRUNING_MAXIMUM_NUMBER = 10000;
+
+  /** The number of candidates computed for pruning, relative to the number. */
+  private static final int TERMVECTOR_PRUNING_CANDIDATES_FACTOR = 2;
+
+  /** The default number of terms in a range computed by a single task. */
+  static final int TERMVECTOR_PARTITION_SIZE = 1024;
+
+  /**
+   * The number of terms in a range computed by a single task, only changed by
+   * tests to compute small termvectors in several ranges.
+   */
+  static int termvectorPartitionSize = TERMVECTOR_PARTITION_SIZE;
+
+  /** The maximum number of ranges of terms computed concurrently. */
+  private static final int TERMVECTOR_PARTITION_NUMBER = 8;
+
   /**
    * Instantiates a new codec collector.
    */
@@ -122,6 +149,8 @@ public class CodecCollector {
    *          the field info
    * @param spansQueryWeight
    *          the spans query weight
+   * @param status
+   *          the status
    * @throws IllegalAccessException
    *           the illegal access exception
    * @throws IllegalArgumentException
@@ -132,99 +161,109 @@ public class CodecCollector {
    *           Signals that an I/O exception has occurred.
    */
   public static void collectField(String field, IndexSearcher searcher,
-      IndexReader reader, IndexReader rawReader, List<Integer> fullDocList,
-      List<Integer> fullDocSet, ComponentField fieldInfo,
+      IndexReader reader, IndexReader rawReader, int[] fullDocList,
+      int[] fullDocSet, ComponentField fieldInfo,
       Map<MtasSpanQuery, SpanWeight> spansQueryWeight, Status status)
       throws IllegalAccessException, IllegalArgumentException,
       InvocationTargetException, IOException {
+    collectField(field, searcher, reader, rawReader, fullDocList, fullDocSet,
+        fieldInfo, spansQueryWeight, status, null);
+  }
+
+  /**
+   * Collect field. If an executor is provided, the (read only) collection of
+   * spans, positions, tokens and group hits is done for all segments in
+   * parallel, while the results are added to the collectors of the field
+   * sequentially and in segment order on the calling thread, which also
+   * updates the status. The numbers for termvectors are computed in parallel
+   * within each segment. Lists, kwic, documents and facets are still created
+   * on the calling thread, one segment at a time.
+   *
+   * @param field
+   *          the field
+   * @param searcher
+   *          the searcher
+   * @param reader
+   *          the reader
+   * @param rawReader
+   *          the raw reader
+   * @param fullDocList
+   *          the full doc list
+   * @param fullDocSet
+   *          the full doc set
+   * @param fieldInfo
+   *          the field info
+   * @param spansQueryWeight
+   *          the spans query weight
+   * @param status
+   *          the status
+   * @param executor
+   *          the executor, or null for sequential collection
+   * @throws IllegalAccessException
+   *           the illegal access exception
+   * @throws IllegalArgumentException
+   *           the illegal argument exception
+   * @throws InvocationTargetException
+   *           the invocation target exception
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  public static void collectField(String field, IndexSearcher searcher,
+      IndexReader reader, IndexReader rawReader, int[] fullDocList,
+      int[] fullDocSet, ComponentField fieldInfo,
+      Map<MtasSpanQuery, SpanWeight> spansQueryWeight, Status status,
+      ExecutorService executor) throws IllegalAccessException,
+      IllegalArgumentException, InvocationTargetException, IOException {
 
-    Map<Integer, List<Integer>> docSets = new HashMap<>();
+    Map<Integer, int[]> docSets = new HashMap<>();
+    List<LeafReaderContext> leaves = reader.leaves();
+    boolean parallel = executor != null && leaves.size() > 1;
 
-    ListIterator<LeafReaderContext> iterator = reader.leaves().listIterator();
     long numberOfDocumentsFound = 0;
     if (status != null) {
-      status.init(reader.numDocs(), reader.leaves().size());
+      status.init(reader.numDocs(), leaves.size());
       if (fullDocSet != null && status.numberDocumentsFound == null) {
         status.numberDocumentsFound = numberOfDocumentsFound;
       }
     }
 
-    while (iterator.hasNext()) {
-      // try
-      // {
-      // Thread.sleep(10000);
-      // }
-      // catch(InterruptedException ex)
-      // {
-      // Thread.currentThread().interrupt();
-      // }
-      LeafReaderContext lrc = iterator.next();
-      LeafReader r = lrc.reader();
-      // compute relevant docSet/docList
-      List<Integer> docSet = null;
-      List<Integer> docList = null;
-      if (fullDocSet != null) {
-        docSet = new ArrayList<>();
-        docSets.put(lrc.ord, docSet);
-        Iterator<Integer> docSetIterator = fullDocSet.iterator();
-        Integer docSetId = null;
-        Bits liveDocs = lrc.reader().getLiveDocs();
-        while (docSetIterator.hasNext()) {
-          docSetId = docSetIterator.next();
-          // just to make sure to ignore deleted documents
-          if ((docSetId >= lrc.docBase)
-              && (docSetId < lrc.docBase + lrc.reader().maxDoc())
-              && (liveDocs == null || liveDocs.get((docSetId - lrc.docBase)))) {
-            docSet.add(docSetId);
-          }
+    // collect data for each segment, possibly in parallel
+    List<Future<SegmentData>> segmentFutures = new ArrayList<>();
+    try {
+      if (parallel) {
+        for (LeafReaderContext lrc : leaves) {
+          segmentFutures.add(executor.submit(
+              () -> collectSpansPositionsAndTokens(spansQueryWeight, lrc,
+                  field, searcher, rawReader, fullDocSet, fullDocList,
+                  fieldInfo)));
         }
-        Collections.sort(docSet);
-        numberOfDocumentsFound += docSet.size();
-        status.numberDocumentsFound = Math.max(status.numberDocumentsFound,
-            numberOfDocumentsFound);
       }
-      if (fullDocList != null) {
-        docList = new ArrayList<>();
-        Iterator<Integer> docListIterator = fullDocList.iterator();
-        Integer docListId = null;
-        while (docListIterator.hasNext()) {
-          docListId = docListIterator.next();
-          if ((docListId >= lrc.docBase)
-              && (docListId < lrc.docBase + lrc.reader().maxDoc())) {
-            docList.add(docListId);
+      for (LeafReaderContext lrc : leaves) {
+        SegmentData segmentData;
+        if (parallel) {
+          segmentData = getSegmentResult(segmentFutures.get(lrc.ord));
+        } else {
+          segmentData = collectSpansPositionsAndTokens(spansQueryWeight, lrc,
+              field, searcher, rawReader, fullDocSet, fullDocList, fieldInfo);
+        }
+        if (segmentData.docSet != null) {
+          docSets.put(lrc.ord, segmentData.docSet);
+          numberOfDocumentsFound += segmentData.docSet.length;
+          if (status != null) {
+            status.numberDocumentsFound = Math
+                .max(status.numberDocumentsFound, numberOfDocumentsFound);
           }
         }
-        Collections.sort(docList);
+        // add to the collectors in segment order
+        createSegmentComponents(segmentData, searcher, field, fieldInfo,
+            status, executor);
+        collectPrefixes(segmentData.fieldInfos, segmentData.mtasCodecInfo,
+            field, fieldInfo, status);
+        updateSegmentStatus(status, field, lrc.reader().numDocs());
       }
-
-      Terms t = rawReader.leaves().get(lrc.ord).reader().terms(field);
-      CodecInfo mtasCodecInfo = t == null ? null
-          : CodecInfo.getCodecInfoFromTerms(t);
-
-      collectSpansPositionsAndTokens(spansQueryWeight, searcher, mtasCodecInfo,
-          r, lrc, field, t, docSet, docList, fieldInfo,
-          rawReader.leaves().get(lrc.ord).reader().getFieldInfos(), status);
-      collectPrefixes(rawReader.leaves().get(lrc.ord).reader().getFieldInfos(),
-          field, fieldInfo, status);
-
-      if (status != null) {
-        Integer segmentNumber;
-        Long documentNumber;
-        if ((segmentNumber = status.subNumberSegmentsFinished
-            .get(field)) != null) {
-          status.subNumberSegmentsFinished.put(field, segmentNumber + 1);
-          status.subNumberSegmentsFinishedTotal++;
-          status.numberSegmentsFinished = Collections
-              .max(status.subNumberSegmentsFinished.values());
-        }
-        if ((documentNumber = status.subNumberDocumentsFinished
-            .get(field)) != null) {
-          status.subNumberDocumentsFinished.put(field,
-              documentNumber + r.numDocs());
-          status.subNumberDocumentsFinishedTotal += +r.numDocs();
-          status.numberDocumentsFinished = Collections
-              .max(status.subNumberDocumentsFinished.values());
-        }
+    } finally {
+      for (Future<SegmentData> segmentFuture : segmentFutures) {
+        segmentFuture.cancel(true);
       }
     }
 
@@ -241,26 +280,169 @@ public class CodecCollector {
           }
         }
       }
-      Map<Integer, Integer> positionsData = null;
+      final boolean needSecondRoundPositions = needPositions;
+      List<Future<Map<Integer, Integer>>> positionsFutures = new ArrayList<>();
+      try {
+        if (parallel && needSecondRoundPositions) {
+          for (LeafReaderContext lrc : leaves) {
+            positionsFutures.add(executor.submit(() -> computePositions(field,
+                rawReader, lrc, docSets.get(lrc.ord))));
+          }
+        }
+        // loop
+        for (LeafReaderContext lrc : leaves) {
+          Map<Integer, Integer> positionsData = null;
+          if (needSecondRoundPositions) {
+            if (parallel) {
+              positionsData = getSegmentResult(positionsFutures.get(lrc.ord));
+            } else {
+              positionsData = computePositions(field, rawReader, lrc,
+                  docSets.get(lrc.ord));
+            }
+          }
+          Terms t = rawReader.leaves().get(lrc.ord).reader().terms(field);
+          createTermvectorSecondRound(fieldInfo.termVectorList, positionsData,
+              docSets.get(lrc.ord), t, lrc.reader(), lrc, status, executor);
+        }
+      } finally {
+        for (Future<Map<Integer, Integer>> positionsFuture : positionsFutures) {
+          positionsFuture.cancel(true);
+        }
+      }
+    }
+  }
 
-      // loop
-      iterator = reader.leaves().listIterator();
-      while (iterator.hasNext()) {
-        LeafReaderContext lrc = iterator.next();
-        LeafReader r = lrc.reader();
-        List<Integer> docSet = docSets.get(lrc.ord);
-        Terms t = rawReader.leaves().get(lrc.ord).reader().terms(field);
-        if (needPositions) {
-          CodecInfo mtasCodecInfo = t == null ? null
-              : CodecInfo.getCodecInfoFromTerms(t);
-          positionsData = computePositions(mtasCodecInfo, r, lrc, field,
-              docSet);
+  /**
+   * Gets the result of a segment task, rethrowing its exception.
+   *
+   * @param <T>
+   *          the generic type
+   * @param future
+   *          the future
+   * @return the result
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  private static <T> T getSegmentResult(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while collecting segment", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      } else {
+        throw new IOException(cause);
+      }
+    }
+  }
+
+  /**
+   * Update status after finishing a segment.
+   *
+   * @param status
+   *          the status
+   * @param field
+   *          the field
+   * @param numberOfDocuments
+   *          the number of documents in the segment
+   */
+  private static void updateSegmentStatus(Status status, String field,
+      int numberOfDocuments) {
+    if (status != null) {
+      Integer segmentNumber;
+      Long documentNumber;
+      if ((segmentNumber = status.subNumberSegmentsFinished
+          .get(field)) != null) {
+        status.subNumberSegmentsFinished.put(field, segmentNumber + 1);
+        status.subNumberSegmentsFinishedTotal++;
+        status.numberSegmentsFinished = Collections
+            .max(status.subNumberSegmentsFinished.values());
+      }
+      if ((documentNumber = status.subNumberDocumentsFinished
+          .get(field)) != null) {
+        status.subNumberDocumentsFinished.put(field,
+            documentNumber + numberOfDocuments);
+        status.subNumberDocumentsFinishedTotal += numberOfDocuments;
+        status.numberDocumentsFinished = Collections
+            .max(status.subNumberDocumentsFinished.values());
+      }
+    }
+  }
+
+  /**
+   * Compute segment doc set: the ids from the full doc set within the segment,
+   * ignoring deleted documents.
+   *
+   * @param fullDocSet
+   *          the full doc set, sorted
+   * @param lrc
+   *          the lrc
+   * @return the sorted ids
+   */
+  private static int[] computeSegmentDocSet(int[] fullDocSet,
+      LeafReaderContext lrc) {
+    int[] docSet = computeSegmentDocList(fullDocSet, lrc);
+    Bits liveDocs = lrc.reader().getLiveDocs();
+    if (liveDocs != null) {
+      int number = 0;
+      for (int docId : docSet) {
+        // just to make sure to ignore deleted documents
+        if (liveDocs.get(docId - lrc.docBase)) {
+          docSet[number++] = docId;
         }
-        createTermvectorSecondRound(fieldInfo.termVectorList, positionsData,
-            docSets.get(lrc.ord), t, r, lrc, status);
       }
+      if (number < docSet.length) {
+        docSet = Arrays.copyOf(docSet, number);
+      }
+    }
+    return docSet;
+  }
+
+  /**
+   * Compute segment doc list: the ids from the full doc list within the
+   * segment.
+   *
+   * @param fullDocList
+   *          the full doc list, sorted
+   * @param lrc
+   *          the lrc
+   * @return the sorted ids
+   */
+  private static int[] computeSegmentDocList(int[] fullDocList,
+      LeafReaderContext lrc) {
+    int from = firstIndexFrom(fullDocList, lrc.docBase);
+    int to = firstIndexFrom(fullDocList, lrc.docBase + lrc.reader().maxDoc());
+    return Arrays.copyOfRange(fullDocList, from, to);
+  }
 
+  /**
+   * First index in a sorted list with value not below the provided value.
+   *
+   * @param list
+   *          the sorted list
+   * @param value
+   *          the value
+   * @return the index
+   */
+  private static int firstIndexFrom(int[] list, int value) {
+    int low = 0;
+    int high = list.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (list[mid] < value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
     }
+    return low;
   }
 
   /**
@@ -275,7 +457,7 @@ public class CodecCollector {
    * @throws IOException
    *           Signals that an I/O exception has occurred.
    */
-  public static void collectCollection(IndexReader reader, List<Integer> docSet,
+  public static void collectCollection(IndexReader reader, int[] docSet,
       ComponentCollection collectionInfo) throws IOException {
     if (collectionInfo.action().equals(ComponentCollection.ACTION_CHECK)) {
       // can't do anything in lucene for check
@@ -286,8 +468,8 @@ public class CodecCollector {
         .equals(ComponentCollection.ACTION_CREATE)) {
       BytesRef term = null;
       PostingsEnum postingsEnum = null;
-      Integer docId;
-      Integer termDocId = -1;
+      int docId;
+      int termDocId = -1;
       Terms terms;
       LeafReaderContext lrc;
       LeafReader r;
@@ -299,19 +481,17 @@ public class CodecCollector {
           if ((terms = r.terms(field)) != null) {
             TermsEnum termsEnum = terms.iterator();
             while ((term = termsEnum.next()) != null) {
-              Iterator<Integer> docIterator = docSet.iterator();
               postingsEnum = termsEnum.postings(postingsEnum,
                   PostingsEnum.NONE);
               termDocId = -1;
-              while (docIterator.hasNext()) {
-                docId = docIterator.next() - lrc.docBase;
-                if ((docId >= termDocId) && ((docId.equals(termDocId))
-                    || ((termDocId = postingsEnum.advance(docId))
-                        .equals(docId)))) {
+              for (int docSetId : docSet) {
+                docId = docSetId - lrc.docBase;
+                if ((docId >= termDocId) && ((docId == termDocId)
+                    || ((termDocId = postingsEnum.advance(docId)) == docId))) {
                   collectionInfo.addValue(term.utf8ToString());
                   break;
                 }
-                if (termDocId.equals(PostingsEnum.NO_MORE_DOCS)) {
+                if (termDocId == PostingsEnum.NO_MORE_DOCS) {
                   break;
                 }
               }
@@ -323,40 +503,48 @@ public class CodecCollector {
   }
 
   /**
-   * Collect spans positions and tokens.
+   * Collect spans positions, tokens and group hits for a segment. This only
+   * reads from the index and doesn't touch the collectors of the field, so it
+   * can safely be called for different segments in parallel.
    *
    * @param spansQueryWeight
    *          the spans query weight
-   * @param searcher
-   *          the searcher
-   * @param mtasCodecInfo
-   *          the mtas codec info
-   * @param r
-   *          the r
    * @param lrc
    *          the lrc
    * @param field
    *          the field
-   * @param t
-   *          the t
-   * @param docSet
-   *          the doc set
-   * @param docList
-   *          the doc list
+   * @param searcher
+   *          the searcher
+   * @param rawReader
+   *          the raw reader
+   * @param fullDocSet
+   *          the full doc set
+   * @param fullDocList
+   *          the full doc list
    * @param fieldInfo
    *          the field info
-   * @param fieldInfos
-   *          the field infos
+   * @return the segment data
    * @throws IOException
    *           Signals that an I/O exception has occurred.
    */
-  private static void collectSpansPositionsAndTokens(
-      Map<MtasSpanQuery, SpanWeight> spansQueryWeight, IndexSearcher searcher,
-      CodecInfo mtasCodecInfo, LeafReader r, LeafReaderContext lrc,
-      String field, Terms t, List<Integer> docSet, List<Integer> docList,
-      ComponentField fieldInfo, FieldInfos fieldInfos, Status status)
+  private static SegmentData collectSpansPositionsAndTokens(
+      Map<MtasSpanQuery, SpanWeight> spansQueryWeight, LeafReaderContext lrc,
+      String field, IndexSearcher searcher, IndexReader rawReader,
+      int[] fullDocSet, int[] fullDocList, ComponentField fieldInfo)
       throws IOException {
 
+    LeafReader r = lrc.reader();
+    // compute relevant docSet/docList
+    int[] docSet = fullDocSet != null ? computeSegmentDocSet(fullDocSet, lrc)
+        : null;
+    int[] docList = fullDocList != null
+        ? computeSegmentDocList(fullDocList, lrc) : null;
+    LeafReader rawLeafReader = rawReader.leaves().get(lrc.ord).reader();
+    Terms t = rawLeafReader.terms(field);
+    CodecInfo mtasCodecInfo = t == null ? null
+        : CodecInfo.getCodecInfoFromTerms(t);
+    FieldInfos fieldInfos = rawLeafReader.getFieldInfos();
+
     boolean needSpans = false;
     boolean needPositions = false;
     boolean needTokens = false;
@@ -370,13 +558,26 @@ public class CodecCollector {
     Map<String, SortedMap<String, int[]>> facetData = null;
     Map<String, String> facetDataType = null;
 
+    // precomputed stats, only for all documents of the segment
+    FieldStats fieldStats = null;
+    if (mtasCodecInfo != null && docSet != null
+        && docSet.length == r.maxDoc() && r.getLiveDocs() == null) {
+      fieldStats = mtasCodecInfo.getFieldStats(field);
+    }
+
     // collect position stats
-    if (!fieldInfo.statsPositionList.isEmpty()) {
-      needPositions = true;
+    for (ComponentPosition position : fieldInfo.statsPositionList) {
+      if (fieldStats == null || !canUseFieldStats(position.statsType,
+          position.minimumLong, position.maximumLong)) {
+        needPositions = true;
+      }
     }
     // collect token stats
-    if (!fieldInfo.statsTokenList.isEmpty()) {
-      needTokens = true;
+    for (ComponentToken token : fieldInfo.statsTokenList) {
+      if (fieldStats == null || !canUseFieldStats(token.statsType,
+          token.minimumLong, token.maximumLong)) {
+        needTokens = true;
+      }
     }
     if (!fieldInfo.termVectorList.isEmpty()) {
       for (ComponentTermVector ctv : fieldInfo.termVectorList) {
@@ -518,7 +719,6 @@ public class CodecCollector {
         if (fi != null) {
           // prefer to use pointvalue
           if (!fi.getDocValuesType().equals(DocValuesType.NONE)) {
-            Iterator<Integer> docIterator = docSet.iterator();
             // numeric or sorted
             if (fi.getDocValuesType().equals(DocValuesType.NUMERIC)
                 || fi.getDocValuesType().equals(DocValuesType.SORTED)
@@ -532,8 +732,8 @@ public class CodecCollector {
                 NumericDocValues docValues = r.getContext().reader()
                     .getNumericDocValues(entry.getKey());
                 int docId;
-                while (docIterator.hasNext()) {
-                  docId = docIterator.next() - lrc.docBase;
+                for (int docSetId : docSet) {
+                  docId = docSetId - lrc.docBase;
                   if (docValues.advanceExact(docId)) {
                     long value = docValues.longValue();
                     if (!facetDataSubList.containsKey(value)) {
@@ -550,8 +750,8 @@ public class CodecCollector {
                 SortedNumericDocValues docValues = r.getContext().reader()
                     .getSortedNumericDocValues(entry.getKey());
                 int docId;
-                while (docIterator.hasNext()) {
-                  docId = docIterator.next() - lrc.docBase;
+                for (int docSetId : docSet) {
+                  docId = docSetId - lrc.docBase;
                   if (docValues.advanceExact(docId)) {
                     int n = docValues.docValueCount();
                     for(int i =0; i<n; i++) {
@@ -572,8 +772,8 @@ public class CodecCollector {
                     .getSortedSetDocValues(entry.getKey());
                 int docId;
                 Map<Long, String> dictionary = new HashMap<>();
-                while (docIterator.hasNext()) {
-                  docId = docIterator.next() - lrc.docBase;
+                for (int docSetId : docSet) {
+                  docId = docSetId - lrc.docBase;
                   if (docValues.advanceExact(docId)) {
                     long tmpValue;
                     String value;
@@ -599,8 +799,8 @@ public class CodecCollector {
                 SortedDocValues docValues = r.getContext().reader()
                     .getSortedDocValues(entry.getKey());
                 int docId;
-                while (docIterator.hasNext()) {
-                  docId = docIterator.next() - lrc.docBase;
+                for (int docSetId : docSet) {
+                  docId = docSetId - lrc.docBase;
                   if (docValues.advanceExact(docId)) {
                     String value = docValues.binaryValue().utf8ToString();
                     if (!facetDataSubList.containsKey(value)) {
@@ -646,7 +846,7 @@ public class CodecCollector {
               throw new IOException("facets for docValues of type "
                   + fi.getDocValuesType() + " not implemented");
             }
-          } else if (!docSet.isEmpty()) {
+          } else if (docSet.length > 0) {
             if (facetDataType.get(entry.getKey())
                 .equals(ComponentFacet.TYPE_POINTFIELD_WITHOUT_DOCVALUES)) {
               throw new IOException(
@@ -661,12 +861,11 @@ public class CodecCollector {
               while ((term = termsEnum.next()) != null) {
                 int docId;
                 int termDocId = -1;
-                int[] facetDataSublist = new int[docSet.size()];
+                int[] facetDataSublist = new int[docSet.length];
                 int facetDataSublistCounter = 0;
-                Iterator<Integer> docIterator = docSet.iterator();
                 postingsEnum = termsEnum.postings(postingsEnum);
-                while (docIterator.hasNext()) {
-                  docId = docIterator.next() - lrc.docBase;
+                for (int docSetId : docSet) {
+                  docId = docSetId - lrc.docBase;
                   if (docId >= termDocId
                       && ((docId == termDocId) || ((termDocId = postingsEnum
                           .advance(docId)) == docId))) {
@@ -745,30 +944,26 @@ public class CodecCollector {
           Spans spans = spansQueryWeight.get(sq).getSpans(lrc,
               SpanWeight.Postings.POSITIONS);
           if (spans != null) {
-            Iterator<Integer> it;
-            if (docSet != null) {
-              it = docSet.iterator();
-            } else {
-              it = docList.iterator();
-            }
-            if (it.hasNext()) {
-              int docId = it.next();
+            int[] docs = (docSet != null) ? docSet : docList;
+            if (docs.length > 0) {
+              int docCounter = 0;
+              int docId = docs[docCounter++];
               int number;
               ArrayList<Match> matchDataList;
-              Integer spansDocId = null;
+              int spansDocId;
               while (docId != DocIdSetIterator.NO_MORE_DOCS) {
                 if (spans.advance(
                     (docId - lrc.docBase)) == DocIdSetIterator.NO_MORE_DOCS) {
                   break;
                 }
                 spansDocId = spans.docID() + lrc.docBase;
-                while ((docId < spansDocId) && it.hasNext()) {
-                  docId = it.next();
+                while ((docId < spansDocId) && docCounter < docs.length) {
+                  docId = docs[docCounter++];
                 }
                 if (docId < spansDocId) {
                   break;
                 }
-                if (spansDocId.equals(docId)) {
+                if (spansDocId == docId) {
                   number = 0;
                   matchDataList = new ArrayList<>();
                   int tmpStartPosition;
@@ -787,8 +982,8 @@ public class CodecCollector {
                   if ((matchData != null)) {
                     matchData.put(spansDocId, matchDataList);
                   }
-                  if (it.hasNext()) {
-                    docId = it.next();
+                  if (docCounter < docs.length) {
+                    docId = docs[docCounter++];
                   } else {
                     break;
                   }
@@ -804,7 +999,7 @@ public class CodecCollector {
     if (needPositions) {
       if (mtasCodecInfo != null) {
         // for relatively small numbers, compute only what is needed
-        if (docSet.size() < Math.log(r.maxDoc())) {
+        if (docSet.length < Math.log(r.maxDoc())) {
           positionsData = new HashMap<>();
           for (int docId : docSet) {
             positionsData.put(docId, mtasCodecInfo.getNumberOfPositions(field,
@@ -838,7 +1033,7 @@ public class CodecCollector {
     if (needTokens) {
       if (mtasCodecInfo != null) {
         // for relatively small numbers, compute only what is needed
-        if (docSet.size() < Math.log(r.maxDoc())) {
+        if (docSet.length < Math.log(r.maxDoc())) {
           tokensData = new HashMap<>();
           for (int docId : docSet) {
             tokensData.put(docId,
@@ -861,43 +1056,118 @@ public class CodecCollector {
       }
     }
 
+    // collect group hits
+    Map<ComponentGroup, GroupData> groupData = null;
+    if (mtasCodecInfo != null && !fieldInfo.spanQueryList.isEmpty()
+        && !fieldInfo.groupList.isEmpty()) {
+      groupData = new HashMap<>();
+      for (ComponentGroup group : fieldInfo.groupList) {
+        if (!group.prefixes.isEmpty()) {
+          groupData.put(group,
+              computeGroup(group, spansMatchData.get(group.spanQuery), docSet,
+                  fieldInfos.fieldInfo(field), field, lrc.docBase,
+                  mtasCodecInfo, searcher, lrc));
+        }
+      }
+    }
+
+    return new SegmentData(lrc, t, mtasCodecInfo, fieldInfos, docSet,
+        docList, positionsData, tokensData, fieldStats, spansNumberData,
+        spansMatchData, facetData, groupData);
+  }
+
+  /**
+   * Check if the precomputed field stats can be used for a stats component
+   * on all documents of a segment: only sum and number of documents are
+   * available, so no restriction on the value and basic stats only.
+   *
+   * @param statsType
+   *          the stats type
+   * @param minimum
+   *          the minimum
+   * @param maximum
+   *          the maximum
+   * @return true, if successful
+   */
+  private static boolean canUseFieldStats(String statsType, Long minimum,
+      Long maximum) {
+    return minimum == null && maximum == null
+        && CodecUtil.STATS_BASIC.equals(statsType);
+  }
+
+  /**
+   * Create segment components: add the collected data for a segment to the
+   * collectors of the field.
+   *
+   * @param segmentData
+   *          the segment data
+   * @param searcher
+   *          the searcher
+   * @param field
+   *          the field
+   * @param fieldInfo
+   *          the field info
+   * @param status
+   *          the status
+   * @param executor
+   *          the executor, or null for sequential collection
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  private static void createSegmentComponents(SegmentData segmentData,
+      IndexSearcher searcher, String field, ComponentField fieldInfo,
+      Status status, ExecutorService executor) throws IOException {
+    LeafReaderContext lrc = segmentData.lrc;
+    LeafReader r = lrc.reader();
+    Terms t = segmentData.terms;
+    CodecInfo mtasCodecInfo = segmentData.mtasCodecInfo;
+    FieldInfos fieldInfos = segmentData.fieldInfos;
+    int[] docSet = segmentData.docSet;
+    int[] docList = segmentData.docList;
+    Map<Integer, Integer> positionsData = segmentData.positionsData;
+    Map<Integer, Integer> tokensData = segmentData.tokensData;
+    FieldStats fieldStats = segmentData.fieldStats;
+    Map<MtasSpanQuery, Map<Integer, Integer>> spansNumberData = segmentData.spansNumberData;
+    Map<MtasSpanQuery, Map<Integer, List<Match>>> spansMatchData = segmentData.spansMatchData;
+    Map<String, SortedMap<String, int[]>> facetData = segmentData.facetData;
+
     if (!fieldInfo.statsPositionList.isEmpty()) {
       // create positions
-      createPositions(fieldInfo.statsPositionList, positionsData, docSet);
+      createPositions(fieldInfo.statsPositionList, positionsData, fieldStats,
+          docSet);
     }
 
     if (!fieldInfo.statsTokenList.isEmpty()) {
       // create positions
-      createTokens(fieldInfo.statsTokenList, tokensData, docSet);
+      createTokens(fieldInfo.statsTokenList, tokensData, fieldStats, docSet);
     }
 
     if (!fieldInfo.documentList.isEmpty()) {
       // create document
       createDocument(fieldInfo.documentList, docList, fieldInfo.uniqueKeyField,
-          searcher, t, lrc);
+          fieldInfo.uniqueKeyDocValues, searcher, t, lrc);
     }
     if (!fieldInfo.spanQueryList.isEmpty()) {
       if (!fieldInfo.statsSpanList.isEmpty()) {
         // create stats
         createStats(fieldInfo.statsSpanList, positionsData, spansNumberData,
-            docSet.toArray(new Integer[docSet.size()]));
+            docSet);
       }
       if (!fieldInfo.listList.isEmpty()) {
         // create list
         createList(fieldInfo.listList, spansNumberData, spansMatchData, docSet,
-            field, lrc.docBase, fieldInfo.uniqueKeyField, mtasCodecInfo,
-            searcher);
+            field, lrc.docBase, fieldInfo.uniqueKeyField,
+            fieldInfo.uniqueKeyDocValues, mtasCodecInfo, searcher, lrc);
       }
-      if (!fieldInfo.groupList.isEmpty()) {
+      if (segmentData.groupData != null) {
         // create group
-        createGroup(fieldInfo.groupList, spansMatchData, docSet,
-            fieldInfos.fieldInfo(field), field, lrc.docBase, mtasCodecInfo,
-            searcher, lrc, status);
+        createGroup(fieldInfo.groupList, segmentData.groupData);
       }
       if (!fieldInfo.kwicList.isEmpty()) {
         // create kwic
         createKwic(fieldInfo.kwicList, spansMatchData, docList, field,
-            lrc.docBase, fieldInfo.uniqueKeyField, mtasCodecInfo, searcher);
+            lrc.docBase, fieldInfo.uniqueKeyField, fieldInfo.uniqueKeyDocValues,
+            mtasCodecInfo, searcher, lrc);
       }
       if (!fieldInfo.facetList.isEmpty()) {
         // create facets
@@ -907,12 +1177,97 @@ public class CodecCollector {
     }
     if (!fieldInfo.termVectorList.isEmpty()) {
       createTermvectorFull(fieldInfo.termVectorList, positionsData, docSet, t,
-          r, lrc);
+          r, lrc, executor);
       createTermvectorFirstRound(fieldInfo.termVectorList, positionsData,
-          docSet, t, r, lrc);
+          docSet, t, r, lrc, executor);
+    }
+  }
+
+  /**
+   * The data collected for a single segment, to be added to the collectors.
+   */
+  private static class SegmentData {
+
+    /** The lrc. */
+    final LeafReaderContext lrc;
+
+    /** The terms. */
+    final Terms terms;
+
+    /** The mtas codec info. */
+    final CodecInfo mtasCodecInfo;
+
+    /** The field infos. */
+    final FieldInfos fieldInfos;
+
+    /** The doc set. */
+    final int[] docSet;
+
+    /** The doc list. */
+    final int[] docList;
+
+    /** The positions data. */
+    final Map<Integer, Integer> positionsData;
+
+    /** The tokens data. */
+    final Map<Integer, Integer> tokensData;
+
+    /** The precomputed field stats, only for all documents of the segment. */
+    final FieldStats fieldStats;
+
+    /** The spans number data. */
+    final Map<MtasSpanQuery, Map<Integer, Integer>> spansNumberData;
+
+    /** The spans match data. */
+    final Map<MtasSpanQuery, Map<Integer, List<Match>>> spansMatchData;
+
+    /** The facet data. */
+    final Map<String, SortedMap<String, int[]>> facetData;
+
+    /** The group data, null if no groups are created. */
+    final Map<ComponentGroup, GroupData> groupData;
+
+    /**
+     * Instantiates a new segment data.
+     */
+    SegmentData(LeafReaderContext lrc, Terms terms, CodecInfo mtasCodecInfo,
+        FieldInfos fieldInfos, int[] docSet, int[] docList,
+        Map<Integer, Integer> positionsData, Map<Integer, Integer> tokensData,
+        FieldStats fieldStats,
+        Map<MtasSpanQuery, Map<Integer, Integer>> spansNumberData,
+        Map<MtasSpanQuery, Map<Integer, List<Match>>> spansMatchData,
+        Map<String, SortedMap<String, int[]>> facetData,
+        Map<ComponentGroup, GroupData> groupData) {
+      this.lrc = lrc;
+      this.terms = terms;
+      this.mtasCodecInfo = mtasCodecInfo;
+      this.fieldInfos = fieldInfos;
+      this.docSet = docSet;
+      this.docList = docList;
+      this.positionsData = positionsData;
+      this.tokensData = tokensData;
+      this.fieldStats = fieldStats;
+      this.spansNumberData = spansNumberData;
+      this.spansMatchData = spansMatchData;
+      this.facetData = facetData;
+      this.groupData = groupData;
     }
   }
 
+  /**
+   * The occurrences of the group hits in a segment, to be added to the
+   * collector of a group.
+   */
+  private static class GroupData {
+
+    /** The number of occurrences, by group hit. */
+    final Map<GroupHit, Long> occurencesSum = new HashMap<>();
+
+    /** The number of documents with occurrences, by group hit. */
+    final Map<GroupHit, Integer> occurencesN = new HashMap<>();
+
+  }
+
   /**
    * Collect known prefixes.
    *
@@ -1004,6 +1359,8 @@ public class CodecCollector {
    *
    * @param fieldInfos
    *          the field infos
+   * @param mtasCodecInfo
+   *          the mtas codec info, or null if the segment has no terms
    * @param field
    *          the field
    * @param fieldInfo
@@ -1011,9 +1368,13 @@ public class CodecCollector {
    * @throws IOException
    *           Signals that an I/O exception has occurred.
    */
-  private static void collectPrefixes(FieldInfos fieldInfos, String field,
-      ComponentField fieldInfo, Status status) throws IOException {
+  private static void collectPrefixes(FieldInfos fieldInfos,
+      CodecInfo mtasCodecInfo, String field, ComponentField fieldInfo,
+      Status status) throws IOException {
     if (fieldInfo.prefix != null) {
+      if (mtasCodecInfo != null) {
+        fieldInfo.prefix.addStats(mtasCodecInfo.getFieldStats(field));
+      }
       FieldInfo fi = fieldInfos.fieldInfo(field);
       if (fi != null) {
         String singlePositionPrefixes = fi.getAttribute(
@@ -1197,6 +1558,30 @@ public class CodecCollector {
     return query;
   }
 
+  /**
+   * Compute positions.
+   *
+   * @param field
+   *          the field
+   * @param rawReader
+   *          the raw reader
+   * @param lrc
+   *          the lrc
+   * @param docSet
+   *          the doc set
+   * @return the map
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  private static Map<Integer, Integer> computePositions(String field,
+      IndexReader rawReader, LeafReaderContext lrc, int[] docSet)
+      throws IOException {
+    Terms t = rawReader.leaves().get(lrc.ord).reader().terms(field);
+    CodecInfo mtasCodecInfo = t == null ? null
+        : CodecInfo.getCodecInfoFromTerms(t);
+    return computePositions(mtasCodecInfo, lrc.reader(), lrc, field, docSet);
+  }
+
   /**
    * Compute positions.
    *
@@ -1215,12 +1600,12 @@ public class CodecCollector {
    *           Signals that an I/O exception has occurred.
    */
   private static Map<Integer, Integer> computePositions(CodecInfo mtasCodecInfo,
-      LeafReader r, LeafReaderContext lrc, String field, List<Integer> docSet)
+      LeafReader r, LeafReaderContext lrc, String field, int[] docSet)
       throws IOException {
     HashMap<Integer, Integer> positionsData;
     if (mtasCodecInfo != null) {
       // for relatively small numbers, compute only what is needed
-      if (docSet.size() < Math.log(r.maxDoc())) {
+      if (docSet.length < Math.log(r.maxDoc())) {
         positionsData = new HashMap<>();
         for (int docId : docSet) {
           positionsData.put(docId,
@@ -1258,7 +1643,7 @@ public class CodecCollector {
    */
   private static Map<Integer, long[]> computeArguments(
       Map<MtasSpanQuery, Map<Integer, Integer>> spansNumberData,
-      MtasSpanQuery[] queries, Integer[] docSet) {
+      MtasSpanQuery[] queries, int[] docSet) {
     Map<Integer, long[]> args = new HashMap<>();
     for (int q = 0; q < queries.length; q++) {
       Map<Integer, Integer> tmpData = spansNumberData.get(queries[q]);
@@ -1281,40 +1666,6 @@ public class CodecCollector {
     return args;
   }
 
-  /**
-   * Intersected doc list.
-   *
-   * @param facetDocList
-   *          the facet doc list
-   * @param docSet
-   *          the doc set
-   * @return the integer[]
-   */
-  private static Integer[] intersectedDocList(int[] facetDocList,
-      Integer[] docSet) {
-    if (facetDocList != null && docSet != null) {
-      Integer[] c = new Integer[Math.min(facetDocList.length, docSet.length)];
-      int ai = 0;
-      int bi = 0;
-      int ci = 0;
-      while (ai < facetDocList.length && bi < docSet.length) {
-        if (facetDocList[ai] < docSet[bi]) {
-          ai++;
-        } else if (facetDocList[ai] > docSet[bi]) {
-          bi++;
-        } else {
-          if (ci == 0 || facetDocList[ai] != c[ci - 1]) {
-            c[ci++] = facetDocList[ai];
-          }
-          ai++;
-          bi++;
-        }
-      }
-      return Arrays.copyOfRange(c, 0, ci);
-    }
-    return new Integer[] {};
-  }
-
   /**
    * Creates the positions.
    *
@@ -1322,19 +1673,30 @@ public class CodecCollector {
    *          the stats position list
    * @param positionsData
    *          the positions data
+   * @param fieldStats
+   *          the precomputed field stats, possibly null
    * @param docSet
    *          the doc set
    * @throws IOException
    *           Signals that an I/O exception has occurred.
    */
   private static void createPositions(List<ComponentPosition> statsPositionList,
-      Map<Integer, Integer> positionsData, List<Integer> docSet)
+      Map<Integer, Integer> positionsData, FieldStats fieldStats, int[] docSet)
       throws IOException {
     if (statsPositionList != null) {
       for (ComponentPosition position : statsPositionList) {
         position.dataCollector.initNewList(1);
+        if (fieldStats != null && canUseFieldStats(position.statsType,
+            position.minimumLong, position.maximumLong)) {
+          if (docSet.length > 0) {
+            position.dataCollector.add(fieldStats.numberOfPositions,
+                docSet.length);
+          }
+          position.dataCollector.closeNewList();
+          continue;
+        }
         Integer tmpValue;
-        long[] values = new long[docSet.size()];
+        long[] values = new long[docSet.length];
         int value;
         int number = 0;
         for (int docId : docSet) {
@@ -1363,19 +1725,30 @@ public class CodecCollector {
    *          the stats token list
    * @param tokensData
    *          the tokens data
+   * @param fieldStats
+   *          the precomputed field stats, possibly null
    * @param docSet
    *          the doc set
    * @throws IOException
    *           Signals that an I/O exception has occurred.
    */
   private static void createTokens(List<ComponentToken> statsTokenList,
-      Map<Integer, Integer> tokensData, List<Integer> docSet)
+      Map<Integer, Integer> tokensData, FieldStats fieldStats, int[] docSet)
       throws IOException {
     if (statsTokenList != null) {
       for (ComponentToken token : statsTokenList) {
         token.dataCollector.initNewList(1);
+        if (fieldStats != null && canUseFieldStats(token.statsType,
+            token.minimumLong, token.maximumLong)) {
+          if (docSet.length > 0) {
+            token.dataCollector.add(fieldStats.numberOfTokens,
+                docSet.length);
+          }
+          token.dataCollector.closeNewList();
+          continue;
+        }
         Integer tmpValue;
-        long[] values = new long[docSet.size()];
+        long[] values = new long[docSet.length];
         int value;
         int number = 0;
         if (tokensData != null) {
@@ -1415,7 +1788,7 @@ public class CodecCollector {
   private static void createStats(List<ComponentSpan> statsSpanList,
       Map<Integer, Integer> positionsData,
       Map<MtasSpanQuery, Map<Integer, Integer>> spansNumberData,
-      Integer[] docSet) throws IOException {
+      int[] docSet) throws IOException {
     if (statsSpanList != null) {
       for (ComponentSpan span : statsSpanList) {
         if (span.parser.needArgumentsNumber() > span.queries.length) {
@@ -1496,24 +1869,12 @@ public class CodecCollector {
               int number = 0;
               int positions;
               long valueLong;
-              double valueDouble;
               long[] values = new long[docSet.length];
-              long[][] functionValuesLong = null;
-              double[][] functionValuesDouble = null;
+              long[][] rowArgs = new long[docSet.length][];
+              long[] rowPositions = new long[docSet.length];
               span.dataCollector.initNewList(1);
               if (span.functions != null) {
-                functionValuesLong = new long[span.functions.size()][];
-                functionValuesDouble = new double[span.functions.size()][];
-                for (int i = 0; i < span.functions.size(); i++) {
-                  SubComponentFunction function = span.functions.get(i);
-                  if (function.dataType.equals(CodecUtil.DATA_TYPE_LONG)) {
-                    functionValuesLong[i] = new long[docSet.length];
-                    functionValuesDouble[i] = null;
-                  } else if (function.dataType
-                      .equals(CodecUtil.DATA_TYPE_DOUBLE)) {
-                    functionValuesLong[i] = null;
-                    functionValuesDouble[i] = new double[docSet.length];
-                  }
+                for (SubComponentFunction function : span.functions) {
                   function.dataCollector.initNewList(1);
                 }
               }
@@ -1531,41 +1892,30 @@ public class CodecCollector {
                     && ((span.maximumLong == null)
                         || (valueLong <= span.maximumLong))) {
                   values[number] = valueLong;
-                  if (span.functions != null) {
-                    for (int i = 0; i < span.functions.size(); i++) {
-                      SubComponentFunction function = span.functions.get(i);
-                      try {
-                        if (function.dataType
-                            .equals(CodecUtil.DATA_TYPE_LONG)) {
-                          valueLong = function.parserFunction
-                              .getValueLong(args.get(docId), positions);
-                          functionValuesLong[i][number] = valueLong;
-                        } else if (function.dataType
-                            .equals(CodecUtil.DATA_TYPE_DOUBLE)) {
-                          valueDouble = function.parserFunction
-                              .getValueDouble(args.get(docId), positions);
-                          functionValuesDouble[i][number] = valueDouble;
-                        }
-                      } catch (IOException e) {
-                        log.debug(e);
-                        function.dataCollector.error(e.getMessage());
-                      }
-                    }
-                  }
+                  rowArgs[number] = args.get(docId);
+                  rowPositions[number] = positions;
                   number++;
                 }
               }
               if (number > 0) {
                 span.dataCollector.add(values, number);
                 if (span.functions != null) {
-                  for (int i = 0; i < span.functions.size(); i++) {
-                    SubComponentFunction function = span.functions.get(i);
+                  // evaluate each function for all rows at once
+                  boolean[] valid = new boolean[number];
+                  for (SubComponentFunction function : span.functions) {
                     if (function.dataType.equals(CodecUtil.DATA_TYPE_LONG)) {
-                      function.dataCollector.add(functionValuesLong[i], number);
+                      long[] functionValues = new long[number];
+                      computeValuesLong(function.parserFunction,
+                          function.dataCollector, null, rowArgs, rowPositions,
+                          number, functionValues, valid);
+                      function.dataCollector.add(functionValues, number);
                     } else if (function.dataType
                         .equals(CodecUtil.DATA_TYPE_DOUBLE)) {
-                      function.dataCollector.add(functionValuesDouble[i],
-                          number);
+                      double[] functionValues = new double[number];
+                      computeValuesDouble(function.parserFunction,
+                          function.dataCollector, null, rowArgs, rowPositions,
+                          number, functionValues, valid);
+                      function.dataCollector.add(functionValues, number);
                     }
                   }
                 }
@@ -1602,18 +1952,24 @@ public class CodecCollector {
    *          the doc base
    * @param uniqueKeyField
    *          the unique key field
+   * @param uniqueKeyDocValues
+   *          if the unique key can be read from doc values
    * @param mtasCodecInfo
    *          the mtas codec info
    * @param searcher
    *          the searcher
+   * @param lrc
+   *          the lrc
    * @throws IOException
    *           Signals that an I/O exception has occurred.
    */
   private static void createList(List<ComponentList> listList,
       Map<MtasSpanQuery, Map<Integer, Integer>> spansNumberData,
       Map<MtasSpanQuery, Map<Integer, List<Match>>> spansMatchData,
-      List<Integer> docSet, String field, int docBase, String uniqueKeyField,
-      CodecInfo mtasCodecInfo, IndexSearcher searcher) throws IOException {
+      int[] docSet, String field, int docBase, String uniqueKeyField,
+      boolean uniqueKeyDocValues, CodecInfo mtasCodecInfo,
+      IndexSearcher searcher, LeafReaderContext lrc)
+      throws IOException {
     if (listList != null) {
       for (ComponentList list : listList) {
         // collect not only stats
@@ -1625,6 +1981,8 @@ public class CodecCollector {
           List<Match> matchList;
           Integer matchNumber;
           if (list.output.equals(ComponentList.LIST_OUTPUT_HIT)) {
+            UniqueKeyReader uniqueKeyReader = new UniqueKeyReader(
+                uniqueKeyField, uniqueKeyDocValues, searcher, lrc);
             for (int docId : docSet) {
               if (matchData != null
                   && (matchList = matchData.get(docId)) != null) {
@@ -1667,12 +2025,10 @@ public class CodecCollector {
                   }
                   if (getDoc) {
                     // get unique id
-                    Document doc = searcher.doc(docId,
-                        new HashSet<String>(Arrays.asList(uniqueKeyField)));
-                    IndexableField indxfld = doc.getField(uniqueKeyField);
+                    String uniqueKey = uniqueKeyReader.get(docId);
                     // get other doc info
-                    if (indxfld != null) {
-                      list.uniqueKey.put(docId, indxfld.stringValue());
+                    if (uniqueKey != null) {
+                      list.uniqueKey.put(docId, uniqueKey);
                     }
                     list.subTotal.put(docId, matchList.size());
                     IndexDoc mDoc = mtasCodecInfo.getDoc(field,
@@ -1692,6 +2048,8 @@ public class CodecCollector {
             }
             list.total = list.position;
           } else if (list.output.equals(ComponentList.LIST_OUTPUT_TOKEN)) {
+            UniqueKeyReader uniqueKeyReader = new UniqueKeyReader(
+                uniqueKeyField, uniqueKeyDocValues, searcher, lrc);
             for (int docId : docSet) {
               if (matchData != null
                   && (matchList = matchData.get(docId)) != null) {
@@ -1717,12 +2075,10 @@ public class CodecCollector {
                   }
                   if (getDoc) {
                     // get unique id
-                    Document doc = searcher.doc(docId,
-                        new HashSet<String>(Arrays.asList(uniqueKeyField)));
-                    IndexableField indxfld = doc.getField(uniqueKeyField);
+                    String uniqueKey = uniqueKeyReader.get(docId);
                     // get other doc info
-                    if (indxfld != null) {
-                      list.uniqueKey.put(docId, indxfld.stringValue());
+                    if (uniqueKey != null) {
+                      list.uniqueKey.put(docId, uniqueKey);
                     }
                     list.subTotal.put(docId, matchList.size());
                     IndexDoc mDoc = mtasCodecInfo.getDoc(field,
@@ -1760,12 +2116,39 @@ public class CodecCollector {
   }
 
   /**
-   * Creates the group.
+   * Creates the group: add the group hits collected for a segment to the
+   * collectors of the groups.
    *
    * @param groupList
    *          the group list
-   * @param spansMatchData
-   *          the spans match data
+   * @param groupData
+   *          the group data, by group
+   */
+  private static void createGroup(List<ComponentGroup> groupList,
+      Map<ComponentGroup, GroupData> groupData) {
+    for (ComponentGroup group : groupList) {
+      group.dataCollector.setWithTotal();
+      GroupData data = groupData.get(group);
+      if (data != null) {
+        group.dataCollector.initNewList(1);
+        for (Entry<GroupHit, Long> entry : data.occurencesSum.entrySet()) {
+          group.dataCollector.add(entry.getKey().toString(), entry.getValue(),
+              data.occurencesN.get(entry.getKey()));
+        }
+        group.dataCollector.closeNewList();
+      }
+    }
+  }
+
+  /**
+   * Compute the occurrences of the group hits in a segment. This only reads
+   * from the index, so it can safely be called for different segments in
+   * parallel.
+   *
+   * @param group
+   *          the group
+   * @param matchData
+   *          the match data for the query of the group
    * @param docSet
    *          the doc set
    * @param fieldInfo
@@ -1780,179 +2163,163 @@ public class CodecCollector {
    *          the searcher
    * @param lrc
    *          the lrc
+   * @return the group data
    * @throws IOException
    *           Signals that an I/O exception has occurred.
    */
-  private static void createGroup(List<ComponentGroup> groupList,
-      Map<MtasSpanQuery, Map<Integer, List<Match>>> spansMatchData,
-      List<Integer> docSet, FieldInfo fieldInfo, String field, int docBase,
-      CodecInfo mtasCodecInfo, IndexSearcher searcher, LeafReaderContext lrc,
-      Status status) throws IOException {
+  private static GroupData computeGroup(ComponentGroup group,
+      Map<Integer, List<Match>> matchData, int[] docSet, FieldInfo fieldInfo,
+      String field, int docBase, CodecInfo mtasCodecInfo,
+      IndexSearcher searcher, LeafReaderContext lrc) throws IOException {
+    List<Match> matchList;
+    Set<String> knownPrefixes = collectKnownPrefixes(fieldInfo);
+    Set<String> intersectionPrefixes = collectIntersectionPrefixes(fieldInfo);
+    boolean intersectionGroupPrefixes = intersectionPrefixes(group,
+        intersectionPrefixes);
+    boolean availablePrefixes = availablePrefixes(group, knownPrefixes);
+    // sort match lists
+    if (!intersectionGroupPrefixes) {
+      for (Entry<Integer, List<Match>> entry : matchData.entrySet()) {
+        sortMatchList(entry.getValue());
+      }
+    }
+    // init
+    int docId;
 
-    if (mtasCodecInfo != null && groupList != null) {
-      List<Match> matchList;
-      Map<Integer, List<Match>> matchData;
-      for (ComponentGroup group : groupList) {
-        group.dataCollector.setWithTotal();
-        if (!group.prefixes.isEmpty()) {
-          matchData = spansMatchData.get(group.spanQuery);
-          Set<String> knownPrefixes = collectKnownPrefixes(fieldInfo);
-          Set<String> intersectionPrefixes = collectIntersectionPrefixes(
-              fieldInfo);
-          boolean intersectionGroupPrefixes = intersectionPrefixes(group,
-              intersectionPrefixes);
-          boolean availablePrefixes = availablePrefixes(group, knownPrefixes);
-          // sort match lists
-          if (!intersectionGroupPrefixes) {
-            for (Entry<Integer, List<Match>> entry : matchData.entrySet()) {
-              sortMatchList(entry.getValue());
-            }
-          }
-          // init
-          group.dataCollector.initNewList(1);
-          int docId;
-
-          Map<GroupHit, Long> occurencesSum = new HashMap<>();
-          Map<GroupHit, Integer> occurencesN = new HashMap<>();
-          Set<GroupHit> occurencesInCurrentDocument = new HashSet<>();
-
-          if (!availablePrefixes) {
-            HashMap<Integer, GroupHit> hits = new HashMap<>();
-            for (int docCounter = 0; docCounter < docSet.size(); docCounter++) {
-              occurencesInCurrentDocument.clear();
-              docId = docSet.get(docCounter);
-              GroupHit hit;
-              GroupHit hitKey;
-              if (matchData != null
-                  && (matchList = matchData.get(docId)) != null
-                  && !matchList.isEmpty()) {
-                Iterator<Match> it = matchList.listIterator();
-                while (it.hasNext()) {
-                  Match m = it.next();
-                  IntervalTreeNodeData<String> positionHit = createPositionHit(
-                      m, group);
-                  int length = m.endPosition - m.startPosition;
-                  hitKey = null;
-                  if (!hits.containsKey(length)) {
-                    hit = new GroupHit(positionHit.list, positionHit.start,
-                        positionHit.end, positionHit.hitStart,
-                        positionHit.hitEnd, group, knownPrefixes);
-                    hits.put(length, hit);
-                  } else {
-                    hit = hits.get(length);
-                    for (GroupHit hitKeyItem : occurencesSum.keySet()) {
-                      if (hitKeyItem.equals(hit)) {
-                        hitKey = hitKeyItem;
-                        break;
-                      }
-                    }
-                  }
-                  if (hitKey == null) {
-                    occurencesSum.put(hit, Long.valueOf(1));
-                    occurencesN.put(hit, 1);
-                    occurencesInCurrentDocument.add(hit);
-                  } else {
-                    occurencesSum.put(hitKey, occurencesSum.get(hitKey) + 1);
-                    if (!occurencesInCurrentDocument.contains(hitKey)) {
-                      if (occurencesN.containsKey(hitKey)) {
-                        occurencesN.put(hitKey, occurencesN.get(hitKey) + 1);
-                      } else {
-                        occurencesN.put(hitKey, 1);
-                      }
-                      occurencesInCurrentDocument.add(hitKey);
-                    }
-                  }
+    GroupData groupData = new GroupData();
+    Map<GroupHit, Long> occurencesSum = groupData.occurencesSum;
+    Map<GroupHit, Integer> occurencesN = groupData.occurencesN;
+    Set<GroupHit> occurencesInCurrentDocument = new HashSet<>();
+
+    if (!availablePrefixes) {
+      HashMap<Integer, GroupHit> hits = new HashMap<>();
+      for (int docCounter = 0; docCounter < docSet.length; docCounter++) {
+        occurencesInCurrentDocument.clear();
+        docId = docSet[docCounter];
+        GroupHit hit;
+        GroupHit hitKey;
+        if (matchData != null
+            && (matchList = matchData.get(docId)) != null
+            && !matchList.isEmpty()) {
+          Iterator<Match> it = matchList.listIterator();
+          while (it.hasNext()) {
+            Match m = it.next();
+            IntervalTreeNodeData<String> positionHit = createPositionHit(
+                m, group);
+            int length = m.endPosition - m.startPosition;
+            hitKey = null;
+            if (!hits.containsKey(length)) {
+              hit = new GroupHit(positionHit.list, positionHit.start,
+                  positionHit.end, positionHit.hitStart,
+                  positionHit.hitEnd, group, knownPrefixes);
+              hits.put(length, hit);
+            } else {
+              hit = hits.get(length);
+              for (GroupHit hitKeyItem : occurencesSum.keySet()) {
+                if (hitKeyItem.equals(hit)) {
+                  hitKey = hitKeyItem;
+                  break;
                 }
               }
             }
-          } else {
-            int maximumNumberOfDocuments = 0;
-            int boundaryMinimumNumberOfDocuments = 1;
-            int boundaryMaximumNumberOfDocuments = 5;
-            Set<GroupHit> administrationOccurrences = new HashSet<>();
-            for (int docCounter = 0; docCounter < docSet.size(); docCounter++) {
-              occurencesInCurrentDocument.clear();
-              docId = docSet.get(docCounter);
-              if (matchData != null
-                  && (matchList = matchData.get(docId)) != null
-                  && !matchList.isEmpty()) {
-                // loop over matches
-                Iterator<Match> it = matchList.listIterator();
-                ArrayList<IntervalTreeNodeData<String>> positionsHits = new ArrayList<>();
-                while (it.hasNext()) {
-                  Match m = it.next();
-                  positionsHits.add(createPositionHit(m, group));
-                }
-                mtasCodecInfo.collectTermsByPrefixesForListOfHitPositions(field,
-                    (docId - docBase), group.prefixes, positionsHits);
-                // administration
-                for (IntervalTreeNodeData<String> positionHit : positionsHits) {
-                  GroupHit hit = new GroupHit(positionHit.list,
-                      positionHit.start, positionHit.end, positionHit.hitStart,
-                      positionHit.hitEnd, group, knownPrefixes);
-                  GroupHit hitKey = null;
-                  for (GroupHit hitKeyItem : occurencesSum.keySet()) {
-                    if (hitKeyItem.equals(hit)) {
-                      hitKey = hitKeyItem;
-                      break;
-                    }
-                  }
-                  if (hitKey == null) {
-                    occurencesSum.put(hit, Long.valueOf(1));
-                    occurencesN.put(hit, 1);
-                    occurencesInCurrentDocument.add(hit);
-                  } else {
-                    occurencesSum.put(hitKey, occurencesSum.get(hitKey) + 1);
-                    if (!occurencesInCurrentDocument.contains(hitKey)) {
-                      if (occurencesN.containsKey(hitKey)) {
-                        occurencesN.put(hitKey, occurencesN.get(hitKey) + 1);
-                      } else {
-                        occurencesN.put(hitKey, 1);
-                      }
-                      occurencesInCurrentDocument.add(hitKey);
-                    }
-                  }
+            if (hitKey == null) {
+              occurencesSum.put(hit, Long.valueOf(1));
+              occurencesN.put(hit, 1);
+              occurencesInCurrentDocument.add(hit);
+            } else {
+              occurencesSum.put(hitKey, occurencesSum.get(hitKey) + 1);
+              if (!occurencesInCurrentDocument.contains(hitKey)) {
+                if (occurencesN.containsKey(hitKey)) {
+                  occurencesN.put(hitKey, occurencesN.get(hitKey) + 1);
+                } else {
+                  occurencesN.put(hitKey, 1);
                 }
-                if (!intersectionGroupPrefixes) {
-                  for (GroupHit groupHit : occurencesInCurrentDocument) {
-                    int tmpNumber = occurencesN.get(groupHit);
-                    maximumNumberOfDocuments = Math
-                        .max(maximumNumberOfDocuments, tmpNumber);
-                    if (tmpNumber > boundaryMinimumNumberOfDocuments) {
-                      administrationOccurrences.add(groupHit);
-                    }
-                  }
-                  // collect spans
-                  if (maximumNumberOfDocuments > boundaryMaximumNumberOfDocuments) {
-                    if (!administrationOccurrences.isEmpty()) {
-                      Map<GroupHit, Spans> list = collectSpansForOccurences(
-                          administrationOccurrences, knownPrefixes, field,
-                          searcher, lrc);
-                      if (list.size() > 0) {
-                        collectGroupUsingSpans(list, docSet, docBase,
-                            docCounter, matchData, occurencesSum, occurencesN);
-                      }
-                    }
-                    administrationOccurrences.clear();
-                    maximumNumberOfDocuments = 0;
-                    boundaryMinimumNumberOfDocuments = (int) Math
-                        .ceil(boundaryMinimumNumberOfDocuments * 1.2);
-                    boundaryMaximumNumberOfDocuments = (int) Math
-                        .ceil(boundaryMaximumNumberOfDocuments * 1.2);
-                  }
+                occurencesInCurrentDocument.add(hitKey);
+              }
+            }
+          }
+        }
+      }
+    } else {
+      int maximumNumberOfDocuments = 0;
+      int boundaryMinimumNumberOfDocuments = 1;
+      int boundaryMaximumNumberOfDocuments = 5;
+      Set<GroupHit> administrationOccurrences = new HashSet<>();
+      for (int docCounter = 0; docCounter < docSet.length; docCounter++) {
+        occurencesInCurrentDocument.clear();
+        docId = docSet[docCounter];
+        if (matchData != null
+            && (matchList = matchData.get(docId)) != null
+            && !matchList.isEmpty()) {
+          // loop over matches
+          Iterator<Match> it = matchList.listIterator();
+          ArrayList<IntervalTreeNodeData<String>> positionsHits = new ArrayList<>();
+          while (it.hasNext()) {
+            Match m = it.next();
+            positionsHits.add(createPositionHit(m, group));
+          }
+          mtasCodecInfo.collectTermsByPrefixesForListOfHitPositions(field,
+              (docId - docBase), group.prefixes, positionsHits);
+          // administration
+          for (IntervalTreeNodeData<String> positionHit : positionsHits) {
+            GroupHit hit = new GroupHit(positionHit.list,
+                positionHit.start, positionHit.end, positionHit.hitStart,
+                positionHit.hitEnd, group, knownPrefixes);
+            GroupHit hitKey = null;
+            for (GroupHit hitKeyItem : occurencesSum.keySet()) {
+              if (hitKeyItem.equals(hit)) {
+                hitKey = hitKeyItem;
+                break;
+              }
+            }
+            if (hitKey == null) {
+              occurencesSum.put(hit, Long.valueOf(1));
+              occurencesN.put(hit, 1);
+              occurencesInCurrentDocument.add(hit);
+            } else {
+              occurencesSum.put(hitKey, occurencesSum.get(hitKey) + 1);
+              if (!occurencesInCurrentDocument.contains(hitKey)) {
+                if (occurencesN.containsKey(hitKey)) {
+                  occurencesN.put(hitKey, occurencesN.get(hitKey) + 1);
+                } else {
+                  occurencesN.put(hitKey, 1);
                 }
+                occurencesInCurrentDocument.add(hitKey);
               }
             }
           }
-
-          for (Entry<GroupHit, Long> entry : occurencesSum.entrySet()) {
-            group.dataCollector.add(entry.getKey().toString(), entry.getValue(),
-                occurencesN.get(entry.getKey()));
+          if (!intersectionGroupPrefixes) {
+            for (GroupHit groupHit : occurencesInCurrentDocument) {
+              int tmpNumber = occurencesN.get(groupHit);
+              maximumNumberOfDocuments = Math
+                  .max(maximumNumberOfDocuments, tmpNumber);
+              if (tmpNumber > boundaryMinimumNumberOfDocuments) {
+                administrationOccurrences.add(groupHit);
+              }
+            }
+            // collect spans
+            if (maximumNumberOfDocuments > boundaryMaximumNumberOfDocuments) {
+              if (!administrationOccurrences.isEmpty()) {
+                Map<GroupHit, Spans> list = collectSpansForOccurences(
+                    administrationOccurrences, knownPrefixes, field,
+                    searcher, lrc);
+                if (list.size() > 0) {
+                  collectGroupUsingSpans(list, docSet, docBase,
+                      docCounter, matchData, occurencesSum, occurencesN);
+                }
+              }
+              administrationOccurrences.clear();
+              maximumNumberOfDocuments = 0;
+              boundaryMinimumNumberOfDocuments = (int) Math
+                  .ceil(boundaryMinimumNumberOfDocuments * 1.2);
+              boundaryMaximumNumberOfDocuments = (int) Math
+                  .ceil(boundaryMaximumNumberOfDocuments * 1.2);
+            }
           }
-          group.dataCollector.closeNewList();
         }
       }
     }
+    return groupData;
   }
 
   /**
@@ -2065,11 +2432,11 @@ public class CodecCollector {
    *           Signals that an I/O exception has occurred.
    */
   private static int collectGroupUsingSpans(Map<GroupHit, Spans> list,
-      List<Integer> docSet, int docBase, int docCounter,
+      int[] docSet, int docBase, int docCounter,
       Map<Integer, List<Match>> matchData, Map<GroupHit, Long> occurencesSum,
       Map<GroupHit, Integer> occurencesN) throws IOException {
     int total = 0;
-    if (docCounter + 1 < docSet.size()) {
+    if (docCounter + 1 < docSet.length) {
       // initialize
       int nextDocCounter = docCounter + 1;
       long[] subSum = new long[list.size()];
@@ -2088,23 +2455,23 @@ public class CodecCollector {
         newNextDocs[i] = true;
         spansList[i] = list.get(hitList[i]);
         spansNextDoc[i] = spansList[i]
-            .advance(docSet.get(nextDocCounter) - docBase);
+            .advance(docSet[nextDocCounter] - docBase);
         nextDoc = (i == 0) ? spansNextDoc[i]
             : Math.min(nextDoc, spansNextDoc[i]);
       }
       // loop over future documents
       while (nextDoc < DocIdSetIterator.NO_MORE_DOCS) {
         // find matches for next document
-        while (nextDocCounter < docSet.size()
-            && docSet.get(nextDocCounter) < (nextDoc + docBase)) {
+        while (nextDocCounter < docSet.length
+            && docSet[nextDocCounter] < (nextDoc + docBase)) {
           nextDocCounter++;
         }
         // finish, if no more docs in set
-        if (nextDocCounter >= docSet.size()) {
+        if (nextDocCounter >= docSet.length) {
           break;
         }
         // go to the matches
-        if (docSet.get(nextDocCounter) == nextDoc + docBase) {
+        if (docSet[nextDocCounter] == nextDoc + docBase) {
           matchList = matchData.get(nextDoc + docBase);
           if (matchList != null && !matchList.isEmpty()) {
             // initialize
@@ -2229,13 +2596,13 @@ public class CodecCollector {
           newNextDocs[i] = true;
         }
         // advance spans
-        if (nextDocCounter < docSet.size()) {
+        if (nextDocCounter < docSet.length) {
           nextDoc = Spans.NO_MORE_DOCS;
           // advance spans
           for (int i = 0; i < hitList.length; i++) {
-            if (spansNextDoc[i] < (docSet.get(nextDocCounter) - docBase)) {
+            if (spansNextDoc[i] < (docSet[nextDocCounter] - docBase)) {
               spansNextDoc[i] = spansList[i]
-                  .advance(docSet.get(nextDocCounter) - docBase);
+                  .advance(docSet[nextDocCounter] - docBase);
             }
             if (spansNextDoc[i] < Spans.NO_MORE_DOCS) {
               nextDoc = (nextDoc == Spans.NO_MORE_DOCS) ? spansNextDoc[i]
@@ -2280,6 +2647,8 @@ public class CodecCollector {
    *          the doc list
    * @param uniqueKeyField
    *          the unique key field
+   * @param uniqueKeyDocValues
+   *          if the unique key can be read from doc values
    * @param searcher
    *          the searcher
    * @param t
@@ -2290,22 +2659,23 @@ public class CodecCollector {
    *           Signals that an I/O exception has occurred.
    */
   private static void createDocument(List<ComponentDocument> documentList,
-      List<Integer> docList, String uniqueKeyField, IndexSearcher searcher,
-      Terms t, LeafReaderContext lrc) throws IOException {
+      int[] docList, String uniqueKeyField, boolean uniqueKeyDocValues,
+      IndexSearcher searcher, Terms t, LeafReaderContext lrc)
+      throws IOException {
     if (documentList != null) {
       SortedSet<String> listStatsItems = CodecUtil.createStatsItems("sum");
       String listStatsType = CodecUtil.createStatsType(listStatsItems,
           CodecUtil.STATS_TYPE_SUM, null);
       for (ComponentDocument document : documentList) {
         // initialize
+        UniqueKeyReader uniqueKeyReader = new UniqueKeyReader(uniqueKeyField,
+            uniqueKeyDocValues, searcher, lrc);
         for (int docId : docList) {
           // get unique id
-          Document doc = searcher.doc(docId,
-              new HashSet<String>(Arrays.asList(uniqueKeyField)));
-          IndexableField indxfld = doc.getField(uniqueKeyField);
+          String uniqueKey = uniqueKeyReader.get(docId);
           // get other doc info
-          if (indxfld != null) {
-            document.uniqueKey.put(docId, indxfld.stringValue());
+          if (uniqueKey != null) {
+            document.uniqueKey.put(docId, uniqueKey);
             MtasDataCollector<?, ?> stats = DataCollector.getCollector(
                 DataCollector.COLLECTOR_TYPE_DATA, document.dataType,
                 document.statsType, document.statsItems, null, null, null, null,
@@ -2419,7 +2789,6 @@ public class CodecCollector {
               int termDocId;
               boolean acceptedTerm;
               while ((term = termsEnum.next()) != null) {
-                Iterator<Integer> docIterator = docList.iterator();
                 postingsEnum = termsEnum.postings(postingsEnum,
                     PostingsEnum.FREQS);
                 termDocId = -1;
@@ -2434,8 +2803,8 @@ public class CodecCollector {
                   }
                 }
                 if (acceptedTerm) {
-                  while (docIterator.hasNext()) {
-                    int segmentDocId = docIterator.next() - lrc.docBase;
+                  for (int docListId : docList) {
+                    int segmentDocId = docListId - lrc.docBase;
                     if (segmentDocId >= termDocId
                         && ((segmentDocId == termDocId)
                             || ((termDocId = postingsEnum
@@ -2506,32 +2875,38 @@ public class CodecCollector {
    *          the doc base
    * @param uniqueKeyField
    *          the unique key field
+   * @param uniqueKeyDocValues
+   *          if the unique key can be read from doc values
    * @param mtasCodecInfo
    *          the mtas codec info
    * @param searcher
    *          the searcher
+   * @param lrc
+   *          the lrc
    * @throws IOException
    *           Signals that an I/O exception has occurred.
    */
   private static void createKwic(List<ComponentKwic> kwicList,
       Map<MtasSpanQuery, Map<Integer, List<Match>>> spansMatchData,
-      List<Integer> docList, String field, int docBase, String uniqueKeyField,
-      CodecInfo mtasCodecInfo, IndexSearcher searcher) throws IOException {
+      int[] docList, String field, int docBase, String uniqueKeyField,
+      boolean uniqueKeyDocValues, CodecInfo mtasCodecInfo,
+      IndexSearcher searcher, LeafReaderContext lrc)
+      throws IOException {
     if (kwicList != null) {
       for (ComponentKwic kwic : kwicList) {
         Map<Integer, List<Match>> matchData = spansMatchData.get(kwic.query);
         List<Match> matchList;
         if (kwic.output.equals(ComponentKwic.KWIC_OUTPUT_HIT)) {
+          UniqueKeyReader uniqueKeyReader = new UniqueKeyReader(
+              uniqueKeyField, uniqueKeyDocValues, searcher, lrc);
           for (int docId : docList) {
             if (matchData != null
                 && (matchList = matchData.get(docId)) != null) {
               // get unique id
-              Document doc = searcher.doc(docId,
-                  new HashSet<String>(Arrays.asList(uniqueKeyField)));
-              IndexableField indxfld = doc.getField(uniqueKeyField);
+              String uniqueKey = uniqueKeyReader.get(docId);
               // get other doc info
-              if (indxfld != null) {
-                kwic.uniqueKey.put(docId, indxfld.stringValue());
+              if (uniqueKey != null) {
+                kwic.uniqueKey.put(docId, uniqueKey);
               }
               kwic.subTotal.put(docId, matchList.size());
               IndexDoc mDoc = mtasCodecInfo.getDoc(field, (docId - docBase));
@@ -2540,7 +2915,7 @@ public class CodecCollector {
                 kwic.maxPosition.put(docId, mDoc.maxPosition);
               }
               // kwiclist
-              List<KwicHit> kwicItemList = new ArrayList<>();
+              List<Match> windowMatchList = new ArrayList<>();
               int number = 0;
               for (Match m : matchList) {
                 if (kwic.number != null
@@ -2548,49 +2923,61 @@ public class CodecCollector {
                   break;
                 }
                 if (number >= kwic.start) {
-                  int startPosition = m.startPosition;
-                  int endPosition = m.endPosition - 1;
-                  List<MtasTreeHit<String>> terms = mtasCodecInfo
-                      .getPositionedTermsByPrefixesAndPositionRange(field,
-                          (docId - docBase), kwic.prefixes,
-                          Math.max(mDoc.minPosition, startPosition - kwic.left),
-                          Math.min(mDoc.maxPosition, endPosition + kwic.right));
-                  // construct hit
-                  Map<Integer, List<String>> kwicListHits = new HashMap<>();
-                  for (int position = Math.max(mDoc.minPosition,
-                      startPosition - kwic.left); position <= Math.min(
-                          mDoc.maxPosition,
-                          endPosition + kwic.right); position++) {
-                    kwicListHits.put(position, new ArrayList<String>());
-                  }
-                  List<String> termList;
-                  for (MtasTreeHit<String> term : terms) {
-                    for (int position = Math.max((startPosition - kwic.left),
-                        term.startPosition); position <= Math.min(
-                            (endPosition + kwic.right),
-                            term.endPosition); position++) {
-                      termList = kwicListHits.get(position);
-                      termList.add(term.data);
-                    }
-                  }
-                  kwicItemList.add(new KwicHit(m, kwicListHits));
+                  windowMatchList.add(m);
                 }
                 number++;
               }
+              // get terms for all windows at once
+              int[] windowStartPositions = new int[windowMatchList.size()];
+              int[] windowEndPositions = new int[windowMatchList.size()];
+              for (int i = 0; i < windowMatchList.size(); i++) {
+                Match m = windowMatchList.get(i);
+                windowStartPositions[i] = Math.max(mDoc.minPosition,
+                    m.startPosition - kwic.left);
+                windowEndPositions[i] = Math.min(mDoc.maxPosition,
+                    m.endPosition - 1 + kwic.right);
+              }
+              List<List<MtasTreeHit<String>>> windowTerms = mtasCodecInfo
+                  .getPositionedTermsByPrefixesAndPositionRanges(field,
+                      (docId - docBase), kwic.prefixes, windowStartPositions,
+                      windowEndPositions);
+              List<KwicHit> kwicItemList = new ArrayList<>();
+              for (int i = 0; i < windowMatchList.size(); i++) {
+                Match m = windowMatchList.get(i);
+                int startPosition = m.startPosition;
+                int endPosition = m.endPosition - 1;
+                // construct hit
+                Map<Integer, List<String>> kwicListHits = new HashMap<>();
+                for (int position = windowStartPositions[i];
+                    position <= windowEndPositions[i]; position++) {
+                  kwicListHits.put(position, new ArrayList<String>());
+                }
+                List<String> termList;
+                for (MtasTreeHit<String> term : windowTerms.get(i)) {
+                  for (int position = Math.max((startPosition - kwic.left),
+                      term.startPosition); position <= Math.min(
+                          (endPosition + kwic.right),
+                          term.endPosition); position++) {
+                    termList = kwicListHits.get(position);
+                    termList.add(term.data);
+                  }
+                }
+                kwicItemList.add(new KwicHit(m, kwicListHits));
+              }
               kwic.hits.put(docId, kwicItemList);
             }
           }
         } else if (kwic.output.equals(ComponentKwic.KWIC_OUTPUT_TOKEN)) {
+          UniqueKeyReader uniqueKeyReader = new UniqueKeyReader(
+              uniqueKeyField, uniqueKeyDocValues, searcher, lrc);
           for (int docId : docList) {
             if (matchData != null
                 && (matchList = matchData.get(docId)) != null) {
               // get unique id
-              Document doc = searcher.doc(docId,
-                  new HashSet<String>(Arrays.asList(uniqueKeyField)));
+              String uniqueKey = uniqueKeyReader.get(docId);
               // get other doc info
-              IndexableField indxfld = doc.getField(uniqueKeyField);
-              if (indxfld != null) {
-                kwic.uniqueKey.put(docId, indxfld.stringValue());
+              if (uniqueKey != null) {
+                kwic.uniqueKey.put(docId, uniqueKey);
               }
               kwic.subTotal.put(docId, matchList.size());
               IndexDoc mDoc = mtasCodecInfo.getDoc(field, (docId - docBase));
@@ -2649,7 +3036,7 @@ public class CodecCollector {
       MtasDataCollector<?, ?> dataCollector,
       Map<Integer, Integer> positionsData,
       Map<MtasSpanQuery, Map<Integer, Integer>> spansNumberData,
-      Map<String, SortedMap<String, int[]>> facetData, Integer[] docSet)
+      Map<String, SortedMap<String, int[]>> facetData, CodecDocSet docSet)
       throws IOException {
     for (MtasFunctionParserFunction function : cf.baseFunctionParserFunctions[level]) {
       if (function.needArgumentsNumber() > cf.spanQueries.length) {
@@ -2690,8 +3077,8 @@ public class CodecCollector {
           .equals(DataCollector.COLLECTOR_TYPE_LIST)) {
         dataCollector.setWithTotal();
         // only if documents and facets
-        if (docSet.length > 0 && list.size() > 0) {
-          HashMap<String, Integer[]> docLists = new HashMap<>();
+        if (!docSet.isEmpty() && list.size() > 0) {
+          HashMap<String, CodecDocSet> docLists = new HashMap<>();
           HashMap<String, String> groupedKeys = new HashMap<>();
           boolean documentsInFacets = false;
           // compute intersections
@@ -2702,14 +3089,14 @@ public class CodecCollector {
                   cf.baseRangeSizes[level], cf.baseRangeBases[level]));
             }
             // intersect docSet with docList
-            Integer[] docList = intersectedDocList(entry.getValue(), docSet);
-            if (docList != null && docList.length > 0) {
+            CodecDocSet docList = docSet.intersect(entry.getValue());
+            if (!docList.isEmpty()) {
               documentsInFacets = true;
             }
             // update docLists
             if (docLists.containsKey(groupedKeys.get(entry.getKey()))) {
-              docLists.put(groupedKeys.get(entry.getKey()), mergeDocLists(
-                  docLists.get(groupedKeys.get(entry.getKey())), docList));
+              docLists.put(groupedKeys.get(entry.getKey()),
+                  docLists.get(groupedKeys.get(entry.getKey())).union(docList));
             } else {
               docLists.put(groupedKeys.get(entry.getKey()), docList);
             }
@@ -2717,7 +3104,7 @@ public class CodecCollector {
           // compute stats for each key
           if (documentsInFacets) {
             Map<Integer, long[]> args = computeArguments(spansNumberData,
-                cf.spanQueries, docSet);
+                cf.spanQueries, docSet.docs());
             if (cf.baseDataTypes[level].equals(CodecUtil.DATA_TYPE_LONG)) {
               // check functions
               boolean applySumRule = false;
@@ -2741,16 +3128,16 @@ public class CodecCollector {
               if (applySumRule) {
                 for (String key : new LinkedHashSet<String>(
                     groupedKeys.values())) {
-                  if (docLists.get(key).length > 0) {
+                  if (!docLists.get(key).isEmpty()) {
                     // initialise
-                    Integer[] subDocSet = docLists.get(key);
+                    CodecDocSet subDocSet = docLists.get(key);
                     int length = cf.baseParsers[level].needArgumentsNumber();
                     long[] valueSum = new long[length];
                     long valuePositions = 0;
                     // collect
-                    if (subDocSet.length > 0) {
+                    if (!subDocSet.isEmpty()) {
                       long[] tmpArgs;
-                      for (int docId : subDocSet) {
+                      for (int docId : subDocSet.docs()) {
                         tmpArgs = args.get(docId);
                         if (positionsData != null
                             && positionsData.containsKey(docId)
@@ -2769,7 +3156,7 @@ public class CodecCollector {
                         value = cf.baseParsers[level].getValueLong(valueSum,
                             valuePositions);
                         subDataCollector = dataCollector.add(key, value,
-                            subDocSet.length);
+                            subDocSet.size());
                       } catch (IOException e) {
                         log.debug(e);
                         dataCollector.error(key, e.getMessage());
@@ -2787,7 +3174,7 @@ public class CodecCollector {
                               long valueLong = function.parserFunction
                                   .getValueLong(valueSum, valuePositions);
                               function.dataCollector.add(key, valueLong,
-                                  subDocSet.length);
+                                  subDocSet.size());
                             } catch (IOException e) {
                               log.debug(e);
                               function.dataCollector.error(key, e.getMessage());
@@ -2798,7 +3185,7 @@ public class CodecCollector {
                               double valueDouble = function.parserFunction
                                   .getValueDouble(valueSum, valuePositions);
                               function.dataCollector.add(key, valueDouble,
-                                  subDocSet.length);
+                                  subDocSet.size());
                             } catch (IOException e) {
                               log.debug(e);
                               function.dataCollector.error(key, e.getMessage());
@@ -2817,11 +3204,11 @@ public class CodecCollector {
               } else {
                 for (String key : new LinkedHashSet<String>(
                     groupedKeys.values())) {
-                  if (docLists.get(key).length > 0) {
+                  if (!docLists.get(key).isEmpty()) {
                     // initialise
-                    Integer[] subDocSet = docLists.get(key);
+                    CodecDocSet subDocSet = docLists.get(key);
                     // collect
-                    if (subDocSet.length > 0 && cf.baseDataTypes[level]
+                    if (!subDocSet.isEmpty() && cf.baseDataTypes[level]
                         .equals(CodecUtil.DATA_TYPE_LONG)) {
                       // check for functions
                       long[][] functionValuesLong = null;
@@ -2837,15 +3224,15 @@ public class CodecCollector {
                         functionValuesDouble = new double[functionList.length][];
                         functionNumber = new int[functionList.length];
                         for (int i = 0; i < functionList.length; i++) {
-                          functionValuesLong[i] = new long[subDocSet.length];
-                          functionValuesDouble[i] = new double[subDocSet.length];
+                          functionValuesLong[i] = new long[subDocSet.size()];
+                          functionValuesDouble[i] = new double[subDocSet.size()];
                         }
                       }
                       // check main
                       int number = 0;
-                      Integer[] restrictedSubDocSet = new Integer[subDocSet.length];
-                      long[] values = new long[subDocSet.length];
-                      for (int docId : subDocSet) {
+                      int[] restrictedSubDocSet = new int[subDocSet.size()];
+                      long[] values = new long[subDocSet.size()];
+                      for (int docId : subDocSet.docs()) {
                         long[] tmpArgs = args.get(docId);
                         int tmpPositions = (positionsData == null) ? 0
                             : (positionsData.get(docId) == null ? 0
@@ -2910,8 +3297,8 @@ public class CodecCollector {
                         }
                         if (subDataCollector != null) {
                           createFacetBase(cf, (level + 1), subDataCollector,
-                              positionsData, spansNumberData, facetData, Arrays
-                                  .copyOfRange(restrictedSubDocSet, 0, number));
+                              positionsData, spansNumberData, facetData,
+                              CodecDocSet.create(restrictedSubDocSet, number));
                         }
                       }
                     }
@@ -2991,44 +3378,6 @@ public class CodecCollector {
     }
   }
 
-  /**
-   * Merge doc lists.
-   *
-   * @param a
-   *          the a
-   * @param b
-   *          the b
-   * @return the integer[]
-   */
-  private static Integer[] mergeDocLists(Integer[] a, Integer[] b) {
-    Integer[] answer = new Integer[a.length + b.length];
-    int i = 0;
-    int j = 0;
-    int k = 0;
-    Integer tmp;
-    while (i < a.length && j < b.length) {
-      tmp = a[i] < b[j] ? a[i++] : b[j++];
-      for (; i < a.length && a[i].equals(tmp); i++)
-        ;
-      for (; j < b.length && b[j].equals(tmp); j++)
-        ;
-      answer[k++] = tmp;
-    }
-    while (i < a.length) {
-      tmp = a[i++];
-      for (; i < a.length && a[i].equals(tmp); i++)
-        ;
-      answer[k++] = tmp;
-    }
-    while (j < b.length) {
-      tmp = b[j++];
-      for (; j < b.length && b[j].equals(tmp); j++)
-        ;
-      answer[k++] = tmp;
-    }
-    return Arrays.copyOf(answer, k);
-  }
-
   /**
    * Creates the facet.
    *
@@ -3048,15 +3397,15 @@ public class CodecCollector {
   private static void createFacet(List<ComponentFacet> facetList,
       Map<Integer, Integer> positionsData,
       Map<MtasSpanQuery, Map<Integer, Integer>> spansNumberData,
-      Map<String, SortedMap<String, int[]>> facetData, List<Integer> docSet)
+      Map<String, SortedMap<String, int[]>> facetData, int[] docSet)
       throws IOException {
 
     if (facetList != null) {
       for (ComponentFacet cf : facetList) {
         if (cf.baseFields.length > 0) {
           createFacetBase(cf, 0, cf.dataCollector, positionsData,
-              spansNumberData, facetData,
-              docSet.toArray(new Integer[docSet.size()]));
+              spansNumberData, facetData, CodecDocSet.create(docSet,
+                  docSet.length));
         }
       }
     }
@@ -3077,13 +3426,16 @@ public class CodecCollector {
    *          the r
    * @param lrc
    *          the lrc
+   * @param executor
+   *          the executor, or null for sequential computation
    * @throws IOException
    *           Signals that an I/O exception has occurred.
    */
   private static void createTermvectorFull(
       List<ComponentTermVector> termVectorList,
-      Map<Integer, Integer> positionsData, List<Integer> docSet, Terms t,
-      LeafReader r, LeafReaderContext lrc) throws IOException {
+      Map<Integer, Integer> positionsData, int[] docSet, Terms t,
+      LeafReader r, LeafReaderContext lrc, ExecutorService executor)
+      throws IOException {
     if (t != null) {
       BytesRef term;
       TermsEnum termsEnum;
@@ -3169,10 +3521,15 @@ public class CodecCollector {
                 }
               }
               // only if documents
-              if (!docSet.isEmpty()) {
+              if (docSet.length > 0) {
                 int termDocId;
                 boolean acceptedTerm;
                 String key;
+                TermvectorPartitionedNumbers partitionedNumbers = createTermvectorPartitionedNumbers(
+                    executor, t, compiledAutomaton,
+                    createTermvectorTermFilter(termVector,
+                        ignoreByteRunAutomatonList, null, docSet.length),
+                    doBasic, !doBasic, docSet, r, lrc, positionsData);
                 // loop over terms
                 while ((term = termsEnum.next()) != null) {
                   if (validateTermWithStartValue(term, termVector)
@@ -3190,9 +3547,13 @@ public class CodecCollector {
                     }
                     if (acceptedTerm) {
                       if (doBasic) {
-                        // compute numbers;
-                        TermvectorNumberBasic numberBasic = computeTermvectorNumberBasic(
-                            docSet, termDocId, termsEnum, r, lrc, postingsEnum);
+                        // compute numbers, unless already done
+                        TermvectorNumberBasic numberBasic = partitionedNumbers == null
+                            ? null : partitionedNumbers.getNumberBasic(term);
+                        if (numberBasic == null) {
+                          numberBasic = computeTermvectorNumberBasic(docSet,
+                              termDocId, termsEnum, r, lrc, postingsEnum);
+                        }
                         // register
                         if (numberBasic.docNumber > 0) {
                           long valueLong = 0;
@@ -3227,9 +3588,13 @@ public class CodecCollector {
                           }
                         }
                       } else {
-                        TermvectorNumberFull numberFull = computeTermvectorNumberFull(
-                            docSet, termDocId, termsEnum, lrc, postingsEnum,
-                            positionsData);
+                        TermvectorNumberFull numberFull = partitionedNumbers == null
+                            ? null : partitionedNumbers.getNumberFull(term);
+                        if (numberFull == null) {
+                          numberFull = computeTermvectorNumberFull(docSet,
+                              termDocId, termsEnum, lrc, postingsEnum,
+                              positionsData);
+                        }
                         if (numberFull.docNumber > 0) {
                           long[] valuesLong = new long[numberFull.docNumber];
                           key = MtasToken.getPostfixFromValue(term);
@@ -3321,13 +3686,16 @@ public class CodecCollector {
    *          the r
    * @param lrc
    *          the lrc
+   * @param executor
+   *          the executor, or null for sequential computation
    * @throws IOException
    *           Signals that an I/O exception has occurred.
    */
   private static void createTermvectorFirstRound(
       List<ComponentTermVector> termVectorList,
-      Map<Integer, Integer> positionsData, List<Integer> docSet, Terms t,
-      LeafReader r, LeafReaderContext lrc) throws IOException {
+      Map<Integer, Integer> positionsData, int[] docSet, Terms t,
+      LeafReader r, LeafReaderContext lrc, ExecutorService executor)
+      throws IOException {
     if (t != null) {
       BytesRef term;
       TermsEnum termsEnum;
@@ -3378,7 +3746,7 @@ public class CodecCollector {
             }
           }
           // only if documents
-          if (!docSet.isEmpty()) {
+          if (docSet.length > 0) {
             int termDocId;
             int termNumberMaximum = termVector.number;
             HashMap<BytesRef, RegisterStatus> computeFullList = new HashMap<>();
@@ -3394,9 +3762,24 @@ public class CodecCollector {
 
               boolean continueAfterPreliminaryCheck;
               boolean preliminaryCheck = false;
-              if (r.getLiveDocs() == null && (docSet.size() != r.numDocs())) {
+              if (r.getLiveDocs() != null || (docSet.length != r.numDocs())) {
                 preliminaryCheck = true;
               }
+              TermvectorPruning pruning = preliminaryCheck
+                  ? createTermvectorPruning(termVector, t, compiledAutomaton,
+                      ignoreByteRunAutomatonList, docSet, r, lrc,
+                      segmentNumber)
+                  : null;
+              // numbers are only computed from the postings with a
+              // preliminary check, otherwise term statistics are used
+              TermvectorPartitionedNumbers partitionedNumbers = preliminaryCheck
+                  ? createTermvectorPartitionedNumbers(executor, t,
+                      compiledAutomaton,
+                      createTermvectorTermFilter(termVector,
+                          ignoreByteRunAutomatonList, pruning,
+                          docSet.length),
+                      true, false, docSet, r, lrc, positionsData)
+                  : null;
               // loop over terms
               boolean acceptedTerm;
               while ((term = termsEnum.next()) != null) {
@@ -3418,12 +3801,15 @@ public class CodecCollector {
                     mutableKey[0] = null;
                     if (preliminaryCheck) {
                       try {
-                        TermvectorNumberBasic preliminaryNumberBasic = computeTermvectorNumberBasic(
-                            termsEnum, r);
+                        TermvectorNumberBasic preliminaryNumberBasic = computeTermvectorNumberUpperBound(
+                            termsEnum, docSet.length);
                         if (preliminaryNumberBasic.docNumber > 0) {
                           continueAfterPreliminaryCheck = preliminaryRegisterValue(
                               term, termVector, preliminaryNumberBasic,
-                              termNumberMaximum, segmentNumber, mutableKey);
+                              termNumberMaximum, segmentNumber,
+                              pruning == null ? Long.MIN_VALUE
+                                  : pruning.boundary,
+                              mutableKey);
                         } else {
                           continueAfterPreliminaryCheck = false;
                         }
@@ -3433,9 +3819,16 @@ public class CodecCollector {
                       }
                     }
                     if (continueAfterPreliminaryCheck) {
-                      // compute numbers;
-                      TermvectorNumberBasic numberBasic = computeTermvectorNumberBasic(
-                          docSet, termDocId, termsEnum, r, lrc, postingsEnum);
+                      // compute numbers, unless already done
+                      TermvectorNumberBasic numberBasic = pruning == null
+                          ? null : pruning.numbers.get(term);
+                      if (numberBasic == null && partitionedNumbers != null) {
+                        numberBasic = partitionedNumbers.getNumberBasic(term);
+                      }
+                      if (numberBasic == null) {
+                        numberBasic = computeTermvectorNumberBasic(docSet,
+                            termDocId, termsEnum, r, lrc, postingsEnum);
+                      }
                       // register
                       if (numberBasic.docNumber > 0) {
                         termCounter++;
@@ -3521,6 +3914,238 @@ public class CodecCollector {
     }
   }
 
+  /**
+   * Creates the pruning for a top-k termvector sorted descending on sum or n.
+   * The terms with the highest upper bound, based on
+   * {@link TermsEnum#totalTermFreq()} and {@link TermsEnum#docFreq()}, are
+   * computed first, and the k-th value of these terms gives a lower bound for
+   * the last value of the top of this segment. Terms with a smaller upper bound
+   * can't enter the top and are only computed if they are needed as key
+   * registered by previous segments, so the result is still exact.
+   *
+   * @param termVector
+   *          the term vector
+   * @param t
+   *          the t
+   * @param compiledAutomaton
+   *          the compiled automaton
+   * @param ignoreByteRunAutomatonList
+   *          the ignore byte run automaton list
+   * @param docSet
+   *          the doc set
+   * @param r
+   *          the r
+   * @param lrc
+   *          the lrc
+   * @param segmentNumber
+   *          the segment number
+   * @return the termvector pruning, or null if not applicable
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  private static TermvectorPruning createTermvectorPruning(
+      ComponentTermVector termVector, Terms t,
+      CompiledAutomaton compiledAutomaton,
+      List<ByteRunAutomaton> ignoreByteRunAutomatonList, int[] docSet,
+      LeafReader r, LeafReaderContext lrc, int segmentNumber)
+      throws IOException {
+    boolean sortOnN = termVector.subComponentFunction.sortType
+        .equals(CodecUtil.STATS_TYPE_N);
+    // upper bound for sum only valid for the default function
+    boolean sortOnSum = termVector.subComponentFunction.sortType
+        .equals(CodecUtil.STATS_TYPE_SUM)
+        && termVector.subComponentFunction.parserFunction instanceof MtasFunctionParserFunctionDefault;
+    if (!termVector.subComponentFunction.sortDirection
+        .equals(CodecUtil.SORT_DESC) || !(sortOnN || sortOnSum)
+        || termVector.boundaryRegistration || termVector.number <= 0
+        || termVector.number > TERMVECTOR_PRUNING_MAXIMUM_NUMBER) {
+      return null;
+    }
+    int number = termVector.number;
+    int candidatesMaximum = TERMVECTOR_PRUNING_CANDIDATES_FACTOR * number;
+    // keep candidates with highest upper bound
+    PriorityQueue<TermvectorCandidate> candidates = new PriorityQueue<>(
+        candidatesMaximum);
+    TermsEnum termsEnum = t.intersect(compiledAutomaton, null);
+    BytesRef term;
+    int numberOfTerms = 0;
+    while ((term = termsEnum.next()) != null) {
+      if (validateTermWithStartValue(term, termVector)
+          && validateTermWithDistance(term, termVector)
+          && !ignoreTerm(term, ignoreByteRunAutomatonList)) {
+        long upperBound;
+        try {
+          TermvectorNumberBasic numberUpperBound = computeTermvectorNumberUpperBound(
+              termsEnum, docSet.length);
+          upperBound = sortOnN ? numberUpperBound.docNumber
+              : termVector.subComponentFunction.parserFunction
+                  .getValueLong(numberUpperBound.valueSum, 0);
+        } catch (IOException e) {
+          log.debug(e);
+          return null;
+        }
+        numberOfTerms++;
+        if (candidates.size() < candidatesMaximum) {
+          candidates.add(new TermvectorCandidate(BytesRef.deepCopyOf(term),
+              termsEnum.termState(), upperBound));
+        } else if (upperBound > candidates.peek().upperBound) {
+          candidates.poll();
+          candidates.add(new TermvectorCandidate(BytesRef.deepCopyOf(term),
+              termsEnum.termState(), upperBound));
+        }
+      }
+    }
+    if (numberOfTerms <= number) {
+      return null;
+    }
+    // compute candidates in order of descending upper bound
+    TermvectorCandidate[] list = candidates
+        .toArray(new TermvectorCandidate[candidates.size()]);
+    Arrays.sort(list, Collections.reverseOrder());
+    TermvectorPruning pruning = new TermvectorPruning();
+    PriorityQueue<Long> top = new PriorityQueue<>(number);
+    TermsEnum candidatesEnum = t.iterator();
+    PostingsEnum postingsEnum = null;
+    for (TermvectorCandidate candidate : list) {
+      if (top.size() == number && top.peek() >= candidate.upperBound) {
+        break;
+      }
+      candidatesEnum.seekExact(candidate.term, candidate.termState);
+      TermvectorNumberBasic numberBasic = computeTermvectorNumberBasic(docSet,
+          -1, candidatesEnum, r, lrc, postingsEnum);
+      pruning.numbers.put(candidate.term, numberBasic);
+      if (numberBasic.docNumber > 0) {
+        long value = sortOnN ? numberBasic.docNumber
+            : termVector.subComponentFunction.parserFunction
+                .getValueLong(numberBasic.valueSum, 0);
+        if (top.size() < number) {
+          top.add(value);
+        } else if (value > top.peek()) {
+          top.poll();
+          top.add(value);
+        }
+      }
+    }
+    if (top.size() == number) {
+      pruning.boundary = Math.floorDiv(top.peek(), segmentNumber);
+    }
+    return pruning;
+  }
+
+  /**
+   * Creates the partitioned numbers for the terms of a termvector, if an
+   * executor is available.
+   *
+   * @param executor
+   *          the executor, possibly null
+   * @param t
+   *          the t
+   * @param compiledAutomaton
+   *          the compiled automaton
+   * @param filter
+   *          the filter, or null to compute all terms
+   * @param computeBasic
+   *          compute the basic numbers
+   * @param computeFull
+   *          compute the full numbers
+   * @param docSet
+   *          the doc set
+   * @param r
+   *          the r
+   * @param lrc
+   *          the lrc
+   * @param positionsData
+   *          the positions data
+   * @return the termvector partitioned numbers, or null
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  private static TermvectorPartitionedNumbers createTermvectorPartitionedNumbers(
+      ExecutorService executor, Terms t, CompiledAutomaton compiledAutomaton,
+      TermvectorTermFilter filter, boolean computeBasic, boolean computeFull,
+      int[] docSet, LeafReader r, LeafReaderContext lrc,
+      Map<Integer, Integer> positionsData) throws IOException {
+    if (executor == null || docSet.length == 0) {
+      return null;
+    } else {
+      return new TermvectorPartitionedNumbers(executor, t,
+          t.intersect(compiledAutomaton, null), filter, computeBasic,
+          computeFull, docSet, r, lrc, positionsData);
+    }
+  }
+
+  /**
+   * Creates the filter for terms to be computed ahead by
+   * {@link TermvectorPartitionedNumbers}. The start value is not checked,
+   * because validation of the start value is not independent of the order in
+   * which terms are validated. With pruning, terms that will be rejected by
+   * the preliminary check are skipped.
+   *
+   * @param termVector
+   *          the term vector
+   * @param ignoreByteRunAutomatonList
+   *          the ignore byte run automaton list
+   * @param pruning
+   *          the pruning, possibly null
+   * @param docSetSize
+   *          the doc set size
+   * @return the termvector term filter
+   */
+  private static TermvectorTermFilter createTermvectorTermFilter(
+      ComponentTermVector termVector,
+      List<ByteRunAutomaton> ignoreByteRunAutomatonList,
+      TermvectorPruning pruning, int docSetSize) {
+    return (term, termsEnum) -> {
+      if (!validateTermWithDistance(term, termVector)
+          || ignoreTerm(term, ignoreByteRunAutomatonList)) {
+        return false;
+      } else if (pruning == null) {
+        return true;
+      }
+      try {
+        TermvectorNumberBasic number = computeTermvectorNumberUpperBound(
+            termsEnum, docSetSize);
+        if (number.docNumber == 0) {
+          return false;
+        }
+        long sortValue = termVector.subComponentFunction.sortType
+            .equals(CodecUtil.STATS_TYPE_N) ? number.docNumber
+                : termVector.subComponentFunction.parserFunction
+                    .getValueLong(number.valueSum, 0);
+        if (sortValue >= pruning.boundary) {
+          return true;
+        }
+      } catch (IOException e) {
+        log.debug(e);
+        return true;
+      }
+      MtasDataCollector<?, ?> dataCollector = termVector.subComponentFunction.dataCollector;
+      return dataCollector.hasSegmentKeys() && dataCollector
+          .isSegmentKey(MtasToken.getPostfixFromValue(term));
+    };
+  }
+
+  /**
+   * Checks if the term matches one of the ignore automata.
+   *
+   * @param term
+   *          the term
+   * @param ignoreByteRunAutomatonList
+   *          the ignore byte run automaton list
+   * @return true, if the term should be ignored
+   */
+  private static boolean ignoreTerm(BytesRef term,
+      List<ByteRunAutomaton> ignoreByteRunAutomatonList) {
+    if (ignoreByteRunAutomatonList != null) {
+      for (ByteRunAutomaton ignoreByteRunAutomaton : ignoreByteRunAutomatonList) {
+        if (ignoreByteRunAutomaton.run(term.bytes, term.offset, term.length)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   /**
    * Creates the termvector second round.
    *
@@ -3536,13 +4161,18 @@ public class CodecCollector {
    *          the r
    * @param lrc
    *          the lrc
+   * @param status
+   *          the status
+   * @param executor
+   *          the executor, or null for sequential computation
    * @throws IOException
    *           Signals that an I/O exception has occurred.
    */
   private static void createTermvectorSecondRound(
       List<ComponentTermVector> termVectorList,
-      Map<Integer, Integer> positionsData, List<Integer> docSet, Terms t,
-      LeafReader r, LeafReaderContext lrc, Status status) throws IOException {
+      Map<Integer, Integer> positionsData, int[] docSet, Terms t,
+      LeafReader r, LeafReaderContext lrc, Status status,
+      ExecutorService executor) throws IOException {
     if (t != null) {
       BytesRef term;
       TermsEnum termsEnum;
@@ -3579,22 +4209,33 @@ public class CodecCollector {
                         segmentName, segmentNumber, null);
                   }
                 }
-                if (!docSet.isEmpty()) {
+                if (docSet.length > 0) {
                   int termDocId;
+                  TermvectorPartitionedNumbers partitionedNumbers = createTermvectorPartitionedNumbers(
+                      executor, t, compiledAutomaton, null, true, true, docSet,
+                      r, lrc, positionsData);
                   while ((term = termsEnum.next()) != null) {
                     if (validateTermWithStartValue(term, termVector)) {
                       termDocId = -1;
                       mutableKey[0] = null;
-                      // compute numbers;
-                      TermvectorNumberBasic numberBasic = computeTermvectorNumberBasic(
-                          docSet, termDocId, termsEnum, r, lrc, postingsEnum);
+                      // compute numbers, unless already done
+                      TermvectorNumberBasic numberBasic = partitionedNumbers == null
+                          ? null : partitionedNumbers.getNumberBasic(term);
+                      if (numberBasic == null) {
+                        numberBasic = computeTermvectorNumberBasic(docSet,
+                            termDocId, termsEnum, r, lrc, postingsEnum);
+                      }
                       if (numberBasic.docNumber > 0) {
                         registerStatus = registerValue(term, termVector,
                             numberBasic, 0, segmentNumber, true, mutableKey);
                         if (registerStatus != null) {
-                          TermvectorNumberFull numberFull = computeTermvectorNumberFull(
-                              docSet, termDocId, termsEnum, lrc, postingsEnum,
-                              positionsData);
+                          TermvectorNumberFull numberFull = partitionedNumbers == null
+                              ? null : partitionedNumbers.getNumberFull(term);
+                          if (numberFull == null) {
+                            numberFull = computeTermvectorNumberFull(docSet,
+                                termDocId, termsEnum, lrc, postingsEnum,
+                                positionsData);
+                          }
                           if (numberFull.docNumber > 0) {
                             registerValue(term, termVector, numberFull,
                                 mutableKey);
@@ -3790,14 +4431,467 @@ public class CodecCollector {
     /**
      * Instantiates a new termvector number full.
      *
-     * @param maxSize
-     *          the max size
+     * @param initialSize
+     *          the initial size
      */
-    TermvectorNumberFull(int maxSize) {
-      args = new long[maxSize];
-      positions = new int[maxSize];
+    TermvectorNumberFull(int initialSize) {
+      args = new long[initialSize];
+      positions = new int[initialSize];
       docNumber = 0;
     }
+
+    /**
+     * Adds the numbers for a document, growing the arrays if necessary.
+     *
+     * @param arg
+     *          the arg
+     * @param position
+     *          the position
+     */
+    void add(long arg, int position) {
+      if (docNumber == args.length) {
+        args = ArrayUtil.grow(args, docNumber + 1);
+        positions = ArrayUtil.grow(positions, docNumber + 1);
+      }
+      args[docNumber] = arg;
+      positions[docNumber] = position;
+      docNumber++;
+    }
+  }
+
+  /**
+   * The Class TermvectorCandidate.
+   */
+  private static class TermvectorCandidate
+      implements Comparable<TermvectorCandidate> {
+
+    /** The term. */
+    public BytesRef term;
+
+    /** The term state. */
+    public TermState termState;
+
+    /** The upper bound. */
+    public long upperBound;
+
+    /**
+     * Instantiates a new termvector candidate.
+     *
+     * @param term
+     *          the term
+     * @param termState
+     *          the term state
+     * @param upperBound
+     *          the upper bound
+     */
+    TermvectorCandidate(BytesRef term, TermState termState, long upperBound) {
+      this.term = term;
+      this.termState = termState;
+      this.upperBound = upperBound;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Comparable#compareTo(java.lang.Object)
+     */
+    @Override
+    public int compareTo(TermvectorCandidate o) {
+      return Long.compare(upperBound, o.upperBound);
+    }
+  }
+
+  /**
+   * The Class TermvectorPruning.
+   */
+  private static class TermvectorPruning {
+
+    /** The minimum sort value to enter the top of the segment. */
+    public long boundary;
+
+    /** The numbers already computed. */
+    public Map<BytesRef, TermvectorNumberBasic> numbers;
+
+    /**
+     * Instantiates a new termvector pruning.
+     */
+    TermvectorPruning() {
+      boundary = Long.MIN_VALUE;
+      numbers = new HashMap<>();
+    }
+  }
+
+  /**
+   * The Interface TermvectorTermFilter.
+   */
+  @FunctionalInterface
+  private interface TermvectorTermFilter {
+
+    /**
+     * Accept.
+     *
+     * @param term
+     *          the term
+     * @param termsEnum
+     *          the terms enum, positioned on the term
+     * @return true, if the numbers for the term should be computed
+     * @throws IOException
+     *           Signals that an I/O exception has occurred.
+     */
+    boolean accept(BytesRef term, TermsEnum termsEnum) throws IOException;
+  }
+
+  /**
+   * The Class TermvectorPartitionedNumbers. Computes the numbers for the
+   * terms of a termvector within a single segment ahead of the sequential
+   * registration. Terms are read in batches from a separate terms enum, each
+   * batch is split into consecutive ranges of terms, and the ranges are
+   * computed concurrently, each with its own terms enum and postings.
+   * Registration in the collectors remains sequential and in term order, so
+   * the result doesn't depend on the partitioning. If the numbers for a term
+   * are not available, e.g. because the term was rejected by the filter, null
+   * is returned and the caller should compute them.
+   */
+  private static class TermvectorPartitionedNumbers {
+
+    /** The executor. */
+    private final ExecutorService executor;
+
+    /** The terms. */
+    private final Terms t;
+
+    /** The terms enum, ahead of the terms enum used for registration. */
+    private final TermsEnum termsEnum;
+
+    /** The filter, possibly null. */
+    private final TermvectorTermFilter filter;
+
+    /** The compute basic. */
+    private final boolean computeBasic;
+
+    /** The compute full. */
+    private final boolean computeFull;
+
+    /** The doc set. */
+    private final int[] docSet;
+
+    /** The r. */
+    private final LeafReader r;
+
+    /** The lrc. */
+    private final LeafReaderContext lrc;
+
+    /** The positions data. */
+    private final Map<Integer, Integer> positionsData;
+
+    /** The number of terms in a range. */
+    private final int partitionSize;
+
+    /** The basic numbers for the current batch. */
+    private final Map<BytesRef, TermvectorNumberBasic> numbersBasic;
+
+    /** The full numbers for the current batch. */
+    private final Map<BytesRef, TermvectorNumberFull> numbersFull;
+
+    /** The last term read, null if none. */
+    private BytesRefBuilder lastTerm;
+
+    /** The finished. */
+    private boolean finished;
+
+    /**
+     * Instantiates new termvector partitioned numbers.
+     *
+     * @param executor
+     *          the executor
+     * @param t
+     *          the t
+     * @param termsEnum
+     *          the terms enum
+     * @param filter
+     *          the filter
+     * @param computeBasic
+     *          the compute basic
+     * @param computeFull
+     *          the compute full
+     * @param docSet
+     *          the doc set
+     * @param r
+     *          the r
+     * @param lrc
+     *          the lrc
+     * @param positionsData
+     *          the positions data
+     */
+    TermvectorPartitionedNumbers(ExecutorService executor, Terms t,
+        TermsEnum termsEnum, TermvectorTermFilter filter,
+        boolean computeBasic, boolean computeFull, int[] docSet, LeafReader r,
+        LeafReaderContext lrc, Map<Integer, Integer> positionsData) {
+      this.executor = executor;
+      this.t = t;
+      this.termsEnum = termsEnum;
+      this.filter = filter;
+      this.computeBasic = computeBasic;
+      this.computeFull = computeFull;
+      this.docSet = docSet;
+      this.r = r;
+      this.lrc = lrc;
+      this.positionsData = positionsData;
+      partitionSize = termvectorPartitionSize;
+      numbersBasic = new HashMap<>();
+      numbersFull = new HashMap<>();
+      lastTerm = null;
+      finished = false;
+    }
+
+    /**
+     * Gets the number basic. Terms should be requested in increasing order.
+     *
+     * @param term
+     *          the term
+     * @return the number basic, or null if not computed
+     * @throws IOException
+     *           Signals that an I/O exception has occurred.
+     */
+    TermvectorNumberBasic getNumberBasic(BytesRef term) throws IOException {
+      moveTo(term);
+      return numbersBasic.remove(term);
+    }
+
+    /**
+     * Gets the number full. Terms should be requested in increasing order.
+     *
+     * @param term
+     *          the term
+     * @return the number full, or null if not computed
+     * @throws IOException
+     *           Signals that an I/O exception has occurred.
+     */
+    TermvectorNumberFull getNumberFull(BytesRef term) throws IOException {
+      moveTo(term);
+      return numbersFull.remove(term);
+    }
+
+    /**
+     * Compute batches until the term is covered.
+     *
+     * @param term
+     *          the term
+     * @throws IOException
+     *           Signals that an I/O exception has occurred.
+     */
+    private void moveTo(BytesRef term) throws IOException {
+      while (!finished
+          && (lastTerm == null || lastTerm.get().compareTo(term) < 0)) {
+        nextBatch();
+      }
+    }
+
+    /**
+     * Read and compute the next batch of terms.
+     *
+     * @throws IOException
+     *           Signals that an I/O exception has occurred.
+     */
+    private void nextBatch() throws IOException {
+      numbersBasic.clear();
+      numbersFull.clear();
+      int maximum = TERMVECTOR_PARTITION_NUMBER * partitionSize;
+      BytesRef[] terms = new BytesRef[maximum];
+      TermState[] termStates = new TermState[maximum];
+      int number = 0;
+      BytesRef term;
+      while (number < maximum) {
+        if ((term = termsEnum.next()) == null) {
+          finished = true;
+          break;
+        }
+        if (filter == null || filter.accept(term, termsEnum)) {
+          terms[number] = BytesRef.deepCopyOf(term);
+          termStates[number] = termsEnum.termState();
+          number++;
+        }
+        if (lastTerm == null) {
+          lastTerm = new BytesRefBuilder();
+        }
+        lastTerm.copyBytes(term);
+      }
+      TermvectorNumberBasic[] resultBasic = new TermvectorNumberBasic[number];
+      TermvectorNumberFull[] resultFull = new TermvectorNumberFull[number];
+      // compute first range on this thread, other ranges concurrently
+      List<Future<Void>> futures = new ArrayList<>();
+      try {
+        for (int start = partitionSize; start < number;
+            start += partitionSize) {
+          final int rangeStart = start;
+          final int rangeEnd = Math.min(number, start + partitionSize);
+          futures.add(executor.submit(() -> {
+            computeRange(terms, termStates, rangeStart, rangeEnd, resultBasic,
+                resultFull);
+            return null;
+          }));
+        }
+        computeRange(terms, termStates, 0,
+            Math.min(number, partitionSize), resultBasic,
+            resultFull);
+        for (Future<Void> future : futures) {
+          getSegmentResult(future);
+        }
+      } finally {
+        for (Future<Void> future : futures) {
+          future.cancel(true);
+        }
+      }
+      for (int i = 0; i < number; i++) {
+        if (resultBasic[i] != null) {
+          numbersBasic.put(terms[i], resultBasic[i]);
+        }
+        if (resultFull[i] != null) {
+          numbersFull.put(terms[i], resultFull[i]);
+        }
+      }
+    }
+
+    /**
+     * Compute a range of terms with its own terms enum and postings.
+     *
+     * @param terms
+     *          the terms
+     * @param termStates
+     *          the term states
+     * @param start
+     *          the start
+     * @param end
+     *          the end
+     * @param resultBasic
+     *          the result basic
+     * @param resultFull
+     *          the result full
+     * @throws IOException
+     *           Signals that an I/O exception has occurred.
+     */
+    private void computeRange(BytesRef[] terms, TermState[] termStates,
+        int start, int end, TermvectorNumberBasic[] resultBasic,
+        TermvectorNumberFull[] resultFull) throws IOException {
+      TermsEnum rangeTermsEnum = t.iterator();
+      // reused for all terms in the range
+      PostingsEnum postingsEnum = null;
+      boolean allDocs = (docSet.length == r.numDocs())
+          && (r.getLiveDocs() == null);
+      for (int i = start; i < end; i++) {
+        rangeTermsEnum.seekExact(terms[i], termStates[i]);
+        if (computeFull) {
+          postingsEnum = rangeTermsEnum.postings(postingsEnum,
+              PostingsEnum.FREQS);
+          resultFull[i] = computeTermvectorNumberFull(docSet, -1,
+              postingsEnum, Math.min(docSet.length, rangeTermsEnum.docFreq()),
+              lrc, positionsData);
+          if (computeBasic) {
+            // same documents and frequencies as the full numbers
+            TermvectorNumberBasic numberBasic = new TermvectorNumberBasic();
+            numberBasic.docNumber = resultFull[i].docNumber;
+            for (int j = 0; j < resultFull[i].docNumber; j++) {
+              numberBasic.valueSum[0] += resultFull[i].args[j];
+            }
+            resultBasic[i] = numberBasic;
+          }
+        } else if (computeBasic) {
+          if (allDocs) {
+            try {
+              resultBasic[i] = computeTermvectorNumberBasic(rangeTermsEnum, r);
+              continue;
+            } catch (IOException e) {
+              log.debug("problem", e);
+            }
+          }
+          postingsEnum = rangeTermsEnum.postings(postingsEnum,
+              PostingsEnum.FREQS);
+          resultBasic[i] = computeTermvectorNumberBasic(docSet, -1,
+              postingsEnum, lrc);
+        }
+      }
+    }
+  }
+
+  /**
+   * The Class UniqueKeyReader. Resolves the unique key of documents within a
+   * segment. If allowed, and the unique key field has sorted doc values, these
+   * are used and documents are expected in increasing order; otherwise, or if
+   * a document has no value, the stored field is used. Doc values can only be
+   * used if the indexed value equals the external value of the key.
+   */
+  private static class UniqueKeyReader {
+
+    /** The unique key field. */
+    private final String uniqueKeyField;
+
+    /** The searcher. */
+    private final IndexSearcher searcher;
+
+    /** The reader. */
+    private final LeafReader reader;
+
+    /** The doc base. */
+    private final int docBase;
+
+    /** The use doc values. */
+    private boolean useDocValues;
+
+    /** The doc values, possibly null. */
+    private SortedDocValues docValues;
+
+    /**
+     * Instantiates a new unique key reader.
+     *
+     * @param uniqueKeyField
+     *          the unique key field
+     * @param uniqueKeyDocValues
+     *          if the unique key can be read from doc values
+     * @param searcher
+     *          the searcher
+     * @param lrc
+     *          the lrc
+     */
+    UniqueKeyReader(String uniqueKeyField, boolean uniqueKeyDocValues,
+        IndexSearcher searcher, LeafReaderContext lrc) {
+      this.uniqueKeyField = uniqueKeyField;
+      this.searcher = searcher;
+      reader = lrc.reader();
+      docBase = lrc.docBase;
+      FieldInfo fieldInfo = reader.getFieldInfos().fieldInfo(uniqueKeyField);
+      useDocValues = uniqueKeyDocValues && fieldInfo != null
+          && fieldInfo.getDocValuesType().equals(DocValuesType.SORTED);
+      docValues = null;
+    }
+
+    /**
+     * Gets the unique key.
+     *
+     * @param docId
+     *          the doc id
+     * @return the unique key, or null if not available
+     * @throws IOException
+     *           Signals that an I/O exception has occurred.
+     */
+    String get(int docId) throws IOException {
+      if (useDocValues) {
+        int segmentDocId = docId - docBase;
+        if (docValues == null || docValues.docID() > segmentDocId) {
+          // doc values can only move forward
+          docValues = reader.getSortedDocValues(uniqueKeyField);
+          if (docValues == null) {
+            useDocValues = false;
+          }
+        }
+        if (docValues != null && docValues.advanceExact(segmentDocId)) {
+          return docValues.binaryValue().utf8ToString();
+        }
+      }
+      Document doc = searcher.doc(docId,
+          Collections.singleton(uniqueKeyField));
+      IndexableField indxfld = doc.getField(uniqueKeyField);
+      return indxfld != null ? indxfld.stringValue() : null;
+    }
   }
 
   /**
@@ -3993,6 +5087,8 @@ public class CodecCollector {
    *          the term number maximum
    * @param segmentNumber
    *          the segment number
+   * @param pruneBoundary
+   *          the minimum sort value to enter the top of this segment
    * @param mutableKey
    *          the mutable key
    * @return true, if successful
@@ -4001,8 +5097,8 @@ public class CodecCollector {
    */
   private static boolean preliminaryRegisterValue(BytesRef term,
       ComponentTermVector termVector, TermvectorNumberBasic number,
-      Integer termNumberMaximum, Integer segmentNumber, String[] mutableKey)
-      throws IOException {
+      Integer termNumberMaximum, Integer segmentNumber, long pruneBoundary,
+      String[] mutableKey) throws IOException {
     long sortValue = 0;
     if (termVector.subComponentFunction.sortDirection
         .equals(CodecUtil.SORT_DESC)
@@ -4019,6 +5115,18 @@ public class CodecCollector {
       return true;
     }
     MtasDataCollector<Long, ?> dataCollector = (MtasDataCollector<Long, ?>) termVector.subComponentFunction.dataCollector;
+    // only needed if already registered as key by previous segments
+    if (sortValue < pruneBoundary) {
+      if (!dataCollector.hasSegmentKeys()) {
+        return false;
+      }
+      if (mutableKey[0] == null) {
+        mutableKey[0] = MtasToken.getPostfixFromValue(term);
+      }
+      if (!dataCollector.isSegmentKey(mutableKey[0])) {
+        return false;
+      }
+    }
     if (termVector.boundaryRegistration) {
       return dataCollector.validateSegmentBoundary(sortValue);
     } else {
@@ -4066,16 +5174,18 @@ public class CodecCollector {
         mutableKey[0] = MtasToken.getPostfixFromValue(term);
       }
       MtasDataCollector<Long, ?> dataCollector = (MtasDataCollector<Long, ?>) termVector.subComponentFunction.dataCollector;
-      long[] valuesLong = new long[number.docNumber];
+      // evaluate the functions for all documents at once
+      long[][] rowArgs = new long[number.docNumber][];
+      long[] rowPositions = new long[number.docNumber];
       for (int i = 0; i < number.docNumber; i++) {
-        try {
-          valuesLong[i] = termVector.subComponentFunction.parserFunction
-              .getValueLong(new long[] { number.args[i] }, number.positions[i]);
-        } catch (IOException e) {
-          log.debug(e);
-          dataCollector.error(mutableKey[0], e.getMessage());
-        }
+        rowArgs[i] = new long[] { number.args[i] };
+        rowPositions[i] = number.positions[i];
       }
+      boolean[] valid = new boolean[number.docNumber];
+      long[] valuesLong = new long[number.docNumber];
+      computeValuesLong(termVector.subComponentFunction.parserFunction,
+          dataCollector, mutableKey[0], rowArgs, rowPositions,
+          number.docNumber, valuesLong, valid);
       if (!termVector.subComponentFunction.statsType
           .equals(CodecUtil.STATS_BASIC)) {
         dataCollector.add(mutableKey[0], valuesLong, valuesLong.length);
@@ -4086,28 +5196,16 @@ public class CodecCollector {
             || !function.statsType.equals(CodecUtil.STATS_BASIC)) {
           if (function.dataType.equals(CodecUtil.DATA_TYPE_LONG)) {
             valuesLong = new long[number.docNumber];
-            for (int i = 0; i < number.docNumber; i++) {
-              try {
-                valuesLong[i] = function.parserFunction.getValueLong(
-                    new long[] { number.args[i] }, number.positions[i]);
-              } catch (IOException e) {
-                log.debug(e);
-                function.dataCollector.error(mutableKey[0], e.getMessage());
-              }
-            }
+            computeValuesLong(function.parserFunction, function.dataCollector,
+                mutableKey[0], rowArgs, rowPositions, number.docNumber,
+                valuesLong, valid);
             function.dataCollector.add(mutableKey[0], valuesLong,
                 valuesLong.length);
           } else if (function.dataType.equals(CodecUtil.DATA_TYPE_DOUBLE)) {
             double[] valuesDouble = new double[number.docNumber];
-            for (int i = 0; i < number.docNumber; i++) {
-              try {
-                valuesDouble[i] = function.parserFunction.getValueDouble(
-                    new long[] { number.args[i] }, number.positions[i]);
-              } catch (IOException e) {
-                log.debug(e);
-                function.dataCollector.error(mutableKey[0], e.getMessage());
-              }
-            }
+            computeValuesDouble(function.parserFunction,
+                function.dataCollector, mutableKey[0], rowArgs, rowPositions,
+                number.docNumber, valuesDouble, valid);
             function.dataCollector.add(mutableKey[0], valuesDouble,
                 valuesDouble.length);
           }
@@ -4116,6 +5214,115 @@ public class CodecCollector {
     }
   }
 
+  /**
+   * Compute the long values of a function for a column of rows. Rows without
+   * a value are set to zero, and the error is registered in the data
+   * collector.
+   *
+   * @param parserFunction
+   *          the parser function
+   * @param dataCollector
+   *          the data collector
+   * @param key
+   *          the key, or null
+   * @param args
+   *          the args for each row
+   * @param positions
+   *          the positions for each row
+   * @param number
+   *          the number of rows
+   * @param values
+   *          the values
+   * @param valid
+   *          the valid
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  private static void computeValuesLong(
+      MtasFunctionParserFunction parserFunction,
+      MtasDataCollector<?, ?> dataCollector, String key, long[][] args,
+      long[] positions, int number, long[] values, boolean[] valid)
+      throws IOException {
+    parserFunction.getValuesLong(args, positions, number, values, valid);
+    for (int i = 0; i < number; i++) {
+      if (!valid[i]) {
+        values[i] = 0;
+        try {
+          // evaluate the row again for the error message
+          parserFunction.getValueLong(args[i], positions[i]);
+        } catch (IOException e) {
+          log.debug(e);
+          registerError(dataCollector, key, e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * Compute the double values of a function for a column of rows. Rows
+   * without a value are set to zero, and the error is registered in the data
+   * collector.
+   *
+   * @param parserFunction
+   *          the parser function
+   * @param dataCollector
+   *          the data collector
+   * @param key
+   *          the key, or null
+   * @param args
+   *          the args for each row
+   * @param positions
+   *          the positions for each row
+   * @param number
+   *          the number of rows
+   * @param values
+   *          the values
+   * @param valid
+   *          the valid
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  private static void computeValuesDouble(
+      MtasFunctionParserFunction parserFunction,
+      MtasDataCollector<?, ?> dataCollector, String key, long[][] args,
+      long[] positions, int number, double[] values, boolean[] valid)
+      throws IOException {
+    parserFunction.getValuesDouble(args, positions, number, values, valid);
+    for (int i = 0; i < number; i++) {
+      if (!valid[i]) {
+        values[i] = 0;
+        try {
+          // evaluate the row again for the error message
+          parserFunction.getValueDouble(args[i], positions[i]);
+        } catch (IOException e) {
+          log.debug(e);
+          registerError(dataCollector, key, e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * Register error.
+   *
+   * @param dataCollector
+   *          the data collector
+   * @param key
+   *          the key, or null
+   * @param error
+   *          the error
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  private static void registerError(MtasDataCollector<?, ?> dataCollector,
+      String key, String error) throws IOException {
+    if (key == null) {
+      dataCollector.error(error);
+    } else {
+      dataCollector.error(key, error);
+    }
+  }
+
   /**
    * Compute termvector number basic.
    *
@@ -4141,6 +5348,33 @@ public class CodecCollector {
     throw new IOException("should not call this");
   }
 
+  /**
+   * Compute termvector number upper bound for a doc set, using that each
+   * document containing the term but not in the doc set has at least one
+   * occurrence. Deleted documents are included, so the bound is also valid for
+   * segments with deletions.
+   *
+   * @param termsEnum
+   *          the terms enum
+   * @param docSetSize
+   *          the doc set size
+   * @return the termvector number basic
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  private static TermvectorNumberBasic computeTermvectorNumberUpperBound(
+      TermsEnum termsEnum, int docSetSize) throws IOException {
+    TermvectorNumberBasic result = new TermvectorNumberBasic();
+    long totalTermFreq = termsEnum.totalTermFreq();
+    if (totalTermFreq > -1) {
+      int docFreq = termsEnum.docFreq();
+      result.docNumber = Math.min(docFreq, docSetSize);
+      result.valueSum[0] = totalTermFreq - (docFreq - result.docNumber);
+      return result;
+    }
+    throw new IOException("no total term frequency");
+  }
+
   /**
    * Compute termvector number basic.
    *
@@ -4161,11 +5395,10 @@ public class CodecCollector {
    *           Signals that an I/O exception has occurred.
    */
   private static TermvectorNumberBasic computeTermvectorNumberBasic(
-      List<Integer> docSet, int termDocId, TermsEnum termsEnum, LeafReader r,
+      int[] docSet, int termDocId, TermsEnum termsEnum, LeafReader r,
       LeafReaderContext lrc, PostingsEnum postingsEnum) throws IOException {
-    TermvectorNumberBasic result = new TermvectorNumberBasic();
     boolean hasDeletedDocuments = (r.getLiveDocs() != null);
-    if ((docSet.size() == r.numDocs()) && !hasDeletedDocuments) {
+    if ((docSet.length == r.numDocs()) && !hasDeletedDocuments) {
       try {
         return computeTermvectorNumberBasic(termsEnum, r);
       } catch (IOException e) {
@@ -4173,14 +5406,33 @@ public class CodecCollector {
         // problem
       }
     }
-    result.docNumber = 0;
-    result.valueSum[0] = 0;
+    return computeTermvectorNumberBasic(docSet, termDocId,
+        termsEnum.postings(postingsEnum, PostingsEnum.FREQS), lrc);
+  }
+
+  /**
+   * Compute termvector number basic from the postings of a term.
+   *
+   * @param docSet
+   *          the doc set
+   * @param termDocId
+   *          the term doc id
+   * @param postingsEnum
+   *          the postings enum, positioned on the term
+   * @param lrc
+   *          the lrc
+   * @return the termvector number basic
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  private static TermvectorNumberBasic computeTermvectorNumberBasic(
+      int[] docSet, int termDocId, PostingsEnum postingsEnum,
+      LeafReaderContext lrc) throws IOException {
+    TermvectorNumberBasic result = new TermvectorNumberBasic();
     int localTermDocId = termDocId;
-    Iterator<Integer> docIterator = docSet.iterator();
-    postingsEnum = termsEnum.postings(postingsEnum, PostingsEnum.FREQS);
     int docId;
-    while (docIterator.hasNext()) {
-      docId = docIterator.next() - lrc.docBase;
+    for (int docSetId : docSet) {
+      docId = docSetId - lrc.docBase;
       if (docId >= localTermDocId && ((docId == localTermDocId)
           || ((localTermDocId = postingsEnum.advance(docId)) == docId))) {
         result.docNumber++;
@@ -4213,21 +5465,45 @@ public class CodecCollector {
    *           Signals that an I/O exception has occurred.
    */
   private static TermvectorNumberFull computeTermvectorNumberFull(
-      List<Integer> docSet, int termDocId, TermsEnum termsEnum,
+      int[] docSet, int termDocId, TermsEnum termsEnum,
       LeafReaderContext lrc, PostingsEnum postingsEnum,
       Map<Integer, Integer> positionsData) throws IOException {
-    TermvectorNumberFull result = new TermvectorNumberFull(docSet.size());
-    Iterator<Integer> docIterator = docSet.iterator();
+    return computeTermvectorNumberFull(docSet, termDocId,
+        termsEnum.postings(postingsEnum, PostingsEnum.FREQS),
+        Math.min(docSet.length, termsEnum.docFreq()), lrc, positionsData);
+  }
+
+  /**
+   * Compute termvector number full from the postings of a term.
+   *
+   * @param docSet
+   *          the doc set
+   * @param termDocId
+   *          the term doc id
+   * @param postingsEnum
+   *          the postings enum, positioned on the term
+   * @param initialSize
+   *          the initial size of the arrays
+   * @param lrc
+   *          the lrc
+   * @param positionsData
+   *          the positions data
+   * @return the termvector number full
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  private static TermvectorNumberFull computeTermvectorNumberFull(
+      int[] docSet, int termDocId, PostingsEnum postingsEnum, int initialSize,
+      LeafReaderContext lrc, Map<Integer, Integer> positionsData)
+      throws IOException {
+    TermvectorNumberFull result = new TermvectorNumberFull(initialSize);
     int localTermDocId = termDocId;
-    postingsEnum = termsEnum.postings(postingsEnum, PostingsEnum.FREQS);
-    while (docIterator.hasNext()) {
-      int docId = docIterator.next() - lrc.docBase;
+    for (int docSetId : docSet) {
+      int docId = docSetId - lrc.docBase;
       if (docId >= localTermDocId && ((docId == localTermDocId)
           || ((localTermDocId = postingsEnum.advance(docId)) == docId))) {
-        result.args[result.docNumber] = postingsEnum.freq();
-        result.positions[result.docNumber] = (positionsData == null) ? 0
-            : positionsData.get(docId + lrc.docBase);
-        result.docNumber++;
+        result.add(postingsEnum.freq(), (positionsData == null) ? 0
+            : positionsData.get(docId + lrc.docBase));
       }
     }
     return result;
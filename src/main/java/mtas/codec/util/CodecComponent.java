@@ -24,14 +24,19 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import mtas.analysis.token.MtasToken;
 import mtas.analysis.token.MtasTokenString;
+import mtas.codec.util.CodecInfo.FieldStats;
+import mtas.codec.util.CodecInfo.PrefixStats;
 import mtas.codec.util.CodecSearchTree.MtasTreeHit;
 import mtas.codec.util.collector.MtasDataCollector;
 import mtas.codec.util.distance.Distance;
@@ -157,6 +162,12 @@ public class CodecComponent {
     /** The unique key field. */
     public String uniqueKeyField;
 
+    /**
+     * If the unique key can be read from sorted doc values, only when these
+     * contain the external value of the key.
+     */
+    public boolean uniqueKeyDocValues;
+
     /** The document list. */
     public List<ComponentDocument> documentList;
 
@@ -233,6 +244,12 @@ public class CodecComponent {
     /** The intersecting list. */
     public SortedSet<String> intersectingList;
 
+    /**
+     * The number of documents and summed term frequency by prefix, or null if
+     * not available for all segments.
+     */
+    public SortedMap<String, long[]> statsList;
+
     /**
      * Instantiates a new component prefix.
      *
@@ -245,6 +262,7 @@ public class CodecComponent {
       multiplePositionList = new TreeSet<>();
       setPositionList = new TreeSet<>();
       intersectingList = new TreeSet<>();
+      statsList = new TreeMap<>();
     }
 
     /**
@@ -310,6 +328,27 @@ public class CodecComponent {
       }
     }
 
+    /**
+     * Adds the precomputed statistics of a segment. Like the term statistics
+     * of Lucene, these include deleted documents until they are merged away.
+     *
+     * @param fieldStats
+     *          the field stats, or null if not available for the segment
+     */
+    public void addStats(FieldStats fieldStats) {
+      if (fieldStats == null) {
+        statsList = null;
+      } else if (statsList != null) {
+        for (Entry<String, PrefixStats> entry : fieldStats.prefixStats
+            .entrySet()) {
+          long[] stats = statsList.computeIfAbsent(entry.getKey(),
+              k -> new long[2]);
+          stats[0] += entry.getValue().docFreq;
+          stats[1] += entry.getValue().totalTermFreq;
+        }
+      }
+    }
+
   }
 
   /**
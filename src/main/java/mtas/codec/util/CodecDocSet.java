@@ -0,0 +1,294 @@
+package mtas.codec.util;
+
+import java.util.Arrays;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * The Class CodecDocSet. An immutable set of document ids, stored as a sorted
+ * array of ids for sparse sets or as a bitset over the range of ids for dense
+ * sets.
+ */
+public final class CodecDocSet {
+
+  /** The Constant EMPTY. */
+  public static final CodecDocSet EMPTY = new CodecDocSet(new int[0]);
+
+  /** Minimum number of ids before a bitset is considered. */
+  private static final int BITSET_MINIMUM_SIZE = 1024;
+
+  /** Minimum fraction of the range to be set before a bitset is used. */
+  private static final int BITSET_DENSITY_FACTOR = 32;
+
+  /** The sorted ids, lazily computed for a bitset. */
+  private int[] docs;
+
+  /** The bits, only used for dense sets. */
+  private final FixedBitSet bits;
+
+  /** The offset of the bits. */
+  private final int offset;
+
+  /** The size. */
+  private final int size;
+
+  /**
+   * Instantiates a new codec doc set from sorted ids.
+   *
+   * @param docs the sorted ids without duplicates
+   */
+  private CodecDocSet(int[] docs) {
+    this.docs = docs;
+    this.bits = null;
+    this.offset = 0;
+    this.size = docs.length;
+  }
+
+  /**
+   * Instantiates a new codec doc set from a bitset.
+   *
+   * @param bits the bits
+   * @param offset the offset
+   * @param size the number of set bits
+   */
+  private CodecDocSet(FixedBitSet bits, int offset, int size) {
+    this.docs = null;
+    this.bits = bits;
+    this.offset = offset;
+    this.size = size;
+  }
+
+  /**
+   * Creates a doc set from the first number of items of a sorted list of ids
+   * without duplicates, choosing the representation by density.
+   *
+   * @param docs the sorted ids
+   * @param number the number of ids to use
+   * @return the codec doc set
+   */
+  public static CodecDocSet create(int[] docs, int number) {
+    if (number == 0) {
+      return EMPTY;
+    } else if (isDense(number, docs[0], docs[number - 1])) {
+      int min = docs[0];
+      FixedBitSet bits = new FixedBitSet(docs[number - 1] - min + 1);
+      for (int i = 0; i < number; i++) {
+        bits.set(docs[i] - min);
+      }
+      return new CodecDocSet(bits, min, number);
+    } else {
+      return new CodecDocSet(
+          number == docs.length ? docs : Arrays.copyOf(docs, number));
+    }
+  }
+
+  /**
+   * Checks if a set should be represented as bitset.
+   *
+   * @param number the number
+   * @param min the min
+   * @param max the max
+   * @return true, if is dense
+   */
+  private static boolean isDense(int number, int min, int max) {
+    return number >= BITSET_MINIMUM_SIZE
+        && ((long) number * BITSET_DENSITY_FACTOR) > ((long) max - min + 1);
+  }
+
+  /**
+   * Size.
+   *
+   * @return the number of ids
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Checks if is empty.
+   *
+   * @return true, if is empty
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Contains.
+   *
+   * @param docId the doc id
+   * @return true, if successful
+   */
+  public boolean contains(int docId) {
+    if (bits != null) {
+      return docId >= offset && docId - offset < bits.length()
+          && bits.get(docId - offset);
+    } else {
+      return Arrays.binarySearch(docs, docId) >= 0;
+    }
+  }
+
+  /**
+   * Gets the sorted ids. The returned array is shared and should not be
+   * modified.
+   *
+   * @return the sorted ids
+   */
+  public int[] docs() {
+    if (docs == null) {
+      int[] list = new int[size];
+      int number = 0;
+      int length = bits.length();
+      for (int i = bits.nextSetBit(0); i != DocIdSetIterator.NO_MORE_DOCS;) {
+        list[number++] = i + offset;
+        i = (i + 1 < length) ? bits.nextSetBit(i + 1)
+            : DocIdSetIterator.NO_MORE_DOCS;
+      }
+      docs = list;
+    }
+    return docs;
+  }
+
+  /**
+   * Intersect with a sorted list of ids, possibly containing duplicates.
+   *
+   * @param list the sorted list
+   * @return the codec doc set
+   */
+  public CodecDocSet intersect(int[] list) {
+    if (list == null || list.length == 0 || size == 0) {
+      return EMPTY;
+    }
+    int[] result = new int[Math.min(list.length, size)];
+    int number = 0;
+    if (bits != null) {
+      int length = bits.length();
+      for (int docId : list) {
+        if (docId >= offset && docId - offset < length
+            && bits.get(docId - offset)
+            && (number == 0 || result[number - 1] != docId)) {
+          result[number++] = docId;
+        }
+      }
+    } else {
+      int ai = 0;
+      int bi = 0;
+      while (ai < list.length && bi < docs.length) {
+        if (list[ai] < docs[bi]) {
+          ai++;
+        } else if (list[ai] > docs[bi]) {
+          bi++;
+        } else {
+          if (number == 0 || list[ai] != result[number - 1]) {
+            result[number++] = list[ai];
+          }
+          ai++;
+          bi++;
+        }
+      }
+    }
+    return create(result, number);
+  }
+
+  /**
+   * Union.
+   *
+   * @param other the other
+   * @return the codec doc set
+   */
+  public CodecDocSet union(CodecDocSet other) {
+    if (other.size == 0) {
+      return this;
+    } else if (size == 0) {
+      return other;
+    }
+    if (bits != null || other.bits != null) {
+      int min = Math.min(first(), other.first());
+      int max = Math.max(last(), other.last());
+      FixedBitSet result = new FixedBitSet(max - min + 1);
+      addTo(result, min);
+      other.addTo(result, min);
+      int number = result.cardinality();
+      if (isDense(number, min, max)) {
+        return new CodecDocSet(result, min, number);
+      } else {
+        return new CodecDocSet(result, min, number).toArraySet();
+      }
+    } else {
+      int[] a = docs;
+      int[] b = other.docs;
+      int[] result = new int[a.length + b.length];
+      int i = 0;
+      int j = 0;
+      int k = 0;
+      while (i < a.length && j < b.length) {
+        if (a[i] < b[j]) {
+          result[k++] = a[i++];
+        } else if (a[i] > b[j]) {
+          result[k++] = b[j++];
+        } else {
+          result[k++] = a[i++];
+          j++;
+        }
+      }
+      while (i < a.length) {
+        result[k++] = a[i++];
+      }
+      while (j < b.length) {
+        result[k++] = b[j++];
+      }
+      return create(result, k);
+    }
+  }
+
+  /**
+   * Add all ids to a bitset.
+   *
+   * @param target the target
+   * @param targetOffset the target offset
+   */
+  private void addTo(FixedBitSet target, int targetOffset) {
+    if (bits != null) {
+      int length = bits.length();
+      for (int i = bits.nextSetBit(0); i != DocIdSetIterator.NO_MORE_DOCS;) {
+        target.set(i + offset - targetOffset);
+        i = (i + 1 < length) ? bits.nextSetBit(i + 1)
+            : DocIdSetIterator.NO_MORE_DOCS;
+      }
+    } else {
+      for (int docId : docs) {
+        target.set(docId - targetOffset);
+      }
+    }
+  }
+
+  /**
+   * Convert to a set represented by sorted ids.
+   *
+   * @return the codec doc set
+   */
+  private CodecDocSet toArraySet() {
+    return bits == null ? this : new CodecDocSet(docs());
+  }
+
+  /**
+   * First.
+   *
+   * @return the lowest id
+   */
+  private int first() {
+    return bits != null ? bits.nextSetBit(0) + offset : docs[0];
+  }
+
+  /**
+   * Last.
+   *
+   * @return the highest id
+   */
+  private int last() {
+    return bits != null ? bits.prevSetBit(bits.length() - 1) + offset
+        : docs[docs.length - 1];
+  }
+
+}
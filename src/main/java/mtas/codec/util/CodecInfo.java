@@ -4,7 +4,9 @@ import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -17,11 +19,15 @@ import mtas.codec.MtasCodecPostingsFormat;
 import mtas.codec.tree.IntervalRBTree;
 import mtas.codec.tree.IntervalTreeNodeData;
 import mtas.codec.util.CodecSearchTree.MtasTreeHit;
+import mtas.codec.util.MtasTreeCursor.MtasTreeHitBuffer;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.lucene.index.Terms;
+import org.apache.lucene.store.DataInput;
 import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.RandomAccessInput;
+import org.apache.lucene.util.InPlaceMergeSorter;
 
 /**
  * The Class CodecInfo.
@@ -37,15 +43,24 @@ public class CodecInfo {
   /** The index input offset list. */
   HashMap<String, Long> indexInputOffsetList;
 
+  /** The random access input list, lazily created from the index inputs. */
+  private HashMap<String, RandomAccessInput> randomAccessInputList;
+
   /** The version. */
   int version;
 
+  /** The term cache of the segment, possibly null. */
+  private CodecTermCache termCache;
+
   /** The field references. */
   private HashMap<String, FieldReferences> fieldReferences;
 
   /** The prefix references. */
   private HashMap<String, LinkedHashMap<String, Long>> prefixReferences;
 
+  /** The field stats, null if not (yet) read. */
+  private HashMap<String, FieldStats> fieldStats;
+
   /**
    * Instantiates a new codec info.
    *
@@ -82,6 +97,7 @@ public class CodecInfo {
       HashMap<String, IndexInput> indexInputList = null;
       HashMap<String, Long> indexInputOffsetList = null;
       Object version = null;
+      CodecTermCache termCache = null;
       Method[] methods = t.getClass().getMethods();
       Object[] emptyArgs = null;
       for (Method m : methods) {
@@ -91,14 +107,18 @@ public class CodecInfo {
           indexInputOffsetList = (HashMap<String, Long>) m.invoke(t, emptyArgs);
         } else if (m.getName().equals("getVersion")) {
           version = m.invoke(t, emptyArgs);
+        } else if (m.getName().equals("getTermCache")) {
+          termCache = (CodecTermCache) m.invoke(t, emptyArgs);
         }
       }
       if (indexInputList == null || indexInputOffsetList == null
           || version == null) {
         throw new IOException("Reader doesn't provide MtasFieldsProducer");
       } else {
-        return new CodecInfo(indexInputList, indexInputOffsetList,
-            (int) version);
+        CodecInfo codecInfo = new CodecInfo(indexInputList,
+            indexInputOffsetList, (int) version);
+        codecInfo.termCache = termCache;
+        return codecInfo;
       }
     } catch (IllegalAccessException | InvocationTargetException e) {
       throw new IOException("Can't get codecInfo", e);
@@ -154,32 +174,189 @@ public class CodecInfo {
    */
   public MtasToken getObjectById(String field, int docId, int mtasId)
       throws IOException {
-    try {
-      Long ref;
-      Long objectRefApproxCorrection;
-      IndexDoc doc = getDoc(field, docId);
-      IndexInput inObjectId = indexInputList.get("indexObjectId");
-      IndexInput inObject = indexInputList.get("object");
-      IndexInput inTerm = indexInputList.get("term");
+    MtasToken token = getObjectsByIds(field, docId, new int[] { mtasId })[0];
+    if (token == null) {
+      throw new IOException(
+          "no object " + mtasId + " for doc " + docId + " in " + field);
+    }
+    return token;
+  }
+
+  /**
+   * Gets the objects by ids. The objects are resolved in ascending file order
+   * from random access views on the object id index, object and term files.
+   *
+   * @param field
+   *          the field
+   * @param docId
+   *          the doc id
+   * @param mtasIds
+   *          the mtas ids
+   * @return the objects, in the order of the provided ids, with null for
+   *         unknown ids
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  public MtasTokenString[] getObjectsByIds(String field, int docId,
+      int[] mtasIds) throws IOException {
+    int number = mtasIds.length;
+    MtasTokenString[] tokens = new MtasTokenString[number];
+    IndexDoc doc = getDoc(field, docId);
+    if (doc == null || number == 0) {
+      return tokens;
+    }
+    RandomAccessInput inObjectId = getRandomAccessInput("indexObjectId");
+    int[] order = new int[number];
+    long[] keys = new long[number];
+    int valid = 0;
+    for (int i = 0; i < number; i++) {
+      if (mtasIds[i] >= 0 && mtasIds[i] < doc.size) {
+        order[valid++] = i;
+        keys[i] = mtasIds[i];
+      }
+    }
+    // corrections in ascending id order
+    sortByKey(order, valid, keys);
+    long[] refs = new long[number];
+    Arrays.fill(refs, -1);
+    for (int i = 0; i < valid; i++) {
+      int mtasId = mtasIds[order[i]];
+      long objectRefApproxCorrection;
       if (doc.storageFlags == MtasCodecPostingsFormat.MTAS_STORAGE_BYTE) {
-        inObjectId.seek(doc.fpIndexObjectId + (mtasId * 1L));
-        objectRefApproxCorrection = Long.valueOf(inObjectId.readByte());
+        objectRefApproxCorrection = inObjectId
+            .readByte(doc.fpIndexObjectId + mtasId);
       } else if (doc.storageFlags == MtasCodecPostingsFormat.MTAS_STORAGE_SHORT) {
-        inObjectId.seek(doc.fpIndexObjectId + (mtasId * 2L));
-        objectRefApproxCorrection = Long.valueOf(inObjectId.readShort());
+        objectRefApproxCorrection = inObjectId
+            .readShort(doc.fpIndexObjectId + (mtasId * 2L));
       } else if (doc.storageFlags == MtasCodecPostingsFormat.MTAS_STORAGE_INTEGER) {
-        inObjectId.seek(doc.fpIndexObjectId + (mtasId * 4L));
-        objectRefApproxCorrection = Long.valueOf(inObjectId.readInt());
+        objectRefApproxCorrection = inObjectId
+            .readInt(doc.fpIndexObjectId + (mtasId * 4L));
       } else {
-        inObjectId.seek(doc.fpIndexObjectId + (mtasId * 8L));
-        objectRefApproxCorrection = Long.valueOf(inObjectId.readLong());
+        objectRefApproxCorrection = inObjectId
+            .readLong(doc.fpIndexObjectId + (mtasId * 8L));
       }
-      ref = objectRefApproxCorrection + doc.objectRefApproxOffset
+      refs[order[i]] = objectRefApproxCorrection + doc.objectRefApproxOffset
           + (mtasId * (long) doc.objectRefApproxQuotient);
-      return MtasCodecPostingsFormat.getToken(inObject, inTerm, ref);
-    } catch (Exception e) {
-      throw new IOException(e);
     }
+    return getObjectsByRefs(refs, number);
+  }
+
+  /**
+   * Gets the objects by refs. Objects and their terms are read in ascending
+   * file order from random access views on the object and term files, and
+   * every distinct term is read only once.
+   *
+   * @param refs
+   *          the refs
+   * @param number
+   *          the number of refs to use
+   * @return the objects, in the order of the provided refs, with null for
+   *         negative refs
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  public MtasTokenString[] getObjectsByRefs(long[] refs, int number)
+      throws IOException {
+    MtasTokenString[] tokens = new MtasTokenString[number];
+    if (number == 0) {
+      return tokens;
+    }
+    RandomAccessDataInput inObject = new RandomAccessDataInput(
+        getRandomAccessInput("object"));
+    RandomAccessDataInput inTerm = new RandomAccessDataInput(
+        getRandomAccessInput("term"));
+    int[] order = new int[number];
+    long[] keys = new long[number];
+    int valid = 0;
+    for (int i = 0; i < number; i++) {
+      if (refs[i] >= 0) {
+        order[valid++] = i;
+        keys[i] = refs[i];
+      }
+    }
+    // objects in ascending file order
+    sortByKey(order, valid, keys);
+    for (int i = 0; i < valid; i++) {
+      long ref = keys[order[i]];
+      inObject.setPosition(ref);
+      tokens[order[i]] = MtasCodecPostingsFormat.readToken(inObject, ref);
+    }
+    // terms in ascending file order
+    for (int i = 0; i < valid; i++) {
+      keys[order[i]] = tokens[order[i]].getTermRef();
+    }
+    sortByKey(order, valid, keys);
+    long previousTermRef = -1;
+    String previousTerm = null;
+    for (int i = 0; i < valid; i++) {
+      long termRef = keys[order[i]];
+      if (termRef != previousTermRef) {
+        previousTerm = termCache == null ? null : termCache.get(termRef);
+        if (previousTerm == null) {
+          inTerm.setPosition(termRef);
+          previousTerm = inTerm.readString();
+          if (termCache != null) {
+            termCache.put(termRef, previousTerm);
+          }
+        }
+        previousTermRef = termRef;
+      }
+      tokens[order[i]].setValue(previousTerm);
+    }
+    return tokens;
+  }
+
+  /**
+   * Sort the first number of items of a list of indices by their key.
+   *
+   * @param order
+   *          the indices
+   * @param number
+   *          the number
+   * @param keys
+   *          the keys, by index
+   */
+  private static void sortByKey(final int[] order, int number,
+      final long[] keys) {
+    new InPlaceMergeSorter() {
+      @Override
+      protected int compare(int i, int j) {
+        return Long.compare(keys[order[i]], keys[order[j]]);
+      }
+
+      @Override
+      protected void swap(int i, int j) {
+        int tmp = order[i];
+        order[i] = order[j];
+        order[j] = tmp;
+      }
+    }.sort(0, number);
+  }
+
+  /**
+   * Gets a random access view on the complete index input.
+   *
+   * @param name
+   *          the name
+   * @return the random access input
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  private RandomAccessInput getRandomAccessInput(String name)
+      throws IOException {
+    if (randomAccessInputList == null) {
+      randomAccessInputList = new HashMap<>();
+    }
+    RandomAccessInput input = randomAccessInputList.get(name);
+    if (input == null) {
+      IndexInput in = indexInputList.get(name);
+      if (in == null) {
+        throw new IOException("no " + name + " available");
+      }
+      input = in.randomAccessSlice(0, in.length());
+      randomAccessInputList.put(name, input);
+    }
+    return input;
   }
 
   /**
@@ -287,11 +464,8 @@ public class CodecInfo {
   private List<MtasTokenString> getPrefixFilteredObjects(
       List<MtasTreeHit<?>> hits, List<String> prefixes) throws IOException {
     ArrayList<MtasTokenString> tokens = new ArrayList<>();
-    IndexInput inObject = indexInputList.get("object");
-    IndexInput inTerm = indexInputList.get("term");
-    for (MtasTreeHit<?> hit : hits) {
-      MtasTokenString token = MtasCodecPostingsFormat.getToken(inObject, inTerm,
-          hit.ref);
+    for (MtasTokenString token : getObjectsByRefs(getRefs(hits),
+        hits.size())) {
       if (token != null) {
         if (prefixes != null && !prefixes.isEmpty()) {
           if (prefixes.contains(token.getPrefix())) {
@@ -351,17 +525,23 @@ public class CodecInfo {
     IndexInput inIndexObjectPosition = indexInputList
         .get("indexObjectPosition");
     if (doc != null) {
-      ArrayList<MtasTreeHit<?>> hitItems = CodecSearchTree.searchMtasTree(
-          startPosition, endPosition, inIndexObjectPosition,
-          doc.fpIndexObjectPosition, doc.smallestObjectFilepointer);
       List<MtasTreeHit<String>> hits = new ArrayList<>();
       Map<String, Integer> prefixIds = getPrefixesIds(field, prefixes);
       if (prefixIds != null && prefixIds.size() > 0) {
+        // stream hits from the tree, only keeping the requested prefixes
+        Set<Integer> prefixIdSet = new HashSet<>(prefixIds.values());
         ArrayList<MtasTreeHit<?>> filteredHitItems = new ArrayList<MtasTreeHit<?>>();
-
-        for (MtasTreeHit<?> hitItem : hitItems) {
-          if (prefixIds.containsValue(hitItem.additionalId)) {
-            filteredHitItems.add(hitItem);
+        MtasTreeCursor cursor = new MtasTreeCursor(inIndexObjectPosition,
+            doc.fpIndexObjectPosition, doc.smallestObjectFilepointer);
+        MtasTreeHitBuffer buffer = new MtasTreeHitBuffer(64);
+        cursor.search(startPosition, endPosition);
+        while (cursor.next(buffer) > 0) {
+          for (int i = 0; i < buffer.size; i++) {
+            if (prefixIdSet.contains(buffer.additionalIds[i])) {
+              filteredHitItems.add(new MtasTreeHit<>(buffer.startPositions[i],
+                  buffer.endPositions[i], buffer.refs[i],
+                  buffer.additionalIds[i], buffer.additionalRefs[i]));
+            }
           }
         }
         if (filteredHitItems.size() > 0) {
@@ -380,6 +560,172 @@ public class CodecInfo {
     }
   }
 
+  /**
+   * Gets the positioned terms by prefixes for a list of position ranges within
+   * one document. Overlapping ranges are merged, the position tree is traversed
+   * once for all merged ranges and every object is decoded only once, in file
+   * order; the result for each range is selected from the hits of its merged
+   * range, sorted by start position.
+   *
+   * @param field
+   *          the field
+   * @param docId
+   *          the doc id
+   * @param prefixes
+   *          the prefixes
+   * @param startPositions
+   *          the start positions
+   * @param endPositions
+   *          the end positions
+   * @return for each range, the positioned terms
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  public List<List<MtasTreeHit<String>>> getPositionedTermsByPrefixesAndPositionRanges(
+      String field, int docId, List<String> prefixes, int[] startPositions,
+      int[] endPositions) throws IOException {
+    int number = startPositions.length;
+    List<List<MtasTreeHit<String>>> result = new ArrayList<>(number);
+    IndexDoc doc = getDoc(field, docId);
+    Map<String, Integer> prefixIds = doc == null ? null
+        : getPrefixesIds(field, prefixes);
+    if (prefixIds == null || prefixIds.isEmpty()) {
+      for (int i = 0; i < number; i++) {
+        result.add(new ArrayList<MtasTreeHit<String>>());
+      }
+      return result;
+    }
+    // merge overlapping ranges
+    int[] order = new int[number];
+    long[] keys = new long[number];
+    for (int i = 0; i < number; i++) {
+      order[i] = i;
+      keys[i] = startPositions[i];
+    }
+    sortByKey(order, number, keys);
+    int[] rangeIds = new int[number];
+    ArrayList<IntervalTreeNodeData<String>> ranges = new ArrayList<>();
+    IntervalTreeNodeData<String> range = null;
+    for (int i = 0; i < number; i++) {
+      int j = order[i];
+      if (range == null || startPositions[j] > range.end) {
+        range = new IntervalTreeNodeData<>(startPositions[j], endPositions[j],
+            startPositions[j], endPositions[j]);
+        ranges.add(range);
+      } else if (endPositions[j] > range.end) {
+        range.end = endPositions[j];
+        range.hitEnd = endPositions[j];
+      }
+      rangeIds[j] = ranges.size() - 1;
+    }
+    // single traversal for all merged ranges
+    if (!ranges.isEmpty()) {
+      CodecSearchTree.searchMtasTreeWithIntervalTree(prefixIds.values(),
+          new IntervalRBTree<String>(ranges),
+          indexInputList.get("indexObjectPosition"), doc.fpIndexObjectPosition,
+          doc.smallestObjectFilepointer);
+    }
+    // decode the objects with the requested prefixes once, in file order
+    Set<Integer> prefixIdSet = new HashSet<>(prefixIds.values());
+    int total = 0;
+    for (IntervalTreeNodeData<String> mergedRange : ranges) {
+      total += mergedRange.list.size();
+    }
+    long[] refs = new long[total];
+    int numberOfRefs = 0;
+    for (IntervalTreeNodeData<String> mergedRange : ranges) {
+      for (MtasTreeHit<String> hitItem : mergedRange.list) {
+        if (prefixIdSet.contains(hitItem.additionalId)) {
+          refs[numberOfRefs++] = hitItem.ref;
+        }
+      }
+    }
+    Arrays.sort(refs, 0, numberOfRefs);
+    int numberOfUniqueRefs = 0;
+    for (int i = 0; i < numberOfRefs; i++) {
+      if (numberOfUniqueRefs == 0
+          || refs[i] != refs[numberOfUniqueRefs - 1]) {
+        refs[numberOfUniqueRefs++] = refs[i];
+      }
+    }
+    MtasTokenString[] tokens = getObjectsByRefs(refs, numberOfUniqueRefs);
+    List<MtasTreeHit<String>> decodedHits = new ArrayList<>(
+        numberOfUniqueRefs);
+    for (MtasTokenString token : tokens) {
+      decodedHits.add(token == null ? null
+          : new MtasTreeHit<String>(token.getPositionStart(),
+              token.getPositionEnd(), token.getTokenRef(), 0, 0,
+              token.getValue()));
+    }
+    // hits of each merged range, sorted by start position
+    List<List<MtasTreeHit<String>>> rangeHits = new ArrayList<>(ranges.size());
+    int[][] rangeStarts = new int[ranges.size()][];
+    int[] rangeMaximumLengths = new int[ranges.size()];
+    for (int r = 0; r < ranges.size(); r++) {
+      List<MtasTreeHit<String>> hits = new ArrayList<>();
+      for (MtasTreeHit<String> hitItem : ranges.get(r).list) {
+        if (prefixIdSet.contains(hitItem.additionalId)) {
+          MtasTreeHit<String> hit = decodedHits.get(
+              Arrays.binarySearch(refs, 0, numberOfUniqueRefs, hitItem.ref));
+          if (hit != null) {
+            hits.add(hit);
+          }
+        }
+      }
+      hits.sort((h1, h2) -> Integer.compare(h1.startPosition,
+          h2.startPosition));
+      rangeStarts[r] = new int[hits.size()];
+      for (int i = 0; i < hits.size(); i++) {
+        MtasTreeHit<String> hit = hits.get(i);
+        rangeStarts[r][i] = hit.startPosition;
+        rangeMaximumLengths[r] = Math.max(rangeMaximumLengths[r],
+            hit.endPosition - hit.startPosition);
+      }
+      rangeHits.add(hits);
+    }
+    // select hits for each range: only hits starting at most the maximum
+    // length before the range can end within it
+    for (int i = 0; i < number; i++) {
+      int r = rangeIds[i];
+      List<MtasTreeHit<String>> mergedHits = rangeHits.get(r);
+      int from = firstAbove(rangeStarts[r],
+          startPositions[i] - rangeMaximumLengths[r] - 1);
+      int to = firstAbove(rangeStarts[r], endPositions[i]);
+      List<MtasTreeHit<String>> hits = new ArrayList<>(to - from);
+      for (int j = from; j < to; j++) {
+        MtasTreeHit<String> hit = mergedHits.get(j);
+        if (hit.endPosition >= startPositions[i]) {
+          hits.add(hit);
+        }
+      }
+      result.add(hits);
+    }
+    return result;
+  }
+
+  /**
+   * Gets the index of the first value above a limit.
+   *
+   * @param values
+   *          the values, sorted ascending
+   * @param limit
+   *          the limit
+   * @return the index, or the number of values if none is above the limit
+   */
+  private static int firstAbove(int[] values, int limit) {
+    int low = 0;
+    int high = values.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (values[middle] <= limit) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
   /**
    * Collect terms by prefixes for list of hit positions.
    *
@@ -428,7 +774,8 @@ public class CodecInfo {
             hit.idData = idPrefixes.get(hit.additionalId);
             if (!refTerms.containsKey(hit.additionalRef)) {
               refTerms.put(hit.additionalRef,
-                  MtasCodecPostingsFormat.getTerm(inTerm, hit.additionalRef));
+                  MtasCodecPostingsFormat.getTerm(inTerm, hit.additionalRef,
+                      termCache));
             }
             hit.refData = refTerms.get(hit.additionalRef);
           }
@@ -448,12 +795,9 @@ public class CodecInfo {
    */
   public ArrayList<MtasTokenString> getObjects(List<MtasTreeHit<?>> hits)
       throws IOException {
-    ArrayList<MtasTokenString> tokens = new ArrayList<>();
-    IndexInput inObject = indexInputList.get("object");
-    IndexInput inTerm = indexInputList.get("term");
-    for (MtasTreeHit<?> hit : hits) {
-      MtasTokenString token = MtasCodecPostingsFormat.getToken(inObject, inTerm,
-          hit.ref);
+    ArrayList<MtasTokenString> tokens = new ArrayList<>(hits.size());
+    for (MtasTokenString token : getObjectsByRefs(getRefs(hits),
+        hits.size())) {
       if (token != null) {
         tokens.add(token);
       }
@@ -461,6 +805,22 @@ public class CodecInfo {
     return tokens;
   }
 
+  /**
+   * Gets the refs of a list of hits.
+   *
+   * @param hits
+   *          the hits
+   * @return the refs
+   */
+  private static long[] getRefs(List<MtasTreeHit<?>> hits) {
+    long[] refs = new long[hits.size()];
+    int i = 0;
+    for (MtasTreeHit<?> hit : hits) {
+      refs[i++] = hit.ref;
+    }
+    return refs;
+  }
+
   /**
    * Gets the terms.
    *
@@ -476,8 +836,8 @@ public class CodecInfo {
       ArrayList<MtasTreeHit<String>> terms = new ArrayList<MtasTreeHit<String>>();
       IndexInput inTerm = indexInputList.get("term");
       for (MtasTreeHit<?> hit : refs) {
-        inTerm.seek(hit.ref);
-        String term = inTerm.readString();
+        String term = MtasCodecPostingsFormat.getTerm(inTerm, hit.ref,
+            termCache);
         MtasTreeHit<String> newHit = new MtasTreeHit<String>(hit.startPosition,
             hit.endPosition, hit.ref, hit.additionalId, hit.additionalRef,
             term);
@@ -554,6 +914,43 @@ public class CodecInfo {
     }
   }
 
+  /**
+   * Gets the precomputed statistics of a field for all documents in the
+   * segment, ignoring deletions.
+   *
+   * @param field
+   *          the field
+   * @return the field stats, or null if not available for this segment
+   */
+  public FieldStats getFieldStats(String field) {
+    if (fieldStats == null) {
+      fieldStats = new HashMap<>();
+      IndexInput inPrefixStats = indexInputList.get("prefixStats");
+      if (inPrefixStats != null) {
+        try {
+          inPrefixStats.seek(indexInputOffsetList.get("prefixStats"));
+          long end = inPrefixStats.length()
+              - org.apache.lucene.codecs.CodecUtil.footerLength();
+          while (inPrefixStats.getFilePointer() < end) {
+            String statsField = inPrefixStats.readString();
+            fieldStats.put(statsField, new FieldStats(inPrefixStats));
+          }
+        } catch (IOException e) {
+          log.error(e);
+          fieldStats.clear();
+        }
+      }
+    }
+    if (fieldStats.containsKey(field)) {
+      return fieldStats.get(field);
+    } else if (fieldReferences.containsKey(field) || fieldStats.isEmpty()) {
+      return null;
+    } else {
+      // field without mtas data in a segment with statistics
+      return new FieldStats();
+    }
+  }
+
   /**
    * Gets the doc.
    *
@@ -794,6 +1191,147 @@ public class CodecInfo {
     }
   }
 
+  /**
+   * The Class FieldStats, with the statistics of a field for all documents in
+   * the segment.
+   */
+  public static class FieldStats {
+
+    /** The number of docs. */
+    public final int numberOfDocs;
+
+    /** The number of positions. */
+    public final long numberOfPositions;
+
+    /** The number of tokens. */
+    public final long numberOfTokens;
+
+    /** The prefix stats. */
+    public final Map<String, PrefixStats> prefixStats;
+
+    /**
+     * Instantiates new field stats for a field without data.
+     */
+    FieldStats() {
+      numberOfDocs = 0;
+      numberOfPositions = 0;
+      numberOfTokens = 0;
+      prefixStats = new LinkedHashMap<>();
+    }
+
+    /**
+     * Instantiates new field stats.
+     *
+     * @param in
+     *          the in
+     * @throws IOException
+     *           Signals that an I/O exception has occurred.
+     */
+    FieldStats(DataInput in) throws IOException {
+      numberOfDocs = in.readVInt();
+      numberOfPositions = in.readVLong();
+      numberOfTokens = in.readVLong();
+      int numberOfPrefixes = in.readVInt();
+      prefixStats = new LinkedHashMap<>();
+      for (int i = 0; i < numberOfPrefixes; i++) {
+        String prefix = in.readString();
+        int numberOfTerms = in.readVInt();
+        long totalTermFreq = in.readVLong();
+        int docFreq = in.readVInt();
+        prefixStats.put(prefix,
+            new PrefixStats(numberOfTerms, totalTermFreq, docFreq));
+      }
+    }
+  }
+
+  /**
+   * The Class PrefixStats, with the statistics of a prefix for all documents
+   * in the segment.
+   */
+  public static class PrefixStats {
+
+    /** The number of terms. */
+    public final int numberOfTerms;
+
+    /** The summed term frequency. */
+    public final long totalTermFreq;
+
+    /** The number of docs. */
+    public final int docFreq;
+
+    /**
+     * Instantiates new prefix stats.
+     *
+     * @param numberOfTerms
+     *          the number of terms
+     * @param totalTermFreq
+     *          the total term freq
+     * @param docFreq
+     *          the doc freq
+     */
+    PrefixStats(int numberOfTerms, long totalTermFreq, int docFreq) {
+      this.numberOfTerms = numberOfTerms;
+      this.totalTermFreq = totalTermFreq;
+      this.docFreq = docFreq;
+    }
+  }
+
+  /**
+   * The Class RandomAccessDataInput, reading sequentially from a random access
+   * input without seeking.
+   */
+  private static class RandomAccessDataInput extends DataInput {
+
+    /** The input. */
+    private final RandomAccessInput input;
+
+    /** The position. */
+    private long position;
+
+    /**
+     * Instantiates a new random access data input.
+     *
+     * @param input
+     *          the input
+     */
+    RandomAccessDataInput(RandomAccessInput input) {
+      this.input = input;
+      this.position = 0;
+    }
+
+    /**
+     * Sets the position.
+     *
+     * @param position
+     *          the new position
+     */
+    void setPosition(long position) {
+      this.position = position;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.apache.lucene.store.DataInput#readByte()
+     */
+    @Override
+    public byte readByte() throws IOException {
+      return input.readByte(position++);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.apache.lucene.store.DataInput#readBytes(byte[], int, int)
+     */
+    @Override
+    public void readBytes(byte[] b, int offset, int len) throws IOException {
+      for (int i = 0; i < len; i++) {
+        b[offset + i] = input.readByte(position++);
+      }
+    }
+  }
+
   /**
    * The Class FieldReferences.
    */
@@ -0,0 +1,254 @@
+package mtas.codec.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * The Class CodecTermCache. A bounded cache of decoded terms for a single
+ * segment, keyed by the file pointer of the term in the term file. The cache
+ * is a set associative table: every term reference maps to a set of
+ * {@link #WAYS} slots, and a new term replaces a term in its set chosen by
+ * clock (second chance) eviction, so a term that was hit since the last
+ * eviction in its set is kept. Hot terms only evict each other if more than
+ * {@link #WAYS} of them map to the same set, at the cost of checking a few
+ * slots on each lookup instead of one. Lookups and updates don't lock, so the
+ * cache can be shared by all readers and collector threads of the segment;
+ * concurrent updates of a set may lose a term, which only costs a miss. It is
+ * cleared when the segment is closed.
+ */
+public final class CodecTermCache implements Accountable {
+
+  /** The Constant DEFAULT_SIZE. */
+  public static final int DEFAULT_SIZE = 4096;
+
+  /** The number of slots in a set. */
+  public static final int WAYS = 4;
+
+  /** The Constant STRING_RAM_BYTES_USED. */
+  private static final long STRING_RAM_BYTES_USED = RamUsageEstimator
+      .shallowSizeOfInstance(String.class);
+
+  /** The mask for the set, the number of sets minus one. */
+  private final int mask;
+
+  /** The entries, by slot. */
+  private final AtomicReferenceArray<Entry> entries;
+
+  /** The hits. */
+  private final LongAdder hits;
+
+  /** The misses. */
+  private final LongAdder misses;
+
+  /**
+   * Instantiates a new codec term cache.
+   */
+  public CodecTermCache() {
+    this(DEFAULT_SIZE);
+  }
+
+  /**
+   * Instantiates a new codec term cache.
+   *
+   * @param size the maximum number of cached terms, rounded up to a power of
+   *          two and at least {@link #WAYS}
+   */
+  public CodecTermCache(int size) {
+    if (size <= 0 || size > (1 << 30)) {
+      throw new IllegalArgumentException(
+          "size should be positive and at most 2^30");
+    }
+    int capacity = Integer.highestOneBit(size);
+    if (capacity < size) {
+      capacity <<= 1;
+    }
+    capacity = Math.max(capacity, WAYS);
+    mask = capacity / WAYS - 1;
+    entries = new AtomicReferenceArray<>(capacity);
+    hits = new LongAdder();
+    misses = new LongAdder();
+  }
+
+  /**
+   * Gets the first slot of the set for a term reference.
+   *
+   * @param ref the term reference
+   * @return the first slot
+   */
+  private int firstSlot(long ref) {
+    long h = ref * 0x9E3779B97F4A7C15L;
+    return ((int) (h ^ (h >>> 32)) & mask) * WAYS;
+  }
+
+  /**
+   * Gets the term.
+   *
+   * @param ref the term reference
+   * @return the term, or null if not cached
+   */
+  public String get(long ref) {
+    int first = firstSlot(ref);
+    for (int i = first; i < first + WAYS; i++) {
+      Entry entry = entries.get(i);
+      if (entry != null && entry.ref == ref) {
+        entry.referenced = true;
+        hits.increment();
+        return entry.term;
+      }
+    }
+    misses.increment();
+    return null;
+  }
+
+  /**
+   * Adds the term. An empty slot in its set is used if available, otherwise
+   * the first term in the set not referenced since the last eviction is
+   * replaced, clearing the references of the terms passed.
+   *
+   * @param ref the term reference
+   * @param term the term
+   */
+  public void put(long ref, String term) {
+    int first = firstSlot(ref);
+    int victim = -1;
+    for (int i = first; i < first + WAYS; i++) {
+      Entry entry = entries.get(i);
+      if (entry == null || entry.ref == ref) {
+        victim = i;
+        break;
+      }
+    }
+    // clock within the set, each term gets a second chance
+    for (int i = 0; victim < 0 && i < 2 * WAYS; i++) {
+      int slot = first + (i % WAYS);
+      Entry entry = entries.get(slot);
+      if (entry == null || !entry.referenced) {
+        victim = slot;
+      } else {
+        entry.referenced = false;
+      }
+    }
+    entries.lazySet(victim < 0 ? first : victim, new Entry(ref, term));
+  }
+
+  /**
+   * Clear.
+   */
+  public void clear() {
+    for (int i = 0; i < entries.length(); i++) {
+      entries.lazySet(i, null);
+    }
+  }
+
+  /**
+   * Gets the number of cached terms.
+   *
+   * @return the number
+   */
+  public int getNumber() {
+    int number = 0;
+    for (int i = 0; i < entries.length(); i++) {
+      if (entries.get(i) != null) {
+        number++;
+      }
+    }
+    return number;
+  }
+
+  /**
+   * Gets the maximum number of cached terms.
+   *
+   * @return the size
+   */
+  public int getSize() {
+    return entries.length();
+  }
+
+  /**
+   * Gets the hits.
+   *
+   * @return the hits
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * Gets the misses.
+   *
+   * @return the misses
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.lucene.util.Accountable#ramBytesUsed()
+   */
+  @Override
+  public long ramBytesUsed() {
+    long size = RamUsageEstimator.shallowSizeOfInstance(getClass())
+        + RamUsageEstimator.alignObjectSize(
+            RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+                + (long) RamUsageEstimator.NUM_BYTES_OBJECT_REF
+                    * entries.length());
+    for (int i = 0; i < entries.length(); i++) {
+      Entry entry = entries.get(i);
+      if (entry != null) {
+        size += Entry.BASE_RAM_BYTES_USED + STRING_RAM_BYTES_USED
+            + RamUsageEstimator.alignObjectSize(
+                RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+                    + (long) Character.BYTES * entry.term.length());
+      }
+    }
+    return size;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(size=" + getNumber() + "/"
+        + getSize() + ", hits=" + getHits() + ", misses=" + getMisses() + ")";
+  }
+
+  /**
+   * The Class Entry.
+   */
+  private static final class Entry {
+
+    /** The Constant BASE_RAM_BYTES_USED. */
+    static final long BASE_RAM_BYTES_USED = RamUsageEstimator
+        .shallowSizeOfInstance(Entry.class);
+
+    /** The term reference. */
+    final long ref;
+
+    /** The term. */
+    final String term;
+
+    /** If the term was hit since the last eviction in its set. */
+    volatile boolean referenced;
+
+    /**
+     * Instantiates a new entry.
+     *
+     * @param ref the term reference
+     * @param term the term
+     */
+    Entry(long ref, String term) {
+      this.ref = ref;
+      this.term = term;
+    }
+
+  }
+
+}
@@ -9,6 +9,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import mtas.analysis.token.MtasToken;
@@ -246,6 +247,43 @@ public class CodecUtil {
       ArrayList<Integer> fullDocSet, ComponentField fieldStats, Status status)
       throws IllegalAccessException, IllegalArgumentException,
       InvocationTargetException, IOException {
+    collectField(field, searcher, rawReader, toSortedArray(fullDocList),
+        toSortedArray(fullDocSet), fieldStats, status, null);
+  }
+
+  /**
+   * Collect field, using the executor (if not null) to collect segments in
+   * parallel.
+   *
+   * @param field
+   *          the field
+   * @param searcher
+   *          the searcher
+   * @param rawReader
+   *          the raw reader
+   * @param fullDocList
+   *          the full doc list, sorted
+   * @param fullDocSet
+   *          the full doc set, sorted
+   * @param fieldStats
+   *          the field stats
+   * @param status
+   *          the status
+   * @param executor
+   *          the executor
+   * @throws IllegalAccessException
+   *           the illegal access exception
+   * @throws IllegalArgumentException
+   *           the illegal argument exception
+   * @throws InvocationTargetException
+   *           the invocation target exception
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  public static void collectField(String field, IndexSearcher searcher,
+      IndexReader rawReader, int[] fullDocList, int[] fullDocSet,
+      ComponentField fieldStats, Status status, ExecutorService executor) throws IllegalAccessException,
+      IllegalArgumentException, InvocationTargetException, IOException {
     if (fieldStats != null) {
       IndexReader reader = searcher.getIndexReader();
       HashMap<MtasSpanQuery, SpanWeight> spansQueryWeight = new HashMap<>();
@@ -259,7 +297,8 @@ public class CodecUtil {
       }
       // collect
       CodecCollector.collectField(field, searcher, reader, rawReader,
-          fullDocList, fullDocSet, fieldStats, spansQueryWeight, status);
+          fullDocList, fullDocSet, fieldStats, spansQueryWeight, status,
+          executor);
     }
   }
 
@@ -278,11 +317,48 @@ public class CodecUtil {
   public static void collectCollection(IndexReader reader,
       List<Integer> fullDocSet, ComponentCollection collectionInfo)
       throws IOException {
+    collectCollection(reader, toSortedArray(fullDocSet), collectionInfo);
+  }
+
+  /**
+   * Collect collection.
+   *
+   * @param reader
+   *          the reader
+   * @param fullDocSet
+   *          the full doc set, sorted
+   * @param collectionInfo
+   *          the collection info
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  public static void collectCollection(IndexReader reader, int[] fullDocSet,
+      ComponentCollection collectionInfo) throws IOException {
     if (collectionInfo != null) {
       CodecCollector.collectCollection(reader, fullDocSet, collectionInfo);
     }
   }
 
+  /**
+   * To sorted array.
+   *
+   * @param list
+   *          the list
+   * @return the sorted array, or null if the list is null
+   */
+  private static int[] toSortedArray(List<Integer> list) {
+    if (list == null) {
+      return null;
+    }
+    int[] result = new int[list.size()];
+    int i = 0;
+    for (Integer item : list) {
+      result[i++] = item;
+    }
+    Arrays.sort(result);
+    return result;
+  }
+
   /**
    * Creates the stats items.
    *
@@ -0,0 +1,478 @@
+package mtas.codec.util;
+
+import java.io.IOException;
+
+import mtas.codec.tree.MtasFixedWidthTree;
+import mtas.codec.tree.MtasTree;
+
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.RandomAccessInput;
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * The Class MtasTreeCursor. Streaming search on a tree stored as
+ * {@link MtasFixedWidthTree}, or with variable length nodes as written by
+ * older versions. Hits for a range of positions are emitted into a caller
+ * owned {@link MtasTreeHitBuffer}, in order of start and end position, so
+ * there is no limit on the number of hits. Nodes of fixed width trees are read
+ * from a random access slice without seeking. Traversals of the tree by
+ * {@link CodecSearchTree} read nodes and their objects into primitive fields
+ * and buffers as well, without creating objects for each node.
+ */
+public class MtasTreeCursor {
+
+  /** The in. */
+  private final IndexInput in;
+
+  /** The ref. */
+  private final long ref;
+
+  /** The object ref approx offset. */
+  private final long objectRefApproxOffset;
+
+  /** The single point. */
+  private final boolean singlePoint;
+
+  /** The store additional id. */
+  private final boolean storeAdditionalId;
+
+  /** The fixed width. */
+  private final boolean fixedWidth;
+
+  /** The node ref approx offset, only for variable length nodes. */
+  private long nodeRefApproxOffset;
+
+  /** The data, only for fixed width nodes. */
+  private RandomAccessInput data;
+
+  /** The number of nodes. */
+  private int numberOfNodes;
+
+  /** The number of objects. */
+  private int numberOfObjects;
+
+  /** The position bytes. */
+  private int positionBytes;
+
+  /** The object index bytes. */
+  private int objectIndexBytes;
+
+  /** The ref bytes. */
+  private int refBytes;
+
+  /** The additional id bytes. */
+  private int additionalIdBytes;
+
+  /** The additional ref bytes. */
+  private int additionalRefBytes;
+
+  /** The node width. */
+  private int nodeWidth;
+
+  /** The object width. */
+  private int objectWidth;
+
+  /** The position of the objects in the data. */
+  private long objectsPosition;
+
+  /** The start position of the search. */
+  private int startPosition;
+
+  /** The end position of the search. */
+  private int endPosition;
+
+  /** The stack with nodes to visit. */
+  private long[] stack;
+
+  /** The stack size. */
+  private int stackSize;
+
+  /** The left of the last read node. */
+  private int nodeLeft;
+
+  /** The right of the last read node. */
+  private int nodeRight;
+
+  /** The max of the last read node. */
+  private int nodeMax;
+
+  /** The left child of the last read node, -1 if none. */
+  private long nodeLeftChild;
+
+  /** The right child of the last read node, -1 if none. */
+  private long nodeRightChild;
+
+  /**
+   * The first object of the last read node, for variable length nodes the file
+   * pointer.
+   */
+  private long nodeObjects;
+
+  /** The number of objects of the last read node. */
+  private int nodeSize;
+
+  /** The left of the node with pending objects. */
+  private int currentLeft;
+
+  /** The right of the node with pending objects. */
+  private int currentRight;
+
+  /** The pending objects. */
+  private long currentObjects;
+
+  /** The index of the next pending object. */
+  private int currentIndex;
+
+  /** The number of pending objects. */
+  private int currentSize;
+
+  /** The previous ref, only for variable length nodes. */
+  private long currentPreviousRef;
+
+  /**
+   * Instantiates a new mtas tree cursor.
+   *
+   * @param in the in
+   * @param ref the ref
+   * @param objectRefApproxOffset the object ref approx offset
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public MtasTreeCursor(IndexInput in, long ref, long objectRefApproxOffset)
+      throws IOException {
+    this.in = in;
+    this.ref = ref;
+    this.objectRefApproxOffset = objectRefApproxOffset;
+    in.seek(ref);
+    nodeRefApproxOffset = in.readVLong();
+    byte flag = in.readByte();
+    singlePoint = (flag
+        & MtasTree.SINGLE_POSITION_TREE) == MtasTree.SINGLE_POSITION_TREE;
+    storeAdditionalId = (flag
+        & MtasTree.STORE_ADDITIONAL_ID) == MtasTree.STORE_ADDITIONAL_ID;
+    fixedWidth = (flag
+        & MtasTree.FIXED_WIDTH_NODES) == MtasTree.FIXED_WIDTH_NODES;
+    if (fixedWidth) {
+      numberOfNodes = in.readVInt();
+      numberOfObjects = in.readVInt();
+      positionBytes = in.readByte();
+      objectIndexBytes = in.readByte();
+      refBytes = in.readByte();
+      additionalIdBytes = in.readByte();
+      additionalRefBytes = in.readByte();
+      nodeWidth = 3 * positionBytes + objectIndexBytes;
+      objectWidth = refBytes + additionalIdBytes + additionalRefBytes;
+      objectsPosition = (long) numberOfNodes * nodeWidth;
+      data = in.randomAccessSlice(in.getFilePointer(),
+          objectsPosition + (long) numberOfObjects * objectWidth);
+    }
+    stack = new long[16];
+    search(0, -1);
+  }
+
+  /**
+   * Start a search for all hits overlapping a range of positions.
+   *
+   * @param startPosition the start position
+   * @param endPosition the end position
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void search(int startPosition, int endPosition) throws IOException {
+    this.startPosition = startPosition;
+    this.endPosition = endPosition;
+    stackSize = 0;
+    currentIndex = 0;
+    currentSize = 0;
+    if (startPosition <= endPosition) {
+      descend(getRoot());
+    }
+  }
+
+  /**
+   * Fill the buffer with the next hits.
+   *
+   * @param buffer the buffer
+   * @return the number of hits in the buffer, zero if finished
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public int next(MtasTreeHitBuffer buffer) throws IOException {
+    buffer.size = 0;
+    while (buffer.size < buffer.refs.length) {
+      if (currentIndex < currentSize) {
+        emit(buffer);
+      } else if (stackSize > 0) {
+        readNode(stack[--stackSize]);
+        if (nodeLeft > endPosition) {
+          // all remaining nodes start after the end position
+          stackSize = 0;
+        } else {
+          if (nodeRight >= startPosition) {
+            currentLeft = nodeLeft;
+            currentRight = nodeRight;
+            currentObjects = nodeObjects;
+            currentIndex = 0;
+            currentSize = nodeSize;
+          }
+          descend(nodeRightChild);
+        }
+      } else {
+        break;
+      }
+    }
+    return buffer.size;
+  }
+
+  /**
+   * Checks if is single point.
+   *
+   * @return true, if is single point
+   */
+  public boolean isSinglePoint() {
+    return singlePoint;
+  }
+
+  /**
+   * Checks if is store additional id.
+   *
+   * @return true, if is store additional id
+   */
+  public boolean isStoreAdditionalId() {
+    return storeAdditionalId;
+  }
+
+  /**
+   * Push the node and its left descendants that can contain hits on the
+   * stack.
+   *
+   * @param node the node
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void descend(long node) throws IOException {
+    long localNode = node;
+    while (localNode >= 0) {
+      readNode(localNode);
+      if (nodeMax < startPosition) {
+        break;
+      }
+      if (stackSize == stack.length) {
+        stack = ArrayUtil.grow(stack, stackSize + 1);
+      }
+      stack[stackSize++] = localNode;
+      localNode = nodeLeftChild;
+    }
+  }
+
+  /**
+   * Emit the next pending object into the buffer.
+   *
+   * @param buffer the buffer
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void emit(MtasTreeHitBuffer buffer) throws IOException {
+    int i = buffer.size++;
+    buffer.startPositions[i] = currentLeft;
+    buffer.endPositions[i] = currentRight;
+    if (fixedWidth) {
+      long position = objectsPosition
+          + (currentObjects + currentIndex) * objectWidth;
+      buffer.refs[i] = MtasFixedWidthTree.read(data, position, refBytes)
+          + objectRefApproxOffset;
+      if (storeAdditionalId) {
+        position += refBytes;
+        buffer.additionalIds[i] = (int) MtasFixedWidthTree.read(data,
+            position, additionalIdBytes);
+        buffer.additionalRefs[i] = MtasFixedWidthTree.read(data,
+            position + additionalIdBytes, additionalRefBytes);
+      } else {
+        buffer.additionalIds[i] = 0;
+        buffer.additionalRefs[i] = 0;
+      }
+    } else {
+      in.seek(currentObjects);
+      currentPreviousRef = (currentIndex == 0 ? objectRefApproxOffset
+          : currentPreviousRef) + in.readVLong();
+      buffer.refs[i] = currentPreviousRef;
+      if (storeAdditionalId) {
+        buffer.additionalIds[i] = in.readVInt();
+        buffer.additionalRefs[i] = in.readVLong();
+      } else {
+        buffer.additionalIds[i] = 0;
+        buffer.additionalRefs[i] = 0;
+      }
+      currentObjects = in.getFilePointer();
+    }
+    currentIndex++;
+  }
+
+  /**
+   * Gets the root node.
+   *
+   * @return the root
+   */
+  long getRoot() {
+    return fixedWidth ? (numberOfNodes > 0 ? 0 : -1) : ref;
+  }
+
+  /**
+   * Read the node.
+   *
+   * @param node the node, the index for fixed width nodes and the file
+   *          pointer otherwise
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  void readNode(long node) throws IOException {
+    if (fixedWidth) {
+      int k = (int) node;
+      long position = (long) k * nodeWidth;
+      nodeLeft = (int) MtasFixedWidthTree.read(data, position, positionBytes);
+      nodeRight = (int) MtasFixedWidthTree.read(data, position + positionBytes,
+          positionBytes);
+      nodeMax = (int) MtasFixedWidthTree.read(data,
+          position + 2 * positionBytes, positionBytes);
+      nodeLeftChild = 2L * k + 1 < numberOfNodes ? 2L * k + 1 : -1;
+      nodeRightChild = 2L * k + 2 < numberOfNodes ? 2L * k + 2 : -1;
+      if (singlePoint) {
+        nodeObjects = k;
+        nodeSize = 1;
+      } else {
+        nodeObjects = MtasFixedWidthTree.read(data,
+            position + 3 * positionBytes, objectIndexBytes);
+        long nextObjects = k + 1 < numberOfNodes
+            ? MtasFixedWidthTree.read(data,
+                position + nodeWidth + 3 * positionBytes, objectIndexBytes)
+            : numberOfObjects;
+        nodeSize = (int) (nextObjects - nodeObjects);
+      }
+    } else {
+      in.seek(node);
+      if (node == ref) {
+        in.readVLong();
+        in.readByte();
+      }
+      nodeLeft = in.readVInt();
+      nodeRight = in.readVInt();
+      nodeMax = in.readVInt();
+      long leftChild = in.readVLong() + nodeRefApproxOffset;
+      long rightChild = in.readVLong() + nodeRefApproxOffset;
+      nodeLeftChild = leftChild == node ? -1 : leftChild;
+      nodeRightChild = rightChild == node ? -1 : rightChild;
+      nodeSize = singlePoint ? 1 : in.readVInt();
+      nodeObjects = in.getFilePointer();
+    }
+  }
+
+  /**
+   * Start emitting the objects of the last read node with
+   * {@link #nextObjects(MtasTreeHitBuffer)}, replacing pending hits of a
+   * search.
+   */
+  void startObjects() {
+    stackSize = 0;
+    currentLeft = nodeLeft;
+    currentRight = nodeRight;
+    currentObjects = nodeObjects;
+    currentIndex = 0;
+    currentSize = nodeSize;
+  }
+
+  /**
+   * Fill the buffer with the next objects of the node selected by
+   * {@link #startObjects()}.
+   *
+   * @param buffer the buffer
+   * @return the number of objects in the buffer, zero if finished
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  int nextObjects(MtasTreeHitBuffer buffer) throws IOException {
+    buffer.size = 0;
+    while (buffer.size < buffer.refs.length && currentIndex < currentSize) {
+      emit(buffer);
+    }
+    return buffer.size;
+  }
+
+  /**
+   * Gets the left position of the last read node.
+   *
+   * @return the left
+   */
+  int getNodeLeft() {
+    return nodeLeft;
+  }
+
+  /**
+   * Gets the right position of the last read node.
+   *
+   * @return the right
+   */
+  int getNodeRight() {
+    return nodeRight;
+  }
+
+  /**
+   * Gets the max position in the subtree of the last read node.
+   *
+   * @return the max
+   */
+  int getNodeMax() {
+    return nodeMax;
+  }
+
+  /**
+   * Gets the left child of the last read node.
+   *
+   * @return the left child, -1 if none
+   */
+  long getNodeLeftChild() {
+    return nodeLeftChild;
+  }
+
+  /**
+   * Gets the right child of the last read node.
+   *
+   * @return the right child, -1 if none
+   */
+  long getNodeRightChild() {
+    return nodeRightChild;
+  }
+
+  /**
+   * The Class MtasTreeHitBuffer. Caller owned buffer with hits as primitive
+   * columns.
+   */
+  public static class MtasTreeHitBuffer {
+
+    /** The start positions. */
+    public final int[] startPositions;
+
+    /** The end positions. */
+    public final int[] endPositions;
+
+    /** The refs. */
+    public final long[] refs;
+
+    /** The additional ids. */
+    public final int[] additionalIds;
+
+    /** The additional refs. */
+    public final long[] additionalRefs;
+
+    /** The number of hits. */
+    public int size;
+
+    /**
+     * Instantiates a new mtas tree hit buffer.
+     *
+     * @param capacity the capacity
+     */
+    public MtasTreeHitBuffer(int capacity) {
+      startPositions = new int[capacity];
+      endPositions = new int[capacity];
+      refs = new long[capacity];
+      additionalIds = new int[capacity];
+      additionalRefs = new long[capacity];
+      size = 0;
+    }
+
+  }
+
+}
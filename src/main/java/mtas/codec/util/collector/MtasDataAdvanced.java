@@ -530,4 +530,51 @@ abstract class MtasDataAdvanced<T1 extends Number & Comparable<T1>, T2 extends N
     newAdvancedValueNList = new long[newSize];
   }
 
+  /*
+   * (non-Javadoc)
+   *
+   * @see mtas.codec.util.collector.MtasDataCollector#write(mtas.codec.util.
+   * collector.MtasDataCollectorOutput)
+   */
+  @Override
+  void write(MtasDataCollectorOutput out) throws IOException {
+    super.write(out);
+    out.writeNumbers(advancedValueSumList, getSize());
+    out.writeNumbers(advancedValueMaxList, getSize());
+    out.writeNumbers(advancedValueMinList, getSize());
+    out.writeNumbers(advancedValueSumOfSquaresList, getSize());
+    out.writeNumbers(advancedValueSumOfLogsList, getSize());
+    out.writeLongs(advancedValueNList, getSize());
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see mtas.codec.util.collector.MtasDataCollector#read(mtas.codec.util.
+   * collector.MtasDataCollectorInput)
+   */
+  @Override
+  void read(MtasDataCollectorInput in) throws IOException {
+    super.read(in);
+    advancedValueSumList = in.readNumbers(operations::createVector1);
+    advancedValueMaxList = in.readNumbers(operations::createVector1);
+    advancedValueMinList = in.readNumbers(operations::createVector1);
+    advancedValueSumOfSquaresList = in
+        .readNumbers(operations::createVector1);
+    advancedValueSumOfLogsList = in.readNumbers(operations::createVector2);
+    advancedValueNList = in.readLongs();
+    if (advancedValueSumList == null || advancedValueMaxList == null
+        || advancedValueMinList == null
+        || advancedValueSumOfSquaresList == null
+        || advancedValueSumOfLogsList == null || advancedValueNList == null
+        || getSize() > advancedValueSumList.length
+        || getSize() > advancedValueMaxList.length
+        || getSize() > advancedValueMinList.length
+        || getSize() > advancedValueSumOfSquaresList.length
+        || getSize() > advancedValueSumOfLogsList.length
+        || getSize() > advancedValueNList.length) {
+      throw new IOException("invalid advanced values");
+    }
+  }
+
 }
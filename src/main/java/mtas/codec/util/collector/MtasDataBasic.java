@@ -400,4 +400,35 @@ abstract class MtasDataBasic<T1 extends Number & Comparable<T1>, T2 extends Numb
     newBasicValueNList = new long[newSize];
   }
 
+  /*
+   * (non-Javadoc)
+   *
+   * @see mtas.codec.util.collector.MtasDataCollector#write(mtas.codec.util.
+   * collector.MtasDataCollectorOutput)
+   */
+  @Override
+  void write(MtasDataCollectorOutput out) throws IOException {
+    super.write(out);
+    out.writeNumbers(basicValueSumList, getSize());
+    out.writeLongs(basicValueNList, getSize());
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see mtas.codec.util.collector.MtasDataCollector#read(mtas.codec.util.
+   * collector.MtasDataCollectorInput)
+   */
+  @Override
+  void read(MtasDataCollectorInput in) throws IOException {
+    super.read(in);
+    basicValueSumList = in.readNumbers(operations::createVector1);
+    basicValueNList = in.readLongs();
+    if (basicValueSumList == null || basicValueNList == null
+        || getSize() > basicValueSumList.length
+        || getSize() > basicValueNList.length) {
+      throw new IOException("invalid basic values");
+    }
+  }
+
 }
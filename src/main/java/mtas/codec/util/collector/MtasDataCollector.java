@@ -847,6 +847,25 @@ public abstract class MtasDataCollector<T1 extends Number & Comparable<T1>, T2 e
     }
   }
 
+  /**
+   * Checks for segment keys registered by previous segments.
+   *
+   * @return true, if successful
+   */
+  public boolean hasSegmentKeys() {
+    return segmentRegistration != null && !segmentKeys.isEmpty();
+  }
+
+  /**
+   * Checks if the key is registered as segment key by previous segments.
+   *
+   * @param key the key
+   * @return true, if is segment key
+   */
+  public boolean isSegmentKey(String key) {
+    return segmentRegistration != null && segmentKeys.contains(key);
+  }
+
   /**
    * Check existence necessary keys.
    *
@@ -1478,6 +1497,97 @@ public abstract class MtasDataCollector<T1 extends Number & Comparable<T1>, T2 e
     return size;
   }
 
+  /**
+   * Creates an empty collector with the properties read from the input.
+   *
+   * @param in the in
+   * @return the mtas data collector
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static MtasDataCollector<?, ?> create(MtasDataCollectorInput in)
+      throws IOException {
+    String collectorType = in.readString();
+    String dataType = in.readString();
+    String statsType = in.readString();
+    SortedSet<String> statsItems = in.readStringSet();
+    String sortType = in.readString();
+    String sortDirection = in.readString();
+    Integer start = in.readInteger();
+    Integer number = in.readInteger();
+    if (in.readBoolean()) {
+      return DataCollector.getCollector(collectorType, dataType, statsType,
+          statsItems, sortType, sortDirection, start, number,
+          in.readStrings(), in.readStrings(), in.readStrings(),
+          in.readStringSets(), in.readStrings(), in.readStrings(),
+          in.readIntegers(), in.readIntegers(), null, null);
+    } else {
+      return DataCollector.getCollector(collectorType, dataType, statsType,
+          statsItems, sortType, sortDirection, start, number, null, null);
+    }
+  }
+
+  /**
+   * Write the properties, as read by {@link #create(MtasDataCollectorInput)},
+   * and the data.
+   *
+   * @param out the out
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  void write(MtasDataCollectorOutput out) throws IOException {
+    out.writeString(collectorType);
+    out.writeString(dataType);
+    out.writeString(statsType);
+    out.writeStringSet(statsItems);
+    out.writeString(sortType);
+    out.writeString(sortDirection);
+    out.writeInteger(start);
+    out.writeInteger(number);
+    out.writeBoolean(hasSub);
+    if (hasSub) {
+      out.writeStrings(subCollectorTypes);
+      out.writeStrings(subDataTypes);
+      out.writeStrings(subStatsTypes);
+      out.writeStringSets(subStatsItems);
+      out.writeStrings(subSortTypes);
+      out.writeStrings(subSortDirections);
+      out.writeIntegers(subStart);
+      out.writeIntegers(subNumber);
+    }
+    out.writeBoolean(withTotal);
+    out.writeVInt(size);
+    out.writeVInt(position);
+    out.writeStrings(keyList, size);
+    out.writeInts(sourceNumberList, size);
+    out.writeInts(errorNumber, size);
+    out.writeErrorList(errorList, size);
+    out.writeCollectors(subCollectorListNextLevel, size);
+    out.writeCollector(subCollectorNextLevel);
+  }
+
+  /**
+   * Read the data written by {@link #write(MtasDataCollectorOutput)}.
+   *
+   * @param in the in
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  void read(MtasDataCollectorInput in) throws IOException {
+    withTotal = in.readBoolean();
+    size = in.readVInt();
+    position = in.readVInt();
+    keyList = in.readStrings();
+    sourceNumberList = in.readInts();
+    errorNumber = in.readInts();
+    errorList = in.readErrorList();
+    subCollectorListNextLevel = in.readCollectors();
+    subCollectorNextLevel = in.readCollector();
+    if (keyList == null || sourceNumberList == null || errorNumber == null
+        || errorList == null || size > keyList.length
+        || size > sourceNumberList.length || size > errorNumber.length
+        || size > errorList.length) {
+      throw new IOException("invalid collector of size " + size);
+    }
+  }
+
   /**
    * With total.
    *
@@ -1505,4 +1615,4 @@ public abstract class MtasDataCollector<T1 extends Number & Comparable<T1>, T2 e
     }
   }
 
-}
\ No newline at end of file
+}
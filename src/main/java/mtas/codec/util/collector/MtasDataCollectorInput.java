@@ -0,0 +1,297 @@
+package mtas.codec.util.collector;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.IntFunction;
+
+/**
+ * The Class MtasDataCollectorInput. Reads collectors written by
+ * {@link MtasDataCollectorOutput}.
+ */
+public class MtasDataCollectorInput {
+
+  /** The in. */
+  private final DataInput in;
+
+  /** The collectors read so far, by reference number. */
+  private final List<MtasDataCollector<?, ?>> collectors = new ArrayList<>();
+
+  /**
+   * Instantiates a new mtas data collector input.
+   *
+   * @param in the in
+   */
+  public MtasDataCollectorInput(DataInput in) {
+    this.in = in;
+  }
+
+  /**
+   * Read a collector, or a reference to a collector read before.
+   *
+   * @return the collector
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public MtasDataCollector<?, ?> readCollector() throws IOException {
+    int type = readVInt();
+    if (type == MtasDataCollectorOutput.COLLECTOR_NULL) {
+      return null;
+    } else if (type == MtasDataCollectorOutput.COLLECTOR_NEW) {
+      MtasDataCollector<?, ?> collector = MtasDataCollector.create(this);
+      collectors.add(collector);
+      collector.read(this);
+      return collector;
+    } else if (type
+        - MtasDataCollectorOutput.COLLECTOR_REFERENCE < collectors.size()) {
+      return collectors
+          .get(type - MtasDataCollectorOutput.COLLECTOR_REFERENCE);
+    } else {
+      throw new IOException("unknown collector reference " + type);
+    }
+  }
+
+  /**
+   * Read collectors.
+   *
+   * @return the collectors
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  MtasDataCollector<?, ?>[] readCollectors() throws IOException {
+    int length = MtasDataColumnCodec.readLength(in);
+    if (length < 0) {
+      return null;
+    } else {
+      MtasDataCollector<?, ?>[] list = new MtasDataCollector<?, ?>[length];
+      int n = MtasDataColumnCodec.readCount(in, length);
+      for (int i = 0; i < n; i++) {
+        list[i] = readCollector();
+      }
+      return list;
+    }
+  }
+
+  /**
+   * Read a boolean.
+   *
+   * @return the boolean
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public boolean readBoolean() throws IOException {
+    return in.readBoolean();
+  }
+
+  /**
+   * Read a non negative integer.
+   *
+   * @return the integer
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public int readVInt() throws IOException {
+    long value = MtasDataColumnCodec.readVLong(in);
+    if (value < 0 || value > Integer.MAX_VALUE) {
+      throw new IOException("invalid value " + value);
+    }
+    return (int) value;
+  }
+
+  /**
+   * Read an integer, or null.
+   *
+   * @return the integer
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public Integer readInteger() throws IOException {
+    return in.readBoolean() ? (int) MtasDataColumnCodec.readZLong(in) : null;
+  }
+
+  /**
+   * Read a double, or null.
+   *
+   * @return the double
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public Double readDouble() throws IOException {
+    return in.readBoolean() ? in.readDouble() : null;
+  }
+
+  /**
+   * Read a string, or null.
+   *
+   * @return the string
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public String readString() throws IOException {
+    return MtasDataColumnCodec.readString(in);
+  }
+
+  /**
+   * Read strings, or null.
+   *
+   * @return the strings
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public String[] readStrings() throws IOException {
+    return MtasDataColumnCodec.readStrings(in);
+  }
+
+  /**
+   * Read integers, or null.
+   *
+   * @return the integers
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public Integer[] readIntegers() throws IOException {
+    int length = MtasDataColumnCodec.readLength(in);
+    if (length < 0) {
+      return null;
+    } else {
+      Integer[] list = new Integer[length];
+      for (int i = 0; i < length; i++) {
+        list[i] = readInteger();
+      }
+      return list;
+    }
+  }
+
+  /**
+   * Read a sorted set of strings, or null.
+   *
+   * @return the sorted set
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public SortedSet<String> readStringSet() throws IOException {
+    String[] list = readStrings();
+    return list == null ? null : new TreeSet<>(Arrays.asList(list));
+  }
+
+  /**
+   * Read sorted sets of strings, or null.
+   *
+   * @return the sorted sets
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @SuppressWarnings("unchecked")
+  public SortedSet<String>[] readStringSets() throws IOException {
+    int length = MtasDataColumnCodec.readLength(in);
+    if (length < 0) {
+      return null;
+    } else {
+      SortedSet<String>[] list = new SortedSet[length];
+      for (int i = 0; i < length; i++) {
+        list[i] = readStringSet();
+      }
+      return list;
+    }
+  }
+
+  /**
+   * Read a map from strings to strings, or null.
+   *
+   * @return the map
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public Map<String, String> readStringMap() throws IOException {
+    int size = MtasDataColumnCodec.readLength(in);
+    if (size < 0) {
+      return null;
+    } else {
+      Map<String, String> map = new HashMap<>();
+      for (int i = 0; i < size; i++) {
+        map.put(readString(), readString());
+      }
+      return map;
+    }
+  }
+
+  /**
+   * Read ints, or null.
+   *
+   * @return the ints
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  int[] readInts() throws IOException {
+    return MtasDataColumnCodec.readInts(in);
+  }
+
+  /**
+   * Read longs, or null.
+   *
+   * @return the longs
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  long[] readLongs() throws IOException {
+    return MtasDataColumnCodec.readLongs(in);
+  }
+
+  /**
+   * Read numbers, or null.
+   *
+   * @param <T> the generic type
+   * @param create creates the list with the written length
+   * @return the numbers
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  <T extends Number> T[] readNumbers(IntFunction<T[]> create)
+      throws IOException {
+    return MtasDataColumnCodec.readNumbers(in, create);
+  }
+
+  /**
+   * Read a matrix of numbers, or null.
+   *
+   * @param <T> the generic type
+   * @param createMatrix creates the matrix with the written length
+   * @param create creates a row with the written length
+   * @return the matrix
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  <T extends Number> T[][] readNumberMatrix(IntFunction<T[][]> createMatrix,
+      IntFunction<T[]> create) throws IOException {
+    int length = MtasDataColumnCodec.readLength(in);
+    if (length < 0) {
+      return null;
+    } else {
+      T[][] list = createMatrix.apply(length);
+      int n = MtasDataColumnCodec.readCount(in, length);
+      for (int i = 0; i < n; i++) {
+        list[i] = readNumbers(create);
+      }
+      return list;
+    }
+  }
+
+  /**
+   * Read maps from strings to integers, or null.
+   *
+   * @return the maps
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @SuppressWarnings("unchecked")
+  HashMap<String, Integer>[] readErrorList() throws IOException {
+    int length = MtasDataColumnCodec.readLength(in);
+    if (length < 0) {
+      return null;
+    } else {
+      HashMap<String, Integer>[] list =
+          (HashMap<String, Integer>[]) new HashMap<?, ?>[length];
+      int n = MtasDataColumnCodec.readCount(in, length);
+      for (int i = 0; i < n; i++) {
+        int size = MtasDataColumnCodec.readLength(in);
+        if (size >= 0) {
+          list[i] = new HashMap<>();
+          for (int j = 0; j < size; j++) {
+            list[i].put(readString(), readInteger());
+          }
+        }
+      }
+      return list;
+    }
+  }
+
+}
@@ -0,0 +1,292 @@
+package mtas.codec.util.collector;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedSet;
+
+/**
+ * The Class MtasDataCollectorOutput. Writes collectors, with their sub
+ * collectors, in an explicit format that can be read with
+ * {@link MtasDataCollectorInput}. A collector written before is written as a
+ * reference, so the identity of collectors within one output is preserved.
+ */
+public class MtasDataCollectorOutput {
+
+  /** The Constant COLLECTOR_NULL. */
+  static final int COLLECTOR_NULL = 0;
+
+  /** The Constant COLLECTOR_NEW. */
+  static final int COLLECTOR_NEW = 1;
+
+  /** The Constant COLLECTOR_REFERENCE, followed by the reference number. */
+  static final int COLLECTOR_REFERENCE = 2;
+
+  /** The out. */
+  private final DataOutput out;
+
+  /** The collectors written so far, with their reference number. */
+  private final Map<MtasDataCollector<?, ?>, Integer> collectors =
+      new IdentityHashMap<>();
+
+  /**
+   * Instantiates a new mtas data collector output.
+   *
+   * @param out the out
+   */
+  public MtasDataCollectorOutput(DataOutput out) {
+    this.out = out;
+  }
+
+  /**
+   * Write a collector, or a reference if already written.
+   *
+   * @param collector the collector
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void writeCollector(MtasDataCollector<?, ?> collector)
+      throws IOException {
+    if (collector == null) {
+      writeVInt(COLLECTOR_NULL);
+    } else if (collectors.containsKey(collector)) {
+      writeVInt(COLLECTOR_REFERENCE + collectors.get(collector));
+    } else {
+      writeVInt(COLLECTOR_NEW);
+      collectors.put(collector, collectors.size());
+      collector.write(this);
+    }
+  }
+
+  /**
+   * Write collectors.
+   *
+   * @param list the list
+   * @param number the number of items to write
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  void writeCollectors(MtasDataCollector<?, ?>[] list, int number)
+      throws IOException {
+    if (MtasDataColumnCodec.writeLength(out,
+        list == null ? -1 : list.length)) {
+      int n = Math.min(number, list.length);
+      writeVInt(n);
+      for (int i = 0; i < n; i++) {
+        writeCollector(list[i]);
+      }
+    }
+  }
+
+  /**
+   * Write a boolean.
+   *
+   * @param value the value
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void writeBoolean(boolean value) throws IOException {
+    out.writeBoolean(value);
+  }
+
+  /**
+   * Write a non negative integer.
+   *
+   * @param value the value
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void writeVInt(int value) throws IOException {
+    if (value < 0) {
+      throw new IOException("negative value " + value);
+    }
+    MtasDataColumnCodec.writeVLong(out, value);
+  }
+
+  /**
+   * Write an integer, or null.
+   *
+   * @param value the value
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void writeInteger(Integer value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      MtasDataColumnCodec.writeZLong(out, value);
+    }
+  }
+
+  /**
+   * Write a double, or null.
+   *
+   * @param value the value
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void writeDouble(Double value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeDouble(value);
+    }
+  }
+
+  /**
+   * Write a string, or null.
+   *
+   * @param value the value
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void writeString(String value) throws IOException {
+    MtasDataColumnCodec.writeString(out, value);
+  }
+
+  /**
+   * Write strings, or null.
+   *
+   * @param list the list
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void writeStrings(String[] list) throws IOException {
+    MtasDataColumnCodec.writeStrings(out, list, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Write the first items of strings, or null.
+   *
+   * @param list the list
+   * @param number the number of items to write
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  void writeStrings(String[] list, int number) throws IOException {
+    MtasDataColumnCodec.writeStrings(out, list, number);
+  }
+
+  /**
+   * Write integers, or null.
+   *
+   * @param list the list
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void writeIntegers(Integer[] list) throws IOException {
+    if (MtasDataColumnCodec.writeLength(out,
+        list == null ? -1 : list.length)) {
+      for (Integer value : list) {
+        writeInteger(value);
+      }
+    }
+  }
+
+  /**
+   * Write a sorted set of strings, or null.
+   *
+   * @param set the set
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void writeStringSet(SortedSet<String> set) throws IOException {
+    writeStrings(set == null ? null : set.toArray(new String[set.size()]));
+  }
+
+  /**
+   * Write sorted sets of strings, or null.
+   *
+   * @param list the list
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void writeStringSets(SortedSet<String>[] list) throws IOException {
+    if (MtasDataColumnCodec.writeLength(out,
+        list == null ? -1 : list.length)) {
+      for (SortedSet<String> set : list) {
+        writeStringSet(set);
+      }
+    }
+  }
+
+  /**
+   * Write a map from strings to strings, or null.
+   *
+   * @param map the map
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void writeStringMap(Map<String, String> map) throws IOException {
+    if (MtasDataColumnCodec.writeLength(out, map == null ? -1 : map.size())) {
+      for (Entry<String, String> entry : map.entrySet()) {
+        writeString(entry.getKey());
+        writeString(entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Write the first items of ints, or null.
+   *
+   * @param list the list
+   * @param number the number of items to write
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  void writeInts(int[] list, int number) throws IOException {
+    MtasDataColumnCodec.writeInts(out, list, number);
+  }
+
+  /**
+   * Write the first items of longs, or null.
+   *
+   * @param list the list
+   * @param number the number of items to write
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  void writeLongs(long[] list, int number) throws IOException {
+    MtasDataColumnCodec.writeLongs(out, list, number);
+  }
+
+  /**
+   * Write the first items of numbers, or null.
+   *
+   * @param list the list
+   * @param number the number of items to write
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  void writeNumbers(Number[] list, int number) throws IOException {
+    MtasDataColumnCodec.writeNumbers(out, list, number);
+  }
+
+  /**
+   * Write the first items of a matrix of numbers, or null.
+   *
+   * @param list the list
+   * @param number the number of rows to write
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  void writeNumberMatrix(Number[][] list, int number) throws IOException {
+    if (MtasDataColumnCodec.writeLength(out,
+        list == null ? -1 : list.length)) {
+      int n = Math.min(number, list.length);
+      writeVInt(n);
+      for (int i = 0; i < n; i++) {
+        writeNumbers(list[i], Integer.MAX_VALUE);
+      }
+    }
+  }
+
+  /**
+   * Write the first items of maps from strings to integers, or null.
+   *
+   * @param list the list
+   * @param number the number of items to write
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  void writeErrorList(Map<String, Integer>[] list, int number)
+      throws IOException {
+    if (MtasDataColumnCodec.writeLength(out,
+        list == null ? -1 : list.length)) {
+      int n = Math.min(number, list.length);
+      writeVInt(n);
+      for (int i = 0; i < n; i++) {
+        if (MtasDataColumnCodec.writeLength(out,
+            list[i] == null ? -1 : list[i].size())) {
+          for (Entry<String, Integer> entry : list[i].entrySet()) {
+            writeString(entry.getKey());
+            writeInteger(entry.getValue());
+          }
+        }
+      }
+    }
+  }
+
+}
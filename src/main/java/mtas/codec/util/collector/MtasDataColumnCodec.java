@@ -0,0 +1,447 @@
+package mtas.codec.util.collector;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.IntFunction;
+
+/**
+ * The Class MtasDataColumnCodec. Compact encoding of the columns of a
+ * {@link MtasDataCollector}: keys are front coded against the previous key,
+ * integers are written as zigzag variable length integers and numeric values
+ * as primitive columns instead of boxed objects. Arrays keep their original
+ * length, but only the first <code>number</code> items are written. Used by
+ * {@link MtasDataCollectorOutput} and {@link MtasDataCollectorInput}.
+ */
+final class MtasDataColumnCodec {
+
+  /** The Constant TYPE_NULL. */
+  private static final int TYPE_NULL = 0;
+
+  /** The Constant TYPE_LONG. */
+  private static final int TYPE_LONG = 1;
+
+  /** The Constant TYPE_DOUBLE. */
+  private static final int TYPE_DOUBLE = 2;
+
+  /** The Constant TYPE_MIXED, a type for each item. */
+  private static final int TYPE_MIXED = 3;
+
+  /**
+   * Instantiates a new mtas data column codec.
+   */
+  private MtasDataColumnCodec() {
+    // do nothing
+  }
+
+  /**
+   * Write a string, or null.
+   *
+   * @param out the out
+   * @param value the value
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static void writeString(DataOutput out, String value) throws IOException {
+    if (value == null) {
+      writeVLong(out, 0);
+    } else {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeVLong(out, bytes.length + 1L);
+      out.write(bytes);
+    }
+  }
+
+  /**
+   * Read a string, or null.
+   *
+   * @param in the in
+   * @return the string
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static String readString(DataInput in) throws IOException {
+    int length = readLength(in);
+    if (length < 0) {
+      return null;
+    } else {
+      byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Write strings.
+   *
+   * @param out the out
+   * @param list the list
+   * @param number the number of items to write
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static void writeStrings(DataOutput out, String[] list, int number)
+      throws IOException {
+    if (writeLength(out, list == null ? -1 : list.length)) {
+      int n = Math.min(number, list.length);
+      writeVLong(out, n);
+      byte[] previous = new byte[0];
+      for (int i = 0; i < n; i++) {
+        if (list[i] == null) {
+          writeVLong(out, 0);
+        } else {
+          byte[] current = list[i].getBytes(StandardCharsets.UTF_8);
+          int prefix = 0;
+          int max = Math.min(previous.length, current.length);
+          while (prefix < max && previous[prefix] == current[prefix]) {
+            prefix++;
+          }
+          writeVLong(out, prefix + 1L);
+          writeVLong(out, current.length - prefix);
+          out.write(current, prefix, current.length - prefix);
+          previous = current;
+        }
+      }
+    }
+  }
+
+  /**
+   * Read strings.
+   *
+   * @param in the in
+   * @return the string[]
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static String[] readStrings(DataInput in) throws IOException {
+    int length = readLength(in);
+    if (length < 0) {
+      return null;
+    } else {
+      String[] list = new String[length];
+      int n = readCount(in, length);
+      byte[] previous = new byte[0];
+      for (int i = 0; i < n; i++) {
+        int prefix = (int) readVLong(in);
+        if (prefix > 0) {
+          prefix--;
+          int suffix = (int) readVLong(in);
+          if (prefix > previous.length || suffix < 0) {
+            throw new IOException("invalid prefix " + prefix);
+          }
+          byte[] current = new byte[prefix + suffix];
+          System.arraycopy(previous, 0, current, 0, prefix);
+          in.readFully(current, prefix, suffix);
+          list[i] = new String(current, StandardCharsets.UTF_8);
+          previous = current;
+        }
+      }
+      return list;
+    }
+  }
+
+  /**
+   * Write ints.
+   *
+   * @param out the out
+   * @param list the list
+   * @param number the number of items to write
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static void writeInts(DataOutput out, int[] list, int number)
+      throws IOException {
+    if (writeLength(out, list == null ? -1 : list.length)) {
+      int n = Math.min(number, list.length);
+      writeVLong(out, n);
+      for (int i = 0; i < n; i++) {
+        writeZLong(out, list[i]);
+      }
+    }
+  }
+
+  /**
+   * Read ints.
+   *
+   * @param in the in
+   * @return the int[]
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static int[] readInts(DataInput in) throws IOException {
+    int length = readLength(in);
+    if (length < 0) {
+      return null;
+    } else {
+      int[] list = new int[length];
+      int n = readCount(in, length);
+      for (int i = 0; i < n; i++) {
+        list[i] = (int) readZLong(in);
+      }
+      return list;
+    }
+  }
+
+  /**
+   * Write longs.
+   *
+   * @param out the out
+   * @param list the list
+   * @param number the number of items to write
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static void writeLongs(DataOutput out, long[] list, int number)
+      throws IOException {
+    if (writeLength(out, list == null ? -1 : list.length)) {
+      int n = Math.min(number, list.length);
+      writeVLong(out, n);
+      for (int i = 0; i < n; i++) {
+        writeZLong(out, list[i]);
+      }
+    }
+  }
+
+  /**
+   * Read longs.
+   *
+   * @param in the in
+   * @return the long[]
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static long[] readLongs(DataInput in) throws IOException {
+    int length = readLength(in);
+    if (length < 0) {
+      return null;
+    } else {
+      long[] list = new long[length];
+      int n = readCount(in, length);
+      for (int i = 0; i < n; i++) {
+        list[i] = readZLong(in);
+      }
+      return list;
+    }
+  }
+
+  /**
+   * Write numbers as a primitive column if all items are longs or all items
+   * are doubles, and with a type for each item otherwise.
+   *
+   * @param out the out
+   * @param list the list
+   * @param number the number of items to write
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static void writeNumbers(DataOutput out, Number[] list, int number)
+      throws IOException {
+    if (writeLength(out, list == null ? -1 : list.length)) {
+      int n = Math.min(number, list.length);
+      writeVLong(out, n);
+      int type = n > 0 ? numberType(list[0]) : TYPE_LONG;
+      for (int i = 0; i < n && type != TYPE_MIXED; i++) {
+        if (type == TYPE_NULL || numberType(list[i]) != type) {
+          type = TYPE_MIXED;
+        }
+      }
+      out.writeByte(type);
+      for (int i = 0; i < n; i++) {
+        if (type == TYPE_MIXED) {
+          int itemType = numberType(list[i]);
+          out.writeByte(itemType);
+          writeNumber(out, list[i], itemType);
+        } else {
+          writeNumber(out, list[i], type);
+        }
+      }
+    }
+  }
+
+  /**
+   * Read numbers.
+   *
+   * @param <T> the generic type
+   * @param in the in
+   * @param create creates the list with the written length
+   * @return the list
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @SuppressWarnings("unchecked")
+  static <T extends Number> T[] readNumbers(DataInput in,
+      IntFunction<T[]> create) throws IOException {
+    int length = readLength(in);
+    if (length < 0) {
+      return null;
+    } else {
+      T[] list = create.apply(length);
+      Class<?> componentType = list.getClass().getComponentType();
+      int n = readCount(in, length);
+      int type = in.readByte();
+      for (int i = 0; i < n; i++) {
+        Number value = readNumber(in,
+            type == TYPE_MIXED ? in.readByte() : type);
+        if (value == null || componentType.isInstance(value)) {
+          list[i] = (T) value;
+        } else {
+          throw new IOException("unexpected " + value.getClass().getName()
+              + " in " + componentType.getName() + " column");
+        }
+      }
+      return list;
+    }
+  }
+
+  /**
+   * Write a number of the given type.
+   *
+   * @param out the out
+   * @param value the value
+   * @param type the type
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void writeNumber(DataOutput out, Number value, int type)
+      throws IOException {
+    if (type == TYPE_LONG) {
+      writeZLong(out, value.longValue());
+    } else if (type == TYPE_DOUBLE) {
+      out.writeLong(Double.doubleToRawLongBits(value.doubleValue()));
+    }
+  }
+
+  /**
+   * Read a number of the given type.
+   *
+   * @param in the in
+   * @param type the type
+   * @return the number
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static Number readNumber(DataInput in, int type)
+      throws IOException {
+    if (type == TYPE_NULL) {
+      return null;
+    } else if (type == TYPE_LONG) {
+      return readZLong(in);
+    } else if (type == TYPE_DOUBLE) {
+      return Double.longBitsToDouble(in.readLong());
+    } else {
+      throw new IOException("unknown type " + type);
+    }
+  }
+
+  /**
+   * Number type.
+   *
+   * @param value the value
+   * @return the type
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static int numberType(Number value) throws IOException {
+    if (value == null) {
+      return TYPE_NULL;
+    } else if (value instanceof Long) {
+      return TYPE_LONG;
+    } else if (value instanceof Double) {
+      return TYPE_DOUBLE;
+    } else {
+      throw new IOException(
+          "unsupported value type " + value.getClass().getName());
+    }
+  }
+
+  /**
+   * Write length, -1 for null.
+   *
+   * @param out the out
+   * @param length the length
+   * @return true, if not null
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static boolean writeLength(DataOutput out, int length) throws IOException {
+    writeVLong(out, length + 1L);
+    return length >= 0;
+  }
+
+  /**
+   * Read length, -1 for null.
+   *
+   * @param in the in
+   * @return the length
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static int readLength(DataInput in) throws IOException {
+    long length = readVLong(in) - 1;
+    if (length < -1 || length > Integer.MAX_VALUE) {
+      throw new IOException("invalid length " + length);
+    }
+    return (int) length;
+  }
+
+  /**
+   * Read the count of written items, at most the length.
+   *
+   * @param in the in
+   * @param length the length
+   * @return the count
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static int readCount(DataInput in, int length) throws IOException {
+    long count = readVLong(in);
+    if (count < 0 || count > length) {
+      throw new IOException("invalid count " + count + " for " + length);
+    }
+    return (int) count;
+  }
+
+  /**
+   * Write zigzag encoded variable length long.
+   *
+   * @param out the out
+   * @param value the value
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static void writeZLong(DataOutput out, long value) throws IOException {
+    writeVLong(out, (value << 1) ^ (value >> 63));
+  }
+
+  /**
+   * Read zigzag encoded variable length long.
+   *
+   * @param in the in
+   * @return the long
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static long readZLong(DataInput in) throws IOException {
+    long value = readVLong(in);
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Write variable length long.
+   *
+   * @param out the out
+   * @param value the value
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static void writeVLong(DataOutput out, long value) throws IOException {
+    long v = value;
+    while ((v & ~0x7FL) != 0) {
+      out.writeByte((int) ((v & 0x7F) | 0x80));
+      v >>>= 7;
+    }
+    out.writeByte((int) v);
+  }
+
+  /**
+   * Read variable length long.
+   *
+   * @param in the in
+   * @return the long
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static long readVLong(DataInput in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = in.readByte();
+      value |= (b & 0x7FL) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("invalid variable length long");
+  }
+
+}
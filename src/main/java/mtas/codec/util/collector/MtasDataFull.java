@@ -366,4 +366,32 @@ abstract class MtasDataFull<T1 extends Number & Comparable<T1>, T2 extends Numbe
     newFullValueList = operations.createMatrix1(newSize);
   }
 
+  /*
+   * (non-Javadoc)
+   *
+   * @see mtas.codec.util.collector.MtasDataCollector#write(mtas.codec.util.
+   * collector.MtasDataCollectorOutput)
+   */
+  @Override
+  void write(MtasDataCollectorOutput out) throws IOException {
+    super.write(out);
+    out.writeNumberMatrix(fullValueList, getSize());
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see mtas.codec.util.collector.MtasDataCollector#read(mtas.codec.util.
+   * collector.MtasDataCollectorInput)
+   */
+  @Override
+  void read(MtasDataCollectorInput in) throws IOException {
+    super.read(in);
+    fullValueList = in.readNumberMatrix(operations::createMatrix1,
+        operations::createVector1);
+    if (fullValueList == null || getSize() > fullValueList.length) {
+      throw new IOException("invalid full values");
+    }
+  }
+
 }
@@ -97,6 +97,56 @@ public abstract class MtasFunctionParserFunction {
    */
   public abstract long getValueLong(long[] args, long n) throws IOException;
 
+  /**
+   * Gets the values double for a column of rows, with <code>args[j]</code>
+   * and <code>n[j]</code> the arguments and positions of row j. For rows
+   * without a value, e.g. after a division by zero, <code>valid[j]</code> is
+   * set to false and <code>values[j]</code> is undefined.
+   *
+   * @param args the args for each row
+   * @param n the n for each row
+   * @param numberOfRows the number of rows
+   * @param values the values
+   * @param valid the valid
+   */
+  public void getValuesDouble(long[][] args, long[] n, int numberOfRows,
+      double[] values, boolean[] valid) {
+    for (int j = 0; j < numberOfRows; j++) {
+      try {
+        values[j] = getValueDouble(args[j], n[j]);
+        valid[j] = true;
+      } catch (IOException e) {
+        log.debug(e);
+        valid[j] = false;
+      }
+    }
+  }
+
+  /**
+   * Gets the values long for a column of rows, with <code>args[j]</code> and
+   * <code>n[j]</code> the arguments and positions of row j. For rows without a
+   * value, e.g. after a division by zero, <code>valid[j]</code> is set to
+   * false and <code>values[j]</code> is undefined.
+   *
+   * @param args the args for each row
+   * @param n the n for each row
+   * @param numberOfRows the number of rows
+   * @param values the values
+   * @param valid the valid
+   */
+  public void getValuesLong(long[][] args, long[] n, int numberOfRows,
+      long[] values, boolean[] valid) {
+    for (int j = 0; j < numberOfRows; j++) {
+      try {
+        values[j] = getValueLong(args[j], n[j]);
+        valid[j] = true;
+      } catch (IOException e) {
+        log.debug(e);
+        valid[j] = false;
+      }
+    }
+  }
+
   /**
    * Close.
    *
@@ -2,6 +2,7 @@ package mtas.parser.function.util;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import mtas.codec.util.CodecUtil;
 import mtas.parser.function.ParseException;
@@ -33,14 +34,35 @@ public class MtasFunctionParserFunctionBasic
   /** The number. */
   private int number;
 
-  /** The operator list. */
-  private String[] operatorList;
+  /** The compiled operators, the operator of the first step is not used. */
+  private int[] programOperator;
 
-  /** The type list. */
-  private String[] typeList;
+  /** The compiled operand types. */
+  private int[] programOperand;
 
-  /** The id list. */
-  private int[] idList;
+  /** The compiled operand ids, for arguments and parsers. */
+  private int[] programId;
+
+  /** The compiled constant operands, as used for double values. */
+  private double[] programConstantDouble;
+
+  /** The compiled constant operands, as used for long values. */
+  private long[] programConstantLong;
+
+  /** The number of compiled steps, including the first value. */
+  private int programLength;
+
+  /** The value of the folded constant prefix for double values. */
+  private double foldedDouble;
+
+  /** The number of steps folded into the constant prefix for double values. */
+  private int foldedDoubleSteps;
+
+  /** The value of the folded constant prefix for long values. */
+  private long foldedLong;
+
+  /** The number of steps folded into the constant prefix for long values. */
+  private int foldedLongSteps;
 
   /** The tmp operator list. */
   private ArrayList<String> tmpOperatorList = new ArrayList<>();
@@ -66,6 +88,36 @@ public class MtasFunctionParserFunctionBasic
   /** The Constant BASIC_OPERATOR_POWER. */
   public static final String BASIC_OPERATOR_POWER = "power";
 
+  /** The Constant OPERATOR_ADD. */
+  private static final int OPERATOR_ADD = 0;
+
+  /** The Constant OPERATOR_SUBTRACT. */
+  private static final int OPERATOR_SUBTRACT = 1;
+
+  /** The Constant OPERATOR_MULTIPLY. */
+  private static final int OPERATOR_MULTIPLY = 2;
+
+  /** The Constant OPERATOR_DIVIDE. */
+  private static final int OPERATOR_DIVIDE = 3;
+
+  /** The Constant OPERATOR_POWER. */
+  private static final int OPERATOR_POWER = 4;
+
+  /** The Constant OPERAND_ARGUMENT. */
+  private static final int OPERAND_ARGUMENT = 0;
+
+  /** The Constant OPERAND_N. */
+  private static final int OPERAND_N = 1;
+
+  /** The Constant OPERAND_CONSTANT. */
+  private static final int OPERAND_CONSTANT = 2;
+
+  /** The Constant OPERAND_PARSER_LONG. */
+  private static final int OPERAND_PARSER_LONG = 3;
+
+  /** The Constant OPERAND_PARSER_DOUBLE. */
+  private static final int OPERAND_PARSER_DOUBLE = 4;
+
   /**
    * Instantiates a new mtas function parser function basic.
    *
@@ -166,26 +218,165 @@ public class MtasFunctionParserFunctionBasic
       if (firstType == null) {
         throw new ParseException("incorrect definition: no firstType");
       }
-      if (!tmpOperatorList.isEmpty()) {
-        number = tmpOperatorList.size();
-        if ((tmpTypeList.size() != number) || (tmpIdList.size() != number)) {
-          throw new ParseException("incorrect definition additional items");
-        } else {
-          operatorList = new String[number];
-          operatorList = tmpOperatorList.toArray(operatorList);
-          typeList = new String[number];
-          typeList = tmpTypeList.toArray(typeList);
-          idList = new int[number];
-          for (int i = 0; i < number; i++) {
-            idList[i] = tmpIdList.get(i).intValue();
-          }
+      number = tmpOperatorList.size();
+      if ((tmpTypeList.size() != number) || (tmpIdList.size() != number)) {
+        throw new ParseException("incorrect definition additional items");
+      }
+      compile();
+    }
+  }
+
+  /**
+   * Compile the first value and the additional items into a flat program of
+   * primitive instructions, with constant sub parsers replaced by their value
+   * and the constant prefix folded for both double and long values.
+   *
+   * @throws ParseException the parse exception
+   */
+  private void compile() throws ParseException {
+    programLength = number + 1;
+    programOperator = new int[programLength];
+    programOperand = new int[programLength];
+    programId = new int[programLength];
+    programConstantDouble = new double[programLength];
+    programConstantLong = new long[programLength];
+    compileOperand(0, firstType, firstId);
+    for (int i = 0; i < number; i++) {
+      compileOperator(i + 1, tmpOperatorList.get(i));
+      compileOperand(i + 1, tmpTypeList.get(i), tmpIdList.get(i));
+    }
+    foldedDoubleSteps = 0;
+    foldedLongSteps = 0;
+    if (programOperand[0] == OPERAND_CONSTANT) {
+      foldedDouble = programConstantDouble[0];
+      foldedDoubleSteps = 1;
+      try {
+        while (foldedDoubleSteps < programLength
+            && programOperand[foldedDoubleSteps] == OPERAND_CONSTANT) {
+          foldedDouble = applyDouble(programOperator[foldedDoubleSteps],
+              foldedDouble, programConstantDouble[foldedDoubleSteps]);
+          foldedDoubleSteps++;
         }
-      } else {
-        number = 0;
-        operatorList = null;
-        typeList = null;
-        idList = null;
+      } catch (IOException e) {
+        // keep the error for evaluation
       }
+      foldedLong = programConstantLong[0];
+      foldedLongSteps = 1;
+      try {
+        while (foldedLongSteps < programLength
+            && programOperand[foldedLongSteps] == OPERAND_CONSTANT) {
+          foldedLong = applyLong(programOperator[foldedLongSteps], foldedLong,
+              programConstantLong[foldedLongSteps]);
+          foldedLongSteps++;
+        }
+      } catch (IOException e) {
+        // keep the error for evaluation
+      }
+    }
+  }
+
+  /**
+   * Compile operator.
+   *
+   * @param i the step
+   * @param operator the operator
+   * @throws ParseException the parse exception
+   */
+  private void compileOperator(int i, String operator) throws ParseException {
+    switch (operator) {
+    case BASIC_OPERATOR_ADD:
+      programOperator[i] = OPERATOR_ADD;
+      break;
+    case BASIC_OPERATOR_SUBTRACT:
+      programOperator[i] = OPERATOR_SUBTRACT;
+      break;
+    case BASIC_OPERATOR_MULTIPLY:
+      programOperator[i] = OPERATOR_MULTIPLY;
+      break;
+    case BASIC_OPERATOR_DIVIDE:
+      programOperator[i] = OPERATOR_DIVIDE;
+      break;
+    case BASIC_OPERATOR_POWER:
+      programOperator[i] = OPERATOR_POWER;
+      break;
+    default:
+      throw new ParseException("unknown operator");
+    }
+  }
+
+  /**
+   * Compile operand.
+   *
+   * @param i the step
+   * @param type the type
+   * @param id the id
+   * @throws ParseException the parse exception
+   */
+  private void compileOperand(int i, String type, int id)
+      throws ParseException {
+    programId[i] = id;
+    switch (type) {
+    case MtasFunctionParserItem.TYPE_ARGUMENT:
+      programOperand[i] = OPERAND_ARGUMENT;
+      break;
+    case MtasFunctionParserItem.TYPE_N:
+      programOperand[i] = OPERAND_N;
+      break;
+    case MtasFunctionParserItem.TYPE_CONSTANT_LONG:
+      programOperand[i] = OPERAND_CONSTANT;
+      programConstantDouble[i] = constantLongs[id];
+      programConstantLong[i] = constantLongs[id];
+      break;
+    case MtasFunctionParserItem.TYPE_CONSTANT_DOUBLE:
+      programOperand[i] = OPERAND_CONSTANT;
+      programConstantDouble[i] = constantDoubles[id];
+      programConstantLong[i] = constantDoubles[id].longValue();
+      break;
+    case MtasFunctionParserItem.TYPE_PARSER_LONG:
+      programOperand[i] = OPERAND_PARSER_LONG;
+      if (isConstant(parserLongs[id])) {
+        try {
+          long value = parserLongs[id].getValueLong(null, 0);
+          programOperand[i] = OPERAND_CONSTANT;
+          programConstantDouble[i] = value;
+          programConstantLong[i] = value;
+        } catch (IOException e) {
+          // keep the error for evaluation
+        }
+      }
+      break;
+    case MtasFunctionParserItem.TYPE_PARSER_DOUBLE:
+      programOperand[i] = OPERAND_PARSER_DOUBLE;
+      if (isConstant(parserDoubles[id])) {
+        try {
+          double value = parserDoubles[id].getValueDouble(null, 0);
+          programOperand[i] = OPERAND_CONSTANT;
+          programConstantDouble[i] = value;
+          programConstantLong[i] = (long) value;
+        } catch (IOException e) {
+          // keep the error for evaluation
+        }
+      }
+      break;
+    default:
+      throw new ParseException("unknown type");
+    }
+  }
+
+  /**
+   * Checks if the parser is completely folded into a constant.
+   *
+   * @param parser the parser
+   * @return true, if is constant
+   */
+  private static boolean isConstant(MtasFunctionParserFunction parser) {
+    if (parser instanceof MtasFunctionParserFunctionBasic) {
+      MtasFunctionParserFunctionBasic basic;
+      basic = (MtasFunctionParserFunctionBasic) parser;
+      return basic.foldedDoubleSteps == basic.programLength
+          && basic.foldedLongSteps == basic.programLength;
+    } else {
+      return false;
     }
   }
 
@@ -424,331 +615,385 @@ public class MtasFunctionParserFunctionBasic
   @Override
   public double getValueDouble(long[] args, long n) throws IOException {
     double sum;
-    switch (firstType) {
-    case MtasFunctionParserItem.TYPE_ARGUMENT:
-      sum = args[firstId];
-      break;
-    case MtasFunctionParserItem.TYPE_PARSER_DOUBLE:
-      sum = parserDoubles[firstId].getValueDouble(args, n);
-      break;
-    case MtasFunctionParserItem.TYPE_PARSER_LONG:
-      sum = parserLongs[firstId].getValueLong(args, n);
-      break;
-    case MtasFunctionParserItem.TYPE_CONSTANT_DOUBLE:
-      sum = constantDoubles[firstId];
-      break;
-    case MtasFunctionParserItem.TYPE_CONSTANT_LONG:
-      sum = constantLongs[firstId];
-      break;
-    case MtasFunctionParserItem.TYPE_N:
-      sum = n;
-      break;
-    default:
-      throw new IOException("no first value");
+    int i;
+    if (foldedDoubleSteps > 0) {
+      sum = foldedDouble;
+      i = foldedDoubleSteps;
+    } else {
+      sum = getOperandDouble(0, args, n);
+      i = 1;
     }
-    for (int i = 0; i < number; i++) {
-      switch (operatorList[i]) {
-      case BASIC_OPERATOR_ADD:
-        switch (typeList[i]) {
-        case MtasFunctionParserItem.TYPE_ARGUMENT:
-          sum += args[idList[i]];
-          break;
-        case MtasFunctionParserItem.TYPE_PARSER_DOUBLE:
-          sum += parserDoubles[idList[i]].getValueDouble(args, n);
-          break;
-        case MtasFunctionParserItem.TYPE_PARSER_LONG:
-          sum += parserLongs[idList[i]].getValueLong(args, n);
-          break;
-        case MtasFunctionParserItem.TYPE_CONSTANT_DOUBLE:
-          sum += constantDoubles[idList[i]];
-          break;
-        case MtasFunctionParserItem.TYPE_CONSTANT_LONG:
-          sum += constantLongs[idList[i]];
-          break;
-        case MtasFunctionParserItem.TYPE_N:
-          sum += n;
-          break;
-        default:
-          throw new IOException("unknown type");
-        }
-        break;
-      case BASIC_OPERATOR_SUBTRACT:
-        switch (typeList[i]) {
-        case MtasFunctionParserItem.TYPE_ARGUMENT:
-          sum -= args[idList[i]];
-          break;
-        case MtasFunctionParserItem.TYPE_PARSER_DOUBLE:
-          sum -= parserDoubles[idList[i]].getValueDouble(args, n);
-          break;
-        case MtasFunctionParserItem.TYPE_PARSER_LONG:
-          sum -= parserLongs[idList[i]].getValueLong(args, n);
-          break;
-        case MtasFunctionParserItem.TYPE_CONSTANT_DOUBLE:
-          sum -= constantDoubles[idList[i]];
-          break;
-        case MtasFunctionParserItem.TYPE_CONSTANT_LONG:
-          sum -= constantLongs[idList[i]];
-          break;
-        case MtasFunctionParserItem.TYPE_N:
-          sum -= n;
-          break;
-        default:
-          throw new IOException("unknown type");
-        }
-        break;
-      case BASIC_OPERATOR_MULTIPLY:
-        switch (typeList[i]) {
-        case MtasFunctionParserItem.TYPE_ARGUMENT:
-          sum *= args[idList[i]];
-          break;
-        case MtasFunctionParserItem.TYPE_PARSER_DOUBLE:
-          sum *= parserDoubles[idList[i]].getValueDouble(args, n);
-          break;
-        case MtasFunctionParserItem.TYPE_PARSER_LONG:
-          sum *= parserLongs[idList[i]].getValueLong(args, n);
-          break;
-        case MtasFunctionParserItem.TYPE_CONSTANT_DOUBLE:
-          sum *= constantDoubles[idList[i]];
-          break;
-        case MtasFunctionParserItem.TYPE_CONSTANT_LONG:
-          sum *= constantLongs[idList[i]];
-          break;
-        case MtasFunctionParserItem.TYPE_N:
-          sum *= n;
-          break;
-        default:
-          throw new IOException("unknown type");
-        }
-        break;
-      case BASIC_OPERATOR_DIVIDE:
-        double v;
-        switch (typeList[i]) {
-        case MtasFunctionParserItem.TYPE_ARGUMENT:
-          v = args[idList[i]];
-          break;
-        case MtasFunctionParserItem.TYPE_PARSER_DOUBLE:
-          v = parserDoubles[idList[i]].getValueDouble(args, n);
-          break;
-        case MtasFunctionParserItem.TYPE_PARSER_LONG:
-          v = parserLongs[idList[i]].getValueLong(args, n);
-          break;
-        case MtasFunctionParserItem.TYPE_CONSTANT_DOUBLE:
-          v = constantDoubles[idList[i]];
-          break;
-        case MtasFunctionParserItem.TYPE_CONSTANT_LONG:
-          v = constantLongs[idList[i]];
-          break;
-        case MtasFunctionParserItem.TYPE_N:
-          v = n;
-          break;
-        default:
-          throw new IOException("unknown type");
-        }
-        if (v != 0) {
-          sum /= v;
-        } else {
-          throw new IOException("division by zero");
+    for (; i < programLength; i++) {
+      sum = applyDouble(programOperator[i], sum,
+          getOperandDouble(i, args, n));
+    }
+    return sum;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * mtas.parser.function.util.MtasFunctionParserFunction#getValueLong(long[],
+   * long)
+   */
+  @Override
+  public long getValueLong(long[] args, long n) throws IOException {
+    try {
+      long sum;
+      int i;
+      if (foldedLongSteps > 0) {
+        sum = foldedLong;
+        i = foldedLongSteps;
+      } else {
+        sum = getOperandLong(0, args, n);
+        i = 1;
+      }
+      for (; i < programLength; i++) {
+        sum = applyLong(programOperator[i], sum, getOperandLong(i, args, n));
+      }
+      return sum;
+    } catch (java.lang.ArithmeticException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * mtas.parser.function.util.MtasFunctionParserFunction#getValuesDouble(long[]
+   * [], long[], int, double[], boolean[])
+   */
+  @Override
+  public void getValuesDouble(long[][] args, long[] n, int numberOfRows,
+      double[] values, boolean[] valid) {
+    int i;
+    if (foldedDoubleSteps > 0) {
+      Arrays.fill(values, 0, numberOfRows, foldedDouble);
+      Arrays.fill(valid, 0, numberOfRows, true);
+      i = foldedDoubleSteps;
+    } else {
+      getOperandsDouble(0, args, n, numberOfRows, values, valid);
+      i = 1;
+    }
+    if (i < programLength) {
+      double[] operands = new double[numberOfRows];
+      boolean[] operandsValid = new boolean[numberOfRows];
+      for (; i < programLength; i++) {
+        getOperandsDouble(i, args, n, numberOfRows, operands, operandsValid);
+        for (int j = 0; j < numberOfRows; j++) {
+          valid[j] &= operandsValid[j];
         }
-        break;
-      case BASIC_OPERATOR_POWER:
-        switch (typeList[i]) {
-        case MtasFunctionParserItem.TYPE_ARGUMENT:
-          sum = Math.pow(sum, args[idList[i]]);
-          break;
-        case MtasFunctionParserItem.TYPE_PARSER_DOUBLE:
-          sum = Math.pow(sum, parserDoubles[idList[i]].getValueDouble(args, n));
+        switch (programOperator[i]) {
+        case OPERATOR_ADD:
+          for (int j = 0; j < numberOfRows; j++) {
+            values[j] += operands[j];
+          }
           break;
-        case MtasFunctionParserItem.TYPE_PARSER_LONG:
-          sum = Math.pow(sum, parserLongs[idList[i]].getValueLong(args, n));
+        case OPERATOR_SUBTRACT:
+          for (int j = 0; j < numberOfRows; j++) {
+            values[j] -= operands[j];
+          }
           break;
-        case MtasFunctionParserItem.TYPE_CONSTANT_DOUBLE:
-          sum = Math.pow(sum, constantDoubles[idList[i]]);
+        case OPERATOR_MULTIPLY:
+          for (int j = 0; j < numberOfRows; j++) {
+            values[j] *= operands[j];
+          }
           break;
-        case MtasFunctionParserItem.TYPE_CONSTANT_LONG:
-          sum = Math.pow(sum, constantLongs[idList[i]]);
+        case OPERATOR_DIVIDE:
+          for (int j = 0; j < numberOfRows; j++) {
+            if (operands[j] != 0) {
+              values[j] /= operands[j];
+            } else {
+              valid[j] = false;
+            }
+          }
           break;
-        case MtasFunctionParserItem.TYPE_N:
-          sum = Math.pow(sum, n);
+        case OPERATOR_POWER:
+          for (int j = 0; j < numberOfRows; j++) {
+            values[j] = Math.pow(values[j], operands[j]);
+          }
           break;
         default:
-          throw new IOException("unknown type");
+          Arrays.fill(valid, 0, numberOfRows, false);
+          return;
         }
-        break;
-      default:
-        throw new IOException("unknown operator");
       }
     }
-    return sum;
   }
 
   /*
    * (non-Javadoc)
    * 
    * @see
-   * mtas.parser.function.util.MtasFunctionParserFunction#getValueLong(long[],
-   * long)
+   * mtas.parser.function.util.MtasFunctionParserFunction#getValuesLong(long[]
+   * [], long[], int, long[], boolean[])
    */
   @Override
-  public long getValueLong(long[] args, long n) throws IOException {
-    try {
-      long sum;
-      switch (firstType) {
-      case MtasFunctionParserItem.TYPE_ARGUMENT:
-        sum = args[firstId];
-        break;
-      case MtasFunctionParserItem.TYPE_PARSER_DOUBLE:
-        sum = (long) parserDoubles[firstId].getValueDouble(args, n);
-        break;
-      case MtasFunctionParserItem.TYPE_PARSER_LONG:
-        sum = parserLongs[firstId].getValueLong(args, n);
-        break;
-      case MtasFunctionParserItem.TYPE_CONSTANT_DOUBLE:
-        sum = constantDoubles[firstId].longValue();
-        break;
-      case MtasFunctionParserItem.TYPE_CONSTANT_LONG:
-        sum = constantLongs[firstId];
-        break;
-      case MtasFunctionParserItem.TYPE_N:
-        sum = n;
-        break;
-      default:
-        throw new IOException("no first value");
-      }
-      for (int i = 0; i < number; i++) {
-        switch (operatorList[i]) {
-        case BASIC_OPERATOR_ADD:
-          switch (typeList[i]) {
-          case MtasFunctionParserItem.TYPE_ARGUMENT:
-            sum += args[idList[i]];
-            break;
-          case MtasFunctionParserItem.TYPE_PARSER_DOUBLE:
-            sum += (long) parserDoubles[idList[i]].getValueDouble(args, n);
-            break;
-          case MtasFunctionParserItem.TYPE_PARSER_LONG:
-            sum += parserLongs[idList[i]].getValueLong(args, n);
-            break;
-          case MtasFunctionParserItem.TYPE_CONSTANT_DOUBLE:
-            sum += constantDoubles[idList[i]].longValue();
-            break;
-          case MtasFunctionParserItem.TYPE_CONSTANT_LONG:
-            sum += constantLongs[idList[i]];
-            break;
-          case MtasFunctionParserItem.TYPE_N:
-            sum += n;
-            break;
-          default:
-            throw new IOException("unknown type");
+  public void getValuesLong(long[][] args, long[] n, int numberOfRows,
+      long[] values, boolean[] valid) {
+    int i;
+    if (foldedLongSteps > 0) {
+      Arrays.fill(values, 0, numberOfRows, foldedLong);
+      Arrays.fill(valid, 0, numberOfRows, true);
+      i = foldedLongSteps;
+    } else {
+      getOperandsLong(0, args, n, numberOfRows, values, valid);
+      i = 1;
+    }
+    if (i < programLength) {
+      long[] operands = new long[numberOfRows];
+      boolean[] operandsValid = new boolean[numberOfRows];
+      for (; i < programLength; i++) {
+        getOperandsLong(i, args, n, numberOfRows, operands, operandsValid);
+        for (int j = 0; j < numberOfRows; j++) {
+          valid[j] &= operandsValid[j];
+        }
+        switch (programOperator[i]) {
+        case OPERATOR_ADD:
+          for (int j = 0; j < numberOfRows; j++) {
+            values[j] += operands[j];
           }
           break;
-        case BASIC_OPERATOR_SUBTRACT:
-          switch (typeList[i]) {
-          case MtasFunctionParserItem.TYPE_ARGUMENT:
-            sum -= args[idList[i]];
-            break;
-          case MtasFunctionParserItem.TYPE_PARSER_DOUBLE:
-            sum -= (long) parserDoubles[idList[i]].getValueDouble(args, n);
-            break;
-          case MtasFunctionParserItem.TYPE_PARSER_LONG:
-            sum -= parserLongs[idList[i]].getValueLong(args, n);
-            break;
-          case MtasFunctionParserItem.TYPE_CONSTANT_DOUBLE:
-            sum -= constantDoubles[idList[i]].longValue();
-            break;
-          case MtasFunctionParserItem.TYPE_CONSTANT_LONG:
-            sum -= constantLongs[idList[i]];
-            break;
-          case MtasFunctionParserItem.TYPE_N:
-            sum -= n;
-            break;
-          default:
-            throw new IOException("unknown type");
+        case OPERATOR_SUBTRACT:
+          for (int j = 0; j < numberOfRows; j++) {
+            values[j] -= operands[j];
           }
           break;
-        case BASIC_OPERATOR_MULTIPLY:
-          switch (typeList[i]) {
-          case MtasFunctionParserItem.TYPE_ARGUMENT:
-            sum *= args[idList[i]];
-            break;
-          case MtasFunctionParserItem.TYPE_PARSER_DOUBLE:
-            sum *= (long) parserDoubles[idList[i]].getValueDouble(args, n);
-            break;
-          case MtasFunctionParserItem.TYPE_PARSER_LONG:
-            sum *= parserLongs[idList[i]].getValueLong(args, n);
-            break;
-          case MtasFunctionParserItem.TYPE_CONSTANT_DOUBLE:
-            sum *= constantDoubles[idList[i]].longValue();
-            break;
-          case MtasFunctionParserItem.TYPE_CONSTANT_LONG:
-            sum *= constantLongs[idList[i]];
-            break;
-          case MtasFunctionParserItem.TYPE_N:
-            sum *= n;
-            break;
-          default:
-            throw new IOException("unknown type");
+        case OPERATOR_MULTIPLY:
+          for (int j = 0; j < numberOfRows; j++) {
+            values[j] *= operands[j];
           }
           break;
-        case BASIC_OPERATOR_DIVIDE:
-          long v;
-          switch (typeList[i]) {
-          case MtasFunctionParserItem.TYPE_ARGUMENT:
-            v = args[idList[i]];
-            break;
-          case MtasFunctionParserItem.TYPE_PARSER_DOUBLE:
-            v = (long) parserDoubles[idList[i]].getValueDouble(args, n);
-            break;
-          case MtasFunctionParserItem.TYPE_PARSER_LONG:
-            v = parserLongs[idList[i]].getValueLong(args, n);
-            break;
-          case MtasFunctionParserItem.TYPE_CONSTANT_DOUBLE:
-            v = constantDoubles[idList[i]].longValue();
-            break;
-          case MtasFunctionParserItem.TYPE_CONSTANT_LONG:
-            v = constantLongs[idList[i]];
-            break;
-          case MtasFunctionParserItem.TYPE_N:
-            v = n;
-            break;
-          default:
-            throw new IOException("unknown type");
-          }
-          if (v != 0) {
-            sum /= v;
-          } else {
-            throw new IOException("division by zero");
+        case OPERATOR_DIVIDE:
+          for (int j = 0; j < numberOfRows; j++) {
+            if (operands[j] != 0) {
+              values[j] /= operands[j];
+            } else {
+              valid[j] = false;
+            }
           }
           break;
-        case BASIC_OPERATOR_POWER:
-          switch (typeList[i]) {
-          case MtasFunctionParserItem.TYPE_ARGUMENT:
-            sum = sum ^ args[idList[i]];
-            break;
-          case MtasFunctionParserItem.TYPE_PARSER_DOUBLE:
-            sum = sum ^ (long) parserDoubles[idList[i]].getValueDouble(args, n);
-            break;
-          case MtasFunctionParserItem.TYPE_PARSER_LONG:
-            sum = sum ^ parserLongs[idList[i]].getValueLong(args, n);
-            break;
-          case MtasFunctionParserItem.TYPE_CONSTANT_DOUBLE:
-            sum = sum ^ constantDoubles[idList[i]].longValue();
-            break;
-          case MtasFunctionParserItem.TYPE_CONSTANT_LONG:
-            sum = sum ^ constantLongs[idList[i]];
-            break;
-          case MtasFunctionParserItem.TYPE_N:
-            sum = sum ^ n;
-            break;
-          default:
-            throw new IOException("unknown type");
+        case OPERATOR_POWER:
+          for (int j = 0; j < numberOfRows; j++) {
+            values[j] ^= operands[j];
           }
           break;
         default:
-          throw new IOException("unknown operator");
+          Arrays.fill(valid, 0, numberOfRows, false);
+          return;
         }
       }
-      return sum;
-    } catch (java.lang.ArithmeticException e) {
-      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Apply operator for double values.
+   *
+   * @param operator the operator
+   * @param sum the sum
+   * @param v the value
+   * @return the new sum
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static double applyDouble(int operator, double sum, double v)
+      throws IOException {
+    switch (operator) {
+    case OPERATOR_ADD:
+      return sum + v;
+    case OPERATOR_SUBTRACT:
+      return sum - v;
+    case OPERATOR_MULTIPLY:
+      return sum * v;
+    case OPERATOR_DIVIDE:
+      if (v != 0) {
+        return sum / v;
+      } else {
+        throw new IOException("division by zero");
+      }
+    case OPERATOR_POWER:
+      return Math.pow(sum, v);
+    default:
+      throw new IOException("unknown operator");
+    }
+  }
+
+  /**
+   * Apply operator for long values.
+   *
+   * @param operator the operator
+   * @param sum the sum
+   * @param v the value
+   * @return the new sum
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static long applyLong(int operator, long sum, long v)
+      throws IOException {
+    switch (operator) {
+    case OPERATOR_ADD:
+      return sum + v;
+    case OPERATOR_SUBTRACT:
+      return sum - v;
+    case OPERATOR_MULTIPLY:
+      return sum * v;
+    case OPERATOR_DIVIDE:
+      if (v != 0) {
+        return sum / v;
+      } else {
+        throw new IOException("division by zero");
+      }
+    case OPERATOR_POWER:
+      return sum ^ v;
+    default:
+      throw new IOException("unknown operator");
+    }
+  }
+
+  /**
+   * Gets the operand as double.
+   *
+   * @param i the step
+   * @param args the args
+   * @param n the n
+   * @return the operand
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private double getOperandDouble(int i, long[] args, long n)
+      throws IOException {
+    switch (programOperand[i]) {
+    case OPERAND_ARGUMENT:
+      return args[programId[i]];
+    case OPERAND_N:
+      return n;
+    case OPERAND_CONSTANT:
+      return programConstantDouble[i];
+    case OPERAND_PARSER_LONG:
+      return parserLongs[programId[i]].getValueLong(args, n);
+    case OPERAND_PARSER_DOUBLE:
+      return parserDoubles[programId[i]].getValueDouble(args, n);
+    default:
+      throw new IOException("unknown type");
+    }
+  }
+
+  /**
+   * Gets the operand as long.
+   *
+   * @param i the step
+   * @param args the args
+   * @param n the n
+   * @return the operand
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private long getOperandLong(int i, long[] args, long n) throws IOException {
+    switch (programOperand[i]) {
+    case OPERAND_ARGUMENT:
+      return args[programId[i]];
+    case OPERAND_N:
+      return n;
+    case OPERAND_CONSTANT:
+      return programConstantLong[i];
+    case OPERAND_PARSER_LONG:
+      return parserLongs[programId[i]].getValueLong(args, n);
+    case OPERAND_PARSER_DOUBLE:
+      return (long) parserDoubles[programId[i]].getValueDouble(args, n);
+    default:
+      throw new IOException("unknown type");
+    }
+  }
+
+  /**
+   * Gets the operands as double for a column of rows.
+   *
+   * @param i the step
+   * @param args the args for each row
+   * @param n the n for each row
+   * @param numberOfRows the number of rows
+   * @param operands the operands
+   * @param valid the valid
+   */
+  private void getOperandsDouble(int i, long[][] args, long[] n,
+      int numberOfRows, double[] operands, boolean[] valid) {
+    switch (programOperand[i]) {
+    case OPERAND_ARGUMENT:
+      int id = programId[i];
+      for (int j = 0; j < numberOfRows; j++) {
+        operands[j] = args[j][id];
+      }
+      Arrays.fill(valid, 0, numberOfRows, true);
+      break;
+    case OPERAND_N:
+      for (int j = 0; j < numberOfRows; j++) {
+        operands[j] = n[j];
+      }
+      Arrays.fill(valid, 0, numberOfRows, true);
+      break;
+    case OPERAND_CONSTANT:
+      Arrays.fill(operands, 0, numberOfRows, programConstantDouble[i]);
+      Arrays.fill(valid, 0, numberOfRows, true);
+      break;
+    case OPERAND_PARSER_LONG:
+      long[] longOperands = new long[numberOfRows];
+      parserLongs[programId[i]].getValuesLong(args, n, numberOfRows,
+          longOperands, valid);
+      for (int j = 0; j < numberOfRows; j++) {
+        operands[j] = longOperands[j];
+      }
+      break;
+    case OPERAND_PARSER_DOUBLE:
+      parserDoubles[programId[i]].getValuesDouble(args, n, numberOfRows,
+          operands, valid);
+      break;
+    default:
+      Arrays.fill(valid, 0, numberOfRows, false);
+      break;
+    }
+  }
+
+  /**
+   * Gets the operands as long for a column of rows.
+   *
+   * @param i the step
+   * @param args the args for each row
+   * @param n the n for each row
+   * @param numberOfRows the number of rows
+   * @param operands the operands
+   * @param valid the valid
+   */
+  private void getOperandsLong(int i, long[][] args, long[] n,
+      int numberOfRows, long[] operands, boolean[] valid) {
+    switch (programOperand[i]) {
+    case OPERAND_ARGUMENT:
+      int id = programId[i];
+      for (int j = 0; j < numberOfRows; j++) {
+        operands[j] = args[j][id];
+      }
+      Arrays.fill(valid, 0, numberOfRows, true);
+      break;
+    case OPERAND_N:
+      System.arraycopy(n, 0, operands, 0, numberOfRows);
+      Arrays.fill(valid, 0, numberOfRows, true);
+      break;
+    case OPERAND_CONSTANT:
+      Arrays.fill(operands, 0, numberOfRows, programConstantLong[i]);
+      Arrays.fill(valid, 0, numberOfRows, true);
+      break;
+    case OPERAND_PARSER_LONG:
+      parserLongs[programId[i]].getValuesLong(args, n, numberOfRows,
+          operands, valid);
+      break;
+    case OPERAND_PARSER_DOUBLE:
+      double[] doubleOperands = new double[numberOfRows];
+      parserDoubles[programId[i]].getValuesDouble(args, n, numberOfRows,
+          doubleOperands, valid);
+      for (int j = 0; j < numberOfRows; j++) {
+        operands[j] = (long) doubleOperands[j];
+      }
+      break;
+    default:
+      Arrays.fill(valid, 0, numberOfRows, false);
+      break;
     }
   }
 
@@ -0,0 +1,371 @@
+package mtas.search.spans;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import mtas.analysis.token.MtasToken;
+import mtas.codec.util.CodecUtil;
+import mtas.search.similarities.MtasSimScorer;
+import mtas.search.spans.util.MtasSpanQuery;
+import mtas.search.spans.util.MtasSpanWeight;
+import mtas.search.spans.util.MtasSpans;
+
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.index.TermState;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.AutomatonQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.similarities.Similarity.SimScorer;
+import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.apache.lucene.util.automaton.Operations;
+
+/**
+ * The Class MtasSpanAutomatonQuery. Matches all terms accepted by an automaton,
+ * as produced for regexp, wildcard and prefix queries, without expanding into
+ * a {@link MtasSpanOrQuery} with a clause for each term. For each segment, the
+ * matching terms are found by intersecting the terms with the automaton, and
+ * their postings are merged by {@link MtasSpanAutomatonSpans}.
+ */
+public class MtasSpanAutomatonQuery extends MtasSpanQuery {
+
+  /**
+   * The Constant BROAD_NUMBER_OF_TERMS. Above this number of matching terms in
+   * a segment, a two phase iterator is provided, with as approximation a
+   * bitset of the matching documents that is collected on first use.
+   */
+  private static final int BROAD_NUMBER_OF_TERMS = 16;
+
+  /** The term, used for representation. */
+  private Term term;
+
+  /** The prefix. */
+  private String prefix;
+
+  /** The value. */
+  private String value;
+
+  /** The single position. */
+  private boolean singlePosition;
+
+  /** The compiled automaton. */
+  private CompiledAutomaton compiled;
+
+  /**
+   * Instantiates a new mtas span automaton query.
+   *
+   * @param term the term, used for representation
+   * @param query the automaton query
+   * @param isBinary the is binary
+   * @param singlePosition the single position
+   */
+  public MtasSpanAutomatonQuery(Term term, AutomatonQuery query,
+      boolean isBinary, boolean singlePosition) {
+    super(singlePosition ? 1 : null, singlePosition ? 1 : null);
+    this.term = term;
+    this.singlePosition = singlePosition;
+    compiled = new CompiledAutomaton(query.getAutomaton(), null, true,
+        Operations.DEFAULT_MAX_DETERMINIZED_STATES, isBinary);
+    int i = term.text().indexOf(MtasToken.DELIMITER);
+    if (i >= 0) {
+      prefix = term.text().substring(0, i);
+      value = term.text().substring((i + MtasToken.DELIMITER.length()));
+      value = (value.length() > 0) ? value : null;
+    } else {
+      prefix = term.text();
+      value = null;
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see mtas.search.spans.util.MtasSpanQuery#rewrite(org.apache.lucene.index.
+   * IndexReader)
+   */
+  @Override
+  public MtasSpanQuery rewrite(IndexReader reader) throws IOException {
+    // only check for no or a single matching term
+    BytesRef firstTerm = null;
+    boolean multipleTerms = false;
+    for (LeafReaderContext context : reader.leaves()) {
+      Terms terms = context.reader().terms(term.field());
+      if (terms != null) {
+        TermsEnum termsEnum = compiled.getTermsEnum(terms);
+        BytesRef bytes;
+        while ((bytes = termsEnum.next()) != null) {
+          if (firstTerm == null) {
+            firstTerm = BytesRef.deepCopyOf(bytes);
+          } else if (!firstTerm.bytesEquals(bytes)) {
+            multipleTerms = true;
+            break;
+          }
+        }
+      }
+      if (multipleTerms) {
+        break;
+      }
+    }
+    if (firstTerm == null) {
+      return new MtasSpanMatchNoneQuery(term.field()).rewrite(reader);
+    } else if (!multipleTerms) {
+      return new MtasSpanTermQuery(
+          new SpanTermQuery(new Term(term.field(), firstTerm)), singlePosition)
+              .rewrite(reader);
+    } else {
+      return super.rewrite(reader);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.lucene.search.spans.SpanQuery#getField()
+   */
+  @Override
+  public String getField() {
+    return term.field();
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see
+   * org.apache.lucene.search.spans.SpanQuery#createWeight(org.apache.lucene.
+   * search.IndexSearcher, boolean)
+   */
+  @Override
+  public MtasSpanWeight createWeight(IndexSearcher searcher,
+      boolean needsScores, float boost) throws IOException {
+    return new SpanAutomatonWeight(searcher, null, boost);
+  }
+
+  /**
+   * The Class SpanAutomatonWeight.
+   */
+  protected class SpanAutomatonWeight extends MtasSpanWeight {
+
+    /** The Constant METHOD_GET_DELEGATE. */
+    private static final String METHOD_GET_DELEGATE = "getDelegate";
+
+    /**
+     * Instantiates a new span automaton weight.
+     *
+     * @param searcher the searcher
+     * @param termContexts the term contexts
+     * @param boost the boost
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public SpanAutomatonWeight(IndexSearcher searcher,
+        Map<Term, TermContext> termContexts, float boost) throws IOException {
+      super(MtasSpanAutomatonQuery.this, searcher, termContexts, boost);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.apache.lucene.search.spans.SpanWeight#extractTermContexts(java.util.
+     * Map)
+     */
+    @Override
+    public void extractTermContexts(Map<Term, TermContext> contexts) {
+      // don't do anything
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.apache.lucene.search.spans.SpanWeight#getSpans(org.apache.lucene.
+     * index.LeafReaderContext,
+     * org.apache.lucene.search.spans.SpanWeight.Postings)
+     */
+    @Override
+    public MtasSpans getSpans(LeafReaderContext context,
+        Postings requiredPostings) throws IOException {
+      Terms terms = context.reader().terms(term.field());
+      if (terms == null) {
+        return null;
+      } else if (!terms.hasPositions()) {
+        throw new IllegalStateException("field \"" + term.field()
+            + "\" was indexed without position data; cannot run "
+            + MtasSpanAutomatonQuery.class.getSimpleName());
+      }
+      FieldInfo fieldInfo = getFieldInfo(context);
+      Map<String, Boolean> singlePositionPrefixes = new HashMap<>();
+      List<PostingsEnum> postingsList = new ArrayList<>();
+      List<Boolean> assumeSinglePositionList = new ArrayList<>();
+      List<BytesRef> termList = new ArrayList<>();
+      List<TermState> termStateList = new ArrayList<>();
+      long cost = 0;
+      long positionsCost = 0;
+      TermsEnum termsEnum = compiled.getTermsEnum(terms);
+      BytesRef bytes;
+      while ((bytes = termsEnum.next()) != null) {
+        String termPrefix = CodecUtil.termPrefix(bytes.utf8ToString());
+        Boolean assumeSinglePosition = singlePositionPrefixes.get(termPrefix);
+        if (assumeSinglePosition == null) {
+          assumeSinglePosition = CodecUtil.isSinglePositionPrefix(fieldInfo,
+              termPrefix);
+          singlePositionPrefixes.put(termPrefix, assumeSinglePosition);
+        }
+        if (assumeSinglePosition) {
+          postingsList.add(termsEnum.postings(null,
+              requiredPostings.getRequiredPostings()));
+        } else {
+          postingsList.add(termsEnum.postings(null, requiredPostings
+              .atLeast(Postings.PAYLOADS).getRequiredPostings()));
+        }
+        assumeSinglePositionList.add(assumeSinglePosition);
+        termList.add(BytesRef.deepCopyOf(bytes));
+        termStateList.add(termsEnum.termState());
+        cost += termsEnum.docFreq();
+        positionsCost += Math.max(0, termsEnum.totalTermFreq());
+      }
+      if (postingsList.isEmpty()) {
+        return null;
+      }
+      boolean broad = postingsList.size() > BROAD_NUMBER_OF_TERMS
+          && twoPhaseIteratorAllowed();
+      boolean[] assumeSinglePosition = new boolean[assumeSinglePositionList
+          .size()];
+      for (int i = 0; i < assumeSinglePosition.length; i++) {
+        assumeSinglePosition[i] = assumeSinglePositionList.get(i);
+      }
+      return new MtasSpanAutomatonSpans(MtasSpanAutomatonQuery.this,
+          postingsList.toArray(new PostingsEnum[postingsList.size()]),
+          assumeSinglePosition, singlePosition,
+          broad ? terms : null,
+          termList.toArray(new BytesRef[termList.size()]),
+          termStateList.toArray(new TermState[termStateList.size()]),
+          context.reader().maxDoc(), cost,
+          positionsCost > 0 ? (float) positionsCost / Math.max(1, cost) : 1);
+    }
+
+    /**
+     * Gets the field info from the reader, after unwrapping.
+     *
+     * @param context the context
+     * @return the field info
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private FieldInfo getFieldInfo(LeafReaderContext context)
+        throws IOException {
+      try {
+        // get leafreader
+        LeafReader r = context.reader();
+        // get delegate
+        Boolean hasMethod = true;
+        while (hasMethod) {
+          hasMethod = false;
+          Method[] methods = r.getClass().getMethods();
+          for (Method m : methods) {
+            if (m.getName().equals(METHOD_GET_DELEGATE)) {
+              hasMethod = true;
+              r = (LeafReader) m.invoke(r, (Object[]) null);
+              break;
+            }
+          }
+        }
+        return r.getFieldInfos().fieldInfo(term.field());
+      } catch (InvocationTargetException | IllegalAccessException e) {
+        throw new IOException("Can't get reader", e);
+      }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.lucene.search.Weight#extractTerms(java.util.Set)
+     */
+    @Override
+    public void extractTerms(Set<Term> terms) {
+      // don't do anything
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.apache.lucene.search.spans.SpanWeight#getSimScorer(org.apache.lucene.
+     * index.LeafReaderContext)
+     */
+    @Override
+    public SimScorer getSimScorer(LeafReaderContext context) {
+      return new MtasSimScorer();
+    }
+
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see
+   * org.apache.lucene.search.spans.SpanTermQuery#toString(java.lang.String)
+   */
+  @Override
+  public String toString(String field) {
+    StringBuilder buffer = new StringBuilder();
+    buffer.append(this.getClass().getSimpleName() + "([");
+    if (value == null) {
+      buffer.append(term.field() + ":" + prefix);
+    } else {
+      buffer.append(term.field() + ":" + prefix + "=" + value);
+    }
+    buffer.append("," + singlePosition + "])");
+    return buffer.toString();
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.lucene.search.Query#equals(java.lang.Object)
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null)
+      return false;
+    if (getClass() != obj.getClass())
+      return false;
+    MtasSpanAutomatonQuery that = (MtasSpanAutomatonQuery) obj;
+    return term.equals(that.term) && compiled.equals(that.compiled)
+        && singlePosition == that.singlePosition;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.lucene.search.Query#hashCode()
+   */
+  @Override
+  public int hashCode() {
+    int h = this.getClass().getSimpleName().hashCode();
+    h = (h * 7) ^ term.hashCode();
+    h = (h * 11) ^ compiled.hashCode();
+    h += (singlePosition ? 1 : 0);
+    return h;
+  }
+
+  @Override
+  public boolean isMatchAllPositionsQuery() {
+    return false;
+  }
+
+}
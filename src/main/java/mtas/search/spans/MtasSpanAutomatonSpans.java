@@ -0,0 +1,495 @@
+package mtas.search.spans;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import mtas.codec.payload.MtasPayloadPositionDecoder;
+import mtas.search.spans.util.MtasSpans;
+
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.TermState;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.spans.SpanCollector;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * The Class MtasSpanAutomatonSpans. Merges the postings of all terms matching
+ * a {@link MtasSpanAutomatonQuery} within a segment. The postings are kept in a
+ * heap ordered by document; for each document, the positions of all matching
+ * terms are collected as packed start and end positions in a primitive array
+ * and sorted. If the terms are provided, a two phase iterator is available
+ * with as approximation a bitset of the matching documents, only collected
+ * when the approximation is first used.
+ */
+public class MtasSpanAutomatonSpans extends MtasSpans {
+
+  /** The query. */
+  private MtasSpanAutomatonQuery query;
+
+  /** The postings. */
+  private final PostingsEnum[] postings;
+
+  /** For each postings, whether only single positions are used. */
+  private final boolean[] assumeSinglePosition;
+
+  /** The single position. */
+  private final boolean singlePosition;
+
+  /** The terms, null if no approximation is provided. */
+  private final Terms terms;
+
+  /** The matching terms. */
+  private final BytesRef[] termBytes;
+
+  /** The states of the matching terms. */
+  private final TermState[] termStates;
+
+  /** The max doc. */
+  private final int maxDoc;
+
+  /** The matching docs, collected on first use of the approximation. */
+  private FixedBitSet docs;
+
+  /** The heap with postings, ordered by doc id. */
+  private final int[] heap;
+
+  /** The heap size. */
+  private int heapSize;
+
+  /** The postings positioned on the current doc, removed from the heap. */
+  private final int[] matched;
+
+  /** The number of matched postings. */
+  private int matchedSize;
+
+  /** The doc id. */
+  private int docId;
+
+  /** The positions, with start and end packed. */
+  private long[] positions;
+
+  /** The number of positions. */
+  private int numberOfPositions;
+
+  /** The position index. */
+  private int positionIndex;
+
+  /** The current start position. */
+  private int currentStartPosition;
+
+  /** The current end position. */
+  private int currentEndPosition;
+
+  /** The cost. */
+  private final long cost;
+
+  /** The positions cost. */
+  private final float positionsCost;
+
+  /** The payload decoder. */
+  private final MtasPayloadPositionDecoder payloadDecoder;
+
+  /**
+   * Instantiates a new mtas span automaton spans.
+   *
+   * @param query the query
+   * @param postings the postings
+   * @param assumeSinglePosition for each postings, whether only single
+   *          positions are used
+   * @param singlePosition the single position
+   * @param terms the terms, or null if no approximation should be provided
+   * @param termBytes the matching terms
+   * @param termStates the states of the matching terms
+   * @param maxDoc the max doc
+   * @param cost the cost
+   * @param positionsCost the positions cost
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public MtasSpanAutomatonSpans(MtasSpanAutomatonQuery query,
+      PostingsEnum[] postings, boolean[] assumeSinglePosition,
+      boolean singlePosition, Terms terms, BytesRef[] termBytes,
+      TermState[] termStates, int maxDoc, long cost, float positionsCost)
+      throws IOException {
+    super();
+    this.query = query;
+    this.postings = postings;
+    this.assumeSinglePosition = assumeSinglePosition;
+    this.singlePosition = singlePosition;
+    this.terms = terms;
+    this.termBytes = termBytes;
+    this.termStates = termStates;
+    this.maxDoc = maxDoc;
+    docs = null;
+    this.cost = cost;
+    this.positionsCost = positionsCost;
+    payloadDecoder = new MtasPayloadPositionDecoder();
+    heap = new int[postings.length];
+    heapSize = 0;
+    matched = new int[postings.length];
+    matchedSize = postings.length;
+    for (int i = 0; i < postings.length; i++) {
+      matched[i] = i;
+    }
+    positions = new long[16];
+    docId = -1;
+    resetPositions();
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.lucene.search.spans.Spans#nextStartPosition()
+   */
+  @Override
+  public int nextStartPosition() throws IOException {
+    if (positionIndex < numberOfPositions) {
+      positionIndex++;
+    }
+    if (positionIndex < numberOfPositions) {
+      currentStartPosition = (int) (positions[positionIndex] >>> 32);
+      currentEndPosition = (int) positions[positionIndex];
+    } else {
+      currentStartPosition = NO_MORE_POSITIONS;
+      currentEndPosition = NO_MORE_POSITIONS;
+    }
+    return currentStartPosition;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.lucene.search.spans.Spans#startPosition()
+   */
+  @Override
+  public int startPosition() {
+    return currentStartPosition;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.lucene.search.spans.Spans#endPosition()
+   */
+  @Override
+  public int endPosition() {
+    return currentEndPosition;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.lucene.search.spans.Spans#width()
+   */
+  @Override
+  public int width() {
+    return 0;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see
+   * org.apache.lucene.search.spans.Spans#collect(org.apache.lucene.search.spans
+   * .SpanCollector)
+   */
+  @Override
+  public void collect(SpanCollector collector) throws IOException {
+    // do nothing
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.lucene.search.DocIdSetIterator#docID()
+   */
+  @Override
+  public int docID() {
+    return docId;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.lucene.search.DocIdSetIterator#nextDoc()
+   */
+  @Override
+  public int nextDoc() throws IOException {
+    return advance(docId + 1);
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.lucene.search.DocIdSetIterator#advance(int)
+   */
+  @Override
+  public int advance(int target) throws IOException {
+    int newTarget = target;
+    while (true) {
+      moveTo(newTarget);
+      docId = heapSize > 0 ? docIdOf(heap[0]) : NO_MORE_DOCS;
+      if (docId == NO_MORE_DOCS || collectPositions()) {
+        return docId;
+      }
+      newTarget = docId + 1;
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.lucene.search.spans.Spans#cost()
+   */
+  @Override
+  public long cost() {
+    return cost;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.lucene.search.spans.Spans#positionsCost()
+   */
+  @Override
+  public float positionsCost() {
+    return positionsCost;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see mtas.search.spans.util.MtasSpans#asTwoPhaseIterator()
+   */
+  @Override
+  public TwoPhaseIterator asTwoPhaseIterator() {
+    if (terms == null || !query.twoPhaseIteratorAllowed()) {
+      return null;
+    } else {
+      DocIdSetIterator approximation = new DocIdSetIterator() {
+        @Override
+        public int docID() {
+          return docId;
+        }
+
+        @Override
+        public int nextDoc() throws IOException {
+          return advance(docId + 1);
+        }
+
+        @Override
+        public int advance(int target) throws IOException {
+          resetPositions();
+          docId = nextSetBit(target);
+          return docId;
+        }
+
+        @Override
+        public long cost() {
+          return cost;
+        }
+      };
+      return new TwoPhaseIterator(approximation) {
+        @Override
+        public boolean matches() throws IOException {
+          return collectPositions();
+        }
+
+        @Override
+        public float matchCost() {
+          return positionsCost;
+        }
+      };
+    }
+  }
+
+  /**
+   * Next set bit in the matching docs, collecting them if necessary.
+   *
+   * @param target the target
+   * @return the doc id
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private int nextSetBit(int target) throws IOException {
+    if (docs == null) {
+      docs = new FixedBitSet(maxDoc);
+      TermsEnum docsTermsEnum = terms.iterator();
+      PostingsEnum docsEnum = null;
+      for (int i = 0; i < termBytes.length; i++) {
+        docsTermsEnum.seekExact(termBytes[i], termStates[i]);
+        docsEnum = docsTermsEnum.postings(docsEnum, PostingsEnum.NONE);
+        docs.or(docsEnum);
+      }
+    }
+    if (target >= docs.length()) {
+      return NO_MORE_DOCS;
+    } else {
+      return docs.nextSetBit(target);
+    }
+  }
+
+  /**
+   * Reset positions.
+   */
+  private void resetPositions() {
+    numberOfPositions = 0;
+    positionIndex = -1;
+    currentStartPosition = -1;
+    currentEndPosition = -1;
+  }
+
+  /**
+   * Collect the positions of all postings for the current doc.
+   *
+   * @return true, if positions were found
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private boolean collectPositions() throws IOException {
+    resetPositions();
+    moveTo(docId);
+    while (heapSize > 0 && docIdOf(heap[0]) == docId) {
+      matched[matchedSize++] = pop();
+    }
+    for (int i = 0; i < matchedSize; i++) {
+      PostingsEnum postingsEnum = postings[matched[i]];
+      int freq = postingsEnum.freq();
+      for (int j = 0; j < freq; j++) {
+        int start = postingsEnum.nextPosition();
+        int end;
+        if (assumeSinglePosition[matched[i]]) {
+          end = start + 1;
+        } else {
+          end = endPosition(start, postingsEnum.getPayload());
+        }
+        if (!singlePosition || (end - start) == 1) {
+          if (numberOfPositions == positions.length) {
+            positions = ArrayUtil.grow(positions, numberOfPositions + 1);
+          }
+          positions[numberOfPositions++] = (((long) start) << 32)
+              | (end & 0xFFFFFFFFL);
+        }
+      }
+    }
+    Arrays.sort(positions, 0, numberOfPositions);
+    return numberOfPositions > 0;
+  }
+
+  /**
+   * End position, decoded from the payload.
+   *
+   * @param start the start
+   * @param payload the payload
+   * @return the end position
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private int endPosition(int start, BytesRef payload) throws IOException {
+    if (payload == null) {
+      return start + 1;
+    } else {
+      payloadDecoder.init(start, payload);
+      return payloadDecoder.getEnd() + 1;
+    }
+  }
+
+  /**
+   * Move all postings to the first doc at or after the target.
+   *
+   * @param target the target
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void moveTo(int target) throws IOException {
+    for (int i = 0; i < matchedSize; i++) {
+      if (postings[matched[i]].docID() < target) {
+        if (postings[matched[i]].advance(target) != NO_MORE_DOCS) {
+          push(matched[i]);
+        }
+      } else if (postings[matched[i]].docID() != NO_MORE_DOCS) {
+        push(matched[i]);
+      }
+    }
+    matchedSize = 0;
+    while (heapSize > 0 && docIdOf(heap[0]) < target) {
+      if (postings[heap[0]].advance(target) == NO_MORE_DOCS) {
+        pop();
+      } else {
+        downHeap(0);
+      }
+    }
+  }
+
+  /**
+   * Doc id of postings.
+   *
+   * @param i the postings
+   * @return the doc id
+   */
+  private int docIdOf(int i) {
+    return postings[i].docID();
+  }
+
+  /**
+   * Push postings on the heap.
+   *
+   * @param i the postings
+   */
+  private void push(int i) {
+    int position = heapSize++;
+    int docIdI = docIdOf(i);
+    while (position > 0) {
+      int parent = (position - 1) >>> 1;
+      if (docIdOf(heap[parent]) <= docIdI) {
+        break;
+      }
+      heap[position] = heap[parent];
+      position = parent;
+    }
+    heap[position] = i;
+  }
+
+  /**
+   * Pop postings from the heap.
+   *
+   * @return the postings
+   */
+  private int pop() {
+    int top = heap[0];
+    heapSize--;
+    if (heapSize > 0) {
+      heap[0] = heap[heapSize];
+      downHeap(0);
+    }
+    return top;
+  }
+
+  /**
+   * Restore the heap from a position downwards.
+   *
+   * @param position the position
+   */
+  private void downHeap(int position) {
+    int i = heap[position];
+    int docIdI = docIdOf(i);
+    int current = position;
+    while (true) {
+      int child = 2 * current + 1;
+      if (child >= heapSize) {
+        break;
+      }
+      if (child + 1 < heapSize
+          && docIdOf(heap[child + 1]) < docIdOf(heap[child])) {
+        child++;
+      }
+      if (docIdOf(heap[child]) >= docIdI) {
+        break;
+      }
+      heap[current] = heap[child];
+      current = child;
+    }
+    heap[current] = i;
+  }
+
+}
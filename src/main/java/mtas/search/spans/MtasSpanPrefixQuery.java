@@ -9,11 +9,8 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.PrefixQuery;
-import org.apache.lucene.search.Query;
 import org.apache.lucene.search.spans.SpanMultiTermQueryWrapper;
-import org.apache.lucene.search.spans.SpanOrQuery;
 import org.apache.lucene.search.spans.SpanQuery;
-import org.apache.lucene.search.spans.SpanTermQuery;
 import org.apache.lucene.search.spans.SpanWeight;
 
 /**
@@ -76,22 +73,8 @@ public class MtasSpanPrefixQuery extends MtasSpanQuery {
    */
   @Override
   public MtasSpanQuery rewrite(IndexReader reader) throws IOException {
-    Query q = query.rewrite(reader);
-    if (q instanceof SpanOrQuery) {
-      SpanQuery[] clauses = ((SpanOrQuery) q).getClauses();
-      MtasSpanQuery[] newClauses = new MtasSpanQuery[clauses.length];
-      for (int i = 0; i < clauses.length; i++) {
-        if (clauses[i] instanceof SpanTermQuery) {
-          newClauses[i] = new MtasSpanTermQuery((SpanTermQuery) clauses[i],
-              singlePosition).rewrite(reader);
-        } else {
-          throw new IOException("no SpanTermQuery after rewrite");
-        }
-      }
-      return new MtasSpanOrQuery(newClauses).rewrite(reader);
-    } else {
-      throw new IOException("no SpanOrQuery after rewrite");
-    }
+    return new MtasSpanAutomatonQuery(term, query.getWrappedQuery(), true,
+        singlePosition).rewrite(reader);
   }
 
   /*
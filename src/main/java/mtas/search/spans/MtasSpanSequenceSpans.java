@@ -1,9 +1,7 @@
 package mtas.search.spans;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
@@ -16,21 +14,36 @@ import org.apache.lucene.search.spans.SpanCollector;
 import org.apache.lucene.search.spans.Spans;
 
 /**
- * The Class MtasSpanSequenceSpans.
+ * The Class MtasSpanSequenceSpans. Candidate positions for each item of the
+ * sequence are buffered in a sliding window of packed start and end positions,
+ * and matches are collected in reusable queues of packed positions, so no
+ * objects are created per position.
  */
 public class MtasSpanSequenceSpans extends MtasSpans {
 
+  /** The Constant UNDEFINED, used for unknown positions. */
+  private static final int UNDEFINED = -1;
+
   /** The query. */
   private MtasSpanSequenceQuery query;
 
   /** The queue spans. */
-  private List<QueueItem> queueSpans;
+  private QueueItem[] queueSpans;
 
   /** The ignore item. */
   private MtasIgnoreItem ignoreItem;
 
   /** The queue matches. */
-  private List<Match> queueMatches;
+  private MatchQueue queueMatches;
+
+  /** The index of the next match in the queue matches. */
+  private int queueMatchesIndex;
+
+  /** The sub matches, used while gluing. */
+  private MatchQueue subMatchesQueue;
+
+  /** The new sub matches, used while gluing. */
+  private MatchQueue newSubMatchesQueue;
 
   /** The doc id. */
   private int docId;
@@ -41,8 +54,11 @@ public class MtasSpanSequenceSpans extends MtasSpans {
   /** The cost. */
   private long cost;
 
-  /** The current match. */
-  Match currentMatch;
+  /** The current start position. */
+  private int currentStartPosition;
+
+  /** The current end position. */
+  private int currentEndPosition;
 
   /**
    * Instantiates a new mtas span sequence spans.
@@ -58,10 +74,12 @@ public class MtasSpanSequenceSpans extends MtasSpans {
     super();
     docId = -1;
     this.query = query;
-    queueSpans = new ArrayList<>();
-    queueMatches = new ArrayList<>();
-    for (MtasSpanSequenceQuerySpans sequenceSpans : setSequenceSpans) {
-      queueSpans.add(new QueueItem(sequenceSpans));
+    queueSpans = new QueueItem[setSequenceSpans.size()];
+    queueMatches = new MatchQueue();
+    subMatchesQueue = new MatchQueue();
+    newSubMatchesQueue = new MatchQueue();
+    for (int i = 0; i < queueSpans.length; i++) {
+      queueSpans[i] = new QueueItem(setSequenceSpans.get(i));
     }
     ignoreItem = new MtasIgnoreItem(ignoreSpans, maximumIgnoreLength);
     resetQueue();
@@ -86,12 +104,14 @@ public class MtasSpanSequenceSpans extends MtasSpans {
   @Override
   public int nextStartPosition() throws IOException {
     if (findMatches()) {
-      currentMatch = queueMatches.get(0);
-      currentPosition = currentMatch.startPosition();
-      queueMatches.remove(0);
-      return currentMatch.startPosition();
+      long match = queueMatches.get(queueMatchesIndex++);
+      currentStartPosition = startPosition(match);
+      currentEndPosition = endPosition(match);
+      currentPosition = currentStartPosition;
+      return currentStartPosition;
     } else {
-      currentMatch = new Match(NO_MORE_POSITIONS, NO_MORE_POSITIONS);
+      currentStartPosition = NO_MORE_POSITIONS;
+      currentEndPosition = NO_MORE_POSITIONS;
       currentPosition = NO_MORE_POSITIONS;
       return NO_MORE_POSITIONS;
     }
@@ -104,11 +124,7 @@ public class MtasSpanSequenceSpans extends MtasSpans {
    */
   @Override
   public int startPosition() {
-    if (currentMatch == null) {
-      return -1;
-    } else {
-      return currentMatch.startPosition();
-    }
+    return currentStartPosition;
   }
 
   /*
@@ -118,11 +134,7 @@ public class MtasSpanSequenceSpans extends MtasSpans {
    */
   @Override
   public int endPosition() {
-    if (currentMatch == null) {
-      return -1;
-    } else {
-      return currentMatch.endPosition();
-    }
+    return currentEndPosition;
   }
 
   /*
@@ -183,9 +195,9 @@ public class MtasSpanSequenceSpans extends MtasSpans {
       return true;
     } else {
       // try to find docId with match for all items from sequence
-      Integer spanDocId;
-      Integer newDocId = null;
-      Integer minOptionalDocId = null;
+      int spanDocId;
+      int newDocId = UNDEFINED;
+      int minOptionalDocId = UNDEFINED;
       boolean allItemsOptional = true;
       for (QueueItem item : queueSpans) {
         if (!item.sequenceSpans.optional) {
@@ -194,7 +206,7 @@ public class MtasSpanSequenceSpans extends MtasSpans {
         if (!item.noMoreDocs) {
           if (item.sequenceSpans.spans == null) {
             spanDocId = NO_MORE_DOCS;
-          } else if (newDocId == null) {
+          } else if (newDocId == UNDEFINED) {
             spanDocId = item.sequenceSpans.spans.nextDoc();
           } else {
             if (!item.sequenceSpans.optional) {
@@ -208,16 +220,16 @@ public class MtasSpanSequenceSpans extends MtasSpans {
               }
             }
           }
-          if (spanDocId.equals(NO_MORE_DOCS)) {
+          if (spanDocId == NO_MORE_DOCS) {
             item.noMoreDocs = true;
             if (!item.sequenceSpans.optional) {
               // a not optional span has NO_MORE_DOCS: stop
               docId = NO_MORE_DOCS;
               return true;
             }
-          } else if (!spanDocId.equals(newDocId)) {
+          } else if (spanDocId != newDocId) {
             // last found spanDocId not equal to potential new docId
-            if (newDocId != null) {
+            if (newDocId != UNDEFINED) {
               if (!item.sequenceSpans.optional) {
                 // move also previous spans to at least spanDocId
                 advance(spanDocId);
@@ -227,7 +239,7 @@ public class MtasSpanSequenceSpans extends MtasSpans {
             } else {
               if (!item.sequenceSpans.optional) {
                 // previous optional span with lower docId
-                if ((minOptionalDocId != null)
+                if ((minOptionalDocId != UNDEFINED)
                     && (minOptionalDocId < spanDocId)) {
                   advance(spanDocId);
                   return true;
@@ -237,7 +249,7 @@ public class MtasSpanSequenceSpans extends MtasSpans {
                 }
               } else {
                 // remember minimum docId optional spans
-                minOptionalDocId = (minOptionalDocId == null) ? spanDocId
+                minOptionalDocId = (minOptionalDocId == UNDEFINED) ? spanDocId
                     : Math.min(minOptionalDocId, spanDocId);
               }
             }
@@ -245,11 +257,12 @@ public class MtasSpanSequenceSpans extends MtasSpans {
         }
       }
       // if all items are optional
-      if (allItemsOptional && newDocId == null && minOptionalDocId != null) {
+      if (allItemsOptional && newDocId == UNDEFINED
+          && minOptionalDocId != UNDEFINED) {
         newDocId = minOptionalDocId;
       }
       // nothing found
-      if (newDocId == null) {
+      if (newDocId == UNDEFINED) {
         docId = NO_MORE_DOCS;
         return true;
       } else {
@@ -275,10 +288,10 @@ public class MtasSpanSequenceSpans extends MtasSpans {
   @Override
   public int advance(int target) throws IOException {
     resetQueue();
-    Integer newTarget = target;
+    int newTarget = target;
     do {
       newTarget = advanceToDoc(newTarget);
-    } while (newTarget != null);
+    } while (newTarget != UNDEFINED);
     return docId;
   }
 
@@ -286,28 +299,28 @@ public class MtasSpanSequenceSpans extends MtasSpans {
    * Advance to doc.
    *
    * @param target the target
-   * @return the integer
+   * @return the next target, or {@link #UNDEFINED} if finished
    * @throws IOException Signals that an I/O exception has occurred.
    */
-  private Integer advanceToDoc(int target) throws IOException {
+  private int advanceToDoc(int target) throws IOException {
     if (docId == NO_MORE_DOCS || target <= docId) {
-      return null;
+      return UNDEFINED;
     } else {
-      Integer spanDocId;
-      Integer newDocId = target;
+      int spanDocId;
+      int newDocId = target;
       for (QueueItem item : queueSpans) {
         if (item.sequenceSpans.spans != null) {
           if (item.sequenceSpans.spans.docID() < newDocId) {
             spanDocId = item.sequenceSpans.spans.advance(newDocId);
-            if (spanDocId.equals(NO_MORE_DOCS)) {
+            if (spanDocId == NO_MORE_DOCS) {
               item.noMoreDocs = true;
               if (!item.sequenceSpans.optional) {
                 // a not optional span has NO_MORE_DOCS: stop
                 docId = NO_MORE_DOCS;
-                return null;
+                return UNDEFINED;
               }
             } else {
-              if (!spanDocId.equals(newDocId) && !item.sequenceSpans.optional) {
+              if (spanDocId != newDocId && !item.sequenceSpans.optional) {
                 // a not optional span has nothing for newDocId: stop
                 return spanDocId;
               }
@@ -326,7 +339,7 @@ public class MtasSpanSequenceSpans extends MtasSpans {
       ignoreItem.advanceToDoc(docId);
       // try and glue together
       if (findMatches()) {
-        return null;
+        return UNDEFINED;
         // no matches
       } else {
         resetQueue();
@@ -343,7 +356,7 @@ public class MtasSpanSequenceSpans extends MtasSpans {
    * @throws IOException Signals that an I/O exception has occurred.
    */
   private boolean findMatches() throws IOException {
-    Boolean status = _findMatches();
+    boolean status = _findMatches();
     while (!(status || (currentPosition == NO_MORE_POSITIONS))) {
       status = _findMatches();
     }
@@ -358,7 +371,7 @@ public class MtasSpanSequenceSpans extends MtasSpans {
    */
   private boolean _findMatches() throws IOException {
     // queue not empty
-    if (!queueMatches.isEmpty()) {
+    if (queueMatchesIndex < queueMatches.size()) {
       return true;
       // no more matches to be found
     } else if (currentPosition == NO_MORE_POSITIONS) {
@@ -366,50 +379,50 @@ public class MtasSpanSequenceSpans extends MtasSpans {
       // try to find matches
     } else {
       // subMatches: try to build matches while collecting
-      Integer subMatchesStartPosition = null;
-      Boolean subMatchesOptional = true;
-      List<Match> subMatchesQueue = new ArrayList<>();
+      int subMatchesStartPosition = UNDEFINED;
+      boolean subMatchesOptional = true;
+      subMatchesQueue.clear();
       // minimum startPosition previous, used to set lower boundary on
       // startPosition next
-      Integer minStartPositionPrevious = null;
+      int minStartPositionPrevious = UNDEFINED;
       // maximum endPosition previous, used to set upper boundary on
       // startPosition next
-      Integer maxEndPositionPrevious = null;
+      int maxEndPositionPrevious = UNDEFINED;
       // other variables
-      Integer minStartPositionNext = null;
-      Integer minStartPosition = null;
-      Integer minOptionalStartPosition = null;
+      int minStartPositionNext;
+      int minStartPosition = UNDEFINED;
+      int minOptionalStartPosition = UNDEFINED;
       // adjusted minimum ignoreItem
       boolean adjustedMinimumIgnoreItem = false;
       // fill queue if necessary and possible
-      for (int i = 0; i < queueSpans.size(); i++) {
-        QueueItem item = queueSpans.get(i);
+      for (int i = 0; i < queueSpans.length; i++) {
+        QueueItem item = queueSpans[i];
         // if span is optional, check docId
         if (!item.sequenceSpans.optional || (item.sequenceSpans.spans != null
             && item.sequenceSpans.spans.docID() == docId)) {
           // compute minimum startPosition until next non-optional item
           // used as lower boundary on endPosition next
-          minStartPositionNext = null;
-          for (int j = (i + 1); j < queueSpans.size(); j++) {
-
+          minStartPositionNext = UNDEFINED;
+          for (int j = (i + 1); j < queueSpans.length; j++) {
             // check for available lowestPosition
-            if (!queueSpans.get(j).sequenceSpans.optional
-                && queueSpans.get(j).lowestPosition != null) {
-              minStartPositionNext = (minStartPositionNext == null)
-                  ? queueSpans.get(j).lowestPosition
+            if (!queueSpans[j].sequenceSpans.optional
+                && queueSpans[j].lowestPosition != UNDEFINED) {
+              minStartPositionNext = (minStartPositionNext == UNDEFINED)
+                  ? queueSpans[j].lowestPosition
                   : Math.min(minStartPositionNext,
-                      queueSpans.get(j).lowestPosition);
+                      queueSpans[j].lowestPosition);
               // computing restrictions not possible
             } else {
-              if (!queueSpans.get(j).sequenceSpans.optional) {
-                minStartPositionNext = null;
+              if (!queueSpans[j].sequenceSpans.optional) {
+                minStartPositionNext = UNDEFINED;
               }
               break;
             }
           }
           // fill queue
-          if ((minStartPositionPrevious == null) || subMatchesOptional) {
-            fillQueue(item, null, maxEndPositionPrevious, minStartPositionNext);
+          if ((minStartPositionPrevious == UNDEFINED) || subMatchesOptional) {
+            fillQueue(item, UNDEFINED, maxEndPositionPrevious,
+                minStartPositionNext);
           } else {
             fillQueue(item, minStartPositionPrevious, maxEndPositionPrevious,
                 minStartPositionNext);
@@ -417,7 +430,7 @@ public class MtasSpanSequenceSpans extends MtasSpans {
           // try to adjust minimum ignoreItem
           if (!adjustedMinimumIgnoreItem && !item.sequenceSpans.optional
               && item.filledPosition) {
-            if (minOptionalStartPosition != null) {
+            if (minOptionalStartPosition != UNDEFINED) {
               ignoreItem.removeBefore(docId,
                   Math.min(minOptionalStartPosition, item.lowestPosition));
             } else {
@@ -432,7 +445,10 @@ public class MtasSpanSequenceSpans extends MtasSpans {
             return false;
           }
           // build matches
-          subMatchesQueue = _glue(subMatchesQueue, subMatchesOptional, item);
+          _glue(subMatchesQueue, subMatchesOptional, item, newSubMatchesQueue);
+          MatchQueue swapQueue = subMatchesQueue;
+          subMatchesQueue = newSubMatchesQueue;
+          newSubMatchesQueue = swapQueue;
           // update subMatchesOptional
           if (!item.sequenceSpans.optional) {
             subMatchesOptional = false;
@@ -440,11 +456,11 @@ public class MtasSpanSequenceSpans extends MtasSpans {
           // check if matches are still achievable
           if (!subMatchesOptional && subMatchesQueue.isEmpty()) {
             // clean up previous queues
-            if (subMatchesStartPosition != null) {
+            if (subMatchesStartPosition != UNDEFINED) {
               int cleanStartPosition = subMatchesStartPosition;
               for (int j = 0; j <= i; j++) {
-                queueSpans.get(j).del(cleanStartPosition);
-                if (!queueSpans.get(j).sequenceSpans.optional) {
+                queueSpans[j].del(cleanStartPosition);
+                if (!queueSpans[j].sequenceSpans.optional) {
                   cleanStartPosition++;
                 }
               }
@@ -453,37 +469,40 @@ public class MtasSpanSequenceSpans extends MtasSpans {
           }
           // update subMatchesStartPosition
           if (subMatchesQueue.isEmpty()) {
-            subMatchesStartPosition = null;
+            subMatchesStartPosition = UNDEFINED;
           } else {
-            subMatchesStartPosition = subMatchesQueue.get(0).startPosition;
+            subMatchesStartPosition = startPosition(subMatchesQueue.get(0));
           }
           // compute minimum startPosition for next span
-          if (item.lowestPosition != null) {
-            minStartPositionPrevious = (minStartPositionPrevious == null)
+          if (item.lowestPosition != UNDEFINED) {
+            minStartPositionPrevious = (minStartPositionPrevious == UNDEFINED)
                 ? item.lowestPosition
                 : Math.min(minStartPositionPrevious, item.lowestPosition);
           }
           // for optional spans
           if (item.sequenceSpans.optional) {
             // update stats
-            if (item.lowestPosition != null) {
-              minOptionalStartPosition = (minOptionalStartPosition == null)
+            if (item.lowestPosition != UNDEFINED) {
+              minOptionalStartPosition = (minOptionalStartPosition == UNDEFINED)
                   ? item.lowestPosition
                   : Math.min(minOptionalStartPosition, item.lowestPosition);
             }
             // for not optional spans
           } else {
             // update stats, item.lowestPosition should be set
-            minStartPosition = (minStartPosition == null) ? item.lowestPosition
+            minStartPosition = (minStartPosition == UNDEFINED)
+                ? item.lowestPosition
                 : Math.min(minStartPosition, item.lowestPosition);
             // reset maximum endPosition for next span
-            maxEndPositionPrevious = null;
+            maxEndPositionPrevious = UNDEFINED;
           }
           // compute maximum endPosition for next span
-          if (item.lowestPosition != null) {
-            for (Integer endPosition : item.queue.get(item.lowestPosition)) {
-              maxEndPositionPrevious = (maxEndPositionPrevious == null)
-                  ? endPosition : Math.max(maxEndPositionPrevious, endPosition);
+          if (item.lowestPosition != UNDEFINED) {
+            for (int k = item.head; k < item.size
+                && item.startPosition(k) == item.lowestPosition; k++) {
+              maxEndPositionPrevious = (maxEndPositionPrevious == UNDEFINED)
+                  ? item.endPosition(k)
+                  : Math.max(maxEndPositionPrevious, item.endPosition(k));
             }
           }
         }
@@ -493,8 +512,8 @@ public class MtasSpanSequenceSpans extends MtasSpans {
         if (subMatchesOptional) {
           // check for
           boolean allFinished = true;
-          for (int i = 0; i < queueSpans.size(); i++) {
-            if (!queueSpans.get(i).noMorePositions) {
+          for (int i = 0; i < queueSpans.length; i++) {
+            if (!queueSpans[i].noMorePositions) {
               allFinished = false;
               break;
             }
@@ -504,26 +523,26 @@ public class MtasSpanSequenceSpans extends MtasSpans {
           }
         }
         return false;
-      } else if ((minOptionalStartPosition != null)
+      } else if ((minOptionalStartPosition != UNDEFINED)
           && (minOptionalStartPosition < subMatchesStartPosition)) {
-        for (int i = 0; i < queueSpans.size(); i++) {
-          if (!queueSpans.get(i).sequenceSpans.optional) {
+        for (int i = 0; i < queueSpans.length; i++) {
+          if (!queueSpans[i].sequenceSpans.optional) {
             break;
           } else {
-            queueSpans.get(i).del(minOptionalStartPosition);
+            queueSpans[i].del(minOptionalStartPosition);
           }
         }
         return false;
       } else {
-        for (int i = 0; i < queueSpans.size(); i++) {
-          queueSpans.get(i).del(subMatchesStartPosition);
+        for (int i = 0; i < queueSpans.length; i++) {
+          queueSpans[i].del(subMatchesStartPosition);
         }
-        for (Match m : subMatchesQueue) {
-          if (!queueMatches.contains(m)) {
-            queueMatches.add(m);
-          }
+        queueMatches.clear();
+        queueMatchesIndex = 0;
+        for (int i = 0; i < subMatchesQueue.size(); i++) {
+          queueMatches.add(subMatchesQueue.get(i));
         }
-        ignoreItem.removeBefore(docId, queueMatches.get(0).startPosition);
+        ignoreItem.removeBefore(docId, startPosition(queueMatches.get(0)));
         return true;
       }
     }
@@ -535,57 +554,39 @@ public class MtasSpanSequenceSpans extends MtasSpans {
    * @param subMatchesQueue the sub matches queue
    * @param subMatchesOptional the sub matches optional
    * @param item the item
-   * @return the list
+   * @param newSubMatchesQueue the new sub matches queue, cleared and filled
    * @throws IOException Signals that an I/O exception has occurred.
    */
-  private List<Match> _glue(List<Match> subMatchesQueue,
-      Boolean subMatchesOptional, QueueItem item) throws IOException {
-    List<Match> newSubMatchesQueue = new ArrayList<>();
+  private void _glue(MatchQueue subMatchesQueue, boolean subMatchesOptional,
+      QueueItem item, MatchQueue newSubMatchesQueue) throws IOException {
+    newSubMatchesQueue.clear();
     // no previous queue, only use current item
     if (subMatchesQueue.isEmpty()) {
       if (item.filledPosition) {
-        for (Integer endPosition : item.queue.get(item.lowestPosition)) {
-          Match m = new Match(item.lowestPosition, endPosition);
-          if (!newSubMatchesQueue.contains(m)) {
-            newSubMatchesQueue.add(m);
-          }
-        }
+        item.addMatches(newSubMatchesQueue, item.lowestPosition,
+            item.lowestPosition);
       }
-      return newSubMatchesQueue;
       // previous queue
     } else {
       // startposition from queue
-      int startPosition = subMatchesQueue.get(0).startPosition;
+      int startPosition = startPosition(subMatchesQueue.get(0));
       // previous queue optional, current item optional
       if (subMatchesOptional && item.sequenceSpans.optional) {
         // forget previous, because current has lower startposition
         if (item.filledPosition && item.lowestPosition < startPosition) {
-          for (Integer endPosition : item.queue.get(item.lowestPosition)) {
-            Match m = new Match(item.lowestPosition, endPosition);
-            if (!newSubMatchesQueue.contains(m)) {
-              newSubMatchesQueue.add(m);
-            }
-          }
+          item.addMatches(newSubMatchesQueue, item.lowestPosition,
+              item.lowestPosition);
           // merge with previous
         } else if (item.filledPosition) {
-          if (item.lowestPosition.equals(startPosition)) {
-            for (Integer endPosition : item.queue.get(item.lowestPosition)) {
-              Match m = new Match(item.lowestPosition, endPosition);
-              if (!newSubMatchesQueue.contains(m)) {
-                newSubMatchesQueue.add(m);
-              }
-            }
+          if (item.lowestPosition == startPosition) {
+            item.addMatches(newSubMatchesQueue, item.lowestPosition,
+                item.lowestPosition);
           }
           newSubMatchesQueue.addAll(subMatchesQueue);
-          for (Match m : subMatchesQueue) {
-            if (item.queue.containsKey(m.endPosition)) {
-              for (Integer endPosition : item.queue.get(m.endPosition)) {
-                Match o = new Match(m.startPosition, endPosition);
-                if (!newSubMatchesQueue.contains(o)) {
-                  newSubMatchesQueue.add(o);
-                }
-              }
-            }
+          for (int i = 0; i < subMatchesQueue.size(); i++) {
+            long m = subMatchesQueue.get(i);
+            item.addMatches(newSubMatchesQueue, startPosition(m),
+                endPosition(m));
           }
           // no filled position
         } else {
@@ -596,31 +597,18 @@ public class MtasSpanSequenceSpans extends MtasSpans {
         assert item.filledPosition : "span not optional, should contain items";
         // forget previous
         if (item.lowestPosition < startPosition) {
-          for (Integer endPosition : item.queue.get(item.lowestPosition)) {
-            Match m = new Match(item.lowestPosition, endPosition);
-            if (!newSubMatchesQueue.contains(m)) {
-              newSubMatchesQueue.add(m);
-            }
-          }
+          item.addMatches(newSubMatchesQueue, item.lowestPosition,
+              item.lowestPosition);
           // merge with previous
         } else {
-          if (item.lowestPosition.equals(startPosition)) {
-            for (Integer endPosition : item.queue.get(item.lowestPosition)) {
-              Match m = new Match(item.lowestPosition, endPosition);
-              if (!newSubMatchesQueue.contains(m)) {
-                newSubMatchesQueue.add(m);
-              }
-            }
+          if (item.lowestPosition == startPosition) {
+            item.addMatches(newSubMatchesQueue, item.lowestPosition,
+                item.lowestPosition);
           }
-          for (Match m : subMatchesQueue) {
-            if (item.queue.containsKey(m.endPosition)) {
-              for (Integer endPosition : item.queue.get(m.endPosition)) {
-                Match o = new Match(m.startPosition, endPosition);
-                if (!newSubMatchesQueue.contains(o)) {
-                  newSubMatchesQueue.add(o);
-                }
-              }
-            }
+          for (int i = 0; i < subMatchesQueue.size(); i++) {
+            long m = subMatchesQueue.get(i);
+            item.addMatches(newSubMatchesQueue, startPosition(m),
+                endPosition(m));
           }
         }
         // previous queue not optional, current item optional
@@ -628,63 +616,48 @@ public class MtasSpanSequenceSpans extends MtasSpans {
         newSubMatchesQueue.addAll(subMatchesQueue);
         // merge with previous
         if (item.filledPosition) {
-          for (Match m : subMatchesQueue) {
-            if (item.queue.containsKey(m.endPosition)) {
-              for (Integer endPosition : item.queue.get(m.endPosition)) {
-                Match o = new Match(m.startPosition, endPosition);
-                if (!newSubMatchesQueue.contains(o)) {
-                  newSubMatchesQueue.add(o);
-                }
-              }
-            }
+          for (int i = 0; i < subMatchesQueue.size(); i++) {
+            long m = subMatchesQueue.get(i);
+            item.addMatches(newSubMatchesQueue, startPosition(m),
+                endPosition(m));
           }
         }
         // previous queue not optional, current item not optional
       } else if (!subMatchesOptional && !item.sequenceSpans.optional
           && item.filledPosition) {
-        for (Match m : subMatchesQueue) {
+        for (int i = 0; i < subMatchesQueue.size(); i++) {
+          long m = subMatchesQueue.get(i);
           Set<Integer> ignoreList = ignoreItem.getFullEndPositionList(docId,
-              m.endPosition);
-          Integer[] checkList;
-          if (ignoreList == null) {
-            checkList = new Integer[] { m.endPosition };
-          } else {
-            checkList = new Integer[1 + ignoreList.size()];
-            checkList = ignoreList.toArray(checkList);
-            checkList[ignoreList.size()] = m.endPosition;
-          }
-          for (Integer checkEndPosition : checkList) {
-            if (item.queue.containsKey(checkEndPosition)) {
-              for (Integer endPosition : item.queue.get(checkEndPosition)) {
-                Match o = new Match(m.startPosition, endPosition);
-                if (!newSubMatchesQueue.contains(o)) {
-                  newSubMatchesQueue.add(o);
-                }
-              }
+              endPosition(m));
+          if (ignoreList != null) {
+            for (int checkEndPosition : ignoreList) {
+              item.addMatches(newSubMatchesQueue, startPosition(m),
+                  checkEndPosition);
             }
           }
+          item.addMatches(newSubMatchesQueue, startPosition(m),
+              endPosition(m));
         }
       }
     }
-    return newSubMatchesQueue;
   }
 
   /**
    * Fill queue.
    *
    * @param item the item
-   * @param minStartPosition the min start position
-   * @param maxStartPosition the max start position
-   * @param minEndPosition the min end position
+   * @param minStartPosition the min start position, or {@link #UNDEFINED}
+   * @param maxStartPosition the max start position, or {@link #UNDEFINED}
+   * @param minEndPosition the min end position, or {@link #UNDEFINED}
    * @throws IOException Signals that an I/O exception has occurred.
    */
-  private void fillQueue(QueueItem item, Integer minStartPosition,
-      Integer maxStartPosition, Integer minEndPosition) throws IOException {
+  private void fillQueue(QueueItem item, int minStartPosition,
+      int maxStartPosition, int minEndPosition) throws IOException {
     int newStartPosition;
     int newEndPosition;
-    Integer firstRetrievedPosition = null;
+    int firstRetrievedPosition;
     // remove everything below minStartPosition
-    if ((minStartPosition != null) && (item.lowestPosition != null)
+    if ((minStartPosition != UNDEFINED) && (item.lowestPosition != UNDEFINED)
         && (item.lowestPosition < minStartPosition)) {
       item.del((minStartPosition - 1));
     }
@@ -692,35 +665,38 @@ public class MtasSpanSequenceSpans extends MtasSpans {
     while (!item.noMorePositions) {
       boolean doNotCollectAnotherPosition;
       doNotCollectAnotherPosition = item.filledPosition
-          && (minStartPosition == null) && (maxStartPosition == null);
+          && (minStartPosition == UNDEFINED)
+          && (maxStartPosition == UNDEFINED);
       doNotCollectAnotherPosition |= item.filledPosition
-          && (maxStartPosition != null) && (item.lastRetrievedPosition != null)
+          && (maxStartPosition != UNDEFINED)
+          && (item.lastRetrievedPosition != UNDEFINED)
           && (maxStartPosition < item.lastRetrievedPosition);
       if (doNotCollectAnotherPosition) {
         return;
       } else {
         // collect another full position
-        firstRetrievedPosition = null;
+        firstRetrievedPosition = UNDEFINED;
         while (!item.noMorePositions) {
           newStartPosition = item.sequenceSpans.spans.nextStartPosition();
           if (newStartPosition == NO_MORE_POSITIONS) {
-            if (!item.queue.isEmpty()) {
+            if (!item.isEmpty()) {
               item.filledPosition = true;
               item.lastFilledPosition = item.lastRetrievedPosition;
             }
             item.noMorePositions = true;
             return;
-          } else if ((minStartPosition != null)
+          } else if ((minStartPosition != UNDEFINED)
               && (newStartPosition < minStartPosition)) {
             // do nothing
           } else {
             newEndPosition = item.sequenceSpans.spans.endPosition();
-            if ((minEndPosition == null) || (newEndPosition >= minEndPosition
-                - ignoreItem.getMinStartPosition(docId, newEndPosition))) {
+            if ((minEndPosition == UNDEFINED)
+                || (newEndPosition >= minEndPosition - ignoreItem
+                    .getMinStartPosition(docId, newEndPosition))) {
               item.add(newStartPosition, newEndPosition);
-              if (firstRetrievedPosition == null) {
+              if (firstRetrievedPosition == UNDEFINED) {
                 firstRetrievedPosition = newStartPosition;
-              } else if (!firstRetrievedPosition.equals(newStartPosition)) {
+              } else if (firstRetrievedPosition != newStartPosition) {
                 break;
               }
             }
@@ -736,14 +712,50 @@ public class MtasSpanSequenceSpans extends MtasSpans {
   void resetQueue() {
     currentPosition = -1;
     queueMatches.clear();
+    queueMatchesIndex = 0;
     for (QueueItem item : queueSpans) {
       item.reset();
     }
-    currentMatch = null;
+    currentStartPosition = -1;
+    currentEndPosition = -1;
+  }
+
+  /**
+   * Pack start and end position into a single value.
+   *
+   * @param startPosition the start position
+   * @param endPosition the end position
+   * @return the packed value
+   */
+  private static long pack(int startPosition, int endPosition) {
+    return (((long) startPosition) << 32) | (endPosition & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Start position from a packed value.
+   *
+   * @param value the packed value
+   * @return the start position
+   */
+  private static int startPosition(long value) {
+    return (int) (value >>> 32);
   }
 
   /**
-   * The Class QueueItem.
+   * End position from a packed value.
+   *
+   * @param value the packed value
+   * @return the end position
+   */
+  private static int endPosition(long value) {
+    return (int) value;
+  }
+
+  /**
+   * The Class QueueItem. Sliding window of packed start and end positions for
+   * an item of the sequence, ordered by start position. Positions are removed
+   * from the front and added at the end, and the buffer is compacted instead of
+   * grown when possible.
    */
   private static class QueueItem {
 
@@ -757,16 +769,22 @@ public class MtasSpanSequenceSpans extends MtasSpans {
     private boolean filledPosition;
 
     /** The lowest position. */
-    private Integer lowestPosition;
+    private int lowestPosition;
 
     /** The last filled position. */
-    private Integer lastFilledPosition;
+    private int lastFilledPosition;
 
     /** The last retrieved position. */
-    private Integer lastRetrievedPosition;
+    private int lastRetrievedPosition;
+
+    /** The packed positions. */
+    private long[] positions;
+
+    /** The index of the first position in the window. */
+    private int head;
 
-    /** The queue. */
-    private HashMap<Integer, List<Integer>> queue;
+    /** The index after the last position in the window. */
+    private int size;
 
     /** The sequence spans. */
     public MtasSpanSequenceQuerySpans sequenceSpans;
@@ -779,7 +797,7 @@ public class MtasSpanSequenceSpans extends MtasSpans {
     QueueItem(MtasSpanSequenceQuerySpans sequenceSpans) {
       noMoreDocs = false;
       this.sequenceSpans = sequenceSpans;
-      queue = new HashMap<>();
+      positions = new long[16];
       reset();
     }
 
@@ -788,11 +806,89 @@ public class MtasSpanSequenceSpans extends MtasSpans {
      */
     public void reset() {
       noMorePositions = false;
-      lowestPosition = null;
-      lastFilledPosition = null;
-      lastRetrievedPosition = null;
+      lowestPosition = UNDEFINED;
+      lastFilledPosition = UNDEFINED;
+      lastRetrievedPosition = UNDEFINED;
       filledPosition = false;
-      queue.clear();
+      head = 0;
+      size = 0;
+    }
+
+    /**
+     * Checks if is empty.
+     *
+     * @return true, if is empty
+     */
+    public boolean isEmpty() {
+      return head == size;
+    }
+
+    /**
+     * Start position at index.
+     *
+     * @param index the index
+     * @return the start position
+     */
+    public int startPosition(int index) {
+      return MtasSpanSequenceSpans.startPosition(positions[index]);
+    }
+
+    /**
+     * End position at index.
+     *
+     * @param index the index
+     * @return the end position
+     */
+    public int endPosition(int index) {
+      return MtasSpanSequenceSpans.endPosition(positions[index]);
+    }
+
+    /**
+     * First index in the window with a start position larger than the
+     * provided position.
+     *
+     * @param position the position
+     * @return the index
+     */
+    private int upperBound(int position) {
+      int low = head;
+      int high = size;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (startPosition(mid) <= position) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * Checks if the window contains the start position.
+     *
+     * @param position the position
+     * @return true, if successful
+     */
+    public boolean contains(int position) {
+      int index = upperBound(position - 1);
+      return index < size && startPosition(index) == position;
+    }
+
+    /**
+     * Add a match for each end position of this item with the provided start
+     * position.
+     *
+     * @param matches the matches
+     * @param matchStartPosition the start position of the matches
+     * @param startPosition the start position in this item
+     */
+    public void addMatches(MatchQueue matches, int matchStartPosition,
+        int startPosition) {
+      for (int i = upperBound(startPosition - 1); i < size
+          && startPosition(i) == startPosition; i++) {
+        matches.add(pack(matchStartPosition, endPosition(i)));
+      }
     }
 
     /**
@@ -802,17 +898,29 @@ public class MtasSpanSequenceSpans extends MtasSpans {
      * @param endPosition the end position
      */
     public void add(int startPosition, int endPosition) {
-      if (!queue.keySet().contains(startPosition)) {
-        if (!queue.isEmpty()) {
-          filledPosition = true;
-          lastFilledPosition = lastRetrievedPosition;
+      if (!contains(startPosition) && !isEmpty()) {
+        filledPosition = true;
+        lastFilledPosition = lastRetrievedPosition;
+      }
+      if (size == positions.length) {
+        if (head > 0) {
+          System.arraycopy(positions, head, positions, 0, size - head);
+          size -= head;
+          head = 0;
+        } else {
+          long[] newPositions = new long[positions.length * 2];
+          System.arraycopy(positions, 0, newPositions, 0, size);
+          positions = newPositions;
         }
-        queue.put(startPosition, new ArrayList<Integer>());
       }
-      queue.get(startPosition).add(endPosition);
-      if ((lowestPosition == null) || (lowestPosition > startPosition)) {
-        lowestPosition = startPosition;
+      // spans are ordered by start position, so this is normally an append
+      int index = upperBound(startPosition);
+      if (index < size) {
+        System.arraycopy(positions, index, positions, index + 1, size - index);
       }
+      positions[index] = pack(startPosition, endPosition);
+      size++;
+      lowestPosition = startPosition(head);
       lastRetrievedPosition = startPosition;
     }
 
@@ -822,25 +930,19 @@ public class MtasSpanSequenceSpans extends MtasSpans {
      * @param position the position
      */
     public void del(int position) {
-      ArrayList<Integer> removePositions = new ArrayList<>();
-      for (int p : queue.keySet()) {
-        if (p <= position) {
-          removePositions.add(p);
-        }
-      }
-      if (!removePositions.isEmpty()) {
-        // positions.removeAll(removePositions);
-        for (int p : removePositions) {
-          queue.remove(p);
-        }
-        if (queue.isEmpty()) {
-          lowestPosition = null;
-          lastFilledPosition = null;
+      int newHead = upperBound(position);
+      if (newHead > head) {
+        head = newHead;
+        if (isEmpty()) {
+          head = 0;
+          size = 0;
+          lowestPosition = UNDEFINED;
+          lastFilledPosition = UNDEFINED;
           filledPosition = false;
         } else {
-          lowestPosition = Collections.min(queue.keySet());
-          if (filledPosition && !queue.keySet().contains(lastFilledPosition)) {
-            lastFilledPosition = null;
+          lowestPosition = startPosition(head);
+          if (filledPosition && !contains(lastFilledPosition)) {
+            lastFilledPosition = UNDEFINED;
             filledPosition = false;
           }
         }
@@ -849,84 +951,148 @@ public class MtasSpanSequenceSpans extends MtasSpans {
   }
 
   /**
-   * The Class Match.
+   * The Class MatchQueue. Reusable list of distinct packed matches, in order of
+   * insertion, with an open addressing hash set to detect duplicates.
    */
-  private static class Match {
+  private static class MatchQueue {
+
+    /** The matches. */
+    private long[] matches;
+
+    /** The number of matches. */
+    private int size;
+
+    /** The hash keys. */
+    private long[] keys;
 
-    /** The start position. */
-    private int startPosition;
+    /** The hash stamps, a key is only set if its stamp equals the stamp. */
+    private int[] stamps;
 
-    /** The end position. */
-    private int endPosition;
+    /** The current stamp. */
+    private int stamp;
 
     /**
-     * Instantiates a new match.
-     *
-     * @param startPosition the start position
-     * @param endPosition the end position
+     * Instantiates a new match queue.
      */
-    Match(int startPosition, int endPosition) {
-      this.startPosition = startPosition;
-      this.endPosition = endPosition;
+    MatchQueue() {
+      matches = new long[16];
+      keys = new long[32];
+      stamps = new int[32];
+      stamp = 1;
+      size = 0;
     }
 
     /**
-     * Start position.
+     * Clear.
+     */
+    public void clear() {
+      size = 0;
+      stamp++;
+      if (stamp == 0) {
+        Arrays.fill(stamps, 0);
+        stamp = 1;
+      }
+    }
+
+    /**
+     * Size.
      *
      * @return the int
      */
-    public int startPosition() {
-      return startPosition;
+    public int size() {
+      return size;
     }
 
     /**
-     * End position.
+     * Checks if is empty.
      *
-     * @return the int
+     * @return true, if is empty
      */
-    public int endPosition() {
-      return endPosition;
+    public boolean isEmpty() {
+      return size == 0;
     }
 
-    /*
-     * (non-Javadoc)
-     * 
-     * @see java.lang.Object#equals(java.lang.Object)
+    /**
+     * Gets the match at index.
+     *
+     * @param index the index
+     * @return the packed match
      */
-    @Override
-    public boolean equals(Object obj) {
-      if (this == obj)
-        return true;
-      if (obj == null)
-        return false;
-      if (getClass() != obj.getClass())
-        return false;
-      final Match that = (Match) obj;
-      return startPosition == that.startPosition
-          && endPosition == that.endPosition;
+    public long get(int index) {
+      return matches[index];
+    }
+
+    /**
+     * Adds the match, if not already present.
+     *
+     * @param match the packed match
+     */
+    public void add(long match) {
+      if (insert(match)) {
+        if (size == matches.length) {
+          long[] newMatches = new long[matches.length * 2];
+          System.arraycopy(matches, 0, newMatches, 0, size);
+          matches = newMatches;
+        }
+        matches[size++] = match;
+        if (2 * size > keys.length) {
+          rehash();
+        }
+      }
     }
 
-    /*
-     * (non-Javadoc)
-     * 
-     * @see java.lang.Object#hashCode()
+    /**
+     * Adds all matches, if not already present.
+     *
+     * @param queue the queue
      */
-    @Override
-    public int hashCode() {
-      int h = this.getClass().getSimpleName().hashCode();
-      h = (h * 5) ^ startPosition;
-      h = (h * 7) ^ endPosition;
-      return h;
-    }
-
-    /*
-     * (non-Javadoc)
-     * 
-     * @see java.lang.Object#toString()
+    public void addAll(MatchQueue queue) {
+      for (int i = 0; i < queue.size; i++) {
+        add(queue.matches[i]);
+      }
+    }
+
+    /**
+     * Insert in the hash set.
+     *
+     * @param match the packed match
+     * @return true, if not already present
+     */
+    private boolean insert(long match) {
+      int mask = keys.length - 1;
+      int slot = hash(match) & mask;
+      while (stamps[slot] == stamp) {
+        if (keys[slot] == match) {
+          return false;
+        }
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = match;
+      stamps[slot] = stamp;
+      return true;
+    }
+
+    /**
+     * Double the hash set and insert the current matches.
+     */
+    private void rehash() {
+      keys = new long[keys.length * 2];
+      stamps = new int[stamps.length * 2];
+      stamp = 1;
+      for (int i = 0; i < size; i++) {
+        insert(matches[i]);
+      }
+    }
+
+    /**
+     * Hash.
+     *
+     * @param match the packed match
+     * @return the int
      */
-    @Override
-    public String toString() {
-      return "[" + startPosition + "," + endPosition + "]";
+    private static int hash(long match) {
+      long h = match * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32));
     }
 
   }
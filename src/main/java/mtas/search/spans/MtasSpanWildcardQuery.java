@@ -3,18 +3,14 @@ package mtas.search.spans;
 import java.io.IOException;
 
 import mtas.analysis.token.MtasToken;
-import mtas.codec.util.CodecUtil;
 import mtas.search.spans.util.MtasSpanQuery;
 
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.Query;
 import org.apache.lucene.search.WildcardQuery;
 import org.apache.lucene.search.spans.SpanMultiTermQueryWrapper;
-import org.apache.lucene.search.spans.SpanOrQuery;
 import org.apache.lucene.search.spans.SpanQuery;
-import org.apache.lucene.search.spans.SpanTermQuery;
 import org.apache.lucene.search.spans.SpanWeight;
 
 /**
@@ -22,9 +18,6 @@ import org.apache.lucene.search.spans.SpanWeight;
  */
 public class MtasSpanWildcardQuery extends MtasSpanQuery {
 
-  /** The Constant MTAS_WILDCARD_EXPAND_BOUNDARY. */
-  private static final int MTAS_WILDCARD_EXPAND_BOUNDARY = 1000000;
-
   /** The prefix. */
   private String prefix;
 
@@ -80,29 +73,8 @@ public class MtasSpanWildcardQuery extends MtasSpanQuery {
    */
   @Override
   public MtasSpanQuery rewrite(IndexReader reader) throws IOException {
-    Query q = query.rewrite(reader);
-    if (q instanceof SpanOrQuery) {
-      SpanQuery[] clauses = ((SpanOrQuery) q).getClauses();
-      if (clauses.length > MTAS_WILDCARD_EXPAND_BOUNDARY) {
-        // forward index solution ?
-        throw new IOException("Wildcard expression \""
-            + CodecUtil.termValue(term.text()) + "\" expands to "
-            + clauses.length + " terms, too many (boundary "
-            + MTAS_WILDCARD_EXPAND_BOUNDARY + ")!");
-      }
-      MtasSpanQuery[] newClauses = new MtasSpanQuery[clauses.length];
-      for (int i = 0; i < clauses.length; i++) {
-        if (clauses[i] instanceof SpanTermQuery) {
-          newClauses[i] = new MtasSpanTermQuery((SpanTermQuery) clauses[i],
-              singlePosition);
-        } else {
-          throw new IOException("no SpanTermQuery after rewrite");
-        }
-      }
-      return new MtasSpanOrQuery(newClauses).rewrite(reader);
-    } else {
-      throw new IOException("no SpanOrQuery after rewrite");
-    }
+    return new MtasSpanAutomatonQuery(term, query.getWrappedQuery(), false,
+        singlePosition).rewrite(reader);
   }
 
   /*
@@ -1,16 +1,13 @@
 package mtas.search.spans.util;
 
 import java.io.IOException;
-import java.util.Collection;
 
-import mtas.analysis.token.MtasPosition;
-import mtas.codec.payload.MtasPayloadDecoder;
+import mtas.codec.payload.MtasPayloadPositionDecoder;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.payloads.PayloadSpanCollector;
 import org.apache.lucene.search.spans.TermSpans;
 
 /**
@@ -21,14 +18,14 @@ public class MtasExtendedTermSpans extends TermSpans {
   /** The Constant log. */
   private static final Log log = LogFactory.getLog(MtasExtendedTermSpans.class);
 
-  /** The mtas position. */
-  protected MtasPosition mtasPosition = null;
-
   /** The assume single position. */
   private boolean assumeSinglePosition;
 
-  /** The payload span collector. */
-  private PayloadSpanCollector payloadSpanCollector;
+  /** The payload decoder, reused for every position. */
+  private MtasPayloadPositionDecoder payloadDecoder;
+
+  /** Whether the payload of the current position has been decoded. */
+  private boolean decoded;
 
   /**
    * Instantiates a new mtas extended term spans.
@@ -50,10 +47,45 @@ public class MtasExtendedTermSpans extends TermSpans {
   public MtasExtendedTermSpans(PostingsEnum postings, Term term,
       boolean assumeSinglePosition) {
     super(null, postings, term, 1);
-    payloadSpanCollector = new PayloadSpanCollector();
+    payloadDecoder = new MtasPayloadPositionDecoder();
+    decoded = false;
     this.assumeSinglePosition = assumeSinglePosition;
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lucene.search.spans.TermSpans#nextDoc()
+   */
+  @Override
+  public int nextDoc() throws IOException {
+    decoded = false;
+    return super.nextDoc();
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lucene.search.spans.TermSpans#advance(int)
+   */
+  @Override
+  public int advance(int target) throws IOException {
+    decoded = false;
+    return super.advance(target);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lucene.search.spans.TermSpans#nextStartPosition()
+   */
+  @Override
+  public int nextStartPosition() throws IOException {
+    // the same term can occur more than once at a start position
+    decoded = false;
+    return super.nextStartPosition();
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -68,8 +100,8 @@ public class MtasExtendedTermSpans extends TermSpans {
       if (status >= 0) {
         try {
           processEncodedPayload();
-          return (status != NO_MORE_POSITIONS) ? (mtasPosition.getEnd() + 1)
-              : NO_MORE_POSITIONS;
+          return (status != NO_MORE_POSITIONS)
+              ? (payloadDecoder.getEnd() + 1) : NO_MORE_POSITIONS;
         } catch (IOException e) {
           log.debug(e);
           return NO_MORE_POSITIONS;
@@ -86,53 +118,56 @@ public class MtasExtendedTermSpans extends TermSpans {
    * @return the positions
    */
   public int[] getPositions() {
-    int[] list;
+    int[] list = new int[1];
+    int number = getPositions(list);
+    if (number > list.length) {
+      list = new int[number];
+      getPositions(list);
+    }
+    return list;
+  }
+
+  /**
+   * Fill the buffer with the positions of the current span. If the buffer is
+   * too small, only the first positions are written; the returned number can
+   * be used to retry with a larger buffer.
+   *
+   * @param buffer the buffer
+   * @return the number of positions
+   */
+  public int getPositions(int[] buffer) {
     if (assumeSinglePosition) {
-      list = new int[1];
-      list[0] = super.startPosition();
-      return list;
+      if (buffer.length > 0) {
+        buffer[0] = super.startPosition();
+      }
+      return 1;
     } else {
       try {
         processEncodedPayload();
-        list = mtasPosition.getPositions();
-        if (list != null) {
-          return mtasPosition.getPositions();
-        }
+        return payloadDecoder.getPositions(buffer);
       } catch (IOException e) {
         log.debug(e);
         // do nothing
       }
       int start = super.startPosition();
       int end = super.endPosition();
-      list = new int[end - start];
-      for (int i = start; i < end; i++)
-        list[i - start] = i;
-      return list;
+      int max = Math.min(end - start, buffer.length);
+      for (int i = 0; i < max; i++) {
+        buffer[i] = start + i;
+      }
+      return end - start;
     }
   }
 
   /**
-   * Process encoded payload.
+   * Process encoded payload, if not already done for the current position.
    *
    * @throws IOException Signals that an I/O exception has occurred.
    */
   private void processEncodedPayload() throws IOException {
-    if (!readPayload) {
-      payloadSpanCollector.reset();
-      collect(payloadSpanCollector);
-      Collection<byte[]> originalPayloadCollection = payloadSpanCollector
-          .getPayloads();
-      if (originalPayloadCollection.iterator().hasNext()) {
-        byte[] payload = originalPayloadCollection.iterator().next();
-        if (payload == null) {
-          throw new IOException("no payload");
-        }
-        MtasPayloadDecoder payloadDecoder = new MtasPayloadDecoder();
-        payloadDecoder.init(startPosition(), payload);
-        mtasPosition = payloadDecoder.getMtasPosition();
-      } else {
-        throw new IOException("no payload");
-      }
+    if (!decoded) {
+      payloadDecoder.init(startPosition(), postings.getPayload());
+      decoded = true;
     }
   }
 
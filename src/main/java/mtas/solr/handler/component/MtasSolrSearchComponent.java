@@ -3,12 +3,13 @@ package mtas.solr.handler.component;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
 
+import mtas.codec.MtasCodecPostingsFormat;
 import mtas.codec.util.CodecComponent.ComponentDocument;
 import mtas.codec.util.CodecComponent.ComponentFacet;
 import mtas.codec.util.CodecComponent.ComponentFields;
@@ -23,6 +24,7 @@ import mtas.codec.util.CodecComponent.ComponentToken;
 import mtas.codec.util.CodecUtil;
 import mtas.codec.util.Status;
 import mtas.solr.handler.component.util.MtasSolrResultMerge;
+import mtas.solr.handler.component.util.MtasSolrResultUtil;
 import mtas.solr.handler.util.MtasSolrStatus;
 import mtas.solr.handler.util.MtasSolrStatus.ShardStatus;
 import mtas.solr.search.MtasSolrCollectionCache;
@@ -45,20 +47,28 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.lucene.index.ExitableDirectoryReader;
 import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.util.ExecutorUtil;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrCore;
 import org.apache.solr.core.SolrInfoBean;
 import org.apache.solr.handler.component.ResponseBuilder;
 import org.apache.solr.handler.component.SearchComponent;
 import org.apache.solr.handler.component.ShardRequest;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.StrField;
+import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocList;
 import org.apache.solr.search.DocSet;
 import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.DefaultSolrThreadFactory;
+import org.apache.solr.util.plugin.SolrCoreAware;
 
 /**
  * The Class MtasSolrSearchComponent.
  */
-public class MtasSolrSearchComponent extends SearchComponent {
+public class MtasSolrSearchComponent extends SearchComponent implements SolrCoreAware {
 
 	/** The log. */
 	private static Log log = LogFactory.getLog(MtasSolrSearchComponent.class);
@@ -78,6 +88,15 @@ public class MtasSolrSearchComponent extends SearchComponent {
 	/** The Constant CONFIG_COLLECTION_MAXIMUM_OVERFLOW. */
 	public static final String CONFIG_COLLECTION_MAXIMUM_OVERFLOW = "collectionMaximumOverflow";
 
+	/** The Constant CONFIG_COLLECTION_MAXIMUM_MEMORY. */
+	public static final String CONFIG_COLLECTION_MAXIMUM_MEMORY = "collectionMaximumMemory";
+
+	/** The Constant CONFIG_COLLECT_THREADS. */
+	public static final String CONFIG_COLLECT_THREADS = "collectThreads";
+
+	/** The Constant CONFIG_MERGE_THREADS. */
+	public static final String CONFIG_MERGE_THREADS = "mergeThreads";
+
 	/** The Constant NAME. */
 	public static final String NAME = "mtas";
 
@@ -161,6 +180,9 @@ public class MtasSolrSearchComponent extends SearchComponent {
 	/** The request handler name. */
 	private String requestHandlerName = null;
 
+	/** The executor for collecting segments in parallel. */
+	private ExecutorService collectExecutor = null;
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -187,6 +209,7 @@ public class MtasSolrSearchComponent extends SearchComponent {
 		Long collectionLifetime = null;
 		Integer collectionMaximumNumber = null;
 		Integer collectionMaximumOverflow = null;
+		Long collectionMaximumMemory = null;
 		if (args.get(CONFIG_COLLECTION_CACHE_DIRECTORY) != null
 				&& args.get(CONFIG_COLLECTION_CACHE_DIRECTORY) instanceof String) {
 			collectionCacheDirectory = (String) args.get(CONFIG_COLLECTION_CACHE_DIRECTORY);
@@ -210,8 +233,52 @@ public class MtasSolrSearchComponent extends SearchComponent {
 		} else {
 			log.error("no " + CONFIG_COLLECTION_MAXIMUM_OVERFLOW + " defined for " + this.getClass().getSimpleName());
 		}
+		if (args.get(CONFIG_COLLECTION_MAXIMUM_MEMORY) != null
+				&& args.get(CONFIG_COLLECTION_MAXIMUM_MEMORY) instanceof Long) {
+			collectionMaximumMemory = (Long) args.get(CONFIG_COLLECTION_MAXIMUM_MEMORY);
+		}
 		collectionCache = new MtasSolrCollectionCache(collectionCacheDirectory, collectionLifetime,
-				collectionMaximumNumber, collectionMaximumOverflow);
+				collectionMaximumNumber, collectionMaximumOverflow, collectionMaximumMemory);
+		// init parallel collection of segments
+		if (args.get(CONFIG_COLLECT_THREADS) != null && args.get(CONFIG_COLLECT_THREADS) instanceof Integer) {
+			int collectThreads = (Integer) args.get(CONFIG_COLLECT_THREADS);
+			if (collectThreads > 1) {
+				collectExecutor = ExecutorUtil.newMDCAwareFixedThreadPool(collectThreads,
+						new DefaultSolrThreadFactory("mtasCollect"));
+			}
+		}
+		// init parallel preparation of documents while merging segments
+		if (args.get(CONFIG_MERGE_THREADS) != null) {
+			if (args.get(CONFIG_MERGE_THREADS) instanceof Integer
+					&& (Integer) args.get(CONFIG_MERGE_THREADS) > 0) {
+				MtasCodecPostingsFormat.setMergeThreads((Integer) args.get(CONFIG_MERGE_THREADS));
+			} else {
+				log.error("invalid " + CONFIG_MERGE_THREADS + " defined for " + this.getClass().getSimpleName());
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.solr.util.plugin.SolrCoreAware#inform(org.apache.solr.core.
+	 * SolrCore)
+	 */
+	@Override
+	public void inform(SolrCore core) {
+		core.addCloseHook(new CloseHook() {
+			@Override
+			public void preClose(SolrCore core) {
+				// do nothing
+			}
+
+			@Override
+			public void postClose(SolrCore core) {
+				if (collectExecutor != null) {
+					ExecutorUtil.shutdownAndAwaitTermination(collectExecutor);
+				}
+			}
+		});
 	}
 
 	/*
@@ -351,31 +418,36 @@ public class MtasSolrSearchComponent extends SearchComponent {
 								|| mtasFields.doTermVector || mtasFields.doPrefix || mtasFields.doStatus
 								|| mtasFields.doVersion) {
 							SolrIndexSearcher searcher = rb.req.getSearcher();
-							ArrayList<Integer> docSetList = null;
-							ArrayList<Integer> docListList = null;
+							int[] docSetList = null;
+							int[] docListList = null;
 							// initialise docSetList
 							if (docSet != null) {
-								docSetList = new ArrayList<>();
-								Iterator<Integer> docSetIterator = docSet.iterator();
-								while (docSetIterator.hasNext()) {
-									docSetList.add(docSetIterator.next());
+								docSetList = new int[docSet.size()];
+								DocIterator docSetIterator = docSet.iterator();
+								for (int i = 0; i < docSetList.length && docSetIterator.hasNext(); i++) {
+									docSetList[i] = docSetIterator.nextDoc();
 								}
-								Collections.sort(docSetList);
+								Arrays.sort(docSetList);
 							}
 							// initialise docListList
 							if (docList != null) {
-								docListList = new ArrayList<>();
-								Iterator<Integer> docListIterator = docList.iterator();
-								while (docListIterator.hasNext()) {
-									docListList.add(docListIterator.next());
+								docListList = new int[docList.size()];
+								DocIterator docListIterator = docList.iterator();
+								for (int i = 0; i < docListList.length && docListIterator.hasNext(); i++) {
+									docListList[i] = docListIterator.nextDoc();
 								}
-								Collections.sort(docListList);
+								Arrays.sort(docListList);
 							}
 							solrStatus.status().addSubs(mtasFields.list.keySet());
+							// indexed values only equal the external key for string fields
+							SchemaField uniqueKey = rb.req.getSchema().getUniqueKeyField();
+							boolean uniqueKeyDocValues = uniqueKey.hasDocValues()
+									&& uniqueKey.getType() instanceof StrField;
 							for (String field : mtasFields.list.keySet()) {
+								mtasFields.list.get(field).uniqueKeyDocValues = uniqueKeyDocValues;
 								try {
 									CodecUtil.collectField(field, searcher, searcher.getRawReader(), docListList,
-											docSetList, mtasFields.list.get(field), solrStatus.status());
+											docSetList, mtasFields.list.get(field), solrStatus.status(), collectExecutor);
 								} catch (IllegalAccessException | IllegalArgumentException
 										| InvocationTargetException e) {
 									log.error(e);
@@ -552,6 +624,10 @@ public class MtasSolrSearchComponent extends SearchComponent {
 							}
 							// add to response
 							if (mtasResponse.size() > 0) {
+								MtasSolrResultUtil.encode(mtasResponse,
+										rb.req.getParams().get(MtasSolrResultUtil.PARAM_MTAS_ENCODING,
+												MtasSolrResultUtil.ENCODING_JAVA),
+										rb.req.getParams().getBool(MtasSolrResultUtil.PARAM_MTAS_ENCODING_COMPRESS, false));
 								rb.rsp.add(NAME, mtasResponse);
 							}
 						}
@@ -31,7 +31,9 @@ abstract public interface MtasSolrComponent<T extends BasicComponent> {
    * Creates the.
    *
    * @param response the response
-   * @param encode the encode
+   * @param encode the encode, if true the data is added with a key starting
+   *          with <code>_encoded_</code>, to be encoded for transport with
+   *          {@link MtasSolrResultUtil}
    * @return the simple ordered map
    * @throws IOException Signals that an I/O exception has occurred.
    */
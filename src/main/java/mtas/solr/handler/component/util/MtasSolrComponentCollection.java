@@ -328,8 +328,7 @@ public class MtasSolrComponentCollection
     SimpleOrderedMap<Object> mtasCollectionResponse = new SimpleOrderedMap<>();
     mtasCollectionResponse.add("key", componentCollection.key);
     if (encode) {
-      mtasCollectionResponse.add("_encoded_data",
-          MtasSolrResultUtil.encode(data));
+      mtasCollectionResponse.add("_encoded_data", data);
     } else {
       mtasCollectionResponse.add("data", data);
       MtasSolrResultUtil.rewrite(mtasCollectionResponse, searchComponent);
@@ -572,7 +572,7 @@ public class MtasSolrComponentFacet
         functionData);
 
     if (encode) {
-      mtasFacetResponse.add("_encoded_list", MtasSolrResultUtil.encode(data));
+      mtasFacetResponse.add("_encoded_list", data);
     } else {
       mtasFacetResponse.add("list", data);
       MtasSolrResultUtil.rewrite(mtasFacetResponse, searchComponent);
@@ -355,7 +355,7 @@ public class MtasSolrComponentGroup
         new String[] { group.sortType }, new String[] { group.sortDirection },
         new Integer[] { group.start }, new Integer[] { group.number }, null);
     if (encode) {
-      mtasGroupResponse.add("_encoded_list", MtasSolrResultUtil.encode(data));
+      mtasGroupResponse.add("_encoded_list", data);
     } else {
       mtasGroupResponse.add("list", data);
       MtasSolrResultUtil.rewrite(mtasGroupResponse, searchComponent);
@@ -2,6 +2,7 @@ package mtas.solr.handler.component.util;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedSet;
 
@@ -144,19 +145,28 @@ public class MtasSolrComponentPrefix
     mtasPrefixResponse.add("key", prefix.key);
     if (encode) {
       mtasPrefixResponse.add("_encoded_singlePosition",
-          MtasSolrResultUtil.encode(prefix.singlePositionList));
+          prefix.singlePositionList);
       mtasPrefixResponse.add("_encoded_multiplePosition",
-          MtasSolrResultUtil.encode(prefix.multiplePositionList));
-      mtasPrefixResponse.add("_encoded_setPosition",
-          MtasSolrResultUtil.encode(prefix.setPositionList));
-      mtasPrefixResponse.add("_encoded_intersecting",
-          MtasSolrResultUtil.encode(prefix.intersectingList));
+          prefix.multiplePositionList);
+      mtasPrefixResponse.add("_encoded_setPosition", prefix.setPositionList);
+      mtasPrefixResponse.add("_encoded_intersecting", prefix.intersectingList);
     } else {
       mtasPrefixResponse.add("singlePosition", prefix.singlePositionList);
       mtasPrefixResponse.add("multiplePosition", prefix.multiplePositionList);
       mtasPrefixResponse.add("setPosition", prefix.setPositionList);
       mtasPrefixResponse.add("intersecting", prefix.intersectingList);
     }
+    // summed over shards by the merge of named lists
+    if (prefix.statsList != null) {
+      SimpleOrderedMap<Object> statsResponse = new SimpleOrderedMap<>();
+      for (Entry<String, long[]> entry : prefix.statsList.entrySet()) {
+        SimpleOrderedMap<Object> statsItem = new SimpleOrderedMap<>();
+        statsItem.add("docs", entry.getValue()[0]);
+        statsItem.add("termFreq", entry.getValue()[1]);
+        statsResponse.add(entry.getKey(), statsItem);
+      }
+      mtasPrefixResponse.add("stats", statsResponse);
+    }
     return mtasPrefixResponse;
   }
 
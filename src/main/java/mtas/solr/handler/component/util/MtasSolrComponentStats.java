@@ -882,8 +882,7 @@ public class MtasSolrComponentStats
     MtasSolrMtasResult data = new MtasSolrMtasResult(position.dataCollector,
         position.dataType, position.statsType, position.statsItems, null, null);
     if (encode) {
-      mtasPositionResponse.add("_encoded_data",
-          MtasSolrResultUtil.encode(data));
+      mtasPositionResponse.add("_encoded_data", data);
     } else {
       mtasPositionResponse.add(position.dataCollector.getCollectorType(), data);
       MtasSolrResultUtil.rewrite(mtasPositionResponse, searchComponent);
@@ -908,7 +907,7 @@ public class MtasSolrComponentStats
     MtasSolrMtasResult data = new MtasSolrMtasResult(token.dataCollector,
         token.dataType, token.statsType, token.statsItems, null, null);
     if (encode) {
-      mtasTokenResponse.add("_encoded_data", MtasSolrResultUtil.encode(data));
+      mtasTokenResponse.add("_encoded_data", data);
     } else {
       mtasTokenResponse.add(token.dataCollector.getCollectorType(), data);
       MtasSolrResultUtil.rewrite(mtasTokenResponse, searchComponent);
@@ -948,7 +947,7 @@ public class MtasSolrComponentStats
     MtasSolrMtasResult data = new MtasSolrMtasResult(span.dataCollector,
         span.dataType, span.statsType, span.statsItems, null, functionData);
     if (encode) {
-      mtasSpanResponse.add("_encoded_data", MtasSolrResultUtil.encode(data));
+      mtasSpanResponse.add("_encoded_data", data);
     } else {
       mtasSpanResponse.add(span.dataCollector.getCollectorType(), data);
       MtasSolrResultUtil.rewrite(mtasSpanResponse, searchComponent);
@@ -593,8 +593,7 @@ public class MtasSolrComponentTermvector
         new String[] { termVector.subComponentFunction.sortDirection },
         new Integer[] { 0 }, new Integer[] { termVector.number }, functionData);
     if (encode) {
-      mtasTermVectorResponse.add("_encoded_list",
-          MtasSolrResultUtil.encode(data));
+      mtasTermVectorResponse.add("_encoded_list", data);
     } else {
       mtasTermVectorResponse.add("list", data);
       MtasSolrResultUtil.rewrite(mtasTermVectorResponse, searchComponent);
@@ -2,6 +2,7 @@ package mtas.solr.handler.component.util;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,6 +17,8 @@ import org.apache.solr.common.util.SimpleOrderedMap;
 import mtas.codec.util.CodecComponent.SubComponentDistance;
 import mtas.codec.util.DataCollector;
 import mtas.codec.util.collector.MtasDataCollector;
+import mtas.codec.util.collector.MtasDataCollectorInput;
+import mtas.codec.util.collector.MtasDataCollectorOutput;
 import mtas.codec.util.collector.MtasDataCollectorResult;
 import mtas.codec.util.collector.MtasDataItem;
 import mtas.codec.util.distance.Distance;
@@ -159,6 +162,13 @@ public class MtasSolrMtasResult implements Serializable {
         new Integer[] { 1 }, functionData);
   }
 
+  /**
+   * Instantiates a new mtas solr mtas result, to be read.
+   */
+  private MtasSolrMtasResult() {
+    // do nothing
+  }
+
   /**
    * Merge.
    *
@@ -402,6 +412,166 @@ public class MtasSolrMtasResult implements Serializable {
     }
   }
 
+  /**
+   * Write in the explicit format read by
+   * {@link #read(MtasDataCollectorInput)}. Function data is keyed by
+   * collectors written before, so the data collector is written first.
+   *
+   * @param out the out
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void write(MtasDataCollectorOutput out) throws IOException {
+    out.writeCollector(dataCollector);
+    out.writeString(dataType);
+    out.writeString(statsType);
+    writeDistances(out, distances);
+    out.writeString(sortType);
+    out.writeString(sortDirection);
+    out.writeInteger(start);
+    out.writeInteger(number);
+    out.writeBoolean(subDataType != null);
+    if (subDataType != null) {
+      out.writeStrings(subDataType);
+      out.writeStrings(subStatsType);
+      out.writeStringSets(subStatsItems);
+      out.writeBoolean(subDistances != null);
+      if (subDistances != null) {
+        out.writeVInt(subDistances.length);
+        for (List<SubComponentDistance> subDistance : subDistances) {
+          writeDistances(out, subDistance);
+        }
+      }
+      out.writeStrings(subSortType);
+      out.writeStrings(subSortDirection);
+      out.writeIntegers(subStart);
+      out.writeIntegers(subNumber);
+    }
+    out.writeBoolean(functionData != null);
+    if (functionData != null) {
+      out.writeVInt(functionData.size());
+      for (Entry<MtasDataCollector<?, ?>, HashMap<String, MtasSolrMtasResult>> entry : functionData
+          .entrySet()) {
+        out.writeCollector(entry.getKey());
+        out.writeVInt(entry.getValue().size());
+        for (Entry<String, MtasSolrMtasResult> subEntry : entry.getValue()
+            .entrySet()) {
+          out.writeString(subEntry.getKey());
+          subEntry.getValue().write(out);
+        }
+      }
+    }
+  }
+
+  /**
+   * Read in the explicit format written by
+   * {@link #write(MtasDataCollectorOutput)}.
+   *
+   * @param in the in
+   * @return the mtas solr mtas result
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @SuppressWarnings("unchecked")
+  public static MtasSolrMtasResult read(MtasDataCollectorInput in)
+      throws IOException {
+    MtasSolrMtasResult result = new MtasSolrMtasResult();
+    result.dataCollector = in.readCollector();
+    if (result.dataCollector == null) {
+      throw new IOException("no data collector");
+    }
+    result.dataType = in.readString();
+    result.statsType = in.readString();
+    result.distances = readDistances(in);
+    result.sortType = in.readString();
+    result.sortDirection = in.readString();
+    result.start = in.readInteger();
+    result.number = in.readInteger();
+    if (in.readBoolean()) {
+      result.subDataType = in.readStrings();
+      result.subStatsType = in.readStrings();
+      result.subStatsItems = in.readStringSets();
+      if (in.readBoolean()) {
+        result.subDistances = new List[in.readVInt()];
+        for (int i = 0; i < result.subDistances.length; i++) {
+          result.subDistances[i] = readDistances(in);
+        }
+      }
+      result.subSortType = in.readStrings();
+      result.subSortDirection = in.readStrings();
+      result.subStart = in.readIntegers();
+      result.subNumber = in.readIntegers();
+    }
+    if (in.readBoolean()) {
+      result.functionData = new HashMap<>();
+      int size = in.readVInt();
+      for (int i = 0; i < size; i++) {
+        MtasDataCollector<?, ?> key = in.readCollector();
+        HashMap<String, MtasSolrMtasResult> item = new HashMap<>();
+        int itemSize = in.readVInt();
+        for (int j = 0; j < itemSize; j++) {
+          item.put(in.readString(), read(in));
+        }
+        result.functionData.put(key, item);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Write distances.
+   *
+   * @param out the out
+   * @param distances the distances
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void writeDistances(MtasDataCollectorOutput out,
+      List<SubComponentDistance> distances) throws IOException {
+    out.writeBoolean(distances != null);
+    if (distances != null) {
+      out.writeVInt(distances.size());
+      for (SubComponentDistance distance : distances) {
+        out.writeString(distance.key);
+        out.writeString(distance.type);
+        out.writeString(distance.prefix);
+        out.writeString(distance.base);
+        out.writeStringMap(distance.parameters);
+        out.writeDouble(distance.minimum);
+        out.writeDouble(distance.maximum);
+      }
+    }
+  }
+
+  /**
+   * Read distances.
+   *
+   * @param in the in
+   * @return the distances
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static List<SubComponentDistance> readDistances(
+      MtasDataCollectorInput in) throws IOException {
+    if (in.readBoolean()) {
+      int size = in.readVInt();
+      List<SubComponentDistance> distances = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        String key = in.readString();
+        String type = in.readString();
+        String prefix = in.readString();
+        String base = in.readString();
+        Map<String, String> parameters = in.readStringMap();
+        Double minimum = in.readDouble();
+        Double maximum = in.readDouble();
+        SubComponentDistance distance = new SubComponentDistance(key, type,
+            prefix, base, parameters, null, null);
+        distance.minimum = minimum;
+        distance.maximum = maximum;
+        distances.add(distance);
+      }
+      return distances;
+    } else {
+      return null;
+    }
+  }
+
   /**
    * Gets the result.
    *
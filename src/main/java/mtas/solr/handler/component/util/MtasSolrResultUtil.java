@@ -1,11 +1,17 @@
 package mtas.solr.handler.component.util;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Serializable;
 import java.io.StringReader;
@@ -19,6 +25,10 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -29,6 +39,8 @@ import org.apache.solr.common.util.SimpleOrderedMap;
 
 import mtas.codec.util.DataCollector;
 import mtas.codec.util.CodecComponent.GroupHit;
+import mtas.codec.util.collector.MtasDataCollectorInput;
+import mtas.codec.util.collector.MtasDataCollectorOutput;
 import mtas.codec.util.collector.MtasDataItem;
 import mtas.parser.cql.MtasCQLParser;
 import mtas.parser.cql.TokenMgrError;
@@ -46,6 +58,38 @@ public class MtasSolrResultUtil {
   /** The Constant QUERY_TYPE_CQL. */
   public static final String QUERY_TYPE_CQL = "cql";
 
+  /** The Constant PARAM_MTAS_ENCODING. */
+  public static final String PARAM_MTAS_ENCODING = MtasSolrSearchComponent.PARAM_MTAS
+      + ".encoding";
+
+  /** The Constant PARAM_MTAS_ENCODING_COMPRESS. */
+  public static final String PARAM_MTAS_ENCODING_COMPRESS = PARAM_MTAS_ENCODING
+      + ".compress";
+
+  /** The Constant ENCODING_JAVA, Base64 encoded serialized objects. */
+  public static final String ENCODING_JAVA = "java";
+
+  /** The Constant ENCODING_BINARY, versioned byte arrays. */
+  public static final String ENCODING_BINARY = "binary";
+
+  /** The Constant BINARY_MAGIC. */
+  private static final byte BINARY_MAGIC = 0x4D;
+
+  /** The Constant BINARY_VERSION. */
+  private static final byte BINARY_VERSION = 2;
+
+  /** The Constant BINARY_FLAG_COMPRESSED. */
+  private static final byte BINARY_FLAG_COMPRESSED = 1;
+
+  /** The Constant BINARY_TYPE_RESULT, a {@link MtasSolrMtasResult}. */
+  private static final byte BINARY_TYPE_RESULT = 1;
+
+  /** The Constant BINARY_TYPE_SERIALIZED, any other serialized object. */
+  private static final byte BINARY_TYPE_SERIALIZED = 2;
+
+  /** The Constant BINARY_HEADER_LENGTH. */
+  private static final int BINARY_HEADER_LENGTH = 4;
+
   /** The Constant patternKeyStartGrouphit. */
   public static final Pattern patternKeyStartGrouphit = Pattern
       .compile("^" + GroupHit.KEY_START);
@@ -281,6 +325,169 @@ public class MtasSolrResultUtil {
     }
   }
 
+  /**
+   * Encode with the provided encoding.
+   *
+   * @param o the o
+   * @param encoding the encoding
+   * @param compress the compress
+   * @return the encoded object, a string or a byte array
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static Object encode(Object o, String encoding, boolean compress)
+      throws IOException {
+    if (ENCODING_BINARY.equals(encoding)) {
+      return encodeBinary(o, compress);
+    } else {
+      return encode(o);
+    }
+  }
+
+  /**
+   * Encode binary. A header with version, flags and type is followed by the
+   * optionally compressed data. Collector results are written in the explicit
+   * format of {@link MtasSolrMtasResult#write(MtasDataCollectorOutput)}, other
+   * objects are serialized.
+   *
+   * @param o the o
+   * @param compress the compress
+   * @return the byte[]
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static byte[] encodeBinary(Object o, boolean compress)
+      throws IOException {
+    if (o instanceof Serializable) {
+      ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+      byteArrayOutputStream.write(BINARY_MAGIC);
+      byteArrayOutputStream.write(BINARY_VERSION);
+      byteArrayOutputStream.write(compress ? BINARY_FLAG_COMPRESSED : 0);
+      byteArrayOutputStream.write(o instanceof MtasSolrMtasResult
+          ? BINARY_TYPE_RESULT : BINARY_TYPE_SERIALIZED);
+      Deflater deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+      OutputStream outputStream = compress
+          ? new DeflaterOutputStream(byteArrayOutputStream, deflater, 8192)
+          : byteArrayOutputStream;
+      try {
+        if (o instanceof MtasSolrMtasResult) {
+          try (DataOutputStream dataOutputStream = new DataOutputStream(
+              new BufferedOutputStream(outputStream, 8192))) {
+            ((MtasSolrMtasResult) o)
+                .write(new MtasDataCollectorOutput(dataOutputStream));
+          }
+        } else {
+          try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(
+              outputStream)) {
+            objectOutputStream.writeObject(o);
+          }
+        }
+      } finally {
+        if (deflater != null) {
+          deflater.end();
+        }
+      }
+      return byteArrayOutputStream.toByteArray();
+    } else {
+      throw new IOException("no serializable object");
+    }
+  }
+
+  /**
+   * Encode all objects in the named list with a key starting with
+   * <code>_encoded_</code>, recursively.
+   *
+   * @param nl the nl
+   * @param encoding the encoding
+   * @param compress the compress
+   * @return the named list
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public static NamedList<Object> encode(NamedList<Object> nl, String encoding,
+      boolean compress) throws IOException {
+    for (int i = 0; i < nl.size(); i++) {
+      String key = nl.getName(i);
+      Object o = nl.getVal(i);
+      if (key != null && key.startsWith("_encoded_")) {
+        if (o instanceof NamedList) {
+          NamedList nl2 = (NamedList) o;
+          for (int j = 0; j < nl2.size(); j++) {
+            if (!isEncoded(nl2.getVal(j))) {
+              nl2.setVal(j, encode(nl2.getVal(j), encoding, compress));
+            }
+          }
+        } else if (!isEncoded(o)) {
+          nl.setVal(i, encode(o, encoding, compress));
+        }
+      } else if (o instanceof NamedList) {
+        encode((NamedList<Object>) o, encoding, compress);
+      } else if (o instanceof ArrayList) {
+        for (Object item : (ArrayList) o) {
+          if (item instanceof NamedList) {
+            encode((NamedList<Object>) item, encoding, compress);
+          }
+        }
+      }
+    }
+    return nl;
+  }
+
+  /**
+   * Checks if is encoded.
+   *
+   * @param o the o
+   * @return true, if is encoded
+   */
+  private static boolean isEncoded(Object o) {
+    return o == null || o instanceof String || o instanceof byte[];
+  }
+
+  /**
+   * Decode binary.
+   *
+   * @param bytes the bytes
+   * @return the object
+   */
+  static Object decode(byte[] bytes) {
+    if (bytes.length < BINARY_HEADER_LENGTH || bytes[0] != BINARY_MAGIC) {
+      log.error("no binary encoded object");
+      return null;
+    } else if (bytes[1] != BINARY_VERSION) {
+      log.error("unsupported binary encoding version " + bytes[1]);
+      return null;
+    }
+    InputStream inputStream = new ByteArrayInputStream(bytes,
+        BINARY_HEADER_LENGTH, bytes.length - BINARY_HEADER_LENGTH);
+    Inflater inflater = null;
+    if ((bytes[2] & BINARY_FLAG_COMPRESSED) != 0) {
+      inflater = new Inflater();
+      inputStream = new InflaterInputStream(inputStream, inflater, 8192);
+    }
+    try {
+      if (bytes[3] == BINARY_TYPE_RESULT) {
+        try (DataInputStream dataInputStream = new DataInputStream(
+            new BufferedInputStream(inputStream, 8192))) {
+          return MtasSolrMtasResult
+              .read(new MtasDataCollectorInput(dataInputStream));
+        }
+      } else if (bytes[3] == BINARY_TYPE_SERIALIZED) {
+        try (ObjectInputStream objectInputStream = new ObjectInputStream(
+            inputStream)) {
+          return objectInputStream.readObject();
+        }
+      } else {
+        log.error("unsupported binary encoding type " + bytes[3]);
+        return null;
+      }
+    } catch (IOException | ClassNotFoundException e) {
+      log.error(e);
+      return null;
+    } finally {
+      if (inflater != null) {
+        inflater.end();
+      }
+    }
+  }
+
   /**
    * Decode.
    *
@@ -330,8 +537,9 @@ public class MtasSolrResultUtil {
       String key = nl.getName(i);
       Object o = nl.getVal(i);
       if (key.matches("^_encoded_.*$")) {
-        if (o instanceof String) {
-          Object decodedObject = decode((String) nl.getVal(i));
+        if (o instanceof String || o instanceof byte[]) {
+          Object decodedObject = (o instanceof String) ? decode((String) o)
+              : decode((byte[]) o);
           String decodedKey = key.replaceFirst("^_encoded_", "");
           if (decodedKey.equals("")) {
             decodedKey = "_" + decodedObject.getClass().getSimpleName() + "_";
@@ -343,6 +551,8 @@ public class MtasSolrResultUtil {
           for (int j = 0; j < nl2.size(); j++) {
             if (nl2.getVal(j) instanceof String) {
               nl2.setVal(j, decode((String) nl2.getVal(j)));
+            } else if (nl2.getVal(j) instanceof byte[]) {
+              nl2.setVal(j, decode((byte[]) nl2.getVal(j)));
             }
           }
         } else {
@@ -1,16 +1,10 @@
 package mtas.solr.search;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.Serializable;
-import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -18,7 +12,6 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -27,17 +20,32 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.lucene.index.Term;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.lucene.util.automaton.Automata;
 import org.apache.lucene.util.automaton.Automaton;
 import org.apache.solr.common.util.Base64;
 import org.apache.solr.common.util.SimpleOrderedMap;
 
 /**
- * The Class MtasSolrCollectionCache.
+ * The Class MtasSolrCollectionCache. The administration is kept in concurrent
+ * maps, and changes to it are made under a lock that is never held while
+ * reading files or building automata. Decoded data and automata are loaded
+ * and built under a lock for the version only, so concurrent requests for
+ * other collections are not blocked. Data used from memory doesn't access the
+ * files: the file time, used to reconstruct the expiration on restart, is
+ * updated at most once per tenth of the life time and on eviction from memory.
  */
 public class MtasSolrCollectionCache {
 
@@ -54,6 +62,24 @@ public class MtasSolrCollectionCache {
   /** The Constant DEFAULT_MAXIMUM_OVERFLOW. */
   private static final int DEFAULT_MAXIMUM_OVERFLOW = 10;
 
+  /** The Constant DEFAULT_MAXIMUM_MEMORY. */
+  private static final long DEFAULT_MAXIMUM_MEMORY = 64L * 1024 * 1024;
+
+  /** The Constant BYTES_REF_WEIGHT, the weight of a BytesRef without data. */
+  private static final long BYTES_REF_WEIGHT = RamUsageEstimator
+      .shallowSizeOfInstance(BytesRef.class)
+      + RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+      + RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+
+  /** The Constant CODEC_NAME. */
+  private static final String CODEC_NAME = "MtasSolrCollectionCache";
+
+  /** The Constant VERSION_START. */
+  private static final int VERSION_START = 1;
+
+  /** The Constant VERSION_CURRENT. */
+  private static final int VERSION_CURRENT = VERSION_START;
+
   /** The id to version. */
   private Map<String, String> idToVersion;
 
@@ -66,15 +92,39 @@ public class MtasSolrCollectionCache {
   /** The collection cache path. */
   private Path collectionCachePath;
 
+  /** The collection cache directory, used to read and write the files. */
+  private Directory collectionCacheDirectory;
+
+  /** The administration lock. */
+  private final Object administrationLock = new Object();
+
+  /** The eviction lock. */
+  private final Object evictionLock = new Object();
+
   /** The life time. */
   private long lifeTime;
 
+  /**
+   * The minimum time in milliseconds between updates of the file time of a
+   * version used from memory.
+   */
+  private long touchInterval;
+
   /** The maximum number. */
   private int maximumNumber;
 
   /** The maximum overflow. */
   private int maximumOverflow;
 
+  /** The decoded data kept in memory, by version. */
+  private ConcurrentHashMap<String, MtasSolrCollectionCacheMemoryItem> versionToMemoryItem;
+
+  /** The access clock, to evict least recently used decoded data. */
+  private final AtomicLong accessClock = new AtomicLong();
+
+  /** The maximum memory. */
+  private long maximumMemory;
+
   /**
    * Instantiates a new mtas solr collection cache.
    *
@@ -85,26 +135,47 @@ public class MtasSolrCollectionCache {
    */
   public MtasSolrCollectionCache(String cacheDirectory, Long lifeTime,
       Integer maximumNumber, Integer maximumOverflow) {
+    this(cacheDirectory, lifeTime, maximumNumber, maximumOverflow, null);
+  }
+
+  /**
+   * Instantiates a new mtas solr collection cache.
+   *
+   * @param cacheDirectory the cache directory
+   * @param lifeTime the life time
+   * @param maximumNumber the maximum number
+   * @param maximumOverflow the maximum overflow
+   * @param maximumMemory the maximum memory in bytes for decoded data and
+   *          automata, 0 to disable
+   */
+  public MtasSolrCollectionCache(String cacheDirectory, Long lifeTime,
+      Integer maximumNumber, Integer maximumOverflow, Long maximumMemory) {
     this.lifeTime = (lifeTime != null && lifeTime > 0) ? lifeTime
         : DEFAULT_LIFETIME;
+    // the expiration after a restart is at most this much too early
+    touchInterval = 100 * this.lifeTime;
     this.maximumNumber = (maximumNumber != null && maximumNumber > 0)
         ? maximumNumber : DEFAULT_MAXIMUM_NUMBER;
     this.maximumOverflow = (maximumOverflow != null && maximumOverflow > 0)
         ? maximumOverflow : DEFAULT_MAXIMUM_OVERFLOW;
-    idToVersion = new HashMap<>();
-    expirationVersion = new HashMap<>();
-    versionToItem = new HashMap<>();
+    this.maximumMemory = (maximumMemory != null && maximumMemory >= 0)
+        ? maximumMemory : DEFAULT_MAXIMUM_MEMORY;
+    versionToMemoryItem = new ConcurrentHashMap<>();
+    idToVersion = new ConcurrentHashMap<>();
+    expirationVersion = new ConcurrentHashMap<>();
+    versionToItem = new ConcurrentHashMap<>();
     if (cacheDirectory != null) {
       try {
         collectionCachePath = Files
             .createDirectories(Paths.get(cacheDirectory));
+        collectionCacheDirectory = FSDirectory.open(collectionCachePath);
         // reconstruct administration
         File[] fileList = collectionCachePath.toFile().listFiles();
         if (fileList != null) {
           for (File file : fileList) {
             if (file.isFile()) {
               String version = file.getName();
-              MtasSolrCollectionCacheItem item = read(version, null);
+              MtasSolrCollectionCacheItem item = read(version, null, false);
               if (item != null) {
                 if (idToVersion.containsKey(item.id)) {
                   expirationVersion.remove(idToVersion.get(item.id));
@@ -116,7 +187,9 @@ public class MtasSolrCollectionCache {
                 }
                 // don't keep data or automaton in memory
                 item.data = null;
+                item.sortedData = null;
                 // store in memory
+                item.touched = file.lastModified();
                 idToVersion.put(item.id, version);
                 expirationVersion.put(version,
                     file.lastModified() + (1000 * lifeTime));
@@ -134,6 +207,7 @@ public class MtasSolrCollectionCache {
         }
       } catch (IOException e) {
         collectionCachePath = null;
+        collectionCacheDirectory = null;
         log.error("couldn't create cache directory " + cacheDirectory, e);
       }
     }
@@ -147,7 +221,8 @@ public class MtasSolrCollectionCache {
    * @return the string
    * @throws IOException Signals that an I/O exception has occurred.
    */
-  public String create(Integer size, HashSet<String> data) throws IOException {
+  public String create(Integer size, HashSet<String> data)
+      throws IOException {
     return create(null, size, data, null);
   }
 
@@ -160,53 +235,59 @@ public class MtasSolrCollectionCache {
    * @return the string
    * @throws IOException Signals that an I/O exception has occurred.
    */
-  public String create(String id, Integer size, HashSet<String> data, String originalVersion)
-      throws IOException {
+  public String create(String id, Integer size, HashSet<String> data,
+      String originalVersion) throws IOException {
     if (collectionCachePath != null) {
-      // initialization
-      Date date = clear();
-      // create always new version, unless explicit original version is provided
+      Date date;
       String version;
-      if(originalVersion!=null&&versionToItem.containsKey(originalVersion)) {
-        version = originalVersion;
-      } else {
-        do {
-          version = UUID.randomUUID().toString();
-        } while (versionToItem.containsKey(version));
-      }  
+      synchronized (administrationLock) {
+        // initialization
+        date = clear();
+        // create always new version, unless explicit original version is
+        // provided
+        if (originalVersion != null
+            && versionToItem.containsKey(originalVersion)) {
+          version = originalVersion;
+        } else {
+          do {
+            version = UUID.randomUUID().toString();
+          } while (versionToItem.containsKey(version));
+        }
+        removeFromMemory(version);
+      }
       // create new item
       MtasSolrCollectionCacheItem item;
       if (id != null) {
         item = new MtasSolrCollectionCacheItem(id, size, data);
-        // remove if item with id already exists
-        deleteById(id);
       } else {
         item = new MtasSolrCollectionCacheItem(version, size, data);
       }
-      // register
-      idToVersion.put(id, version);
-      expirationVersion.put(version, date.getTime() + (1000 * lifeTime));
-      versionToItem.put(version, item);
-      // store data in file
+      // store data in file, without holding the administration lock
       File file = collectionCachePath.resolve(version).toFile();
-      try (OutputStream outputStream = new FileOutputStream(file);
-          Writer outputStreamWriter = new OutputStreamWriter(outputStream,
-              StandardCharsets.UTF_8);) {
-        outputStreamWriter.write(encode(item));
+      try {
+        write(version, item);
         // set correct time to reconstruct administration on restart
         if (!file.setLastModified(date.getTime())) {
           log.debug("couldn't change filetime " + file.getAbsolutePath());
         }
-        // don't store data in memory
-        item.data = null;
-        // return version
-        return version;
       } catch (IOException e) {
-        idToVersion.remove(id);
-        expirationVersion.remove(version);
-        versionToItem.remove(version);
         throw new IOException("couldn't create " + version, e);
       }
+      // don't store data in memory
+      item.data = null;
+      item.touched = date.getTime();
+      // register, removing an item with the same id if it already exists
+      synchronized (administrationLock) {
+        String oldVersion = idToVersion.get(item.id);
+        if (oldVersion != null && !oldVersion.equals(version)) {
+          deleteById(item.id);
+        }
+        idToVersion.put(item.id, version);
+        expirationVersion.put(version, date.getTime() + (1000 * lifeTime));
+        versionToItem.put(version, item);
+      }
+      // return version
+      return version;
     } else {
       throw new IOException("no cachePath available, can't store data");
     }
@@ -219,13 +300,16 @@ public class MtasSolrCollectionCache {
    */
   public List<SimpleOrderedMap<Object>> list() {
     List<SimpleOrderedMap<Object>> list = new ArrayList<>();
-    for (Entry<String, String> entry : idToVersion.entrySet()) {
-      SimpleOrderedMap<Object> item = new SimpleOrderedMap<>();
-      item.add("id", entry.getKey());
-      item.add("size", versionToItem.get(entry.getValue()).size);
-      item.add("version", entry.getValue());
-      item.add("expiration", expirationVersion.get(entry.getValue()));
-      list.add(item);
+    synchronized (administrationLock) {
+      for (Entry<String, String> entry : idToVersion.entrySet()) {
+        SimpleOrderedMap<Object> item = new SimpleOrderedMap<>();
+        item.add("id", entry.getKey());
+        item.add("size", versionToItem.get(entry.getValue()).size);
+        item.add("version", entry.getValue());
+        item.add("expiration", expirationVersion.get(entry.getValue()));
+        addStatistics(item, entry.getValue());
+        list.add(item);
+      }
     }
     return list;
   }
@@ -238,27 +322,31 @@ public class MtasSolrCollectionCache {
    * @throws IOException Signals that an I/O exception has occurred.
    */
   public SimpleOrderedMap<Object> check(String id) throws IOException {
-    if (idToVersion.containsKey(id)) {
-      String version = idToVersion.get(id);
-      MtasSolrCollectionCacheItem item = versionToItem.get(version);
-      Date date = new Date();
-      long now = date.getTime();
-      if (verify(version, now)) {
-        SimpleOrderedMap<Object> data = new SimpleOrderedMap<>();
-        data.add("now", now);
-        data.add("id", item.id);
-        data.add("size", item.size);
-        data.add("version", version);
-        data.add("expiration", expirationVersion.get(version));
-        return data;
+    synchronized (administrationLock) {
+      if (idToVersion.containsKey(id)) {
+        String version = idToVersion.get(id);
+        MtasSolrCollectionCacheItem item = versionToItem.get(version);
+        Date date = new Date();
+        long now = date.getTime();
+        if (verify(version, now)) {
+          SimpleOrderedMap<Object> data = new SimpleOrderedMap<>();
+          data.add("now", now);
+          data.add("id", item.id);
+          data.add("size", item.size);
+          data.add("version", version);
+          data.add("expiration", expirationVersion.get(version));
+          addStatistics(data, version);
+          return data;
+        } else {
+          idToVersion.remove(id);
+          versionToItem.remove(version);
+          expirationVersion.remove(version);
+          removeFromMemory(version);
+          return null;
+        }
       } else {
-        idToVersion.remove(id);
-        versionToItem.remove(version);
-        expirationVersion.remove(version);
         return null;
       }
-    } else {
-      return null;
     }
   }
 
@@ -268,7 +356,9 @@ public class MtasSolrCollectionCache {
    * @return the long
    */
   public long now() {
-    return clear().getTime();
+    synchronized (administrationLock) {
+      return clear().getTime();
+    }
   }
 
   /**
@@ -280,10 +370,16 @@ public class MtasSolrCollectionCache {
    */
   public HashSet<String> getDataById(String id) throws IOException {
     if (idToVersion.containsKey(id)) {
-      return get(id);
-    } else {
-      return null;
+      MtasSolrCollectionCacheMemoryItem memoryItem = get(id);
+      if (memoryItem != null) {
+        HashSet<String> result = new HashSet<>(memoryItem.sortedData.size());
+        for (BytesRef item : memoryItem.sortedData) {
+          result.add(item.utf8ToString());
+        }
+        return result;
+      }
     }
+    return null;
   }
 
   /**
@@ -295,16 +391,24 @@ public class MtasSolrCollectionCache {
    */
   public Automaton getAutomatonById(String id) throws IOException {
     if (idToVersion.containsKey(id)) {
-      List<BytesRef> bytesArray = new ArrayList<>();
-      Set<String> data = get(id);
-      if (data != null) {
-        Term term;
-        for (String item : data) {
-          term = new Term("dummy", item);
-          bytesArray.add(term.bytes());
+      MtasSolrCollectionCacheMemoryItem memoryItem = get(id);
+      if (memoryItem != null) {
+        Automaton automaton = memoryItem.automaton;
+        if (automaton == null) {
+          // build once for each version, without blocking other versions
+          synchronized (memoryItem) {
+            if (memoryItem.automaton == null) {
+              // stored sorted, so no sorting needed
+              Automaton newAutomaton = Automata
+                  .makeStringUnion(memoryItem.sortedData);
+              memoryItem.weight += newAutomaton.ramBytesUsed();
+              memoryItem.automaton = newAutomaton;
+            }
+            automaton = memoryItem.automaton;
+          }
+          evictFromMemory();
         }
-        Collections.sort(bytesArray);
-        return Automata.makeStringUnion(bytesArray);
+        return automaton;
       }
     }
     return null;
@@ -316,13 +420,16 @@ public class MtasSolrCollectionCache {
    * @param id the id
    */
   public void deleteById(String id) {
-    if (idToVersion.containsKey(id)) {
+    synchronized (administrationLock) {
       String version = idToVersion.remove(id);
-      expirationVersion.remove(version);
-      versionToItem.remove(version);
-      if (collectionCachePath != null
-          && !collectionCachePath.resolve(version).toFile().delete()) {
-        log.debug("couldn't delete " + version);
+      if (version != null) {
+        expirationVersion.remove(version);
+        versionToItem.remove(version);
+        removeFromMemory(version);
+        if (collectionCachePath != null
+            && !collectionCachePath.resolve(version).toFile().delete()) {
+          log.debug("couldn't delete " + version);
+        }
       }
     }
   }
@@ -331,59 +438,233 @@ public class MtasSolrCollectionCache {
    * Gets the.
    *
    * @param id the id
-   * @return the hash set
+   * @return the decoded data, from memory if available
    * @throws IOException Signals that an I/O exception has occurred.
    */
-  private HashSet<String> get(String id) throws IOException {
+  private MtasSolrCollectionCacheMemoryItem get(String id) throws IOException {
     if (collectionCachePath != null) {
-      Date date = clear();
-      if (idToVersion.containsKey(id)) {
-        String version = idToVersion.get(id);
-        expirationVersion.put(version, date.getTime() + (1000 * lifeTime));
-        MtasSolrCollectionCacheItem newItem = read(version, date.getTime());
+      long now;
+      String version;
+      MtasSolrCollectionCacheItem item;
+      synchronized (administrationLock) {
+        now = clear().getTime();
+        version = idToVersion.get(id);
+        item = version == null ? null : versionToItem.get(version);
+        if (item == null) {
+          log.error("doesn't exist anymore");
+          return null;
+        }
+        expirationVersion.put(version, now + (1000 * lifeTime));
+      }
+      MtasSolrCollectionCacheMemoryItem memoryItem = versionToMemoryItem
+          .get(version);
+      if (memoryItem != null && memoryItem.sortedData != null) {
+        // no file access, unless the file time lags too much
+        if (touch(version, item, now, touchInterval)) {
+          memoryItem.lastAccess = accessClock.incrementAndGet();
+          synchronized (item) {
+            item.hits++;
+          }
+          return memoryItem;
+        } else {
+          removeFromMemory(version);
+        }
+      }
+      // load once for each version, without blocking other versions
+      memoryItem = versionToMemoryItem.computeIfAbsent(version,
+          v -> new MtasSolrCollectionCacheMemoryItem());
+      memoryItem.lastAccess = accessClock.incrementAndGet();
+      synchronized (memoryItem) {
+        if (memoryItem.sortedData != null) {
+          synchronized (item) {
+            item.hits++;
+          }
+          return memoryItem;
+        }
+        long start = System.nanoTime();
+        MtasSolrCollectionCacheItem newItem = read(version, now, true);
+        synchronized (item) {
+          item.misses++;
+          item.loadTime += System.nanoTime() - start;
+          item.touched = Math.max(item.touched, now);
+        }
         if (newItem != null && newItem.id.equals(id)) {
-          return newItem.data;
+          long weight = 0;
+          for (BytesRef data : newItem.sortedData) {
+            weight += BYTES_REF_WEIGHT + data.length;
+          }
+          memoryItem.weight = weight;
+          memoryItem.sortedData = newItem.sortedData;
+          if (weight > maximumMemory) {
+            versionToMemoryItem.remove(version, memoryItem);
+          }
         } else {
+          versionToMemoryItem.remove(version, memoryItem);
           log.error("couldn't get " + version);
           // delete file and remove from index
-          if (!collectionCachePath.resolve(version).toFile().delete()) {
-            log.debug("couldn't delete " + version);
+          synchronized (administrationLock) {
+            if (!collectionCachePath.resolve(version).toFile().delete()) {
+              log.debug("couldn't delete " + version);
+            }
+            idToVersion.remove(id, version);
+            expirationVersion.remove(version);
+            versionToItem.remove(version);
           }
-          idToVersion.remove(id);
-          expirationVersion.remove(version);
-          versionToItem.remove(version);
+          return null;
         }
-      } else {
-        log.error("doesn't exist anymore");
       }
-      return null;
-    } else
-
-    {
+      evictFromMemory();
+      return memoryItem;
+    } else {
       throw new IOException("no cachePath available, can't get data");
     }
   }
 
   /**
-   * Read.
+   * Removes decoded data from memory.
+   *
+   * @param version the version
+   */
+  private void removeFromMemory(String version) {
+    versionToMemoryItem.remove(version);
+  }
+
+  /**
+   * Evict least recently used decoded data until the maximum memory is
+   * respected. Items that are still being loaded are not evicted.
+   */
+  private void evictFromMemory() {
+    synchronized (evictionLock) {
+      long memoryWeight = 0;
+      List<Entry<String, MtasSolrCollectionCacheMemoryItem>> entries = new ArrayList<>();
+      for (Entry<String, MtasSolrCollectionCacheMemoryItem> entry : versionToMemoryItem
+          .entrySet()) {
+        if (entry.getValue().sortedData != null) {
+          memoryWeight += entry.getValue().weight;
+          entries.add(entry);
+        }
+      }
+      if (memoryWeight > maximumMemory) {
+        Collections.sort(entries,
+            (Entry<String, MtasSolrCollectionCacheMemoryItem> e1,
+                Entry<String, MtasSolrCollectionCacheMemoryItem> e2) -> Long
+                    .compare(e1.getValue().lastAccess,
+                        e2.getValue().lastAccess));
+        Iterator<Entry<String, MtasSolrCollectionCacheMemoryItem>> iterator = entries
+            .iterator();
+        while (memoryWeight > maximumMemory && iterator.hasNext()) {
+          Entry<String, MtasSolrCollectionCacheMemoryItem> entry = iterator
+              .next();
+          if (versionToMemoryItem.remove(entry.getKey(), entry.getValue())) {
+            memoryWeight -= entry.getValue().weight;
+            touchOnEviction(entry.getKey());
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Update the file time of a version to its expiration, to reconstruct the
+   * administration on restart, if the file time lags more than the interval.
+   *
+   * @param version the version
+   * @param item the item
+   * @param time the time
+   * @param interval the interval
+   * @return false, if the file is not available anymore
+   */
+  private boolean touch(String version, MtasSolrCollectionCacheItem item,
+      long time, long interval) {
+    synchronized (item) {
+      if (time <= item.touched || time - item.touched < interval) {
+        return true;
+      }
+      item.touched = time;
+    }
+    return verify(version, time);
+  }
+
+  /**
+   * Update the file time of a version evicted from memory, so accesses from
+   * memory are not lost on restart.
+   *
+   * @param version the version
+   */
+  private void touchOnEviction(String version) {
+    MtasSolrCollectionCacheItem item = versionToItem.get(version);
+    Long expiration = expirationVersion.get(version);
+    if (item != null && expiration != null
+        && !touch(version, item, expiration - (1000 * lifeTime), 0)) {
+      log.debug("couldn't touch " + version);
+    }
+  }
+
+  /**
+   * Adds the statistics.
+   *
+   * @param data the data
+   * @param version the version
+   */
+  private void addStatistics(SimpleOrderedMap<Object> data, String version) {
+    MtasSolrCollectionCacheItem item = versionToItem.get(version);
+    MtasSolrCollectionCacheMemoryItem memoryItem = versionToMemoryItem
+        .get(version);
+    synchronized (item) {
+      data.add("hits", item.hits);
+      data.add("misses", item.misses);
+      data.add("loadTime", item.loadTime / 1000000);
+    }
+    data.add("memory", memoryItem == null || memoryItem.sortedData == null ? 0
+        : memoryItem.weight);
+  }
+
+  /**
+   * Read. Files in the legacy serialized format are migrated to the current
+   * binary format.
    *
    * @param version the version
    * @param time the time
+   * @param includeData include the data
    * @return the mtas solr collection cache item
    */
-  private MtasSolrCollectionCacheItem read(String version, Long time) {
+  private MtasSolrCollectionCacheItem read(String version, Long time,
+      boolean includeData) {
     try {
       Path path = collectionCachePath.resolve(version);
-      String data = new String(Files.readAllBytes(path),
-          StandardCharsets.UTF_8);
-      MtasSolrCollectionCacheItem decodedData = decode(data);
-
-      // set correct time to reconstruct administration on restart
-      if (time != null) {
-        File file = path.toFile();
-        if (!file.setLastModified(time)) {
+      File file = path.toFile();
+      MtasSolrCollectionCacheItem decodedData;
+      if (isLegacy(version)) {
+        decodedData = decode(
+            new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+        long lastModified = file.lastModified();
+        Files.delete(path);
+        write(version, decodedData);
+        if (!file.setLastModified(lastModified)) {
           log.debug("couldn't change filetime " + file.getAbsolutePath());
         }
+        log.info("migrated " + version + " to binary format");
+        if (includeData) {
+          decodedData.sortedData = sort(decodedData.data);
+        }
+        decodedData.data = null;
+      } else if (includeData) {
+        try (ChecksumIndexInput in = collectionCacheDirectory
+            .openChecksumInput(version, IOContext.READONCE)) {
+          decodedData = readHeader(in);
+          decodedData.sortedData = readData(in);
+          CodecUtil.checkFooter(in);
+        }
+      } else {
+        try (IndexInput in = collectionCacheDirectory.openInput(version,
+            IOContext.READONCE)) {
+          decodedData = readHeader(in);
+          CodecUtil.retrieveChecksum(in);
+        }
+      }
+      // set correct time to reconstruct administration on restart
+      if (time != null && !file.setLastModified(time)) {
+        log.debug("couldn't change filetime " + file.getAbsolutePath());
       }
       return decodedData;
     } catch (IOException e) {
@@ -392,6 +673,112 @@ public class MtasSolrCollectionCache {
     return null;
   }
 
+  /**
+   * Checks if the file is stored in the legacy serialized format.
+   *
+   * @param version the version
+   * @return true, if is legacy
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private boolean isLegacy(String version) throws IOException {
+    try (IndexInput in = collectionCacheDirectory.openInput(version,
+        IOContext.READONCE)) {
+      return in.length() < 4 || in.readInt() != CodecUtil.CODEC_MAGIC;
+    }
+  }
+
+  /**
+   * Read header.
+   *
+   * @param in the in
+   * @return the mtas solr collection cache item without data
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static MtasSolrCollectionCacheItem readHeader(IndexInput in)
+      throws IOException {
+    CodecUtil.checkHeader(in, CODEC_NAME, VERSION_START, VERSION_CURRENT);
+    String id = in.readString();
+    int size = in.readZInt();
+    return new MtasSolrCollectionCacheItem(id, size < 0 ? null : size, null);
+  }
+
+  /**
+   * Read the front coded sorted data.
+   *
+   * @param in the in
+   * @return the sorted data
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static List<BytesRef> readData(IndexInput in) throws IOException {
+    int number = in.readVInt();
+    List<BytesRef> data = new ArrayList<>(number);
+    byte[] previous = new byte[0];
+    for (int i = 0; i < number; i++) {
+      int prefixLength = in.readVInt();
+      int suffixLength = in.readVInt();
+      byte[] bytes = new byte[prefixLength + suffixLength];
+      System.arraycopy(previous, 0, bytes, 0, prefixLength);
+      in.readBytes(bytes, prefixLength, suffixLength);
+      data.add(new BytesRef(bytes));
+      previous = bytes;
+    }
+    return data;
+  }
+
+  /**
+   * Write the item in binary format: a header, the id and size, the sorted
+   * data with front coding, and a checksum footer.
+   *
+   * @param version the version
+   * @param item the item
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void write(String version, MtasSolrCollectionCacheItem item)
+      throws IOException {
+    Files.deleteIfExists(collectionCachePath.resolve(version));
+    List<BytesRef> data = sort(item.data);
+    try (IndexOutput out = collectionCacheDirectory.createOutput(version,
+        IOContext.DEFAULT)) {
+      CodecUtil.writeHeader(out, CODEC_NAME, VERSION_CURRENT);
+      out.writeString(item.id);
+      out.writeZInt(item.size == null ? -1 : item.size);
+      out.writeVInt(data.size());
+      BytesRef previous = new BytesRef();
+      for (BytesRef term : data) {
+        int prefixLength = 0;
+        int maximumPrefixLength = Math.min(previous.length, term.length);
+        while (prefixLength < maximumPrefixLength
+            && previous.bytes[previous.offset + prefixLength] == term.bytes[term
+                .offset + prefixLength]) {
+          prefixLength++;
+        }
+        out.writeVInt(prefixLength);
+        out.writeVInt(term.length - prefixLength);
+        out.writeBytes(term.bytes, term.offset + prefixLength,
+            term.length - prefixLength);
+        previous = term;
+      }
+      CodecUtil.writeFooter(out);
+    }
+  }
+
+  /**
+   * Sort.
+   *
+   * @param data the data
+   * @return the sorted data
+   */
+  private static List<BytesRef> sort(Set<String> data) {
+    List<BytesRef> list = new ArrayList<>();
+    if (data != null) {
+      for (String item : data) {
+        list.add(new BytesRef(item));
+      }
+      Collections.sort(list);
+    }
+    return list;
+  }
+
   /**
    * Verify.
    *
@@ -421,7 +808,7 @@ public class MtasSolrCollectionCache {
   }
 
   /**
-   * Clear.
+   * Clear, called with the administration lock.
    *
    * @return the date
    */
@@ -470,28 +857,7 @@ public class MtasSolrCollectionCache {
   }
 
   /**
-   * Encode.
-   *
-   * @param o the o
-   * @return the string
-   * @throws IOException Signals that an I/O exception has occurred.
-   */
-  private String encode(MtasSolrCollectionCacheItem o) throws IOException {
-    if (o != null) {
-      ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-      ObjectOutputStream objectOutputStream;
-      objectOutputStream = new ObjectOutputStream(byteArrayOutputStream);
-      objectOutputStream.writeObject(o);
-      objectOutputStream.close();
-      byte[] byteArray = byteArrayOutputStream.toByteArray();
-      return Base64.byteArrayToBase64(byteArray);
-    } else {
-      throw new IOException("nothing to encode");
-    }
-  }
-
-  /**
-   * Decode.
+   * Decode the legacy serialized format.
    *
    * @param s the s
    * @return the mtas solr collection cache item
@@ -517,15 +883,18 @@ public class MtasSolrCollectionCache {
    * Empty.
    */
   public void empty() {
-    for (Entry<String, String> entry : idToVersion.entrySet()) {
-      expirationVersion.remove(entry.getValue());
-      versionToItem.remove(entry.getValue());
-      if (collectionCachePath != null
-          && !collectionCachePath.resolve(entry.getValue()).toFile().delete()) {
-        log.debug("couldn't delete " + entry.getValue());
+    synchronized (administrationLock) {
+      versionToMemoryItem.clear();
+      for (Entry<String, String> entry : idToVersion.entrySet()) {
+        expirationVersion.remove(entry.getValue());
+        versionToItem.remove(entry.getValue());
+        if (collectionCachePath != null && !collectionCachePath
+            .resolve(entry.getValue()).toFile().delete()) {
+          log.debug("couldn't delete " + entry.getValue());
+        }
       }
+      idToVersion.clear();
     }
-    idToVersion.clear();
   }
 
 }
@@ -539,6 +908,11 @@ class MtasSolrCollectionCacheItem implements Serializable {
   public String id;
   public Integer size;
   public HashSet<String> data = null;
+  public transient List<BytesRef> sortedData = null;
+  public transient long hits = 0;
+  public transient long misses = 0;
+  public transient long loadTime = 0;
+  public transient long touched = 0;
 
   public MtasSolrCollectionCacheItem(String id, Integer size,
       HashSet<String> data) throws IOException {
@@ -570,3 +944,15 @@ class MtasSolrCollectionCacheItem implements Serializable {
     return (id.equals(that.id));
   }
 }
+
+class MtasSolrCollectionCacheMemoryItem {
+
+  public volatile List<BytesRef> sortedData = null;
+  public volatile Automaton automaton = null;
+  public volatile long weight = 0;
+  public volatile long lastAccess = 0;
+
+  public MtasSolrCollectionCacheMemoryItem() {
+    // sorted data is set when loaded
+  }
+}
@@ -5,11 +5,15 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
@@ -20,18 +24,29 @@ import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.apache.lucene.analysis.util.CharFilterFactory;
 import org.apache.lucene.analysis.util.ResourceLoader;
 import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.SolrInputField;
+import org.apache.solr.common.util.ExecutorUtil;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrCore;
 import org.apache.solr.core.SolrResourceLoader;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
 import org.apache.solr.schema.FieldType;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.CommitUpdateCommand;
+import org.apache.solr.update.DeleteUpdateCommand;
+import org.apache.solr.update.MergeIndexesCommand;
+import org.apache.solr.update.RollbackUpdateCommand;
 import org.apache.solr.update.processor.UpdateRequestProcessor;
 import org.apache.solr.update.processor.UpdateRequestProcessorFactory;
+import org.apache.solr.util.DefaultSolrThreadFactory;
+import org.apache.solr.util.plugin.SolrCoreAware;
 
 import mtas.analysis.MtasTokenizer;
 import mtas.analysis.util.MtasCharFilterFactory;
@@ -40,18 +55,38 @@ import mtas.codec.util.CodecUtil;
 import mtas.solr.schema.MtasPreAnalyzedField;
 
 /**
- * A factory for creating MtasUpdateRequestProcessor objects.
+ * A factory for creating MtasUpdateRequestProcessor objects. If
+ * {@link #CONFIG_ANALYSIS_THREADS} is set to more than one thread, the
+ * documents of an update request are pre-analyzed concurrently and passed on
+ * in their original order, with at most {@link #CONFIG_ANALYSIS_QUEUE_SIZE}
+ * documents waiting per request. Analysis failures are registered in the
+ * error field of the failing document, whether analysed concurrently or not.
+ * A downstream failure of a pending document can surface while a later
+ * command is processed, so its message starts with the id of the failing
+ * document.
  */
 public class MtasUpdateRequestProcessorFactory
-    extends UpdateRequestProcessorFactory {
+    extends UpdateRequestProcessorFactory implements SolrCoreAware {
 
   /** The Constant log. */
   private static final Log log = LogFactory
       .getLog(MtasUpdateRequestProcessorFactory.class);
 
+  /** The Constant CONFIG_ANALYSIS_THREADS. */
+  public static final String CONFIG_ANALYSIS_THREADS = "analysisThreads";
+
+  /** The Constant CONFIG_ANALYSIS_QUEUE_SIZE. */
+  public static final String CONFIG_ANALYSIS_QUEUE_SIZE = "analysisQueueSize";
+
   /** The config. */
   private MtasUpdateRequestProcessorConfig config = null;
 
+  /** The executor for pre-analysis of documents in parallel. */
+  private ExecutorService analysisExecutor = null;
+
+  /** The maximum number of documents waiting per request. */
+  private int analysisQueueSize = 0;
+
   /*
    * (non-Javadoc)
    * 
@@ -63,6 +98,54 @@ public class MtasUpdateRequestProcessorFactory
   @SuppressWarnings("rawtypes")
   public void init(NamedList args) {
     super.init(args);
+    Object threadsArg = args == null ? null
+        : args.get(CONFIG_ANALYSIS_THREADS);
+    if (threadsArg instanceof Integer) {
+      int analysisThreads = (Integer) threadsArg;
+      if (analysisThreads > 1) {
+        analysisExecutor = ExecutorUtil.newMDCAwareFixedThreadPool(
+            analysisThreads, new DefaultSolrThreadFactory("mtasAnalysis"));
+        analysisQueueSize = 4 * analysisThreads;
+        Object queueSizeArg = args.get(CONFIG_ANALYSIS_QUEUE_SIZE);
+        if (queueSizeArg instanceof Integer) {
+          analysisQueueSize = Math.max(1, (Integer) queueSizeArg);
+        } else if (queueSizeArg != null) {
+          log.warn(CONFIG_ANALYSIS_QUEUE_SIZE + " " + queueSizeArg
+              + " is no integer, using " + analysisQueueSize);
+        }
+        log.info("analysing documents with " + analysisThreads
+            + " threads, at most " + analysisQueueSize + " waiting");
+      } else {
+        log.info(CONFIG_ANALYSIS_THREADS + " " + analysisThreads
+            + ", analysing documents on the update thread");
+      }
+    } else if (threadsArg != null) {
+      log.warn(CONFIG_ANALYSIS_THREADS + " " + threadsArg
+          + " is no integer, analysing documents on the update thread");
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.solr.util.plugin.SolrCoreAware#inform(org.apache.solr.core.
+   * SolrCore)
+   */
+  @Override
+  public void inform(SolrCore core) {
+    core.addCloseHook(new CloseHook() {
+      @Override
+      public void preClose(SolrCore core) {
+        // do nothing
+      }
+
+      @Override
+      public void postClose(SolrCore core) {
+        if (analysisExecutor != null) {
+          ExecutorUtil.shutdownAndAwaitTermination(analysisExecutor);
+        }
+      }
+    });
   }
 
   /**
@@ -266,7 +349,8 @@ public class MtasUpdateRequestProcessorFactory
     } catch (IOException e) {
       log.error(e);
     }
-    return new MtasUpdateRequestProcessor(next, config);
+    return new MtasUpdateRequestProcessor(next, config, analysisExecutor,
+        analysisQueueSize);
   }
 
 }
@@ -278,17 +362,147 @@ class MtasUpdateRequestProcessor extends UpdateRequestProcessor {
 
   private MtasUpdateRequestProcessorConfig config;
 
+  /** The executor, null if documents are analyzed on the update thread. */
+  private ExecutorService executor;
+
+  /** The maximum number of waiting documents. */
+  private int queueSize;
+
+  /** The documents waiting for analysis, in original order. */
+  private ArrayDeque<MtasUpdateRequestProcessorPendingAdd> pending;
+
   public MtasUpdateRequestProcessor(UpdateRequestProcessor next,
       MtasUpdateRequestProcessorConfig config) {
+    this(next, config, null, 0);
+  }
+
+  public MtasUpdateRequestProcessor(UpdateRequestProcessor next,
+      MtasUpdateRequestProcessorConfig config, ExecutorService executor,
+      int queueSize) {
     super(next);
     this.config = config;
+    this.executor = executor;
+    this.queueSize = queueSize;
+    pending = new ArrayDeque<>();
   }
 
   @Override
   public void processAdd(AddUpdateCommand cmd) throws IOException {
     if (config != null && config.fieldMapping.size() > 0) {
-      // get document
-      SolrInputDocument doc = cmd.getSolrInputDocument();
+      if (executor != null) {
+        // the command may be reused by the caller, so keep a copy
+        final AddUpdateCommand pendingCmd = copy(cmd);
+        Future<?> analysis = executor.submit(() -> {
+          analyze(pendingCmd.getSolrInputDocument());
+          return null;
+        });
+        pending.add(new MtasUpdateRequestProcessorPendingAdd(pendingCmd,
+            analysis));
+        // pass on finished documents, wait if too many are pending
+        while (!pending.isEmpty() && (pending.peek().analysis.isDone()
+            || pending.size() > queueSize || cmd.isLastDocInBatch)) {
+          processPending();
+        }
+        return;
+      } else {
+        analyze(cmd.getSolrInputDocument());
+      }
+    }
+    // pass it up the chain
+    super.processAdd(cmd);
+  }
+
+  @Override
+  public void processDelete(DeleteUpdateCommand cmd) throws IOException {
+    flushPending();
+    super.processDelete(cmd);
+  }
+
+  @Override
+  public void processMergeIndexes(MergeIndexesCommand cmd) throws IOException {
+    flushPending();
+    super.processMergeIndexes(cmd);
+  }
+
+  @Override
+  public void processCommit(CommitUpdateCommand cmd) throws IOException {
+    flushPending();
+    super.processCommit(cmd);
+  }
+
+  @Override
+  public void processRollback(RollbackUpdateCommand cmd) throws IOException {
+    flushPending();
+    super.processRollback(cmd);
+  }
+
+  @Override
+  public void finish() throws IOException {
+    flushPending();
+    super.finish();
+  }
+
+  private void flushPending() throws IOException {
+    while (!pending.isEmpty()) {
+      processPending();
+    }
+  }
+
+  private void processPending() throws IOException {
+    MtasUpdateRequestProcessorPendingAdd pendingAdd = pending.remove();
+    try {
+      pendingAdd.analysis.get();
+      super.processAdd(pendingAdd.cmd);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      // analysis failures are registered in the document, so only errors
+      rethrowPending(pendingAdd.cmd, e.getCause());
+    } catch (IOException | RuntimeException e) {
+      rethrowPending(pendingAdd.cmd, e);
+    }
+  }
+
+  /**
+   * Rethrow the failure of a pending document, possibly thrown while another
+   * command is processed, with the id of the failing document in the message.
+   * Solr exceptions keep their error code.
+   *
+   * @param cmd the command of the failing document
+   * @param e the failure
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void rethrowPending(AddUpdateCommand cmd, Throwable e)
+      throws IOException {
+    String message = "document " + cmd.getPrintableId() + ": "
+        + e.getMessage();
+    if (e instanceof SolrException) {
+      throw new SolrException(
+          ErrorCode.getErrorCode(((SolrException) e).code()), message, e);
+    } else if (e instanceof Error) {
+      throw (Error) e;
+    } else {
+      throw new IOException(message, e);
+    }
+  }
+
+  private static AddUpdateCommand copy(AddUpdateCommand cmd) {
+    AddUpdateCommand copy = new AddUpdateCommand(cmd.getReq());
+    copy.solrDoc = cmd.solrDoc;
+    copy.updateTerm = cmd.updateTerm;
+    copy.overwrite = cmd.overwrite;
+    copy.commitWithin = cmd.commitWithin;
+    copy.isLastDocInBatch = cmd.isLastDocInBatch;
+    copy.prevVersion = cmd.prevVersion;
+    copy.setVersion(cmd.getVersion());
+    copy.setFlags(cmd.getFlags());
+    copy.setRoute(cmd.getRoute());
+    return copy;
+  }
+
+  private void analyze(SolrInputDocument doc) {
+    if (doc != null) {
       // loop over configurations
       for (String field : config.fieldMapping.keySet()) {
         SolrInputField originalValue = doc.get(field);
@@ -423,11 +637,17 @@ class MtasUpdateRequestProcessor extends UpdateRequestProcessor {
 	            			prefixesEntry.getValue());
 	            }
             }    
-          } catch (IOException e) {
-            log.info(e);
+          } catch (IOException | RuntimeException e) {
+            // register failures in the document itself, also when analysed
+            // on another thread, so they are reported for the right document
+            if (e instanceof IOException) {
+              log.info(e);
+            } else {
+              log.error(e);
+            }
             // update error
             doc.addField(config.fieldTypeErrorField.get(fieldType),
-                e.getMessage());
+                e.getMessage() != null ? e.getMessage() : e.toString());
             // update size
             setFields(doc, config.fieldTypeSizeField.get(fieldType), 0);
             // update numberOfPositions
@@ -445,10 +665,7 @@ class MtasUpdateRequestProcessor extends UpdateRequestProcessor {
           }
         }
       }
-
     }
-    // pass it up the chain
-    super.processAdd(cmd);
   }
 
   private void removeFields(SolrInputDocument doc, String fieldNames) {
@@ -529,3 +746,16 @@ class MtasUpdateRequestProcessorSizeReader extends Reader {
   }
 
 }
+
+class MtasUpdateRequestProcessorPendingAdd {
+
+  final AddUpdateCommand cmd;
+  final Future<?> analysis;
+
+  MtasUpdateRequestProcessorPendingAdd(AddUpdateCommand cmd,
+      Future<?> analysis) {
+    this.cmd = cmd;
+    this.analysis = analysis;
+  }
+
+}
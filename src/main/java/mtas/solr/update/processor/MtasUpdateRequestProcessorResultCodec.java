@@ -0,0 +1,261 @@
+package mtas.solr.update.processor;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * The Class MtasUpdateRequestProcessorResultCodec. Binary format of the
+ * pre-analysis results passed from the
+ * {@link MtasUpdateRequestProcessorFactory} to the
+ * {@link mtas.solr.schema.MtasPreAnalyzedParser}. After a version byte
+ * and the stored value, every token starts with a byte indicating the
+ * available attributes, followed by these attributes: the term as length
+ * prefixed UTF-8, the start offset as delta from the previous start offset
+ * and the end offset as delta from the start offset, the position increment
+ * (only if not 1) and the flags as variable length integers and the payload
+ * as length prefixed raw bytes. The list of tokens is closed by an end marker.
+ */
+final class MtasUpdateRequestProcessorResultCodec {
+
+  /** The Constant VERSION. */
+  static final int VERSION = 1;
+
+  /** The Constant ITEM_TERM. */
+  private static final int ITEM_TERM = 1;
+
+  /** The Constant ITEM_OFFSET. */
+  private static final int ITEM_OFFSET = 2;
+
+  /** The Constant ITEM_POSINCR. */
+  private static final int ITEM_POSINCR = 4;
+
+  /** The Constant ITEM_PAYLOAD. */
+  private static final int ITEM_PAYLOAD = 8;
+
+  /** The Constant ITEM_FLAGS. */
+  private static final int ITEM_FLAGS = 16;
+
+  /** The Constant ITEM_END. */
+  private static final int ITEM_END = 255;
+
+  /** The previous offset start. */
+  private int previousOffsetStart;
+
+  /**
+   * Instantiates a new mtas update request processor result codec.
+   */
+  MtasUpdateRequestProcessorResultCodec() {
+    previousOffsetStart = 0;
+  }
+
+  /**
+   * Write header.
+   *
+   * @param out the out
+   * @param value the stored value
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  void writeHeader(DataOutput out, String value) throws IOException {
+    out.writeByte(VERSION);
+    writeString(out, value);
+  }
+
+  /**
+   * Read header.
+   *
+   * @param in the in
+   * @return the stored value
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  String readHeader(DataInput in) throws IOException {
+    int version = in.readUnsignedByte();
+    if (version != VERSION) {
+      throw new IOException("invalid tokenStream, version " + version);
+    }
+    return readString(in);
+  }
+
+  /**
+   * Write item.
+   *
+   * @param out the out
+   * @param term the term
+   * @param offsetStart the offset start
+   * @param offsetEnd the offset end
+   * @param posIncr the pos incr
+   * @param payload the payload
+   * @param flags the flags
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  void writeItem(DataOutput out, String term, Integer offsetStart,
+      Integer offsetEnd, Integer posIncr, BytesRef payload, Integer flags)
+      throws IOException {
+    boolean hasOffset = offsetStart != null && offsetEnd != null;
+    boolean hasPosIncr = posIncr != null && posIncr != 1;
+    int type = (term != null ? ITEM_TERM : 0) | (hasOffset ? ITEM_OFFSET : 0)
+        | (hasPosIncr ? ITEM_POSINCR : 0)
+        | (payload != null ? ITEM_PAYLOAD : 0)
+        | (flags != null ? ITEM_FLAGS : 0);
+    out.writeByte(type);
+    if (term != null) {
+      writeString(out, term);
+    }
+    if (hasOffset) {
+      writeZInt(out, offsetStart - previousOffsetStart);
+      writeZInt(out, offsetEnd - offsetStart);
+      previousOffsetStart = offsetStart;
+    }
+    if (hasPosIncr) {
+      writeZInt(out, posIncr);
+    }
+    if (payload != null) {
+      writeVInt(out, payload.length);
+      out.write(payload.bytes, payload.offset, payload.length);
+    }
+    if (flags != null) {
+      writeZInt(out, flags);
+    }
+  }
+
+  /**
+   * Write end.
+   *
+   * @param out the out
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  void writeEnd(DataOutput out) throws IOException {
+    out.writeByte(ITEM_END);
+  }
+
+  /**
+   * Read item.
+   *
+   * @param in the in
+   * @return the item, or null after the end marker
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  MtasUpdateRequestProcessorResultItem readItem(DataInput in)
+      throws IOException {
+    int type = in.readUnsignedByte();
+    if (type == ITEM_END) {
+      return null;
+    }
+    String term = null;
+    Integer offsetStart = null;
+    Integer offsetEnd = null;
+    Integer posIncr = null;
+    BytesRef payload = null;
+    Integer flags = null;
+    if ((type & ITEM_TERM) != 0) {
+      term = readString(in);
+    }
+    if ((type & ITEM_OFFSET) != 0) {
+      offsetStart = previousOffsetStart + readZInt(in);
+      offsetEnd = offsetStart + readZInt(in);
+      previousOffsetStart = offsetStart;
+    }
+    if ((type & ITEM_POSINCR) != 0) {
+      posIncr = readZInt(in);
+    }
+    if ((type & ITEM_PAYLOAD) != 0) {
+      byte[] bytes = new byte[readVInt(in)];
+      in.readFully(bytes);
+      payload = new BytesRef(bytes);
+    }
+    if ((type & ITEM_FLAGS) != 0) {
+      flags = readZInt(in);
+    }
+    return new MtasUpdateRequestProcessorResultItem(term, offsetStart,
+        offsetEnd, posIncr, payload, flags);
+  }
+
+  /**
+   * Write string.
+   *
+   * @param out the out
+   * @param value the value
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void writeString(DataOutput out, String value)
+      throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeVInt(out, bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Read string.
+   *
+   * @param in the in
+   * @return the string
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static String readString(DataInput in) throws IOException {
+    byte[] bytes = new byte[readVInt(in)];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Write zigzag encoded variable length integer.
+   *
+   * @param out the out
+   * @param value the value
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void writeZInt(DataOutput out, int value) throws IOException {
+    writeVInt(out, (value << 1) ^ (value >> 31));
+  }
+
+  /**
+   * Read zigzag encoded variable length integer.
+   *
+   * @param in the in
+   * @return the int
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static int readZInt(DataInput in) throws IOException {
+    int value = readVInt(in);
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Write variable length integer.
+   *
+   * @param out the out
+   * @param value the value
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void writeVInt(DataOutput out, int value) throws IOException {
+    int v = value;
+    while ((v & ~0x7F) != 0) {
+      out.writeByte((v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+    out.writeByte(v);
+  }
+
+  /**
+   * Read variable length integer.
+   *
+   * @param in the in
+   * @return the int
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static int readVInt(DataInput in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = in.readByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("invalid variable length integer");
+  }
+
+}
@@ -1,10 +1,13 @@
 package mtas.solr.update.processor;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
+import java.util.Base64;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -12,7 +15,9 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 /**
- * The Class MtasUpdateRequestProcessorResultReader.
+ * The Class MtasUpdateRequestProcessorResultReader. Reads the pre-analysis
+ * result written by the {@link MtasUpdateRequestProcessorResultWriter}, either
+ * from a temporary file or inline from the provided name.
  */
 public class MtasUpdateRequestProcessorResultReader implements Closeable {
 
@@ -23,11 +28,14 @@ public class MtasUpdateRequestProcessorResultReader implements Closeable {
   /** The stored string value. */
   private String storedStringValue;
 
-  /** The file input stream. */
-  private FileInputStream fileInputStream;
+  /** The Constant BUFFER_SIZE. */
+  private static final int BUFFER_SIZE = 65536;
 
-  /** The object input stream. */
-  private ObjectInputStream objectInputStream;
+  /** The codec. */
+  private MtasUpdateRequestProcessorResultCodec codec;
+
+  /** The data input stream. */
+  private DataInputStream dataInputStream;
 
   /** The file. */
   private File file;
@@ -47,21 +55,30 @@ public class MtasUpdateRequestProcessorResultReader implements Closeable {
   public MtasUpdateRequestProcessorResultReader(String fileName)
       throws IOException {
     file = null;
-    fileInputStream = null;
-    objectInputStream = null;
+    dataInputStream = null;
     closed = false;
     iterator = null;
+    codec = new MtasUpdateRequestProcessorResultCodec();
     if (fileName != null) {
-      file = new File(fileName);
-      fileInputStream = new FileInputStream(file);
-      objectInputStream = new ObjectInputStream(fileInputStream);
-      try {
-        Object o = objectInputStream.readObject();
-        if (o instanceof String) {
-          storedStringValue = (String) o;
-        } else {
-          throw new IOException("invalid tokenStream");
+      final String source;
+      if (fileName
+          .startsWith(MtasUpdateRequestProcessorResultWriter.INLINE_PREFIX)) {
+        source = "inline result";
+        try {
+          byte[] data = Base64.getDecoder().decode(fileName.substring(
+              MtasUpdateRequestProcessorResultWriter.INLINE_PREFIX.length()));
+          dataInputStream = new DataInputStream(new ByteArrayInputStream(data));
+        } catch (IllegalArgumentException e) {
+          throw new IOException("invalid tokenStream", e);
         }
+      } else {
+        source = fileName;
+        file = new File(fileName);
+        dataInputStream = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(file), BUFFER_SIZE));
+      }
+      try {
+        storedStringValue = codec.readHeader(dataInputStream);
         iterator = new Iterator<MtasUpdateRequestProcessorResultItem>() {
           MtasUpdateRequestProcessorResultItem next = null;
 
@@ -105,16 +122,15 @@ public class MtasUpdateRequestProcessorResultReader implements Closeable {
           private MtasUpdateRequestProcessorResultItem getNext() {
             if (!closed) {
               try {
-                Object o = objectInputStream.readObject();
-                if (o instanceof MtasUpdateRequestProcessorResultItem) {
-                  return (MtasUpdateRequestProcessorResultItem) o;
-                } else {
+                MtasUpdateRequestProcessorResultItem item = codec
+                    .readItem(dataInputStream);
+                if (item == null) {
                   forceClose();
-                  return null;
                 }
-              } catch (ClassNotFoundException | IOException e) {
+                return item;
+              } catch (IOException e) {
                 log.debug(e.getClass().getSimpleName()
-                    + " while retrieving data from " + fileName, e);
+                    + " while retrieving data from " + source, e);
                 forceClose();
                 return null;
               }
@@ -124,15 +140,10 @@ public class MtasUpdateRequestProcessorResultReader implements Closeable {
           }
         };
       } catch (IOException e) {
-        log.error(e.getClass().getSimpleName() + " while processing " + fileName
+        log.error(e.getClass().getSimpleName() + " while processing " + source
             + " (" + e.getMessage() + ")", e);
         forceClose();
         throw new IOException(e.getMessage());
-      } catch (ClassNotFoundException e) {
-        log.error(e.getClass().getSimpleName() + " while processing " + fileName
-            + " (" + e.getMessage() + ")", e);
-        forceClose();
-        throw new IOException("invalid tokenStream");
       }
     }
 
@@ -186,7 +197,9 @@ public class MtasUpdateRequestProcessorResultReader implements Closeable {
       file = null;
     }
     try {
-      objectInputStream.close();
+      if (dataInputStream != null) {
+        dataInputStream.close();
+      }
     } catch (IOException e) {
       log.debug(e);
     }
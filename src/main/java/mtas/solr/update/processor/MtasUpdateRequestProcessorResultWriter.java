@@ -1,17 +1,24 @@
 package mtas.solr.update.processor;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Base64;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.lucene.util.BytesRef;
 
 /**
- * The Class MtasUpdateRequestProcessorResultWriter.
+ * The Class MtasUpdateRequestProcessorResultWriter. Writes the pre-analysis
+ * result in the format of {@link MtasUpdateRequestProcessorResultCodec}. The
+ * result is kept in memory and passed inline as name if it stays below the
+ * memory threshold, and is spooled to a buffered temporary file otherwise.
  */
 public class MtasUpdateRequestProcessorResultWriter implements Closeable {
 
@@ -19,11 +26,29 @@ public class MtasUpdateRequestProcessorResultWriter implements Closeable {
   private static final Log log = LogFactory
       .getLog(MtasUpdateRequestProcessorResultWriter.class);
 
-  /** The object output stream. */
-  private ObjectOutputStream objectOutputStream;
+  /** The Constant INLINE_PREFIX. */
+  public static final String INLINE_PREFIX = "mtas-inline:";
+
+  /** The Constant DEFAULT_MEMORY_THRESHOLD. */
+  public static final int DEFAULT_MEMORY_THRESHOLD = 65536;
+
+  /** The Constant BUFFER_SIZE. */
+  private static final int BUFFER_SIZE = 65536;
+
+  /** The codec. */
+  private MtasUpdateRequestProcessorResultCodec codec;
+
+  /** The data output stream. */
+  private DataOutputStream dataOutputStream;
+
+  /** The memory output stream, null after spooling to file. */
+  private ByteArrayOutputStream memoryOutputStream;
 
   /** The file output stream. */
-  private FileOutputStream fileOutputStream;
+  private OutputStream fileOutputStream;
+
+  /** The memory threshold. */
+  private int memoryThreshold;
 
   /** The closed. */
   private boolean closed;
@@ -40,16 +65,28 @@ public class MtasUpdateRequestProcessorResultWriter implements Closeable {
    * @param value the value
    */
   public MtasUpdateRequestProcessorResultWriter(String value) {
+    this(value, DEFAULT_MEMORY_THRESHOLD);
+  }
+
+  /**
+   * Instantiates a new mtas update request processor result writer.
+   *
+   * @param value the value
+   * @param memoryThreshold the maximum size of a result kept in memory
+   */
+  public MtasUpdateRequestProcessorResultWriter(String value,
+      int memoryThreshold) {
     closed = false;
     tokenNumber = 0;
     file = null;
     fileOutputStream = null;
-    objectOutputStream = null;
+    this.memoryThreshold = memoryThreshold;
+    codec = new MtasUpdateRequestProcessorResultCodec();
+    memoryOutputStream = new ByteArrayOutputStream();
+    dataOutputStream = new DataOutputStream(memoryOutputStream);
     try {
-      file = File.createTempFile("MtasUpdateRequestProcessorResult", ".data");
-      fileOutputStream = new FileOutputStream(file);
-      objectOutputStream = new ObjectOutputStream(fileOutputStream);
-      objectOutputStream.writeObject(value);
+      codec.writeHeader(dataOutputStream, value);
+      checkMemoryThreshold();
     } catch (IOException e) {
       forceCloseAndDelete();
       log.debug(e);
@@ -70,12 +107,10 @@ public class MtasUpdateRequestProcessorResultWriter implements Closeable {
       Integer posIncr, BytesRef payload, Integer flags) {
     if (!closed) {
       tokenNumber++;
-      MtasUpdateRequestProcessorResultItem item = new MtasUpdateRequestProcessorResultItem(
-          term, offsetStart, offsetEnd, posIncr, payload, flags);
       try {
-        objectOutputStream.writeObject(item);
-        objectOutputStream.reset();
-        objectOutputStream.flush();
+        codec.writeItem(dataOutputStream, term, offsetStart, offsetEnd,
+            posIncr, payload, flags);
+        checkMemoryThreshold();
       } catch (IOException e) {
         forceCloseAndDelete();
         log.debug(e);
@@ -83,6 +118,24 @@ public class MtasUpdateRequestProcessorResultWriter implements Closeable {
     }
   }
 
+  /**
+   * Move the result from memory to a temporary file if the memory threshold
+   * is exceeded.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void checkMemoryThreshold() throws IOException {
+    if (memoryOutputStream != null
+        && memoryOutputStream.size() > memoryThreshold) {
+      file = File.createTempFile("MtasUpdateRequestProcessorResult", ".data");
+      fileOutputStream = new BufferedOutputStream(new FileOutputStream(file),
+          BUFFER_SIZE);
+      memoryOutputStream.writeTo(fileOutputStream);
+      memoryOutputStream = null;
+      dataOutputStream = new DataOutputStream(fileOutputStream);
+    }
+  }
+
   /**
    * Gets the token number.
    *
@@ -93,7 +146,8 @@ public class MtasUpdateRequestProcessorResultWriter implements Closeable {
   }
 
   /**
-   * Gets the file name.
+   * Gets the file name, or the inline encoded result if it was kept in
+   * memory. The result is complete after closing the writer.
    *
    * @return the file name
    * @throws IOException Signals that an I/O exception has occurred.
@@ -101,6 +155,12 @@ public class MtasUpdateRequestProcessorResultWriter implements Closeable {
   public String getFileName() throws IOException {
     if (file != null) {
       return file.getAbsolutePath();
+    } else if (memoryOutputStream != null) {
+      if (!closed) {
+        close();
+      }
+      return INLINE_PREFIX + Base64.getEncoder()
+          .encodeToString(memoryOutputStream.toByteArray());
     } else {
       throw new IOException("no file");
     }
@@ -114,8 +174,8 @@ public class MtasUpdateRequestProcessorResultWriter implements Closeable {
   @Override
   public void close() throws IOException {
     if (!closed) {
-      objectOutputStream.close();
-      fileOutputStream.close();
+      codec.writeEnd(dataOutputStream);
+      dataOutputStream.close();
       closed = true;
     }
   }
@@ -125,10 +185,6 @@ public class MtasUpdateRequestProcessorResultWriter implements Closeable {
    */
   public void forceCloseAndDelete() {
     try {
-      if (objectOutputStream != null) {
-        objectOutputStream.close();
-        objectOutputStream = null;
-      }
       if (fileOutputStream != null) {
         fileOutputStream.close();
         fileOutputStream = null;
@@ -136,6 +192,8 @@ public class MtasUpdateRequestProcessorResultWriter implements Closeable {
     } catch (IOException e) {
       log.debug(e);
     }
+    dataOutputStream = null;
+    memoryOutputStream = null;
     closed = true;
     tokenNumber = 0;
     if (file != null) {
@@ -0,0 +1,101 @@
+package mtas.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+
+/**
+ * The Class MtasTokenizerTestStreaming.
+ */
+public class MtasTokenizerTestStreaming {
+
+  /** The data path. */
+  private static Path dataPath = Paths.get("src" + File.separator + "test"
+      + File.separator + "resources" + File.separator + "data");
+
+  /**
+   * Streaming folia.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void streamingFolia() throws IOException {
+    String config = new String(
+        Files.readAllBytes(dataPath.resolve("conf").resolve("folia.xml")),
+        StandardCharsets.UTF_8);
+    String streamingConfig = config.replace("<makeunique value=\"true\" />",
+        "<makeunique value=\"true\" />\n<streaming value=\"true\" />");
+    assertFalse("no streaming configuration", streamingConfig.equals(config));
+    for (String file : new String[] { "beets1.xml.gz", "beets2.xml.gz",
+        "beets3.xml.gz" }) {
+      Map<Integer, List<String>> buffered = getTerms(config, file);
+      Map<Integer, List<String>> streamed = getTerms(streamingConfig, file);
+      assertFalse(file + ": no tokens", buffered.isEmpty());
+      assertEquals(file + ": positions", buffered.keySet(), streamed.keySet());
+      for (Integer position : buffered.keySet()) {
+        assertEquals(file + ": terms at position " + position,
+            buffered.get(position), streamed.get(position));
+      }
+    }
+  }
+
+  /**
+   * Gets the sorted terms by position from the tokenizer.
+   *
+   * @param config the config
+   * @param file the file
+   * @return the terms
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static Map<Integer, List<String>> getTerms(String config,
+      String file) throws IOException {
+    Map<Integer, List<String>> terms = new TreeMap<>();
+    try (MtasTokenizer tokenizer = new MtasTokenizer(
+        new ByteArrayInputStream(config.getBytes(StandardCharsets.UTF_8)));
+        Reader reader = new InputStreamReader(
+            new GZIPInputStream(new FileInputStream(
+                dataPath.resolve("resources").resolve(file).toFile())),
+            StandardCharsets.UTF_8)) {
+      CharTermAttribute termAtt = tokenizer
+          .getAttribute(CharTermAttribute.class);
+      PositionIncrementAttribute positionIncrementAtt = tokenizer
+          .getAttribute(PositionIncrementAttribute.class);
+      tokenizer.setReader(reader);
+      tokenizer.reset();
+      int position = -1;
+      while (tokenizer.incrementToken()) {
+        assertTrue(file + ": negative position increment",
+            positionIncrementAtt.getPositionIncrement() >= 0);
+        position += positionIncrementAtt.getPositionIncrement();
+        terms.computeIfAbsent(position, p -> new ArrayList<>())
+            .add(termAtt.toString());
+      }
+      tokenizer.end();
+    }
+    for (List<String> list : terms.values()) {
+      Collections.sort(list);
+    }
+    return terms;
+  }
+
+}
@@ -0,0 +1,338 @@
+package mtas.analysis.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import mtas.analysis.token.MtasToken;
+import mtas.analysis.token.MtasTokenCollection;
+import mtas.analysis.util.MtasConfigException;
+import mtas.analysis.util.MtasConfiguration;
+import mtas.analysis.util.MtasParserException;
+
+/**
+ * The Class MtasBasicParserTestMapping. Token values computed from mappings,
+ * with filters and variables.
+ */
+public class MtasBasicParserTestMapping {
+
+  /** The Constant XML_DECLARATION. */
+  private static final String XML_DECLARATION =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n";
+
+  /** The Constant SKETCH_DOCUMENT, a single word with annotations. */
+  private static final String SKETCH_DOCUMENT = "Huis\tN.Sg.Neut.Def\n";
+
+  /**
+   * The Constant TEI_DOCUMENT. The first word refers to a variable defined
+   * before and one defined after the word, the second word to an undefined
+   * variable.
+   */
+  private static final String TEI_DOCUMENT = XML_DECLARATION
+      + "<TEI xmlns=\"http://www.tei-c.org/ns/1.0\"><text><body>\n"
+      + "<when xml:id=\"T0\" interval=\"0.0\"/>\n"
+      + "<w start=\"#T0\" end=\"#T1\">Hallo</w>\n"
+      + "<when xml:id=\"T1\" interval=\"1.5\"/>\n"
+      + "<w start=\"#T1\" end=\"#T9\">daar</w>\n"
+      + "</body></text></TEI>\n";
+
+  /**
+   * Split filters select parts of the split text.
+   *
+   * @throws MtasParserException the mtas parser exception
+   * @throws MtasConfigException the mtas config exception
+   */
+  @org.junit.Test
+  public void split() throws MtasParserException, MtasConfigException {
+    MtasTokenCollection tokenCollection = createSketchTokenCollection(
+        splitToken("all", null, null) + splitToken("first", "split(0)", null)
+            + splitToken("last", "split(3)", null)
+            + splitToken("range", "split(1-3)", null)
+            + splitToken("ranges", "split(0),split(3)", null)
+            + splitToken("overlap", "split(0-2),split(1-3)", null)
+            + splitToken("beyond", "split(2-10)", null));
+    assertEquals("all", values("all", "N", "Sg", "Neut", "Def"),
+        getValues(tokenCollection, "all"));
+    assertEquals("first", values("first", "N"),
+        getValues(tokenCollection, "first"));
+    assertEquals("last", values("last", "Def"),
+        getValues(tokenCollection, "last"));
+    assertEquals("range", values("range", "Sg", "Neut"),
+        getValues(tokenCollection, "range"));
+    assertEquals("ranges", values("ranges", "N", "Def"),
+        getValues(tokenCollection, "ranges"));
+    assertEquals("overlap", values("overlap", "N", "Sg", "Neut"),
+        getValues(tokenCollection, "overlap"));
+    assertEquals("beyond", values("beyond", "Neut", "Def"),
+        getValues(tokenCollection, "beyond"));
+  }
+
+  /**
+   * Split filters selecting no parts leave the value without postfix.
+   *
+   * @throws MtasParserException the mtas parser exception
+   * @throws MtasConfigException the mtas config exception
+   */
+  @org.junit.Test
+  public void splitEmpty() throws MtasParserException, MtasConfigException {
+    MtasTokenCollection tokenCollection = createSketchTokenCollection(
+        splitToken("outside", "split(4)", null)
+            + splitToken("reversed", "split(3-1)", null)
+            + splitToken("open", "split(1-)", null)
+            + splitToken("start", "split(-2)", null));
+    for (String prefix : new String[] { "outside", "reversed", "open",
+        "start" }) {
+      assertEquals(prefix, values(prefix, ""),
+          getValues(tokenCollection, prefix));
+    }
+  }
+
+  /**
+   * Filters are applied in order, after selecting the split parts, and
+   * before adding the prefix.
+   *
+   * @throws MtasParserException the mtas parser exception
+   * @throws MtasConfigException the mtas config exception
+   */
+  @org.junit.Test
+  public void combinedFilters()
+      throws MtasParserException, MtasConfigException {
+    MtasTokenCollection tokenCollection = createSketchTokenCollection(
+        splitToken("lower", "lowercase,split(1-3)", null)
+            + splitToken("upper", "split(1), uppercase", "f=")
+            + splitToken("both", "uppercase,lowercase,split(0)", null)
+            + token("text", "text", "filter=\"uppercase\" prefix=\"w=\"", "0"));
+    assertEquals("lower", values("lower", "sg", "neut"),
+        getValues(tokenCollection, "lower"));
+    assertEquals("upper", values("upper", "f=SG"),
+        getValues(tokenCollection, "upper"));
+    assertEquals("both", values("both", "n"),
+        getValues(tokenCollection, "both"));
+    assertEquals("text", values("text", "w=HUIS"),
+        getValues(tokenCollection, "text"));
+  }
+
+  /**
+   * Unknown filters give an error with the value filtered so far.
+   *
+   * @throws MtasParserException the mtas parser exception
+   */
+  @org.junit.Test
+  public void unknownFilter() throws MtasParserException {
+    assertConfigException("unknown filter reverse for value huis",
+        token("text", "text", "filter=\"lowercase,reverse,uppercase\"", "0"));
+    assertConfigException("unknown filter split(a) for value N",
+        splitToken("split", "split(a)", null));
+    assertConfigException("split filter not allowed for text",
+        token("text", "text", "filter=\"split(0)\"", "0"));
+  }
+
+  /**
+   * Variables are resolved when defined before or after the reference; with
+   * autorepair, tokens with unresolved variables are removed.
+   *
+   * @throws MtasParserException the mtas parser exception
+   * @throws MtasConfigException the mtas config exception
+   */
+  @org.junit.Test
+  public void variables() throws MtasParserException, MtasConfigException {
+    MtasTokenCollection tokenCollection = createTEITokenCollection(true);
+    assertEquals("text", values("t", "Hallo", "daar"),
+        getValues(tokenCollection, "t"));
+    assertEquals("variables", values("time", "0.0 - 1.5"),
+        getValues(tokenCollection, "time"));
+  }
+
+  /**
+   * Without autorepair, a token with unresolved variables invalidates the
+   * document.
+   *
+   * @throws MtasParserException the mtas parser exception
+   * @throws MtasConfigException the mtas config exception
+   */
+  @org.junit.Test
+  public void unresolvedVariables()
+      throws MtasParserException, MtasConfigException {
+    assertEquals("tokens", 0, createTEITokenCollection(false).size());
+  }
+
+  /**
+   * Assert that the mapping gives a config exception.
+   *
+   * @param message the expected message
+   * @param tokens the tokens
+   * @throws MtasParserException the mtas parser exception
+   */
+  private static void assertConfigException(String message, String tokens)
+      throws MtasParserException {
+    try {
+      createSketchTokenCollection(tokens);
+      fail("no exception for " + message);
+    } catch (MtasConfigException e) {
+      assertEquals(message, e.getMessage());
+    }
+  }
+
+  /**
+   * Creates the token collection for the sketch document, with the tokens for
+   * the word annotations.
+   *
+   * @param tokens the tokens
+   * @return the mtas token collection
+   * @throws MtasParserException the mtas parser exception
+   * @throws MtasConfigException the mtas config exception
+   */
+  private static MtasTokenCollection createSketchTokenCollection(
+      String tokens) throws MtasParserException, MtasConfigException {
+    MtasConfiguration config = createConfiguration(
+        "<parser name=\"mtas.analysis.parser.MtasSketchParser\">\n"
+            + "<autorepair value=\"true\" />\n"
+            + "<makeunique value=\"true\" />\n" + "<mappings>\n"
+            + "<mapping type=\"word\"></mapping>\n" + tokens
+            + "</mappings>\n" + "</parser>\n");
+    MtasTokenCollection tokenCollection = new MtasSketchParser(config)
+        .createTokenCollection(new StringReader(SKETCH_DOCUMENT));
+    assertNotNull("token collection", tokenCollection);
+    return tokenCollection;
+  }
+
+  /**
+   * Creates the token collection for the TEI document, with a variable for
+   * the time of each word.
+   *
+   * @param autorepair the autorepair
+   * @return the mtas token collection
+   * @throws MtasParserException the mtas parser exception
+   * @throws MtasConfigException the mtas config exception
+   */
+  private static MtasTokenCollection createTEITokenCollection(
+      boolean autorepair) throws MtasParserException, MtasConfigException {
+    MtasConfiguration config = createConfiguration(
+        "<parser name=\"mtas.analysis.parser.MtasTEIParser\">\n"
+            + "<autorepair value=\"" + autorepair + "\" />\n"
+            + "<makeunique value=\"true\" />\n" + "<variables>\n"
+            + "<variable name=\"when\" value=\"interval\">\n"
+            + "<value><item type=\"attribute\" name=\"interval\" /></value>\n"
+            + "</variable>\n" + "</variables>\n" + "<mappings>\n"
+            + "<mapping type=\"word\" name=\"w\">\n"
+            + "<token type=\"string\" offset=\"false\" parent=\"false\">\n"
+            + "<pre><item type=\"string\" value=\"t\" /></pre>\n"
+            + "<post><item type=\"text\" /></post>\n" + "</token>\n"
+            + "<token type=\"string\" offset=\"false\" parent=\"false\">\n"
+            + "<pre><item type=\"string\" value=\"time\" /></pre>\n"
+            + "<post>\n"
+            + "<item type=\"variableFromAttribute\" name=\"interval\""
+            + " value=\"start\" />\n"
+            + "<item type=\"variableFromAttribute\" name=\"interval\""
+            + " value=\"end\" prefix=\" - \" />\n"
+            + "</post>\n" + "</token>\n" + "</mapping>\n" + "</mappings>\n"
+            + "</parser>\n");
+    MtasTokenCollection tokenCollection = new MtasTEIParser(config)
+        .createTokenCollection(new StringReader(TEI_DOCUMENT));
+    assertNotNull("token collection", tokenCollection);
+    return tokenCollection;
+  }
+
+  /**
+   * Creates the parser configuration.
+   *
+   * @param parser the parser
+   * @return the mtas configuration
+   */
+  private static MtasConfiguration createConfiguration(String parser) {
+    String xml = XML_DECLARATION + "<mtas>\n" + parser + "</mtas>\n";
+    try {
+      MtasConfiguration config = MtasConfiguration.readConfiguration(
+          new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+      for (MtasConfiguration child : config.children) {
+        if (child.name.equals("parser")) {
+          return child;
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    throw new IllegalStateException("no parser configuration");
+  }
+
+  /**
+   * Mapping for a token from the split second annotation.
+   *
+   * @param prefix the prefix
+   * @param filter the filter
+   * @param valuePrefix the prefix for each value
+   * @return the string
+   */
+  private static String splitToken(String prefix, String filter,
+      String valuePrefix) {
+    return token(prefix, "textSplit",
+        "value=\".\""
+            + (filter == null ? "" : " filter=\"" + filter + "\"")
+            + (valuePrefix == null ? "" : " prefix=\"" + valuePrefix + "\""),
+        "1");
+  }
+
+  /**
+   * Mapping for a token from a word annotation.
+   *
+   * @param prefix the prefix
+   * @param type the type of the post item
+   * @param attributes the attributes of the post item
+   * @param annotation the name of the word annotation
+   * @return the string
+   */
+  private static String token(String prefix, String type, String attributes,
+      String annotation) {
+    return "<mapping type=\"wordAnnotation\" name=\"" + annotation + "\">\n"
+        + "<token type=\"string\" offset=\"false\" parent=\"false\">\n"
+        + "<pre><item type=\"string\" value=\"" + prefix + "\" /></pre>\n"
+        + "<post><item type=\"" + type + "\" " + attributes + " /></post>\n"
+        + "</token>\n" + "</mapping>\n";
+  }
+
+  /**
+   * Expected token values.
+   *
+   * @param prefix the prefix
+   * @param postfixes the postfixes
+   * @return the sorted values
+   */
+  private static List<String> values(String prefix, String... postfixes) {
+    List<String> values = new ArrayList<>();
+    for (String postfix : postfixes) {
+      values.add(prefix + MtasToken.DELIMITER + postfix);
+    }
+    Collections.sort(values);
+    return values;
+  }
+
+  /**
+   * Gets the values of the tokens with the prefix.
+   *
+   * @param tokenCollection the token collection
+   * @param prefix the prefix
+   * @return the sorted values
+   */
+  private static List<String> getValues(MtasTokenCollection tokenCollection,
+      String prefix) {
+    List<String> values = new ArrayList<>();
+    for (MtasToken token : tokenCollection.getTokens()) {
+      assertTrue("position", token.getPositionStart() != null);
+      if (token.getValue().startsWith(prefix + MtasToken.DELIMITER)) {
+        values.add(token.getValue());
+      }
+    }
+    Collections.sort(values);
+    return values;
+  }
+
+}
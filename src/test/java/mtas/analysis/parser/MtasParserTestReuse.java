@@ -0,0 +1,323 @@
+package mtas.analysis.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.util.BytesRef;
+
+import mtas.analysis.MtasTokenizer;
+import mtas.analysis.token.MtasTokenCollection;
+import mtas.analysis.util.MtasConfigException;
+import mtas.analysis.util.MtasConfiguration;
+import mtas.analysis.util.MtasParserException;
+import mtas.analysis.util.MtasParserPool;
+
+/**
+ * The Class MtasParserTestReuse. Documents tokenized one after another with
+ * parsers from the same pool give the same tokens as with fresh parsers.
+ */
+public class MtasParserTestReuse {
+
+  /** The data path. */
+  private static Path dataPath = Paths.get("src" + File.separator + "test"
+      + File.separator + "resources" + File.separator + "data");
+
+  /** The nederlab configuration path. */
+  private static Path confPath = Paths.get("conf" + File.separator + "parser"
+      + File.separator + "nederlab" + File.separator + "mtas");
+
+  /** The Constant XML_DECLARATION. */
+  private static final String XML_DECLARATION =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+
+  /** The Constant TEI_1, with variables for time and speaker. */
+  private static final String TEI_1 = XML_DECLARATION
+      + "<TEI xmlns=\"http://www.tei-c.org/ns/1.0\">\n"
+      + "<teiHeader><profileDesc><particDesc>\n"
+      + "<person xml:id=\"SPK0\" sex=\"1\"/>\n"
+      + "<person xml:id=\"SPK1\" sex=\"2\"/>\n"
+      + "</particDesc></profileDesc></teiHeader>\n"
+      + "<text><timeline unit=\"s\">\n"
+      + "<when xml:id=\"T0\" interval=\"0.0\"/>\n"
+      + "<when xml:id=\"T1\" interval=\"1.5\"/>\n"
+      + "<when xml:id=\"T2\" interval=\"2.5\"/>\n" + "</timeline><body>\n"
+      + "<annotationBlock who=\"#SPK0\" start=\"#T0\" end=\"#T1\"><u>\n"
+      + "<anchor synch=\"#T0\"/><w xml:id=\"w1\">Goede</w>"
+      + "<w xml:id=\"w2\">Morgen</w><pc>.</pc><anchor synch=\"#T1\"/>\n"
+      + "</u></annotationBlock>\n"
+      + "<annotationBlock who=\"#SPK1\" start=\"#T1\" end=\"#T2\"><u>\n"
+      + "<anchor synch=\"#T1\"/><w xml:id=\"w3\">Hallo</w>"
+      + "<pause type=\"short\"/><anchor synch=\"#T2\"/>\n"
+      + "</u></annotationBlock>\n" + "</body></text></TEI>\n";
+
+  /** The Constant TEI_2, with other values for the same variables. */
+  private static final String TEI_2 = XML_DECLARATION
+      + "<TEI xmlns=\"http://www.tei-c.org/ns/1.0\">\n"
+      + "<teiHeader><profileDesc><particDesc>\n"
+      + "<person xml:id=\"SPK0\" sex=\"2\"/>\n"
+      + "</particDesc></profileDesc></teiHeader>\n"
+      + "<text><timeline unit=\"s\">\n"
+      + "<when xml:id=\"T0\" interval=\"3.0\"/>\n"
+      + "<when xml:id=\"T1\" interval=\"4.0\"/>\n" + "</timeline><body>\n"
+      + "<annotationBlock who=\"#SPK0\" start=\"#T0\" end=\"#T1\"><u>\n"
+      + "<anchor synch=\"#T0\"/><w xml:id=\"w1\">Tot</w>"
+      + "<w xml:id=\"w2\">Ziens</w><anchor synch=\"#T1\"/>\n"
+      + "</u></annotationBlock>\n" + "</body></text></TEI>\n";
+
+  /**
+   * The Constant TEI_3, referring to a speaker only defined in
+   * {@link #TEI_1}.
+   */
+  private static final String TEI_3 = TEI_2.replace("#SPK0", "#SPK1");
+
+  /** The Constant CRM_1, ending with an unclosed pair. */
+  private static final String CRM_1 = "@ @ @ header\n"
+      + "Dat dat dat dat 300 - ba1 0\n" + "is is is is 200 - - -\n"
+      + "goed goed goed goed 100 - ea1 -\n" + "en en en en 500 - bb2 1\n"
+      + "ook ook ook ook 500 - - -\n";
+
+  /** The Constant CRM_2, starting with the end of a pair. */
+  private static final String CRM_2 = "Hij hij hij hij 300 - eb2 0\n"
+      + "loopt loopt loopt loopt 200 - - -\n"
+      + "snel snel snel snel 100 - ba3 -\n" + "weg weg weg weg 500 - ea3 1\n";
+
+  /** The Constant SKETCH_1. */
+  private static final String SKETCH_1 = "<p class=\"a\">\n"
+      + "<s class=\"b\">\n" + "Het\tVNW.pr.3\tPRON\thet\n"
+      + "Huis\tN.sg.neut\tNOUN\thuis\n" + "</s>\n" + "</p>\n";
+
+  /** The Constant SKETCH_2. */
+  private static final String SKETCH_2 = "<s class=\"c\">\n"
+      + "Twee\tTW.hoofd\tNUM\ttwee\n" + "Bomen\tN.pl\tNOUN\tboom\n"
+      + "staan\tWW\tVERB\tstaan\n" + "</s>\n";
+
+  /**
+   * Folia documents, with relations.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void folia() throws IOException {
+    List<String> documents = new ArrayList<>();
+    for (String file : new String[] { "beets1.xml.gz", "beets2.xml.gz",
+        "beets3.xml.gz", "beets1.xml.gz" }) {
+      documents.add(readDocument(file));
+    }
+    compare(dataPath.resolve("conf").resolve("folia.xml"), documents, 0);
+  }
+
+  /**
+   * TEI documents, with variables.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void tei() throws IOException {
+    List<String> documents = new ArrayList<>();
+    documents.add(TEI_1);
+    documents.add(TEI_2);
+    documents.add(TEI_1);
+    documents.add(TEI_3);
+    compare(confPath.resolve("iso_tei.xml"), documents, 1);
+  }
+
+  /**
+   * CRM documents, with pairs.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void crm() throws IOException {
+    List<String> documents = new ArrayList<>();
+    documents.add(CRM_1);
+    documents.add(CRM_2);
+    documents.add(CRM_1);
+    compare(confPath.resolve("crm.xml"), documents, 0);
+  }
+
+  /**
+   * Sketch documents, with groups.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void sketch() throws IOException {
+    List<String> documents = new ArrayList<>();
+    documents.add(SKETCH_1);
+    documents.add(SKETCH_2);
+    documents.add(SKETCH_1);
+    compare(confPath.resolve("sketch_acdh.xml"), documents, 0);
+  }
+
+  /**
+   * A released parser holds no token collection, while the collection it
+   * created stays valid after the parser is used again.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws MtasConfigException the mtas config exception
+   * @throws MtasParserException the mtas parser exception
+   */
+  @org.junit.Test
+  public void release()
+      throws IOException, MtasConfigException, MtasParserException {
+    MtasConfiguration parserConfiguration = null;
+    for (MtasConfiguration child : readConfiguration(
+        confPath.resolve("crm.xml")).children) {
+      if (child.name.equals("parser")) {
+        parserConfiguration = child;
+      }
+    }
+    assertNotNull("parser configuration", parserConfiguration);
+    String parserName = parserConfiguration.attributes.get("name");
+    try (MtasParserPool pool = new MtasParserPool()) {
+      MtasParser parser = pool.acquire(parserName, parserConfiguration);
+      assertTrue("reusable", parser.isReusable());
+      MtasTokenCollection first = parser
+          .createTokenCollection(new StringReader(CRM_1));
+      String[][] expected = first.getList();
+      assertTrue("no tokens", expected.length > 0);
+      pool.release(parserConfiguration, parser);
+      assertNull("token collection of released parser",
+          parser.tokenCollection);
+      assertSame("same parser", parser,
+          pool.acquire(parserName, parserConfiguration));
+      MtasTokenCollection second = parser
+          .createTokenCollection(new StringReader(CRM_2));
+      pool.release(parserConfiguration, parser);
+      assertNotSame("new collection", first, second);
+      assertArrayEquals("first collection", expected, first.getList());
+    }
+  }
+
+  /**
+   * Compare the tokens of the documents tokenized with one pool with those
+   * tokenized with a new pool for each document.
+   *
+   * @param configFile the config file
+   * @param documents the documents
+   * @param empty the number of documents expected without tokens
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void compare(Path configFile, List<String> documents,
+      int empty) throws IOException {
+    MtasConfiguration config = readConfiguration(configFile);
+    List<List<String>> fresh = new ArrayList<>();
+    for (String document : documents) {
+      try (MtasParserPool pool = new MtasParserPool()) {
+        fresh.add(getTokens(config, pool, document));
+      }
+    }
+    List<List<String>> reused = new ArrayList<>();
+    try (MtasParserPool pool = new MtasParserPool()) {
+      for (String document : documents) {
+        reused.add(getTokens(config, pool, document));
+      }
+    }
+    int n = 0;
+    for (int i = 0; i < documents.size(); i++) {
+      assertEquals(configFile + ": document " + i, fresh.get(i),
+          reused.get(i));
+      if (fresh.get(i).isEmpty()) {
+        n++;
+      }
+    }
+    assertEquals(configFile + ": documents without tokens", empty, n);
+  }
+
+  /**
+   * Gets the tokens, with position increment, offsets and payload.
+   *
+   * @param config the config
+   * @param pool the pool
+   * @param document the document
+   * @return the tokens
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static List<String> getTokens(MtasConfiguration config,
+      MtasParserPool pool, String document) throws IOException {
+    List<String> tokens = new ArrayList<>();
+    try (MtasTokenizer tokenizer = new MtasTokenizer(
+        TokenStream.DEFAULT_TOKEN_ATTRIBUTE_FACTORY, config, pool)) {
+      CharTermAttribute termAtt = tokenizer
+          .getAttribute(CharTermAttribute.class);
+      PositionIncrementAttribute positionIncrementAtt = tokenizer
+          .getAttribute(PositionIncrementAttribute.class);
+      OffsetAttribute offsetAtt = tokenizer
+          .getAttribute(OffsetAttribute.class);
+      PayloadAttribute payloadAtt = tokenizer
+          .getAttribute(PayloadAttribute.class);
+      tokenizer.setReader(new StringReader(document));
+      tokenizer.reset();
+      while (tokenizer.incrementToken()) {
+        BytesRef payload = payloadAtt.getPayload();
+        tokens.add(termAtt.toString() + " "
+            + positionIncrementAtt.getPositionIncrement() + " "
+            + offsetAtt.startOffset() + "-" + offsetAtt.endOffset() + " "
+            + payload);
+      }
+      tokenizer.end();
+    }
+    return tokens;
+  }
+
+  /**
+   * Read configuration.
+   *
+   * @param configFile the config file
+   * @return the mtas configuration
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static MtasConfiguration readConfiguration(Path configFile)
+      throws IOException {
+    try (InputStream stream = new ByteArrayInputStream(
+        Files.readAllBytes(configFile))) {
+      return MtasConfiguration.readConfiguration(stream);
+    }
+  }
+
+  /**
+   * Read a compressed document.
+   *
+   * @param file the file
+   * @return the document
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static String readDocument(String file) throws IOException {
+    try (InputStream stream = new GZIPInputStream(new FileInputStream(
+        dataPath.resolve("resources").resolve(file).toFile()));
+        ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+      byte[] buffer = new byte[8192];
+      int length;
+      while ((length = stream.read(buffer)) > 0) {
+        out.write(buffer, 0, length);
+      }
+      return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+
+}
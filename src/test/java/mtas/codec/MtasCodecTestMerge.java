@@ -0,0 +1,341 @@
+package mtas.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+
+import mtas.analysis.token.MtasToken;
+import mtas.codec.util.CodecInfo;
+import mtas.codec.util.CodecInfo.FieldStats;
+import mtas.codec.util.CodecInfo.PrefixStats;
+import mtas.codec.util.CodecSearchTree.MtasTreeHit;
+
+/**
+ * The Class MtasCodecTestMerge.
+ */
+public class MtasCodecTestMerge {
+
+  /** The Constant FIELD_ID. */
+  private static final String FIELD_ID = "id";
+
+  /** The Constant FIELD_CONTENT. */
+  private static final String FIELD_CONTENT = "content";
+
+  /** The data path. */
+  private static Path dataPath = Paths.get("src" + File.separator + "test"
+      + File.separator + "resources" + File.separator + "data");
+
+  /**
+   * Merge segments with deleted documents.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void mergeWithDeletions() throws IOException {
+    int mergeThreads = MtasCodecPostingsFormat.getMergeThreads();
+    MtasCodecPostingsFormat.setMergeThreads(2);
+    try (Directory merged = new RAMDirectory();
+        Directory fresh = new RAMDirectory();
+        Directory all = new RAMDirectory()) {
+      // beets2 is deleted from the first segment before merging
+      try (IndexWriter w = createWriter(merged)) {
+        addDoc(w, "1", "beets1.xml.gz");
+        addDoc(w, "2", "beets2.xml.gz");
+        w.commit();
+        addDoc(w, "3", "beets3.xml.gz");
+        w.commit();
+        w.deleteDocuments(new Term(FIELD_ID, "2"));
+        w.commit();
+        w.forceMerge(1);
+        w.commit();
+      }
+      try (IndexWriter w = createWriter(fresh)) {
+        addDoc(w, "1", "beets1.xml.gz");
+        addDoc(w, "3", "beets3.xml.gz");
+        w.forceMerge(1);
+        w.commit();
+      }
+      try (IndexWriter w = createWriter(all)) {
+        addDoc(w, "1", "beets1.xml.gz");
+        addDoc(w, "2", "beets2.xml.gz");
+        addDoc(w, "3", "beets3.xml.gz");
+        w.forceMerge(1);
+        w.commit();
+      }
+      long mergedTermLength = getTermFileLength(merged);
+      long freshTermLength = getTermFileLength(fresh);
+      assertTrue("no terms only in the deleted document",
+          freshTermLength < getTermFileLength(all));
+      assertEquals("terms of deleted document in merged segment",
+          freshTermLength, mergedTermLength);
+      try (IndexReader mergedReader = DirectoryReader.open(merged);
+          IndexReader freshReader = DirectoryReader.open(fresh)) {
+        assertEquals("segments", 1, mergedReader.leaves().size());
+        assertEquals("segments", 1, freshReader.leaves().size());
+        LeafReader mergedLeaf = mergedReader.leaves().get(0).reader();
+        LeafReader freshLeaf = freshReader.leaves().get(0).reader();
+        assertEquals("documents", freshLeaf.numDocs(), mergedLeaf.numDocs());
+        CodecInfo mergedInfo = getCodecInfo(mergedLeaf);
+        CodecInfo freshInfo = getCodecInfo(freshLeaf);
+        assertEquals("prefixes",
+            new TreeSet<>(freshInfo.getPrefixes(FIELD_CONTENT)),
+            new TreeSet<>(mergedInfo.getPrefixes(FIELD_CONTENT)));
+        List<String> prefixes = new ArrayList<>(
+            freshInfo.getPrefixes(FIELD_CONTENT));
+        for (int docId = 0; docId < freshLeaf.maxDoc(); docId++) {
+          int positions = freshInfo.getNumberOfPositions(FIELD_CONTENT, docId);
+          assertEquals("positions for doc " + docId, positions, mergedInfo
+              .getNumberOfPositions(FIELD_CONTENT, docId).intValue());
+          assertEquals("terms for doc " + docId,
+              getTerms(freshInfo, docId, prefixes, positions),
+              getTerms(mergedInfo, docId, prefixes, positions));
+        }
+      }
+    } finally {
+      MtasCodecPostingsFormat.setMergeThreads(mergeThreads);
+    }
+  }
+
+  /**
+   * Read back the precomputed statistics of flushed segments and of segments
+   * merged with and without deletions, and compare them with the terms.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void prefixStats() throws IOException {
+    try (Directory directory = new RAMDirectory()) {
+      try (IndexWriter w = createWriter(directory)) {
+        addDoc(w, "1", "beets1.xml.gz");
+        w.commit();
+        addDoc(w, "2", "beets2.xml.gz");
+        w.commit();
+        addDoc(w, "3", "beets3.xml.gz");
+        w.commit();
+        checkPrefixStats(directory, 3);
+        // without deletions, the statistics of the segments are added
+        w.forceMerge(1);
+        w.commit();
+        checkPrefixStats(directory, 1);
+        // with deletions, the statistics are collected from the postings
+        addDoc(w, "4", "beets2.xml.gz");
+        w.commit();
+        w.deleteDocuments(new Term(FIELD_ID, "1"));
+        w.commit();
+        w.forceMerge(1);
+        w.commit();
+        checkPrefixStats(directory, 1);
+      }
+    }
+  }
+
+  /**
+   * Check the precomputed statistics of each segment.
+   *
+   * @param directory the directory
+   * @param segments the number of segments
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void checkPrefixStats(Directory directory, int segments)
+      throws IOException {
+    try (IndexReader reader = DirectoryReader.open(directory)) {
+      assertEquals("segments", segments, reader.leaves().size());
+      for (LeafReaderContext context : reader.leaves()) {
+        LeafReader leaf = context.reader();
+        assertNull("deletions", leaf.getLiveDocs());
+        CodecInfo codecInfo = getCodecInfo(leaf);
+        FieldStats fieldStats = codecInfo.getFieldStats(FIELD_CONTENT);
+        assertNotNull("no field stats", fieldStats);
+        int docs = 0;
+        long positions = 0;
+        long tokens = 0;
+        for (int docId = 0; docId < leaf.maxDoc(); docId++) {
+          Integer number = codecInfo.getNumberOfPositions(FIELD_CONTENT,
+              docId);
+          if (number != null) {
+            docs++;
+            positions += number;
+            tokens += codecInfo.getNumberOfTokens(FIELD_CONTENT, docId);
+          }
+        }
+        assertEquals("documents", docs, fieldStats.numberOfDocs);
+        assertEquals("positions", positions, fieldStats.numberOfPositions);
+        assertEquals("tokens", tokens, fieldStats.numberOfTokens);
+        // number of terms, summed term frequency and docs for each prefix
+        Map<String, long[]> expected = new TreeMap<>();
+        Map<String, Set<Integer>> expectedDocs = new HashMap<>();
+        TermsEnum termsEnum = leaf.terms(FIELD_CONTENT).iterator();
+        PostingsEnum postingsEnum = null;
+        BytesRef term;
+        while ((term = termsEnum.next()) != null) {
+          String prefix = MtasToken.getPrefixFromValue(term.utf8ToString());
+          long[] stats = expected.computeIfAbsent(prefix, k -> new long[2]);
+          Set<Integer> prefixDocs = expectedDocs.computeIfAbsent(prefix,
+              k -> new HashSet<>());
+          stats[0]++;
+          postingsEnum = termsEnum.postings(postingsEnum, PostingsEnum.FREQS);
+          while (postingsEnum.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+            stats[1] += postingsEnum.freq();
+            prefixDocs.add(postingsEnum.docID());
+          }
+        }
+        assertEquals("prefixes", expected.keySet(),
+            fieldStats.prefixStats.keySet());
+        for (Entry<String, long[]> entry : expected.entrySet()) {
+          String prefix = entry.getKey();
+          PrefixStats prefixStats = fieldStats.prefixStats.get(prefix);
+          assertEquals("terms for " + prefix, entry.getValue()[0],
+              prefixStats.numberOfTerms);
+          assertEquals("term frequency for " + prefix, entry.getValue()[1],
+              prefixStats.totalTermFreq);
+          assertEquals("documents for " + prefix,
+              expectedDocs.get(prefix).size(), prefixStats.docFreq);
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates the index writer.
+   *
+   * @param directory the directory
+   * @return the index writer
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static IndexWriter createWriter(Directory directory)
+      throws IOException {
+    Map<String, String> paramsCharFilterMtas = new HashMap<>();
+    paramsCharFilterMtas.put("type", "file");
+    Map<String, String> paramsTokenizer = new HashMap<>();
+    paramsTokenizer.put("configFile", dataPath.resolve("conf")
+        .resolve("folia.xml").toAbsolutePath().toString());
+    Analyzer mtasAnalyzer = CustomAnalyzer
+        .builder(Paths.get("docker").toAbsolutePath())
+        .addCharFilter("mtas", paramsCharFilterMtas)
+        .withTokenizer("mtas", paramsTokenizer).build();
+    Map<String, Analyzer> analyzerPerField = new HashMap<>();
+    analyzerPerField.put(FIELD_CONTENT, mtasAnalyzer);
+    PerFieldAnalyzerWrapper analyzer = new PerFieldAnalyzerWrapper(
+        new StandardAnalyzer(), analyzerPerField);
+    IndexWriterConfig config = new IndexWriterConfig(analyzer);
+    config.setUseCompoundFile(false);
+    config.setCodec(Codec.forName("MtasCodec"));
+    return new IndexWriter(directory, config);
+  }
+
+  /**
+   * Adds the doc.
+   *
+   * @param w the w
+   * @param id the id
+   * @param file the file
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void addDoc(IndexWriter w, String id, String file)
+      throws IOException {
+    Document doc = new Document();
+    doc.add(new StringField(FIELD_ID, id, Field.Store.YES));
+    doc.add(new TextField(FIELD_CONTENT, dataPath.resolve("resources")
+        .resolve(file).toAbsolutePath().toString(), Field.Store.YES));
+    w.addDocument(doc);
+  }
+
+  /**
+   * Gets the length of the single mtas term file in the directory.
+   *
+   * @param directory the directory
+   * @return the length
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static long getTermFileLength(Directory directory)
+      throws IOException {
+    String termFile = null;
+    for (String file : directory.listAll()) {
+      if (file.endsWith("." + MtasCodecPostingsFormat.MTAS_TERM_EXTENSION)) {
+        assertEquals("multiple term files", null, termFile);
+        termFile = file;
+      }
+    }
+    assertNotNull("no term file", termFile);
+    return directory.fileLength(termFile);
+  }
+
+  /**
+   * Gets the codec info.
+   *
+   * @param reader the reader
+   * @return the codec info
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static CodecInfo getCodecInfo(LeafReader reader)
+      throws IOException {
+    Terms terms = reader.terms(FIELD_CONTENT);
+    assertNotNull("no terms", terms);
+    CodecInfo codecInfo = CodecInfo.getCodecInfoFromTerms(terms);
+    assertNotNull("no codec info", codecInfo);
+    return codecInfo;
+  }
+
+  /**
+   * Gets the sorted positioned terms of a document.
+   *
+   * @param codecInfo the codec info
+   * @param docId the doc id
+   * @param prefixes the prefixes
+   * @param positions the number of positions
+   * @return the terms
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static List<String> getTerms(CodecInfo codecInfo, int docId,
+      List<String> prefixes, int positions) throws IOException {
+    List<String> list = new ArrayList<>();
+    for (MtasTreeHit<String> hit : codecInfo
+        .getPositionedTermsByPrefixesAndPositionRange(FIELD_CONTENT, docId,
+            prefixes, 0, positions - 1)) {
+      list.add(hit.startPosition + "-" + hit.endPosition + ":" + hit.data);
+    }
+    Collections.sort(list);
+    return list;
+  }
+
+}
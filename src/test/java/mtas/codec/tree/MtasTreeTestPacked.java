@@ -0,0 +1,213 @@
+package mtas.codec.tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RAMDirectory;
+
+import mtas.analysis.token.MtasToken;
+import mtas.analysis.token.MtasTokenString;
+import mtas.codec.util.CodecSearchTree;
+import mtas.codec.util.CodecSearchTree.MtasTreeHit;
+
+/**
+ * The Class MtasTreeTestPacked.
+ */
+public class MtasTreeTestPacked {
+
+  /** The Constant NUMBER_OF_POSITIONS. */
+  private static final int NUMBER_OF_POSITIONS = 50;
+
+  /** The Constant REF_APPROX_OFFSET. */
+  private static final long REF_APPROX_OFFSET = 100;
+
+  /**
+   * Position trees with single points, ranges, sets and duplicate ids.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void positionTree() throws IOException {
+    List<MtasToken> tokens = createTokens(new Random(42), 200);
+    MtasRBTree rbTree = new MtasRBTree(false, true);
+    MtasPackedTree packedTree = new MtasPackedTree(false, true);
+    for (MtasToken token : tokens) {
+      rbTree.addPositionAndObjectFromToken(token);
+      packedTree.addPositionAndObjectFromToken(token);
+    }
+    compare(rbTree, packedTree);
+  }
+
+  /**
+   * Parent trees with duplicate ids.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void parentTree() throws IOException {
+    List<MtasToken> tokens = createTokens(new Random(43), 200);
+    MtasRBTree rbTree = new MtasRBTree(false, true);
+    MtasPackedTree packedTree = new MtasPackedTree(false, true);
+    for (MtasToken token : tokens) {
+      rbTree.addParentFromToken(token);
+      packedTree.addParentFromToken(token);
+    }
+    compare(rbTree, packedTree);
+  }
+
+  /**
+   * Single point trees for document ids.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void docIdTree() throws IOException {
+    MtasRBTree rbTree = new MtasRBTree(true, false);
+    MtasPackedTree packedTree = new MtasPackedTree(true, false);
+    for (int docId = 0; docId < NUMBER_OF_POSITIONS; docId += 3) {
+      rbTree.addIdFromDoc(docId, REF_APPROX_OFFSET + 10L * docId);
+      packedTree.addIdFromDoc(docId, REF_APPROX_OFFSET + 10L * docId);
+    }
+    compare(rbTree, packedTree);
+  }
+
+  /**
+   * Empty trees.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void emptyTree() throws IOException {
+    compare(new MtasRBTree(false, true), new MtasPackedTree(false, true));
+  }
+
+  /**
+   * Creates random tokens, including tokens reusing the id and position of a
+   * previous token with another reference.
+   *
+   * @param random the random
+   * @param number the number
+   * @return the tokens
+   */
+  private static List<MtasToken> createTokens(Random random, int number) {
+    List<MtasToken> tokens = new ArrayList<>();
+    long ref = REF_APPROX_OFFSET;
+    for (int id = 0; id < number; id++) {
+      MtasToken token = new MtasTokenString(id, "t" + id);
+      int start = random.nextInt(NUMBER_OF_POSITIONS);
+      int type = random.nextInt(3);
+      if (type == 0) {
+        token.addPosition(start);
+      } else if (type == 1) {
+        token.addPositionRange(start, start + random.nextInt(5));
+      } else {
+        token.addPositions(new int[] { start, start + 1, start + 3,
+            start + 4 + random.nextInt(3) });
+      }
+      if (id > 0) {
+        token.setParentId(random.nextInt(id));
+      }
+      ref += 1 + random.nextInt(20);
+      setRefs(token, ref, random);
+      tokens.add(token);
+      if (random.nextInt(5) == 0) {
+        // same id and positions, last one should win
+        MtasToken duplicate = new MtasTokenString(id, "t" + id);
+        duplicate.addPositions(token.getPositions());
+        if (token.checkParentId()) {
+          duplicate.setParentId(token.getParentId());
+        }
+        ref += 1 + random.nextInt(20);
+        setRefs(duplicate, ref, random);
+        tokens.add(duplicate);
+      }
+    }
+    return tokens;
+  }
+
+  /**
+   * Sets the references of a token.
+   *
+   * @param token the token
+   * @param ref the ref
+   * @param random the random
+   */
+  private static void setRefs(MtasToken token, long ref, Random random) {
+    token.setTokenRef(ref);
+    token.setTermRef((long) random.nextInt(1000));
+    token.setPrefixId(random.nextInt(10));
+  }
+
+  /**
+   * Store both trees and compare searches for all ranges of positions.
+   *
+   * @param rbTree the rb tree
+   * @param packedTree the packed tree
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void compare(MtasRBTree rbTree, MtasPackedTree packedTree)
+      throws IOException {
+    try (Directory directory = new RAMDirectory()) {
+      long rbRef;
+      long packedRef;
+      try (IndexOutput out = directory.createOutput("tree",
+          IOContext.DEFAULT)) {
+        out.writeString("header");
+        rbRef = MtasFixedWidthTree.store(rbTree, out, REF_APPROX_OFFSET);
+        packedRef = packedTree.store(out, REF_APPROX_OFFSET);
+      }
+      try (IndexInput in = directory.openInput("tree", IOContext.DEFAULT)) {
+        int total = 0;
+        for (int start = 0; start <= NUMBER_OF_POSITIONS + 10; start++) {
+          for (int end = start; end <= NUMBER_OF_POSITIONS + 10; end++) {
+            List<String> rbHits = getHits(start, end, in, rbRef);
+            List<String> packedHits = getHits(start, end, in, packedRef);
+            assertEquals("hits for " + start + "-" + end, rbHits, packedHits);
+            total += rbHits.size();
+          }
+        }
+        assertEquals("advance",
+            CodecSearchTree.advanceMtasTree(0, in, rbRef, REF_APPROX_OFFSET)
+                .size(),
+            CodecSearchTree
+                .advanceMtasTree(0, in, packedRef, REF_APPROX_OFFSET).size());
+        if (rbTree.root != null && !rbTree.root.ids.isEmpty()) {
+          assertFalse("no hits", total == 0);
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the sorted hits for a range of positions.
+   *
+   * @param start the start
+   * @param end the end
+   * @param in the in
+   * @param ref the ref
+   * @return the hits
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static List<String> getHits(int start, int end, IndexInput in,
+      long ref) throws IOException {
+    List<String> list = new ArrayList<>();
+    for (MtasTreeHit<?> hit : CodecSearchTree.searchMtasTree(start, end, in,
+        ref, REF_APPROX_OFFSET)) {
+      list.add(hit.startPosition + "-" + hit.endPosition + ":" + hit.ref + ","
+          + hit.additionalId + "," + hit.additionalRef);
+    }
+    Collections.sort(list);
+    return list;
+  }
+
+}
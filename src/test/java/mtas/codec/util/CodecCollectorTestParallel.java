@@ -0,0 +1,362 @@
+package mtas.codec.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Bits;
+
+import mtas.codec.util.CodecComponent.ComponentField;
+import mtas.codec.util.CodecComponent.ComponentGroup;
+import mtas.codec.util.CodecComponent.ComponentPosition;
+import mtas.codec.util.CodecComponent.ComponentSpan;
+import mtas.codec.util.CodecComponent.ComponentTermVector;
+import mtas.codec.util.collector.MtasDataItem;
+import mtas.parser.cql.MtasCQLParser;
+import mtas.parser.cql.ParseException;
+import mtas.search.spans.util.MtasSpanQuery;
+
+/**
+ * The Class CodecCollectorTestParallel.
+ */
+public class CodecCollectorTestParallel {
+
+  /** The Constant FIELD_ID. */
+  private static final String FIELD_ID = "id";
+
+  /** The Constant FIELD_CONTENT. */
+  private static final String FIELD_CONTENT = "content";
+
+  /** The directory. */
+  private static Directory directory;
+
+  /** The executor. */
+  private static ExecutorService executor;
+
+  /**
+   * Initialize.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.BeforeClass
+  public static void initialize() throws IOException {
+    Path dataPath = Paths.get("src" + File.separator + "test" + File.separator
+        + "resources" + File.separator + "data");
+    directory = new RAMDirectory();
+    createIndex(
+        dataPath.resolve("conf").resolve("folia.xml").toAbsolutePath()
+            .toString(),
+        new Path[] { dataPath.resolve("resources").resolve("beets1.xml.gz"),
+            dataPath.resolve("resources").resolve("beets2.xml.gz"),
+            dataPath.resolve("resources").resolve("beets3.xml.gz") });
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  /**
+   * Shutdown.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.AfterClass
+  public static void shutdown() throws IOException {
+    executor.shutdown();
+    directory.close();
+  }
+
+  /**
+   * Collecting segments in parallel gives the same stats, groups,
+   * termvectors and status as collecting them sequentially.
+   *
+   * @throws Exception the exception
+   */
+  @org.junit.Test
+  public void parallelAndSequential() throws Exception {
+    try (IndexReader indexReader = DirectoryReader.open(directory)) {
+      assertTrue("multiple segments", indexReader.leaves().size() > 1);
+      List<int[]> docSets = new ArrayList<>();
+      docSets.add(getLiveDocs(indexReader, 1));
+      docSets.add(getLiveDocs(indexReader, 2));
+      for (int[] docSet : docSets) {
+        String name = docSet.length + " documents";
+        Status sequentialStatus = new Status();
+        Map<String, Object> sequential = collect(indexReader, docSet,
+            sequentialStatus, null, null);
+        Status parallelStatus = new Status();
+        Map<String, Object> parallel = collect(indexReader, docSet,
+            parallelStatus, executor, null);
+        assertFalse(name + ": empty groups",
+            ((Map<?, ?>) sequential.get("group articles")).isEmpty());
+        assertFalse(name + ": empty termvector",
+            ((Map<?, ?>) sequential.get("termvector full")).isEmpty());
+        assertEquals(name + ": results", sequential, parallel);
+        assertEquals(name + ": segments finished",
+            Integer.valueOf(indexReader.leaves().size()),
+            parallelStatus.numberSegmentsFinished);
+        assertEquals(name + ": documents finished",
+            sequentialStatus.numberDocumentsFinished,
+            parallelStatus.numberDocumentsFinished);
+        assertEquals(name + ": documents found",
+            Long.valueOf(docSet.length), parallelStatus.numberDocumentsFound);
+        assertEquals(name + ": documents found sequentially",
+            sequentialStatus.numberDocumentsFound,
+            parallelStatus.numberDocumentsFound);
+      }
+    }
+  }
+
+  /**
+   * Computing termvectors in ranges of a few terms gives the same full, list
+   * and second round termvectors as computing them sequentially.
+   *
+   * @throws Exception the exception
+   */
+  @org.junit.Test
+  public void partitionedTermvectors() throws Exception {
+    int partitionSize = CodecCollector.termvectorPartitionSize;
+    CodecCollector.termvectorPartitionSize = 3;
+    try (IndexReader indexReader = DirectoryReader.open(directory)) {
+      for (int step : new int[] { 1, 2 }) {
+        int[] docSet = getLiveDocs(indexReader, step);
+        String name = docSet.length + " documents";
+        Map<?, ?> full = (Map<?, ?>) collect(indexReader, docSet,
+            new Status(), null, null).get("termvector full");
+        assertTrue(name + ": several batches of ranges",
+            full.size() > 100 * CodecCollector.termvectorPartitionSize);
+        List<String> keys = new ArrayList<>();
+        for (Object key : full.keySet()) {
+          keys.add((String) key);
+        }
+        Collections.sort(keys);
+        List<String> secondRound = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i += 2) {
+          secondRound.add(keys.get(i));
+        }
+        String[] list = secondRound.toArray(new String[secondRound.size()]);
+        Map<String, Object> sequential = collect(indexReader, docSet,
+            new Status(), null, list);
+        Map<String, Object> parallel = collect(indexReader, docSet,
+            new Status(), executor, list);
+        assertEquals(name + ": second round", list.length,
+            ((Map<?, ?>) sequential.get("termvector second round")).size());
+        assertFalse(name + ": empty list",
+            ((Map<?, ?>) sequential.get("termvector list")).isEmpty());
+        assertEquals(name + ": full", full, sequential.get("termvector full"));
+        assertEquals(name + ": results", sequential, parallel);
+      }
+    } finally {
+      CodecCollector.termvectorPartitionSize = partitionSize;
+    }
+  }
+
+  /**
+   * Collect stats, groups and termvectors for the content field.
+   *
+   * @param indexReader the index reader
+   * @param docSet the doc set
+   * @param status the status
+   * @param executor the executor, or null
+   * @param list the terms for a list and a second round termvector, or null
+   * @return the results by key
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws ParseException the parse exception
+   * @throws mtas.parser.function.ParseException the parse exception
+   * @throws IllegalAccessException the illegal access exception
+   * @throws InvocationTargetException the invocation target exception
+   */
+  private static Map<String, Object> collect(IndexReader indexReader,
+      int[] docSet, Status status, ExecutorService executor, String[] list)
+      throws IOException, ParseException,
+      mtas.parser.function.ParseException, IllegalAccessException,
+      InvocationTargetException {
+    MtasSpanQuery articles = createQuery("[pos=\"LID\"]");
+    MtasSpanQuery nouns = createQuery("[pos=\"N\"]");
+    ComponentField fieldStats = new ComponentField(FIELD_ID);
+    fieldStats.spanQueryList.add(articles);
+    fieldStats.spanQueryList.add(nouns);
+    fieldStats.statsPositionList
+        .add(new ComponentPosition("positions", null, null, "n,sum,min,max"));
+    fieldStats.statsSpanList.add(new ComponentSpan(
+        new MtasSpanQuery[] { articles }, "articles", null, null,
+        "n,sum,min,max", null, null, null));
+    fieldStats.groupList.add(new ComponentGroup(articles, "articles",
+        Integer.MAX_VALUE, 0, "t_lc", null, null, null, null, null, null, null,
+        null, null, null, null, null));
+    fieldStats.groupList.add(new ComponentGroup(nouns, "nouns",
+        Integer.MAX_VALUE, 0, "lemma", null, null, null, null, null, null,
+        null, null, new String[] { "0" }, new String[] { "t_lc" }, null,
+        null));
+    fieldStats.termVectorList.add(new ComponentTermVector("top", "t_lc", null,
+        null, null, null, null, null, null, false, "n,sum",
+        CodecUtil.STATS_TYPE_SUM, CodecUtil.SORT_DESC, null, 10, null, null,
+        null, null, null, null, null, null, null));
+    fieldStats.termVectorList.add(new ComponentTermVector("full", "t_lc",
+        null, null, null, null, null, null, null, true, "n,sum",
+        CodecUtil.STATS_TYPE_SUM, CodecUtil.SORT_DESC, null,
+        Integer.MAX_VALUE, null, null, null, null, null, null, null, null,
+        null));
+    if (list != null) {
+      fieldStats.termVectorList.add(new ComponentTermVector("second round",
+          "t_lc", null, null, null, null, null, null, null, false, "n,sum",
+          CodecUtil.STATS_TYPE_SUM, CodecUtil.SORT_DESC, null, list.length,
+          null, null, null, null, list, false, null, null, null));
+      fieldStats.termVectorList.add(new ComponentTermVector("list", "t_lc",
+          null, null, null, null, null, null, null, false, "n,sum",
+          CodecUtil.SORT_TERM, CodecUtil.SORT_ASC, null, Integer.MAX_VALUE,
+          null, null, null, null, new String[] { "d.*", "[a-c].*" }, true,
+          null, null, null));
+    }
+    status.addSub(FIELD_CONTENT);
+    IndexSearcher searcher = new IndexSearcher(indexReader);
+    CodecUtil.collectField(FIELD_CONTENT, searcher, indexReader, new int[0],
+        docSet, fieldStats, status, executor);
+    Map<String, Object> results = new HashMap<>();
+    for (ComponentPosition cp : fieldStats.statsPositionList) {
+      results.put("positions " + cp.key,
+          cp.dataCollector.getResult().getData().rewrite(false));
+    }
+    for (ComponentSpan cs : fieldStats.statsSpanList) {
+      results.put("spans " + cs.key,
+          cs.dataCollector.getResult().getData().rewrite(false));
+    }
+    for (ComponentGroup cg : fieldStats.groupList) {
+      results.put("group " + cg.key,
+          rewrite(cg.dataCollector.getResult().getList()));
+    }
+    for (ComponentTermVector ct : fieldStats.termVectorList) {
+      results.put("termvector " + ct.key, rewrite(
+          ct.subComponentFunction.dataCollector.getResult().getList()));
+    }
+    return results;
+  }
+
+  /**
+   * Rewrite a list of data items.
+   *
+   * @param list the list
+   * @return the rewritten items, by key
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static Map<String, Object> rewrite(Map<String, ?> list)
+      throws IOException {
+    Map<String, Object> result = new HashMap<>();
+    for (Entry<String, ?> entry : list.entrySet()) {
+      result.put(entry.getKey(),
+          ((MtasDataItem<?, ?>) entry.getValue()).rewrite(false));
+    }
+    return result;
+  }
+
+  /**
+   * Creates the query.
+   *
+   * @param cql the cql
+   * @return the mtas span query
+   * @throws ParseException the parse exception
+   */
+  private static MtasSpanQuery createQuery(String cql) throws ParseException {
+    MtasCQLParser p = new MtasCQLParser(new StringReader(cql));
+    return p.parse(FIELD_CONTENT, null, null, null, null);
+  }
+
+  /**
+   * Gets the live docs, every n-th document.
+   *
+   * @param indexReader the index reader
+   * @param step the step
+   * @return the sorted live docs
+   */
+  private static int[] getLiveDocs(IndexReader indexReader, int step) {
+    List<Integer> list = new ArrayList<>();
+    int counter = 0;
+    for (LeafReaderContext lrc : indexReader.leaves()) {
+      Bits liveDocs = lrc.reader().getLiveDocs();
+      for (int docId = 0; docId < lrc.reader().maxDoc(); docId++) {
+        if ((liveDocs == null || liveDocs.get(docId))
+            && (counter++ % step) == 0) {
+          list.add(lrc.docBase + docId);
+        }
+      }
+    }
+    int[] docSet = new int[list.size()];
+    for (int i = 0; i < docSet.length; i++) {
+      docSet[i] = list.get(i);
+    }
+    return docSet;
+  }
+
+  /**
+   * Creates the index, with a segment for each document and deletions.
+   *
+   * @param configFile the config file
+   * @param files the files
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void createIndex(String configFile, Path[] files)
+      throws IOException {
+    Map<String, String> paramsCharFilterMtas = new HashMap<>();
+    paramsCharFilterMtas.put("type", "file");
+    Map<String, String> paramsTokenizer = new HashMap<>();
+    paramsTokenizer.put("configFile", configFile);
+    Analyzer mtasAnalyzer = CustomAnalyzer
+        .builder(Paths.get("docker").toAbsolutePath())
+        .addCharFilter("mtas", paramsCharFilterMtas)
+        .withTokenizer("mtas", paramsTokenizer).build();
+    Map<String, Analyzer> analyzerPerField = new HashMap<>();
+    analyzerPerField.put(FIELD_CONTENT, mtasAnalyzer);
+    PerFieldAnalyzerWrapper analyzer = new PerFieldAnalyzerWrapper(
+        new StandardAnalyzer(), analyzerPerField);
+    IndexWriterConfig config = new IndexWriterConfig(analyzer);
+    config.setUseCompoundFile(false);
+    config.setCodec(Codec.forName("MtasCodec"));
+    try (IndexWriter w = new IndexWriter(directory, config)) {
+      int id = 0;
+      for (int i = 0; i < 2; i++) {
+        for (Path file : files) {
+          Document doc = new Document();
+          doc.add(new StringField(FIELD_ID, Integer.toString(id++),
+              Field.Store.YES));
+          doc.add(new TextField(FIELD_CONTENT,
+              file.toAbsolutePath().toString(), Field.Store.YES));
+          w.addDocument(doc);
+          w.commit();
+        }
+      }
+      w.deleteDocuments(new Term(FIELD_ID, "1"));
+      w.commit();
+    }
+  }
+
+}
@@ -0,0 +1,174 @@
+package mtas.codec.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+
+import mtas.codec.util.CodecSearchTree.MtasTreeHit;
+
+/**
+ * The Class CodecInfoTestPositionRanges.
+ */
+public class CodecInfoTestPositionRanges {
+
+  /** The Constant FIELD_ID. */
+  private static final String FIELD_ID = "id";
+
+  /** The Constant FIELD_CONTENT. */
+  private static final String FIELD_CONTENT = "content";
+
+  /** The directory. */
+  private static Directory directory;
+
+  /**
+   * Initialize.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.BeforeClass
+  public static void initialize() throws IOException {
+    Path dataPath = Paths.get("src" + File.separator + "test" + File.separator
+        + "resources" + File.separator + "data");
+    Map<String, String> paramsCharFilterMtas = new HashMap<>();
+    paramsCharFilterMtas.put("type", "file");
+    Map<String, String> paramsTokenizer = new HashMap<>();
+    paramsTokenizer.put("configFile", dataPath.resolve("conf")
+        .resolve("folia.xml").toAbsolutePath().toString());
+    Analyzer mtasAnalyzer = CustomAnalyzer
+        .builder(Paths.get("docker").toAbsolutePath())
+        .addCharFilter("mtas", paramsCharFilterMtas)
+        .withTokenizer("mtas", paramsTokenizer).build();
+    Map<String, Analyzer> analyzerPerField = new HashMap<>();
+    analyzerPerField.put(FIELD_CONTENT, mtasAnalyzer);
+    IndexWriterConfig config = new IndexWriterConfig(
+        new PerFieldAnalyzerWrapper(new StandardAnalyzer(),
+            analyzerPerField));
+    config.setUseCompoundFile(false);
+    config.setCodec(Codec.forName("MtasCodec"));
+    directory = new RAMDirectory();
+    try (IndexWriter w = new IndexWriter(directory, config)) {
+      int id = 0;
+      for (String file : new String[] { "beets1.xml.gz", "beets2.xml.gz",
+          "beets3.xml.gz" }) {
+        Document doc = new Document();
+        doc.add(new StringField(FIELD_ID, Integer.toString(id++),
+            Field.Store.YES));
+        doc.add(new TextField(FIELD_CONTENT, dataPath.resolve("resources")
+            .resolve(file).toAbsolutePath().toString(), Field.Store.YES));
+        w.addDocument(doc);
+        // multiple segments
+        w.commit();
+      }
+    }
+  }
+
+  /**
+   * Random, overlapping, adjacent and repeated ranges, with prefixes for
+   * single and multiple position tokens.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void ranges() throws IOException {
+    Random random = new Random(42);
+    List<List<String>> prefixesList = new ArrayList<>();
+    prefixesList.add(Arrays.asList("t", "pos"));
+    prefixesList.add(Arrays.asList("s", "lemma"));
+    prefixesList.add(Arrays.asList("div", "p", "s", "t_lc", "entity"));
+    prefixesList.add(Arrays.asList("unknown"));
+    int total = 0;
+    try (IndexReader reader = DirectoryReader.open(directory)) {
+      for (LeafReaderContext context : reader.leaves()) {
+        LeafReader leaf = context.reader();
+        Terms terms = leaf.terms(FIELD_CONTENT);
+        assertNotNull("no terms", terms);
+        CodecInfo codecInfo = CodecInfo.getCodecInfoFromTerms(terms);
+        for (int docId = 0; docId < leaf.maxDoc(); docId++) {
+          Integer positions = codecInfo.getNumberOfPositions(FIELD_CONTENT,
+              docId);
+          if (positions == null) {
+            continue;
+          }
+          int number = 200;
+          int[] startPositions = new int[number];
+          int[] endPositions = new int[number];
+          for (int i = 0; i < number; i++) {
+            if (i > 0 && random.nextInt(5) == 0) {
+              // adjacent to or the same as the previous range
+              startPositions[i] = random.nextBoolean()
+                  ? endPositions[i - 1] + 1 : startPositions[i - 1];
+            } else {
+              startPositions[i] = random.nextInt(positions + 10) - 5;
+            }
+            endPositions[i] = startPositions[i] + random.nextInt(
+                random.nextInt(10) == 0 ? 100 : 10);
+          }
+          for (List<String> prefixes : prefixesList) {
+            List<List<MtasTreeHit<String>>> result = codecInfo
+                .getPositionedTermsByPrefixesAndPositionRanges(FIELD_CONTENT,
+                    docId, prefixes, startPositions, endPositions);
+            assertEquals("number of ranges", number, result.size());
+            for (int i = 0; i < number; i++) {
+              String name = prefixes + " in " + startPositions[i] + "-"
+                  + endPositions[i];
+              List<String> expected = toList(codecInfo
+                  .getPositionedTermsByPrefixesAndPositionRange(FIELD_CONTENT,
+                      docId, prefixes, startPositions[i], endPositions[i]));
+              assertEquals(name, expected, toList(result.get(i)));
+              total += expected.size();
+            }
+          }
+        }
+      }
+    }
+    assertTrue("no hits", total > 0);
+  }
+
+  /**
+   * Gets the sorted hits as strings.
+   *
+   * @param hits the hits
+   * @return the list
+   */
+  private static List<String> toList(List<MtasTreeHit<String>> hits) {
+    List<String> list = new ArrayList<>();
+    for (MtasTreeHit<String> hit : hits) {
+      list.add(hit.startPosition + "-" + hit.endPosition + ":" + hit.ref + ":"
+          + hit.data);
+    }
+    Collections.sort(list);
+    return list;
+  }
+
+}
@@ -0,0 +1,89 @@
+package mtas.codec.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The Class CodecTermCacheTestEviction.
+ */
+public class CodecTermCacheTestEviction {
+
+  /**
+   * Hits and misses are counted for every lookup.
+   */
+  @org.junit.Test
+  public void counters() {
+    CodecTermCache cache = new CodecTermCache(16);
+    assertNull("empty", cache.get(10));
+    cache.put(10, "t_lc\u0001de");
+    assertEquals("cached", "t_lc\u0001de", cache.get(10));
+    assertEquals("cached again", "t_lc\u0001de", cache.get(10));
+    assertNull("other", cache.get(20));
+    assertEquals("hits", 2, cache.getHits());
+    assertEquals("misses", 2, cache.getMisses());
+    assertEquals("number", 1, cache.getNumber());
+    cache.clear();
+    assertNull("cleared", cache.get(10));
+    assertEquals("number after clear", 0, cache.getNumber());
+    assertEquals("misses after clear", 3, cache.getMisses());
+  }
+
+  /**
+   * The size is rounded up to a power of two, with at least a full set.
+   */
+  @org.junit.Test
+  public void size() {
+    assertEquals("minimum", CodecTermCache.WAYS,
+        new CodecTermCache(1).getSize());
+    assertEquals("rounded", 8, new CodecTermCache(5).getSize());
+    assertEquals("default", CodecTermCache.DEFAULT_SIZE,
+        new CodecTermCache().getSize());
+  }
+
+  /**
+   * Terms mapping to the same set don't evict each other until the set is
+   * full, and then terms hit since the last eviction get a second chance.
+   */
+  @org.junit.Test
+  public void eviction() {
+    // a single set
+    CodecTermCache cache = new CodecTermCache(CodecTermCache.WAYS);
+    for (int i = 0; i < CodecTermCache.WAYS; i++) {
+      cache.put(i, "term" + i);
+    }
+    for (int i = 0; i < CodecTermCache.WAYS; i++) {
+      assertEquals("colliding term " + i, "term" + i, cache.get(i));
+    }
+    // all terms hit except the last one
+    int last = CodecTermCache.WAYS - 1;
+    cache.put(last, "term" + last);
+    cache.put(100, "term100");
+    assertNull("not hit, evicted", cache.get(last));
+    for (int i = 0; i < last; i++) {
+      assertEquals("hit, kept " + i, "term" + i, cache.get(i));
+    }
+    assertEquals("new term", "term100", cache.get(100));
+    assertEquals("number", CodecTermCache.WAYS, cache.getNumber());
+    // replacing a cached term doesn't evict another one
+    cache.put(100, "term100");
+    for (int i = 0; i < last; i++) {
+      assertEquals("kept after replace " + i, "term" + i, cache.get(i));
+    }
+    assertEquals("number after replace", CodecTermCache.WAYS,
+        cache.getNumber());
+  }
+
+  /**
+   * Memory usage includes the cached terms.
+   */
+  @org.junit.Test
+  public void ramBytesUsed() {
+    CodecTermCache cache = new CodecTermCache(16);
+    long empty = cache.ramBytesUsed();
+    cache.put(1, "lemma\u0001mens");
+    assertTrue("with term", cache.ramBytesUsed() > empty);
+    assertTrue("description", cache.toString().contains("hits=0"));
+  }
+
+}
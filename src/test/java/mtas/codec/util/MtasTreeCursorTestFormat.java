@@ -0,0 +1,448 @@
+package mtas.codec.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RAMDirectory;
+
+import mtas.analysis.token.MtasToken;
+import mtas.analysis.token.MtasTokenString;
+import mtas.codec.tree.IntervalRBTree;
+import mtas.codec.tree.IntervalTreeNodeData;
+import mtas.codec.tree.MtasFixedWidthTree;
+import mtas.codec.tree.MtasRBTree;
+import mtas.codec.tree.MtasTree;
+import mtas.codec.tree.MtasTreeNode;
+import mtas.codec.tree.MtasTreeNodeId;
+import mtas.codec.util.CodecSearchTree.MtasTreeHit;
+import mtas.codec.util.MtasTreeCursor.MtasTreeHitBuffer;
+
+/**
+ * The Class MtasTreeCursorTestFormat. Trees are stored as
+ * {@link MtasFixedWidthTree}, and with variable length nodes as written by
+ * version {@value mtas.codec.MtasCodecPostingsFormat#VERSION_START} of the
+ * codec, and both are searched and compared with the stored nodes.
+ */
+public class MtasTreeCursorTestFormat {
+
+  /** The Constant NUMBER_OF_POSITIONS. */
+  private static final int NUMBER_OF_POSITIONS = 60;
+
+  /** The Constant REF_APPROX_OFFSET. */
+  private static final long REF_APPROX_OFFSET = 1000;
+
+  /** The Constant REQUIRED_ADDITIONAL_IDS. */
+  private static final List<Integer> REQUIRED_ADDITIONAL_IDS = Arrays
+      .asList(1, 3, 5);
+
+  /**
+   * Position trees, with additional ids.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void positionTree() throws IOException {
+    Random random = new Random(42);
+    MtasRBTree tree = new MtasRBTree(false, true);
+    for (MtasToken token : createTokens(random, 300)) {
+      tree.addPositionAndObjectFromToken(token);
+    }
+    compare(tree, random);
+  }
+
+  /**
+   * Parent trees, with additional ids.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void parentTree() throws IOException {
+    Random random = new Random(43);
+    MtasRBTree tree = new MtasRBTree(false, true);
+    for (MtasToken token : createTokens(random, 300)) {
+      tree.addParentFromToken(token);
+    }
+    compare(tree, random);
+  }
+
+  /**
+   * Single point trees for document ids, including advancing to the next
+   * document.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void docIdTree() throws IOException {
+    Random random = new Random(44);
+    MtasRBTree tree = new MtasRBTree(true, false);
+    List<Integer> docIds = new ArrayList<>();
+    for (int docId = 0; docId < NUMBER_OF_POSITIONS; docId++) {
+      if (random.nextInt(3) == 0) {
+        docIds.add(docId);
+        tree.addIdFromDoc(docId, REF_APPROX_OFFSET + 100L * docId);
+      }
+    }
+    compare(tree, random);
+    try (Directory directory = new RAMDirectory()) {
+      long[] treeRefs = store(directory, tree);
+      try (IndexInput in = directory.openInput("tree", IOContext.DEFAULT)) {
+        for (long treeRef : treeRefs) {
+          for (int position = 0; position <= NUMBER_OF_POSITIONS; position++) {
+            List<String> expected = new ArrayList<>();
+            for (int docId : docIds) {
+              if (docId >= position) {
+                expected.add(docId + "-" + docId + ":"
+                    + (REF_APPROX_OFFSET + 100L * docId) + ",0,0");
+                break;
+              }
+            }
+            assertEquals("advance to " + position, expected,
+                toList(CodecSearchTree.advanceMtasTree(position, in, treeRef,
+                    REF_APPROX_OFFSET)));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Empty trees.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void emptyTree() throws IOException {
+    compare(new MtasRBTree(false, true), new Random(45));
+  }
+
+  /**
+   * Store the tree in both formats and compare searches for all ranges of
+   * positions, and searches with an interval tree, with the stored nodes.
+   *
+   * @param tree the tree
+   * @param random the random
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void compare(MtasTree<?> tree, Random random)
+      throws IOException {
+    List<long[]> objects = getObjects(tree);
+    try (Directory directory = new RAMDirectory()) {
+      long[] treeRefs = store(directory, tree);
+      try (IndexInput in = directory.openInput("tree", IOContext.DEFAULT)) {
+        for (int t = 0; t < treeRefs.length; t++) {
+          String name = t == 0 ? "fixed width" : "variable length";
+          MtasTreeCursor cursor = new MtasTreeCursor(in, treeRefs[t],
+              REF_APPROX_OFFSET);
+          assertEquals(name + " single point", tree.isSinglePoint(),
+              cursor.isSinglePoint());
+          assertEquals(name + " additional id", tree.isStorePrefixAndTermRef(),
+              cursor.isStoreAdditionalId());
+          // small buffer, filled more than once for most searches
+          MtasTreeHitBuffer buffer = new MtasTreeHitBuffer(3);
+          int total = 0;
+          for (int start = -1; start <= NUMBER_OF_POSITIONS + 5; start++) {
+            for (int end = start - 1; end <= NUMBER_OF_POSITIONS + 5; end++) {
+              String range = name + " " + start + "-" + end;
+              List<String> expected = getExpected(objects, start, end, true,
+                  null);
+              List<String> hits = new ArrayList<>();
+              int previousStart = Integer.MIN_VALUE;
+              cursor.search(start, end);
+              while (cursor.next(buffer) > 0) {
+                for (int i = 0; i < buffer.size; i++) {
+                  assertTrue(range + " order",
+                      buffer.startPositions[i] >= previousStart);
+                  previousStart = buffer.startPositions[i];
+                  hits.add(toString(buffer.startPositions[i],
+                      buffer.endPositions[i], buffer.refs[i],
+                      buffer.additionalIds[i], buffer.additionalRefs[i]));
+                }
+              }
+              Collections.sort(hits);
+              assertEquals(range, expected, hits);
+              assertEquals(range + " search", expected,
+                  toList(CodecSearchTree.searchMtasTree(start, end, in,
+                      treeRefs[t], REF_APPROX_OFFSET)));
+              total += hits.size();
+            }
+          }
+          if (!objects.isEmpty()) {
+            assertFalse(name + " no hits", total == 0);
+          }
+          compareIntervalTree(objects, in, treeRefs[t], null,
+              tree.isStorePrefixAndTermRef(), random, name);
+          compareIntervalTree(objects, in, treeRefs[t],
+              REQUIRED_ADDITIONAL_IDS, tree.isStorePrefixAndTermRef(), random,
+              name);
+        }
+      }
+    }
+  }
+
+  /**
+   * Compare the hits of a search with an interval tree of random ranges with
+   * the stored nodes.
+   *
+   * @param objects the objects
+   * @param in the in
+   * @param treeRef the tree ref
+   * @param additionalIds the required additional ids
+   * @param storeAdditionalId the store additional id
+   * @param random the random
+   * @param name the name
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void compareIntervalTree(List<long[]> objects,
+      IndexInput in, long treeRef, Collection<Integer> additionalIds,
+      boolean storeAdditionalId, Random random, String name)
+      throws IOException {
+    ArrayList<IntervalTreeNodeData<String>> ranges = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      int start = random.nextInt(NUMBER_OF_POSITIONS + 10);
+      int end = start + random.nextInt(random.nextInt(5) == 0 ? 30 : 3);
+      ranges.add(new IntervalTreeNodeData<>(start, end, start, end));
+    }
+    // the same range more than once
+    ranges.add(new IntervalTreeNodeData<>(ranges.get(0).start,
+        ranges.get(0).end, ranges.get(0).start, ranges.get(0).end));
+    CodecSearchTree.searchMtasTreeWithIntervalTree(additionalIds,
+        new IntervalRBTree<>(ranges), in, treeRef, REF_APPROX_OFFSET);
+    // additional ids are only required and returned if stored
+    boolean filter = additionalIds != null && storeAdditionalId;
+    for (IntervalTreeNodeData<String> range : ranges) {
+      List<String> expected = getExpected(objects, range.start, range.end,
+          filter, filter ? additionalIds : null);
+      assertEquals(name + " interval " + range.start + "-" + range.end
+          + " with " + additionalIds, expected, toList(range.list));
+    }
+  }
+
+  /**
+   * Creates random tokens, including tokens with the same id and positions.
+   *
+   * @param random the random
+   * @param number the number
+   * @return the tokens
+   */
+  private static List<MtasToken> createTokens(Random random, int number) {
+    List<MtasToken> tokens = new ArrayList<>();
+    long ref = REF_APPROX_OFFSET;
+    for (int id = 0; id < number; id++) {
+      MtasToken token = new MtasTokenString(id, "t" + id);
+      int start = random.nextInt(NUMBER_OF_POSITIONS);
+      int type = random.nextInt(3);
+      if (type == 0) {
+        token.addPosition(start);
+      } else if (type == 1) {
+        token.addPositionRange(start, start + random.nextInt(8));
+      } else {
+        token.addPositions(new int[] { start, start + 2, start + 3 });
+      }
+      if (id > 0) {
+        token.setParentId(random.nextInt(id));
+      }
+      // large references for wide values in fixed width trees
+      ref += 1 + random.nextInt(random.nextInt(10) == 0 ? 100000 : 20);
+      token.setTokenRef(ref);
+      token.setTermRef((long) random.nextInt(random.nextBoolean() ? 100
+          : Integer.MAX_VALUE));
+      token.setPrefixId(random.nextInt(8));
+      tokens.add(token);
+    }
+    return tokens;
+  }
+
+  /**
+   * Store the tree as {@link MtasFixedWidthTree} and with variable length
+   * nodes.
+   *
+   * @param directory the directory
+   * @param tree the tree
+   * @return the file pointers of both trees
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static long[] store(Directory directory, MtasTree<?> tree)
+      throws IOException {
+    long[] treeRefs = new long[2];
+    try (IndexOutput out = directory.createOutput("tree", IOContext.DEFAULT)) {
+      out.writeString("header");
+      treeRefs[0] = MtasFixedWidthTree.store(tree, out, REF_APPROX_OFFSET);
+      out.writeString("other data");
+      treeRefs[1] = storeVariableLength(tree.close(), tree.isSinglePoint(),
+          tree.isStorePrefixAndTermRef(), out, null, REF_APPROX_OFFSET);
+    }
+    return treeRefs;
+  }
+
+  /**
+   * Store a (sub)tree with variable length nodes, as written by version
+   * {@value mtas.codec.MtasCodecPostingsFormat#VERSION_START} of the codec:
+   * children before their parent, the root last, with the header written
+   * before the root.
+   *
+   * @param node the node
+   * @param isSinglePoint the is single point
+   * @param storeAdditionalInformation the store additional information
+   * @param out the out
+   * @param nodeRefApproxOffset the node ref approx offset, null for the root
+   * @param refApproxOffset the ref approx offset
+   * @return the file pointer of the node
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static Long storeVariableLength(MtasTreeNode<?> node,
+      boolean isSinglePoint, boolean storeAdditionalInformation,
+      IndexOutput out, Long nodeRefApproxOffset, long refApproxOffset)
+      throws IOException {
+    Long localNodeRefApproxOffset = nodeRefApproxOffset;
+    boolean isRoot = false;
+    if (localNodeRefApproxOffset == null) {
+      localNodeRefApproxOffset = out.getFilePointer();
+      isRoot = true;
+    }
+    Long fpLeftChild = null;
+    Long fpRightChild = null;
+    if (node.leftChild != null) {
+      fpLeftChild = storeVariableLength(node.leftChild, isSinglePoint,
+          storeAdditionalInformation, out, localNodeRefApproxOffset,
+          refApproxOffset);
+    }
+    if (node.rightChild != null) {
+      fpRightChild = storeVariableLength(node.rightChild, isSinglePoint,
+          storeAdditionalInformation, out, localNodeRefApproxOffset,
+          refApproxOffset);
+    }
+    long fp = out.getFilePointer();
+    if (isRoot) {
+      out.writeVLong(localNodeRefApproxOffset);
+      byte flag = 0;
+      if (isSinglePoint) {
+        flag |= MtasTree.SINGLE_POSITION_TREE;
+      }
+      if (storeAdditionalInformation) {
+        flag |= MtasTree.STORE_ADDITIONAL_ID;
+      }
+      out.writeByte(flag);
+    }
+    out.writeVInt(node.left);
+    out.writeVInt(node.right);
+    out.writeVInt(node.max);
+    out.writeVLong((fpLeftChild == null ? fp : fpLeftChild)
+        - localNodeRefApproxOffset);
+    out.writeVLong((fpRightChild == null ? fp : fpRightChild)
+        - localNodeRefApproxOffset);
+    if (!isSinglePoint) {
+      out.writeVInt(node.ids.size());
+    }
+    List<MtasTreeNodeId> nodeIds = new ArrayList<>(node.ids.values());
+    Collections.sort(nodeIds);
+    long objectRefCorrectedPrevious = 0;
+    for (MtasTreeNodeId nodeId : nodeIds) {
+      long objectRefCorrected = nodeId.ref - refApproxOffset;
+      out.writeVLong(objectRefCorrected - objectRefCorrectedPrevious);
+      objectRefCorrectedPrevious = objectRefCorrected;
+      if (storeAdditionalInformation) {
+        out.writeVInt(nodeId.additionalId);
+        out.writeVLong(nodeId.additionalRef);
+      }
+    }
+    return fp;
+  }
+
+  /**
+   * Gets the objects of all nodes of the closed tree.
+   *
+   * @param tree the tree
+   * @return the objects, as left, right, ref, additional id and additional
+   *         ref, with zero for values that are not stored
+   */
+  private static List<long[]> getObjects(MtasTree<?> tree) {
+    List<long[]> objects = new ArrayList<>();
+    List<MtasTreeNode<?>> checkList = new ArrayList<>();
+    checkList.add(tree.close());
+    long stored = tree.isStorePrefixAndTermRef() ? 1 : 0;
+    while (!checkList.isEmpty()) {
+      MtasTreeNode<?> node = checkList.remove(checkList.size() - 1);
+      for (MtasTreeNodeId nodeId : node.ids.values()) {
+        objects.add(new long[] { node.left, node.right, nodeId.ref,
+            stored * nodeId.additionalId, stored * nodeId.additionalRef });
+      }
+      if (node.leftChild != null) {
+        checkList.add(node.leftChild);
+      }
+      if (node.rightChild != null) {
+        checkList.add(node.rightChild);
+      }
+    }
+    return objects;
+  }
+
+  /**
+   * Gets the sorted expected hits for a range of positions.
+   *
+   * @param objects the objects
+   * @param start the start
+   * @param end the end
+   * @param additional include the additional id and ref
+   * @param additionalIds the required additional ids, null if not required
+   * @return the hits
+   */
+  private static List<String> getExpected(List<long[]> objects, int start,
+      int end, boolean additional, Collection<Integer> additionalIds) {
+    List<String> list = new ArrayList<>();
+    for (long[] object : objects) {
+      if (object[0] <= end && object[1] >= start && (additionalIds == null
+          || additionalIds.contains((int) object[3]))) {
+        list.add(toString((int) object[0], (int) object[1], object[2],
+            additional ? (int) object[3] : 0, additional ? object[4] : 0));
+      }
+    }
+    Collections.sort(list);
+    return list;
+  }
+
+  /**
+   * Gets the sorted hits as strings.
+   *
+   * @param hits the hits
+   * @return the list
+   */
+  private static List<String> toList(List<? extends MtasTreeHit<?>> hits) {
+    List<String> list = new ArrayList<>();
+    for (MtasTreeHit<?> hit : hits) {
+      list.add(toString(hit.startPosition, hit.endPosition, hit.ref,
+          hit.additionalId, hit.additionalRef));
+    }
+    Collections.sort(list);
+    return list;
+  }
+
+  /**
+   * Hit as string.
+   *
+   * @param startPosition the start position
+   * @param endPosition the end position
+   * @param ref the ref
+   * @param additionalId the additional id
+   * @param additionalRef the additional ref
+   * @return the string
+   */
+  private static String toString(int startPosition, int endPosition, long ref,
+      int additionalId, long additionalRef) {
+    return startPosition + "-" + endPosition + ":" + ref + "," + additionalId
+        + "," + additionalRef;
+  }
+
+}
@@ -0,0 +1,337 @@
+package mtas.codec.util.collector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import mtas.codec.util.CodecUtil;
+import mtas.codec.util.DataCollector;
+
+/**
+ * The Class MtasDataCollectorTestSerialization.
+ */
+public class MtasDataCollectorTestSerialization {
+
+  /** The Constant NUMBER_OF_KEYS. */
+  private static final int NUMBER_OF_KEYS = 500;
+
+  /**
+   * Round trip of long collectors.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws ClassNotFoundException the class not found exception
+   */
+  @org.junit.Test
+  public void longCollectors() throws IOException, ClassNotFoundException {
+    for (String statsType : new String[] { CodecUtil.STATS_BASIC,
+        CodecUtil.STATS_ADVANCED, CodecUtil.STATS_FULL }) {
+      for (String collectorType : new String[] {
+          DataCollector.COLLECTOR_TYPE_LIST,
+          DataCollector.COLLECTOR_TYPE_DATA }) {
+        roundTrip(collectorType, CodecUtil.DATA_TYPE_LONG, statsType);
+      }
+    }
+  }
+
+  /**
+   * Round trip of double collectors.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws ClassNotFoundException the class not found exception
+   */
+  @org.junit.Test
+  public void doubleCollectors() throws IOException, ClassNotFoundException {
+    for (String statsType : new String[] { CodecUtil.STATS_BASIC,
+        CodecUtil.STATS_ADVANCED, CodecUtil.STATS_FULL }) {
+      for (String collectorType : new String[] {
+          DataCollector.COLLECTOR_TYPE_LIST,
+          DataCollector.COLLECTOR_TYPE_DATA }) {
+        roundTrip(collectorType, CodecUtil.DATA_TYPE_DOUBLE, statsType);
+      }
+    }
+  }
+
+  /**
+   * Collectors with sub collectors keep their nested results and totals.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws ClassNotFoundException the class not found exception
+   */
+  @org.junit.Test
+  public void subCollectors() throws IOException, ClassNotFoundException {
+    SortedSet<String> statsItems = new TreeSet<>(
+        Arrays.asList(CodecUtil.STATS_TYPE_N, CodecUtil.STATS_TYPE_SUM));
+    @SuppressWarnings("unchecked")
+    SortedSet<String>[] subStatsItems = new SortedSet[] { statsItems };
+    MtasDataCollector<?, ?> collector = DataCollector.getCollector(
+        DataCollector.COLLECTOR_TYPE_LIST, CodecUtil.DATA_TYPE_LONG,
+        CodecUtil.STATS_BASIC, statsItems, CodecUtil.SORT_TERM,
+        CodecUtil.SORT_ASC, 0, NUMBER_OF_KEYS,
+        new String[] { DataCollector.COLLECTOR_TYPE_LIST },
+        new String[] { CodecUtil.DATA_TYPE_DOUBLE },
+        new String[] { CodecUtil.STATS_ADVANCED }, subStatsItems,
+        new String[] { CodecUtil.SORT_TERM },
+        new String[] { CodecUtil.SORT_DESC }, new Integer[] { 0 },
+        new Integer[] { 10 }, null, null);
+    collector.setWithTotal();
+    collector.initNewList(NUMBER_OF_KEYS);
+    for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+      MtasDataCollector<?, ?> subCollector = collector
+          .add("key" + (1000 + i), new long[] { i }, 1);
+      subCollector.initNewList(3);
+      for (int j = 0; j <= i % 3; j++) {
+        subCollector.add("sub" + j, new double[] { i * 0.5 + j }, 1);
+      }
+      subCollector.closeNewList();
+    }
+    collector.closeNewList();
+    Map<String, Map<String, Object>> expected = getResult(collector);
+    MtasDataCollector<?, ?> javaCollector = deserialize(serialize(collector));
+    MtasDataCollector<?, ?> explicitCollector = read(write(collector));
+    assertTrue("total", explicitCollector.withTotal());
+    assertEquals("default form", expected, getResult(javaCollector));
+    assertEquals("explicit form", expected, getResult(explicitCollector));
+  }
+
+  /**
+   * A collector written more than once is read as the same collector.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void references() throws IOException {
+    MtasDataCollector<?, ?> collector = createCollector(
+        DataCollector.COLLECTOR_TYPE_LIST, CodecUtil.DATA_TYPE_LONG,
+        CodecUtil.STATS_BASIC);
+    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    try (DataOutputStream dataOutputStream = new DataOutputStream(
+        byteArrayOutputStream)) {
+      MtasDataCollectorOutput out = new MtasDataCollectorOutput(
+          dataOutputStream);
+      out.writeCollector(collector);
+      out.writeCollector(null);
+      out.writeCollector(collector);
+    }
+    byte[] bytes = byteArrayOutputStream.toByteArray();
+    MtasDataCollectorInput in = new MtasDataCollectorInput(
+        new DataInputStream(new ByteArrayInputStream(bytes)));
+    MtasDataCollector<?, ?> first = in.readCollector();
+    assertNull("null", in.readCollector());
+    assertSame("reference", first, in.readCollector());
+    assertEquals("result", getResult(collector), getResult(first));
+    // truncated data
+    MtasDataCollectorInput truncatedIn = new MtasDataCollectorInput(
+        new DataInputStream(
+            new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length / 2))));
+    try {
+      truncatedIn.readCollector();
+      throw new AssertionError("truncated data accepted");
+    } catch (EOFException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Serialize a filled collector, write it in the explicit format, and
+   * compare the results of the restored collectors.
+   *
+   * @param collectorType the collector type
+   * @param dataType the data type
+   * @param statsType the stats type
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws ClassNotFoundException the class not found exception
+   */
+  private static void roundTrip(String collectorType, String dataType,
+      String statsType) throws IOException, ClassNotFoundException {
+    String name = collectorType + " " + dataType + " " + statsType;
+    MtasDataCollector<?, ?> collector = createCollector(collectorType,
+        dataType, statsType);
+    byte[] javaBytes = serialize(collector);
+    byte[] explicitBytes = write(collector);
+    Map<String, Map<String, Object>> expected = getResult(collector);
+    assertEquals(name + ": default form", expected,
+        getResult(deserialize(javaBytes)));
+    assertEquals(name + ": explicit form", expected,
+        getResult(read(explicitBytes)));
+    assertTrue(name + ": explicit form not smaller",
+        explicitBytes.length < javaBytes.length);
+  }
+
+  /**
+   * Creates a filled collector, with arrays larger than the number of keys.
+   *
+   * @param collectorType the collector type
+   * @param dataType the data type
+   * @param statsType the stats type
+   * @return the mtas data collector
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static MtasDataCollector<?, ?> createCollector(String collectorType,
+      String dataType, String statsType) throws IOException {
+    SortedSet<String> statsItems = new TreeSet<>(Arrays.asList(
+        CodecUtil.STATS_TYPE_N, CodecUtil.STATS_TYPE_SUM,
+        CodecUtil.STATS_TYPE_MEAN));
+    if (!statsType.equals(CodecUtil.STATS_BASIC)) {
+      statsItems.addAll(Arrays.asList(CodecUtil.STATS_TYPE_MIN,
+          CodecUtil.STATS_TYPE_MAX, CodecUtil.STATS_TYPE_SUMSQ));
+    }
+    if (statsType.equals(CodecUtil.STATS_FULL)) {
+      statsItems.add(CodecUtil.STATS_TYPE_MEDIAN);
+    }
+    MtasDataCollector<?, ?> collector = DataCollector.getCollector(
+        collectorType, dataType, statsType, statsItems, CodecUtil.SORT_TERM,
+        CodecUtil.SORT_ASC, 0, NUMBER_OF_KEYS, null, null);
+    Random random = new Random(42);
+    boolean list = collectorType.equals(DataCollector.COLLECTOR_TYPE_LIST);
+    collector.initNewList(2 * NUMBER_OF_KEYS);
+    for (int i = 0; i < (list ? NUMBER_OF_KEYS : 1); i++) {
+      String key = "key" + i;
+      int number = 1 + random.nextInt(5);
+      if (dataType.equals(CodecUtil.DATA_TYPE_LONG)) {
+        long[] values = new long[number];
+        for (int j = 0; j < number; j++) {
+          values[j] = random.nextInt(1000) - 10;
+        }
+        if (list) {
+          collector.add(key, values, number);
+        } else {
+          collector.add(values, number);
+        }
+      } else {
+        double[] values = new double[number];
+        for (int j = 0; j < number; j++) {
+          values[j] = random.nextDouble() * 100;
+        }
+        if (list) {
+          collector.add(key, values, number);
+        } else {
+          collector.add(values, number);
+        }
+      }
+    }
+    collector.closeNewList();
+    return collector;
+  }
+
+  /**
+   * Serialize.
+   *
+   * @param collector the collector
+   * @return the byte[]
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static byte[] serialize(MtasDataCollector<?, ?> collector)
+      throws IOException {
+    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(
+        byteArrayOutputStream)) {
+      objectOutputStream.writeObject(collector);
+    }
+    return byteArrayOutputStream.toByteArray();
+  }
+
+  /**
+   * Deserialize.
+   *
+   * @param bytes the bytes
+   * @return the mtas data collector
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws ClassNotFoundException the class not found exception
+   */
+  private static MtasDataCollector<?, ?> deserialize(byte[] bytes)
+      throws IOException, ClassNotFoundException {
+    try (ObjectInputStream objectInputStream = new ObjectInputStream(
+        new ByteArrayInputStream(bytes))) {
+      return (MtasDataCollector<?, ?>) objectInputStream.readObject();
+    }
+  }
+
+  /**
+   * Write in the explicit format.
+   *
+   * @param collector the collector
+   * @return the byte[]
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static byte[] write(MtasDataCollector<?, ?> collector)
+      throws IOException {
+    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    try (DataOutputStream dataOutputStream = new DataOutputStream(
+        byteArrayOutputStream)) {
+      new MtasDataCollectorOutput(dataOutputStream).writeCollector(collector);
+    }
+    return byteArrayOutputStream.toByteArray();
+  }
+
+  /**
+   * Read in the explicit format.
+   *
+   * @param bytes the bytes
+   * @return the mtas data collector
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static MtasDataCollector<?, ?> read(byte[] bytes)
+      throws IOException {
+    MtasDataCollectorInput in = new MtasDataCollectorInput(
+        new DataInputStream(new ByteArrayInputStream(bytes)));
+    return in.readCollector();
+  }
+
+  /**
+   * Gets the result by key.
+   *
+   * @param collector the collector
+   * @return the result
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static Map<String, Map<String, Object>> getResult(
+      MtasDataCollector<?, ?> collector) throws IOException {
+    Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+    MtasDataCollectorResult<?, ?> collectorResult = collector.getResult();
+    if (collector.getCollectorType()
+        .equals(DataCollector.COLLECTOR_TYPE_LIST)) {
+      for (Entry<String, ? extends MtasDataItem<?, ?>> entry : collectorResult
+          .getList().entrySet()) {
+        result.put(entry.getKey(), getItemResult(entry.getValue()));
+      }
+    } else {
+      result.put(null, getItemResult(collectorResult.getData()));
+    }
+    return result;
+  }
+
+  /**
+   * Gets the result of an item, with the results of its sub collector.
+   *
+   * @param item the item
+   * @return the result
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static Map<String, Object> getItemResult(MtasDataItem<?, ?> item)
+      throws IOException {
+    Map<String, Object> result = item.rewrite(false);
+    if (item.getSub() != null) {
+      result.put("sub", getResult(item.getSub()));
+      result.put("subSize", item.getSub().getSize());
+    }
+    return result;
+  }
+
+}
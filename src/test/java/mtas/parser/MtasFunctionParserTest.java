@@ -8,6 +8,7 @@ import java.io.StringReader;
 import java.util.Arrays;
 import java.util.Random;
 
+import mtas.codec.util.CodecUtil;
 import mtas.parser.function.MtasFunctionParser;
 import mtas.parser.function.ParseException;
 import mtas.parser.function.util.MtasFunctionParserFunction;
@@ -23,6 +24,21 @@ public class MtasFunctionParserTest {
   /** The generator. */
   Random generator = new Random();
 
+  /**
+   * The Interface Reference, computing the expected value of a function.
+   */
+  private interface Reference {
+
+    /**
+     * Compute.
+     *
+     * @param args the args
+     * @param n the n
+     * @return the value, or null if undefined
+     */
+    double[] compute(long[] args, long n);
+  }
+
   /**
    * Test function.
    *
@@ -386,6 +402,187 @@ public class MtasFunctionParserTest {
     }
   }
 
+  /**
+   * Basic test function columns. Functions with all operators, including
+   * <code>^</code> and division by zero, are evaluated for a column of rows
+   * and for each row separately, and compared with a left to right
+   * interpretation of the function.
+   *
+   * @throws ParseException the parse exception
+   */
+  @org.junit.Test
+  public void basicTestFunctionColumns() throws ParseException {
+    for (int i = 0; i < 1000; i++) {
+      int first = generator.nextInt(4);
+      int[] operators = new int[5];
+      int[] operands = new int[5];
+      StringBuilder function = new StringBuilder(Integer.toString(first));
+      for (int j = 0; j < operators.length; j++) {
+        operators[j] = generator.nextInt(5);
+        // argument, n or constant
+        operands[j] = generator.nextInt(12);
+        function.append(" " + getOperator(operators[j]) + " ");
+        if (operands[j] < 10) {
+          function.append("$q" + operands[j]);
+        } else if (operands[j] == 10) {
+          function.append("$n");
+        } else {
+          operands[j] = 11 + generator.nextInt(4);
+          function.append(operands[j] - 11);
+        }
+      }
+      MtasFunctionParserFunction pf = new MtasFunctionParser(
+          new BufferedReader(new StringReader(function.toString()))).parse();
+      testColumns(pf, 1 + generator.nextInt(50),
+          (args, n) -> interpret(pf.getType(), first, operators, operands,
+              args, n));
+    }
+  }
+
+  /**
+   * Basic test function columns with sub functions, with <code>^</code> as
+   * exclusive or in long functions and as power in double functions.
+   *
+   * @throws ParseException the parse exception
+   */
+  @org.junit.Test
+  public void basicTestFunctionColumnsSubFunctions() throws ParseException {
+    testColumns("($q0 ^ $q1) * $q2 - $n", CodecUtil.DATA_TYPE_LONG,
+        (args, n) -> new double[] { ((args[0] ^ args[1]) * args[2]) - n });
+    testColumns("($q0 ^ $q1) / $q2", CodecUtil.DATA_TYPE_DOUBLE,
+        (args, n) -> args[2] == 0 ? null
+            : new double[] { (double) (args[0] ^ args[1]) / args[2] });
+    testColumns("$q0 ^ ($q1 / $q2) + $n", CodecUtil.DATA_TYPE_DOUBLE,
+        (args, n) -> args[2] == 0 ? null
+            : new double[] {
+                Math.pow(args[0], (double) args[1] / args[2]) + n });
+    testColumns("100 / (2 - 2) + $q0", CodecUtil.DATA_TYPE_DOUBLE,
+        (args, n) -> null);
+  }
+
+  /**
+   * Test columns for a function.
+   *
+   * @param function the function
+   * @param type the expected type
+   * @param reference the reference
+   * @throws ParseException the parse exception
+   */
+  private void testColumns(String function, String type, Reference reference)
+      throws ParseException {
+    MtasFunctionParserFunction pf = new MtasFunctionParser(
+        new BufferedReader(new StringReader(function))).parse();
+    assertEquals(function, type, pf.getType());
+    for (int i = 0; i < 100; i++) {
+      testColumns(pf, 1 + generator.nextInt(50), reference);
+    }
+  }
+
+  /**
+   * Test the evaluation of a column of random rows and of each row
+   * separately.
+   *
+   * @param pf the pf
+   * @param numberOfRows the number of rows
+   * @param reference the reference, null for rows without value
+   */
+  private void testColumns(MtasFunctionParserFunction pf, int numberOfRows,
+      Reference reference) {
+    long[][] args = new long[numberOfRows][];
+    long[] n = new long[numberOfRows];
+    for (int j = 0; j < numberOfRows; j++) {
+      args[j] = getArgs(10, -3, 3);
+      n[j] = getN(0, 3);
+    }
+    boolean[] valid = new boolean[numberOfRows];
+    long[] valuesLong = new long[numberOfRows];
+    double[] valuesDouble = new double[numberOfRows];
+    boolean isLong = pf.getType().equals(CodecUtil.DATA_TYPE_LONG);
+    if (isLong) {
+      pf.getValuesLong(args, n, numberOfRows, valuesLong, valid);
+    } else {
+      pf.getValuesDouble(args, n, numberOfRows, valuesDouble, valid);
+    }
+    for (int j = 0; j < numberOfRows; j++) {
+      String message = pf + "\tn:" + n[j] + "\targs:"
+          + Arrays.toString(args[j]);
+      double[] expected = reference.compute(args[j], n[j]);
+      assertEquals(message + " column valid", expected != null, valid[j]);
+      Double single;
+      try {
+        single = isLong ? (double) pf.getValueLong(args[j], n[j])
+            : pf.getValueDouble(args[j], n[j]);
+      } catch (IOException e) {
+        single = null;
+      }
+      assertEquals(message + " row valid", expected != null, single != null);
+      if (expected != null) {
+        if (isLong) {
+          assertEquals(message + " column", (long) expected[0], valuesLong[j]);
+        } else {
+          assertEquals(message + " column", expected[0], valuesDouble[j], 0);
+        }
+        assertEquals(message + " row", expected[0], single, 0);
+      }
+    }
+  }
+
+  /**
+   * Interpret a function from left to right.
+   *
+   * @param type the type
+   * @param first the first constant
+   * @param operators the operators
+   * @param operands the operands, arguments below 10, n for 10 and constants
+   *          plus 11 above
+   * @param args the args
+   * @param n the n
+   * @return the value, or null if undefined
+   */
+  private static double[] interpret(String type, long first, int[] operators,
+      int[] operands, long[] args, long n) {
+    if (type.equals(CodecUtil.DATA_TYPE_LONG)) {
+      long value = first;
+      for (int j = 0; j < operators.length; j++) {
+        long v = operands[j] < 10 ? args[operands[j]]
+            : (operands[j] == 10 ? n : operands[j] - 11);
+        if (operators[j] == 0) {
+          value += v;
+        } else if (operators[j] == 1) {
+          value -= v;
+        } else if (operators[j] == 2) {
+          value *= v;
+        } else if (operators[j] == 4) {
+          value ^= v;
+        } else {
+          fail("unexpected operator in long function");
+        }
+      }
+      return new double[] { value };
+    } else {
+      double value = first;
+      for (int j = 0; j < operators.length; j++) {
+        double v = operands[j] < 10 ? args[operands[j]]
+            : (operands[j] == 10 ? n : operands[j] - 11);
+        if (operators[j] == 0) {
+          value += v;
+        } else if (operators[j] == 1) {
+          value -= v;
+        } else if (operators[j] == 2) {
+          value *= v;
+        } else if (operators[j] == 3) {
+          if (v == 0) {
+            return null;
+          }
+          value /= v;
+        } else {
+          value = Math.pow(value, v);
+        }
+      }
+      return new double[] { value };
+    }
+  }
+
   /**
    * Compute.
    *
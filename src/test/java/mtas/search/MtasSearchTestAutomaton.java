@@ -0,0 +1,258 @@
+package mtas.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.AutomatonQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.RegexpQuery;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.search.spans.SpanWeight;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+
+import mtas.analysis.token.MtasToken;
+import mtas.search.spans.MtasSpanMatchNoneQuery;
+import mtas.search.spans.MtasSpanOrQuery;
+import mtas.search.spans.MtasSpanRegexpQuery;
+import mtas.search.spans.MtasSpanTermQuery;
+import mtas.search.spans.MtasSpanWildcardQuery;
+import mtas.search.spans.util.MtasDisabledTwoPhaseIteratorSpanQuery;
+import mtas.search.spans.util.MtasSpanQuery;
+
+/**
+ * The Class MtasSearchTestAutomaton.
+ */
+public class MtasSearchTestAutomaton {
+
+  /** The Constant FIELD_ID. */
+  private static final String FIELD_ID = "id";
+
+  /** The Constant FIELD_CONTENT. */
+  private static final String FIELD_CONTENT = "content";
+
+  /** The directory. */
+  private static Directory directory;
+
+  /**
+   * Initialize.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.BeforeClass
+  public static void initialize() throws IOException {
+    Path dataPath = Paths.get("src" + File.separator + "test" + File.separator
+        + "resources" + File.separator + "data");
+    Map<String, String> paramsCharFilterMtas = new HashMap<>();
+    paramsCharFilterMtas.put("type", "file");
+    Map<String, String> paramsTokenizer = new HashMap<>();
+    paramsTokenizer.put("configFile", dataPath.resolve("conf")
+        .resolve("folia.xml").toAbsolutePath().toString());
+    Analyzer mtasAnalyzer = CustomAnalyzer
+        .builder(Paths.get("docker").toAbsolutePath())
+        .addCharFilter("mtas", paramsCharFilterMtas)
+        .withTokenizer("mtas", paramsTokenizer).build();
+    Map<String, Analyzer> analyzerPerField = new HashMap<>();
+    analyzerPerField.put(FIELD_CONTENT, mtasAnalyzer);
+    IndexWriterConfig config = new IndexWriterConfig(
+        new PerFieldAnalyzerWrapper(new StandardAnalyzer(),
+            analyzerPerField));
+    config.setUseCompoundFile(false);
+    config.setCodec(Codec.forName("MtasCodec"));
+    directory = new RAMDirectory();
+    try (IndexWriter w = new IndexWriter(directory, config)) {
+      int id = 0;
+      for (String file : new String[] { "beets1.xml.gz", "beets2.xml.gz",
+          "beets3.xml.gz" }) {
+        Document doc = new Document();
+        doc.add(new StringField(FIELD_ID, Integer.toString(id++),
+            Field.Store.YES));
+        doc.add(new TextField(FIELD_CONTENT, dataPath.resolve("resources")
+            .resolve(file).toAbsolutePath().toString(), Field.Store.YES));
+        w.addDocument(doc);
+        // multiple segments
+        w.commit();
+      }
+    }
+  }
+
+  /**
+   * Regexp queries.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void regexp() throws IOException {
+    for (String value : new String[] { "de.*", "[a-z]{3}", ".*en" }) {
+      for (boolean singlePosition : new boolean[] { true, false }) {
+        Term term = new Term(FIELD_CONTENT,
+            "t" + MtasToken.DELIMITER + value + "\u0000*");
+        compare(new MtasSpanRegexpQuery(term, singlePosition),
+            new RegexpQuery(term), singlePosition);
+      }
+    }
+    Term term = new Term(FIELD_CONTENT,
+        "(s|p|div)" + MtasToken.DELIMITER + ".*");
+    compare(new MtasSpanRegexpQuery(term, false), new RegexpQuery(term),
+        false);
+  }
+
+  /**
+   * Wildcard queries.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void wildcard() throws IOException {
+    for (String value : new String[] { "de*", "?e*", "*en" }) {
+      for (boolean singlePosition : new boolean[] { true, false }) {
+        Term term = new Term(FIELD_CONTENT, "t" + MtasToken.DELIMITER + value);
+        compare(new MtasSpanWildcardQuery(term, singlePosition),
+            new WildcardQuery(term), singlePosition);
+      }
+    }
+  }
+
+  /**
+   * Compare the hits of a query with the hits of the expansion into a
+   * {@link MtasSpanOrQuery} with a clause for each matching term, with and
+   * without two phase iterator.
+   *
+   * @param query the query
+   * @param automatonQuery the automaton query
+   * @param singlePosition the single position
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void compare(MtasSpanQuery query,
+      AutomatonQuery automatonQuery, boolean singlePosition)
+      throws IOException {
+    try (IndexReader reader = DirectoryReader.open(directory)) {
+      MtasSpanQuery expandedQuery = expand(reader, automatonQuery,
+          singlePosition);
+      List<String> expected = getHits(reader,
+          new MtasDisabledTwoPhaseIteratorSpanQuery(expandedQuery));
+      assertEquals(query.toString() + " with two phase iterator", expected,
+          getHits(reader, query));
+      assertEquals(query.toString() + " without two phase iterator", expected,
+          getHits(reader, new MtasDisabledTwoPhaseIteratorSpanQuery(query)));
+      assertEquals(query.toString() + " expanded with two phase iterator",
+          expected, getHits(reader, expandedQuery));
+    }
+  }
+
+  /**
+   * Expand into a {@link MtasSpanOrQuery} with a clause for each matching
+   * term.
+   *
+   * @param reader the reader
+   * @param automatonQuery the automaton query
+   * @param singlePosition the single position
+   * @return the mtas span query
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static MtasSpanQuery expand(IndexReader reader,
+      AutomatonQuery automatonQuery, boolean singlePosition)
+      throws IOException {
+    CompiledAutomaton compiled = new CompiledAutomaton(
+        automatonQuery.getAutomaton());
+    SortedSet<BytesRef> termList = new TreeSet<>();
+    for (LeafReaderContext context : reader.leaves()) {
+      Terms terms = context.reader().terms(FIELD_CONTENT);
+      if (terms != null) {
+        TermsEnum termsEnum = compiled.getTermsEnum(terms);
+        BytesRef bytes;
+        while ((bytes = termsEnum.next()) != null) {
+          termList.add(BytesRef.deepCopyOf(bytes));
+        }
+      }
+    }
+    if (termList.isEmpty()) {
+      return new MtasSpanMatchNoneQuery(FIELD_CONTENT);
+    }
+    MtasSpanQuery[] clauses = new MtasSpanQuery[termList.size()];
+    int i = 0;
+    for (BytesRef bytes : termList) {
+      clauses[i++] = new MtasSpanTermQuery(
+          new SpanTermQuery(new Term(FIELD_CONTENT, bytes)), singlePosition);
+    }
+    return new MtasSpanOrQuery(clauses);
+  }
+
+  /**
+   * Gets the sorted hits, using the two phase iterator if available.
+   *
+   * @param reader the reader
+   * @param query the query
+   * @return the hits
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static List<String> getHits(IndexReader reader,
+      MtasSpanQuery query) throws IOException {
+    List<String> hits = new ArrayList<>();
+    IndexSearcher searcher = new IndexSearcher(reader);
+    SpanWeight weight = query.rewrite(reader).createWeight(searcher, false,
+        0);
+    for (LeafReaderContext context : reader.leaves()) {
+      Spans spans = weight.getSpans(context, SpanWeight.Postings.POSITIONS);
+      if (spans != null) {
+        TwoPhaseIterator twoPhase = spans.asTwoPhaseIterator();
+        while (true) {
+          int docId;
+          if (twoPhase == null) {
+            docId = spans.nextDoc();
+          } else {
+            docId = twoPhase.approximation().nextDoc();
+            if (docId != Spans.NO_MORE_DOCS && !twoPhase.matches()) {
+              continue;
+            }
+          }
+          if (docId == Spans.NO_MORE_DOCS) {
+            break;
+          }
+          while (spans.nextStartPosition() != Spans.NO_MORE_POSITIONS) {
+            hits.add((context.docBase + docId) + ":" + spans.startPosition()
+                + "-" + spans.endPosition());
+          }
+        }
+      }
+    }
+    assertTrue(query.toString() + " without hits", !hits.isEmpty());
+    Collections.sort(hits);
+    return hits;
+  }
+
+}
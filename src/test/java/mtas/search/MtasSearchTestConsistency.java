@@ -14,6 +14,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.ListIterator;
@@ -1158,6 +1159,90 @@ public class MtasSearchTestConsistency {
     }
   }
 
+  /**
+   * Collect termvector sorted on sum or n with a limited number, pruned with
+   * upper bounds from the term statistics, and compare with the top of the
+   * unpruned full termvector.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws mtas.parser.function.ParseException the parse exception
+   */
+  @org.junit.Test
+  public void collectTermvectorPruned()
+      throws IOException, mtas.parser.function.ParseException {
+    try (IndexReader indexReader = DirectoryReader.open(directory)) {
+      assertTrue("multiple segments", indexReader.leaves().size() > 1);
+    }
+    // all documents, and a subset within the segments
+    List<ArrayList<Integer>> docSets = new ArrayList<>();
+    docSets.add(docs);
+    docSets.add(new ArrayList<>(docs.subList(1, docs.size())));
+    for (ArrayList<Integer> docSet : docSets) {
+      for (String prefix : new String[] { "t_lc", "lemma", "pos" }) {
+        for (String sortType : new String[] { CodecUtil.STATS_TYPE_SUM,
+            CodecUtil.STATS_TYPE_N }) {
+          for (int number : new int[] { 1, 10, 100 }) {
+            String name = prefix + " sorted on " + sortType + " top "
+                + number + " for " + docSet.size() + " documents";
+            ComponentField fieldStats = new ComponentField(FIELD_ID);
+            fieldStats.termVectorList.add(new ComponentTermVector("toplist",
+                prefix, null, null, null, null, null, null, null, false,
+                "n,sum", sortType, CodecUtil.SORT_DESC, null, number, null,
+                null, null, null, null, null, null, null, null));
+            fieldStats.termVectorList.add(new ComponentTermVector("fulllist",
+                prefix, null, null, null, null, null, null, null, true,
+                "n,sum", sortType, CodecUtil.SORT_DESC, null,
+                Integer.MAX_VALUE, null, null, null, null, null, null, null,
+                null, null));
+            HashMap<String, HashMap<String, Object>> response =
+                doAdvancedSearch(docSet, fieldStats);
+            Map<String, Object> topList = (Map<String, Object>) response
+                .get("termvector").get("toplist");
+            Map<String, Object> fullList = (Map<String, Object>) response
+                .get("termvector").get("fulllist");
+            int expectedSize = Math.min(number, fullList.size());
+            assertEquals(name + ": size", expectedSize, topList.size());
+            // keys with equal values may differ, compare the values
+            List<Long> expectedValues = new ArrayList<>();
+            for (Object item : fullList.values()) {
+              expectedValues.add(getLongValue(item, sortType));
+            }
+            expectedValues.sort(Collections.reverseOrder());
+            List<Long> topValues = new ArrayList<>();
+            for (Entry<String, Object> entry : topList.entrySet()) {
+              topValues.add(getLongValue(entry.getValue(), sortType));
+              for (String statsType : new String[] { CodecUtil.STATS_TYPE_N,
+                  CodecUtil.STATS_TYPE_SUM }) {
+                assertEquals(name + ": " + statsType + " for " + entry.getKey(),
+                    getLongValue(fullList.get(entry.getKey()), statsType),
+                    getLongValue(entry.getValue(), statsType));
+              }
+            }
+            topValues.sort(Collections.reverseOrder());
+            assertEquals(name + ": values",
+                expectedValues.subList(0, expectedSize), topValues);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets a long value from a termvector item.
+   *
+   * @param item the item
+   * @param statsType the stats type
+   * @return the long value, or null
+   */
+  private static Long getLongValue(Object item, String statsType) {
+    if (item instanceof Map) {
+      Object value = ((Map<?, ?>) item).get(statsType);
+      return value instanceof Number ? ((Number) value).longValue() : null;
+    } else {
+      return null;
+    }
+  }
+
   /**
    * Do advanced search.
    *
@@ -0,0 +1,313 @@
+package mtas.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.spans.SpanWeight;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+
+import mtas.parser.cql.MtasCQLParser;
+import mtas.parser.cql.ParseException;
+import mtas.search.spans.MtasSpanSequenceItem;
+import mtas.search.spans.MtasSpanSequenceQuery;
+import mtas.search.spans.util.MtasDisabledTwoPhaseIteratorSpanQuery;
+import mtas.search.spans.util.MtasSpanQuery;
+
+/**
+ * The Class MtasSearchTestSequence.
+ */
+public class MtasSearchTestSequence {
+
+  /** The Constant FIELD_ID. */
+  private static final String FIELD_ID = "id";
+
+  /** The Constant FIELD_CONTENT. */
+  private static final String FIELD_CONTENT = "content";
+
+  /** The directory. */
+  private static Directory directory;
+
+  /**
+   * Initialize.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.BeforeClass
+  public static void initialize() throws IOException {
+    Path dataPath = Paths.get("src" + File.separator + "test" + File.separator
+        + "resources" + File.separator + "data");
+    Map<String, String> paramsCharFilterMtas = new HashMap<>();
+    paramsCharFilterMtas.put("type", "file");
+    Map<String, String> paramsTokenizer = new HashMap<>();
+    paramsTokenizer.put("configFile", dataPath.resolve("conf")
+        .resolve("folia.xml").toAbsolutePath().toString());
+    Analyzer mtasAnalyzer = CustomAnalyzer
+        .builder(Paths.get("docker").toAbsolutePath())
+        .addCharFilter("mtas", paramsCharFilterMtas)
+        .withTokenizer("mtas", paramsTokenizer).build();
+    Map<String, Analyzer> analyzerPerField = new HashMap<>();
+    analyzerPerField.put(FIELD_CONTENT, mtasAnalyzer);
+    IndexWriterConfig config = new IndexWriterConfig(
+        new PerFieldAnalyzerWrapper(new StandardAnalyzer(),
+            analyzerPerField));
+    config.setUseCompoundFile(false);
+    config.setCodec(Codec.forName("MtasCodec"));
+    directory = new RAMDirectory();
+    try (IndexWriter w = new IndexWriter(directory, config)) {
+      int id = 0;
+      for (String file : new String[] { "beets1.xml.gz", "beets2.xml.gz",
+          "beets3.xml.gz" }) {
+        Document doc = new Document();
+        doc.add(new StringField(FIELD_ID, Integer.toString(id++),
+            Field.Store.YES));
+        doc.add(new TextField(FIELD_CONTENT, dataPath.resolve("resources")
+            .resolve(file).toAbsolutePath().toString(), Field.Store.YES));
+        w.addDocument(doc);
+        // multiple segments
+        w.commit();
+      }
+    }
+  }
+
+  /**
+   * Sequences with optional items.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws ParseException the parse exception
+   */
+  @org.junit.Test
+  public void optionalItems() throws IOException, ParseException {
+    compare(new String[] { "[pos=\"LID\"]", "[pos=\"ADJ\"]", "[pos=\"N\"]" },
+        new boolean[] { false, true, false });
+    compare(new String[] { "[pos=\"LID\"]", "[pos=\"N\"]", "[pos=\"ADJ\"]" },
+        new boolean[] { true, false, true });
+    compare(new String[] { "[pos=\"ADJ\"]", "[]", "[pos=\"N\"]" },
+        new boolean[] { false, true, true });
+  }
+
+  /**
+   * Sequences with repeated items.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws ParseException the parse exception
+   */
+  @org.junit.Test
+  public void repeatedItems() throws IOException, ParseException {
+    compare(
+        new String[] { "[pos=\"LID\"]", "[pos=\"ADJ\"]{1,3}", "[pos=\"N\"]" },
+        new boolean[] { false, false, false });
+    compare(new String[] { "[pos=\"ADJ\"]{1,2}", "[pos=\"N\"]{1,2}" },
+        new boolean[] { true, false });
+  }
+
+  /**
+   * Sequences with overlapping matches, sharing start or end positions.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws ParseException the parse exception
+   */
+  @org.junit.Test
+  public void overlappingMatches() throws IOException, ParseException {
+    compare(new String[] { "[pos=\"N\"]", "[]{1,3}", "[pos=\"N\"]" },
+        new boolean[] { false, false, false });
+    compare(new String[] { "[]{1,2}", "[pos=\"LID\"]", "[]{1,2}" },
+        new boolean[] { false, false, true });
+    compare(new String[] { "<s/>", "[]{1,2}" },
+        new boolean[] { false, true });
+  }
+
+  /**
+   * Compare the hits of a sequence, with and without two phase iterator, with
+   * the matches computed from the hits of the separate items.
+   *
+   * @param cqlItems the cql items
+   * @param optional the optional
+   * @throws IOException Signals that an I/O exception has occurred.
+   * @throws ParseException the parse exception
+   */
+  private static void compare(String[] cqlItems, boolean[] optional)
+      throws IOException, ParseException {
+    List<MtasSpanSequenceItem> items = new ArrayList<>();
+    List<MtasSpanQuery> itemQueries = new ArrayList<>();
+    for (int i = 0; i < cqlItems.length; i++) {
+      MtasSpanQuery itemQuery = new MtasCQLParser(
+          new BufferedReader(new StringReader(cqlItems[i])))
+              .parse(FIELD_CONTENT, null, null, null, null);
+      itemQueries.add(itemQuery);
+      items.add(new MtasSpanSequenceItem(itemQuery, optional[i]));
+    }
+    MtasSpanQuery query = new MtasSpanSequenceQuery(items, null, null);
+    try (IndexReader reader = DirectoryReader.open(directory)) {
+      List<Map<Integer, List<int[]>>> itemHits = new ArrayList<>();
+      for (MtasSpanQuery itemQuery : itemQueries) {
+        itemHits.add(getHitsByDoc(reader, itemQuery));
+      }
+      List<String> expected = getMatches(itemHits, optional);
+      assertFalse(query.toString() + " without hits", expected.isEmpty());
+      assertEquals(query.toString() + " with two phase iterator", expected,
+          getHits(reader, query));
+      assertEquals(query.toString() + " without two phase iterator", expected,
+          getHits(reader, new MtasDisabledTwoPhaseIteratorSpanQuery(query)));
+    }
+  }
+
+  /**
+   * Gets the sorted distinct matches by gluing the hits of the items, each
+   * optional item either glued or skipped.
+   *
+   * @param itemHits the item hits
+   * @param optional the optional
+   * @return the matches
+   */
+  private static List<String> getMatches(
+      List<Map<Integer, List<int[]>>> itemHits, boolean[] optional) {
+    Set<Integer> docs = new TreeSet<>();
+    for (Map<Integer, List<int[]>> hits : itemHits) {
+      docs.addAll(hits.keySet());
+    }
+    List<String> matches = new ArrayList<>();
+    for (Integer docId : docs) {
+      // partial matches as start and end, null for the empty match
+      Set<List<Integer>> partials = new HashSet<>();
+      partials.add(null);
+      for (int i = 0; i < itemHits.size(); i++) {
+        List<int[]> hits = itemHits.get(i).getOrDefault(docId,
+            Collections.emptyList());
+        Set<List<Integer>> newPartials = new HashSet<>();
+        if (optional[i]) {
+          newPartials.addAll(partials);
+        }
+        for (List<Integer> partial : partials) {
+          for (int[] hit : hits) {
+            if (partial == null) {
+              newPartials.add(Arrays.asList(hit[0], hit[1]));
+            } else if (partial.get(1) == hit[0]) {
+              newPartials.add(Arrays.asList(partial.get(0), hit[1]));
+            }
+          }
+        }
+        partials = newPartials;
+      }
+      for (List<Integer> partial : partials) {
+        if (partial != null) {
+          matches.add(docId + ":" + partial.get(0) + "-" + partial.get(1));
+        }
+      }
+    }
+    Collections.sort(matches);
+    return matches;
+  }
+
+  /**
+   * Gets the hits by document.
+   *
+   * @param reader the reader
+   * @param query the query
+   * @return the hits by document
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static Map<Integer, List<int[]>> getHitsByDoc(IndexReader reader,
+      MtasSpanQuery query) throws IOException {
+    Map<Integer, List<int[]>> hits = new HashMap<>();
+    IndexSearcher searcher = new IndexSearcher(reader);
+    SpanWeight weight = query.rewrite(reader).createWeight(searcher, false,
+        0);
+    for (LeafReaderContext context : reader.leaves()) {
+      Spans spans = weight.getSpans(context, SpanWeight.Postings.POSITIONS);
+      if (spans != null) {
+        while (spans.nextDoc() != Spans.NO_MORE_DOCS) {
+          List<int[]> list = hits.computeIfAbsent(
+              context.docBase + spans.docID(), d -> new ArrayList<>());
+          while (spans.nextStartPosition() != Spans.NO_MORE_POSITIONS) {
+            list.add(new int[] { spans.startPosition(), spans.endPosition() });
+          }
+        }
+      }
+    }
+    return hits;
+  }
+
+  /**
+   * Gets the sorted hits, using the two phase iterator if available, and
+   * checks that no hit is returned twice.
+   *
+   * @param reader the reader
+   * @param query the query
+   * @return the hits
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static List<String> getHits(IndexReader reader,
+      MtasSpanQuery query) throws IOException {
+    List<String> hits = new ArrayList<>();
+    IndexSearcher searcher = new IndexSearcher(reader);
+    SpanWeight weight = query.rewrite(reader).createWeight(searcher, false,
+        0);
+    for (LeafReaderContext context : reader.leaves()) {
+      Spans spans = weight.getSpans(context, SpanWeight.Postings.POSITIONS);
+      if (spans != null) {
+        TwoPhaseIterator twoPhase = spans.asTwoPhaseIterator();
+        while (true) {
+          int docId;
+          if (twoPhase == null) {
+            docId = spans.nextDoc();
+          } else {
+            docId = twoPhase.approximation().nextDoc();
+            if (docId != Spans.NO_MORE_DOCS && !twoPhase.matches()) {
+              continue;
+            }
+          }
+          if (docId == Spans.NO_MORE_DOCS) {
+            break;
+          }
+          int previousStart = -1;
+          while (spans.nextStartPosition() != Spans.NO_MORE_POSITIONS) {
+            assertFalse(query.toString() + " decreasing start position",
+                spans.startPosition() < previousStart);
+            previousStart = spans.startPosition();
+            hits.add((context.docBase + docId) + ":" + spans.startPosition()
+                + "-" + spans.endPosition());
+          }
+        }
+      }
+    }
+    assertEquals(query.toString() + " duplicate hits",
+        new HashSet<>(hits).size(), hits.size());
+    Collections.sort(hits);
+    return hits;
+  }
+
+}
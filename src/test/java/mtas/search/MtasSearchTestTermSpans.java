@@ -0,0 +1,212 @@
+package mtas.search;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+
+import mtas.analysis.token.MtasToken;
+import mtas.analysis.token.MtasTokenString;
+import mtas.codec.payload.MtasPayloadEncoder;
+import mtas.search.spans.util.MtasExtendedTermSpans;
+
+/**
+ * The Class MtasSearchTestTermSpans.
+ */
+public class MtasSearchTestTermSpans {
+
+  /** The Constant FIELD_CONTENT. */
+  private static final String FIELD_CONTENT = "content";
+
+  /** The Constant TERM. */
+  private static final String TERM = "s" + MtasToken.DELIMITER;
+
+  /** The Constant OTHER_TERM. */
+  private static final String OTHER_TERM = "t" + MtasToken.DELIMITER + "x";
+
+  /**
+   * The same term more than once at a start position, with different end
+   * positions.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void sameTermAtStartPosition() throws IOException {
+    // tokens as term, start and end position; with the same start position
+    // the tokens are indexed with position increment zero
+    Object[][] tokens = new Object[][] { { TERM, 0, 2 }, { TERM, 0, 0 },
+        { OTHER_TERM, 0, 0 }, { TERM, 1, 4 }, { TERM, 1, 1 },
+        { OTHER_TERM, 1, 1 }, { TERM, 2, 2 }, { TERM, 2, 3 } };
+    try (Directory directory = new RAMDirectory()) {
+      try (IndexWriter w = new IndexWriter(directory,
+          new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+        FieldType fieldType = new FieldType();
+        fieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+        fieldType.setTokenized(true);
+        fieldType.freeze();
+        Document doc = new Document();
+        doc.add(new Field(FIELD_CONTENT, new MtasTestTokenStream(tokens),
+            fieldType));
+        w.addDocument(doc);
+      }
+      List<String> expectedSpans = new ArrayList<>();
+      List<int[]> expectedPositions = new ArrayList<>();
+      for (Object[] token : tokens) {
+        if (TERM.equals(token[0])) {
+          int start = (Integer) token[1];
+          int end = (Integer) token[2];
+          expectedSpans.add(start + "-" + (end + 1));
+          int[] positions = new int[end - start + 1];
+          for (int i = 0; i < positions.length; i++) {
+            positions[i] = start + i;
+          }
+          expectedPositions.add(positions);
+        }
+      }
+      try (IndexReader reader = DirectoryReader.open(directory)) {
+        LeafReader leafReader = reader.leaves().get(0).reader();
+        PostingsEnum postings = leafReader.postings(
+            new Term(FIELD_CONTENT, TERM), PostingsEnum.PAYLOADS);
+        assertNotNull("no postings", postings);
+        MtasExtendedTermSpans spans = new MtasExtendedTermSpans(postings,
+            new Term(FIELD_CONTENT, TERM), false);
+        List<String> foundSpans = new ArrayList<>();
+        List<int[]> foundPositions = new ArrayList<>();
+        List<int[]> bufferedPositions = new ArrayList<>();
+        // too small for most spans, so the returned number is checked
+        int[] buffer = new int[2];
+        assertEquals("doc", 0, spans.nextDoc());
+        while (spans.nextStartPosition() != Spans.NO_MORE_POSITIONS) {
+          String span = spans.startPosition() + "-" + spans.endPosition();
+          // repeated requests use the decoded payload
+          assertEquals("repeated", span,
+              spans.startPosition() + "-" + spans.endPosition());
+          foundSpans.add(span);
+          foundPositions.add(spans.getPositions());
+          int number = spans.getPositions(buffer);
+          if (number > buffer.length) {
+            buffer = new int[number];
+            assertEquals("retry", number, spans.getPositions(buffer));
+          }
+          bufferedPositions.add(Arrays.copyOf(buffer, number));
+        }
+        assertEquals("spans", expectedSpans, foundSpans);
+        assertEquals("positions", expectedPositions.size(),
+            foundPositions.size());
+        for (int i = 0; i < expectedPositions.size(); i++) {
+          assertArrayEquals("positions of span " + expectedSpans.get(i),
+              expectedPositions.get(i), foundPositions.get(i));
+          assertArrayEquals("buffered positions of span "
+              + expectedSpans.get(i), expectedPositions.get(i),
+              bufferedPositions.get(i));
+        }
+        assertEquals("next doc", Spans.NO_MORE_DOCS, spans.nextDoc());
+      }
+    }
+  }
+
+  /**
+   * The Class MtasTestTokenStream, providing tokens with encoded payload.
+   */
+  private static final class MtasTestTokenStream extends TokenStream {
+
+    /** The term attribute. */
+    private final CharTermAttribute termAtt = addAttribute(
+        CharTermAttribute.class);
+
+    /** The position increment attribute. */
+    private final PositionIncrementAttribute positionIncrementAtt =
+        addAttribute(PositionIncrementAttribute.class);
+
+    /** The payload attribute. */
+    private final PayloadAttribute payloadAtt = addAttribute(
+        PayloadAttribute.class);
+
+    /** The tokens. */
+    private final Object[][] tokens;
+
+    /** The index of the next token. */
+    private int index;
+
+    /** The previous start position. */
+    private int previousStart;
+
+    /**
+     * Instantiates a new mtas test token stream.
+     *
+     * @param tokens the tokens, as term, start and end position
+     */
+    private MtasTestTokenStream(Object[][] tokens) {
+      this.tokens = tokens;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.lucene.analysis.TokenStream#reset()
+     */
+    @Override
+    public void reset() throws IOException {
+      super.reset();
+      index = 0;
+      previousStart = -1;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.lucene.analysis.TokenStream#incrementToken()
+     */
+    @Override
+    public boolean incrementToken() throws IOException {
+      clearAttributes();
+      if (index < tokens.length) {
+        String term = (String) tokens[index][0];
+        int start = (Integer) tokens[index][1];
+        int end = (Integer) tokens[index][2];
+        MtasToken token = new MtasTokenString(index, term);
+        if (start == end) {
+          token.addPosition(start);
+        } else {
+          token.addPositionRange(start, end);
+        }
+        termAtt.append(term);
+        positionIncrementAtt.setPositionIncrement(start - previousStart);
+        BytesRef payload = new MtasPayloadEncoder(token).getPayload();
+        payloadAtt.setPayload(payload);
+        previousStart = start;
+        index++;
+        return true;
+      } else {
+        return false;
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,277 @@
+package mtas.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.CoreContainer;
+
+/**
+ * The Class MtasSolrTestUniqueKeyDocValues. Compares kwic, list and document
+ * results for a core with doc values on the unique key with those for a core
+ * reading the unique key from the stored field.
+ */
+public class MtasSolrTestUniqueKeyDocValues {
+
+  /** The Constant COLLECTION_STORED. */
+  private static final String COLLECTION_STORED = "stored";
+
+  /** The Constant COLLECTION_DOCVALUES. */
+  private static final String COLLECTION_DOCVALUES = "docValues";
+
+  /** The Constant SCHEMA_ID. */
+  private static final String SCHEMA_ID = "name=\"id\" type=\"string\"";
+
+  /** The Constant KEYS. */
+  private static final Set<String> KEYS = new HashSet<>(
+      Arrays.asList("1", "2", "3"));
+
+  /** The server. */
+  private static EmbeddedSolrServer server;
+
+  /** The solr path. */
+  private static Path solrPath;
+
+  /**
+   * Setup.
+   *
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   * @throws SolrServerException
+   *           the solr server exception
+   */
+  @org.junit.BeforeClass
+  public static void setup() throws IOException, SolrServerException {
+    Path dataPath = Paths.get("src" + File.separator + "test" + File.separator
+        + "resources" + File.separator + "data");
+    Map<Integer, SolrInputDocument> solrDocuments = MtasSolrBase
+        .createDocuments(true);
+    solrPath = Files.createTempDirectory("junitSolr");
+    Files.copy(dataPath.resolve("conf").resolve("solr.xml"),
+        solrPath.resolve("solr.xml"));
+    createCollection(COLLECTION_STORED, dataPath, false);
+    createCollection(COLLECTION_DOCVALUES, dataPath, true);
+    CoreContainer container = new CoreContainer(
+        solrPath.toAbsolutePath().toString());
+    container.load();
+    server = new EmbeddedSolrServer(container, COLLECTION_STORED);
+    // several segments
+    for (String collection : new String[] { COLLECTION_STORED,
+        COLLECTION_DOCVALUES }) {
+      server.add(collection, solrDocuments.get(1));
+      server.commit(collection);
+      server.add(collection, solrDocuments.get(2));
+      server.add(collection, solrDocuments.get(3));
+      server.commit(collection);
+    }
+  }
+
+  /**
+   * Creates the collection.
+   *
+   * @param collectionName
+   *          the collection name
+   * @param dataPath
+   *          the data path
+   * @param docValues
+   *          if the unique key should have doc values
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  private static void createCollection(String collectionName, Path dataPath,
+      boolean docValues) throws IOException {
+    Path collectionPath = solrPath.resolve(collectionName);
+    Path confPath = collectionPath.resolve("conf");
+    if (collectionPath.toFile().mkdir() && confPath.toFile().mkdir()
+        && collectionPath.resolve("data").toFile().mkdir()) {
+      for (String name : new String[] { "solrconfig.xml", "folia.xml",
+          "mtas.xml" }) {
+        Files.copy(dataPath.resolve("conf").resolve(name),
+            confPath.resolve(name));
+      }
+      String schema = new String(
+          Files.readAllBytes(dataPath.resolve("conf").resolve("schema.xml")),
+          StandardCharsets.UTF_8);
+      if (docValues) {
+        assertTrue("unique key in schema", schema.contains(SCHEMA_ID));
+        schema = schema.replace(SCHEMA_ID, SCHEMA_ID + " docValues=\"true\"");
+      }
+      Files.write(confPath.resolve("schema.xml"),
+          schema.getBytes(StandardCharsets.UTF_8));
+      File solrFile = collectionPath.resolve("core.properties").toFile();
+      try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+          new FileOutputStream(solrFile), StandardCharsets.UTF_8))) {
+        writer.write("name=" + collectionName + "\n");
+      }
+    } else {
+      throw new IOException("couldn't make directories");
+    }
+  }
+
+  /**
+   * Shutdown.
+   *
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  @org.junit.AfterClass
+  public static void shutdown() throws IOException {
+    server.close();
+    MtasSolrBase.deleteDirectory(solrPath.toFile());
+  }
+
+  /**
+   * Kwic, with hit and token output.
+   *
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void kwic() throws IOException {
+    for (String output : new String[] { "hit", "token" }) {
+      ModifiableSolrParams params = createParams();
+      params.set("mtas.kwic", "true");
+      params.set("mtas.kwic.0.field", MtasSolrBase.FIELD_MTAS);
+      params.set("mtas.kwic.0.key", "kwicKey");
+      params.set("mtas.kwic.0.query.type", "cql");
+      params.set("mtas.kwic.0.query.value", "[pos=\"N\"]");
+      params.set("mtas.kwic.0.number", 3);
+      params.set("mtas.kwic.0.left", 2);
+      params.set("mtas.kwic.0.right", 2);
+      params.set("mtas.kwic.0.output", output);
+      assertEquals("kwic " + output, KEYS, compare(params));
+    }
+  }
+
+  /**
+   * List, with hit and token output.
+   *
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void list() throws IOException {
+    for (String output : new String[] { "hit", "token" }) {
+      ModifiableSolrParams params = createParams();
+      params.set("mtas.list", "true");
+      params.set("mtas.list.0.field", MtasSolrBase.FIELD_MTAS);
+      params.set("mtas.list.0.key", "listKey");
+      params.set("mtas.list.0.query.type", "cql");
+      params.set("mtas.list.0.query.value", "[pos=\"N\"]");
+      params.set("mtas.list.0.number", 20);
+      params.set("mtas.list.0.left", 1);
+      params.set("mtas.list.0.right", 1);
+      params.set("mtas.list.0.output", output);
+      Set<String> keys = compare(params);
+      assertFalse("list " + output, keys.isEmpty());
+      assertTrue("list " + output, KEYS.containsAll(keys));
+    }
+  }
+
+  /**
+   * Document.
+   *
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void document() throws IOException {
+    ModifiableSolrParams params = createParams();
+    params.set("mtas.document", "true");
+    params.set("mtas.document.0.field", MtasSolrBase.FIELD_MTAS);
+    params.set("mtas.document.0.key", "documentKey");
+    params.set("mtas.document.0.prefix", "t_lc");
+    params.set("mtas.document.0.type", "n,sum");
+    params.set("mtas.document.0.number", 5);
+    assertEquals("document", KEYS, compare(params));
+  }
+
+  /**
+   * Creates the params, for all documents.
+   *
+   * @return the modifiable solr params
+   */
+  private static ModifiableSolrParams createParams() {
+    ModifiableSolrParams params = new ModifiableSolrParams();
+    params.set("q", "*:*");
+    params.set("rows", 10);
+    params.set("mtas", "true");
+    return params;
+  }
+
+  /**
+   * Compare the mtas response of both collections.
+   *
+   * @param params
+   *          the params
+   * @return the document keys in the response
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  private static Set<String> compare(ModifiableSolrParams params)
+      throws IOException {
+    Object expected;
+    Object result;
+    try {
+      expected = server.request(new QueryRequest(params), COLLECTION_STORED)
+          .get("mtas");
+      result = server.request(new QueryRequest(params), COLLECTION_DOCVALUES)
+          .get("mtas");
+    } catch (SolrServerException e) {
+      throw new IOException(e);
+    }
+    assertNotNull("mtas response", expected);
+    assertEquals("mtas response", expected, result);
+    Set<String> keys = new HashSet<>();
+    collectDocumentKeys(result, keys);
+    return keys;
+  }
+
+  /**
+   * Collect document keys.
+   *
+   * @param object
+   *          the object
+   * @param keys
+   *          the keys
+   */
+  private static void collectDocumentKeys(Object object, Set<String> keys) {
+    if (object instanceof NamedList) {
+      for (Entry<String, ?> entry : (NamedList<?>) object) {
+        if ("documentKey".equals(entry.getKey())) {
+          keys.add((String) entry.getValue());
+        } else {
+          collectDocumentKeys(entry.getValue(), keys);
+        }
+      }
+    } else if (object instanceof List) {
+      for (Object item : (List<?>) object) {
+        collectDocumentKeys(item, keys);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,147 @@
+package mtas.solr.handler.component.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.solr.common.util.NamedList;
+
+import mtas.codec.util.CodecComponent.SubComponentDistance;
+import mtas.codec.util.CodecUtil;
+import mtas.codec.util.DataCollector;
+import mtas.codec.util.collector.MtasDataCollector;
+
+/**
+ * The Class MtasSolrResultUtilTestEncoding.
+ */
+public class MtasSolrResultUtilTestEncoding {
+
+  /** The Constant KEYS. */
+  private static final String[] KEYS = new String[] { "de", "een", "het",
+      "in", "is", "van" };
+
+  /**
+   * A list result with functions and distances gives the same response after
+   * decoding, for the java and the binary encoding.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void listResult() throws IOException {
+    MtasSolrMtasResult result = createResult();
+    NamedList<Object> expected = result.getNamedList(false);
+    assertEquals("keys", KEYS.length, expected.size());
+    String javaEncoded = (String) MtasSolrResultUtil.encode(result,
+        MtasSolrResultUtil.ENCODING_JAVA, false);
+    assertEquals("java", expected,
+        ((MtasSolrMtasResult) MtasSolrResultUtil.decode(javaEncoded))
+            .getNamedList(false));
+    for (boolean compress : new boolean[] { false, true }) {
+      byte[] binaryEncoded = (byte[]) MtasSolrResultUtil.encode(result,
+          MtasSolrResultUtil.ENCODING_BINARY, compress);
+      MtasSolrMtasResult decoded = (MtasSolrMtasResult) MtasSolrResultUtil
+          .decode(binaryEncoded);
+      assertEquals("binary, compress " + compress, expected,
+          decoded.getNamedList(false));
+      assertEquals("function data, compress " + compress, 1,
+          decoded.functionData.size());
+      assertTrue("function data keyed by collector, compress " + compress,
+          decoded.functionData.containsKey(decoded.dataCollector));
+      assertTrue("binary not smaller, compress " + compress,
+          binaryEncoded.length < javaEncoded.length);
+    }
+  }
+
+  /**
+   * Other objects are serialized within the binary encoding.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void otherObjects() throws IOException {
+    HashSet<String> set = new HashSet<>(Arrays.asList(KEYS));
+    for (boolean compress : new boolean[] { false, true }) {
+      assertEquals("set, compress " + compress, set,
+          MtasSolrResultUtil.decode((byte[]) MtasSolrResultUtil.encode(set,
+              MtasSolrResultUtil.ENCODING_BINARY, compress)));
+    }
+  }
+
+  /**
+   * Unknown data is not decoded.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void unknownData() throws IOException {
+    byte[] encoded = (byte[]) MtasSolrResultUtil.encode(createResult(),
+        MtasSolrResultUtil.ENCODING_BINARY, false);
+    assertNull("short", MtasSolrResultUtil.decode(new byte[] { 1, 2 }));
+    byte[] otherVersion = encoded.clone();
+    otherVersion[1]++;
+    assertNull("version", MtasSolrResultUtil.decode(otherVersion));
+    byte[] otherType = encoded.clone();
+    otherType[3] = 0;
+    assertNull("type", MtasSolrResultUtil.decode(otherType));
+    assertNull("truncated", MtasSolrResultUtil
+        .decode(Arrays.copyOf(encoded, encoded.length / 2)));
+  }
+
+  /**
+   * Creates a list result, with a function and a distance.
+   *
+   * @return the mtas solr mtas result
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @SuppressWarnings("unchecked")
+  private static MtasSolrMtasResult createResult() throws IOException {
+    SortedSet<String> statsItems = new TreeSet<>(
+        Arrays.asList(CodecUtil.STATS_TYPE_N, CodecUtil.STATS_TYPE_SUM));
+    MtasDataCollector<?, ?> dataCollector = DataCollector.getCollector(
+        DataCollector.COLLECTOR_TYPE_LIST, CodecUtil.DATA_TYPE_LONG,
+        CodecUtil.STATS_BASIC, statsItems, CodecUtil.SORT_TERM,
+        CodecUtil.SORT_ASC, 0, KEYS.length, null, null);
+    MtasDataCollector<?, ?> functionCollector = DataCollector.getCollector(
+        DataCollector.COLLECTOR_TYPE_LIST, CodecUtil.DATA_TYPE_DOUBLE,
+        CodecUtil.STATS_BASIC, statsItems, CodecUtil.SORT_TERM,
+        CodecUtil.SORT_ASC, 0, KEYS.length, null, null);
+    dataCollector.initNewList(KEYS.length);
+    functionCollector.initNewList(KEYS.length);
+    for (int i = 0; i < KEYS.length; i++) {
+      dataCollector.add(KEYS[i], new long[] { 10L * i, i + 1L }, 2);
+      functionCollector.add(KEYS[i], new double[] { i / 3.0 }, 1);
+    }
+    dataCollector.closeNewList();
+    functionCollector.closeNewList();
+    HashMap<String, MtasSolrMtasResult> functionItem = new HashMap<>();
+    functionItem.put("f", new MtasSolrMtasResult(functionCollector,
+        CodecUtil.DATA_TYPE_DOUBLE, CodecUtil.STATS_BASIC, statsItems, null,
+        null));
+    Map<MtasDataCollector<?, ?>, HashMap<String, MtasSolrMtasResult>> functionData;
+    functionData = new HashMap<>();
+    functionData.put(dataCollector, functionItem);
+    Map<String, String> parameters = new HashMap<>();
+    parameters.put("replaceDistance", "2");
+    List<SubComponentDistance> distances = new ArrayList<>();
+    distances.add(new SubComponentDistance("distance", "levenshtein", "t",
+        "het", parameters, null, "3"));
+    return new MtasSolrMtasResult(dataCollector,
+        new String[] { CodecUtil.DATA_TYPE_LONG },
+        new String[] { CodecUtil.STATS_BASIC },
+        new SortedSet[] { statsItems }, new List[] { distances },
+        new String[] { CodecUtil.SORT_TERM },
+        new String[] { CodecUtil.SORT_ASC }, new Integer[] { 0 },
+        new Integer[] { KEYS.length }, functionData);
+  }
+
+}
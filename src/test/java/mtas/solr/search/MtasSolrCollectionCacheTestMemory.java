@@ -0,0 +1,154 @@
+package mtas.solr.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+
+import org.apache.lucene.util.IOUtils;
+import org.apache.solr.common.util.SimpleOrderedMap;
+
+/**
+ * The Class MtasSolrCollectionCacheTestMemory.
+ */
+public class MtasSolrCollectionCacheTestMemory {
+
+  /** The Constant NUMBER. */
+  private static final int NUMBER = 100;
+
+  /**
+   * Hits, misses and load time are registered for each collection, and data
+   * used from memory doesn't touch the file.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void statistics() throws IOException {
+    Path path = Files.createTempDirectory("mtasCollectionCache");
+    try {
+      MtasSolrCollectionCache cache = new MtasSolrCollectionCache(
+          path.toString(), null, null, null, null);
+      HashSet<String> data = createData("a");
+      cache.create("a", data.size(), data, null);
+      assertEquals("first", data, cache.getDataById("a"));
+      assertStatistics("after load", cache.check("a"), 0, 1, true);
+      // use the memory without updating the file time
+      File file = path.resolve((String) cache.check("a").get("version"))
+          .toFile();
+      assertTrue("set file time",
+          file.setLastModified(file.lastModified() - 60000));
+      long lastModified = file.lastModified();
+      assertEquals("second", data, cache.getDataById("a"));
+      assertNotNull("automaton", cache.getAutomatonById("a"));
+      assertEquals("file time", lastModified, file.lastModified());
+      // checking does verify the file
+      assertStatistics("after hits", cache.check("a"), 2, 1, true);
+    } finally {
+      IOUtils.rm(path);
+    }
+  }
+
+  /**
+   * Least recently used data is evicted from memory when the maximum memory
+   * is exceeded, and data larger than the maximum memory is not kept.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void eviction() throws IOException {
+    long weight = getWeight();
+    Path path = Files.createTempDirectory("mtasCollectionCache");
+    try {
+      MtasSolrCollectionCache cache = new MtasSolrCollectionCache(
+          path.toString(), null, null, null, weight + weight / 2);
+      for (String id : new String[] { "a", "b" }) {
+        HashSet<String> data = createData(id);
+        cache.create(id, data.size(), data, null);
+      }
+      assertEquals("a", createData("a"), cache.getDataById("a"));
+      assertEquals("b", createData("b"), cache.getDataById("b"));
+      assertStatistics("a evicted", cache.check("a"), 0, 1, false);
+      assertStatistics("b kept", cache.check("b"), 0, 1, true);
+      assertEquals("a again", createData("a"), cache.getDataById("a"));
+      assertStatistics("a reloaded", cache.check("a"), 0, 2, true);
+      assertStatistics("b evicted", cache.check("b"), 0, 1, false);
+    } finally {
+      IOUtils.rm(path);
+    }
+    path = Files.createTempDirectory("mtasCollectionCache");
+    try {
+      MtasSolrCollectionCache cache = new MtasSolrCollectionCache(
+          path.toString(), null, null, null, weight / 2);
+      HashSet<String> data = createData("a");
+      cache.create("a", data.size(), data, null);
+      assertEquals("too large", data, cache.getDataById("a"));
+      assertEquals("too large again", data, cache.getDataById("a"));
+      assertStatistics("not kept", cache.check("a"), 0, 2, false);
+    } finally {
+      IOUtils.rm(path);
+    }
+  }
+
+  /**
+   * Gets the weight in memory of the data for a collection.
+   *
+   * @return the weight
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static long getWeight() throws IOException {
+    Path path = Files.createTempDirectory("mtasCollectionCache");
+    try {
+      MtasSolrCollectionCache cache = new MtasSolrCollectionCache(
+          path.toString(), null, null, null, null);
+      HashSet<String> data = createData("a");
+      cache.create("a", data.size(), data, null);
+      cache.getDataById("a");
+      long weight = ((Number) cache.check("a").get("memory")).longValue();
+      assertTrue("weight", weight > 0);
+      return weight;
+    } finally {
+      IOUtils.rm(path);
+    }
+  }
+
+  /**
+   * Assert the statistics of a collection.
+   *
+   * @param name the name
+   * @param statistics the statistics
+   * @param hits the hits
+   * @param misses the misses
+   * @param inMemory if the data should be in memory
+   */
+  private static void assertStatistics(String name,
+      SimpleOrderedMap<Object> statistics, long hits, long misses,
+      boolean inMemory) {
+    assertNotNull(name, statistics);
+    assertEquals(name + ": hits", hits, statistics.get("hits"));
+    assertEquals(name + ": misses", misses, statistics.get("misses"));
+    assertTrue(name + ": load time",
+        ((Number) statistics.get("loadTime")).longValue() >= 0);
+    assertEquals(name + ": memory", inMemory,
+        ((Number) statistics.get("memory")).longValue() > 0);
+  }
+
+  /**
+   * Creates the data, of the same size for every id.
+   *
+   * @param id the id
+   * @return the data
+   */
+  private static HashSet<String> createData(String id) {
+    HashSet<String> data = new HashSet<>();
+    for (int i = 0; i < NUMBER; i++) {
+      data.add(id + "-" + (1000 + i));
+    }
+    return data;
+  }
+
+}
@@ -0,0 +1,215 @@
+package mtas.solr.update.processor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * The Class MtasUpdateRequestProcessorResultTestCodec.
+ */
+public class MtasUpdateRequestProcessorResultTestCodec {
+
+  /** The Constant VALUE. */
+  private static final String VALUE = "stored value \u00e9\u4e2d";
+
+  /**
+   * Small result, passed inline.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void inline() throws IOException {
+    List<Object[]> items = createItems(new Random(42), 100);
+    String fileName = write(items,
+        MtasUpdateRequestProcessorResultWriter.DEFAULT_MEMORY_THRESHOLD);
+    assertTrue("inline", fileName
+        .startsWith(MtasUpdateRequestProcessorResultWriter.INLINE_PREFIX));
+    read(fileName, items);
+  }
+
+  /**
+   * Result above the default memory threshold, spooled to a temporary file
+   * that is removed after reading.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void file() throws IOException {
+    int threshold = MtasUpdateRequestProcessorResultWriter.DEFAULT_MEMORY_THRESHOLD;
+    List<Object[]> items = createItems(new Random(43), 20000);
+    String fileName = write(items, threshold);
+    assertFalse("inline", fileName
+        .startsWith(MtasUpdateRequestProcessorResultWriter.INLINE_PREFIX));
+    File file = new File(fileName);
+    assertTrue("file", file.exists());
+    assertTrue("size", file.length() > threshold);
+    read(fileName, items);
+    assertFalse("file removed", file.exists());
+  }
+
+  /**
+   * Results crossing the memory threshold while writing the header and
+   * while writing an item.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void threshold() throws IOException {
+    List<Object[]> items = createItems(new Random(44), 50);
+    for (int threshold : new int[] { 0, 1, 100 }) {
+      String fileName = write(items, threshold);
+      assertFalse("inline with threshold " + threshold, fileName
+          .startsWith(MtasUpdateRequestProcessorResultWriter.INLINE_PREFIX));
+      read(fileName, items);
+    }
+    // no items
+    String fileName = write(new ArrayList<>(), 1000);
+    assertTrue("inline", fileName
+        .startsWith(MtasUpdateRequestProcessorResultWriter.INLINE_PREFIX));
+    read(fileName, new ArrayList<>());
+  }
+
+  /**
+   * Creates items with and without term, offsets, position increment, payload
+   * and flags, with offsets that are not monotonic.
+   *
+   * @param random the random
+   * @param number the number
+   * @return the items, as term, offset start, offset end, position increment,
+   *         payload and flags
+   */
+  private static List<Object[]> createItems(Random random, int number) {
+    List<Object[]> items = new ArrayList<>();
+    int offset = 0;
+    for (int i = 0; i < number; i++) {
+      String term = random.nextInt(10) == 0 ? null
+          : "t\u0001value" + i + (random.nextBoolean() ? "\u00e9" : "");
+      Integer offsetStart = null;
+      Integer offsetEnd = null;
+      if (random.nextInt(10) > 0) {
+        // offsets may decrease, for tokens covering previous tokens
+        offset = Math.max(0, offset + random.nextInt(40) - 15);
+        offsetStart = offset;
+        offsetEnd = offset + random.nextInt(100);
+      } else if (random.nextBoolean()) {
+        // only start, ignored
+        offsetStart = offset;
+      }
+      Integer posIncr;
+      switch (random.nextInt(5)) {
+      case 0:
+        posIncr = null;
+        break;
+      case 1:
+        posIncr = 0;
+        break;
+      case 2:
+        posIncr = 2 + random.nextInt(1000);
+        break;
+      default:
+        posIncr = 1;
+      }
+      BytesRef payload = null;
+      if (random.nextInt(4) > 0) {
+        // part of a larger array
+        byte[] bytes = new byte[random.nextInt(20) + 4];
+        random.nextBytes(bytes);
+        payload = new BytesRef(bytes, 2, bytes.length - 4);
+      }
+      Integer flags = random.nextBoolean() ? null
+          : random.nextInt(2000) - 1000;
+      items.add(new Object[] { term, offsetStart, offsetEnd, posIncr, payload,
+          flags });
+    }
+    return items;
+  }
+
+  /**
+   * Write the items.
+   *
+   * @param items the items
+   * @param threshold the memory threshold
+   * @return the file name
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static String write(List<Object[]> items, int threshold)
+      throws IOException {
+    try (MtasUpdateRequestProcessorResultWriter writer =
+        new MtasUpdateRequestProcessorResultWriter(VALUE, threshold)) {
+      for (Object[] item : items) {
+        writer.addItem((String) item[0], (Integer) item[1], (Integer) item[2],
+            (Integer) item[3], (BytesRef) item[4], (Integer) item[5]);
+      }
+      assertEquals("token number", items.size(), writer.getTokenNumber());
+      writer.close();
+      return writer.getFileName();
+    }
+  }
+
+  /**
+   * Read and compare the items.
+   *
+   * @param fileName the file name
+   * @param items the items
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void read(String fileName, List<Object[]> items)
+      throws IOException {
+    try (MtasUpdateRequestProcessorResultReader reader =
+        new MtasUpdateRequestProcessorResultReader(fileName)) {
+      assertEquals("value", VALUE, reader.getStoredStringValue());
+      Iterator<MtasUpdateRequestProcessorResultItem> iterator = reader
+          .getIterator();
+      for (int i = 0; i < items.size(); i++) {
+        Object[] item = items.get(i);
+        assertTrue("item " + i, iterator.hasNext());
+        MtasUpdateRequestProcessorResultItem result = iterator.next();
+        assertEquals("term " + i, item[0], result.tokenTerm);
+        if (item[1] != null && item[2] != null) {
+          assertEquals("offset start " + i, item[1], result.tokenOffsetStart);
+          assertEquals("offset end " + i, item[2], result.tokenOffsetEnd);
+        } else {
+          assertNull("offset start " + i, result.tokenOffsetStart);
+          assertNull("offset end " + i, result.tokenOffsetEnd);
+        }
+        // an increment of 1 is the default
+        Integer posIncr = (Integer) item[3];
+        assertEquals("position increment " + i,
+            posIncr == null || posIncr == 1 ? null : posIncr,
+            result.tokenPosIncr);
+        BytesRef payload = (BytesRef) item[4];
+        if (payload == null) {
+          assertNull("payload " + i, result.tokenPayload);
+        } else {
+          assertArrayEquals("payload " + i, BytesRef.deepCopyOf(payload).bytes,
+              result.tokenPayload);
+        }
+        assertEquals("flags " + i, item[5], result.tokenFlags);
+      }
+      assertFalse("end", iterator.hasNext());
+    }
+  }
+
+  /**
+   * Invalid inline data.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test(expected = IOException.class)
+  public void invalid() throws IOException {
+    new MtasUpdateRequestProcessorResultReader(
+        MtasUpdateRequestProcessorResultWriter.INLINE_PREFIX + "%%%").close();
+  }
+
+}
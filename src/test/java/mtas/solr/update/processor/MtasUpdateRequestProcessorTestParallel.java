@@ -0,0 +1,363 @@
+package mtas.solr.update.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.analysis.util.CharFilterFactory;
+import org.apache.lucene.analysis.util.FilesystemResourceLoader;
+import org.apache.lucene.analysis.util.ResourceLoader;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.processor.UpdateRequestProcessor;
+
+import mtas.analysis.MtasTokenizer;
+import mtas.analysis.util.MtasCharFilterFactory;
+import mtas.analysis.util.MtasTokenizerFactory;
+
+/**
+ * The Class MtasUpdateRequestProcessorTestParallel.
+ */
+public class MtasUpdateRequestProcessorTestParallel {
+
+  /** The Constant FIELD_ID. */
+  private static final String FIELD_ID = "id";
+
+  /** The Constant FIELD_CONTENT. */
+  private static final String FIELD_CONTENT = "content";
+
+  /** The Constant FIELD_CONFIGURATION. */
+  private static final String FIELD_CONFIGURATION = "configuration";
+
+  /** The Constant FIELD_ERROR. */
+  private static final String FIELD_ERROR = "error";
+
+  /** The Constant FIELD_TOKENS. */
+  private static final String FIELD_TOKENS = "numberOfTokens";
+
+  /** The Constant FIELD_TYPE. */
+  private static final String FIELD_TYPE = "mtas";
+
+  /** The Constant CONFIGURATION_FAIL. */
+  private static final String CONFIGURATION_FAIL = "fail";
+
+  /** The Constant NUMBER. */
+  private static final int NUMBER = 40;
+
+  /** The Constant REJECTED, the remainder by seven of rejected documents. */
+  private static final int REJECTED = 5;
+
+  /**
+   * Documents analysed in parallel are passed on in their original order,
+   * with failures registered in the failing documents only, as when analysed
+   * on the update thread.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void orderAndErrors() throws IOException {
+    MtasUpdateRequestProcessorConfig config = createConfig();
+    List<SolrInputDocument> expected = process(config, null, 0);
+    assertEquals("documents", NUMBER, expected.size());
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      for (int queueSize : new int[] { 1, 3, 100 }) {
+        List<SolrInputDocument> result = process(config, executor, queueSize);
+        assertEquals("documents with queue " + queueSize, NUMBER,
+            result.size());
+        for (int i = 0; i < NUMBER; i++) {
+          String name = "document " + i + " with queue " + queueSize;
+          SolrInputDocument doc = result.get(i);
+          assertEquals(name, Integer.toString(i),
+              doc.getFieldValue(FIELD_ID));
+          if (i % 5 == 3 || i % 5 == 4) {
+            assertNotNull(name + " without error",
+                doc.getFieldValue(FIELD_ERROR));
+            assertEquals(name + " tokens", 0, doc.getFieldValue(FIELD_TOKENS));
+          } else {
+            assertNull(name + " with error", doc.getFieldValue(FIELD_ERROR));
+            assertTrue(name + " without tokens",
+                (Integer) doc.getFieldValue(FIELD_TOKENS) > 0);
+          }
+          assertEquals(name + " error",
+              expected.get(i).getFieldValue(FIELD_ERROR),
+              doc.getFieldValue(FIELD_ERROR));
+          assertEquals(name + " tokens",
+              expected.get(i).getFieldValue(FIELD_TOKENS),
+              doc.getFieldValue(FIELD_TOKENS));
+        }
+        delete(result);
+      }
+    } finally {
+      executor.shutdown();
+      delete(expected);
+    }
+  }
+
+  /**
+   * Downstream failures of documents passed on while processing a later
+   * document name the failing document and keep their error code, and don't
+   * affect other documents.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @org.junit.Test
+  public void downstreamErrors() throws IOException {
+    MtasUpdateRequestProcessorConfig config = createConfig();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      for (int queueSize : new int[] { 1, 3, 100 }) {
+        String name = "queue " + queueSize;
+        MtasTestUpdateRequestProcessor next;
+        next = new MtasTestUpdateRequestProcessor(true);
+        List<SolrException> errors = new ArrayList<>();
+        List<SolrInputDocument> result = process(config, executor, queueSize,
+            next, errors);
+        List<String> rejected = new ArrayList<>();
+        for (int i = 0; i < NUMBER; i++) {
+          if (i % 7 == REJECTED) {
+            rejected.add(Integer.toString(i));
+          }
+        }
+        assertEquals(name + ": errors", rejected.size(), errors.size());
+        for (int i = 0; i < errors.size(); i++) {
+          SolrException error = errors.get(i);
+          assertEquals(name + ": code", ErrorCode.BAD_REQUEST.code,
+              error.code());
+          assertTrue(name + ": message " + error.getMessage(),
+              error.getMessage().startsWith("document ") && error.getMessage()
+                  .endsWith(": rejected " + rejected.get(i)));
+        }
+        assertEquals(name + ": documents", NUMBER - rejected.size(),
+            result.size());
+        int j = 0;
+        for (int i = 0; i < NUMBER; i++) {
+          if (i % 7 != REJECTED) {
+            assertEquals(name + ": document " + i, Integer.toString(i),
+                result.get(j++).getFieldValue(FIELD_ID));
+          }
+        }
+        delete(result);
+        delete(next.rejectedDocuments);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Creates the config, for a field with configuration from another field.
+   *
+   * @return the config
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static MtasUpdateRequestProcessorConfig createConfig()
+      throws IOException {
+    Path confPath = Paths.get("src" + File.separator + "test" + File.separator
+        + "resources" + File.separator + "data" + File.separator + "conf");
+    ResourceLoader resourceLoader = new FilesystemResourceLoader(
+        confPath.toAbsolutePath(),
+        MtasUpdateRequestProcessorTestParallel.class.getClassLoader());
+    Map<String, String> paramsCharFilter = new HashMap<>();
+    paramsCharFilter.put("type", "file");
+    Map<String, String> paramsTokenizer = new HashMap<>();
+    paramsTokenizer.put("configFile", "folia.xml");
+    MtasUpdateRequestProcessorConfig config =
+        new MtasUpdateRequestProcessorConfig();
+    config.fieldMapping.put(FIELD_CONTENT, FIELD_TYPE);
+    config.fieldTypeCharFilterFactories.put(FIELD_TYPE,
+        new CharFilterFactory[] {
+            new MtasCharFilterFactory(paramsCharFilter, resourceLoader) });
+    config.fieldTypeTokenizerFactory.put(FIELD_TYPE,
+        new MtasTestTokenizerFactory(paramsTokenizer, resourceLoader));
+    config.fieldTypeConfigurationFromField.put(FIELD_TYPE,
+        FIELD_CONFIGURATION);
+    config.fieldTypeErrorField.put(FIELD_TYPE, FIELD_ERROR);
+    config.fieldTypeNumberOfTokensField.put(FIELD_TYPE, FIELD_TOKENS);
+    return config;
+  }
+
+  /**
+   * Process the documents, failing with a runtime exception for every fifth
+   * document and with an IOException for a missing file.
+   *
+   * @param config the config
+   * @param executor the executor
+   * @param queueSize the queue size
+   * @return the documents in the order passed on
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static List<SolrInputDocument> process(
+      MtasUpdateRequestProcessorConfig config, ExecutorService executor,
+      int queueSize) throws IOException {
+    return process(config, executor, queueSize,
+        new MtasTestUpdateRequestProcessor(false), null);
+  }
+
+  /**
+   * Process the documents, collecting the errors like a tolerant update
+   * processor if a list is provided.
+   *
+   * @param config the config
+   * @param executor the executor
+   * @param queueSize the queue size
+   * @param next the next processor
+   * @param errors the errors, or null
+   * @return the documents in the order passed on
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static List<SolrInputDocument> process(
+      MtasUpdateRequestProcessorConfig config, ExecutorService executor,
+      int queueSize, MtasTestUpdateRequestProcessor next,
+      List<SolrException> errors) throws IOException {
+    Path resourcesPath = Paths.get("src" + File.separator + "test"
+        + File.separator + "resources" + File.separator + "data"
+        + File.separator + "resources");
+    String[] files = new String[] { "beets1.xml.gz", "beets2.xml.gz",
+        "beets3.xml.gz" };
+    MtasUpdateRequestProcessor processor = new MtasUpdateRequestProcessor(next,
+        config, executor, queueSize);
+    // the command is reused, as by the update handlers
+    AddUpdateCommand cmd = new AddUpdateCommand(null);
+    for (int i = 0; i < NUMBER; i++) {
+      SolrInputDocument doc = new SolrInputDocument();
+      doc.addField(FIELD_ID, Integer.toString(i));
+      if (i % 5 == 4) {
+        doc.addField(FIELD_CONTENT, resourcesPath.resolve("missing.xml.gz")
+            .toAbsolutePath().toString());
+      } else {
+        doc.addField(FIELD_CONTENT, resourcesPath.resolve(files[i % 3])
+            .toAbsolutePath().toString());
+      }
+      if (i % 5 == 3) {
+        doc.addField(FIELD_CONFIGURATION, CONFIGURATION_FAIL);
+      }
+      cmd.clear();
+      cmd.solrDoc = doc;
+      cmd.isLastDocInBatch = i == NUMBER - 1;
+      try {
+        processor.processAdd(cmd);
+      } catch (SolrException e) {
+        if (errors == null) {
+          throw e;
+        }
+        errors.add(e);
+      }
+    }
+    processor.finish();
+    return next.documents;
+  }
+
+  /**
+   * Delete the spooled analysis results.
+   *
+   * @param documents the documents
+   */
+  private static void delete(List<SolrInputDocument> documents) {
+    for (SolrInputDocument doc : documents) {
+      Object value = doc.getFieldValue(FIELD_CONTENT);
+      if (value instanceof String && !((String) value)
+          .startsWith(MtasUpdateRequestProcessorResultWriter.INLINE_PREFIX)) {
+        File file = new File((String) value);
+        if (file.isFile() && !file.getName().endsWith(".xml.gz")) {
+          file.delete();
+        }
+      }
+    }
+  }
+
+  /**
+   * The Class MtasTestTokenizerFactory, failing with a runtime exception for
+   * {@link MtasUpdateRequestProcessorTestParallel#CONFIGURATION_FAIL}.
+   */
+  private static class MtasTestTokenizerFactory extends MtasTokenizerFactory {
+
+    /**
+     * Instantiates a new mtas test tokenizer factory.
+     *
+     * @param args the args
+     * @param resourceLoader the resource loader
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    MtasTestTokenizerFactory(Map<String, String> args,
+        ResourceLoader resourceLoader) throws IOException {
+      super(args, resourceLoader);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see mtas.analysis.util.MtasTokenizerFactory#create(java.lang.String,
+     * java.lang.String)
+     */
+    @Override
+    public MtasTokenizer create(String configuration,
+        String defaultConfiguration) throws IOException {
+      if (CONFIGURATION_FAIL.equals(configuration)) {
+        throw new IllegalStateException("failing configuration");
+      }
+      return super.create(configuration, defaultConfiguration);
+    }
+
+  }
+
+  /**
+   * The Class MtasTestUpdateRequestProcessor, collecting the documents, and
+   * optionally rejecting every seventh document.
+   */
+  private static class MtasTestUpdateRequestProcessor
+      extends UpdateRequestProcessor {
+
+    /** The documents. */
+    private final List<SolrInputDocument> documents = new ArrayList<>();
+
+    /** The rejected documents. */
+    private final List<SolrInputDocument> rejectedDocuments = new ArrayList<>();
+
+    /** The reject. */
+    private final boolean reject;
+
+    /**
+     * Instantiates a new mtas test update request processor.
+     *
+     * @param reject the reject
+     */
+    MtasTestUpdateRequestProcessor(boolean reject) {
+      super(null);
+      this.reject = reject;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.apache.solr.update.processor.UpdateRequestProcessor#processAdd(org.
+     * apache.solr.update.AddUpdateCommand)
+     */
+    @Override
+    public void processAdd(AddUpdateCommand cmd) throws IOException {
+      String id = (String) cmd.getSolrInputDocument().getFieldValue(FIELD_ID);
+      if (reject && Integer.parseInt(id) % 7 == REJECTED) {
+        rejectedDocuments.add(cmd.getSolrInputDocument());
+        throw new SolrException(ErrorCode.BAD_REQUEST, "rejected " + id);
+      }
+      documents.add(cmd.getSolrInputDocument());
+    }
+
+  }
+
+}